@@ -18,3 +18,8 @@
     void *FromNative*(...);
     *** *FromNative*(...);
 }
+
+# called via reflection by OpenSLMediaPlayerNativeResourceReaper
+-keepclassmembers class com.h6ah4i.android.media.opensl.** {
+    static void deleteNativeImplHandle(long);
+}
@@ -95,6 +95,11 @@ public interface IVisualizer extends IReleasable {
      * with the
      * {@link #setDataCaptureListener(OnDataCaptureListener, int, boolean, boolean)}
      * method.
+     * <p>
+     * Implementations may reuse the byte arrays passed to the callbacks for
+     * subsequent captures once the callback returns. Do not keep a reference
+     * to them, nor modify them from another thread; copy the data if it is
+     * needed later.
      */
     interface OnDataCaptureListener {
         /**
@@ -31,6 +31,7 @@ import com.h6ah4i.android.media.audiofx.IVirtualizer;
 import com.h6ah4i.android.media.audiofx.IVisualizer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerPool;
 import com.h6ah4i.android.media.opensl.audiofx.OpenSLHQEqualizer;
 import com.h6ah4i.android.media.opensl.audiofx.OpenSLHQVisualizer;
 import com.h6ah4i.android.media.opensl.audiofx.OpenSLPreAmp;
@@ -45,6 +46,7 @@ import com.h6ah4i.android.media.standard.audiofx.StandardVirtualizer;
 public class HybridMediaPlayerFactory implements IMediaPlayerFactory {
     private Context mContext;
     private OpenSLMediaPlayerContext mMediaPlayerContext;
+    private OpenSLMediaPlayerPool mPlayerPool;
 
     public HybridMediaPlayerFactory(Context context) {
         mContext = context;
@@ -56,12 +58,59 @@ public class HybridMediaPlayerFactory implements IMediaPlayerFactory {
         mMediaPlayerContext = new OpenSLMediaPlayerContext(context, params);
     }
 
+    /**
+     * Constructor which enables the player pool.
+     *
+     * @param context Context
+     * @param params context parameters
+     * @param poolParams player pool parameters
+     */
+    public HybridMediaPlayerFactory(
+            Context context,
+            OpenSLMediaPlayerContext.Parameters params,
+            OpenSLMediaPlayerPool.Parameters poolParams) {
+        mContext = context;
+        mMediaPlayerContext = new OpenSLMediaPlayerContext(context, params);
+        mPlayerPool = new OpenSLMediaPlayerPool(
+                mMediaPlayerContext, getMediaPlayerOptions(), poolParams);
+    }
+
     public OpenSLMediaPlayerContext getOpenSLMediaPlayerContext() {
         return mMediaPlayerContext;
     }
 
+    /**
+     * Gets the player pool.
+     *
+     * @return OpenSLMediaPlayerPool instance, or null if the pool is not enabled
+     */
+    public OpenSLMediaPlayerPool getPlayerPool() {
+        return mPlayerPool;
+    }
+
+    /**
+     * Returns the player created by {@link #createMediaPlayer()} to the player
+     * pool. The player is released if the pool is not enabled.
+     *
+     * @param player the player created by this factory
+     */
+    public void recycleMediaPlayer(IBasicMediaPlayer player) {
+        if (player == null)
+            return;
+
+        if (mPlayerPool != null && (player instanceof OpenSLMediaPlayer)) {
+            mPlayerPool.recycle((OpenSLMediaPlayer) player);
+        } else {
+            player.release();
+        }
+    }
+
     @Override
     public void release() throws IllegalStateException, UnsupportedOperationException {
+        if (mPlayerPool != null) {
+            mPlayerPool.release();
+            mPlayerPool = null;
+        }
         if (mMediaPlayerContext != null) {
             mMediaPlayerContext.release();
             mMediaPlayerContext = null;
@@ -71,6 +120,9 @@ public class HybridMediaPlayerFactory implements IMediaPlayerFactory {
 
     @Override
     public IBasicMediaPlayer createMediaPlayer() throws IllegalStateException, IllegalArgumentException, UnsupportedOperationException {
+        if (mPlayerPool != null) {
+            return mPlayerPool.obtain();
+        }
         return new OpenSLMediaPlayer(getOpenSLMediaPlayerContext(), getMediaPlayerOptions());
     }
 
@@ -22,7 +22,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 
 import android.annotation.SuppressLint;
 import android.content.ContentResolver;
@@ -35,6 +38,7 @@ import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.provider.MediaStore.MediaColumns;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.h6ah4i.android.media.IBasicMediaPlayer;
 import com.h6ah4i.android.media.compat.AudioAttributes;
@@ -49,6 +53,21 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     // options
     public static final int OPTION_USE_FADE = (1 << 0);
 
+    /**
+     * Info code passed to {@link OnInfoListener#onInfo(IBasicMediaPlayer, int, int)}
+     * when the player switched to the next playlist item. The extra argument
+     * is the number of remaining playlist items.
+     */
+    public static final int MEDIA_INFO_PLAYLIST_TRACK_CHANGED = 10001;
+
+    // fade curves (used by setFadeCurve())
+    public static final int FADE_CURVE_DEFAULT = 0;
+    public static final int FADE_CURVE_RAISED_COSINE = 1;
+    public static final int FADE_CURVE_LINEAR = 2;
+    public static final int FADE_CURVE_EQUAL_POWER = 3;
+    public static final int FADE_CURVE_LOGARITHMIC = 4;
+    public static final int FADE_CURVE_S_CURVE = 5;
+
     // fields
     private static final String[] PROJECTION_MEDIACOLUMNS_DATA = new String[] {
             MediaColumns.DATA
@@ -57,13 +76,18 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     private static final Field mField_FileDescriptor_descriptor;
 
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private int[] mParamIntBuff = new int[1];
     private boolean[] mParamBoolBuff = new boolean[1];
     private InternalHandler mHandler;
-    private AssetFileDescriptor mContentAssetFd;
+    // NOTE: also released by the native resource reaper if this player is leaked
+    private final JavaResources mJavaResources = new JavaResources();
+    private StatusBlock mStatusBlock;
 
-    private WakeLock mWakeLock;
+    // NOTE: aux effect settings are shared by all players of the context
+    private boolean mAuxEffectAttached;
+    private boolean mAuxEffectSendLevelChanged;
 
     private OnCompletionListener mOnCompletionListener;
     private OnPreparedListener mOnPreparedListener;
@@ -72,6 +96,196 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     private OnInfoListener mOnInfoListener;
     private OnErrorListener mOnErrorListener;
 
+    private int mNextCommandBatchToken = 1;
+    private final SparseArray<PendingCommandBatch> mPendingCommandBatches =
+            new SparseArray<PendingCommandBatch>();
+
+    /**
+     * Interface definition of a callback to be invoked when all commands of a
+     * {@link CommandBatch} have been processed.
+     */
+    public interface OnCommandBatchCompletionListener {
+        /**
+         * Called on the thread which created the player instance.
+         *
+         * @param mp the player the batch was posted to
+         * @param batch the completed batch; results can be obtained via
+         *            {@link CommandBatch#isSucceeded(int)},
+         *            {@link CommandBatch#getIntResult(int)} and
+         *            {@link CommandBatch#getBooleanResult(int)}
+         */
+        void onCommandBatchCompletion(OpenSLMediaPlayer mp, CommandBatch batch);
+    }
+
+    /**
+     * A sequence of control commands which is processed by the internal
+     * thread in one wake-up. Posting a batch never blocks the caller thread.
+     */
+    public static final class CommandBatch {
+        // NOTE: These values have to be matched with OSLMP_COMMAND_xxx
+        public static final int COMMAND_PREPARE_ASYNC = 1;
+        public static final int COMMAND_START = 2;
+        public static final int COMMAND_STOP = 3;
+        public static final int COMMAND_PAUSE = 4;
+        public static final int COMMAND_SEEK_TO = 5;
+        public static final int COMMAND_SET_VOLUME = 6;
+        public static final int COMMAND_SET_LOOPING = 7;
+        public static final int COMMAND_SET_AUX_EFFECT_SEND_LEVEL = 8;
+        public static final int COMMAND_GET_CURRENT_POSITION = 9;
+        public static final int COMMAND_GET_DURATION = 10;
+        public static final int COMMAND_IS_PLAYING = 11;
+        public static final int COMMAND_IS_LOOPING = 12;
+
+        // { what, iarg, floatToIntBits(farg0), floatToIntBits(farg1) } x N
+        private static final int COMMAND_STRIDE = 4;
+
+        private int[] mCommands = new int[COMMAND_STRIDE * 4];
+        private int mCount;
+        private int[] mResults;
+        private boolean mPosted;
+
+        public CommandBatch prepareAsync() {
+            return add(COMMAND_PREPARE_ASYNC, 0, 0.0f, 0.0f);
+        }
+
+        public CommandBatch start() {
+            return add(COMMAND_START, 0, 0.0f, 0.0f);
+        }
+
+        public CommandBatch stop() {
+            return add(COMMAND_STOP, 0, 0.0f, 0.0f);
+        }
+
+        public CommandBatch pause() {
+            return add(COMMAND_PAUSE, 0, 0.0f, 0.0f);
+        }
+
+        public CommandBatch seekTo(int msec) {
+            return add(COMMAND_SEEK_TO, msec, 0.0f, 0.0f);
+        }
+
+        public CommandBatch setVolume(float leftVolume, float rightVolume) {
+            return add(COMMAND_SET_VOLUME, 0, leftVolume, rightVolume);
+        }
+
+        public CommandBatch setLooping(boolean looping) {
+            return add(COMMAND_SET_LOOPING, (looping ? 1 : 0), 0.0f, 0.0f);
+        }
+
+        public CommandBatch setAuxEffectSendLevel(float level) {
+            return add(COMMAND_SET_AUX_EFFECT_SEND_LEVEL, 0, level, 0.0f);
+        }
+
+        public CommandBatch getCurrentPosition() {
+            return add(COMMAND_GET_CURRENT_POSITION, 0, 0.0f, 0.0f);
+        }
+
+        public CommandBatch getDuration() {
+            return add(COMMAND_GET_DURATION, 0, 0.0f, 0.0f);
+        }
+
+        public CommandBatch isPlaying() {
+            return add(COMMAND_IS_PLAYING, 0, 0.0f, 0.0f);
+        }
+
+        public CommandBatch isLooping() {
+            return add(COMMAND_IS_LOOPING, 0, 0.0f, 0.0f);
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        public int getCommand(int index) {
+            checkIndex(index);
+            return mCommands[COMMAND_STRIDE * index];
+        }
+
+        public boolean isCompleted() {
+            return (mResults != null);
+        }
+
+        public boolean isSucceeded(int index) {
+            return (getResultCode(index) == Internal.RESULT_SUCCESS);
+        }
+
+        public int getIntResult(int index) {
+            checkCompleted(index);
+            return mResults[2 * index + 1];
+        }
+
+        public boolean getBooleanResult(int index) {
+            return (getIntResult(index) != 0);
+        }
+
+        /** @hide */
+        public int getResultCode(int index) {
+            checkCompleted(index);
+            return mResults[2 * index + 0];
+        }
+
+        private CommandBatch add(int what, int iarg, float farg0, float farg1) {
+            if (mPosted) {
+                throw new IllegalStateException("This batch has already been posted");
+            }
+
+            final int pos = COMMAND_STRIDE * mCount;
+
+            if (pos + COMMAND_STRIDE > mCommands.length) {
+                final int[] newCommands = new int[mCommands.length * 2];
+                System.arraycopy(mCommands, 0, newCommands, 0, pos);
+                mCommands = newCommands;
+            }
+
+            mCommands[pos + 0] = what;
+            mCommands[pos + 1] = iarg;
+            mCommands[pos + 2] = Float.floatToIntBits(farg0);
+            mCommands[pos + 3] = Float.floatToIntBits(farg1);
+            mCount += 1;
+
+            return this;
+        }
+
+        private boolean contains(int what) {
+            for (int i = 0; i < mCount; i++) {
+                if (mCommands[COMMAND_STRIDE * i] == what)
+                    return true;
+            }
+            return false;
+        }
+
+        private int lastIndexOf(int what) {
+            for (int i = mCount - 1; i >= 0; i--) {
+                if (mCommands[COMMAND_STRIDE * i] == what)
+                    return i;
+            }
+            return -1;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= mCount) {
+                throw new IndexOutOfBoundsException("index = " + index + ", size = " + mCount);
+            }
+        }
+
+        private void checkCompleted(int index) {
+            checkIndex(index);
+            if (mResults == null) {
+                throw new IllegalStateException("This batch has not been completed yet");
+            }
+        }
+    }
+
+    private static final class PendingCommandBatch {
+        final CommandBatch batch;
+        final OnCommandBatchCompletionListener listener;
+
+        PendingCommandBatch(CommandBatch batch, OnCommandBatchCompletionListener listener) {
+            this.batch = batch;
+            this.listener = listener;
+        }
+    }
+
     static {
         // load native library
         HAS_NATIVE = OpenSLMediaPlayerNativeLibraryLoader.loadLibraries();
@@ -117,14 +331,11 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
             throw new IllegalStateException(
                     "Failed to create OpenSLMediaPlayer instance in native layer");
         }
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(
+                this, mNativeHandle, mJavaResources);
 
         mHandler = new InternalHandler(this);
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
+        mStatusBlock = StatusBlock.create(mNativeHandle);
     }
 
     @Override
@@ -288,6 +499,44 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         }
 
         releaseOpenedContentFileDescriptor();
+        releaseOpenedPlaylistFileDescriptors();
+    }
+
+    /**
+     * Resets the player and restores the default settings, so the instance
+     * can be handed out again by {@link OpenSLMediaPlayerPool}. The aux effect
+     * settings are restored only if they have been changed via this player.
+     */
+    /* package */void resetForReuse() throws IllegalStateException {
+        checkNativeImplIsAvailable();
+
+        mOnCompletionListener = null;
+        mOnPreparedListener = null;
+        mOnSeekCompleteListener = null;
+        mOnBufferingUpdateListener = null;
+        mOnInfoListener = null;
+        mOnErrorListener = null;
+
+        // NOTE: attachAuxEffect() is not allowed in Idle state
+        if (mAuxEffectAttached) {
+            attachAuxEffect(0);
+        }
+
+        reset();
+
+        setVolume(1.0f, 1.0f);
+        if (mAuxEffectSendLevelChanged) {
+            setAuxEffectSendLevel(0.0f);
+        }
+        setLooping(false);
+        setLoopPoints(0, -1);
+        setFadeCurve(FADE_CURVE_DEFAULT, 0, 0);
+        setInsertEqualizerEnabled(false);
+
+        releaseWakeLockObject();
+
+        mAuxEffectAttached = false;
+        mAuxEffectSendLevelChanged = false;
     }
 
     @Override
@@ -306,16 +555,24 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         mOnInfoListener = null;
         mOnErrorListener = null;
 
+        synchronized (mPendingCommandBatches) {
+            mPendingCommandBatches.clear();
+        }
+
         try {
             if (HAS_NATIVE && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
             Log.e(TAG, "release()", e);
         }
 
+        mStatusBlock = null;
+
         releaseOpenedContentFileDescriptor();
+        releaseOpenedPlaylistFileDescriptors();
     }
 
     @Override
@@ -355,6 +612,14 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     public int getDuration() {
         checkNativeImplIsAvailable();
 
+        final StatusBlock sb = mStatusBlock;
+        if (sb != null) {
+            final int duration = sb.readDuration();
+            if (duration >= 0) {
+                return duration;
+            }
+        }
+
         if (mNativeHandle != 0) {
             getDurationImplNative(mNativeHandle, mParamIntBuff);
             return mParamIntBuff[0];
@@ -378,6 +643,14 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     public int getCurrentPosition() {
         checkNativeImplIsAvailable();
 
+        final StatusBlock sb = mStatusBlock;
+        if (sb != null) {
+            final int position = sb.readCurrentPosition();
+            if (position >= 0) {
+                return position;
+            }
+        }
+
         try {
             getCurrentPositionImplNative(mNativeHandle, mParamIntBuff);
             return mParamIntBuff[0];
@@ -407,6 +680,14 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     public boolean isPlaying() throws IllegalStateException {
         checkNativeImplIsAvailable();
 
+        final StatusBlock sb = mStatusBlock;
+        if (sb != null) {
+            final int playing = sb.readIsPlaying();
+            if (playing >= 0) {
+                return (playing != 0);
+            }
+        }
+
         try {
             final int result = isPlayingImplNative(mNativeHandle, mParamBoolBuff);
             parseResultAndThrowException(result);
@@ -426,7 +707,9 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
 
         try {
             final int result = attachAuxEffectImplNative(mNativeHandle, effectId);
-            parseResultAndThrowNoExceptions(result);
+            if (parseResultAndThrowNoExceptions(result)) {
+                mAuxEffectAttached = (effectId != 0);
+            }
         } catch (Exception e) {
             Log.e(TAG, "An error occurred in attachAuxEffect(effectId = " + effectId + ")");
         }
@@ -465,7 +748,9 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         try {
             final int result = setAuxEffectSendLevelImplNative(mNativeHandle, level);
 
-            parseResultAndThrowNoExceptions(result);
+            if (parseResultAndThrowNoExceptions(result)) {
+                mAuxEffectSendLevelChanged = (level != 0.0f);
+            }
         } catch (Exception e) {
             Log.e(TAG, "An error occurred in setAuxEffectSendLevel(level = "
                     + level + ")");
@@ -572,6 +857,292 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         }
     }
 
+    /**
+     * Posts a command batch to the internal thread without waiting for the
+     * result. All commands in the batch are processed in one internal thread
+     * wake-up in the order they were added, and the listener is invoked once
+     * after the last command has been processed.
+     *
+     * @param batch command batch (cannot be re-posted)
+     * @param listener completion listener (can be null)
+     * @throws IllegalStateException
+     * @throws IllegalArgumentException
+     */
+    public void postCommandBatch(CommandBatch batch, OnCommandBatchCompletionListener listener) {
+        if (batch == null) {
+            throw new IllegalArgumentException("The argument 'batch' cannot be null");
+        }
+        if (batch.mPosted) {
+            throw new IllegalStateException("This batch has already been posted");
+        }
+        if (batch.mCount == 0) {
+            throw new IllegalArgumentException("The batch is empty");
+        }
+
+        checkNativeImplIsAvailable();
+
+        final int token;
+
+        synchronized (mPendingCommandBatches) {
+            token = mNextCommandBatchToken;
+            mNextCommandBatchToken = (token == Integer.MAX_VALUE) ? 1 : (token + 1);
+            mPendingCommandBatches.put(token, new PendingCommandBatch(batch, listener));
+        }
+
+        batch.mPosted = true;
+
+        final int result = postCommandsImplNative(
+                mNativeHandle, token, batch.mCommands, batch.mCount);
+
+        if (result != Internal.RESULT_SUCCESS) {
+            synchronized (mPendingCommandBatches) {
+                mPendingCommandBatches.remove(token);
+            }
+            batch.mPosted = false;
+            parseResultAndThrowExceptForIOExceptions(result);
+            return;
+        }
+
+        // emulate the wake lock handling of the blocking methods
+        final int lastStart = batch.lastIndexOf(CommandBatch.COMMAND_START);
+        final int lastStop = Math.max(
+                batch.lastIndexOf(CommandBatch.COMMAND_STOP),
+                batch.lastIndexOf(CommandBatch.COMMAND_PAUSE));
+
+        if (lastStart >= 0 || lastStop >= 0) {
+            stayAwake(lastStart > lastStop);
+        }
+
+        if (batch.contains(CommandBatch.COMMAND_PAUSE) && mHandler != null) {
+            mHandler.clearBufferingUpdateMessage();
+        }
+    }
+
+    /**
+     * Gets the buffered position of the current data source. This method
+     * never blocks.
+     *
+     * @return buffered position in milliseconds (returns duration for local
+     *         contents, or 0 if not available)
+     */
+    public int getBufferedPosition() {
+        checkNativeImplIsAvailable();
+
+        final StatusBlock sb = mStatusBlock;
+        if (sb != null) {
+            return Math.max(0, sb.readBufferedPosition());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Appends a data source to the playlist. The playlist items are played
+     * gaplessly after the current data source, and
+     * {@link #MEDIA_INFO_PLAYLIST_TRACK_CHANGED} is notified via
+     * {@link OnInfoListener} on each transition. Items which could not be
+     * prepared are skipped.
+     *
+     * @param context the Context to use when resolving the Uri
+     * @param uri the Content URI of the data
+     */
+    public void addPlaylistItem(Context context, Uri uri)
+            throws IOException, IllegalArgumentException, SecurityException, IllegalStateException {
+        if (context == null) {
+            throw new NullPointerException();
+        }
+        if (uri == null) {
+            throw new NullPointerException();
+        }
+
+        checkNativeImplIsAvailable();
+
+        final String scheme = uri.getScheme();
+        if ("file".equals(scheme)) {
+            addPlaylistItem(uri.getPath());
+        } else if ("content".equals(scheme)) {
+            addPlaylistItemInternalContentUri(context, uri);
+        } else {
+            final int result = addPlaylistItemUriImplNative(mNativeHandle, uri.toString());
+            parseResultAndThrowException(result);
+            addPlaylistAssetFd(null);
+        }
+    }
+
+    /**
+     * Appends a data source to the playlist.
+     *
+     * @param path the path of the file, or the http/rtsp URL of the stream
+     * @see #addPlaylistItem(Context, Uri)
+     */
+    public void addPlaylistItem(String path)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        if (path == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            // fix "file://" URI form string
+            final Uri uri = Uri.parse(path);
+            if ("file".equals(uri.getScheme())) {
+                path = uri.getPath();
+            }
+        } catch (Exception e) {
+        }
+
+        checkNativeImplIsAvailable();
+
+        final int result = addPlaylistItemPathImplNative(mNativeHandle, path);
+        parseResultAndThrowException(result);
+        addPlaylistAssetFd(null);
+    }
+
+    /**
+     * Appends a data source to the playlist. It is the caller's
+     * responsibility to keep the file descriptor open until the item has been
+     * played or the playlist is cleared.
+     *
+     * @param fd the FileDescriptor for the file you want to play
+     * @see #addPlaylistItem(Context, Uri)
+     */
+    public void addPlaylistItem(FileDescriptor fd)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        final int nativeFD = checkAndObtainNativeFileDescriptor(fd);
+
+        checkNativeImplIsAvailable();
+
+        final int result = addPlaylistItemFdImplNative(mNativeHandle, nativeFD);
+        parseResultAndThrowException(result);
+        addPlaylistAssetFd(null);
+    }
+
+    /**
+     * Appends a data source to the playlist. It is the caller's
+     * responsibility to keep the file descriptor open until the item has been
+     * played or the playlist is cleared.
+     *
+     * @param fd the FileDescriptor for the file you want to play
+     * @param offset the offset into the file where the data to be played
+     *            starts, in bytes
+     * @param length the length in bytes of the data to be played
+     * @see #addPlaylistItem(Context, Uri)
+     */
+    public void addPlaylistItem(FileDescriptor fd, long offset, long length)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        if (length < 0)
+            throw new IllegalArgumentException("The argument length must positive or zero");
+
+        final int nativeFD = checkAndObtainNativeFileDescriptor(fd);
+
+        if (offset < 0)
+            throw new IllegalArgumentException("File offset is invalid");
+
+        checkNativeImplIsAvailable();
+
+        final int result = addPlaylistItemFdImplNative(mNativeHandle, nativeFD, offset, length);
+        parseResultAndThrowException(result);
+        addPlaylistAssetFd(null);
+    }
+
+    /**
+     * Removes all items which have not been started yet from the playlist.
+     * The current data source is not affected.
+     */
+    public void clearPlaylist() throws IllegalStateException {
+        checkNativeImplIsAvailable();
+
+        if (mNativeHandle != 0) {
+            final int result = clearPlaylistImplNative(mNativeHandle);
+            if (parseResultAndThrowNoExceptions(result)) {
+                releasePendingPlaylistFileDescriptors();
+            }
+        }
+    }
+
+    /**
+     * Sets the fade curve and durations used by the following transitions
+     * (start, pause, stop and seek). The gain tables are precomputed and
+     * shared by all players of the same context which use the same curve
+     * and duration.
+     *
+     * @param curve one of the FADE_CURVE_* constants.
+     *            {@link #FADE_CURVE_DEFAULT} restores the context's short/long
+     *            fade and the durations are ignored
+     * @param fadeInMs fade in duration [ms]
+     * @param fadeOutMs fade out duration [ms]
+     */
+    public void setFadeCurve(int curve, int fadeInMs, int fadeOutMs)
+            throws IllegalArgumentException, IllegalStateException {
+        checkNativeImplIsAvailable();
+
+        final int result = setFadeCurveImplNative(mNativeHandle, curve, fadeInMs, fadeOutMs);
+        parseResultAndThrowExceptForIOExceptions(result);
+    }
+
+    /**
+     * Sets the loop region used while looping is enabled. The playback
+     * returns to the start point when it reaches the end point.
+     * <p>
+     * If the region is shorter than the context's
+     * {@link OpenSLMediaPlayerContext.Parameters#loopBufferMaxDuration},
+     * the decoded region is kept in memory and the following iterations are
+     * played from it without re-decoding the data source. The loop points
+     * are reset when the data source is changed.
+     * </p>
+     *
+     * @param startMs loop start point [ms]
+     * @param endMs loop end point [ms] (-1: end of the data source)
+     * @throws IllegalArgumentException if startMs is negative, or endMs is
+     *             neither -1 nor greater than startMs
+     * @throws IllegalStateException if the player has already been released
+     */
+    public void setLoopPoints(int startMs, int endMs)
+            throws IllegalArgumentException, IllegalStateException {
+        checkNativeImplIsAvailable();
+
+        if (startMs < 0)
+            throw new IllegalArgumentException("The argument startMs must be positive or zero");
+        if (!(endMs == -1 || endMs > startMs))
+            throw new IllegalArgumentException("The argument endMs must be -1 or greater than startMs");
+
+        final int result = setLoopPointsImplNative(mNativeHandle, startMs, endMs);
+        parseResultAndThrowExceptForIOExceptions(result);
+    }
+
+    /**
+     * Enables or disables the insert equalizer. The insert equalizer is
+     * applied to the output of this player only, before it is mixed with
+     * the other players. No processing is performed while it is disabled.
+     *
+     * @param enabled whether the insert equalizer is enabled
+     */
+    public void setInsertEqualizerEnabled(boolean enabled)
+            throws IllegalStateException {
+        checkNativeImplIsAvailable();
+
+        final int result = setInsertEqualizerEnabledImplNative(mNativeHandle, enabled);
+        parseResultAndThrowExceptForIOExceptions(result);
+    }
+
+    /**
+     * Sets the band levels of the insert equalizer. The bands and the level
+     * range are the same as {@link com.h6ah4i.android.media.opensl.audiofx.OpenSLHQEqualizer}.
+     *
+     * @param levels band levels [millibel] (the number of elements has to
+     *            be equal to the number of bands)
+     */
+    public void setInsertEqualizerBandLevels(short[] levels)
+            throws IllegalArgumentException, IllegalStateException {
+        if (levels == null) {
+            throw new IllegalArgumentException("levels is null");
+        }
+
+        checkNativeImplIsAvailable();
+
+        final int result = setInsertEqualizerBandLevelsImplNative(mNativeHandle, levels);
+        parseResultAndThrowExceptForIOExceptions(result);
+    }
+
     @Override
     public void setAudioAttributes(AudioAttributes attributes) {
         if (attributes == null) {
@@ -623,16 +1194,101 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
 
         parseResultAndThrowException(result);
 
-        mContentAssetFd = afd;
+        mJavaResources.contentAssetFd = afd;
+    }
+
+    private void addPlaylistItemInternalContentUri(Context context, Uri uri)
+            throws IOException, IllegalArgumentException, SecurityException, IllegalStateException {
+        final ContentResolver cr = context.getContentResolver();
+
+        AssetFileDescriptor afd = cr.openAssetFileDescriptor(uri, "r");
+        FileDescriptor fd = afd.getFileDescriptor();
+        final int nativeFD;
+
+        try {
+            nativeFD = checkAndObtainNativeFileDescriptor(fd);
+        } catch (IllegalArgumentException e) {
+            closeQuietly(afd);
+            throw e;
+        }
+
+        final int result;
+        final long declLength = afd.getDeclaredLength();
+        final long startOffset = afd.getStartOffset();
+        if (declLength < 0) {
+            result = addPlaylistItemFdImplNative(mNativeHandle, nativeFD);
+        } else {
+            result = addPlaylistItemFdImplNative(
+                    mNativeHandle, nativeFD, startOffset, declLength);
+        }
+
+        if (result != Internal.RESULT_SUCCESS) {
+            closeQuietly(afd);
+        }
+
+        parseResultAndThrowException(result);
+
+        addPlaylistAssetFd(afd);
+    }
+
+    private void addPlaylistAssetFd(AssetFileDescriptor afd) {
+        synchronized (mJavaResources.playlistAssetFds) {
+            mJavaResources.playlistAssetFds.add(afd);
+        }
+    }
+
+    private void onPlaylistTrackChanged(int remaining) {
+        // NOTE:
+        // This method is called on the native event thread before any
+        // following playlist operation is processed, and an entry is added
+        // after the native layer accepted the item. So the number of the
+        // consumed items is never over-estimated here.
+        synchronized (mJavaResources.playlistAssetFds) {
+            final int consumed = mJavaResources.playlistAssetFds.size() - Math.max(0, remaining);
+
+            if (consumed <= 0) {
+                return;
+            }
+
+            // the previous item is no longer referred by the native layer
+            closeQuietly(mJavaResources.currentPlaylistAssetFd);
+
+            // skipped items
+            for (int i = 0; i < (consumed - 1); i++) {
+                closeQuietly(mJavaResources.playlistAssetFds.get(i));
+            }
+
+            // the new current data source has to be kept opened
+            mJavaResources.currentPlaylistAssetFd = mJavaResources.playlistAssetFds.get(consumed - 1);
+
+            mJavaResources.playlistAssetFds.subList(0, consumed).clear();
+        }
+    }
+
+    private void releasePendingPlaylistFileDescriptors() {
+        synchronized (mJavaResources.playlistAssetFds) {
+            for (AssetFileDescriptor afd : mJavaResources.playlistAssetFds) {
+                closeQuietly(afd);
+            }
+            mJavaResources.playlistAssetFds.clear();
+        }
+    }
+
+    private void releaseOpenedPlaylistFileDescriptors() {
+        synchronized (mJavaResources.playlistAssetFds) {
+            releasePendingPlaylistFileDescriptors();
+            closeQuietly(mJavaResources.currentPlaylistAssetFd);
+            mJavaResources.currentPlaylistAssetFd = null;
+        }
     }
 
     private void releaseOpenedContentFileDescriptor() {
-        if (mContentAssetFd == null) {
+        if (mJavaResources.contentAssetFd == null) {
             return;
         }
 
-        closeQuietly(mContentAssetFd);
-        mContentAssetFd = null;
+        closeQuietly(mJavaResources.contentAssetFd);
+        mJavaResources.contentAssetFd = null;
     }
 
     //
@@ -646,29 +1302,29 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
                 WAKELOCK_TAG);
         wakelock.setReferenceCounted(false);
 
-        mWakeLock = wakelock;
+        mJavaResources.wakeLock = wakelock;
     }
 
     private boolean releaseWakeLockObject() {
-        if (mWakeLock == null)
+        if (mJavaResources.wakeLock == null)
             return false;
 
-        final boolean wasHeld = mWakeLock.isHeld();
-        mWakeLock.release();
-        mWakeLock = null;
+        final boolean wasHeld = mJavaResources.wakeLock.isHeld();
+        mJavaResources.wakeLock.release();
+        mJavaResources.wakeLock = null;
 
         return wasHeld;
     }
 
     @SuppressLint("Wakelock")
     private void stayAwake(boolean awake) {
-        if (mWakeLock == null)
+        if (mJavaResources.wakeLock == null)
             return;
 
         if (awake) {
-            mWakeLock.acquire();
+            mJavaResources.wakeLock.acquire();
         } else {
-            mWakeLock.release();
+            mJavaResources.wakeLock.release();
         }
     }
 
@@ -686,7 +1342,7 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         }
     }
 
-    private static int checkAndObtainNativeFileDescriptor(FileDescriptor fd) {
+    /* package */static int checkAndObtainNativeFileDescriptor(FileDescriptor fd) {
         if (fd == null)
             throw new IllegalArgumentException("The argument fd cannot be null");
         if (!fd.valid())
@@ -798,6 +1454,29 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         }
     }
 
+    private void handleOnCommandCompletion(int token, int count, int[] results) {
+        final PendingCommandBatch pending;
+
+        synchronized (mPendingCommandBatches) {
+            pending = mPendingCommandBatches.get(token);
+            mPendingCommandBatches.remove(token);
+        }
+
+        if (pending == null)
+            return;
+
+        if (results == null || count != pending.batch.mCount) {
+            Log.e(TAG, "Unexpected command batch result (token = " + token + ")");
+            return;
+        }
+
+        pending.batch.mResults = results;
+
+        if (pending.listener != null) {
+            pending.listener.onCommandBatchCompletion(this, pending.batch);
+        }
+    }
+
     private void handleOnError(int what, int extra) {
         boolean handled = false;
 
@@ -814,6 +1493,171 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         }
     }
 
+    //
+    // Status block
+    //
+
+    /**
+     * Reader of the status block which is updated by the internal thread
+     * (seqlock protected). The memory layout has to be matched with
+     * OpenSLMediaPlayer::status_block_t.
+     */
+    private static final class StatusBlock {
+        private static final int SIZE = 48;
+
+        private static final int OFFSET_SEQUENCE = 0;
+        private static final int OFFSET_PLAYER_STATE = 4;
+        private static final int OFFSET_FLAGS = 8;
+        private static final int OFFSET_DURATION = 12;
+        private static final int OFFSET_POSITION = 16;
+        private static final int OFFSET_BUFFERED_POSITION = 20;
+        private static final int OFFSET_TIMESTAMP = 40;
+
+        // NOTE: These values have to be matched with OSLMP_STATUS_FLAG_xxx
+        private static final int FLAG_PLAYING = (1 << 0);
+        private static final int FLAG_LOOPING = (1 << 1);
+        private static final int FLAG_DURATION_AVAILABLE = (1 << 2);
+        private static final int FLAG_POSITION_AVAILABLE = (1 << 3);
+
+        // NOTE: These values have to be matched with oslmp::impl::PlayerState
+        private static final int STATE_IDLE = 1;
+        private static final int STATE_INITIALIZED = 2;
+        private static final int STATE_PREPARING_SYNC = 3;
+        private static final int STATE_PREPARING_ASYNC = 4;
+        private static final int STATE_PREPARED = 5;
+        private static final int STATE_STARTED = 6;
+        private static final int STATE_PAUSED = 7;
+        private static final int STATE_PLAYBACK_COMPLETED = 8;
+        private static final int STATE_STOPPED = 9;
+
+        // states which the blocking methods do not raise any errors
+        private static final int STATE_MASK_GET_CURRENT_POSITION =
+                (1 << STATE_IDLE) | (1 << STATE_INITIALIZED) | (1 << STATE_PREPARED) |
+                (1 << STATE_STARTED) | (1 << STATE_PAUSED) | (1 << STATE_STOPPED) |
+                (1 << STATE_PLAYBACK_COMPLETED);
+        private static final int STATE_MASK_GET_DURATION =
+                (1 << STATE_PREPARED) | (1 << STATE_STARTED) | (1 << STATE_PAUSED) |
+                (1 << STATE_STOPPED) | (1 << STATE_PLAYBACK_COMPLETED);
+        private static final int STATE_MASK_IS_PLAYING =
+                (1 << STATE_IDLE) | (1 << STATE_INITIALIZED) | (1 << STATE_PREPARING_SYNC) |
+                (1 << STATE_PREPARING_ASYNC) | (1 << STATE_PREPARED) | (1 << STATE_STARTED) |
+                (1 << STATE_PAUSED) | (1 << STATE_PLAYBACK_COMPLETED) | (1 << STATE_STOPPED);
+
+        // the internal thread updates the block at least every 30 ms while playing
+        private static final long MAX_EXTRAPOLATION_NS = 100L * 1000000L;
+
+        // NOTE:
+        // The block is updated by the internal thread under a seqlock. Plain ByteBuffer
+        // reads have no acquire semantics, so a consistent copy is taken by the native
+        // side (sequence is read with acquire ordering before and after the fields)
+        // and the fields are read from the copy.
+        private final ByteBuffer mBuffer;
+        private final ByteBuffer mSnapshot;
+
+        // snapshot values (guarded by this)
+        private int playerState;
+        private int flags;
+        private int duration;
+        private int position;
+        private int bufferedPosition;
+        private long timestamp;
+
+        private StatusBlock(ByteBuffer buffer) {
+            mBuffer = buffer;
+            mSnapshot = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+        }
+
+        static StatusBlock create(long nativeHandle) {
+            try {
+                final ByteBuffer buffer =
+                        ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+
+                if (setStatusBlockImplNative(nativeHandle, buffer) == Internal.RESULT_SUCCESS) {
+                    return new StatusBlock(buffer);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to setup status block", e);
+            }
+            return null;
+        }
+
+        /** @return position in milliseconds, or -1 if not available */
+        synchronized int readCurrentPosition() {
+            if (!(read() && isInState(STATE_MASK_GET_CURRENT_POSITION) &&
+                    hasFlags(FLAG_POSITION_AVAILABLE))) {
+                return -1;
+            }
+            return getExtrapolatedPosition();
+        }
+
+        /** @return duration in milliseconds, or -1 if not available */
+        synchronized int readDuration() {
+            if (!(read() && isInState(STATE_MASK_GET_DURATION) &&
+                    hasFlags(FLAG_DURATION_AVAILABLE))) {
+                return -1;
+            }
+            return duration;
+        }
+
+        /** @return buffered position in milliseconds, or -1 if not available */
+        synchronized int readBufferedPosition() {
+            if (!(read() && isInState(STATE_MASK_GET_DURATION))) {
+                return -1;
+            }
+            return bufferedPosition;
+        }
+
+        /** @return 1: playing, 0: not playing, -1: not available */
+        synchronized int readIsPlaying() {
+            if (!(read() && isInState(STATE_MASK_IS_PLAYING))) {
+                return -1;
+            }
+            return hasFlags(FLAG_PLAYING) ? 1 : 0;
+        }
+
+        private boolean read() {
+            if (readStatusBlockImplNative(mBuffer, mSnapshot) != Internal.RESULT_SUCCESS) {
+                return false;
+            }
+
+            final ByteBuffer b = mSnapshot;
+
+            playerState = b.getInt(OFFSET_PLAYER_STATE);
+            flags = b.getInt(OFFSET_FLAGS);
+            duration = b.getInt(OFFSET_DURATION);
+            position = b.getInt(OFFSET_POSITION);
+            bufferedPosition = b.getInt(OFFSET_BUFFERED_POSITION);
+            timestamp = b.getLong(OFFSET_TIMESTAMP);
+
+            return true;
+        }
+
+        private boolean isInState(int mask) {
+            return (playerState >= 0 && playerState < 32) && ((mask & (1 << playerState)) != 0);
+        }
+
+        private boolean hasFlags(int mask) {
+            return ((flags & mask) == mask);
+        }
+
+        private int getExtrapolatedPosition() {
+            if (!(playerState == STATE_STARTED && hasFlags(FLAG_PLAYING))) {
+                return position;
+            }
+
+            // NOTE: System.nanoTime() is based on CLOCK_MONOTONIC
+            final long elapsed = Math.max(0, Math.min(
+                    (System.nanoTime() - timestamp), MAX_EXTRAPOLATION_NS));
+            long pos = position + (elapsed / 1000000L);
+
+            if (hasFlags(FLAG_DURATION_AVAILABLE) && duration > 0) {
+                pos = Math.min(pos, duration);
+            }
+
+            return (int) pos;
+        }
+    }
+
     //
     // Internal methods accessor
     //
@@ -892,6 +1736,7 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         public void release() {
             mRefPlayer.clear();
             clearPendingMessages();
+            removeMessages(MESSAGE_ON_COMMAND_COMPLETION);
         }
 
         @Override
@@ -916,6 +1761,7 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     private static final int MESSAGE_ON_BUFFERING_UPDATE = 4;
     private static final int MESSAGE_ON_INFO = 5;
     private static final int MESSAGE_ON_ERROR = 6;
+    private static final int MESSAGE_ON_COMMAND_COMPLETION = 7;
 
     private static String toStringMessageCode(int code) {
         switch (code) {
@@ -933,6 +1779,8 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
                 return "MESSAGE_ON_INFO";
             case MESSAGE_ON_ERROR:
                 return "MESSAGE_ON_ERROR";
+            case MESSAGE_ON_COMMAND_COMPLETION:
+                return "MESSAGE_ON_COMMAND_COMPLETION";
             default:
                 return "FIXME";
         }
@@ -963,6 +1811,9 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
             case MESSAGE_ON_ERROR:
                 handleOnError(msg.arg1, msg.arg2);
                 break;
+            case MESSAGE_ON_COMMAND_COMPLETION:
+                handleOnCommandCompletion(msg.arg1, msg.arg2, (int[]) msg.obj);
+                break;
         }
     }
 
@@ -979,6 +1830,10 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         if (handler == null)
             return;
 
+        if (what == MESSAGE_ON_INFO && arg1 == MEDIA_INFO_PLAYLIST_TRACK_CHANGED) {
+            mp.onPlaylistTrackChanged(arg2);
+        }
+
         final Message msg = handler.obtainMessage();
 
         msg.what = what;
@@ -1052,6 +1907,42 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
         }
     }
 
+    /**
+     * Java side resources which have to be released along with the native
+     * handle. Does not refer the player, so they can be released by the
+     * {@link OpenSLMediaPlayerNativeResourceReaper} even if the player has
+     * been leaked without calling release().
+     */
+    private static final class JavaResources implements Runnable {
+        public WakeLock wakeLock;
+        public AssetFileDescriptor contentAssetFd;
+        // one entry per pending playlist item (null if not opened by this class)
+        public final ArrayList<AssetFileDescriptor> playlistAssetFds =
+                new ArrayList<AssetFileDescriptor>();
+        public AssetFileDescriptor currentPlaylistAssetFd;
+
+        @Override
+        public void run() {
+            if (wakeLock != null) {
+                wakeLock.release();
+                wakeLock = null;
+            }
+
+            closeQuietly(contentAssetFd);
+            contentAssetFd = null;
+
+            synchronized (playlistAssetFds) {
+                for (AssetFileDescriptor afd : playlistAssetFds) {
+                    closeQuietly(afd);
+                }
+                playlistAssetFds.clear();
+
+                closeQuietly(currentPlaylistAssetFd);
+                currentPlaylistAssetFd = null;
+            }
+        }
+    }
+
     //
     // Native methods
     //
@@ -1104,4 +1995,31 @@ public class OpenSLMediaPlayer implements IBasicMediaPlayer {
     private static native int setAudioStreamTypeImplNative(long handle, int streamtype);
 
     private static native int setNextMediaPlayerImplNative(long handle, long nextHandle);
+
+    private static native int postCommandsImplNative(
+            long handle, int token, int[] commands, int count);
+
+    private static native int setStatusBlockImplNative(long handle, ByteBuffer block);
+
+    private static native int readStatusBlockImplNative(ByteBuffer block, ByteBuffer snapshot);
+
+    private static native int addPlaylistItemPathImplNative(long handle, String path);
+
+    private static native int addPlaylistItemUriImplNative(long handle, String uri);
+
+    private static native int addPlaylistItemFdImplNative(long handle, int fd);
+
+    private static native int addPlaylistItemFdImplNative(long handle, int fd, long offset,
+            long length);
+
+    private static native int clearPlaylistImplNative(long handle);
+
+    private static native int setFadeCurveImplNative(
+            long handle, int curve, int fadeInMs, int fadeOutMs);
+
+    private static native int setLoopPointsImplNative(long handle, int startMs, int endMs);
+
+    private static native int setInsertEqualizerEnabledImplNative(long handle, boolean enabled);
+
+    private static native int setInsertEqualizerBandLevelsImplNative(long handle, short[] levels);
 }
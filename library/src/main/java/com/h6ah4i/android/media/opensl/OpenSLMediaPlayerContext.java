@@ -17,6 +17,9 @@
 
 package com.h6ah4i.android.media.opensl;
 
+import java.io.File;
+import java.util.Arrays;
+
 import android.content.Context;
 import android.media.AudioManager;
 import android.util.Log;
@@ -51,8 +54,32 @@ public class OpenSLMediaPlayerContext implements IReleasable {
     // Sink back-end implementation type specifier
     public static final int SINK_BACKEND_TYPE_OPENSL = 0;
     public static final int SINK_BACKEND_TYPE_AUDIO_TRACK = 1;
+    /** Outputs no sound, used by {@link OpenSLOfflineRenderer} */
+    public static final int SINK_BACKEND_TYPE_NULL = 2;
+
+    // Sink buffering mode specifier
+    public static final int SINK_BUFFERING_MODE_FIXED = 0;
+    public static final int SINK_BUFFERING_MODE_ADAPTIVE = 1;
+
+    // Valid range of the adaptive sink buffering parameters
+    /** Min. value of the {@link Parameters#adaptiveSinkMinBlocks} */
+    public static final int ADAPTIVE_SINK_MIN_BLOCKS = 2;
+    /** Max. value of the {@link Parameters#adaptiveSinkMaxBlocks} */
+    public static final int ADAPTIVE_SINK_MAX_BLOCKS = 32;
+
+    // Decoder back-end implementation type specifier
+    public static final int DECODER_BACKEND_TYPE_OPENSL = 0;
+    /** Uses the NDK MediaCodec API (Android 5.0 or later, falls back to the OpenSL decoder on older devices) */
+    public static final int DECODER_BACKEND_TYPE_MEDIACODEC = 1;
+
+    // Source worker thread count specifier
+    /** The decoder callbacks convert and resample the decoded data */
+    public static final int SOURCE_WORKER_THREAD_COUNT_DISABLED = 0;
+    /** Determined by the number of the CPU cores */
+    public static final int SOURCE_WORKER_THREAD_COUNT_AUTO = -1;
 
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private boolean mHasNative;
     private AudioSystemUtils.AudioSystemProperties mProperties;
@@ -72,8 +99,103 @@ public class OpenSLMediaPlayerContext implements IReleasable {
         public int sinkBackEndType = SINK_BACKEND_TYPE_OPENSL;
         public boolean useLowLatencyIfAvailable = false;
         public boolean useFloatingPointIfAvailable = true;
+        public int sinkBufferingMode = SINK_BUFFERING_MODE_FIXED;
+        public int adaptiveSinkMinBlocks = 2; // (only used in adaptive buffering mode, must be >= 2)
+        public int adaptiveSinkMaxBlocks = 16; // (only used in adaptive buffering mode, min. blocks - 32)
+        public int adaptiveSinkShrinkInterval = 5000; // [milli seconds] (only used in adaptive buffering mode, must be > 0)
+        public int decodedClipCacheSize = 0; // [bytes] (0: disabled)
+        public int decodedClipMaxDuration = 5000; // [milli seconds] (longer clips are not cached)
+        public File seekIndexCacheDirectory = null; // (null: disabled)
+        public int seekIndexCacheMaxSize = 4 * 1024 * 1024; // [bytes] (the least recently used index files are deleted)
+        public int loopBufferMaxDuration = 0; // [milli seconds] (longer loop regions are not buffered, 0: disabled)
+        public int decoderBackEndType = DECODER_BACKEND_TYPE_OPENSL;
+        public int sourceWorkerThreadCount = SOURCE_WORKER_THREAD_COUNT_DISABLED; // (max. 4)
+        public int mixerMaxSources = 16; // (number of the sources which can be mixed at once, max. 128)
     }
 
+    /**
+     * Snapshot of the audio engine statistics.
+     * <p>
+     * The counters are accumulated since the context was created or
+     * {@link OpenSLMediaPlayerContext#resetEngineStatistics()} was called.
+     * Each field is sampled independently, so the snapshot is not strictly
+     * consistent between fields.
+     * </p>
+     */
+    public static class EngineStatistics {
+        /** Number of bins of the queue depth histograms */
+        public static final int NUM_HISTOGRAM_BINS = 8;
+
+        /** Number of times the sink ran out of the mixed audio data */
+        public long sinkUnderrunCount;
+        /** Number of silent blocks played by the sink */
+        public long sinkSilentBlockCount;
+        /** Number of blocks mixed */
+        public long mixerBlockCount;
+        /** Number of blocks mixed after the sink ran out of the mixed audio data */
+        public long mixerLateBlockCount;
+        /** Total mixer thread CPU time spent to mix blocks [nano seconds] */
+        public long mixerCpuTimeNs;
+        /** Max. mixer thread CPU time spent to mix a block [nano seconds] */
+        public long mixerMaxBlockCpuTimeNs;
+        /** Number of times a playing source had no decoded data */
+        public long sourceStarvedBlockCount;
+        /** Total number of decoded frames */
+        public long decodedFrames;
+        /** Total decoder callback CPU time, includes resampling [nano seconds] */
+        public long decoderCpuTimeNs;
+        /**
+         * Histogram of the sink queue depth, sampled on every mixed block.
+         * bin[i] counts the depth in [i * capacity / NUM_HISTOGRAM_BINS, (i +
+         * 1) * capacity / NUM_HISTOGRAM_BINS).
+         */
+        public final long[] sinkQueueDepthHistogram = new long[NUM_HISTOGRAM_BINS];
+        /**
+         * Histogram of the source queue depth of playing players, sampled on
+         * every mixed block.
+         */
+        public final long[] sourceQueueDepthHistogram = new long[NUM_HISTOGRAM_BINS];
+
+        /* package */void setValues(long[] values) {
+            sinkUnderrunCount = values[0];
+            sinkSilentBlockCount = values[1];
+            mixerBlockCount = values[2];
+            mixerLateBlockCount = values[3];
+            mixerCpuTimeNs = values[4];
+            mixerMaxBlockCpuTimeNs = values[5];
+            sourceStarvedBlockCount = values[6];
+            decodedFrames = values[7];
+            decoderCpuTimeNs = values[8];
+            System.arraycopy(values, 9, sinkQueueDepthHistogram, 0, NUM_HISTOGRAM_BINS);
+            System.arraycopy(values, 9 + NUM_HISTOGRAM_BINS, sourceQueueDepthHistogram, 0,
+                    NUM_HISTOGRAM_BINS);
+        }
+
+        @Override
+        public String toString() {
+            return "EngineStatistics{" +
+                    "sinkUnderrunCount=" + sinkUnderrunCount +
+                    ", sinkSilentBlockCount=" + sinkSilentBlockCount +
+                    ", mixerBlockCount=" + mixerBlockCount +
+                    ", mixerLateBlockCount=" + mixerLateBlockCount +
+                    ", mixerCpuTimeNs=" + mixerCpuTimeNs +
+                    ", mixerMaxBlockCpuTimeNs=" + mixerMaxBlockCpuTimeNs +
+                    ", sourceStarvedBlockCount=" + sourceStarvedBlockCount +
+                    ", decodedFrames=" + decodedFrames +
+                    ", decoderCpuTimeNs=" + decoderCpuTimeNs +
+                    ", sinkQueueDepthHistogram=" + Arrays.toString(sinkQueueDepthHistogram) +
+                    ", sourceQueueDepthHistogram=" + Arrays.toString(sourceQueueDepthHistogram) +
+                    "}";
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context the application context
+     * @param params the parameters (the default parameters are used if null)
+     * @throws IllegalArgumentException if the sink buffering parameters are invalid
+     */
     public OpenSLMediaPlayerContext(Context context, Parameters params) {
         final AudioSystemProperties props = AudioSystemUtils.getProperties(context);
 
@@ -81,10 +203,12 @@ public class OpenSLMediaPlayerContext implements IReleasable {
             params = new Parameters();
         }
 
+        checkSinkBufferingParameters(params);
+
         boolean hasNative = false;
         if (HAS_NATIVE) {
             try {
-                final int[] iparams = new int[13];
+                final int[] iparams = new int[24];
 
                 iparams[0] = props.outputSampleRate * 1000; // [Hz] -> [milli hertz]
                 iparams[1] = props.outputFramesPerBuffer;
@@ -99,10 +223,28 @@ public class OpenSLMediaPlayerContext implements IReleasable {
                 iparams[10] = params.sinkBackEndType;
                 iparams[11] = params.useLowLatencyIfAvailable ? 1 : 0;
                 iparams[12] = params.useFloatingPointIfAvailable ? 1 : 0;
+                iparams[13] = params.sinkBufferingMode;
+                iparams[14] = params.adaptiveSinkMinBlocks;
+                iparams[15] = params.adaptiveSinkMaxBlocks;
+                iparams[16] = params.adaptiveSinkShrinkInterval;
+                iparams[17] = params.decodedClipCacheSize;
+                iparams[18] = params.decodedClipMaxDuration;
+                iparams[19] = params.loopBufferMaxDuration;
+                iparams[20] = params.decoderBackEndType;
+                iparams[21] = params.sourceWorkerThreadCount;
+                iparams[22] = params.mixerMaxSources;
+                iparams[23] = params.seekIndexCacheMaxSize;
+
+                final String seekIndexCacheDir = (params.seekIndexCacheDirectory != null)
+                        ? params.seekIndexCacheDirectory.getAbsolutePath() : null;
 
-                mNativeHandle = createNativeImplHandle(iparams);
+                final long t0 = System.nanoTime();
+                mNativeHandle = createNativeImplHandle(iparams, seekIndexCacheDir);
                 if (mNativeHandle != 0) {
                     hasNative = true;
+                    mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
+                    OpenSLMediaPlayerNativeLibraryLoader.recordContextInitializationTime(
+                            System.nanoTime() - t0);
                 }
             } catch (Throwable e) {
             }
@@ -111,17 +253,12 @@ public class OpenSLMediaPlayerContext implements IReleasable {
         mProperties = props;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
-    }
-
     @Override
     public void release() {
         try {
             if (mHasNative && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
@@ -129,15 +266,125 @@ public class OpenSLMediaPlayerContext implements IReleasable {
         }
     }
 
+    /**
+     * Installs the optional module at runtime.
+     * <p>
+     * Only {@link #OPTION_USE_HQ_EQUALIZER} and {@link #OPTION_USE_PREAMP}
+     * can be installed after the context has been created. Nothing happens
+     * if the module is already installed.
+     * </p>
+     *
+     * @param option OPTION_USE_HQ_EQUALIZER or OPTION_USE_PREAMP
+     * @throws IllegalArgumentException if the option is not supported
+     * @throws IllegalStateException if the context has already been released
+     */
+    public void installModule(int option) {
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                installModuleImplNative(mNativeHandle, option));
+    }
+
+    /**
+     * Uninstalls the optional module installed by
+     * {@link #installModule(int)} or by the {@link Parameters#options}.
+     * <p>
+     * All effect instances which use the module (e.g.
+     * {@link com.h6ah4i.android.media.opensl.audiofx.OpenSLHQEqualizer}) have
+     * to be released before calling this method.
+     * </p>
+     *
+     * @param option OPTION_USE_HQ_EQUALIZER or OPTION_USE_PREAMP
+     * @throws IllegalArgumentException if the option is not supported
+     * @throws IllegalStateException if the module is still in use
+     */
+    public void uninstallModule(int option) {
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                uninstallModuleImplNative(mNativeHandle, option));
+    }
+
+    /**
+     * Gets the snapshot of the audio engine statistics.
+     *
+     * @param stats the object to receive the statistics, a new object is
+     *            allocated if null
+     * @return the statistics
+     * @throws IllegalStateException if the context has already been released
+     */
+    public EngineStatistics getEngineStatistics(EngineStatistics stats) {
+        final long[] values = new long[9 + 2 * EngineStatistics.NUM_HISTOGRAM_BINS];
+
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                getEngineStatisticsImplNative(mNativeHandle, values));
+
+        if (stats == null) {
+            stats = new EngineStatistics();
+        }
+        stats.setValues(values);
+
+        return stats;
+    }
+
+    /**
+     * Resets all counters of the audio engine statistics.
+     *
+     * @throws IllegalStateException if the context has already been released
+     */
+    public void resetEngineStatistics() {
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                resetEngineStatisticsImplNative(mNativeHandle));
+    }
+
+    /**
+     * Discards all decoded clips held by the decoded clip cache.
+     * <p>
+     * The players which are already prepared with a cached clip are not
+     * affected.
+     * </p>
+     *
+     * @throws IllegalStateException if the context has already been released
+     */
+    public void clearDecodedClipCache() {
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                clearDecodedClipCacheImplNative(mNativeHandle));
+    }
+
     //
     // Internal methods
     //
+    private static void checkSinkBufferingParameters(Parameters params) {
+        switch (params.sinkBufferingMode) {
+            case SINK_BUFFERING_MODE_FIXED:
+                break;
+            case SINK_BUFFERING_MODE_ADAPTIVE:
+                if (params.adaptiveSinkMinBlocks < ADAPTIVE_SINK_MIN_BLOCKS)
+                    throw new IllegalArgumentException(
+                            "adaptiveSinkMinBlocks must be >= " + ADAPTIVE_SINK_MIN_BLOCKS);
+                if (params.adaptiveSinkMaxBlocks < params.adaptiveSinkMinBlocks)
+                    throw new IllegalArgumentException(
+                            "adaptiveSinkMaxBlocks must be >= adaptiveSinkMinBlocks");
+                if (params.adaptiveSinkMaxBlocks > ADAPTIVE_SINK_MAX_BLOCKS)
+                    throw new IllegalArgumentException(
+                            "adaptiveSinkMaxBlocks must be <= " + ADAPTIVE_SINK_MAX_BLOCKS);
+                if (params.adaptiveSinkShrinkInterval <= 0)
+                    throw new IllegalArgumentException(
+                            "adaptiveSinkShrinkInterval must be > 0");
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown sinkBufferingMode: " + params.sinkBufferingMode);
+        }
+    }
+
 
     /** @hide */
     /* package */long getNativeHandle() {
         return mNativeHandle;
     }
 
+    /** @hide */
+    /* package */AudioSystemProperties getAudioSystemProperties() {
+        return mProperties;
+    }
+
     /** @hide */
     /* package */
     int getAudioSessionId() {
@@ -147,9 +394,19 @@ public class OpenSLMediaPlayerContext implements IReleasable {
     //
     // Native methods
     //
-    private static native long createNativeImplHandle(int[] params);
+    private static native long createNativeImplHandle(int[] params, String seekIndexCacheDir);
 
     private static native void deleteNativeImplHandle(long handle);
 
     private static native int getAudioSessionIdImplNative(long handle);
+
+    private static native int installModuleImplNative(long handle, int option);
+
+    private static native int uninstallModuleImplNative(long handle, int option);
+
+    private static native int getEngineStatisticsImplNative(long handle, long[] values);
+
+    private static native int resetEngineStatisticsImplNative(long handle);
+
+    private static native int clearDecodedClipCacheImplNative(long handle);
 }
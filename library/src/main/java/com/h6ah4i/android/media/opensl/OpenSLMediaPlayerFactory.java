@@ -45,6 +45,7 @@ import com.h6ah4i.android.media.opensl.audiofx.OpenSLVisualizer;
 
 public class OpenSLMediaPlayerFactory implements IMediaPlayerFactory {
     private OpenSLMediaPlayerContext mMediaPlayerContext;
+    private OpenSLMediaPlayerPool mPlayerPool;
 
     public OpenSLMediaPlayerFactory(Context context) {
         mMediaPlayerContext = new OpenSLMediaPlayerContext(context, getDefaultContextParams());
@@ -54,27 +55,70 @@ public class OpenSLMediaPlayerFactory implements IMediaPlayerFactory {
         mMediaPlayerContext = new OpenSLMediaPlayerContext(context, params);
     }
 
+    /**
+     * Constructor which enables the player pool.
+     *
+     * @param context Context
+     * @param params context parameters
+     * @param poolParams player pool parameters
+     */
+    public OpenSLMediaPlayerFactory(
+            Context context,
+            OpenSLMediaPlayerContext.Parameters params,
+            OpenSLMediaPlayerPool.Parameters poolParams) {
+        mMediaPlayerContext = new OpenSLMediaPlayerContext(context, params);
+        mPlayerPool = new OpenSLMediaPlayerPool(
+                mMediaPlayerContext, getMediaPlayerOptions(), poolParams);
+    }
+
     public OpenSLMediaPlayerContext getOpenSLMediaPlayerContext() {
         return mMediaPlayerContext;
     }
 
+    /**
+     * Gets the player pool.
+     *
+     * @return OpenSLMediaPlayerPool instance, or null if the pool is not enabled
+     */
+    public OpenSLMediaPlayerPool getPlayerPool() {
+        return mPlayerPool;
+    }
+
+    /**
+     * Returns the player created by {@link #createMediaPlayer()} to the player
+     * pool. The player is released if the pool is not enabled.
+     *
+     * @param player the player created by this factory
+     */
+    public void recycleMediaPlayer(IBasicMediaPlayer player) {
+        if (player == null)
+            return;
+
+        if (mPlayerPool != null && (player instanceof OpenSLMediaPlayer)) {
+            mPlayerPool.recycle((OpenSLMediaPlayer) player);
+        } else {
+            player.release();
+        }
+    }
+
     @Override
     public void release() throws IllegalStateException, UnsupportedOperationException {
+        if (mPlayerPool != null) {
+            mPlayerPool.release();
+            mPlayerPool = null;
+        }
         if (mMediaPlayerContext != null) {
             mMediaPlayerContext.release();
             mMediaPlayerContext = null;
         }
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        release();
-    }
-
     @Override
     public IBasicMediaPlayer createMediaPlayer()
             throws IllegalStateException, IllegalArgumentException, UnsupportedOperationException {
+        if (mPlayerPool != null) {
+            return mPlayerPool.obtain();
+        }
         return new OpenSLMediaPlayer(getMediaPlayerContext(), getMediaPlayerOptions());
     }
 
@@ -19,29 +19,120 @@ package com.h6ah4i.android.media.opensl;
 import android.os.Build;
 import android.util.Log;
 
+/**
+ * Loads the native libraries used by the OpenSL classes.
+ * <p>
+ * NOTE: The libraries are not loaded per module (player, effects,
+ * visualizers). All JNI entry points are implemented in the single JNI
+ * binding library which links the engine library, so loading them separately
+ * would not defer any work. Instead, the loading is deferred until the first
+ * OpenSL class is initialized.
+ * </p>
+ */
 public class OpenSLMediaPlayerNativeLibraryLoader {
     private static String TAG = "OSLMPNativeLibLoader";
 
     private static final boolean USE_NEON_DISABLED_LIB;
+    private static final long sHelperLibraryLoadTime;
+
+    private static final Object sLock = new Object();
+    private static boolean sLoaded;
+    private static boolean sHasNative;
+    private static long sEngineLibraryLoadTime;
+    private static long sJniLibraryLoadTime;
+    private static long sContextInitializationTime;
+
+    /**
+     * Startup timings. All values are in nano seconds, and zero if not
+     * measured yet.
+     */
+    public static final class StartupTimings {
+        /**
+         * time spent to load the library loader helper library (excluding the
+         * NEON availability check)
+         */
+        public long helperLibraryLoadTime;
+        /** time spent to load the engine library */
+        public long engineLibraryLoadTime;
+        /** time spent to load the JNI binding library */
+        public long jniLibraryLoadTime;
+        /** time spent to initialize the last created OpenSLMediaPlayerContext */
+        public long contextInitializationTime;
+
+        @Override
+        public String toString() {
+            return "StartupTimings{helperLibraryLoadTime=" + helperLibraryLoadTime +
+                    ", engineLibraryLoadTime=" + engineLibraryLoadTime +
+                    ", jniLibraryLoadTime=" + jniLibraryLoadTime +
+                    ", contextInitializationTime=" + contextInitializationTime + "}";
+        }
+    }
 
     public static boolean isSupportedAPILevel() {
         return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH);
     }
 
     public static boolean loadLibraries() {
+        // NOTE:
+        // This method is called from the static initializer of every OpenSL class,
+        // the libraries are loaded only by the first call.
+        synchronized (sLock) {
+            if (!sLoaded) {
+                sHasNative = loadLibrariesInternal();
+                sLoaded = true;
+            }
+            return sHasNative;
+        }
+    }
+
+    /**
+     * Gets the startup timings.
+     *
+     * @return snapshot of the timings
+     */
+    public static StartupTimings getStartupTimings() {
+        final StartupTimings timings = new StartupTimings();
+
+        timings.helperLibraryLoadTime = sHelperLibraryLoadTime;
+
+        synchronized (sLock) {
+            timings.engineLibraryLoadTime = sEngineLibraryLoadTime;
+            timings.jniLibraryLoadTime = sJniLibraryLoadTime;
+            timings.contextInitializationTime = sContextInitializationTime;
+        }
+
+        return timings;
+    }
+
+    /* package */static void recordContextInitializationTime(long time) {
+        synchronized (sLock) {
+            sContextInitializationTime = time;
+        }
+    }
+
+    private static boolean loadLibrariesInternal() {
         boolean hasNative = false;
 
         // load native library
         if (isSupportedAPILevel()) {
             try {
+                final long t0 = System.nanoTime();
+
                 if (USE_NEON_DISABLED_LIB) {
                     System.loadLibrary("OpenSLMediaPlayer-no-neon");
                 } else {
                     System.loadLibrary("OpenSLMediaPlayer");
                 }
 
+                final long t1 = System.nanoTime();
+
                 System.loadLibrary("OpenSLMediaPlayerJNI");
 
+                final long t2 = System.nanoTime();
+
+                sEngineLibraryLoadTime = (t1 - t0);
+                sJniLibraryLoadTime = (t2 - t1);
+
                 hasNative = true;
             } catch (UnsatisfiedLinkError e) {
                 hasNative = false;
@@ -57,8 +148,12 @@ public class OpenSLMediaPlayerNativeLibraryLoader {
 
     static {
         boolean useNeonDisabledLib = false;
+        long loadTime = 0;
         try {
+            final long t0 = System.nanoTime();
             System.loadLibrary("OpenSLMediaPlayerLibLoaderHelper");
+            loadTime = (System.nanoTime() - t0);
+
             useNeonDisabledLib = checkIsNeonDisabledLibRequired();
         } catch (UnsatisfiedLinkError e) {
             Log.e(TAG, "Failed to load native library", e);
@@ -66,6 +161,7 @@ public class OpenSLMediaPlayerNativeLibraryLoader {
             Log.e(TAG, "Failed to load native library", e);
         }
         USE_NEON_DISABLED_LIB = useNeonDisabledLib;
+        sHelperLibraryLoadTime = loadTime;
     }
 
     private static native boolean checkIsNeonDisabledLibRequired();
@@ -0,0 +1,254 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.opensl;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import android.util.Log;
+
+/**
+ * Reclaims native handles of the objects which were never released
+ * explicitly.
+ * <p>
+ * Each native handle is tracked by a {@link PhantomReference}. When the owner
+ * object becomes unreachable without calling release(), the handle is deleted
+ * by the reaper thread (or by the next {@link #register(Object, long)} call)
+ * and counted as a leak.
+ * </p>
+ * <p>
+ * The handle is deleted by the owner class's
+ * {@code static native void deleteNativeImplHandle(long handle)} method.
+ * </p>
+ */
+public final class OpenSLMediaPlayerNativeResourceReaper {
+    private static final String TAG = "OSLMPNativeReaper";
+
+    private static final String DELETER_METHOD_NAME = "deleteNativeImplHandle";
+
+    /** @hide */
+    public static final class Resource extends PhantomReference<Object> {
+        private final Class<?> mOwnerClass;
+        private final Method mDeleter;
+        private final Runnable mLeakCleanup;
+        private long mHandle;
+
+        /* package */Resource(Object owner, long handle, Method deleter, Runnable leakCleanup) {
+            super(owner, sQueue);
+            mOwnerClass = owner.getClass();
+            mHandle = handle;
+            mDeleter = deleter;
+            mLeakCleanup = leakCleanup;
+        }
+
+        /**
+         * Deletes the native handle. Does nothing if already deleted.
+         */
+        public void release() {
+            if (untrack(this)) {
+                clear();
+                deleteHandle(takeHandle());
+            }
+        }
+
+        /* package */void reap() {
+            if (untrack(this)) {
+                final long handle = takeHandle();
+
+                synchronized (sLock) {
+                    sNumLeakedHandles += 1;
+                }
+
+                Log.w(TAG, "A native handle has been leaked: owner = " + mOwnerClass.getName());
+
+                deleteHandle(handle);
+
+                // NOTE: run after the native layer stopped referring the Java side resources
+                if (mLeakCleanup != null) {
+                    mLeakCleanup.run();
+                }
+            }
+        }
+
+        private void deleteHandle(long handle) {
+            try {
+                mDeleter.invoke(null, handle);
+            } catch (Exception e) {
+                Log.e(TAG, "deleteHandle()", e);
+            }
+        }
+
+        private synchronized long takeHandle() {
+            final long handle = mHandle;
+            mHandle = 0;
+            return handle;
+        }
+    }
+
+    private static final Object sLock = new Object();
+    private static final ReferenceQueue<Object> sQueue = new ReferenceQueue<Object>();
+    private static final HashSet<Resource> sResources = new HashSet<Resource>();
+    private static final HashMap<Class<?>, Method> sDeleters = new HashMap<Class<?>, Method>();
+    private static int sNumLeakedHandles;
+    private static Thread sReaperThread;
+
+    private OpenSLMediaPlayerNativeResourceReaper() {
+    }
+
+    /**
+     * Starts tracking the native handle.
+     *
+     * @param owner the object which owns the handle
+     * @param handle the native handle (must not be 0)
+     * @return the resource object, call {@link Resource#release()} instead of
+     *         deleting the handle directly
+     * @hide
+     */
+    public static Resource register(Object owner, long handle) {
+        return register(owner, handle, null);
+    }
+
+    /**
+     * Starts tracking the native handle.
+     *
+     * @param owner the object which owns the handle
+     * @param handle the native handle (must not be 0)
+     * @param leakCleanup releases the Java side resources of the owner after
+     *            the leaked handle has been deleted (can be null, must not
+     *            hold a reference to the owner)
+     * @return the resource object, call {@link Resource#release()} instead of
+     *         deleting the handle directly
+     * @hide
+     */
+    public static Resource register(Object owner, long handle, Runnable leakCleanup) {
+        if (owner == null || handle == 0)
+            throw new IllegalArgumentException();
+
+        final Method deleter = obtainDeleter(owner.getClass());
+
+        // reclaim leaked handles here too so that the native resources are
+        // available for the new instance even if the reaper thread is lagging
+        reapPendingResources();
+
+        final Resource resource = new Resource(owner, handle, deleter, leakCleanup);
+
+        synchronized (sLock) {
+            sResources.add(resource);
+
+            if (sReaperThread == null) {
+                sReaperThread = new ReaperThread();
+                sReaperThread.start();
+            }
+        }
+
+        return resource;
+    }
+
+    /**
+     * Gets the number of native handles reclaimed without being released
+     * explicitly.
+     *
+     * @return number of leaked handles since the process started
+     */
+    public static int getLeakedHandleCount() {
+        synchronized (sLock) {
+            return sNumLeakedHandles;
+        }
+    }
+
+    /**
+     * Gets the number of native handles which are currently alive.
+     *
+     * @return number of alive handles
+     */
+    public static int getLiveHandleCount() {
+        synchronized (sLock) {
+            return sResources.size();
+        }
+    }
+
+    private static Method obtainDeleter(Class<?> ownerClass) {
+        synchronized (sLock) {
+            Method deleter = sDeleters.get(ownerClass);
+
+            if (deleter == null) {
+                // NOTE: the owner can be a sub class of the class which declares the method
+                for (Class<?> c = ownerClass; c != null && deleter == null; c = c.getSuperclass()) {
+                    try {
+                        deleter = c.getDeclaredMethod(DELETER_METHOD_NAME, long.class);
+                    } catch (NoSuchMethodException e) {
+                        // check the super class
+                    }
+                }
+
+                if (deleter == null) {
+                    throw new IllegalArgumentException(
+                            ownerClass.getName() + " does not have " + DELETER_METHOD_NAME + "(long)");
+                }
+
+                deleter.setAccessible(true);
+                sDeleters.put(ownerClass, deleter);
+            }
+
+            return deleter;
+        }
+    }
+
+    private static void reapPendingResources() {
+        Reference<?> ref;
+        while ((ref = sQueue.poll()) != null) {
+            reapOne(ref);
+        }
+    }
+
+    private static void reapOne(Reference<?> ref) {
+        try {
+            ((Resource) ref).reap();
+        } catch (Exception e) {
+            Log.e(TAG, "reap()", e);
+        }
+    }
+
+    private static boolean untrack(Resource resource) {
+        synchronized (sLock) {
+            return sResources.remove(resource);
+        }
+    }
+
+    private static final class ReaperThread extends Thread {
+        ReaperThread() {
+            super("OSLMPNativeReaper");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    reapOne(sQueue.remove());
+                } catch (InterruptedException e) {
+                    // continue
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.opensl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.h6ah4i.android.media.IBasicMediaPlayer;
+import com.h6ah4i.android.media.IReleasable;
+
+/**
+ * Pool of pre-created {@link OpenSLMediaPlayer} instances.
+ * <p>
+ * Creating a player involves native handle creation, pipe allocation and
+ * registration to the audio system. The pool does these steps in advance so
+ * {@link #obtain()} can hand out an instance immediately. Players can also be
+ * pre-prepared for the data sources which are likely to be played next (see
+ * {@link #preload(String)}).
+ * </p>
+ * <p>
+ * NOTE: Pooled players count toward the maximum number of players per
+ * {@link OpenSLMediaPlayerContext} (32), so the number of the pooled players
+ * is limited to {@link #MAX_POOLED_PLAYERS}. Each preloaded player also holds
+ * one of the sources of the context, so the context has to be created with
+ * enough {@link OpenSLMediaPlayerContext.Parameters#mixerMaxSources}. All
+ * methods have to be called from the thread which created the pool.
+ * </p>
+ * <p>
+ * The players obtained from the pool should be returned by
+ * {@link #recycle(OpenSLMediaPlayer)} instead of being released.
+ * </p>
+ * <p>
+ * If the pool is created on a {@link Looper} thread, the idle players taken
+ * by {@link #obtain()} are refilled asynchronously on that thread. Otherwise
+ * the caller has to call {@link #fill()} to refill the pool.
+ * </p>
+ */
+public class OpenSLMediaPlayerPool implements IReleasable {
+    private static final String TAG = "OpenSLMediaPlayerPool";
+
+    /**
+     * Evicts the least recently preloaded or looked-up entry first.
+     */
+    public static final int EVICTION_POLICY_LRU = 0;
+
+    /**
+     * Evicts the oldest preloaded entry first.
+     */
+    public static final int EVICTION_POLICY_FIFO = 1;
+
+    /**
+     * Maximum number of the pooled (idle and preloaded) players. One player
+     * of the context is left for the players in use.
+     */
+    public static final int MAX_POOLED_PLAYERS = 31;
+
+    public static class Parameters {
+        public int numIdlePlayers = 1;
+        public int maxPreloadedPlayers = 1;
+        public int evictionPolicy = EVICTION_POLICY_LRU;
+    }
+
+    private static final class PreloadEntry
+            implements IBasicMediaPlayer.OnPreparedListener, IBasicMediaPlayer.OnErrorListener {
+        final OpenSLMediaPlayer player;
+        boolean prepared;
+        boolean failed;
+
+        PreloadEntry(OpenSLMediaPlayer player) {
+            this.player = player;
+        }
+
+        @Override
+        public void onPrepared(IBasicMediaPlayer mp) {
+            prepared = true;
+        }
+
+        @Override
+        public boolean onError(IBasicMediaPlayer mp, int what, int extra) {
+            failed = true;
+            return true;
+        }
+    }
+
+    private OpenSLMediaPlayerContext mContext;
+    private final int mOptions;
+    private final Parameters mParams;
+    private final ArrayList<OpenSLMediaPlayer> mIdlePlayers;
+    private final LinkedHashMap<String, PreloadEntry> mPreloadedPlayers;
+    private final Handler mHandler;
+    private boolean mRefillScheduled;
+
+    private final Runnable mRefillRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mRefillScheduled = false;
+
+            if (mContext != null) {
+                fill();
+            }
+        }
+    };
+
+    public OpenSLMediaPlayerPool(OpenSLMediaPlayerContext context, int options, Parameters params) {
+        if (context == null)
+            throw new IllegalArgumentException("The argument 'context' cannot be null");
+
+        if (params == null) {
+            params = new Parameters();
+        }
+
+        if (params.numIdlePlayers < 0 || params.maxPreloadedPlayers < 0)
+            throw new IllegalArgumentException("Pool size must be positive or zero");
+
+        if ((params.numIdlePlayers + params.maxPreloadedPlayers) > MAX_POOLED_PLAYERS)
+            throw new IllegalArgumentException(
+                    "Pool size must be less than or equal to " + MAX_POOLED_PLAYERS);
+
+        if (!(params.evictionPolicy == EVICTION_POLICY_LRU ||
+                params.evictionPolicy == EVICTION_POLICY_FIFO))
+            throw new IllegalArgumentException("Unknown eviction policy: " + params.evictionPolicy);
+
+        mContext = context;
+        mOptions = options;
+        mParams = params;
+        mIdlePlayers = new ArrayList<OpenSLMediaPlayer>(params.numIdlePlayers);
+        mPreloadedPlayers = new LinkedHashMap<String, PreloadEntry>(
+                16, 0.75f, (params.evictionPolicy == EVICTION_POLICY_LRU));
+        mHandler = (Looper.myLooper() != null) ? new Handler() : null;
+
+        fill();
+    }
+
+    /**
+     * Creates idle players until the pool reaches the configured size.
+     *
+     * @return number of idle players
+     */
+    public int fill() {
+        checkIsNotReleased();
+
+        while (mIdlePlayers.size() < mParams.numIdlePlayers) {
+            final OpenSLMediaPlayer player = createPlayer();
+
+            if (player == null)
+                break;
+
+            mIdlePlayers.add(player);
+        }
+
+        return mIdlePlayers.size();
+    }
+
+    /**
+     * Obtains an idle player. A new instance is created if the pool is empty.
+     * The taken idle player is refilled asynchronously (see the class
+     * description).
+     *
+     * @return OpenSLMediaPlayer instance (in Idle state)
+     */
+    public OpenSLMediaPlayer obtain() throws IllegalStateException {
+        checkIsNotReleased();
+
+        final int n = mIdlePlayers.size();
+
+        if (n > 0) {
+            final OpenSLMediaPlayer player = mIdlePlayers.remove(n - 1);
+            scheduleRefill();
+            return player;
+        }
+
+        return new OpenSLMediaPlayer(mContext, mOptions);
+    }
+
+    /**
+     * Returns the player to the pool. The player is reset and its settings
+     * (volume, aux effect send, wake mode, looping, loop points, fade curve
+     * and insert equalizer) are restored to the defaults, or it is released
+     * if the pool is already full.
+     *
+     * @param player the player obtained from this pool
+     */
+    public void recycle(OpenSLMediaPlayer player) {
+        if (player == null)
+            return;
+
+        if (mContext == null || mIdlePlayers.size() >= mParams.numIdlePlayers) {
+            player.release();
+            return;
+        }
+
+        try {
+            player.resetForReuse();
+        } catch (IllegalStateException e) {
+            player.release();
+            return;
+        } catch (IllegalArgumentException e) {
+            player.release();
+            return;
+        }
+
+        mIdlePlayers.add(player);
+    }
+
+    /**
+     * Starts preparing a player for the specified path in advance.
+     *
+     * @param path the path of the file
+     */
+    public void preload(String path) throws IOException, IllegalStateException {
+        checkIsNotReleased();
+
+        if (path == null)
+            throw new IllegalArgumentException("The argument 'path' cannot be null");
+
+        if (mPreloadedPlayers.containsKey(path))
+            return;
+
+        final OpenSLMediaPlayer player = obtainForPreload();
+
+        if (player == null)
+            return;
+
+        boolean started = false;
+
+        try {
+            player.setDataSource(path);
+            startPreload(path, player);
+            started = true;
+        } finally {
+            if (!started) {
+                player.release();
+            }
+        }
+    }
+
+    /**
+     * Starts preparing a player for the specified content URI in advance.
+     *
+     * @param context the Context to use when resolving the Uri
+     * @param uri the Content URI of the data
+     */
+    public void preload(Context context, Uri uri) throws IOException, IllegalStateException {
+        checkIsNotReleased();
+
+        if (uri == null)
+            throw new IllegalArgumentException("The argument 'uri' cannot be null");
+
+        final String key = uri.toString();
+
+        if (mPreloadedPlayers.containsKey(key))
+            return;
+
+        final OpenSLMediaPlayer player = obtainForPreload();
+
+        if (player == null)
+            return;
+
+        boolean started = false;
+
+        try {
+            player.setDataSource(context, uri);
+            startPreload(key, player);
+            started = true;
+        } finally {
+            if (!started) {
+                player.release();
+            }
+        }
+    }
+
+    /**
+     * Obtains the player preloaded by {@link #preload(String)}.
+     *
+     * @param path the path of the file
+     * @return the player in Prepared state, or null if it is not available
+     *         (not preloaded, evicted, failed or still preparing)
+     */
+    public OpenSLMediaPlayer obtainPreloaded(String path) {
+        return obtainPreloadedByKey(path);
+    }
+
+    /**
+     * Obtains the player preloaded by {@link #preload(Context, Uri)}.
+     *
+     * @param uri the Content URI of the data
+     * @return the player in Prepared state, or null if it is not available
+     *         (not preloaded, evicted, failed or still preparing)
+     */
+    public OpenSLMediaPlayer obtainPreloaded(Uri uri) {
+        return (uri != null) ? obtainPreloadedByKey(uri.toString()) : null;
+    }
+
+    /**
+     * Cancels all preloads, the players are recycled.
+     */
+    public void clearPreloads() {
+        final Iterator<Map.Entry<String, PreloadEntry>> it = mPreloadedPlayers.entrySet()
+                .iterator();
+
+        while (it.hasNext()) {
+            final PreloadEntry entry = it.next().getValue();
+            it.remove();
+            recycle(entry.player);
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mRefillRunnable);
+            mRefillScheduled = false;
+        }
+
+        clearPreloads();
+
+        for (OpenSLMediaPlayer player : mIdlePlayers) {
+            player.release();
+        }
+        mIdlePlayers.clear();
+
+        mContext = null;
+    }
+
+    private OpenSLMediaPlayer obtainPreloadedByKey(String key) {
+        if (key == null)
+            return null;
+
+        final PreloadEntry entry = mPreloadedPlayers.get(key);
+
+        if (entry == null)
+            return null;
+
+        if (entry.failed) {
+            mPreloadedPlayers.remove(key);
+            recycle(entry.player);
+            return null;
+        }
+
+        if (!entry.prepared)
+            return null;
+
+        mPreloadedPlayers.remove(key);
+        clearListeners(entry.player);
+
+        return entry.player;
+    }
+
+    private OpenSLMediaPlayer obtainForPreload() {
+        if (mParams.maxPreloadedPlayers == 0)
+            return null;
+
+        // evict
+        while (mPreloadedPlayers.size() >= mParams.maxPreloadedPlayers) {
+            final Iterator<Map.Entry<String, PreloadEntry>> it = mPreloadedPlayers.entrySet()
+                    .iterator();
+            final PreloadEntry entry = it.next().getValue();
+
+            it.remove();
+            recycle(entry.player);
+        }
+
+        final int n = mIdlePlayers.size();
+
+        if (n > 0) {
+            final OpenSLMediaPlayer player = mIdlePlayers.remove(n - 1);
+            scheduleRefill();
+            return player;
+        }
+
+        return createPlayer();
+    }
+
+    private void startPreload(String key, OpenSLMediaPlayer player) {
+        final PreloadEntry entry = new PreloadEntry(player);
+
+        player.setOnPreparedListener(entry);
+        player.setOnErrorListener(entry);
+        player.prepareAsync();
+
+        mPreloadedPlayers.put(key, entry);
+    }
+
+    private OpenSLMediaPlayer createPlayer() {
+        try {
+            return new OpenSLMediaPlayer(mContext, mOptions);
+        } catch (IllegalStateException e) {
+            // the context has no room for more players
+            Log.w(TAG, "createPlayer()", e);
+            return null;
+        }
+    }
+
+    private void scheduleRefill() {
+        if (mHandler == null || mRefillScheduled)
+            return;
+
+        mRefillScheduled = true;
+        mHandler.post(mRefillRunnable);
+    }
+
+    private static void clearListeners(OpenSLMediaPlayer player) {
+        player.setOnBufferingUpdateListener(null);
+        player.setOnCompletionListener(null);
+        player.setOnErrorListener(null);
+        player.setOnInfoListener(null);
+        player.setOnPreparedListener(null);
+        player.setOnSeekCompleteListener(null);
+    }
+
+    private void checkIsNotReleased() {
+        if (mContext == null)
+            throw new IllegalStateException("The pool is already released");
+    }
+}
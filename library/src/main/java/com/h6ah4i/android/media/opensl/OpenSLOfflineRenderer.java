@@ -0,0 +1,436 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.opensl;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.h6ah4i.android.media.IBasicMediaPlayer;
+import com.h6ah4i.android.media.IReleasable;
+import com.h6ah4i.android.media.utils.AudioSystemUtils.AudioSystemProperties;
+
+/**
+ * Renders a data source faster than real-time.
+ * <p>
+ * The data source is decoded, resampled and mixed by the same engine as
+ * {@link OpenSLMediaPlayer}, and the mixed output (incl. the HQ equalizer and
+ * the pre. amp effects) is written to a WAV file or to a direct
+ * {@link ByteBuffer} instead of the audio device. The output format is the
+ * interleaved stereo PCM of the system output sampling rate
+ * ({@link #getSampleRate()}), 16 bit integer or 32 bit float
+ * ({@link #isFloatingPointOutput()}).
+ * </p>
+ * <p>
+ * Use {@link #getContext()} to create {@link com.h6ah4i.android.media.opensl.audiofx.OpenSLHQEqualizer}
+ * and {@link com.h6ah4i.android.media.opensl.audiofx.OpenSLPreAmp} instances
+ * to configure the effects. The OpenSL ES output mix effects (e.g. reverb)
+ * are not applied.
+ * </p>
+ * <p>
+ * NOTE: The render methods block the calling thread until the rendering
+ * finishes. The player events are handled on an internal thread, so the
+ * render methods can be called from any thread.
+ * </p>
+ */
+public class OpenSLOfflineRenderer implements IReleasable {
+    private static final String TAG = "OpenSLOfflineRenderer";
+
+    private static final int POLLING_INTERVAL = 10; // [milli seconds]
+
+    private static final int SUPPORTED_OPTIONS =
+            OpenSLMediaPlayerContext.OPTION_USE_HQ_EQUALIZER |
+            OpenSLMediaPlayerContext.OPTION_USE_PREAMP;
+
+    private OpenSLMediaPlayerContext mContext;
+    private OpenSLMediaPlayer mPlayer;
+    private HandlerThread mEventThread;
+    private final int mSampleRate;
+    private final boolean mFloatingPointOutput;
+
+    // guarded by mLock
+    private final Object mLock = new Object();
+    private boolean mCompleted;
+    private boolean mErrorOccurred;
+    private int mErrorWhat;
+    private int mErrorExtra;
+
+    public static class Parameters {
+        public int options = 0; // (only OPTION_USE_HQ_EQUALIZER and OPTION_USE_PREAMP are supported)
+        public int resamplerQuality = OpenSLMediaPlayerContext.RESAMPLER_QUALITY_MIDDLE;
+        public int hqEqualizerImplType = OpenSLMediaPlayerContext.HQ_EQUALIZER_IMPL_BASIC_PEAKING_FILTER;
+        public boolean useFloatingPointIfAvailable = false;
+    }
+
+    public OpenSLOfflineRenderer(Context context, Parameters params) {
+        if (params == null) {
+            params = new Parameters();
+        }
+
+        if ((params.options & ~SUPPORTED_OPTIONS) != 0)
+            throw new IllegalArgumentException("Unsupported options: " + params.options);
+
+        final OpenSLMediaPlayerContext.Parameters ctxParams = new OpenSLMediaPlayerContext.Parameters();
+
+        ctxParams.options = params.options;
+        ctxParams.resamplerQuality = params.resamplerQuality;
+        ctxParams.hqEqualizerImplType = params.hqEqualizerImplType;
+        ctxParams.sinkBackEndType = OpenSLMediaPlayerContext.SINK_BACKEND_TYPE_NULL;
+        ctxParams.useFloatingPointIfAvailable = params.useFloatingPointIfAvailable;
+
+        final OpenSLMediaPlayerContext ctx = new OpenSLMediaPlayerContext(context, ctxParams);
+        final HandlerThread eventThread = new HandlerThread(TAG);
+        final boolean[] isFloat = new boolean[1];
+
+        eventThread.start();
+
+        try {
+            OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                    isFloatingPointOutputImplNative(
+                            OpenSLMediaPlayer.Internal.getNativeHandle(ctx), isFloat));
+
+            // NOTE: the player events are delivered to the thread which created the player
+            mPlayer = createPlayerOnThread(ctx, eventThread);
+        } catch (RuntimeException e) {
+            eventThread.quit();
+            ctx.release();
+            throw e;
+        }
+
+        final AudioSystemProperties props = ctx.getAudioSystemProperties();
+
+        mContext = ctx;
+        mEventThread = eventThread;
+        mSampleRate = props.outputSampleRate;
+        mFloatingPointOutput = isFloat[0];
+
+        mPlayer.setOnCompletionListener(new IBasicMediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(IBasicMediaPlayer mp) {
+                synchronized (mLock) {
+                    mCompleted = true;
+                    mLock.notifyAll();
+                }
+            }
+        });
+        mPlayer.setOnErrorListener(new IBasicMediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(IBasicMediaPlayer mp, int what, int extra) {
+                synchronized (mLock) {
+                    mErrorOccurred = true;
+                    mErrorWhat = what;
+                    mErrorExtra = extra;
+                    mLock.notifyAll();
+                }
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public void release() {
+        try {
+            if (mPlayer != null) {
+                mPlayer.release();
+                mPlayer = null;
+            }
+            if (mContext != null) {
+                mContext.release();
+                mContext = null;
+            }
+            if (mEventThread != null) {
+                mEventThread.quit();
+                mEventThread = null;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "release()", e);
+        }
+    }
+
+    /**
+     * Gets the underlying context.
+     *
+     * @return the context, or null if already released
+     */
+    public OpenSLMediaPlayerContext getContext() {
+        return mContext;
+    }
+
+    /**
+     * Gets the sampling rate of the rendered output.
+     *
+     * @return the sampling rate [Hz]
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Gets the number of channels of the rendered output.
+     *
+     * @return the number of channels (always 2)
+     */
+    public int getChannelCount() {
+        return 2;
+    }
+
+    /**
+     * Gets whether the rendered output is 32 bit float.
+     *
+     * @return true if 32 bit float, false if 16 bit integer
+     */
+    public boolean isFloatingPointOutput() {
+        return mFloatingPointOutput;
+    }
+
+    public void setDataSource(Context context, Uri uri)
+            throws IOException, IllegalArgumentException, SecurityException, IllegalStateException {
+        checkNotReleased();
+        mPlayer.setDataSource(context, uri);
+    }
+
+    public void setDataSource(String path)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        checkNotReleased();
+        mPlayer.setDataSource(path);
+    }
+
+    public void setDataSource(FileDescriptor fd)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        checkNotReleased();
+        mPlayer.setDataSource(fd);
+    }
+
+    public void setDataSource(FileDescriptor fd, long offset, long length)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        checkNotReleased();
+        mPlayer.setDataSource(fd, offset, length);
+    }
+
+    /**
+     * Renders the whole data source to a WAV file.
+     *
+     * @param file the output file (overwritten if exists)
+     * @return the number of rendered frames
+     * @throws IOException if failed to decode the data source or to write the
+     *             file (the incomplete file is deleted)
+     *             (the data source have to be set again if the player reported
+     *             an error)
+     * @throws IllegalStateException if the data source is not set
+     */
+    public long renderToWavFile(File file) throws IOException, IllegalStateException {
+        if (file == null)
+            throw new IllegalArgumentException("The argument 'file' cannot be null");
+
+        return render(file.getAbsolutePath(), null);
+    }
+
+    /**
+     * Renders the whole data source to a direct {@link ByteBuffer}.
+     * <p>
+     * The buffer position and the limit are not modified.
+     * </p>
+     *
+     * @param buffer the direct byte buffer to store the interleaved samples
+     *            (native byte order)
+     * @return the number of rendered frames
+     * @throws IOException if failed to decode the data source, or the buffer
+     *             became full before the end of the data source
+     *             (the data source have to be set again if the player reported
+     *             an error)
+     * @throws IllegalStateException if the data source is not set
+     */
+    public long renderToByteBuffer(ByteBuffer buffer) throws IOException, IllegalStateException {
+        if (buffer == null)
+            throw new IllegalArgumentException("The argument 'buffer' cannot be null");
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("The argument 'buffer' must be a direct buffer");
+
+        return render(null, buffer);
+    }
+
+    private long render(String path, ByteBuffer buffer) throws IOException, IllegalStateException {
+        checkNotReleased();
+
+        final long handle = createNativeImplHandle(
+                OpenSLMediaPlayer.Internal.getNativeHandle(mContext), mSampleRate, path, buffer);
+
+        if (handle == 0) {
+            throw new IOException("Failed to open the output");
+        }
+
+        final OpenSLMediaPlayer player = mPlayer;
+        final long[] status = new long[4];
+        boolean succeeded = false;
+
+        synchronized (mLock) {
+            mCompleted = false;
+            mErrorOccurred = false;
+        }
+
+        try {
+            player.prepare();
+            player.start();
+
+            long prevFrames = -1;
+            boolean completed = false;
+
+            while (true) {
+                boolean errorOccurred;
+                int errorWhat;
+                int errorExtra;
+
+                synchronized (mLock) {
+                    try {
+                        // NOTE: the first completion event is handled without waiting
+                        if (!(mErrorOccurred || (mCompleted && !completed))) {
+                            mLock.wait(POLLING_INTERVAL);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+
+                    errorOccurred = mErrorOccurred;
+                    errorWhat = mErrorWhat;
+                    errorExtra = mErrorExtra;
+                    completed |= mCompleted;
+                }
+
+                if (errorOccurred) {
+                    throw new IOException(
+                            "Player error (what = " + errorWhat + ", extra = " + errorExtra + ")");
+                }
+
+                OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                        getStatusImplNative(handle, status));
+
+                if (status[3] != 0) {
+                    throw new IOException("Failed to write the output");
+                }
+
+                if (status[2] != 0 && !completed) {
+                    throw new IOException("The buffer is full");
+                }
+
+                // NOTE: wait until the blocks in the sink queue are consumed
+                if (completed) {
+                    if (status[0] == prevFrames) {
+                        break;
+                    }
+                    prevFrames = status[0];
+                }
+            }
+
+            player.stop();
+
+            if (finishImplNative(handle) != OpenSLMediaPlayer.Internal.RESULT_SUCCESS) {
+                throw new IOException("Failed to finish the output");
+            }
+
+            OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(
+                    getStatusImplNative(handle, status));
+
+            succeeded = true;
+
+            return status[0];
+        } finally {
+            if (!succeeded) {
+                // NOTE: the mixer must not output to the handle after it is deleted
+                stopPlayerQuietly(player);
+            }
+
+            deleteNativeImplHandle(handle);
+
+            if (!succeeded && path != null && !(new File(path)).delete()) {
+                Log.w(TAG, "Failed to delete the incomplete file: " + path);
+            }
+        }
+    }
+
+    private static void stopPlayerQuietly(OpenSLMediaPlayer player) {
+        try {
+            player.stop();
+        } catch (IllegalStateException e) {
+            // NOTE: stop() is not allowed in the error state
+            try {
+                player.reset();
+            } catch (RuntimeException e2) {
+                Log.e(TAG, "stopPlayerQuietly()", e2);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "stopPlayerQuietly()", e);
+        }
+    }
+
+    private static OpenSLMediaPlayer createPlayerOnThread(
+            final OpenSLMediaPlayerContext context, HandlerThread thread) {
+        final FutureTask<OpenSLMediaPlayer> task = new FutureTask<OpenSLMediaPlayer>(
+                new Callable<OpenSLMediaPlayer>() {
+                    @Override
+                    public OpenSLMediaPlayer call() {
+                        return new OpenSLMediaPlayer(context, 0);
+                    }
+                });
+
+        (new Handler(thread.getLooper())).post(task);
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void checkNotReleased() {
+        if (mPlayer == null)
+            throw new IllegalStateException("Already released");
+    }
+
+    //
+    // Native methods
+    //
+    private static native long createNativeImplHandle(
+            long contextHandle, int sampleRate, String wavPath, ByteBuffer buffer);
+
+    private static native void deleteNativeImplHandle(long handle);
+
+    private static native int getStatusImplNative(long handle, long[] status);
+
+    private static native int finishImplNative(long handle);
+
+    private static native int isFloatingPointOutputImplNative(long contextHandle, boolean[] isFloat);
+}
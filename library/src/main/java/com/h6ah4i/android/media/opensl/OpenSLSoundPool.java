@@ -0,0 +1,291 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.opensl;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import com.h6ah4i.android.media.IReleasable;
+
+/**
+ * Low latency sample playback on the mixer of {@link OpenSLMediaPlayerContext}
+ * (similar to {@link android.media.SoundPool}).
+ * <p>
+ * The samples are decoded into the native memory at the output sampling rate
+ * by the load methods, and the streams are mixed together with the
+ * {@link OpenSLMediaPlayer} instances of the same context. A stream is started
+ * at the next mixer cycle, and when all streams are busy, the stream of the
+ * lowest priority (the oldest one if there are several) is stopped to play
+ * the new one.
+ * </p>
+ * <p>
+ * NOTE: The load methods block the calling thread until the whole sample is
+ * decoded (up to 30 seconds).
+ * </p>
+ */
+public class OpenSLSoundPool implements IReleasable {
+    private static final String TAG = "OpenSLSoundPool";
+
+    public static final int MAX_STREAMS = 32;
+
+    private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
+    private static final boolean HAS_NATIVE;
+
+    static {
+        // load native library
+        HAS_NATIVE = OpenSLMediaPlayerNativeLibraryLoader.loadLibraries();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param context the context
+     * @param maxStreams the maximum number of the simultaneous streams [1, MAX_STREAMS]
+     */
+    public OpenSLSoundPool(OpenSLMediaPlayerContext context, int maxStreams) throws
+            IllegalArgumentException,
+            UnsupportedOperationException
+    {
+        if (context == null)
+            throw new IllegalArgumentException("The argument 'context' cannot be null");
+        if (!(maxStreams >= 1 && maxStreams <= MAX_STREAMS))
+            throw new IllegalArgumentException("The argument 'maxStreams' is out of range: " + maxStreams);
+
+        if (HAS_NATIVE) {
+            mNativeHandle = createNativeImplHandle(
+                    OpenSLMediaPlayer.Internal.getNativeHandle(context), maxStreams);
+        }
+
+        if (mNativeHandle == 0) {
+            throw new UnsupportedOperationException("Failed to initialize native layer");
+        }
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
+    }
+
+    @Override
+    public void release() {
+        try {
+            if (HAS_NATIVE && mNativeHandle != 0) {
+                mNativeResource.release();
+                mNativeResource = null;
+                mNativeHandle = 0;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "release()", e);
+        }
+    }
+
+    /**
+     * Loads a sample from the path.
+     *
+     * @param path the file path or URI
+     * @return the sample ID
+     */
+    public int load(String path) throws IOException, IllegalStateException {
+        if (path == null)
+            throw new IllegalArgumentException("The argument 'path' cannot be null");
+
+        checkNativeImplIsAvailable();
+
+        // NOTE: allocated per call, the methods can be called from multiple threads
+        final int[] sampleId = new int[1];
+        final int result = loadPathImplNative(mNativeHandle, path, sampleId);
+
+        OpenSLMediaPlayer.Internal.parseResultAndThrowException(result);
+
+        return sampleId[0];
+    }
+
+    /**
+     * Loads a sample from the asset file descriptor.
+     *
+     * @param afd the asset file descriptor
+     * @return the sample ID
+     */
+    public int load(AssetFileDescriptor afd) throws IOException, IllegalStateException {
+        if (afd == null)
+            throw new IllegalArgumentException("The argument 'afd' cannot be null");
+
+        return load(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+    }
+
+    /**
+     * Loads a sample from the file descriptor.
+     *
+     * @param fd the file descriptor
+     * @param offset the offset [bytes]
+     * @param length the length [bytes]
+     * @return the sample ID
+     */
+    public int load(FileDescriptor fd, long offset, long length) throws IOException, IllegalStateException {
+        if (offset < 0)
+            throw new IllegalArgumentException("The argument 'offset' must be positive or zero");
+
+        final int nativeFD = OpenSLMediaPlayer.checkAndObtainNativeFileDescriptor(fd);
+
+        checkNativeImplIsAvailable();
+
+        // NOTE: allocated per call, the methods can be called from multiple threads
+        final int[] sampleId = new int[1];
+        final int result = loadFdImplNative(mNativeHandle, nativeFD, offset, length, sampleId);
+
+        OpenSLMediaPlayer.Internal.parseResultAndThrowException(result);
+
+        return sampleId[0];
+    }
+
+    /**
+     * Unloads the sample (the streams playing the sample are stopped).
+     *
+     * @param sampleId the sample ID
+     * @return true if unloaded, false if the sample is not found
+     */
+    public boolean unload(int sampleId) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+
+        final int result = unloadImplNative(mNativeHandle, sampleId);
+
+        if (result == OpenSLMediaPlayer.Internal.RESULT_ILLEGAL_ARGUMENT)
+            return false;
+
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(result);
+
+        return true;
+    }
+
+    /**
+     * Plays the sample.
+     *
+     * @param sampleId the sample ID
+     * @param leftVolume the left volume [0.0, 1.0]
+     * @param rightVolume the right volume [0.0, 1.0]
+     * @param priority the stream priority (0: the lowest priority)
+     * @param loop the loop mode (0: no loop, -1: loop forever, N: repeat N times)
+     * @param rate the playback rate [0.5, 2.0]
+     * @return the stream ID, or 0 if no stream is available
+     */
+    public int play(int sampleId, float leftVolume, float rightVolume, int priority, int loop, float rate)
+            throws IllegalStateException
+    {
+        checkNativeImplIsAvailable();
+
+        final int[] streamId = new int[1];
+        final int result = playImplNative(
+                mNativeHandle, sampleId, leftVolume, rightVolume, priority, loop, rate, streamId);
+
+        if (result == OpenSLMediaPlayer.Internal.RESULT_RESOURCE_ALLOCATION_FAILED ||
+                result == OpenSLMediaPlayer.Internal.RESULT_ILLEGAL_ARGUMENT)
+            return 0;
+
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(result);
+
+        return streamId[0];
+    }
+
+    public void pause(int streamId) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+        parseVoiceCommandResult(pauseImplNative(mNativeHandle, streamId));
+    }
+
+    public void resume(int streamId) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+        parseVoiceCommandResult(resumeImplNative(mNativeHandle, streamId));
+    }
+
+    public void stop(int streamId) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+        parseVoiceCommandResult(stopImplNative(mNativeHandle, streamId));
+    }
+
+    public void setVolume(int streamId, float leftVolume, float rightVolume) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+        parseVoiceCommandResult(setVolumeImplNative(mNativeHandle, streamId, leftVolume, rightVolume));
+    }
+
+    public void setPriority(int streamId, int priority) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+        parseVoiceCommandResult(setPriorityImplNative(mNativeHandle, streamId, priority));
+    }
+
+    public void setLoop(int streamId, int loop) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+        parseVoiceCommandResult(setLoopImplNative(mNativeHandle, streamId, loop));
+    }
+
+    public void setRate(int streamId, float rate) throws IllegalStateException {
+        checkNativeImplIsAvailable();
+        parseVoiceCommandResult(setRateImplNative(mNativeHandle, streamId, rate));
+    }
+
+    //
+    // Utilities
+    //
+    private void checkNativeImplIsAvailable() throws IllegalStateException {
+        if (mNativeHandle == 0) {
+            throw new IllegalStateException("Native implemenation handle is not present");
+        }
+    }
+
+    private static void parseVoiceCommandResult(int result) {
+        // NOTE: same as the SoundPool, the invalid stream IDs are ignored
+        if (result == OpenSLMediaPlayer.Internal.RESULT_ILLEGAL_ARGUMENT)
+            return;
+
+        if (result == OpenSLMediaPlayer.Internal.RESULT_RESOURCE_ALLOCATION_FAILED) {
+            Log.w(TAG, "The stream command queue is full");
+            return;
+        }
+
+        OpenSLMediaPlayer.Internal.parseResultAndThrowExceptForIOExceptions(result);
+    }
+
+    //
+    // Native methods
+    //
+    private static native long createNativeImplHandle(long context_handle, int max_streams);
+
+    private static native void deleteNativeImplHandle(long handle);
+
+    private static native int loadPathImplNative(long handle, String path, int[] sample_id);
+
+    private static native int loadFdImplNative(long handle, int fd, long offset, long length, int[] sample_id);
+
+    private static native int unloadImplNative(long handle, int sample_id);
+
+    private static native int playImplNative(
+            long handle, int sample_id, float left_volume, float right_volume,
+            int priority, int loop, float rate, int[] stream_id);
+
+    private static native int pauseImplNative(long handle, int stream_id);
+
+    private static native int resumeImplNative(long handle, int stream_id);
+
+    private static native int stopImplNative(long handle, int stream_id);
+
+    private static native int setVolumeImplNative(long handle, int stream_id, float left_volume, float right_volume);
+
+    private static native int setPriorityImplNative(long handle, int stream_id, int priority);
+
+    private static native int setLoopImplNative(long handle, int stream_id, int loop);
+
+    private static native int setRateImplNative(long handle, int stream_id, float rate);
+}
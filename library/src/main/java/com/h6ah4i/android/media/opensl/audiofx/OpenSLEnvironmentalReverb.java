@@ -23,6 +23,7 @@ import com.h6ah4i.android.media.audiofx.IEnvironmentalReverb;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeResourceReaper;
 
 public class OpenSLEnvironmentalReverb extends OpenSLAudioEffect implements IEnvironmentalReverb {
     private static final String TAG = "EnvironmentalReverb";
@@ -31,6 +32,7 @@ public class OpenSLEnvironmentalReverb extends OpenSLAudioEffect implements IEnv
 
     // fields
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private int[] mParamIntBuff = new int[10];
     private short[] mParamShortBuff = new short[1];
@@ -53,19 +55,15 @@ public class OpenSLEnvironmentalReverb extends OpenSLAudioEffect implements IEnv
         if (mNativeHandle == 0) {
             throw new UnsupportedOperationException("Failed to initialize native layer");
         }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
     }
 
     @Override
     public void release() {
         try {
             if (HAS_NATIVE && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
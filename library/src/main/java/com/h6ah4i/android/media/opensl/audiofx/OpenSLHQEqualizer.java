@@ -25,11 +25,13 @@ import com.h6ah4i.android.media.audiofx.IEqualizer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeResourceReaper;
 
 public class OpenSLHQEqualizer extends OpenSLAudioEffect implements IEqualizer {
     private static final String TAG = "HQEqualizer";
 
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private int[] mParamIntBuff = new int[32];
     private short[] mParamShortBuff = new short[1];
@@ -57,19 +59,15 @@ public class OpenSLHQEqualizer extends OpenSLAudioEffect implements IEqualizer {
         if (mNativeHandle == 0) {
             throw new UnsupportedOperationException("Failed to initialize native layer");
         }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
     }
 
     @Override
     public void release() {
         try {
             if (HAS_NATIVE && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
@@ -18,6 +18,8 @@
 package com.h6ah4i.android.media.opensl.audiofx;
 
 import java.lang.ref.WeakReference;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 
 import android.util.Log;
 
@@ -25,16 +27,68 @@ import com.h6ah4i.android.media.audiofx.IHQVisualizer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeResourceReaper;
 
 public class OpenSLHQVisualizer implements IHQVisualizer {
     private static final String TAG = "HQVisualizer";
 
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private int[] mParamIntBuff = new int[2];
     private boolean[] mParamBoolBuff = new boolean[1];
 
     private volatile OnDataCaptureListener mOnDataCaptureListener;
+    private volatile OnDirectDataCaptureListener mOnDirectDataCaptureListener;
+    private FloatBuffer mDirectWaveFormBuffer;
+    private FloatBuffer mDirectFftBuffer;
+
+    /**
+     * The OnDirectDataCaptureListener interface defines methods called by the
+     * HQVisualizer when a new capture has been written into the direct buffers
+     * registered with
+     * {@link OpenSLHQVisualizer#setDirectDataCaptureListener(OnDirectDataCaptureListener, FloatBuffer, FloatBuffer, int)}.
+     * <p>
+     * The registered buffers are used as ring buffers. Each capture occupies
+     * {@code (getCaptureSize() * getNumChannels())} floats and the capture
+     * identified by {@code sequence} is stored at the float index
+     * {@code (sequence % numSlots) * (getCaptureSize() * getNumChannels())},
+     * where {@code numSlots} is the buffer capacity divided by the size of a
+     * capture. A slot is overwritten again after {@code numSlots} captures.
+     */
+    public interface OnDirectDataCaptureListener {
+        /**
+         * Method called when a new waveform capture is available.
+         *
+         * @param visualizer HQVisualizer object on which the listener is
+         *            registered.
+         * @param sequence sequence number of the capture. (starts from 0 each
+         *            time the visualizer is enabled)
+         * @param timestamp time when the mixer wrote the last frame of the
+         *            captured data, in the {@link System#nanoTime()} time base.
+         * @param numChannels number of channels.
+         * @param samplingRate sampling rate of the audio visualized.
+         */
+        void onWaveFormDataCapture(
+                OpenSLHQVisualizer visualizer, long sequence, long timestamp,
+                int numChannels, int samplingRate);
+
+        /**
+         * Method called when a new frequency capture is available.
+         *
+         * @param visualizer HQVisualizer object on which the listener is
+         *            registered.
+         * @param sequence sequence number of the capture. (starts from 0 each
+         *            time the visualizer is enabled)
+         * @param timestamp time when the mixer wrote the last frame of the
+         *            captured data, in the {@link System#nanoTime()} time base.
+         * @param numChannels number of channels.
+         * @param samplingRate sampling rate of the audio visualized.
+         */
+        void onFftDataCapture(
+                OpenSLHQVisualizer visualizer, long sequence, long timestamp,
+                int numChannels, int samplingRate);
+    }
 
     static {
         // load native library
@@ -74,26 +128,26 @@ public class OpenSLHQVisualizer implements IHQVisualizer {
         if (mNativeHandle == 0) {
             throw new UnsupportedOperationException("Failed to initialize native layer");
         }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
     }
 
     @Override
     public void release() {
         mOnDataCaptureListener = null;
+        mOnDirectDataCaptureListener = null;
 
         try {
             if (HAS_NATIVE && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
             Log.e(TAG, "release()", e);
         }
+
+        mDirectWaveFormBuffer = null;
+        mDirectFftBuffer = null;
     }
 
     @Override
@@ -218,6 +272,66 @@ public class OpenSLHQVisualizer implements IHQVisualizer {
 
         if (result == OpenSLMediaPlayer.Internal.RESULT_SUCCESS) {
             mOnDataCaptureListener = listener;
+            mOnDirectDataCaptureListener = null;
+            mDirectWaveFormBuffer = null;
+            mDirectFftBuffer = null;
+        }
+
+        throwIllegalStateExceptionIfNeeded(result);
+
+        return translateErrorCode(result);
+    }
+
+    /**
+     * Registers an OnDirectDataCaptureListener interface and the direct
+     * buffers which the native layer writes the captured data into.
+     * <p>
+     * Unlike {@link #setDataCaptureListener(OnDataCaptureListener, int, boolean, boolean)},
+     * captured data are not copied into Java arrays. The listener only receives
+     * the sequence number and the timestamp of each capture. This listener
+     * and the OnDataCaptureListener are exclusive, registering one of them
+     * unregisters the other.
+     * <p>
+     * Call this method with a null listener to stop receiving the capture
+     * updates.
+     *
+     * @param listener OnDirectDataCaptureListener registered
+     * @param waveform direct buffer (native byte order) to store waveform
+     *            captures, or null if a waveform capture is not requested
+     * @param fft direct buffer (native byte order) to store frequency
+     *            captures, or null if a frequency capture is not requested
+     * @param rate rate in milliHertz at which the capture should be updated
+     * @return {@link #SUCCESS} in case of success, {@link #ERROR_NO_INIT} or
+     *         {@link #ERROR_BAD_VALUE} in case of failure.
+     * @throws IllegalArgumentException if the specified buffers are not direct
+     *             buffers or not in the native byte order
+     */
+    public int setDirectDataCaptureListener(
+            OnDirectDataCaptureListener listener,
+            FloatBuffer waveform, FloatBuffer fft, int rate) {
+        checkNativeImplIsAvailable();
+
+        if (listener == null) {
+            waveform = null;
+            fft = null;
+            rate = 0;
+        }
+
+        checkIsDirectCaptureBuffer(waveform, "waveform");
+        checkIsDirectCaptureBuffer(fft, "fft");
+
+        if (waveform == null && fft == null) {
+            rate = 0;
+        }
+
+        int result = setDirectDataCaptureListenerImplNative(
+                mNativeHandle, rate, waveform, fft);
+
+        if (result == OpenSLMediaPlayer.Internal.RESULT_SUCCESS) {
+            mOnDataCaptureListener = null;
+            mOnDirectDataCaptureListener = (rate != 0) ? listener : null;
+            mDirectWaveFormBuffer = waveform;
+            mDirectFftBuffer = fft;
         }
 
         throwIllegalStateExceptionIfNeeded(result);
@@ -247,6 +361,18 @@ public class OpenSLHQVisualizer implements IHQVisualizer {
         }
     }
 
+    private static void checkIsDirectCaptureBuffer(FloatBuffer buffer, String name) {
+        if (buffer == null)
+            return;
+
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("The argument '" + name + "' is not a direct buffer");
+
+        if (buffer.order() != ByteOrder.nativeOrder())
+            throw new IllegalArgumentException(
+                    "The argument '" + name + "' is not in the native byte order");
+    }
+
     private static void throwIllegalStateExceptionIfNeeded(int result) {
         if (result == OpenSLMediaPlayer.Internal.RESULT_DEAD_OBJECT)
             throw new IllegalStateException();
@@ -325,6 +451,43 @@ public class OpenSLHQVisualizer implements IHQVisualizer {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static void raiseDirectCaptureEventFromNative(
+            Object ref, int type, long sequence, long timestamp, int numChannels, int samplingRate) {
+        //
+        // This method is called from the native implementation
+        //
+        WeakReference<OpenSLHQVisualizer> weak_ref = (WeakReference<OpenSLHQVisualizer>) ref;
+        OpenSLHQVisualizer thiz = weak_ref.get();
+
+        if (thiz == null)
+            return;
+
+        OnDirectDataCaptureListener listener = thiz.mOnDirectDataCaptureListener;
+
+        if (listener == null)
+            return;
+
+        switch (type) {
+            case EVENT_TYPE_ON_WAVEFORM_DATA_CAPTURE:
+                try {
+                    listener.onWaveFormDataCapture(
+                            thiz, sequence, timestamp, numChannels, samplingRate);
+                } catch (Exception e) {
+                    // Ignore all exceptions
+                }
+                break;
+            case EVENT_TYPE_ON_FFT_DATA_CAPTURE:
+                try {
+                    listener.onFftDataCapture(
+                            thiz, sequence, timestamp, numChannels, samplingRate);
+                } catch (Exception e) {
+                    // Ignore all exceptions
+                }
+                break;
+        }
+    }
+
     //
     // Native methods
     //
@@ -350,6 +513,9 @@ public class OpenSLHQVisualizer implements IHQVisualizer {
     private static native int setDataCaptureListenerImplNative(
             long handle, int rate, boolean waveform, boolean fft);
 
+    private static native int setDirectDataCaptureListenerImplNative(
+            long handle, int rate, FloatBuffer waveform, FloatBuffer fft);
+
     private static native int getMaxCaptureRateImplNative(int[] rate);
 
     private static native int getWindowFunctionImplNative(long handle, int[] windowType);
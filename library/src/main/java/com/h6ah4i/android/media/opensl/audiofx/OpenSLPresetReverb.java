@@ -23,6 +23,7 @@ import com.h6ah4i.android.media.audiofx.IPresetReverb;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeResourceReaper;
 
 public class OpenSLPresetReverb extends OpenSLAudioEffect implements IPresetReverb {
     private static final String TAG = "PresetReverb";
@@ -31,6 +32,7 @@ public class OpenSLPresetReverb extends OpenSLAudioEffect implements IPresetReve
 
     // fields
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private int[] mParamIntBuff = new int[1];
     private short[] mParamShortBuff = new short[1];
@@ -53,19 +55,15 @@ public class OpenSLPresetReverb extends OpenSLAudioEffect implements IPresetReve
         if (mNativeHandle == 0) {
             throw new UnsupportedOperationException("Failed to initialize native layer");
         }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
     }
 
     @Override
     public void release() {
         try {
             if (HAS_NATIVE && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
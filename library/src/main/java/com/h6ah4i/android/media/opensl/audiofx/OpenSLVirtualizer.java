@@ -23,12 +23,14 @@ import com.h6ah4i.android.media.audiofx.IVirtualizer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeResourceReaper;
 
 public class OpenSLVirtualizer extends OpenSLAudioEffect implements IVirtualizer {
     private static final String TAG = "Virtualizer";
 
     // fields
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private final boolean mStrengthSupported;
     private int[] mParamIntBuff = new int[1];
@@ -52,6 +54,7 @@ public class OpenSLVirtualizer extends OpenSLAudioEffect implements IVirtualizer
         if (mNativeHandle == 0) {
             throw new UnsupportedOperationException("Failed to initialize native layer");
         }
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
 
         // set mStrengthSupported
         mStrengthSupported = getStrengthSupportedInternal();
@@ -68,17 +71,12 @@ public class OpenSLVirtualizer extends OpenSLAudioEffect implements IVirtualizer
         return strengthSupported[0];
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
-    }
-
     @Override
     public void release() {
         try {
             if (HAS_NATIVE && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
@@ -27,11 +27,13 @@ import com.h6ah4i.android.media.audiofx.IVisualizer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeResourceReaper;
 
 public class OpenSLVisualizer implements IVisualizer {
     private static final String TAG = "Visualizer";
 
     private long mNativeHandle;
+    private OpenSLMediaPlayerNativeResourceReaper.Resource mNativeResource;
     private static final boolean HAS_NATIVE;
     private int[] mParamIntBuff = new int[2];
     private boolean[] mParamBoolBuff = new boolean[1];
@@ -77,23 +79,19 @@ public class OpenSLVisualizer implements IVisualizer {
         if (mNativeHandle == 0) {
             throw new UnsupportedOperationException("Failed to initialize native layer");
         }
+        mNativeResource = OpenSLMediaPlayerNativeResourceReaper.register(this, mNativeHandle);
 
         mHandler = new InternalHandler(this);
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        release();
-        super.finalize();
-    }
-
     @Override
     public void release() {
         mOnDataCaptureListener = null;
 
         try {
             if (HAS_NATIVE && mNativeHandle != 0) {
-                deleteNativeImplHandle(mNativeHandle);
+                mNativeResource.release();
+                mNativeResource = null;
                 mNativeHandle = 0;
             }
         } catch (Exception e) {
@@ -213,6 +211,11 @@ public class OpenSLVisualizer implements IVisualizer {
 
         if (result == OpenSLMediaPlayer.Internal.RESULT_SUCCESS) {
             mOnDataCaptureListener = listener;
+
+            final InternalHandler handler = mHandler;
+            if (handler != null) {
+                handler.clearPendingData();
+            }
         }
 
         throwIllegalStateExceptionIfNeeded(result);
@@ -369,32 +372,107 @@ public class OpenSLVisualizer implements IVisualizer {
 
         switch (type) {
             case EVENT_TYPE_ON_WAVEFORM_DATA_CAPTURE:
-                handler.sendMessage(
-                        handler.obtainMessage(
-                                InternalHandler.MSG_ON_WAVEFORM_DATA_CAPTURE,
-                                samplingRate, 0, data));
+                handler.postCapturedData(
+                        InternalHandler.MSG_ON_WAVEFORM_DATA_CAPTURE, data, samplingRate);
                 break;
             case EVENT_TYPE_ON_FFT_DATA_CAPTURE:
-                handler.sendMessage(
-                        handler.obtainMessage(
-                                InternalHandler.MSG_ON_FFT_DATA_CAPTURE,
-                                samplingRate, 0, data));
+                handler.postCapturedData(
+                        InternalHandler.MSG_ON_FFT_DATA_CAPTURE, data, samplingRate);
                 break;
         }
     }
 
+    /**
+     * Holds captured data until it is delivered to the listener.
+     * <p>
+     * Only the latest captured data is kept; captures arriving while a
+     * message is pending overwrite the pending buffer in place, so no memory
+     * is allocated for coalesced captures.
+     * <p>
+     * The buffer passed to the listener is owned by the listener and is never
+     * reused, same as the framework's Visualizer which hands out a new array
+     * on each callback.
+     */
+    private static class CapturedDataSlot {
+        private byte[] mPending;
+        private int mPendingSamplingRate;
+        private int mTakenSamplingRate;
+        private boolean mMessagePosted;
+
+        /**
+         * Stores the captured data.
+         *
+         * @return true if a new message has to be posted
+         */
+        public synchronized boolean put(byte[] data, int samplingRate) {
+            if (mPending == null || mPending.length != data.length) {
+                mPending = new byte[data.length];
+            }
+
+            System.arraycopy(data, 0, mPending, 0, data.length);
+            mPendingSamplingRate = samplingRate;
+
+            if (mMessagePosted) {
+                return false;
+            }
+
+            mMessagePosted = true;
+            return true;
+        }
+
+        public synchronized byte[] take() {
+            final byte[] buffer = mPending;
+
+            mPending = null;
+            mTakenSamplingRate = mPendingSamplingRate;
+            mMessagePosted = false;
+
+            return buffer;
+        }
+
+        public synchronized int getTakenSamplingRate() {
+            return mTakenSamplingRate;
+        }
+
+        public synchronized void clear() {
+            mPending = null;
+            mMessagePosted = false;
+        }
+    }
+
     private static class InternalHandler extends Handler {
         public static final int MSG_ON_WAVEFORM_DATA_CAPTURE = 1;
         public static final int MSG_ON_FFT_DATA_CAPTURE = 2;
 
         private WeakReference<OpenSLVisualizer> mHolder;
+        private final CapturedDataSlot mWaveFormSlot = new CapturedDataSlot();
+        private final CapturedDataSlot mFftSlot = new CapturedDataSlot();
 
         public InternalHandler(OpenSLVisualizer holder) {
             mHolder = new WeakReference<OpenSLVisualizer>(holder);
         }
 
+        public void postCapturedData(int what, byte[] data, int samplingRate) {
+            final CapturedDataSlot slot = getSlot(what);
+
+            if (slot.put(data, samplingRate)) {
+                sendEmptyMessage(what);
+            }
+        }
+
         @Override
         public void handleMessage(Message msg) {
+            final CapturedDataSlot slot = getSlot(msg.what);
+
+            if (slot == null)
+                return;
+
+            final byte[] data = slot.take();
+
+            if (data == null)
+                return;
+
+            final int samplingRate = slot.getTakenSamplingRate();
             final OpenSLVisualizer holder = mHolder.get();
 
             if (holder == null)
@@ -407,19 +485,36 @@ public class OpenSLVisualizer implements IVisualizer {
 
             switch (msg.what) {
                 case MSG_ON_WAVEFORM_DATA_CAPTURE:
-                    listener.onWaveFormDataCapture(holder, (byte[]) msg.obj, msg.arg1);
+                    listener.onWaveFormDataCapture(holder, data, samplingRate);
                     break;
                 case MSG_ON_FFT_DATA_CAPTURE:
-                    listener.onFftDataCapture(holder, (byte[]) msg.obj, msg.arg1);
+                    listener.onFftDataCapture(holder, data, samplingRate);
                     break;
             }
         }
 
-        public void release() {
+        public void clearPendingData() {
             removeMessages(MSG_ON_FFT_DATA_CAPTURE);
             removeMessages(MSG_ON_WAVEFORM_DATA_CAPTURE);
+            mWaveFormSlot.clear();
+            mFftSlot.clear();
+        }
+
+        public void release() {
+            clearPendingData();
             mHolder.clear();
         }
+
+        private CapturedDataSlot getSlot(int what) {
+            switch (what) {
+                case MSG_ON_WAVEFORM_DATA_CAPTURE:
+                    return mWaveFormSlot;
+                case MSG_ON_FFT_DATA_CAPTURE:
+                    return mFftSlot;
+                default:
+                    return null;
+            }
+        }
     }
 
     //
@@ -0,0 +1,479 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_mixer_bench
+//
+// Runs the source pipes -> mixer -> sink pipe chain of the engine core on the
+// host with the null sink back-end and reports the throughput.
+//
+// usage: oslmp_mixer_bench [--sources N (max. 32)] [--seconds S] [--block-size N]
+//                          [--sampling-rate HZ] [--min-realtime-ratio R]
+//
+
+#include <sched.h>
+#include <time.h>
+
+#include <algorithm>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/memory>
+
+#include <utils/RefBase.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
+#include "oslmp/impl/AudioDataPipeManager.hpp"
+#include "oslmp/impl/AudioSourceDataPipe.hpp"
+#include "oslmp/impl/AudioSinkDataPipe.hpp"
+#include "oslmp/impl/AudioMixer.hpp"
+#include "oslmp/impl/AudioSink.hpp"
+#include "oslmp/impl/AudioSinkNullBackend.hpp"
+#include "oslmp/impl/EngineStatistics.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+//
+// HostInternalContext
+//
+// NOTE: provides only what the mixer and the pipes use; there is no OpenSL
+// engine, no Java VM and no message handler thread on the host.
+//
+class HostInternalContext : public OpenSLMediaPlayerInternalContext {
+public:
+    HostInternalContext() {}
+    virtual ~HostInternalContext() {}
+
+    // OpenSLMediaPlayerInternalContext
+    virtual JavaVM *getJavaVM() const noexcept override { return nullptr; }
+
+    virtual SLresult getInterfaceFromEngine(opensles::CSLInterface *itf) noexcept override
+    {
+        return SL_RESULT_FEATURE_UNSUPPORTED;
+    }
+
+    virtual SLresult getInterfaceFromOutputMixer(opensles::CSLInterface *itf) noexcept override
+    {
+        return SL_RESULT_FEATURE_UNSUPPORTED;
+    }
+
+    virtual SLresult getInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept override
+    {
+        return SL_RESULT_FEATURE_UNSUPPORTED;
+    }
+
+    virtual uint32_t getContextOptions() const noexcept override { return 0; }
+
+    virtual OpenSLMediaPlayerContext::InternalThreadEventListener *getInternalThreadEventListener() const
+        noexcept override
+    {
+        return nullptr;
+    }
+
+    virtual AudioSystem *getAudioSystem() const noexcept override { return nullptr; }
+
+    virtual bool registerMessageHandler(OpenSLMediaPlayerInternalMessageHandler *handler,
+                                        OpenSLMediaPlayerInternalMessageHandlerToken *token) noexcept override
+    {
+        return false;
+    }
+
+    virtual bool unregisterMessageHandler(OpenSLMediaPlayerInternalMessageHandler *handler,
+                                          OpenSLMediaPlayerInternalMessageHandlerToken token) noexcept override
+    {
+        return false;
+    }
+
+    virtual bool postMessage(OpenSLMediaPlayerInternalMessageHandler *handler,
+                             OpenSLMediaPlayerInternalMessageHandlerToken token, void *data,
+                             size_t size) noexcept override
+    {
+        return false;
+    }
+
+    virtual void raiseOnBeforeAudioSinkStateChanged(bool next_is_started) noexcept override {}
+
+    virtual bool requestPolling() noexcept override { return true; }
+
+    // OpenSLMediaPlayerExtensionManager
+    virtual int extAttachOrInstall(OpenSLMediaPlayerExtension **attached_extension,
+                                   const OpenSLMediaPlayerExtensionCreator *creator, void *user_arg) noexcept override
+    {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    virtual int extDetachOrUninstall(OpenSLMediaPlayerExtension *extension, OpenSLMediaPlayerExtensionToken token,
+                                     void *user_arg) noexcept override
+    {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    virtual bool extPostMessage(OpenSLMediaPlayerExtension *handler, OpenSLMediaPlayerExtensionToken token, void *msg,
+                                size_t size) noexcept override
+    {
+        return false;
+    }
+
+    virtual SLresult extGetInterfaceFromPlayer(opensles::CSLInterface *pInterface) noexcept override
+    {
+        return SL_RESULT_FEATURE_UNSUPPORTED;
+    }
+
+    virtual SLresult extGetInterfaceFromOutputMix(opensles::CSLInterface *pInterface) noexcept override
+    {
+        return SL_RESULT_FEATURE_UNSUPPORTED;
+    }
+
+    virtual int extTranslateOpenSLErrorCode(SLresult result) const noexcept override
+    {
+        return (result == SL_RESULT_SUCCESS) ? OSLMP_RESULT_SUCCESS : OSLMP_RESULT_ERROR;
+    }
+
+    virtual bool extNotifyTraitsUpdated(OpenSLMediaPlayerExtensionToken token) noexcept override { return false; }
+
+    virtual uint32_t extGetOutputLatency() const noexcept override { return 0; }
+    virtual uint32_t extGetOutputSamplingRate() const noexcept override { return 0; }
+
+    virtual int extSetAuxEffectEnabled(int aux_effect_id, bool enabled) noexcept override
+    {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    virtual int extGetPreAmp(PreAmp **p_preamp) const noexcept override { return OSLMP_RESULT_ILLEGAL_STATE; }
+
+    virtual int extGetHQEqualizer(HQEqualizer **p_hq_equalizer) const noexcept override
+    {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    virtual JavaVM *extGetJavaVM() const noexcept override { return nullptr; }
+};
+
+//
+// BenchSource
+//
+class BenchSource : public AudioDataPipeManager::SourcePipeEventListener, public AudioMixer::SourceClientEventHandler {
+public:
+    BenchSource() : pipe_(nullptr), phase_(0.0), delta_(0.0), produced_frames_(0), sampling_rate_hz_(0) {}
+
+    virtual ~BenchSource() {}
+
+    void setup(AudioSourceDataPipe *pipe, double freq_hz, uint32_t sampling_rate_hz) noexcept
+    {
+        pipe_ = pipe;
+        phase_ = 0.0;
+        delta_ = 2.0 * M_PI * freq_hz / sampling_rate_hz;
+        sampling_rate_hz_ = sampling_rate_hz;
+    }
+
+    // fills all the free slots of the pipe with a sine wave
+    void produce() noexcept
+    {
+        AudioSourceDataPipe::produce_block_t pb;
+
+        while (pipe_->lockProduce(pb, 0)) {
+            float *dest = pb.dest;
+
+            for (uint32_t i = 0; i < pb.num_frames; ++i) {
+                const float v = 0.25f * static_cast<float>(std::sin(phase_));
+                for (uint32_t ch = 0; ch < pb.num_channels; ++ch) {
+                    (*dest++) = v;
+                }
+                phase_ += delta_;
+            }
+            phase_ = std::fmod(phase_, 2.0 * M_PI);
+
+            produced_frames_ += pb.num_frames;
+
+            pb.tag = AudioSourceDataPipe::TAG_AUDIO_DATA;
+            pb.position_msec = static_cast<int32_t>((produced_frames_ * 1000) / sampling_rate_hz_);
+
+            pipe_->unlockProduce(pb);
+        }
+    }
+
+    AudioSourceDataPipe *pipe() const noexcept { return pipe_; }
+
+    // AudioDataPipeManager::SourcePipeEventListener
+    virtual void onRecycleItem(AudioSourceDataPipe *pipe,
+                               const AudioSourceDataPipe::recycle_block_t *block) noexcept override
+    {
+    }
+
+    // AudioMixer::SourceClientEventHandler
+    virtual void onMixingStarted(AudioSourceDataPipe *pipe, AudioMixer::mixing_start_cause_t cause) noexcept override
+    {
+    }
+
+    virtual void onMixingStopped(AudioSourceDataPipe *pipe, AudioMixer::mixing_stop_cause_t cause) noexcept override
+    {
+    }
+
+private:
+    AudioSourceDataPipe *pipe_;
+    double phase_;
+    double delta_;
+    uint64_t produced_frames_;
+    uint32_t sampling_rate_hz_;
+};
+
+struct bench_options_t {
+    uint32_t num_sources;
+    uint32_t duration_sec;
+    uint32_t block_size;
+    uint32_t sampling_rate_hz;
+    double min_realtime_ratio;
+
+    bench_options_t()
+        : num_sources(2), duration_sec(60), block_size(512), sampling_rate_hz(48000), min_realtime_ratio(0.0)
+    {
+    }
+};
+
+bool parse_options(int argc, char *argv[], bench_options_t &opts) noexcept
+{
+    for (int i = 1; i < argc; ++i) {
+        const char *name = argv[i];
+        const char *value = (i + 1 < argc) ? argv[i + 1] : nullptr;
+
+        if (!value) {
+            return false;
+        }
+
+        if (::strcmp(name, "--sources") == 0) {
+            opts.num_sources = static_cast<uint32_t>(::atoi(value));
+        } else if (::strcmp(name, "--seconds") == 0) {
+            opts.duration_sec = static_cast<uint32_t>(::atoi(value));
+        } else if (::strcmp(name, "--block-size") == 0) {
+            opts.block_size = static_cast<uint32_t>(::atoi(value));
+        } else if (::strcmp(name, "--sampling-rate") == 0) {
+            opts.sampling_rate_hz = static_cast<uint32_t>(::atoi(value));
+        } else if (::strcmp(name, "--min-realtime-ratio") == 0) {
+            opts.min_realtime_ratio = ::atof(value);
+        } else {
+            return false;
+        }
+
+        ++i;
+    }
+
+    return (opts.num_sources >= 1) && (opts.num_sources <= AudioMixer::NUM_MAX_SOURCE_CLIENTS) &&
+           (opts.duration_sec > 0) && (opts.block_size > 0) && (opts.sampling_rate_hz > 0);
+}
+
+double get_monotonic_time_sec() noexcept
+{
+    timespec ts;
+    ::clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ts.tv_sec + (ts.tv_nsec * 1.0e-9);
+}
+
+#define CHECK_RESULT(expr)                                                                                             \
+    do {                                                                                                               \
+        const int result_ = (expr);                                                                                    \
+        if (result_ != OSLMP_RESULT_SUCCESS) {                                                                         \
+            ::fprintf(stderr, "%s failed (result = %d)\n", #expr, result_);                                            \
+            return 2;                                                                                                  \
+        }                                                                                                              \
+    } while (0)
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    bench_options_t opts;
+
+    if (!parse_options(argc, argv, opts)) {
+        ::fprintf(stderr, "usage: %s [--sources N] [--seconds S] [--block-size N] [--sampling-rate HZ] "
+                          "[--min-realtime-ratio R]\n",
+                  argv[0]);
+        return 1;
+    }
+
+    const uint32_t kSinkPlayerNumBlocks = 1;
+    const uint32_t kAudioMixerSinkPooledNumBlocks = 2;
+    const uint32_t kSourcePipeNumBlocks = 64;
+    const uint32_t kCapturePipeNumBlocks = 8;
+    const uint32_t sampling_rate = opts.sampling_rate_hz * 1000; // [millihertz]
+
+    android::sp<HostInternalContext> context(new HostInternalContext());
+    EngineStatistics statistics;
+
+    // NOTE: declaration order matters; the sink and the mixer have to be
+    // destroyed before the sources and the pipe manager
+    std::unique_ptr<AudioDataPipeManager> pipe_mgr(new AudioDataPipeManager());
+    std::unique_ptr<BenchSource[]> sources(new BenchSource[opts.num_sources]);
+    std::unique_ptr<AudioMixer> mixer(new AudioMixer());
+    std::unique_ptr<AudioSinkNullBackend> sink(new AudioSinkNullBackend());
+
+    AudioSinkDataPipe *sink_pipe = nullptr;
+    AudioCaptureDataPipe *capture_pipe = nullptr;
+
+    // initialize pipe manager
+    {
+        AudioDataPipeManager::initialize_args_t init_args;
+
+        init_args.sink_format_type = kAudioSampleFormatType_F32;
+        init_args.source_num_pipes = (std::max)(opts.num_sources, init_args.source_num_pipes);
+        init_args.source_num_items = kSourcePipeNumBlocks;
+        init_args.sink_num_items = kSinkPlayerNumBlocks + kAudioMixerSinkPooledNumBlocks;
+        init_args.capture_num_items = kCapturePipeNumBlocks;
+        init_args.block_size = opts.block_size;
+
+        CHECK_RESULT(pipe_mgr->initialize(init_args));
+        CHECK_RESULT(pipe_mgr->obtainSinkPipe(&sink_pipe));
+        CHECK_RESULT(pipe_mgr->obtainCapturePipe(&capture_pipe));
+        CHECK_RESULT(pipe_mgr->setCapturePipeOutPortUser(capture_pipe, context.get(), true));
+    }
+
+    // initialize sink
+    {
+        AudioSink::initialize_args_t init_args;
+
+        init_args.context = context.get();
+        init_args.backend = AudioSink::BACKEND_NULL;
+        init_args.sample_format = kAudioSampleFormatType_F32;
+        init_args.sampling_rate = sampling_rate;
+        init_args.pipe_manager = pipe_mgr.get();
+        init_args.pipe = sink_pipe;
+        init_args.num_player_blocks = kSinkPlayerNumBlocks;
+        init_args.statistics = &statistics;
+
+        CHECK_RESULT(sink->onInitialize(init_args, sink.get()));
+    }
+
+    // initialize mixer
+    {
+        AudioMixer::initialize_args_t init_args;
+
+        init_args.context = context.get();
+        init_args.pipe_manager = pipe_mgr.get();
+        init_args.sink_pipe = sink_pipe;
+        init_args.capture_pipe = capture_pipe;
+        init_args.sampling_rate = sampling_rate;
+        init_args.short_fade_duration_ms = 25;
+        init_args.long_fade_duration_ms = 1500;
+        init_args.num_sink_player_blocks = kSinkPlayerNumBlocks;
+        init_args.num_source_pipes = (std::max)(opts.num_sources, init_args.num_source_pipes);
+        init_args.statistics = &statistics;
+
+        CHECK_RESULT(mixer->initialize(init_args));
+    }
+
+    // bind sink pull listener callback
+    {
+        void (*pfunc)(void *) = nullptr;
+        void *args = nullptr;
+
+        CHECK_RESULT(mixer->getSinkPullListenerCallback(&pfunc, &args));
+        CHECK_RESULT(sink->onSetNotifyPullCallback(pfunc, args));
+    }
+
+    // set up sources
+    for (uint32_t i = 0; i < opts.num_sources; ++i) {
+        BenchSource &source = sources[i];
+        AudioSourceDataPipe *source_pipe = nullptr;
+        AudioMixer::register_source_client_args_t reg_args;
+        AudioMixer::attach_update_source_args_t attach_args;
+
+        CHECK_RESULT(pipe_mgr->obtainSourcePipe(&source_pipe));
+        CHECK_RESULT(pipe_mgr->setSourcePipeInPortUser(source_pipe, &source, &source, true));
+
+        source.setup(source_pipe, 440.0 * (i + 1), opts.sampling_rate_hz);
+        source.produce();
+
+        reg_args.client = &source;
+        reg_args.event_handler = &source;
+        CHECK_RESULT(mixer->registerSourceClient(reg_args));
+
+        attach_args.handle = reg_args.control_handle;
+        attach_args.source_no = 0;
+        attach_args.operation = AudioMixer::OPERATION_START;
+        attach_args.source_pipe = source_pipe;
+        attach_args.mix_mode = AudioMixer::MIX_MODE_ADD;
+        CHECK_RESULT(mixer->attachOrUpdateSourcePipe(attach_args));
+    }
+
+    // run
+    const uint64_t target_frames = static_cast<uint64_t>(opts.duration_sec) * opts.sampling_rate_hz;
+
+    CHECK_RESULT(mixer->start());
+    CHECK_RESULT(sink->onStart());
+
+    const double start_time = get_monotonic_time_sec();
+
+    while (sink->getVirtualClockInFrames() < target_frames) {
+        for (uint32_t i = 0; i < opts.num_sources; ++i) {
+            sources[i].produce();
+        }
+
+        if (pipe_mgr->isPollingRequired()) {
+            pipe_mgr->poll();
+        }
+        if (mixer->isPollingRequired()) {
+            (void)mixer->poll();
+        }
+
+        (void)::sched_yield();
+    }
+
+    const double elapsed = get_monotonic_time_sec() - start_time;
+
+    (void)sink->onStop();
+    (void)mixer->stop();
+
+    // report
+    const uint64_t rendered_frames = sink->getVirtualClockInFrames();
+    const double rendered_sec = static_cast<double>(rendered_frames) / opts.sampling_rate_hz;
+    const double realtime_ratio = (elapsed > 0.0) ? (rendered_sec / elapsed) : 0.0;
+    OpenSLMediaPlayerContext::engine_statistics_t stats;
+
+    statistics.getSnapshot(&stats);
+
+    ::printf("sources              : %u\n", opts.num_sources);
+    ::printf("block size           : %u frames\n", opts.block_size);
+    ::printf("rendered             : %.3f sec (%llu frames)\n", rendered_sec,
+             static_cast<unsigned long long>(rendered_frames));
+    ::printf("elapsed              : %.3f sec\n", elapsed);
+    ::printf("blocks/sec           : %.1f\n", (elapsed > 0.0) ? (stats.mixer_block_count / elapsed) : 0.0);
+    ::printf("realtime ratio       : %.2fx\n", realtime_ratio);
+    ::printf("mixer cpu time/block : %.1f us (max %.1f us)\n",
+             (stats.mixer_block_count) ? (stats.mixer_cpu_time_ns * 1.0e-3 / stats.mixer_block_count) : 0.0,
+             stats.mixer_max_block_cpu_time_ns * 1.0e-3);
+    ::printf("starved source blocks: %u\n", stats.source_starved_block_count);
+
+    for (uint32_t i = 0; i < opts.num_sources; ++i) {
+        (void)pipe_mgr->setSourcePipeInPortUser(sources[i].pipe(), &sources[i], nullptr, false);
+    }
+    (void)pipe_mgr->setSinkPipeOutPortUser(sink_pipe, sink.get(), false);
+    (void)pipe_mgr->setCapturePipeOutPortUser(capture_pipe, context.get(), false);
+
+    if (opts.min_realtime_ratio > 0.0 && realtime_ratio < opts.min_realtime_ratio) {
+        ::fprintf(stderr, "realtime ratio %.2fx is below the threshold %.2fx\n", realtime_ratio,
+                  opts.min_realtime_ratio);
+        return 3;
+    }
+
+    return 0;
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/*
+ * android/log.h (host build shim)
+ *
+ * Minimal replacement of the NDK's <android/log.h> used by loghelper.h
+ * when the engine core is built for the host. Messages go to stderr.
+ */
+
+#ifndef OSLMP_HOST_ANDROID_LOG_H_
+#define OSLMP_HOST_ANDROID_LOG_H_
+
+#include <stdio.h>
+#include <stdarg.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+typedef enum android_LogPriority {
+    ANDROID_LOG_UNKNOWN = 0,
+    ANDROID_LOG_DEFAULT,
+    ANDROID_LOG_VERBOSE,
+    ANDROID_LOG_DEBUG,
+    ANDROID_LOG_INFO,
+    ANDROID_LOG_WARN,
+    ANDROID_LOG_ERROR,
+    ANDROID_LOG_FATAL,
+    ANDROID_LOG_SILENT,
+} android_LogPriority;
+
+static inline int __android_log_print(int prio, const char *tag, const char *fmt, ...)
+{
+    static const char kPrioChars[] = "??VDIWEFS";
+    va_list ap;
+    int n;
+
+    if (prio < ANDROID_LOG_UNKNOWN || prio > ANDROID_LOG_SILENT) {
+        prio = ANDROID_LOG_UNKNOWN;
+    }
+
+    n = fprintf(stderr, "%c/%s: ", kPrioChars[prio], (tag) ? tag : "");
+
+    va_start(ap, fmt);
+    n += vfprintf(stderr, fmt, ap);
+    va_end(ap);
+
+    n += fprintf(stderr, "\n");
+
+    return n;
+}
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif /* OSLMP_HOST_ANDROID_LOG_H_ */
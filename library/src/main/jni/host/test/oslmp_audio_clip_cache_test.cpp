@@ -0,0 +1,260 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_audio_clip_cache_test
+//
+// Correctness tests of the AudioClip (incremental growth, block contents)
+// and the AudioClipCache (lookup, LRU eviction, replacing entries).
+//
+
+#include <string>
+#include <vector>
+
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioClipCache.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+const uint32_t NUM_CHANNELS = 2;
+const uint32_t BLOCK_SIZE = 32;
+const size_t BLOCK_SIZE_IN_BYTES = sizeof(float) * NUM_CHANNELS * BLOCK_SIZE;
+
+android::sp<AudioClip> make_clip(uint32_t num_blocks, float base_value)
+{
+    android::sp<AudioClip> clip(new AudioClip());
+    std::vector<float> block(NUM_CHANNELS * BLOCK_SIZE);
+
+    OSLMP_EXPECT(clip->allocate(NUM_CHANNELS, BLOCK_SIZE, num_blocks) == OSLMP_RESULT_SUCCESS);
+
+    for (uint32_t i = 0; i < num_blocks; ++i) {
+        for (size_t j = 0; j < block.size(); ++j) {
+            block[j] = base_value + i;
+        }
+        OSLMP_EXPECT(clip->appendBlock(&block[0]));
+    }
+
+    return clip;
+}
+
+AudioClipCache::initialize_args_t make_cache_args(size_t capacity, size_t max_clip_size)
+{
+    AudioClipCache::initialize_args_t args;
+
+    args.capacity_in_bytes = capacity;
+    args.max_clip_size_in_bytes = max_clip_size;
+
+    return args;
+}
+
+//
+// Test cases
+//
+void test_clip_arguments()
+{
+    AudioClip clip;
+
+    OSLMP_EXPECT(clip.allocate(0, BLOCK_SIZE, 1) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(clip.allocate(NUM_CHANNELS, 0, 1) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(clip.allocate(NUM_CHANNELS, BLOCK_SIZE, 0) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+}
+
+void test_clip_grows_incrementally()
+{
+    const uint32_t kMaxBlocks = AudioClip::NUM_BLOCKS_PER_CHUNK * 100;
+    AudioClip clip;
+    std::vector<float> block(NUM_CHANNELS * BLOCK_SIZE, 0.5f);
+
+    OSLMP_EXPECT(clip.allocate(NUM_CHANNELS, BLOCK_SIZE, kMaxBlocks) == OSLMP_RESULT_SUCCESS);
+
+    // nothing is allocated for the estimated duration
+    OSLMP_EXPECT(clip.getAllocatedSizeInBytes() == 0);
+    OSLMP_EXPECT(clip.getSizeInBytes() == 0);
+
+    OSLMP_EXPECT(clip.appendBlock(&block[0]));
+    OSLMP_EXPECT(clip.getAllocatedSizeInBytes() == (BLOCK_SIZE_IN_BYTES * AudioClip::NUM_BLOCKS_PER_CHUNK));
+    OSLMP_EXPECT(clip.getSizeInBytes() == BLOCK_SIZE_IN_BYTES);
+
+    for (uint32_t i = 1; i < (AudioClip::NUM_BLOCKS_PER_CHUNK + 1); ++i) {
+        OSLMP_EXPECT(clip.appendBlock(&block[0]));
+    }
+
+    OSLMP_EXPECT(clip.getNumBlocks() == (AudioClip::NUM_BLOCKS_PER_CHUNK + 1));
+    OSLMP_EXPECT(clip.getAllocatedSizeInBytes() == (BLOCK_SIZE_IN_BYTES * AudioClip::NUM_BLOCKS_PER_CHUNK * 2));
+}
+
+void test_clip_block_contents()
+{
+    // not a multiple of the chunk size
+    const uint32_t kNumBlocks = AudioClip::NUM_BLOCKS_PER_CHUNK * 2 + 3;
+    android::sp<AudioClip> clip = make_clip(kNumBlocks, 100.0f);
+
+    OSLMP_EXPECT(clip->getNumBlocks() == kNumBlocks);
+    OSLMP_EXPECT(clip->getSizeInBytes() == (BLOCK_SIZE_IN_BYTES * kNumBlocks));
+    OSLMP_EXPECT(clip->getAllocatedSizeInBytes() == (BLOCK_SIZE_IN_BYTES * kNumBlocks));
+
+    for (uint32_t i = 0; i < kNumBlocks; ++i) {
+        const float *block = clip->getBlock(i);
+
+        OSLMP_EXPECT(block != nullptr);
+        OSLMP_EXPECT(block[0] == (100.0f + i));
+        OSLMP_EXPECT(block[NUM_CHANNELS * BLOCK_SIZE - 1] == (100.0f + i));
+    }
+
+    OSLMP_EXPECT(clip->getBlock(kNumBlocks) == nullptr);
+
+    // no more room
+    std::vector<float> block(NUM_CHANNELS * BLOCK_SIZE);
+    OSLMP_EXPECT(!clip->appendBlock(&block[0]));
+}
+
+void test_cache_disabled()
+{
+    AudioClipCache cache;
+    android::sp<AudioClip> clip;
+
+    OSLMP_EXPECT(cache.initialize(make_cache_args(0, 0)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(!cache.isEnabled());
+    OSLMP_EXPECT(cache.insert("a", make_clip(1, 0.0f)) == OSLMP_RESULT_ILLEGAL_STATE);
+    OSLMP_EXPECT(!cache.lookup("a", clip));
+    OSLMP_EXPECT(!clip.get());
+}
+
+void test_cache_lookup()
+{
+    AudioClipCache cache;
+    android::sp<AudioClip> clip_a = make_clip(1, 1.0f);
+    android::sp<AudioClip> clip_b = make_clip(1, 2.0f);
+    android::sp<AudioClip> clip;
+
+    OSLMP_EXPECT(cache.initialize(make_cache_args(BLOCK_SIZE_IN_BYTES * 64, BLOCK_SIZE_IN_BYTES * 64)) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    OSLMP_EXPECT(cache.insert("", clip_a) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(cache.insert("a", nullptr) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+
+    OSLMP_EXPECT(cache.insert("a", clip_a) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.insert("b", clip_b) == OSLMP_RESULT_SUCCESS);
+
+    OSLMP_EXPECT(cache.lookup("a", clip));
+    OSLMP_EXPECT(clip.get() == clip_a.get());
+    OSLMP_EXPECT(cache.lookup("b", clip));
+    OSLMP_EXPECT(clip.get() == clip_b.get());
+    OSLMP_EXPECT(!cache.lookup("c", clip));
+    OSLMP_EXPECT(!clip.get());
+
+    // replace
+    android::sp<AudioClip> clip_a2 = make_clip(2, 3.0f);
+
+    OSLMP_EXPECT(cache.insert("a", clip_a2) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.getNumEntries() == 2);
+    OSLMP_EXPECT(cache.getTotalSizeInBytes() == (BLOCK_SIZE_IN_BYTES * 3));
+    OSLMP_EXPECT(cache.lookup("a", clip));
+    OSLMP_EXPECT(clip.get() == clip_a2.get());
+
+    cache.clear();
+
+    OSLMP_EXPECT(cache.getNumEntries() == 0);
+    OSLMP_EXPECT(cache.getTotalSizeInBytes() == 0);
+    OSLMP_EXPECT(!cache.lookup("a", clip));
+}
+
+void test_cache_lru_eviction()
+{
+    AudioClipCache cache;
+    android::sp<AudioClip> clip;
+
+    // room for 3 clips
+    OSLMP_EXPECT(cache.initialize(make_cache_args(BLOCK_SIZE_IN_BYTES * 3, BLOCK_SIZE_IN_BYTES * 2)) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    OSLMP_EXPECT(cache.insert("a", make_clip(1, 0.0f)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.insert("b", make_clip(1, 0.0f)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.insert("c", make_clip(1, 0.0f)) == OSLMP_RESULT_SUCCESS);
+
+    // "a" becomes the most recently used one
+    OSLMP_EXPECT(cache.lookup("a", clip));
+
+    // evicts "b"
+    OSLMP_EXPECT(cache.insert("d", make_clip(1, 0.0f)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.getNumEntries() == 3);
+    OSLMP_EXPECT(!cache.lookup("b", clip));
+    OSLMP_EXPECT(cache.lookup("c", clip));
+    OSLMP_EXPECT(cache.lookup("a", clip));
+    OSLMP_EXPECT(cache.lookup("d", clip));
+
+    // evicts "c" and "a"
+    OSLMP_EXPECT(cache.insert("e", make_clip(2, 0.0f)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.getNumEntries() == 2);
+    OSLMP_EXPECT(cache.getTotalSizeInBytes() == (BLOCK_SIZE_IN_BYTES * 3));
+    OSLMP_EXPECT(!cache.lookup("c", clip));
+    OSLMP_EXPECT(!cache.lookup("a", clip));
+    OSLMP_EXPECT(cache.lookup("d", clip));
+    OSLMP_EXPECT(cache.lookup("e", clip));
+
+    // too large
+    OSLMP_EXPECT(cache.insert("f", make_clip(3, 0.0f)) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(cache.getNumEntries() == 2);
+}
+
+void test_cache_many_entries()
+{
+    const int kNumEntries = 1000;
+    AudioClipCache cache;
+    android::sp<AudioClip> clip = make_clip(1, 0.0f);
+    android::sp<AudioClip> found;
+
+    OSLMP_EXPECT(cache.initialize(make_cache_args(BLOCK_SIZE_IN_BYTES * kNumEntries, BLOCK_SIZE_IN_BYTES)) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    for (int i = 0; i < kNumEntries; ++i) {
+        OSLMP_EXPECT(cache.insert(std::to_string(i), clip) == OSLMP_RESULT_SUCCESS);
+    }
+
+    OSLMP_EXPECT(cache.getNumEntries() == kNumEntries);
+
+    for (int i = 0; i < kNumEntries; ++i) {
+        OSLMP_EXPECT(cache.lookup(std::to_string(i), found));
+    }
+
+    // evicts the least recently used one ("0")
+    OSLMP_EXPECT(cache.insert("new", clip) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(!cache.lookup("0", found));
+    OSLMP_EXPECT(cache.lookup("1", found));
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_clip_arguments);
+    OSLMP_RUN_TEST(test_clip_grows_incrementally);
+    OSLMP_RUN_TEST(test_clip_block_contents);
+    OSLMP_RUN_TEST(test_cache_disabled);
+    OSLMP_RUN_TEST(test_cache_lookup);
+    OSLMP_RUN_TEST(test_cache_lru_eviction);
+    OSLMP_RUN_TEST(test_cache_many_entries);
+
+    return oslmp_host_test::result();
+}
@@ -0,0 +1,169 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_command_batch_test
+//
+// Correctness tests of the CommandBatchPool (slot ownership, reuse and
+// batches discarded without being handled).
+//
+
+#include <vector>
+
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/CommandBatchPool.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+std::vector<OpenSLMediaPlayer::command_t> make_commands(size_t count)
+{
+    std::vector<OpenSLMediaPlayer::command_t> commands(count);
+
+    for (size_t i = 0; i < count; ++i) {
+        commands[i].what = OSLMP_COMMAND_SEEK_TO;
+        commands[i].iarg = static_cast<int32_t>(i);
+        commands[i].farg[0] = 0.0f;
+        commands[i].farg[1] = 0.0f;
+    }
+
+    return commands;
+}
+
+//
+// Test cases
+//
+void test_obtain_arguments()
+{
+    CommandBatchPool pool;
+    const std::vector<OpenSLMediaPlayer::command_t> commands = make_commands(1);
+    uint32_t slot = 0;
+
+    OSLMP_EXPECT(pool.obtain(nullptr, 1, 0, &slot) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(pool.obtain(&commands[0], 0, 0, &slot) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(pool.obtain(&commands[0], 1, 0, nullptr) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(pool.numSlots() == 0);
+
+    // out of range / not obtained
+    OSLMP_EXPECT(pool.get(0) == nullptr);
+    pool.recycle(0);
+}
+
+void test_obtain_and_recycle()
+{
+    CommandBatchPool pool;
+    const std::vector<OpenSLMediaPlayer::command_t> commands = make_commands(3);
+    uint32_t slot = 0xffffffffU;
+
+    OSLMP_EXPECT(pool.obtain(&commands[0], commands.size(), 1234, &slot) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(slot == 0);
+
+    CommandBatchPool::batch_t *batch = pool.get(slot);
+
+    OSLMP_EXPECT(batch != nullptr);
+
+    if (batch) {
+        OSLMP_EXPECT(batch->token == 1234);
+        OSLMP_EXPECT(batch->commands.size() == 3);
+        OSLMP_EXPECT(batch->results.size() == 3);
+        OSLMP_EXPECT(batch->commands[2].iarg == 2);
+    }
+
+    pool.recycle(slot);
+
+    OSLMP_EXPECT(pool.get(slot) == nullptr);
+    OSLMP_EXPECT(pool.numSlotsInUse() == 0);
+}
+
+void test_slot_reuse()
+{
+    CommandBatchPool pool;
+    const std::vector<OpenSLMediaPlayer::command_t> large = make_commands(16);
+    const std::vector<OpenSLMediaPlayer::command_t> small = make_commands(4);
+    uint32_t slot = 0;
+
+    OSLMP_EXPECT(pool.obtain(&large[0], large.size(), 1, &slot) == OSLMP_RESULT_SUCCESS);
+
+    const OpenSLMediaPlayer::command_t *storage = &(pool.get(slot)->commands[0]);
+
+    pool.recycle(slot);
+
+    // the recycled slot and its buffers are reused
+    for (int32_t i = 0; i < 100; ++i) {
+        OSLMP_EXPECT(pool.obtain(&small[0], small.size(), i, &slot) == OSLMP_RESULT_SUCCESS);
+        OSLMP_EXPECT(slot == 0);
+        OSLMP_EXPECT(pool.get(slot)->commands.size() == small.size());
+        OSLMP_EXPECT(&(pool.get(slot)->commands[0]) == storage);
+        pool.recycle(slot);
+    }
+
+    OSLMP_EXPECT(pool.numSlots() == 1);
+}
+
+void test_in_flight_batches()
+{
+    CommandBatchPool pool;
+    const std::vector<OpenSLMediaPlayer::command_t> commands = make_commands(2);
+    std::vector<uint32_t> slots;
+
+    // the pool grows up to the number of in-flight batches
+    for (int32_t i = 0; i < 10; ++i) {
+        uint32_t slot = 0;
+        OSLMP_EXPECT(pool.obtain(&commands[0], commands.size(), i, &slot) == OSLMP_RESULT_SUCCESS);
+        slots.push_back(slot);
+    }
+
+    OSLMP_EXPECT(pool.numSlots() == 10);
+    OSLMP_EXPECT(pool.numSlotsInUse() == 10);
+
+    for (size_t i = 0; i < slots.size(); ++i) {
+        OSLMP_EXPECT(slots[i] == i);
+        OSLMP_EXPECT(pool.get(slots[i])->token == static_cast<int32_t>(i));
+    }
+
+    // handle a part of them; a freed slot is used first
+    pool.recycle(slots[3]);
+    pool.recycle(slots[7]);
+
+    uint32_t slot = 0;
+    OSLMP_EXPECT(pool.obtain(&commands[0], commands.size(), 100, &slot) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(slot == 3);
+    OSLMP_EXPECT(pool.numSlots() == 10);
+    OSLMP_EXPECT(pool.numSlotsInUse() == 9);
+
+    // NOTE:
+    // The remaining batches are never handled (e.g. the message is discarded
+    // on release), they are freed along with the pool.
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_obtain_arguments);
+    OSLMP_RUN_TEST(test_obtain_and_recycle);
+    OSLMP_RUN_TEST(test_slot_reuse);
+    OSLMP_RUN_TEST(test_in_flight_batches);
+
+    return oslmp_host_test::result();
+}
@@ -0,0 +1,245 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_engine_statistics_test
+//
+// Correctness tests of the EngineStatistics (late block detection, reset
+// while the counters are updated concurrently).
+//
+
+#include <pthread.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include "oslmp/impl/EngineStatistics.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+typedef EngineStatistics::engine_statistics_t engine_statistics_t;
+
+struct concurrent_test_context_t {
+    EngineStatistics stats;
+    std::atomic<bool> writer_finished;
+    uint32_t num_updates;
+};
+
+void *writer_thread(void *args)
+{
+    concurrent_test_context_t *c = static_cast<concurrent_test_context_t *>(args);
+
+    for (uint32_t i = 0; i < c->num_updates; ++i) {
+        c->stats.onMixerBlockProcessed(100, 1);
+        c->stats.onSourceBlockDecoded(10, 100);
+        c->stats.onSinkQueueDepthSampled(1, 8);
+    }
+
+    c->writer_finished.store(true, std::memory_order_release);
+
+    return nullptr;
+}
+
+//
+// Test cases
+//
+void test_initial_values()
+{
+    EngineStatistics stats;
+    engine_statistics_t s;
+
+    stats.getSnapshot(&s);
+
+    OSLMP_EXPECT(s.sink_underrun_count == 0);
+    OSLMP_EXPECT(s.mixer_block_count == 0);
+    OSLMP_EXPECT(s.mixer_late_block_count == 0);
+    OSLMP_EXPECT(s.mixer_cpu_time_ns == 0);
+    OSLMP_EXPECT(s.mixer_max_block_cpu_time_ns == 0);
+    OSLMP_EXPECT(s.decoded_frames == 0);
+
+    for (int i = 0; i < EngineStatistics::NUM_HISTOGRAM_BINS; ++i) {
+        OSLMP_EXPECT(s.sink_queue_depth_histogram[i] == 0);
+        OSLMP_EXPECT(s.source_queue_depth_histogram[i] == 0);
+    }
+}
+
+void test_counters()
+{
+    EngineStatistics stats;
+    engine_statistics_t s;
+
+    stats.onMixerBlockProcessed(1000, 2);
+    stats.onMixerBlockProcessed(3000, 2);
+    stats.onMixerBlockProcessed(2000, 2);
+    stats.onSinkSilentBlock();
+    stats.onSourceStarved();
+    stats.onSourceBlockDecoded(256, 500);
+    stats.onSourceBlockDecoded(256, 700);
+    stats.onSinkQueueDepthSampled(0, 8);
+    stats.onSinkQueueDepthSampled(7, 8);
+    stats.onSinkQueueDepthSampled(100, 8);
+    stats.onSourceQueueDepthSampled(4, 16);
+
+    stats.getSnapshot(&s);
+
+    OSLMP_EXPECT(s.mixer_block_count == 3);
+    OSLMP_EXPECT(s.mixer_cpu_time_ns == 6000);
+    OSLMP_EXPECT(s.mixer_max_block_cpu_time_ns == 3000);
+    OSLMP_EXPECT(s.sink_silent_block_count == 1);
+    OSLMP_EXPECT(s.source_starved_block_count == 1);
+    OSLMP_EXPECT(s.decoded_frames == 512);
+    OSLMP_EXPECT(s.decoder_cpu_time_ns == 1200);
+    OSLMP_EXPECT(s.sink_queue_depth_histogram[0] == 1);
+    OSLMP_EXPECT(s.sink_queue_depth_histogram[EngineStatistics::NUM_HISTOGRAM_BINS - 1] == 2);
+    OSLMP_EXPECT(s.source_queue_depth_histogram[2] == 1);
+}
+
+void test_late_blocks()
+{
+    EngineStatistics stats;
+    engine_statistics_t s;
+
+    // the sink queue is empty when the playback starts (not late)
+    stats.onMixerBlockProcessed(100, 0);
+    stats.onMixerBlockProcessed(100, 1);
+    stats.onMixerBlockProcessed(100, 2);
+
+    stats.getSnapshot(&s);
+    OSLMP_EXPECT(s.mixer_late_block_count == 0);
+
+    // the sink ran out of the data (late)
+    stats.onSinkUnderrun();
+    stats.onSinkSilentBlock();
+    stats.onMixerBlockProcessed(100, 0);
+
+    stats.getSnapshot(&s);
+    OSLMP_EXPECT(s.mixer_late_block_count == 1);
+
+    // the following blocks are not late, even if the queue is still empty
+    stats.onMixerBlockProcessed(100, 0);
+    stats.onMixerBlockProcessed(100, 1);
+
+    stats.getSnapshot(&s);
+    OSLMP_EXPECT(s.mixer_late_block_count == 1);
+
+    // an underrun which was recovered before the block is not late
+    stats.onSinkUnderrun();
+    stats.onMixerBlockProcessed(100, 1);
+
+    stats.getSnapshot(&s);
+    OSLMP_EXPECT(s.mixer_late_block_count == 1);
+    OSLMP_EXPECT(s.sink_underrun_count == 2);
+    OSLMP_EXPECT(s.mixer_block_count == 7);
+
+    // resume after pause (the sink does not report underruns while waiting for the data)
+    stats.onSinkSilentBlock();
+    stats.onMixerBlockProcessed(100, 0);
+
+    stats.getSnapshot(&s);
+    OSLMP_EXPECT(s.mixer_late_block_count == 1);
+}
+
+void test_reset()
+{
+    EngineStatistics stats;
+    engine_statistics_t s;
+
+    stats.onMixerBlockProcessed(5000, 1);
+    stats.onSinkUnderrun();
+    stats.onSourceBlockDecoded(256, 500);
+    stats.onSinkQueueDepthSampled(3, 8);
+
+    stats.reset();
+    stats.getSnapshot(&s);
+
+    OSLMP_EXPECT(s.mixer_block_count == 0);
+    OSLMP_EXPECT(s.mixer_cpu_time_ns == 0);
+    OSLMP_EXPECT(s.mixer_max_block_cpu_time_ns == 0);
+    OSLMP_EXPECT(s.sink_underrun_count == 0);
+    OSLMP_EXPECT(s.decoded_frames == 0);
+    OSLMP_EXPECT(s.sink_queue_depth_histogram[3] == 0);
+
+    // counted from the reset point
+    stats.onMixerBlockProcessed(1000, 0); // late (underrun before the reset)
+    stats.onSourceBlockDecoded(128, 100);
+    stats.onSinkQueueDepthSampled(3, 8);
+
+    stats.getSnapshot(&s);
+
+    OSLMP_EXPECT(s.mixer_block_count == 1);
+    OSLMP_EXPECT(s.mixer_late_block_count == 1);
+    OSLMP_EXPECT(s.mixer_cpu_time_ns == 1000);
+    OSLMP_EXPECT(s.mixer_max_block_cpu_time_ns == 1000);
+    OSLMP_EXPECT(s.decoded_frames == 128);
+    OSLMP_EXPECT(s.sink_queue_depth_histogram[3] == 1);
+}
+
+void test_reset_while_updating()
+{
+    concurrent_test_context_t c;
+
+    c.writer_finished.store(false);
+    c.num_updates = 1000000;
+
+    pthread_t writer;
+    OSLMP_EXPECT(::pthread_create(&writer, nullptr, writer_thread, &c) == 0);
+
+    int32_t num_invalid = 0;
+
+    while (!c.writer_finished.load(std::memory_order_acquire)) {
+        engine_statistics_t s;
+
+        c.stats.reset();
+        c.stats.getSnapshot(&s);
+
+        // a snapshot never observes a partially reset state (would wrap around)
+        if (s.mixer_block_count > c.num_updates || s.decoded_frames > (10ULL * c.num_updates) ||
+            s.mixer_cpu_time_ns > (100ULL * c.num_updates) || s.sink_queue_depth_histogram[1] > c.num_updates) {
+            ++num_invalid;
+        }
+    }
+
+    ::pthread_join(writer, nullptr);
+
+    OSLMP_EXPECT(num_invalid == 0);
+
+    engine_statistics_t s;
+
+    c.stats.reset();
+    c.stats.getSnapshot(&s);
+
+    OSLMP_EXPECT(s.mixer_block_count == 0);
+    OSLMP_EXPECT(s.decoded_frames == 0);
+    OSLMP_EXPECT(s.sink_queue_depth_histogram[1] == 0);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_initial_values);
+    OSLMP_RUN_TEST(test_counters);
+    OSLMP_RUN_TEST(test_late_blocks);
+    OSLMP_RUN_TEST(test_reset);
+    OSLMP_RUN_TEST(test_reset_while_updating);
+
+    return oslmp_host_test::result();
+}
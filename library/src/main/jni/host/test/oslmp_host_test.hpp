@@ -0,0 +1,81 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef OSLMP_HOST_TEST_HPP_
+#define OSLMP_HOST_TEST_HPP_
+
+//
+// Minimal test helpers for the host correctness tests
+//
+// NOTE: Each test executable runs all of its test functions and exits with
+// a non-zero status if any expectation failed, so it can be used by ctest
+// without an external test framework.
+//
+
+#include <cmath>
+#include <cstdio>
+
+namespace oslmp_host_test {
+
+inline int &failure_count() noexcept
+{
+    static int count = 0;
+    return count;
+}
+
+inline bool expect(bool cond, const char *expr, const char *file, int line) noexcept
+{
+    if (!cond) {
+        ::fprintf(stderr, "%s:%d: expectation failed: %s\n", file, line, expr);
+        ++failure_count();
+    }
+    return cond;
+}
+
+inline bool expect_near(double expected, double actual, double tolerance, const char *expr, const char *file,
+                        int line) noexcept
+{
+    const bool cond = (std::fabs(expected - actual) <= tolerance);
+
+    if (!cond) {
+        ::fprintf(stderr, "%s:%d: expectation failed: %s (expected = %.9g, actual = %.9g, tolerance = %g)\n", file,
+                  line, expr, expected, actual, tolerance);
+        ++failure_count();
+    }
+    return cond;
+}
+
+inline void run(void (*func)(), const char *name) noexcept
+{
+    const int prev_failure_count = failure_count();
+
+    func();
+
+    ::printf("[%s] %s\n", (failure_count() == prev_failure_count) ? "  OK  " : "FAILED", name);
+}
+
+inline int result() noexcept { return (failure_count() == 0) ? 0 : 1; }
+
+} // namespace oslmp_host_test
+
+#define OSLMP_EXPECT(cond) oslmp_host_test::expect((cond), #cond, __FILE__, __LINE__)
+
+#define OSLMP_EXPECT_NEAR(expected, actual, tolerance)                                                                 \
+    oslmp_host_test::expect_near((expected), (actual), (tolerance), #actual, __FILE__, __LINE__)
+
+#define OSLMP_RUN_TEST(func) oslmp_host_test::run(func, #func)
+
+#endif // OSLMP_HOST_TEST_HPP_
@@ -0,0 +1,833 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_mixer_test
+//
+// Correctness tests of the MixingUnit (constant gain mixing, mute, fade
+// profiles, the fade profiles shared with the insert effect bus and the
+// output sample format conversion).
+//
+
+#include <algorithm>
+#include <cmath>
+#include <cstdlib>
+#include <vector>
+
+#include <pthread.h>
+#include <unistd.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioDataTypes.hpp"
+#include "oslmp/impl/MixingUnit.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+// NOTE: 32 kHz; the fade durations below are power of two in frames
+const uint32_t SAMPLING_RATE = 32000000; // [millihertz]
+const uint32_t BLOCK_SIZE = 256;         // [frames]
+const uint32_t SHORT_FADE_DURATION_MS = 8;
+const uint32_t LONG_FADE_DURATION_MS = 32;
+const uint32_t PROFILE_DURATION_MS = 16;
+const uint32_t PROFILE_DURATION_FRAMES = 512;
+
+bool init_mixer(MixingUnit &mixer)
+{
+    MixingUnit::initialize_args_t args;
+
+    args.sampling_rate = SAMPLING_RATE;
+    args.block_size_in_frames = BLOCK_SIZE;
+    args.short_fade_duration_ms = SHORT_FADE_DURATION_MS;
+    args.long_fade_duration_ms = LONG_FADE_DURATION_MS;
+
+    return mixer.initialize(args);
+}
+
+std::vector<float> make_dc(float left, float right)
+{
+    std::vector<float> data(2 * BLOCK_SIZE);
+
+    for (uint32_t i = 0; i < BLOCK_SIZE; ++i) {
+        data[2 * i + 0] = left;
+        data[2 * i + 1] = right;
+    }
+
+    return data;
+}
+
+MixingUnit::Context make_context(MixingUnit::mode_t mode, float left_volume, float right_volume)
+{
+    MixingUnit::Context context;
+
+    context.mode = mode;
+    context.phase = 0.0f;
+    context.volume[0] = left_volume;
+    context.volume[1] = right_volume;
+
+    return context;
+}
+
+bool is_dc(const std::vector<float> &data, float left, float right, float tolerance)
+{
+    for (size_t i = 0; i < data.size(); i += 2) {
+        if (!(std::fabs(data[i + 0] - left) <= tolerance && std::fabs(data[i + 1] - right) <= tolerance))
+            return false;
+    }
+    return true;
+}
+
+// mixes a block of the single source
+std::vector<float> mix_block(MixingUnit &mixer, MixingUnit::Context &context, const std::vector<float> &src)
+{
+    std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+
+    OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+    OSLMP_EXPECT(mixer.mix(&context, &src[0], BLOCK_SIZE));
+    OSLMP_EXPECT(mixer.end());
+
+    return dest;
+}
+
+// mixes a block of the single source through the bus (same as the insert effect path of the AudioMixer)
+std::vector<float> mix_block_via_bus(MixingUnit &mixer, MixingUnit &bus, MixingUnit::Context &context,
+                                     const std::vector<float> &src)
+{
+    std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+    std::vector<float> bus_data(2 * BLOCK_SIZE, -1.0f);
+    MixingUnit::Context bus_context = make_context(MixingUnit::MODE_ADD, 1.0f, 1.0f);
+
+    OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+
+    OSLMP_EXPECT(bus.begin(&bus_data[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+    OSLMP_EXPECT(bus.mix(&context, &src[0], BLOCK_SIZE));
+    OSLMP_EXPECT(bus.end());
+
+    OSLMP_EXPECT(mixer.mix(&bus_context, &bus_data[0], BLOCK_SIZE));
+    OSLMP_EXPECT(mixer.end());
+
+    return dest;
+}
+
+bool init_bus(MixingUnit &bus, MixingUnit &mixer) { return init_mixer(bus) && bus.shareFadeProfiles(mixer); }
+
+// max. error from the linear fade in of PROFILE_DURATION_FRAMES frames (and unity gain after that)
+float linear_fade_in_error(const std::vector<float> &output)
+{
+    float max_error = 0.0f;
+
+    for (uint32_t i = 0; i < (output.size() / 2); ++i) {
+        const float gain =
+            (i < PROFILE_DURATION_FRAMES) ? static_cast<float>(i) / (PROFILE_DURATION_FRAMES - 1) : 1.0f;
+
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 0] - gain));
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 1] - gain));
+    }
+
+    return max_error;
+}
+
+//
+// Test cases
+//
+void test_initialize_arguments()
+{
+    MixingUnit::initialize_args_t args;
+
+    args.sampling_rate = SAMPLING_RATE;
+    args.block_size_in_frames = BLOCK_SIZE;
+    args.short_fade_duration_ms = SHORT_FADE_DURATION_MS;
+    args.long_fade_duration_ms = LONG_FADE_DURATION_MS;
+
+    {
+        MixingUnit mixer;
+        MixingUnit::initialize_args_t bad_args = args;
+        bad_args.sampling_rate = 0;
+        OSLMP_EXPECT(!mixer.initialize(bad_args));
+    }
+    {
+        MixingUnit mixer;
+        MixingUnit::initialize_args_t bad_args = args;
+        bad_args.block_size_in_frames = 0;
+        OSLMP_EXPECT(!mixer.initialize(bad_args));
+    }
+    {
+        MixingUnit mixer;
+        std::vector<float> dest(2 * BLOCK_SIZE);
+
+        OSLMP_EXPECT(mixer.initialize(args));
+        OSLMP_EXPECT(mixer.blockSizeInFrames() == BLOCK_SIZE);
+
+        // block size mismatch
+        OSLMP_EXPECT(!mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE / 2, nullptr, 0));
+
+        // not began
+        OSLMP_EXPECT(!mixer.end());
+    }
+}
+
+void test_mode_add()
+{
+    MixingUnit mixer;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+
+    const std::vector<float> src1 = make_dc(1.0f, 1.0f);
+    const std::vector<float> src2 = make_dc(0.5f, 0.25f);
+
+    MixingUnit::Context context1 = make_context(MixingUnit::MODE_ADD, 0.25f, 0.25f);
+    MixingUnit::Context context2 = make_context(MixingUnit::MODE_ADD, 0.5f, 0.5f);
+
+    // L = 0.25 * 1.0 + 0.5 * 0.5 = 0.5, R = 0.25 * 1.0 + 0.5 * 0.25 = 0.375
+    const float expected_l = 0.5f;
+    const float expected_r = 0.375f;
+
+    // mix() per source
+    {
+        std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+
+        OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+        OSLMP_EXPECT(mixer.mix(&context1, &src1[0], BLOCK_SIZE));
+        OSLMP_EXPECT(mixer.mix(&context2, &src2[0], BLOCK_SIZE));
+        OSLMP_EXPECT(mixer.end());
+
+        OSLMP_EXPECT(is_dc(dest, expected_l, expected_r, 1.0e-6f));
+    }
+
+    // mix() multiple sources at once
+    {
+        std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+        MixingUnit::Context *contexts[] = { &context1, &context2 };
+        const float *srcs[] = { &src1[0], &src2[0] };
+
+        OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+        OSLMP_EXPECT(mixer.mix(contexts, srcs, 2, BLOCK_SIZE));
+        OSLMP_EXPECT(mixer.end());
+
+        OSLMP_EXPECT(is_dc(dest, expected_l, expected_r, 1.0e-6f));
+    }
+
+    // more sources than NUM_SOURCES_PER_PASS (accumulated over multiple passes)
+    {
+        const uint32_t num_sources = MixingUnit::NUM_SOURCES_PER_PASS + 2;
+        std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+        const MixingUnit::Context context = make_context(MixingUnit::MODE_ADD, 0.125f, 0.0625f);
+        std::vector<MixingUnit::Context> context_pool(num_sources, context);
+        std::vector<MixingUnit::Context *> contexts(num_sources);
+        std::vector<const float *> srcs(num_sources);
+
+        for (uint32_t i = 0; i < num_sources; ++i) {
+            contexts[i] = &context_pool[i];
+            srcs[i] = &src1[0];
+        }
+
+        OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+        OSLMP_EXPECT(mixer.mix(&contexts[0], &srcs[0], num_sources, BLOCK_SIZE));
+        OSLMP_EXPECT(mixer.end());
+
+        OSLMP_EXPECT(is_dc(dest, 0.125f * num_sources, 0.0625f * num_sources, 1.0e-6f));
+    }
+}
+
+void test_mode_add_with_fading_sources()
+{
+    MixingUnit mixer;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+
+    const std::vector<float> src1 = make_dc(1.0f, 1.0f);
+    const std::vector<float> src2 = make_dc(0.5f, 0.25f);
+
+    // the fading and the muted sources are interleaved with the constant gain ones
+    const MixingUnit::Context initial_contexts[] = {
+        make_context(MixingUnit::MODE_ADD, 0.25f, 0.25f), make_context(MixingUnit::MODE_SHORT_FADE_IN, 0.5f, 0.5f),
+        make_context(MixingUnit::MODE_ADD, 0.5f, 0.125f), make_context(MixingUnit::MODE_MUTE, 1.0f, 1.0f),
+        make_context(MixingUnit::MODE_ADD, 0.125f, 0.5f), make_context(MixingUnit::MODE_LONG_FADE_OUT, 1.0f, 1.0f),
+        make_context(MixingUnit::MODE_ADD, 0.0625f, 0.0625f),
+    };
+    const uint32_t num_sources = sizeof(initial_contexts) / sizeof(initial_contexts[0]);
+
+    std::vector<MixingUnit::Context> expected_contexts(initial_contexts, initial_contexts + num_sources);
+    std::vector<MixingUnit::Context> actual_contexts(initial_contexts, initial_contexts + num_sources);
+    std::vector<MixingUnit::Context *> contexts(num_sources);
+    std::vector<const float *> srcs(num_sources);
+
+    for (uint32_t i = 0; i < num_sources; ++i) {
+        contexts[i] = &actual_contexts[i];
+        srcs[i] = (i & 1) ? &src2[0] : &src1[0];
+    }
+
+    // mix() per source
+    std::vector<float> expected(2 * BLOCK_SIZE, -1.0f);
+
+    OSLMP_EXPECT(mixer.begin(&expected[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+    for (uint32_t i = 0; i < num_sources; ++i) {
+        OSLMP_EXPECT(mixer.mix(&expected_contexts[i], srcs[i], BLOCK_SIZE));
+    }
+    OSLMP_EXPECT(mixer.end());
+
+    // mix() all sources at once
+    std::vector<float> actual(2 * BLOCK_SIZE, -1.0f);
+
+    OSLMP_EXPECT(mixer.begin(&actual[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+    OSLMP_EXPECT(mixer.mix(&contexts[0], &srcs[0], num_sources, BLOCK_SIZE));
+    OSLMP_EXPECT(mixer.end());
+
+    float max_error = 0.0f;
+    for (uint32_t i = 0; i < 2 * BLOCK_SIZE; ++i) {
+        max_error = (std::max)(max_error, std::fabs(expected[i] - actual[i]));
+    }
+
+    OSLMP_EXPECT_NEAR(0.0, max_error, 1.0e-6);
+
+    // the fade phases advance in the same way
+    for (uint32_t i = 0; i < num_sources; ++i) {
+        OSLMP_EXPECT(actual_contexts[i].mode == expected_contexts[i].mode);
+        OSLMP_EXPECT(actual_contexts[i].phase == expected_contexts[i].phase);
+    }
+}
+
+void test_mute()
+{
+    MixingUnit mixer;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context muted1 = make_context(MixingUnit::MODE_MUTE, 1.0f, 1.0f);
+    MixingUnit::Context muted2 = make_context(MixingUnit::MODE_ADD, 0.0f, 0.0f);
+
+    // the output has to be cleared even if no source is mixed
+    {
+        std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+
+        OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+        OSLMP_EXPECT(mixer.end());
+
+        OSLMP_EXPECT(is_dc(dest, 0.0f, 0.0f, 0.0f));
+    }
+
+    {
+        std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+
+        OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+        OSLMP_EXPECT(mixer.mix(&muted1, &src[0], BLOCK_SIZE));
+        OSLMP_EXPECT(mixer.mix(&muted2, &src[0], BLOCK_SIZE));
+        OSLMP_EXPECT(mixer.end());
+
+        OSLMP_EXPECT(is_dc(dest, 0.0f, 0.0f, 0.0f));
+    }
+
+    // muted sources only (mixed at once)
+    {
+        std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+        MixingUnit::Context *contexts[] = { &muted1, &muted2 };
+        const float *srcs[] = { &src[0], &src[0] };
+
+        OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+        OSLMP_EXPECT(mixer.mix(contexts, srcs, 2, BLOCK_SIZE));
+        OSLMP_EXPECT(mixer.end());
+
+        OSLMP_EXPECT(is_dc(dest, 0.0f, 0.0f, 0.0f));
+    }
+}
+
+void test_s16_output()
+{
+    MixingUnit mixer;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+
+    const std::vector<float> src = make_dc(0.5f, -0.25f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_ADD, 1.0f, 1.0f);
+    std::vector<int16_t> dest(2 * BLOCK_SIZE, 0x1234);
+
+    OSLMP_EXPECT(mixer.begin(&dest[0], kAudioSampleFormatType_S16, nullptr, BLOCK_SIZE, nullptr, 0));
+    OSLMP_EXPECT(mixer.mix(&context, &src[0], BLOCK_SIZE));
+    OSLMP_EXPECT(mixer.end());
+
+    int max_error = 0;
+    for (uint32_t i = 0; i < BLOCK_SIZE; ++i) {
+        max_error = (std::max)(max_error, std::abs(dest[2 * i + 0] - 16384));
+        max_error = (std::max)(max_error, std::abs(dest[2 * i + 1] - (-8192)));
+    }
+
+    OSLMP_EXPECT(max_error <= 1);
+}
+
+void test_profile_fade_in()
+{
+    MixingUnit mixer;
+    uint32_t profile = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 0.5f);
+    context.fade_profile = profile;
+
+    std::vector<float> output;
+    for (uint32_t i = 0; i < 3; ++i) {
+        const std::vector<float> dest = mix_block(mixer, context, src);
+        output.insert(output.end(), dest.begin(), dest.end());
+    }
+
+    OSLMP_EXPECT(context.phase == 1.0f);
+
+    // the linear table (i / (n - 1)), and then the constant gain
+    float max_error = 0.0f;
+    for (uint32_t i = 0; i < 3 * BLOCK_SIZE; ++i) {
+        const float gain =
+            (i < PROFILE_DURATION_FRAMES) ? static_cast<float>(i) / (PROFILE_DURATION_FRAMES - 1) : 1.0f;
+
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 0] - gain * 1.0f));
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 1] - gain * 0.5f));
+    }
+
+    OSLMP_EXPECT_NEAR(0.0, max_error, 1.0e-6);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile) == OSLMP_RESULT_SUCCESS);
+}
+
+void test_profile_fade_out()
+{
+    MixingUnit mixer;
+    uint32_t profile = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_OUT, 1.0f, 1.0f);
+    context.fade_profile = profile;
+
+    std::vector<float> output;
+    for (uint32_t i = 0; i < 3; ++i) {
+        const std::vector<float> dest = mix_block(mixer, context, src);
+        output.insert(output.end(), dest.begin(), dest.end());
+    }
+
+    OSLMP_EXPECT(context.phase == 1.0f);
+
+    // the linear table read backward, and then silence
+    float max_error = 0.0f;
+    for (uint32_t i = 0; i < 3 * BLOCK_SIZE; ++i) {
+        const float gain = (i < PROFILE_DURATION_FRAMES)
+                               ? static_cast<float>(PROFILE_DURATION_FRAMES - 1 - i) / (PROFILE_DURATION_FRAMES - 1)
+                               : 0.0f;
+
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 0] - gain));
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 1] - gain));
+    }
+
+    OSLMP_EXPECT_NEAR(0.0, max_error, 1.0e-6);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile) == OSLMP_RESULT_SUCCESS);
+}
+
+void test_unregistered_profile_falls_back_to_short_fade()
+{
+    MixingUnit mixer;
+    uint32_t profile = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile) == OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 1.0f);
+    context.fade_profile = profile;
+
+    // the short fade (8 ms = 256 frames) completes within a block
+    (void)mix_block(mixer, context, src);
+
+    OSLMP_EXPECT(context.phase == 1.0f);
+}
+
+void test_fade_profile_registration()
+{
+    MixingUnit mixer;
+    uint32_t profile = 0;
+
+    // not initialized
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_ILLEGAL_STATE);
+
+    OSLMP_EXPECT(init_mixer(mixer));
+
+    // invalid arguments
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, nullptr) ==
+                 OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(mixer.registerFadeProfile(static_cast<MixingUnit::fade_curve_t>(100), PROFILE_DURATION_MS,
+                                           &profile) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR,
+                                           MixingUnit::MAX_FADE_PROFILE_DURATION_MS + 1,
+                                           &profile) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(0) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+
+    // the same curve & duration shares the profile
+    uint32_t profile1 = 0, profile2 = 0, profile3 = 0;
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile1) ==
+                 OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile2) ==
+                 OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_S_CURVE, PROFILE_DURATION_MS, &profile3) ==
+                 OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(profile1 == profile2);
+    OSLMP_EXPECT(profile1 != profile3);
+
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile1) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile2) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile1) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile3) == OSLMP_RESULT_SUCCESS);
+
+    // the released slots are reused (more than NUM_MAX_FADE_PROFILES profiles in total),
+    // the ids of the reused slots are not the same as the previous ones
+    uint32_t prev_profiles[MixingUnit::NUM_MAX_FADE_PROFILES] = {};
+
+    for (int round = 0; round < 2; ++round) {
+        uint32_t profiles[MixingUnit::NUM_MAX_FADE_PROFILES];
+
+        for (uint32_t i = 0; i < MixingUnit::NUM_MAX_FADE_PROFILES; ++i) {
+            const uint32_t duration_ms = (round * MixingUnit::NUM_MAX_FADE_PROFILES) + i + 1;
+            OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, duration_ms, &profiles[i]) ==
+                         OSLMP_RESULT_SUCCESS);
+            OSLMP_EXPECT(profiles[i] != 0);
+        }
+
+        OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, 1000, &profile) ==
+                     OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED);
+
+        for (uint32_t i = 0; i < MixingUnit::NUM_MAX_FADE_PROFILES; ++i) {
+            OSLMP_EXPECT(mixer.unregisterFadeProfile(profiles[i]) == OSLMP_RESULT_SUCCESS);
+
+            for (uint32_t j = 0; j < MixingUnit::NUM_MAX_FADE_PROFILES; ++j) {
+                OSLMP_EXPECT(profiles[i] != prev_profiles[j]);
+            }
+        }
+
+        std::copy(profiles, profiles + MixingUnit::NUM_MAX_FADE_PROFILES, prev_profiles);
+    }
+}
+
+void test_stale_profile_id()
+{
+    MixingUnit mixer;
+    uint32_t profile1 = 0, profile2 = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+
+    // the slot of the first profile is reused by the second one
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile1) ==
+                 OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile1) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_S_CURVE, PROFILE_DURATION_MS, &profile2) ==
+                 OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(profile1 != profile2);
+
+    // the stale id can not unregister the second one
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile1) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+
+    // the stale id falls back to the short fade (8 ms = 256 frames)
+    {
+        MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 1.0f);
+        context.fade_profile = profile1;
+
+        (void)mix_block(mixer, context, src);
+
+        OSLMP_EXPECT(context.phase == 1.0f);
+    }
+
+    // the second one (16 ms = 512 frames)
+    {
+        MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 1.0f);
+        context.fade_profile = profile2;
+
+        (void)mix_block(mixer, context, src);
+
+        OSLMP_EXPECT(context.phase == 0.5f);
+    }
+
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile2) == OSLMP_RESULT_SUCCESS);
+}
+
+struct unregister_thread_args_t {
+    MixingUnit *mixer;
+    uint32_t profile;
+    int result;
+    std::atomic<bool> finished;
+};
+
+void *unregister_thread(void *args)
+{
+    unregister_thread_args_t *a = static_cast<unregister_thread_args_t *>(args);
+
+    a->result = a->mixer->unregisterFadeProfile(a->profile);
+    a->finished.store(true, std::memory_order_release);
+
+    return nullptr;
+}
+
+void test_latched_profile_outlives_unregistration()
+{
+    MixingUnit mixer;
+    uint32_t profile = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 1.0f);
+    context.fade_profile = profile;
+
+    std::vector<float> output;
+    std::vector<float> dest;
+
+    // the fade latches the profile
+    dest = mix_block(mixer, context, src);
+    output.insert(output.end(), dest.begin(), dest.end());
+
+    OSLMP_EXPECT(context.phase == 0.5f);
+
+    // unregister while the fade is in progress
+    unregister_thread_args_t args;
+    args.mixer = &mixer;
+    args.profile = profile;
+    args.result = OSLMP_RESULT_ERROR;
+    args.finished.store(false);
+
+    pthread_t thread;
+    OSLMP_EXPECT(::pthread_create(&thread, nullptr, unregister_thread, &args) == 0);
+
+    (void)::usleep(10000);
+
+    // waits for the latched fade
+    OSLMP_EXPECT(!args.finished.load(std::memory_order_acquire));
+
+    // the fade finishes with the latched table, and a block without the table
+    for (uint32_t i = 0; i < 2; ++i) {
+        dest = mix_block(mixer, context, src);
+        output.insert(output.end(), dest.begin(), dest.end());
+    }
+
+    ::pthread_join(thread, nullptr);
+
+    OSLMP_EXPECT(args.finished.load(std::memory_order_acquire));
+    OSLMP_EXPECT(args.result == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(context.phase == 1.0f);
+
+    float max_error = 0.0f;
+    for (uint32_t i = 0; i < 3 * BLOCK_SIZE; ++i) {
+        const float gain =
+            (i < PROFILE_DURATION_FRAMES) ? static_cast<float>(i) / (PROFILE_DURATION_FRAMES - 1) : 1.0f;
+
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 0] - gain));
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 1] - gain));
+    }
+
+    OSLMP_EXPECT_NEAR(0.0, max_error, 1.0e-6);
+
+    // a new fade can not latch the unregistered profile (falls back to the short fade)
+    context.phase = 0.0f;
+    (void)mix_block(mixer, context, src);
+
+    OSLMP_EXPECT(context.phase == 1.0f);
+}
+
+void test_shared_fade_profiles()
+{
+    MixingUnit mixer;
+    MixingUnit bus;
+    MixingUnit other;
+    uint32_t profile = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+    OSLMP_EXPECT(init_mixer(bus));
+
+    // not initialized, itself, and a different sampling rate
+    {
+        MixingUnit::initialize_args_t args;
+
+        args.sampling_rate = SAMPLING_RATE * 2;
+        args.block_size_in_frames = BLOCK_SIZE;
+        args.short_fade_duration_ms = SHORT_FADE_DURATION_MS;
+        args.long_fade_duration_ms = LONG_FADE_DURATION_MS;
+
+        OSLMP_EXPECT(!other.shareFadeProfiles(mixer));
+        OSLMP_EXPECT(!mixer.shareFadeProfiles(mixer));
+        OSLMP_EXPECT(other.initialize(args));
+        OSLMP_EXPECT(!other.shareFadeProfiles(mixer));
+    }
+
+    OSLMP_EXPECT(bus.shareFadeProfiles(mixer));
+
+    // the owner can not share the profiles of another one
+    OSLMP_EXPECT(!mixer.shareFadeProfiles(bus));
+
+    // the profiles are registered through the owner only
+    OSLMP_EXPECT(bus.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_ILLEGAL_STATE);
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(bus.unregisterFadeProfile(profile) == OSLMP_RESULT_ILLEGAL_STATE);
+
+    // the id of the owner is valid on the bus
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 1.0f);
+    context.fade_profile = profile;
+
+    std::vector<float> output;
+
+    for (uint32_t i = 0; i < 3; ++i) {
+        const std::vector<float> dest = mix_block_via_bus(mixer, bus, context, src);
+        output.insert(output.end(), dest.begin(), dest.end());
+    }
+
+    OSLMP_EXPECT(context.phase == 1.0f);
+    OSLMP_EXPECT_NEAR(0.0, linear_fade_in_error(output), 1.0e-6);
+
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile) == OSLMP_RESULT_SUCCESS);
+}
+
+void test_bus_bypass_switching_keeps_latched_fade()
+{
+    MixingUnit mixer;
+    MixingUnit bus;
+    uint32_t profile = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+    OSLMP_EXPECT(init_bus(bus, mixer));
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 1.0f);
+    context.fade_profile = profile;
+
+    std::vector<float> output;
+    std::vector<float> dest;
+
+    // starts on the bus (the insert effect is active)
+    dest = mix_block_via_bus(mixer, bus, context, src);
+    output.insert(output.end(), dest.begin(), dest.end());
+
+    OSLMP_EXPECT(context.phase == 0.5f);
+    OSLMP_EXPECT(context.latched_fade_profile == profile);
+
+    // bypassed; the fade continues on the main mix with the latched table
+    dest = mix_block(mixer, context, src);
+    output.insert(output.end(), dest.begin(), dest.end());
+
+    // back to the bus
+    dest = mix_block_via_bus(mixer, bus, context, src);
+    output.insert(output.end(), dest.begin(), dest.end());
+
+    OSLMP_EXPECT(context.phase == 1.0f);
+    OSLMP_EXPECT_NEAR(0.0, linear_fade_in_error(output), 1.0e-6);
+
+    OSLMP_EXPECT(mixer.unregisterFadeProfile(profile) == OSLMP_RESULT_SUCCESS);
+}
+
+void test_unregistration_waits_for_bus_fade()
+{
+    MixingUnit mixer;
+    MixingUnit bus;
+    uint32_t profile = 0;
+
+    OSLMP_EXPECT(init_mixer(mixer));
+    OSLMP_EXPECT(init_bus(bus, mixer));
+    OSLMP_EXPECT(mixer.registerFadeProfile(MixingUnit::FADE_CURVE_LINEAR, PROFILE_DURATION_MS, &profile) ==
+                 OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> src = make_dc(1.0f, 1.0f);
+    MixingUnit::Context context = make_context(MixingUnit::MODE_PROFILE_FADE_IN, 1.0f, 1.0f);
+    context.fade_profile = profile;
+
+    std::vector<float> output;
+    std::vector<float> dest;
+
+    // the fade on the bus latches the profile
+    dest = mix_block_via_bus(mixer, bus, context, src);
+    output.insert(output.end(), dest.begin(), dest.end());
+
+    // unregister (e.g. the player is released) while the fade is in progress
+    unregister_thread_args_t args;
+    args.mixer = &mixer;
+    args.profile = profile;
+    args.result = OSLMP_RESULT_ERROR;
+    args.finished.store(false);
+
+    pthread_t thread;
+    OSLMP_EXPECT(::pthread_create(&thread, nullptr, unregister_thread, &args) == 0);
+
+    (void)::usleep(10000);
+
+    // the owner counts the use on the bus
+    OSLMP_EXPECT(!args.finished.load(std::memory_order_acquire));
+
+    for (uint32_t i = 0; i < 2; ++i) {
+        dest = mix_block_via_bus(mixer, bus, context, src);
+        output.insert(output.end(), dest.begin(), dest.end());
+    }
+
+    ::pthread_join(thread, nullptr);
+
+    OSLMP_EXPECT(args.finished.load(std::memory_order_acquire));
+    OSLMP_EXPECT(args.result == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(context.phase == 1.0f);
+    OSLMP_EXPECT_NEAR(0.0, linear_fade_in_error(output), 1.0e-6);
+
+    // a new fade on the bus can not latch the unregistered profile (falls back to the short fade)
+    context.phase = 0.0f;
+    (void)mix_block_via_bus(mixer, bus, context, src);
+
+    OSLMP_EXPECT(context.phase == 1.0f);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_initialize_arguments);
+    OSLMP_RUN_TEST(test_mode_add);
+    OSLMP_RUN_TEST(test_mode_add_with_fading_sources);
+    OSLMP_RUN_TEST(test_mute);
+    OSLMP_RUN_TEST(test_s16_output);
+    OSLMP_RUN_TEST(test_profile_fade_in);
+    OSLMP_RUN_TEST(test_profile_fade_out);
+    OSLMP_RUN_TEST(test_unregistered_profile_falls_back_to_short_fade);
+    OSLMP_RUN_TEST(test_fade_profile_registration);
+    OSLMP_RUN_TEST(test_stale_profile_id);
+    OSLMP_RUN_TEST(test_latched_profile_outlives_unregistration);
+    OSLMP_RUN_TEST(test_shared_fade_profiles);
+    OSLMP_RUN_TEST(test_bus_bypass_switching_keeps_latched_fade);
+    OSLMP_RUN_TEST(test_unregistration_waits_for_bus_fade);
+
+    return oslmp_host_test::result();
+}
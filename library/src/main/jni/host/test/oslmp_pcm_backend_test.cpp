@@ -0,0 +1,541 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_pcm_backend_test
+//
+// Correctness tests of the AudioDecoderPcmBackend (WAV header parser,
+// rejecting broken or non-WAV files, delivering the converted blocks).
+//
+
+#include <cstdio>
+#include <cstring>
+#include <vector>
+
+#include <unistd.h>
+
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioDecoderPcmBackend.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+typedef AudioDecoderPcmBackend::wav_format_t wav_format_t;
+
+void append_le16(std::vector<uint8_t> &data, uint16_t value)
+{
+    data.push_back(static_cast<uint8_t>(value & 0xff));
+    data.push_back(static_cast<uint8_t>((value >> 8) & 0xff));
+}
+
+void append_le32(std::vector<uint8_t> &data, uint32_t value)
+{
+    append_le16(data, static_cast<uint16_t>(value & 0xffff));
+    append_le16(data, static_cast<uint16_t>((value >> 16) & 0xffff));
+}
+
+void append_fourcc(std::vector<uint8_t> &data, const char *fourcc) { data.insert(data.end(), fourcc, fourcc + 4); }
+
+void append_riff_header(std::vector<uint8_t> &data)
+{
+    append_fourcc(data, "RIFF");
+    append_le32(data, 0); // (not checked)
+    append_fourcc(data, "WAVE");
+}
+
+void append_fmt_chunk(std::vector<uint8_t> &data, uint16_t format_tag, uint16_t num_channels, uint32_t sampling_rate,
+                      uint16_t bits_per_sample)
+{
+    const uint16_t block_align = num_channels * ((bits_per_sample + 7) / 8);
+
+    append_fourcc(data, "fmt ");
+    append_le32(data, 16);
+    append_le16(data, format_tag);
+    append_le16(data, num_channels);
+    append_le32(data, sampling_rate);
+    append_le32(data, sampling_rate * block_align);
+    append_le16(data, block_align);
+    append_le16(data, bits_per_sample);
+}
+
+void append_data_chunk_header(std::vector<uint8_t> &data, uint32_t size)
+{
+    append_fourcc(data, "data");
+    append_le32(data, size);
+}
+
+std::vector<uint8_t> make_pcm16_wav(uint16_t num_channels, uint32_t num_frames)
+{
+    std::vector<uint8_t> data;
+
+    append_riff_header(data);
+    append_fmt_chunk(data, 0x0001, num_channels, 44100, 16);
+    append_data_chunk_header(data, num_frames * num_channels * 2);
+
+    for (uint32_t i = 0; i < num_frames * num_channels; ++i) {
+        append_le16(data, static_cast<uint16_t>(i));
+    }
+
+    return data;
+}
+
+// NOTE: the file is deleted when the descriptor is closed
+int make_temp_file(const std::vector<uint8_t> &data)
+{
+    FILE *fp = ::tmpfile();
+
+    OSLMP_EXPECT(fp != nullptr);
+    if (!fp)
+        return -1;
+
+    if (!data.empty()) {
+        OSLMP_EXPECT(::fwrite(&data[0], 1, data.size(), fp) == data.size());
+    }
+    ::fflush(fp);
+
+    const int fd = ::dup(::fileno(fp));
+    ::fclose(fp);
+
+    return fd;
+}
+
+bool parse(const std::vector<uint8_t> &data, wav_format_t &format, int64_t offset = 0)
+{
+    const int fd = make_temp_file(data);
+
+    if (fd < 0)
+        return false;
+
+    const bool result =
+        AudioDecoderPcmBackend::sParseWavFile(fd, offset, static_cast<int64_t>(data.size()) - offset, format);
+
+    ::close(fd);
+
+    return result;
+}
+
+class TestListener : public AudioDecoderBackend::EventListener {
+public:
+    TestListener() : mutex_(), cv_(), samples_(), end_of_data_(false), error_(false) {}
+
+    virtual bool onDecoderOutputData(const int16_t *data, uint32_t num_channels, uint32_t num_frames,
+                                     uint32_t /*seek_serial*/) noexcept override
+    {
+        utils::pt_unique_lock lock(mutex_);
+        samples_.insert(samples_.end(), data, data + num_channels * num_frames);
+        return true;
+    }
+
+    virtual void onDecoderEndOfData(uint32_t /*seek_serial*/) noexcept override
+    {
+        utils::pt_unique_lock lock(mutex_);
+        end_of_data_ = true;
+        cv_.notify_all();
+    }
+
+    virtual void onDecoderError(int /*result*/, uint32_t /*seek_serial*/) noexcept override
+    {
+        utils::pt_unique_lock lock(mutex_);
+        error_ = true;
+        cv_.notify_all();
+    }
+
+    bool waitForEndOfData() noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+
+        while (!(end_of_data_ || error_)) {
+            if (cv_.wait_relative_ms(lock, 3000) != 0)
+                break;
+        }
+
+        return end_of_data_;
+    }
+
+    std::vector<int16_t> samples() noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+        return samples_;
+    }
+
+private:
+    utils::pt_mutex mutex_;
+    utils::pt_condition_variable cv_;
+    std::vector<int16_t> samples_;
+    bool end_of_data_;
+    bool error_;
+};
+
+//
+// Tests
+//
+void test_parse_pcm16()
+{
+    const std::vector<uint8_t> data = make_pcm16_wav(2, 100);
+    wav_format_t format;
+
+    OSLMP_EXPECT(parse(data, format));
+    OSLMP_EXPECT(format.sample_format == AudioDecoderPcmBackend::SAMPLE_FORMAT_S16);
+    OSLMP_EXPECT(format.num_channels == 2);
+    OSLMP_EXPECT(format.sampling_rate == 44100);
+    OSLMP_EXPECT(format.frame_size == 4);
+    OSLMP_EXPECT(format.data_offset == 44);
+    OSLMP_EXPECT(format.num_frames == 100);
+}
+
+void test_parse_with_offset()
+{
+    // the WAV file is embedded in a larger file (e.g. an asset file descriptor)
+    const std::vector<uint8_t> wav = make_pcm16_wav(1, 50);
+    std::vector<uint8_t> data(1000, 0xaa);
+
+    data.insert(data.end(), wav.begin(), wav.end());
+    data.insert(data.end(), 500, 0xbb);
+
+    const int fd = make_temp_file(data);
+    wav_format_t format;
+
+    OSLMP_EXPECT(AudioDecoderPcmBackend::sParseWavFile(fd, 1000, static_cast<int64_t>(wav.size()), format));
+    OSLMP_EXPECT(format.data_offset == 44);
+    OSLMP_EXPECT(format.num_frames == 50);
+
+    // the data outside of the range is not the WAV file
+    OSLMP_EXPECT(!AudioDecoderPcmBackend::sParseWavFile(fd, 0, static_cast<int64_t>(data.size()), format));
+
+    ::close(fd);
+}
+
+void test_parse_sample_formats()
+{
+    struct {
+        uint16_t format_tag;
+        uint16_t bits_per_sample;
+        AudioDecoderPcmBackend::sample_format_t expected;
+    } cases[] = {
+        { 0x0001, 8, AudioDecoderPcmBackend::SAMPLE_FORMAT_U8 },
+        { 0x0001, 16, AudioDecoderPcmBackend::SAMPLE_FORMAT_S16 },
+        { 0x0001, 24, AudioDecoderPcmBackend::SAMPLE_FORMAT_S24 },
+        { 0x0001, 32, AudioDecoderPcmBackend::SAMPLE_FORMAT_S32 },
+        { 0x0003, 32, AudioDecoderPcmBackend::SAMPLE_FORMAT_F32 },
+    };
+
+    for (size_t i = 0; i < sizeof(cases) / sizeof(cases[0]); ++i) {
+        std::vector<uint8_t> data;
+
+        append_riff_header(data);
+        append_fmt_chunk(data, cases[i].format_tag, 2, 48000, cases[i].bits_per_sample);
+        append_data_chunk_header(data, 10 * 2 * (cases[i].bits_per_sample / 8));
+        data.insert(data.end(), 10 * 2 * (cases[i].bits_per_sample / 8), 0);
+
+        wav_format_t format;
+
+        OSLMP_EXPECT(parse(data, format));
+        OSLMP_EXPECT(format.sample_format == cases[i].expected);
+        OSLMP_EXPECT(format.num_frames == 10);
+    }
+}
+
+void test_parse_extensible()
+{
+    std::vector<uint8_t> data;
+
+    append_riff_header(data);
+    append_fourcc(data, "fmt ");
+    append_le32(data, 40);
+    append_le16(data, 0xfffe); // WAVE_FORMAT_EXTENSIBLE
+    append_le16(data, 2);
+    append_le32(data, 48000);
+    append_le32(data, 48000 * 8);
+    append_le16(data, 8);
+    append_le16(data, 32);
+    append_le16(data, 22); // cbSize
+    append_le16(data, 32); // wValidBitsPerSample
+    append_le32(data, 3);  // dwChannelMask
+    append_le16(data, 0x0003); // SubFormat (KSDATAFORMAT_SUBTYPE_IEEE_FLOAT)
+    data.insert(data.end(), 14, 0);
+    append_data_chunk_header(data, 8 * 4);
+    data.insert(data.end(), 8 * 4, 0);
+
+    wav_format_t format;
+
+    OSLMP_EXPECT(parse(data, format));
+    OSLMP_EXPECT(format.sample_format == AudioDecoderPcmBackend::SAMPLE_FORMAT_F32);
+    OSLMP_EXPECT(format.data_offset == 12 + 8 + 40 + 8);
+    OSLMP_EXPECT(format.num_frames == 4);
+}
+
+void test_parse_skips_other_chunks()
+{
+    std::vector<uint8_t> data;
+
+    // the odd sized chunk is followed by a pad byte
+    append_riff_header(data);
+    append_fourcc(data, "LIST");
+    append_le32(data, 5);
+    data.insert(data.end(), 5 + 1, 0);
+    append_fmt_chunk(data, 0x0001, 2, 44100, 16);
+    append_fourcc(data, "fact");
+    append_le32(data, 4);
+    append_le32(data, 0);
+    append_data_chunk_header(data, 4 * 4);
+    data.insert(data.end(), 4 * 4, 0);
+
+    wav_format_t format;
+
+    OSLMP_EXPECT(parse(data, format));
+    OSLMP_EXPECT(format.data_offset == 12 + (8 + 6) + (8 + 16) + (8 + 4) + 8);
+    OSLMP_EXPECT(format.num_frames == 4);
+}
+
+void test_parse_data_size_is_clamped()
+{
+    // the size field of the data chunk is not updated (streaming)
+    std::vector<uint8_t> data = make_pcm16_wav(2, 100);
+
+    data[40] = data[41] = data[42] = data[43] = 0xff;
+
+    wav_format_t format;
+
+    OSLMP_EXPECT(parse(data, format));
+    OSLMP_EXPECT(format.num_frames == 100);
+
+    // the partial frame at the end is not used
+    data.push_back(0);
+
+    OSLMP_EXPECT(parse(data, format));
+    OSLMP_EXPECT(format.num_frames == 100);
+}
+
+void test_parse_rejects_chunk_size_wrap()
+{
+    // pos + 8 + chunk_size wraps around in 32-bit arithmetic
+    const uint32_t sizes[] = { 0xffffffffU, 0xfffffff8U, 0xffffffe0U };
+
+    for (size_t i = 0; i < sizeof(sizes) / sizeof(sizes[0]); ++i) {
+        std::vector<uint8_t> data;
+
+        append_riff_header(data);
+        append_fourcc(data, "junk");
+        append_le32(data, sizes[i]);
+        append_fmt_chunk(data, 0x0001, 2, 44100, 16);
+        append_data_chunk_header(data, 4 * 4);
+        data.insert(data.end(), 4 * 4, 0);
+
+        wav_format_t format;
+
+        OSLMP_EXPECT(!parse(data, format));
+    }
+
+    // the fmt chunk exceeds the file
+    {
+        std::vector<uint8_t> data;
+
+        append_riff_header(data);
+        append_fourcc(data, "fmt ");
+        append_le32(data, 0xffffffffU);
+        append_le16(data, 0x0001);
+
+        wav_format_t format;
+
+        OSLMP_EXPECT(!parse(data, format));
+    }
+}
+
+void test_parse_rejects_unsupported_files()
+{
+    wav_format_t format;
+
+    // empty / too short
+    OSLMP_EXPECT(!parse(std::vector<uint8_t>(), format));
+    OSLMP_EXPECT(!parse(std::vector<uint8_t>(8, 0), format));
+
+    // MP3 (ID3 tag)
+    {
+        std::vector<uint8_t> data(1000, 0);
+        data[0] = 'I';
+        data[1] = 'D';
+        data[2] = '3';
+        OSLMP_EXPECT(!parse(data, format));
+    }
+
+    // RIFF but not WAVE
+    {
+        std::vector<uint8_t> data = make_pcm16_wav(2, 10);
+        ::memcpy(&data[8], "AVI ", 4);
+        OSLMP_EXPECT(!parse(data, format));
+    }
+
+    // no fmt chunk
+    {
+        std::vector<uint8_t> data;
+        append_riff_header(data);
+        append_data_chunk_header(data, 16);
+        data.insert(data.end(), 16, 0);
+        OSLMP_EXPECT(!parse(data, format));
+    }
+
+    // no data chunk
+    {
+        std::vector<uint8_t> data;
+        append_riff_header(data);
+        append_fmt_chunk(data, 0x0001, 2, 44100, 16);
+        OSLMP_EXPECT(!parse(data, format));
+    }
+
+    // empty data chunk
+    OSLMP_EXPECT(!parse(make_pcm16_wav(2, 0), format));
+
+    // unsupported channels / compressed format / 64 bit float / zero sampling rate
+    {
+        std::vector<uint8_t> data;
+        append_riff_header(data);
+        append_fmt_chunk(data, 0x0001, 3, 44100, 16);
+        append_data_chunk_header(data, 6 * 4);
+        data.insert(data.end(), 6 * 4, 0);
+        OSLMP_EXPECT(!parse(data, format));
+    }
+    {
+        std::vector<uint8_t> data;
+        append_riff_header(data);
+        append_fmt_chunk(data, 0x0055, 2, 44100, 16);
+        append_data_chunk_header(data, 4 * 4);
+        data.insert(data.end(), 4 * 4, 0);
+        OSLMP_EXPECT(!parse(data, format));
+    }
+    {
+        std::vector<uint8_t> data;
+        append_riff_header(data);
+        append_fmt_chunk(data, 0x0003, 2, 44100, 64);
+        append_data_chunk_header(data, 16 * 4);
+        data.insert(data.end(), 16 * 4, 0);
+        OSLMP_EXPECT(!parse(data, format));
+    }
+    {
+        std::vector<uint8_t> data;
+        append_riff_header(data);
+        append_fmt_chunk(data, 0x0001, 2, 0, 16);
+        append_data_chunk_header(data, 4 * 4);
+        data.insert(data.end(), 4 * 4, 0);
+        OSLMP_EXPECT(!parse(data, format));
+    }
+
+    // inconsistent block align
+    {
+        std::vector<uint8_t> data = make_pcm16_wav(2, 10);
+        data[32] = 3;
+        OSLMP_EXPECT(!parse(data, format));
+    }
+
+    // invalid descriptor
+    OSLMP_EXPECT(!AudioDecoderPcmBackend::sParseWavFile(-1, 0, 100, format));
+}
+
+void test_open_and_deliver()
+{
+    const uint32_t kBlockSize = 32;
+    const uint32_t kNumFrames = 100;
+    const std::vector<uint8_t> data = make_pcm16_wav(2, kNumFrames);
+    const int fd = make_temp_file(data);
+
+    TestListener listener;
+    AudioDecoderPcmBackend backend;
+    AudioDecoderBackend::open_args_t args;
+
+    args.fd = fd;
+    args.offset = 0;
+    args.length = static_cast<int64_t>(data.size());
+    args.block_size_in_frames = kBlockSize;
+    args.listener = &listener;
+
+    OSLMP_EXPECT(backend.onOpen(args) == OSLMP_RESULT_SUCCESS);
+    ::close(fd);
+
+    OSLMP_EXPECT(backend.onStartPrefetch() == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(backend.onStart() == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(listener.waitForEndOfData());
+
+    backend.onClose();
+
+    // the last partial block is padded with silence
+    const std::vector<int16_t> samples = listener.samples();
+    const uint32_t num_blocks = (kNumFrames + kBlockSize - 1) / kBlockSize;
+
+    OSLMP_EXPECT(samples.size() == num_blocks * kBlockSize * 2);
+
+    bool matched = true;
+    for (size_t i = 0; i < samples.size(); ++i) {
+        const int16_t expected = (i < kNumFrames * 2) ? static_cast<int16_t>(i) : 0;
+        if (samples[i] != expected) {
+            matched = false;
+            break;
+        }
+    }
+    OSLMP_EXPECT(matched);
+}
+
+void test_open_rejects_non_wav_file()
+{
+    std::vector<uint8_t> data(4096, 0);
+    data[0] = 'I';
+    data[1] = 'D';
+    data[2] = '3';
+
+    const int fd = make_temp_file(data);
+
+    TestListener listener;
+    AudioDecoderPcmBackend backend;
+    AudioDecoderBackend::open_args_t args;
+
+    args.fd = fd;
+    args.offset = 0;
+    args.length = static_cast<int64_t>(data.size());
+    args.block_size_in_frames = 32;
+    args.listener = &listener;
+
+    OSLMP_EXPECT(backend.onOpen(args) == OSLMP_RESULT_CONTENT_UNSUPPORTED);
+    OSLMP_EXPECT(backend.onStartPrefetch() == OSLMP_RESULT_ILLEGAL_STATE);
+
+    // the descriptor is still owned by the caller
+    OSLMP_EXPECT(::lseek(fd, 0, SEEK_SET) == 0);
+
+    ::close(fd);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_parse_pcm16);
+    OSLMP_RUN_TEST(test_parse_with_offset);
+    OSLMP_RUN_TEST(test_parse_sample_formats);
+    OSLMP_RUN_TEST(test_parse_extensible);
+    OSLMP_RUN_TEST(test_parse_skips_other_chunks);
+    OSLMP_RUN_TEST(test_parse_data_size_is_clamped);
+    OSLMP_RUN_TEST(test_parse_rejects_chunk_size_wrap);
+    OSLMP_RUN_TEST(test_parse_rejects_unsupported_files);
+    OSLMP_RUN_TEST(test_open_and_deliver);
+    OSLMP_RUN_TEST(test_open_rejects_non_wav_file);
+
+    return oslmp_host_test::result();
+}
@@ -0,0 +1,313 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_pipe_test
+//
+// Correctness tests of the AudioSourceDataPipe (item circulation, tag
+// handling, flush and initialization).
+//
+
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioSourceDataPipe.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+typedef AudioSourceDataPipe Pipe;
+
+const uint32_t NUM_BUFFER_ITEMS = 4;
+const uint32_t NUM_CHANNELS = 2;
+const uint32_t NUM_FRAMES = 64;
+
+int init_pipe(Pipe &pipe, bool deferred_buffer_alloc)
+{
+    Pipe::initialize_args_t args;
+
+    args.num_buffer_items = NUM_BUFFER_ITEMS;
+    args.num_channels = NUM_CHANNELS;
+    args.num_frames = NUM_FRAMES;
+    args.deferred_buffer_alloc = deferred_buffer_alloc;
+
+    return pipe.initialize(args);
+}
+
+float sample_value(uint32_t block_no, uint32_t i) noexcept
+{
+    return static_cast<float>(block_no * 1000 + i);
+}
+
+bool produce(Pipe &pipe, uint32_t block_no, uint32_t tag)
+{
+    Pipe::produce_block_t pb;
+
+    if (!pipe.lockProduce(pb))
+        return false;
+
+    OSLMP_EXPECT(pb.dest != nullptr);
+    OSLMP_EXPECT(pb.num_channels == NUM_CHANNELS);
+    OSLMP_EXPECT(pb.num_frames == NUM_FRAMES);
+
+    for (uint32_t i = 0; i < NUM_CHANNELS * NUM_FRAMES; ++i) {
+        pb.dest[i] = sample_value(block_no, i);
+    }
+
+    pb.tag = tag;
+    pb.position_msec = static_cast<int32_t>(block_no * 10);
+
+    return pipe.unlockProduce(pb);
+}
+
+bool consume(Pipe &pipe, uint32_t block_no, uint32_t tag, uint32_t tag_mask = 0xFFFFFFFFUL)
+{
+    Pipe::consume_block_t cb;
+
+    if (!pipe.lockConsume(cb, 0, tag_mask))
+        return false;
+
+    bool contents_ok = (cb.src != nullptr);
+    for (uint32_t i = 0; contents_ok && i < NUM_CHANNELS * NUM_FRAMES; ++i) {
+        contents_ok = (cb.src[i] == sample_value(block_no, i));
+    }
+
+    OSLMP_EXPECT(contents_ok);
+    OSLMP_EXPECT(cb.num_channels == NUM_CHANNELS);
+    OSLMP_EXPECT(cb.num_frames == NUM_FRAMES);
+    OSLMP_EXPECT(cb.tag == tag);
+    OSLMP_EXPECT(cb.position_msec == static_cast<int32_t>(block_no * 10));
+
+    return pipe.unlockConsume(cb);
+}
+
+bool recycle(Pipe &pipe, uint32_t expected_tag)
+{
+    Pipe::recycle_block_t rb;
+
+    if (!pipe.lockRecycle(rb))
+        return false;
+
+    OSLMP_EXPECT(rb.tag == expected_tag);
+
+    return pipe.unlockRecycle(rb);
+}
+
+//
+// Test cases
+//
+void test_initialize_arguments()
+{
+    Pipe::initialize_args_t args;
+
+    args.num_buffer_items = NUM_BUFFER_ITEMS;
+    args.num_channels = NUM_CHANNELS;
+    args.num_frames = NUM_FRAMES;
+    args.deferred_buffer_alloc = false;
+
+    {
+        Pipe pipe;
+        Pipe::initialize_args_t bad_args = args;
+        bad_args.num_buffer_items = 1;
+        OSLMP_EXPECT(pipe.initialize(bad_args) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    }
+    {
+        Pipe pipe;
+        Pipe::initialize_args_t bad_args = args;
+        bad_args.num_buffer_items = Pipe::MAX_BUFFER_ITEM_COUNT + 1;
+        OSLMP_EXPECT(pipe.initialize(bad_args) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    }
+    {
+        Pipe pipe;
+        Pipe::initialize_args_t bad_args = args;
+        bad_args.num_channels = 0;
+        OSLMP_EXPECT(pipe.initialize(bad_args) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    }
+    {
+        Pipe pipe;
+        Pipe::initialize_args_t bad_args = args;
+        bad_args.num_frames = 0;
+        OSLMP_EXPECT(pipe.initialize(bad_args) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    }
+    {
+        Pipe pipe;
+        OSLMP_EXPECT(pipe.initialize(args) == OSLMP_RESULT_SUCCESS);
+        OSLMP_EXPECT(pipe.initialize(args) == OSLMP_RESULT_ILLEGAL_STATE);
+        OSLMP_EXPECT(pipe.getCapacity() == NUM_BUFFER_ITEMS);
+    }
+    {
+        // not initialized
+        Pipe pipe;
+        Pipe::produce_block_t pb;
+        OSLMP_EXPECT(pipe.reset() == OSLMP_RESULT_ILLEGAL_STATE);
+        OSLMP_EXPECT(pipe.allocateBuffer() == OSLMP_RESULT_ILLEGAL_STATE);
+        OSLMP_EXPECT(!pipe.lockProduce(pb));
+    }
+}
+
+void test_deferred_buffer_alloc()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe, true) == OSLMP_RESULT_SUCCESS);
+
+    Pipe::produce_block_t pb;
+    OSLMP_EXPECT(!pipe.lockProduce(pb));
+
+    OSLMP_EXPECT(pipe.allocateBuffer() == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(produce(pipe, 0, Pipe::TAG_AUDIO_DATA));
+    OSLMP_EXPECT(consume(pipe, 0, Pipe::TAG_AUDIO_DATA));
+    OSLMP_EXPECT(recycle(pipe, Pipe::TAG_AUDIO_DATA));
+
+    OSLMP_EXPECT(pipe.releaseBuffer() == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(!pipe.lockProduce(pb));
+}
+
+void test_fifo_order_and_wrap_around()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe, false) == OSLMP_RESULT_SUCCESS);
+
+    uint32_t block_no = 0;
+
+    for (int round = 0; round < 5; ++round) {
+        // fill up the pipe
+        for (uint32_t i = 0; i < NUM_BUFFER_ITEMS; ++i) {
+            OSLMP_EXPECT(produce(pipe, block_no + i, Pipe::TAG_AUDIO_DATA));
+        }
+
+        Pipe::produce_block_t pb;
+        OSLMP_EXPECT(!pipe.lockProduce(pb));
+        OSLMP_EXPECT(pipe.getNumberOfConsumableItems() == NUM_BUFFER_ITEMS);
+
+        // drain in the produced order
+        for (uint32_t i = 0; i < NUM_BUFFER_ITEMS; ++i) {
+            OSLMP_EXPECT(consume(pipe, block_no + i, Pipe::TAG_AUDIO_DATA));
+        }
+
+        Pipe::consume_block_t cb;
+        OSLMP_EXPECT(!pipe.lockConsume(cb));
+        OSLMP_EXPECT(pipe.getNumberOfConsumableItems() == 0);
+
+        for (uint32_t i = 0; i < NUM_BUFFER_ITEMS; ++i) {
+            OSLMP_EXPECT(recycle(pipe, Pipe::TAG_AUDIO_DATA));
+        }
+
+        Pipe::recycle_block_t rb;
+        OSLMP_EXPECT(!pipe.lockRecycle(rb));
+
+        block_no += NUM_BUFFER_ITEMS;
+    }
+
+    // interleaved produce/consume/recycle (the queue indices wrap around at odd positions)
+    for (uint32_t i = 0; i < 3 * NUM_BUFFER_ITEMS + 1; ++i) {
+        OSLMP_EXPECT(produce(pipe, block_no, Pipe::TAG_AUDIO_DATA));
+        OSLMP_EXPECT(produce(pipe, block_no + 1, Pipe::TAG_AUDIO_DATA));
+        OSLMP_EXPECT(consume(pipe, block_no, Pipe::TAG_AUDIO_DATA));
+        OSLMP_EXPECT(consume(pipe, block_no + 1, Pipe::TAG_AUDIO_DATA));
+        OSLMP_EXPECT(recycle(pipe, Pipe::TAG_AUDIO_DATA));
+        OSLMP_EXPECT(recycle(pipe, Pipe::TAG_AUDIO_DATA));
+        block_no += 2;
+    }
+}
+
+void test_tag_mask()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe, false) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.consumerGetLastBlockTag() == Pipe::TAG_NONE);
+
+    OSLMP_EXPECT(produce(pipe, 0, Pipe::TAG_AUDIO_DATA));
+    OSLMP_EXPECT(produce(pipe, 1, Pipe::TAG_EVENT_END_OF_DATA));
+
+    const uint32_t audio_only = (1UL << Pipe::TAG_AUDIO_DATA);
+    const uint32_t eod_only = (1UL << Pipe::TAG_EVENT_END_OF_DATA);
+
+    // the head item is not matched, it has to be kept in the queue
+    Pipe::consume_block_t cb;
+    OSLMP_EXPECT(!pipe.lockConsume(cb, 0, eod_only));
+    OSLMP_EXPECT(pipe.getNumberOfConsumableItems() == 2);
+
+    OSLMP_EXPECT(consume(pipe, 0, Pipe::TAG_AUDIO_DATA, audio_only));
+    OSLMP_EXPECT(pipe.consumerGetLastBlockTag() == Pipe::TAG_AUDIO_DATA);
+
+    OSLMP_EXPECT(!pipe.lockConsume(cb, 0, audio_only));
+    OSLMP_EXPECT(pipe.getNumberOfConsumableItems() == 1);
+
+    OSLMP_EXPECT(consume(pipe, 1, Pipe::TAG_EVENT_END_OF_DATA, eod_only));
+    OSLMP_EXPECT(pipe.consumerGetLastBlockTag() == Pipe::TAG_EVENT_END_OF_DATA);
+
+    OSLMP_EXPECT(recycle(pipe, Pipe::TAG_AUDIO_DATA));
+    OSLMP_EXPECT(recycle(pipe, Pipe::TAG_EVENT_END_OF_DATA));
+
+    // reset() clears the last tag
+    OSLMP_EXPECT(pipe.reset() == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.consumerGetLastBlockTag() == Pipe::TAG_NONE);
+}
+
+void test_producer_request_flush()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe, false) == OSLMP_RESULT_SUCCESS);
+
+    OSLMP_EXPECT(produce(pipe, 0, Pipe::TAG_AUDIO_DATA));
+    OSLMP_EXPECT(produce(pipe, 1, Pipe::TAG_AUDIO_DATA));
+
+    pipe.producerRequestFlush();
+
+    OSLMP_EXPECT(produce(pipe, 2, Pipe::TAG_EVENT_END_OF_DATA));
+
+    // the flushed items are skipped
+    OSLMP_EXPECT(consume(pipe, 2, Pipe::TAG_EVENT_END_OF_DATA));
+    OSLMP_EXPECT(pipe.getNumberOfConsumableItems() == 0);
+
+    // and recycled as TAG_NONE
+    OSLMP_EXPECT(recycle(pipe, Pipe::TAG_NONE));
+    OSLMP_EXPECT(recycle(pipe, Pipe::TAG_NONE));
+    OSLMP_EXPECT(recycle(pipe, Pipe::TAG_EVENT_END_OF_DATA));
+
+    Pipe::recycle_block_t rb;
+    OSLMP_EXPECT(!pipe.lockRecycle(rb));
+
+    // all items are usable again
+    for (uint32_t i = 0; i < NUM_BUFFER_ITEMS; ++i) {
+        OSLMP_EXPECT(produce(pipe, 10 + i, Pipe::TAG_AUDIO_DATA));
+    }
+    for (uint32_t i = 0; i < NUM_BUFFER_ITEMS; ++i) {
+        OSLMP_EXPECT(consume(pipe, 10 + i, Pipe::TAG_AUDIO_DATA));
+    }
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_initialize_arguments);
+    OSLMP_RUN_TEST(test_deferred_buffer_alloc);
+    OSLMP_RUN_TEST(test_fifo_order_and_wrap_around);
+    OSLMP_RUN_TEST(test_tag_mask);
+    OSLMP_RUN_TEST(test_producer_request_flush);
+
+    return oslmp_host_test::result();
+}
@@ -0,0 +1,422 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_resampler_test
+//
+// Correctness tests of the polyphase resampler (coefficient design, DC gain,
+// output length, delay compensation and streaming behavior) and the
+// coefficient bank cache (LRU eviction, concurrent requests).
+//
+
+#include <algorithm>
+#include <cmath>
+#include <vector>
+
+#include <pthread.h>
+
+#include <cxxporthelper/cstdint>
+
+#include <utils/RefBase.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/PolyphaseResampler.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+typedef PolyphaseResamplerCoeffBank CoeffBank;
+
+android::sp<CoeffBank> design_bank(uint32_t in_rate, uint32_t out_rate, CoeffBank::quality_t quality)
+{
+    android::sp<CoeffBank> bank(new CoeffBank());
+
+    if (bank->design(in_rate, out_rate, quality) != OSLMP_RESULT_SUCCESS) {
+        bank.clear();
+    }
+
+    return bank;
+}
+
+// resamples the interleaved stereo frames, the input is fed in chunks of the specified sizes (cyclic)
+std::vector<float> resample(PolyphaseResampler &resampler, const std::vector<float> &input,
+                            const std::vector<int> &chunk_sizes, bool flush)
+{
+    std::vector<float> output;
+    const int num_in_frames = static_cast<int>(input.size() / 2);
+    int pos = 0;
+    size_t chunk_no = 0;
+
+    while (pos < num_in_frames) {
+        const int chunk = chunk_sizes[chunk_no % chunk_sizes.size()];
+        const int n = (std::min)((std::min)(chunk, num_in_frames - pos), resampler.num_can_put());
+
+        resampler.put_n(&input[2 * pos], n);
+        pos += n;
+        ++chunk_no;
+
+        const int m = resampler.num_can_get();
+        if (m > 0) {
+            const size_t offset = output.size();
+            output.resize(offset + 2 * m);
+            resampler.get_n(&output[offset], m);
+        }
+    }
+
+    if (flush) {
+        resampler.flush();
+
+        int m;
+        while ((m = resampler.num_can_get()) > 0) {
+            const size_t offset = output.size();
+            output.resize(offset + 2 * m);
+            resampler.get_n(&output[offset], m);
+        }
+    }
+
+    return output;
+}
+
+std::vector<float> make_sine(uint32_t num_frames, double freq_hz, uint32_t sampling_rate, double amplitude)
+{
+    std::vector<float> data(2 * num_frames);
+
+    for (uint32_t i = 0; i < num_frames; ++i) {
+        const double v = amplitude * std::sin(2.0 * M_PI * freq_hz * i / sampling_rate);
+        data[2 * i + 0] = static_cast<float>(v);
+        data[2 * i + 1] = static_cast<float>(-v);
+    }
+
+    return data;
+}
+
+uint32_t expected_num_out_frames(uint32_t num_in_frames, const CoeffBank &bank)
+{
+    const uint64_t L = bank.getInterpolationFactor();
+    const uint64_t M = bank.getDecimationFactor();
+
+    return static_cast<uint32_t>((num_in_frames * L + (M - 1)) / M);
+}
+
+//
+// Test cases
+//
+void test_supported_ratio()
+{
+    OSLMP_EXPECT(CoeffBank::sIsSupportedRatio(44100, 48000));
+    OSLMP_EXPECT(CoeffBank::sIsSupportedRatio(48000, 44100));
+    OSLMP_EXPECT(CoeffBank::sIsSupportedRatio(11025, 48000));
+    OSLMP_EXPECT(CoeffBank::sIsSupportedRatio(96000, 48000));
+    OSLMP_EXPECT(CoeffBank::sIsSupportedRatio(22050, 44100));
+
+    OSLMP_EXPECT(!CoeffBank::sIsSupportedRatio(48000, 48000));
+    OSLMP_EXPECT(!CoeffBank::sIsSupportedRatio(192000, 48000));
+    OSLMP_EXPECT(!CoeffBank::sIsSupportedRatio(0, 48000));
+    OSLMP_EXPECT(!CoeffBank::sIsSupportedRatio(48000, 0));
+}
+
+void test_design()
+{
+    CoeffBank bank;
+
+    OSLMP_EXPECT(bank.design(48000, 48000, CoeffBank::QUALITY_MIDDLE) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(bank.design(44100, 48000, static_cast<CoeffBank::quality_t>(3)) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+
+    OSLMP_EXPECT(bank.design(44100, 48000, CoeffBank::QUALITY_MIDDLE) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(bank.getInSamplingRate() == 44100);
+    OSLMP_EXPECT(bank.getOutSamplingRate() == 48000);
+    OSLMP_EXPECT(bank.getInterpolationFactor() == 160);
+    OSLMP_EXPECT(bank.getDecimationFactor() == 147);
+    OSLMP_EXPECT(bank.getNumTaps() == 32);
+    OSLMP_EXPECT(bank.getSizeInBytes() == sizeof(float) * 2 * 160 * 32);
+
+    // decimation widens the filter
+    OSLMP_EXPECT(bank.design(96000, 48000, CoeffBank::QUALITY_MIDDLE) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(bank.getInterpolationFactor() == 1);
+    OSLMP_EXPECT(bank.getDecimationFactor() == 2);
+    OSLMP_EXPECT(bank.getNumTaps() == 64);
+    OSLMP_EXPECT((bank.getNumTaps() % 4) == 0);
+}
+
+void test_phase_dc_gain()
+{
+    const CoeffBank::quality_t qualities[] = { CoeffBank::QUALITY_LOW, CoeffBank::QUALITY_MIDDLE,
+                                               CoeffBank::QUALITY_HIGH };
+
+    for (CoeffBank::quality_t quality : qualities) {
+        android::sp<CoeffBank> bank = design_bank(44100, 48000, quality);
+
+        if (!OSLMP_EXPECT(bank.get() != nullptr))
+            continue;
+
+        for (uint32_t p = 0; p < bank->getInterpolationFactor(); ++p) {
+            const float *coeffs = bank->getPhaseCoeffs(p);
+            double sum = 0.0;
+            bool duplicated = true;
+
+            for (uint32_t t = 0; t < bank->getNumTaps(); ++t) {
+                sum += coeffs[2 * t + 0];
+                duplicated = duplicated && (coeffs[2 * t + 0] == coeffs[2 * t + 1]);
+            }
+
+            OSLMP_EXPECT_NEAR(1.0, sum, 1.0e-5);
+            OSLMP_EXPECT(duplicated);
+        }
+    }
+}
+
+void test_coeff_bank_cache()
+{
+    PolyphaseResamplerCoeffBankCache cache;
+    android::sp<CoeffBank> bank1, bank2, bank3, bank4;
+
+    OSLMP_EXPECT(cache.obtain(44100, 48000, CoeffBank::QUALITY_MIDDLE, bank1) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.obtain(44100, 48000, CoeffBank::QUALITY_MIDDLE, bank2) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.obtain(44100, 48000, CoeffBank::QUALITY_HIGH, bank3) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.obtain(48000, 48000, CoeffBank::QUALITY_MIDDLE, bank4) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+
+    OSLMP_EXPECT(bank1.get() != nullptr);
+    OSLMP_EXPECT(bank1.get() == bank2.get());
+    OSLMP_EXPECT(bank1.get() != bank3.get());
+    OSLMP_EXPECT(bank4.get() == nullptr);
+}
+
+void test_coeff_bank_cache_eviction()
+{
+    android::sp<CoeffBank> probe(design_bank(44100, 48000, CoeffBank::QUALITY_MIDDLE));
+    const size_t bank_size = probe->getSizeInBytes();
+
+    // room for two banks of this size (the banks of the same ratio have the same size)
+    PolyphaseResamplerCoeffBankCache cache(bank_size * 2 + bank_size / 2);
+    android::sp<CoeffBank> a1, b1, a2, c1, b2;
+
+    OSLMP_EXPECT(cache.obtain(44100, 48000, CoeffBank::QUALITY_MIDDLE, a1) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.obtain(22050, 24000, CoeffBank::QUALITY_MIDDLE, b1) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.getNumBanks() == 2);
+
+    // 'a' becomes the most recently used one, 'b' is evicted by 'c'
+    OSLMP_EXPECT(cache.obtain(44100, 48000, CoeffBank::QUALITY_MIDDLE, a2) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(a1.get() == a2.get());
+    OSLMP_EXPECT(cache.obtain(88200, 96000, CoeffBank::QUALITY_MIDDLE, c1) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.getTotalSizeInBytes() <= bank_size * 2 + bank_size / 2);
+
+    OSLMP_EXPECT(cache.obtain(44100, 48000, CoeffBank::QUALITY_MIDDLE, a2) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(a1.get() == a2.get());
+
+    // the evicted bank is still usable, the next request designs a new one
+    OSLMP_EXPECT(b1->getNumTaps() > 0);
+    OSLMP_EXPECT(cache.obtain(22050, 24000, CoeffBank::QUALITY_MIDDLE, b2) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(b2.get() != nullptr && b1.get() != b2.get());
+
+    // the most recent bank is kept even if it exceeds the capacity
+    PolyphaseResamplerCoeffBankCache tiny_cache(1);
+    android::sp<CoeffBank> d1, d2;
+
+    OSLMP_EXPECT(tiny_cache.obtain(44100, 48000, CoeffBank::QUALITY_HIGH, d1) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(tiny_cache.obtain(44100, 48000, CoeffBank::QUALITY_HIGH, d2) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(tiny_cache.getNumBanks() == 1);
+    OSLMP_EXPECT(d1.get() == d2.get());
+}
+
+struct concurrent_obtain_args_t {
+    PolyphaseResamplerCoeffBankCache *cache;
+    uint32_t in_sampling_rate;
+    int result;
+    android::sp<CoeffBank> bank;
+};
+
+void *concurrent_obtain_thread(void *args)
+{
+    concurrent_obtain_args_t *a = static_cast<concurrent_obtain_args_t *>(args);
+    a->result = a->cache->obtain(a->in_sampling_rate, 48000, CoeffBank::QUALITY_HIGH, a->bank);
+    return nullptr;
+}
+
+void test_coeff_bank_cache_concurrent_requests()
+{
+    const int kNumThreads = 8;
+    PolyphaseResamplerCoeffBankCache cache;
+    concurrent_obtain_args_t args[kNumThreads];
+    pthread_t threads[kNumThreads];
+
+    // the even threads request the same bank, the odd ones request another one
+    for (int i = 0; i < kNumThreads; ++i) {
+        args[i].cache = &cache;
+        args[i].in_sampling_rate = (i & 1) ? 22050 : 44100;
+        args[i].result = OSLMP_RESULT_ERROR;
+        OSLMP_EXPECT(::pthread_create(&threads[i], nullptr, concurrent_obtain_thread, &args[i]) == 0);
+    }
+
+    for (int i = 0; i < kNumThreads; ++i) {
+        ::pthread_join(threads[i], nullptr);
+    }
+
+    // each bank is designed only once
+    for (int i = 0; i < kNumThreads; ++i) {
+        OSLMP_EXPECT(args[i].result == OSLMP_RESULT_SUCCESS);
+        OSLMP_EXPECT(args[i].bank.get() == args[i & 1].bank.get());
+    }
+
+    OSLMP_EXPECT(args[0].bank.get() != args[1].bank.get());
+    OSLMP_EXPECT(cache.getNumBanks() == 2);
+}
+
+void test_dc_and_output_length()
+{
+    const uint32_t rates[][2] = { { 44100, 48000 }, { 48000, 44100 }, { 22050, 48000 }, { 96000, 48000 } };
+    const uint32_t num_in_frames = 10000;
+
+    for (const auto &rate : rates) {
+        android::sp<CoeffBank> bank = design_bank(rate[0], rate[1], CoeffBank::QUALITY_MIDDLE);
+        PolyphaseResampler resampler;
+
+        if (!OSLMP_EXPECT(bank.get() != nullptr))
+            continue;
+
+        OSLMP_EXPECT(resampler.init(bank) == OSLMP_RESULT_SUCCESS);
+
+        std::vector<float> input(2 * num_in_frames);
+        for (uint32_t i = 0; i < num_in_frames; ++i) {
+            input[2 * i + 0] = 0.5f;
+            input[2 * i + 1] = -0.25f;
+        }
+
+        const std::vector<float> output = resample(resampler, input, std::vector<int>(1, 256), true);
+        const uint32_t num_out_frames = static_cast<uint32_t>(output.size() / 2);
+
+        OSLMP_EXPECT(num_out_frames == expected_num_out_frames(num_in_frames, *bank));
+
+        // skip the transient at the both ends
+        const uint32_t margin = 2 * bank->getNumTaps() * rate[1] / rate[0] + 1;
+        float max_error = 0.0f;
+
+        for (uint32_t i = margin; i + margin < num_out_frames; ++i) {
+            max_error = (std::max)(max_error, std::fabs(output[2 * i + 0] - 0.5f));
+            max_error = (std::max)(max_error, std::fabs(output[2 * i + 1] + 0.25f));
+        }
+
+        OSLMP_EXPECT_NEAR(0.0, max_error, 1.0e-4);
+    }
+}
+
+void test_sine_without_delay()
+{
+    const uint32_t in_rate = 44100;
+    const uint32_t out_rate = 48000;
+    const uint32_t num_in_frames = 8820;
+    const double freq_hz = 1000.0;
+
+    android::sp<CoeffBank> bank = design_bank(in_rate, out_rate, CoeffBank::QUALITY_HIGH);
+    PolyphaseResampler resampler;
+
+    if (!OSLMP_EXPECT(bank.get() != nullptr))
+        return;
+
+    OSLMP_EXPECT(resampler.init(bank) == OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> input = make_sine(num_in_frames, freq_hz, in_rate, 0.5);
+    const std::vector<float> output = resample(resampler, input, std::vector<int>(1, 480), true);
+    const uint32_t num_out_frames = static_cast<uint32_t>(output.size() / 2);
+
+    // the output has to be aligned to the input (no group delay)
+    const std::vector<float> expected = make_sine(num_out_frames, freq_hz, out_rate, 0.5);
+    const uint32_t margin = 2 * bank->getNumTaps() * out_rate / in_rate + 1;
+    float max_error = 0.0f;
+
+    for (uint32_t i = margin; i + margin < num_out_frames; ++i) {
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 0] - expected[2 * i + 0]));
+        max_error = (std::max)(max_error, std::fabs(output[2 * i + 1] - expected[2 * i + 1]));
+    }
+
+    OSLMP_EXPECT_NEAR(0.0, max_error, 1.0e-3);
+}
+
+void test_chunk_size_independence()
+{
+    android::sp<CoeffBank> bank = design_bank(44100, 48000, CoeffBank::QUALITY_MIDDLE);
+
+    if (!OSLMP_EXPECT(bank.get() != nullptr))
+        return;
+
+    const std::vector<float> input = make_sine(5000, 440.0, 44100, 0.5);
+
+    std::vector<int> irregular_chunks;
+    irregular_chunks.push_back(1);
+    irregular_chunks.push_back(7);
+    irregular_chunks.push_back(333);
+    irregular_chunks.push_back(2048);
+
+    PolyphaseResampler resampler1;
+    PolyphaseResampler resampler2;
+
+    OSLMP_EXPECT(resampler1.init(bank) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(resampler2.init(bank) == OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> output1 = resample(resampler1, input, std::vector<int>(1, 512), true);
+    const std::vector<float> output2 = resample(resampler2, input, irregular_chunks, true);
+
+    OSLMP_EXPECT(output1.size() == output2.size());
+    OSLMP_EXPECT(output1 == output2);
+}
+
+void test_reset()
+{
+    android::sp<CoeffBank> bank = design_bank(48000, 44100, CoeffBank::QUALITY_LOW);
+
+    if (!OSLMP_EXPECT(bank.get() != nullptr))
+        return;
+
+    const std::vector<float> input1 = make_sine(3000, 440.0, 48000, 0.5);
+    const std::vector<float> input2 = make_sine(3000, 880.0, 48000, 0.25);
+
+    PolyphaseResampler fresh;
+    PolyphaseResampler reused;
+
+    OSLMP_EXPECT(fresh.init(bank) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(reused.init(bank) == OSLMP_RESULT_SUCCESS);
+
+    // the history and the pooled data have to be discarded by reset()
+    (void)resample(reused, input1, std::vector<int>(1, 256), false);
+    reused.reset();
+
+    const std::vector<float> expected = resample(fresh, input2, std::vector<int>(1, 256), true);
+    const std::vector<float> actual = resample(reused, input2, std::vector<int>(1, 256), true);
+
+    OSLMP_EXPECT(expected == actual);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_supported_ratio);
+    OSLMP_RUN_TEST(test_design);
+    OSLMP_RUN_TEST(test_phase_dc_gain);
+    OSLMP_RUN_TEST(test_coeff_bank_cache);
+    OSLMP_RUN_TEST(test_coeff_bank_cache_eviction);
+    OSLMP_RUN_TEST(test_coeff_bank_cache_concurrent_requests);
+    OSLMP_RUN_TEST(test_dc_and_output_length);
+    OSLMP_RUN_TEST(test_sine_without_delay);
+    OSLMP_RUN_TEST(test_chunk_size_independence);
+    OSLMP_RUN_TEST(test_reset);
+
+    return oslmp_host_test::result();
+}
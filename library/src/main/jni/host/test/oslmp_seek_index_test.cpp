@@ -0,0 +1,445 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_seek_index_test
+//
+// Correctness tests of the SeekIndex (frame parser, save/load round-trip,
+// rejecting broken index files) and the SeekIndexCache (size limit of the
+// index files, LRU eviction).
+//
+
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <vector>
+
+#include <fcntl.h>
+#include <sys/stat.h>
+#include <sys/time.h>
+#include <unistd.h>
+
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/SeekIndexCache.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+// MPEG 1 Layer III, 128 kbps, 44100 Hz, stereo
+const uint8_t MP3_FRAME_HEADER[4] = { 0xff, 0xfb, 0x90, 0x00 };
+const uint32_t MP3_FRAME_SIZE = 417;
+const uint32_t MP3_SAMPLES_PER_FRAME = 1152;
+const uint32_t MP3_SAMPLING_RATE = 44100;
+
+const uint32_t ADTS_FRAME_SIZE = 200;
+const uint32_t ADTS_SAMPLES_PER_FRAME = 1024;
+
+const uint32_t ID3_TAG_SIZE = 10 + 100;
+
+std::string g_temp_dir;
+
+std::string temp_path(const char *name)
+{
+    std::string path(g_temp_dir);
+    path += '/';
+    path += name;
+    return path;
+}
+
+bool file_exists(const std::string &path)
+{
+    struct stat st;
+    return (::stat(path.c_str(), &st) == 0);
+}
+
+void set_mtime(const std::string &path, time_t t)
+{
+    struct timeval tv[2];
+
+    tv[0].tv_sec = t;
+    tv[0].tv_usec = 0;
+    tv[1] = tv[0];
+
+    OSLMP_EXPECT(::utimes(path.c_str(), tv) == 0);
+}
+
+void append_id3_tag(std::vector<uint8_t> &data)
+{
+    const uint8_t header[10] = { 'I', 'D', '3', 4, 0, 0, 0, 0, 0, 100 };
+
+    data.insert(data.end(), header, header + sizeof(header));
+    data.insert(data.end(), 100, 0);
+}
+
+void append_mp3_frames(std::vector<uint8_t> &data, uint32_t num_frames)
+{
+    for (uint32_t i = 0; i < num_frames; ++i) {
+        data.insert(data.end(), MP3_FRAME_HEADER, MP3_FRAME_HEADER + sizeof(MP3_FRAME_HEADER));
+        data.insert(data.end(), MP3_FRAME_SIZE - sizeof(MP3_FRAME_HEADER), 0);
+    }
+}
+
+void append_adts_frames(std::vector<uint8_t> &data, uint32_t num_frames)
+{
+    // MPEG-4 AAC LC, 44100 Hz, 2 ch, no CRC, 1 raw data block
+    const uint8_t header[7] = {
+        0xff, 0xf1, 0x50, static_cast<uint8_t>(0x80 | ((ADTS_FRAME_SIZE >> 11) & 0x3)),
+        static_cast<uint8_t>((ADTS_FRAME_SIZE >> 3) & 0xff), static_cast<uint8_t>(((ADTS_FRAME_SIZE & 0x7) << 5) | 0x1f),
+        0xfc,
+    };
+
+    for (uint32_t i = 0; i < num_frames; ++i) {
+        data.insert(data.end(), header, header + sizeof(header));
+        data.insert(data.end(), ADTS_FRAME_SIZE - sizeof(header), 0);
+    }
+}
+
+void write_file(const std::string &path, const std::vector<uint8_t> &data)
+{
+    FILE *fp = ::fopen(path.c_str(), "wb");
+
+    OSLMP_EXPECT(fp != nullptr);
+    if (!fp)
+        return;
+
+    OSLMP_EXPECT(::fwrite(&data[0], 1, data.size(), fp) == data.size());
+    ::fclose(fp);
+}
+
+bool build_index(const std::string &path, SeekIndex &index)
+{
+    const int fd = ::open(path.c_str(), O_RDONLY);
+
+    if (fd < 0)
+        return false;
+
+    struct stat st;
+    ::fstat(fd, &st);
+
+    const bool result = index.build(fd, 0, st.st_size, nullptr);
+
+    ::close(fd);
+
+    return result;
+}
+
+std::string make_mp3_file(const char *name, uint32_t num_frames)
+{
+    std::vector<uint8_t> data;
+    const std::string path = temp_path(name);
+
+    append_id3_tag(data);
+    append_mp3_frames(data, num_frames);
+    write_file(path, data);
+
+    return path;
+}
+
+bool wait_for_index(SeekIndexCache &cache, const std::string &key)
+{
+    android::sp<SeekIndex> index;
+
+    for (int i = 0; i < 500; ++i) {
+        if (cache.lookup(key, index))
+            return true;
+        ::usleep(10 * 1000);
+    }
+
+    return false;
+}
+
+//
+// Test cases
+//
+void test_build_mp3()
+{
+    const uint32_t kNumFrames = 100;
+    const std::string path = make_mp3_file("build.mp3", kNumFrames);
+    SeekIndex index;
+    SeekIndex::seek_point_t point;
+
+    OSLMP_EXPECT(build_index(path, index));
+    OSLMP_EXPECT(index.isValid());
+    OSLMP_EXPECT(index.getDurationInMsec() ==
+                 static_cast<uint32_t>(static_cast<uint64_t>(kNumFrames) * MP3_SAMPLES_PER_FRAME * 1000 /
+                                       MP3_SAMPLING_RATE));
+
+    // the first frame (just after the ID3 tag)
+    OSLMP_EXPECT(index.findSeekPoint(0, point));
+    OSLMP_EXPECT(point.offset == ID3_TAG_SIZE);
+    OSLMP_EXPECT(point.length == static_cast<int64_t>(kNumFrames * MP3_FRAME_SIZE));
+    OSLMP_EXPECT(point.skip_usec == 0);
+
+    // frame 50, decoding starts 4 frames earlier (bit reservoir)
+    const int32_t msec = static_cast<int32_t>(50ULL * MP3_SAMPLES_PER_FRAME * 1000 / MP3_SAMPLING_RATE) + 1;
+
+    OSLMP_EXPECT(index.findSeekPoint(msec, point));
+    OSLMP_EXPECT(point.offset == (ID3_TAG_SIZE + 46 * MP3_FRAME_SIZE));
+    OSLMP_EXPECT(point.skip_usec >= (4ULL * MP3_SAMPLES_PER_FRAME * 1000000 / MP3_SAMPLING_RATE));
+
+    // beyond the end (clamped to the last frame)
+    OSLMP_EXPECT(index.findSeekPoint(1000000, point));
+    OSLMP_EXPECT(point.offset == (ID3_TAG_SIZE + (kNumFrames - 1 - 4) * MP3_FRAME_SIZE));
+
+    OSLMP_EXPECT(!index.findSeekPoint(-1, point));
+}
+
+void test_build_adts()
+{
+    const uint32_t kNumFrames = 80;
+    const std::string path = temp_path("build.aac");
+    std::vector<uint8_t> data;
+    SeekIndex index;
+    SeekIndex::seek_point_t point;
+
+    append_adts_frames(data, kNumFrames);
+    write_file(path, data);
+
+    OSLMP_EXPECT(build_index(path, index));
+    OSLMP_EXPECT(index.getDurationInMsec() == (kNumFrames * ADTS_SAMPLES_PER_FRAME * 1000 / 44100));
+
+    OSLMP_EXPECT(index.findSeekPoint(static_cast<int32_t>(10ULL * ADTS_SAMPLES_PER_FRAME * 1000 / 44100) + 1, point));
+    OSLMP_EXPECT(point.offset == (9 * ADTS_FRAME_SIZE));
+}
+
+void test_build_unsupported()
+{
+    const std::string path = temp_path("noise.bin");
+    std::vector<uint8_t> data;
+    SeekIndex index;
+
+    for (int i = 0; i < 10000; ++i) {
+        data.push_back(static_cast<uint8_t>((i * 7) & 0x7f));
+    }
+    write_file(path, data);
+
+    OSLMP_EXPECT(!build_index(path, index));
+    OSLMP_EXPECT(!index.isValid());
+}
+
+void test_save_load_round_trip()
+{
+    const std::string path = make_mp3_file("round_trip.mp3", 300);
+    const std::string index_path = temp_path("round_trip.idx");
+    SeekIndex built;
+    SeekIndex loaded;
+
+    OSLMP_EXPECT(build_index(path, built));
+    OSLMP_EXPECT(built.save(index_path.c_str()));
+    OSLMP_EXPECT(!file_exists(index_path + ".tmp"));
+
+    OSLMP_EXPECT(loaded.load(index_path.c_str()));
+    OSLMP_EXPECT(loaded.isValid());
+    OSLMP_EXPECT(loaded.getDurationInMsec() == built.getDurationInMsec());
+
+    for (int32_t msec = 0; msec < static_cast<int32_t>(built.getDurationInMsec()); msec += 97) {
+        SeekIndex::seek_point_t p1;
+        SeekIndex::seek_point_t p2;
+
+        OSLMP_EXPECT(built.findSeekPoint(msec, p1));
+        OSLMP_EXPECT(loaded.findSeekPoint(msec, p2));
+        OSLMP_EXPECT(p1.offset == p2.offset);
+        OSLMP_EXPECT(p1.length == p2.length);
+        OSLMP_EXPECT(p1.skip_usec == p2.skip_usec);
+    }
+}
+
+void test_load_broken_file()
+{
+    const std::string path = make_mp3_file("broken.mp3", 50);
+    const std::string index_path = temp_path("broken.idx");
+    SeekIndex built;
+    SeekIndex loaded;
+
+    OSLMP_EXPECT(build_index(path, built));
+    OSLMP_EXPECT(built.save(index_path.c_str()));
+
+    // truncated
+    OSLMP_EXPECT(::truncate(index_path.c_str(), 60) == 0);
+    OSLMP_EXPECT(!loaded.load(index_path.c_str()));
+    OSLMP_EXPECT(!loaded.isValid());
+
+    // bad magic
+    std::vector<uint8_t> data(256, 0);
+    write_file(index_path, data);
+    OSLMP_EXPECT(!loaded.load(index_path.c_str()));
+
+    // not exists
+    OSLMP_EXPECT(!loaded.load(temp_path("not_exists.idx").c_str()));
+}
+
+void test_cache_evicts_on_save()
+{
+    const std::string dir = temp_path("cache_save");
+    SeekIndexCache cache;
+    SeekIndexCache::initialize_args_t args;
+    std::string paths[3];
+    std::string keys[3] = { "1:a", "1:b", "1:c" };
+
+    paths[0] = make_mp3_file("evict_a.mp3", 100);
+    paths[1] = make_mp3_file("evict_b.mp3", 100);
+    paths[2] = make_mp3_file("evict_c.mp3", 100);
+
+    // an index file of 100 frames is a little larger than 200 bytes, so only 2 files fit
+    args.directory = dir.c_str();
+    args.max_storage_size = 600;
+
+    OSLMP_EXPECT(cache.initialize(args) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(cache.isEnabled());
+
+    for (int i = 0; i < 3; ++i) {
+        OSLMP_EXPECT(cache.requestIndexing(keys[i], paths[i].c_str(), -1, 0, -1) == OSLMP_RESULT_SUCCESS);
+        OSLMP_EXPECT(wait_for_index(cache, keys[i]));
+    }
+
+    OSLMP_EXPECT(cache.getStorageSizeInBytes() <= args.max_storage_size);
+    OSLMP_EXPECT(!file_exists(dir + "/1_a.idx"));
+    OSLMP_EXPECT(file_exists(dir + "/1_b.idx"));
+    OSLMP_EXPECT(file_exists(dir + "/1_c.idx"));
+}
+
+void test_cache_evicts_on_initialize()
+{
+    const std::string dir = temp_path("cache_init");
+    const time_t now = ::time(nullptr);
+    std::string keys[3] = { "2:a", "2:b", "2:c" };
+
+    {
+        SeekIndexCache cache;
+        SeekIndexCache::initialize_args_t args;
+
+        args.directory = dir.c_str();
+
+        OSLMP_EXPECT(cache.initialize(args) == OSLMP_RESULT_SUCCESS);
+
+        for (int i = 0; i < 3; ++i) {
+            const std::string path = make_mp3_file("init.mp3", 100);
+
+            OSLMP_EXPECT(cache.requestIndexing(keys[i], path.c_str(), -1, 0, -1) == OSLMP_RESULT_SUCCESS);
+            OSLMP_EXPECT(wait_for_index(cache, keys[i]));
+        }
+    }
+
+    // "2:b" is the least recently used one
+    set_mtime(dir + "/2_a.idx", now - 100);
+    set_mtime(dir + "/2_b.idx", now - 300);
+    set_mtime(dir + "/2_c.idx", now - 200);
+
+    // left by an interrupted save()
+    write_file(dir + "/2_d.idx.tmp", std::vector<uint8_t>(16, 0));
+
+    {
+        SeekIndexCache cache;
+        SeekIndexCache::initialize_args_t args;
+
+        args.directory = dir.c_str();
+        args.max_storage_size = 600;
+
+        OSLMP_EXPECT(cache.initialize(args) == OSLMP_RESULT_SUCCESS);
+        OSLMP_EXPECT(cache.getStorageSizeInBytes() <= args.max_storage_size);
+    }
+
+    OSLMP_EXPECT(file_exists(dir + "/2_a.idx"));
+    OSLMP_EXPECT(!file_exists(dir + "/2_b.idx"));
+    OSLMP_EXPECT(file_exists(dir + "/2_c.idx"));
+    OSLMP_EXPECT(!file_exists(dir + "/2_d.idx.tmp"));
+}
+
+void test_cache_lookup_updates_lru_order()
+{
+    const std::string dir = temp_path("cache_lru");
+    const time_t now = ::time(nullptr);
+    std::string keys[2] = { "3:a", "3:b" };
+
+    {
+        SeekIndexCache cache;
+        SeekIndexCache::initialize_args_t args;
+
+        args.directory = dir.c_str();
+
+        OSLMP_EXPECT(cache.initialize(args) == OSLMP_RESULT_SUCCESS);
+
+        for (int i = 0; i < 2; ++i) {
+            const std::string path = make_mp3_file("lru.mp3", 100);
+
+            OSLMP_EXPECT(cache.requestIndexing(keys[i], path.c_str(), -1, 0, -1) == OSLMP_RESULT_SUCCESS);
+            OSLMP_EXPECT(wait_for_index(cache, keys[i]));
+        }
+    }
+
+    set_mtime(dir + "/3_a.idx", now - 300);
+    set_mtime(dir + "/3_b.idx", now - 200);
+
+    {
+        SeekIndexCache cache;
+        SeekIndexCache::initialize_args_t args;
+        android::sp<SeekIndex> index;
+
+        args.directory = dir.c_str();
+        args.max_storage_size = 600;
+
+        OSLMP_EXPECT(cache.initialize(args) == OSLMP_RESULT_SUCCESS);
+
+        // loaded from the storage, "3:a" becomes the most recently used one
+        OSLMP_EXPECT(cache.lookup(keys[0], index));
+
+        // "3:b" is evicted
+        const std::string path = make_mp3_file("lru_c.mp3", 100);
+
+        OSLMP_EXPECT(cache.requestIndexing("3:c", path.c_str(), -1, 0, -1) == OSLMP_RESULT_SUCCESS);
+        OSLMP_EXPECT(wait_for_index(cache, "3:c"));
+    }
+
+    OSLMP_EXPECT(file_exists(dir + "/3_a.idx"));
+    OSLMP_EXPECT(!file_exists(dir + "/3_b.idx"));
+    OSLMP_EXPECT(file_exists(dir + "/3_c.idx"));
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    char dir_template[] = "/tmp/oslmp_seek_index_test_XXXXXX";
+
+    if (!::mkdtemp(dir_template)) {
+        ::fprintf(stderr, "Failed to create the temporary directory\n");
+        return 1;
+    }
+
+    g_temp_dir = dir_template;
+
+    OSLMP_RUN_TEST(test_build_mp3);
+    OSLMP_RUN_TEST(test_build_adts);
+    OSLMP_RUN_TEST(test_build_unsupported);
+    OSLMP_RUN_TEST(test_save_load_round_trip);
+    OSLMP_RUN_TEST(test_load_broken_file);
+    OSLMP_RUN_TEST(test_cache_evicts_on_save);
+    OSLMP_RUN_TEST(test_cache_evicts_on_initialize);
+    OSLMP_RUN_TEST(test_cache_lookup_updates_lru_order);
+
+    const std::string command = "rm -rf " + g_temp_dir;
+    (void)::system(command.c_str());
+
+    return oslmp_host_test::result();
+}
@@ -0,0 +1,243 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_sink_pipe_test
+//
+// Correctness tests of the adaptive buffering policy of the
+// AudioSinkDataPipe (policy validation, growing on underruns and shrinking
+// while the stream is stable).
+//
+
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioSinkDataPipe.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+typedef AudioSinkDataPipe Pipe;
+typedef Pipe::adaptive_buffering_policy_t Policy;
+
+const uint32_t NUM_BUFFER_ITEMS = 8;
+const uint32_t NUM_CHANNELS = 2;
+const uint32_t NUM_FRAMES = 64;
+
+int init_pipe(Pipe &pipe)
+{
+    Pipe::initialize_args_t args;
+
+    args.sample_format = kAudioSampleFormatType_F32;
+    args.num_buffer_items = NUM_BUFFER_ITEMS;
+    args.num_channels = NUM_CHANNELS;
+    args.num_frames = NUM_FRAMES;
+    args.deferred_buffer_alloc = false;
+
+    return pipe.initialize(args);
+}
+
+Policy make_policy(uint32_t min_items, uint32_t max_items, uint32_t shrink_interval_blocks)
+{
+    Policy policy;
+
+    policy.enabled = true;
+    policy.min_write_ahead_items = min_items;
+    policy.max_write_ahead_items = max_items;
+    policy.shrink_interval_blocks = shrink_interval_blocks;
+
+    return policy;
+}
+
+// returns the number of blocks written
+uint32_t write_blocks(Pipe &pipe, uint32_t max_count)
+{
+    uint32_t n = 0;
+
+    while (n < max_count) {
+        Pipe::write_block_t block;
+
+        if (!pipe.lockWrite(block))
+            break;
+
+        pipe.unlockWrite(block);
+        ++n;
+    }
+
+    return n;
+}
+
+// returns the number of blocks read
+uint32_t read_blocks(Pipe &pipe, uint32_t max_count)
+{
+    uint32_t n = 0;
+
+    while (n < max_count) {
+        Pipe::read_block_t block;
+
+        if (!pipe.lockRead(block))
+            break;
+
+        pipe.unlockRead(block);
+        ++n;
+    }
+
+    return n;
+}
+
+//
+// Test cases
+//
+void test_policy_arguments()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(2, 4, 10)) == OSLMP_RESULT_ILLEGAL_STATE);
+
+    OSLMP_EXPECT(init_pipe(pipe) == OSLMP_RESULT_SUCCESS);
+
+    // min. < 2 (the sink waits for 2 blocks after an underrun)
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(1, 4, 10)) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    // min. > max.
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(4, 3, 10)) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    // max. > number of buffer items
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(2, NUM_BUFFER_ITEMS + 1, 10)) ==
+                 OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    // no shrink interval
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(2, 4, 0)) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(2, NUM_BUFFER_ITEMS, 10)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 2);
+
+    // disabled
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(Policy()) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == NUM_BUFFER_ITEMS);
+}
+
+void test_write_ahead_limit()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(3, 6, 100)) == OSLMP_RESULT_SUCCESS);
+
+    // the mixer can write only up to the limit
+    OSLMP_EXPECT(write_blocks(pipe, NUM_BUFFER_ITEMS) == 3);
+    OSLMP_EXPECT(pipe.getNumberOfReadableItems() == 3);
+
+    // a block can be written after the sink read one
+    OSLMP_EXPECT(read_blocks(pipe, 1) == 1);
+    OSLMP_EXPECT(write_blocks(pipe, NUM_BUFFER_ITEMS) == 1);
+    OSLMP_EXPECT(pipe.getNumberOfReadableItems() == 3);
+}
+
+void test_grow_on_underrun()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(2, 4, 100)) == OSLMP_RESULT_SUCCESS);
+
+    pipe.notifyUnderrun();
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 3);
+    OSLMP_EXPECT(write_blocks(pipe, NUM_BUFFER_ITEMS) == 3);
+
+    // never exceeds the max.
+    pipe.notifyUnderrun();
+    pipe.notifyUnderrun();
+    pipe.notifyUnderrun();
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 4);
+    OSLMP_EXPECT(write_blocks(pipe, NUM_BUFFER_ITEMS) == 1);
+}
+
+void test_shrink_while_stable()
+{
+    const uint32_t kShrinkInterval = 5;
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(2, 5, kShrinkInterval)) == OSLMP_RESULT_SUCCESS);
+
+    pipe.notifyUnderrun();
+    pipe.notifyUnderrun();
+    pipe.notifyUnderrun();
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 5);
+
+    // lowered by one after every shrink interval without underruns
+    for (uint32_t i = 0; i < kShrinkInterval; ++i) {
+        write_blocks(pipe, 1);
+        OSLMP_EXPECT(read_blocks(pipe, 1) == 1);
+    }
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 4);
+
+    // an underrun restarts the interval
+    for (uint32_t i = 0; i < (kShrinkInterval - 1); ++i) {
+        write_blocks(pipe, 1);
+        read_blocks(pipe, 1);
+    }
+    pipe.notifyUnderrun();
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 5);
+
+    for (uint32_t i = 0; i < (kShrinkInterval - 1); ++i) {
+        write_blocks(pipe, 1);
+        read_blocks(pipe, 1);
+    }
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 5);
+
+    // never below the min.
+    for (uint32_t i = 0; i < (kShrinkInterval * 10); ++i) {
+        write_blocks(pipe, 1);
+        read_blocks(pipe, 1);
+    }
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 2);
+}
+
+void test_reset_keeps_limit()
+{
+    Pipe pipe;
+
+    OSLMP_EXPECT(init_pipe(pipe) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pipe.setAdaptiveBufferingPolicy(make_policy(2, 6, 100)) == OSLMP_RESULT_SUCCESS);
+
+    pipe.notifyUnderrun();
+    pipe.notifyUnderrun();
+    write_blocks(pipe, NUM_BUFFER_ITEMS);
+
+    OSLMP_EXPECT(pipe.reset() == OSLMP_RESULT_SUCCESS);
+
+    // the limit reflects the device characteristics
+    OSLMP_EXPECT(pipe.getWriteAheadLimit() == 4);
+    OSLMP_EXPECT(pipe.getNumberOfReadableItems() == 0);
+    OSLMP_EXPECT(write_blocks(pipe, NUM_BUFFER_ITEMS) == 4);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_policy_arguments);
+    OSLMP_RUN_TEST(test_write_ahead_limit);
+    OSLMP_RUN_TEST(test_grow_on_underrun);
+    OSLMP_RUN_TEST(test_shrink_while_stable);
+    OSLMP_RUN_TEST(test_reset_keeps_limit);
+
+    return oslmp_host_test::result();
+}
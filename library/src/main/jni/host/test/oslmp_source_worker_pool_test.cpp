@@ -0,0 +1,381 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_source_worker_pool_test
+//
+// Correctness tests of the AudioSourceWorkerPool (earliest deadline first
+// order, cancellation, re-scheduling while the task is running).
+//
+// NOTE: The pool is initialized with a single worker thread and the first
+// task blocks the worker until it is released, so the order of the queued
+// tasks does not depend on the timing.
+//
+
+#include <vector>
+
+#include <pthread.h>
+#include <time.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioSourceWorkerPool.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+#include "oslmp/utils/timespec_utils.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+typedef utils::timespec_utils ts_utils;
+
+enum { WAIT_TIMEOUT_MS = 5000, };
+
+// records the processed tasks
+class TaskLog {
+public:
+    TaskLog() : mutex_(), cv_(), log_(), gate_closed_(true), gate_entered_(false) {}
+
+    void record(int id) noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+        log_.push_back(id);
+        cv_.notify_all();
+    }
+
+    void enterGate() noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+        gate_entered_ = true;
+        cv_.notify_all();
+
+        while (gate_closed_) {
+            cv_.wait(lock);
+        }
+    }
+
+    void openGate() noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+        gate_closed_ = false;
+        cv_.notify_all();
+    }
+
+    bool waitForGateEntered() noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+
+        while (!gate_entered_) {
+            if (cv_.wait_relative_ms(lock, WAIT_TIMEOUT_MS) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    bool waitForCount(size_t count) noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+
+        while (log_.size() < count) {
+            if (cv_.wait_relative_ms(lock, WAIT_TIMEOUT_MS) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    std::vector<int> get() const noexcept
+    {
+        utils::pt_unique_lock lock(mutex_);
+        return log_;
+    }
+
+private:
+    mutable utils::pt_mutex mutex_;
+    utils::pt_condition_variable cv_;
+    std::vector<int> log_;
+    bool gate_closed_;
+    bool gate_entered_;
+};
+
+class TestTask : public AudioSourceWorkerPool::Task {
+public:
+    TestTask(TaskLog &log, int id, bool gated) : log_(log), id_(id), gated_(gated), num_runs_(0) {}
+
+    virtual void onProcessWorkerTask() noexcept override
+    {
+        const int n = num_runs_.fetch_add(1) + 1;
+
+        log_.record(id_);
+
+        // only the first run is blocked
+        if (gated_ && n == 1) {
+            log_.enterGate();
+        }
+    }
+
+    int getNumRuns() const noexcept { return num_runs_.load(); }
+
+private:
+    TaskLog &log_;
+    const int id_;
+    const bool gated_;
+    std::atomic<int> num_runs_;
+};
+
+timespec make_deadline(uint32_t offset_ms)
+{
+    timespec now;
+
+    if (!ts_utils::get_current_time(now)) {
+        ts_utils::set_zero(now);
+    }
+
+    return ts_utils::add_ms(now, offset_ms);
+}
+
+bool init_pool(AudioSourceWorkerPool &pool)
+{
+    AudioSourceWorkerPool::initialize_args_t args;
+
+    args.num_threads = 1;
+
+    return pool.initialize(args) == OSLMP_RESULT_SUCCESS;
+}
+
+void sleep_ms(uint32_t ms)
+{
+    timespec t;
+
+    t.tv_sec = ms / 1000;
+    t.tv_nsec = (ms % 1000) * 1000000L;
+
+    (void)::nanosleep(&t, nullptr);
+}
+
+struct cancel_thread_args_t {
+    AudioSourceWorkerPool *pool;
+    AudioSourceWorkerPool::Task *task;
+    std::atomic<bool> returned;
+};
+
+void *cancel_thread(void *args)
+{
+    cancel_thread_args_t *a = static_cast<cancel_thread_args_t *>(args);
+
+    a->pool->cancel(a->task);
+    a->returned.store(true);
+
+    return nullptr;
+}
+
+void test_not_initialized()
+{
+    AudioSourceWorkerPool pool;
+    TaskLog log;
+    TestTask task(log, 0, false);
+
+    OSLMP_EXPECT(!pool.isEnabled());
+    OSLMP_EXPECT(pool.schedule(&task, make_deadline(0)) == OSLMP_RESULT_ILLEGAL_STATE);
+    OSLMP_EXPECT(pool.schedule(nullptr, make_deadline(0)) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+
+    // disabled
+    AudioSourceWorkerPool::initialize_args_t args;
+    args.num_threads = 0;
+
+    OSLMP_EXPECT(pool.initialize(args) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(!pool.isEnabled());
+    OSLMP_EXPECT(pool.getNumThreads() == 0);
+}
+
+void test_earliest_deadline_first()
+{
+    AudioSourceWorkerPool pool;
+    TaskLog log;
+    TestTask blocker(log, 0, true);
+    TestTask a(log, 1, false);
+    TestTask b(log, 2, false);
+    TestTask c(log, 3, false);
+    TestTask d(log, 4, false);
+
+    if (!OSLMP_EXPECT(init_pool(pool)))
+        return;
+
+    OSLMP_EXPECT(pool.schedule(&blocker, make_deadline(0)) == OSLMP_RESULT_SUCCESS);
+
+    if (!OSLMP_EXPECT(log.waitForGateEntered())) {
+        log.openGate();
+        return;
+    }
+
+    // queued while the worker is busy
+    const timespec base = make_deadline(0);
+
+    OSLMP_EXPECT(pool.schedule(&a, ts_utils::add_ms(base, 30)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pool.schedule(&b, ts_utils::add_ms(base, 10)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pool.schedule(&c, ts_utils::add_ms(base, 20)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pool.schedule(&d, ts_utils::add_ms(base, 40)) == OSLMP_RESULT_SUCCESS);
+
+    // re-scheduling a queued task keeps the earlier deadline, and the task is processed only once
+    OSLMP_EXPECT(pool.schedule(&d, ts_utils::add_ms(base, 5)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pool.schedule(&a, ts_utils::add_ms(base, 50)) == OSLMP_RESULT_SUCCESS);
+
+    log.openGate();
+
+    OSLMP_EXPECT(log.waitForCount(5));
+
+    // give the worker a chance to process a duplicated one
+    sleep_ms(20);
+
+    const int expected[] = { 0, 4, 2, 3, 1 };
+    const std::vector<int> actual = log.get();
+
+    OSLMP_EXPECT(actual == std::vector<int>(expected, expected + 5));
+}
+
+void test_cancel_queued_task()
+{
+    AudioSourceWorkerPool pool;
+    TaskLog log;
+    TestTask blocker(log, 0, true);
+    TestTask a(log, 1, false);
+    TestTask b(log, 2, false);
+
+    if (!OSLMP_EXPECT(init_pool(pool)))
+        return;
+
+    OSLMP_EXPECT(pool.schedule(&blocker, make_deadline(0)) == OSLMP_RESULT_SUCCESS);
+
+    if (!OSLMP_EXPECT(log.waitForGateEntered())) {
+        log.openGate();
+        return;
+    }
+
+    OSLMP_EXPECT(pool.schedule(&a, make_deadline(10)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pool.schedule(&b, make_deadline(20)) == OSLMP_RESULT_SUCCESS);
+
+    // the queued task is removed without waiting
+    pool.cancel(&a);
+
+    // cancelling a task which is not scheduled is no-op
+    pool.cancel(&a);
+
+    log.openGate();
+
+    OSLMP_EXPECT(log.waitForCount(2));
+    sleep_ms(20);
+
+    const int expected[] = { 0, 2 };
+    const std::vector<int> actual = log.get();
+
+    OSLMP_EXPECT(actual == std::vector<int>(expected, expected + 2));
+    OSLMP_EXPECT(a.getNumRuns() == 0);
+}
+
+void test_cancel_waits_for_running_task()
+{
+    AudioSourceWorkerPool pool;
+    TaskLog log;
+    TestTask blocker(log, 0, true);
+    cancel_thread_args_t args;
+    pthread_t thread;
+
+    if (!OSLMP_EXPECT(init_pool(pool)))
+        return;
+
+    OSLMP_EXPECT(pool.schedule(&blocker, make_deadline(0)) == OSLMP_RESULT_SUCCESS);
+
+    if (!OSLMP_EXPECT(log.waitForGateEntered())) {
+        log.openGate();
+        return;
+    }
+
+    // re-scheduled while running, but the cancellation discards it
+    OSLMP_EXPECT(pool.schedule(&blocker, make_deadline(0)) == OSLMP_RESULT_SUCCESS);
+
+    args.pool = &pool;
+    args.task = &blocker;
+    args.returned.store(false);
+
+    if (!OSLMP_EXPECT(::pthread_create(&thread, nullptr, cancel_thread, &args) == 0)) {
+        log.openGate();
+        return;
+    }
+
+    // NOTE: a false negative is possible on a heavily loaded machine, but never a false positive
+    sleep_ms(50);
+    OSLMP_EXPECT(!args.returned.load());
+
+    log.openGate();
+    ::pthread_join(thread, nullptr);
+
+    OSLMP_EXPECT(args.returned.load());
+
+    sleep_ms(20);
+    OSLMP_EXPECT(blocker.getNumRuns() == 1);
+}
+
+void test_requeue_while_running()
+{
+    AudioSourceWorkerPool pool;
+    TaskLog log;
+    TestTask blocker(log, 0, true);
+    TestTask a(log, 1, false);
+
+    if (!OSLMP_EXPECT(init_pool(pool)))
+        return;
+
+    OSLMP_EXPECT(pool.schedule(&blocker, make_deadline(0)) == OSLMP_RESULT_SUCCESS);
+
+    if (!OSLMP_EXPECT(log.waitForGateEntered())) {
+        log.openGate();
+        return;
+    }
+
+    // scheduled several times while running, processed once more with the earliest deadline
+    OSLMP_EXPECT(pool.schedule(&blocker, make_deadline(100)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pool.schedule(&blocker, make_deadline(1000)) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(pool.schedule(&a, make_deadline(500)) == OSLMP_RESULT_SUCCESS);
+
+    log.openGate();
+
+    OSLMP_EXPECT(log.waitForCount(3));
+    sleep_ms(20);
+
+    const int expected[] = { 0, 0, 1 };
+    const std::vector<int> actual = log.get();
+
+    OSLMP_EXPECT(actual == std::vector<int>(expected, expected + 3));
+    OSLMP_EXPECT(blocker.getNumRuns() == 2);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_not_initialized);
+    OSLMP_RUN_TEST(test_earliest_deadline_first);
+    OSLMP_RUN_TEST(test_cancel_queued_task);
+    OSLMP_RUN_TEST(test_cancel_waits_for_running_task);
+    OSLMP_RUN_TEST(test_requeue_while_running);
+
+    return oslmp_host_test::result();
+}
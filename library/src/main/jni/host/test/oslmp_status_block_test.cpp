@@ -0,0 +1,200 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_status_block_test
+//
+// Correctness tests of the StatusBlockSeqLock (a snapshot is never torn
+// while the writer is updating the block concurrently).
+//
+
+#include <cstring>
+
+#include <pthread.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include "oslmp/impl/StatusBlockSeqLock.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+typedef StatusBlockSeqLock::status_block_t status_block_t;
+
+// NOTE: all fields are derived from k, so a torn snapshot can be detected
+status_block_t make_values(int32_t k)
+{
+    status_block_t values;
+
+    values.sequence = 0;
+    values.player_state = k;
+    values.flags = static_cast<uint32_t>(k) * 3U;
+    values.duration = k + 1;
+    values.position = k + 2;
+    values.buffered_position = k + 3;
+    values.sampling_rate = k + 4;
+    values.reserved = k + 5;
+    values.position_frames = static_cast<int64_t>(k) * 1000000007LL;
+    values.timestamp = static_cast<int64_t>(k) * 1000000009LL;
+
+    return values;
+}
+
+bool is_consistent(const status_block_t &s)
+{
+    const status_block_t expected = make_values(s.player_state);
+
+    return (s.flags == expected.flags) && (s.duration == expected.duration) && (s.position == expected.position) &&
+           (s.buffered_position == expected.buffered_position) && (s.sampling_rate == expected.sampling_rate) &&
+           (s.reserved == expected.reserved) && (s.position_frames == expected.position_frames) &&
+           (s.timestamp == expected.timestamp);
+}
+
+struct concurrent_test_context_t {
+    status_block_t block;
+    std::atomic<bool> writer_finished;
+    int32_t num_updates;
+};
+
+void *writer_thread(void *args)
+{
+    concurrent_test_context_t *c = static_cast<concurrent_test_context_t *>(args);
+
+    for (int32_t k = 1; k <= c->num_updates; ++k) {
+        StatusBlockSeqLock::write(&(c->block), make_values(k));
+    }
+
+    c->writer_finished.store(true, std::memory_order_release);
+
+    return nullptr;
+}
+
+//
+// Test cases
+//
+void test_not_written_yet()
+{
+    status_block_t block;
+    status_block_t snapshot;
+
+    ::memset(&block, 0, sizeof(block));
+
+    OSLMP_EXPECT(!StatusBlockSeqLock::read(&block, &snapshot));
+}
+
+void test_write_and_read()
+{
+    status_block_t block;
+    status_block_t snapshot;
+
+    ::memset(&block, 0, sizeof(block));
+
+    StatusBlockSeqLock::write(&block, make_values(10));
+
+    OSLMP_EXPECT(block.sequence == 2);
+    OSLMP_EXPECT(StatusBlockSeqLock::read(&block, &snapshot));
+    OSLMP_EXPECT(snapshot.sequence == 2);
+    OSLMP_EXPECT(snapshot.player_state == 10);
+    OSLMP_EXPECT(is_consistent(snapshot));
+
+    StatusBlockSeqLock::write(&block, make_values(11));
+
+    OSLMP_EXPECT(block.sequence == 4);
+    OSLMP_EXPECT(StatusBlockSeqLock::read(&block, &snapshot));
+    OSLMP_EXPECT(snapshot.player_state == 11);
+    OSLMP_EXPECT(is_consistent(snapshot));
+}
+
+void test_read_while_updating()
+{
+    status_block_t block;
+    status_block_t snapshot;
+
+    ::memset(&block, 0, sizeof(block));
+
+    StatusBlockSeqLock::write(&block, make_values(1));
+
+    // the writer is in the middle of an update
+    block.sequence += 1;
+
+    OSLMP_EXPECT(!StatusBlockSeqLock::read(&block, &snapshot, 4));
+
+    block.sequence += 1;
+
+    OSLMP_EXPECT(StatusBlockSeqLock::read(&block, &snapshot, 4));
+}
+
+void test_concurrent_update()
+{
+    concurrent_test_context_t c;
+
+    ::memset(&(c.block), 0, sizeof(c.block));
+    c.writer_finished.store(false);
+    c.num_updates = 2000000;
+
+    pthread_t writer;
+    OSLMP_EXPECT(::pthread_create(&writer, nullptr, writer_thread, &c) == 0);
+
+    int32_t last_k = 0;
+    int32_t num_torn = 0;
+    int32_t num_backward = 0;
+    int32_t num_success = 0;
+
+    while (!c.writer_finished.load(std::memory_order_acquire)) {
+        status_block_t snapshot;
+
+        if (!StatusBlockSeqLock::read(&(c.block), &snapshot))
+            continue;
+
+        ++num_success;
+
+        if (!is_consistent(snapshot))
+            ++num_torn;
+
+        if (snapshot.player_state < last_k)
+            ++num_backward;
+
+        last_k = snapshot.player_state;
+    }
+
+    ::pthread_join(writer, nullptr);
+
+    status_block_t snapshot;
+
+    OSLMP_EXPECT(StatusBlockSeqLock::read(&(c.block), &snapshot));
+    OSLMP_EXPECT(snapshot.player_state == c.num_updates);
+    OSLMP_EXPECT(snapshot.sequence == static_cast<uint32_t>(2 * c.num_updates));
+
+    OSLMP_EXPECT(num_torn == 0);
+    OSLMP_EXPECT(num_backward == 0);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_not_written_yet);
+    OSLMP_RUN_TEST(test_write_and_read);
+    OSLMP_RUN_TEST(test_read_while_updating);
+    OSLMP_RUN_TEST(test_concurrent_update);
+
+    return oslmp_host_test::result();
+}
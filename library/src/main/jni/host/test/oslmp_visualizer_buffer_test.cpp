@@ -0,0 +1,154 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_visualizer_buffer_test
+//
+// Correctness tests of the HQVisualizerCapturedAudioDataBuffer (the captured
+// time of the returned data is derived from the mixer write time).
+//
+
+#include <vector>
+
+#include <cxxporthelper/cstdint>
+
+#include "oslmp/impl/HQVisualizerCapturedAudioDataBuffer.hpp"
+#include "oslmp/utils/timespec_utils.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+const uint32_t SAMPLING_RATE = 48000000; // [millihertz]
+const uint32_t BUFFER_SIZE = 4096;       // [frames]
+const uint32_t MAX_READ_SIZE = 1024;     // [frames]
+const uint32_t CAPTURE_SIZE = 256;       // [frames]
+const uint32_t READ_RATE = 60000;        // [millihertz]
+
+int64_t to_ns(const timespec &t) { return static_cast<int64_t>(t.tv_sec) * 1000000000LL + t.tv_nsec; }
+
+// NOTE: the left channel holds the absolute frame index
+void put_ramp(HQVisualizerCapturedAudioDataBuffer &buffer, uint32_t &total_frames, uint32_t num_frames,
+              const timespec &write_time)
+{
+    std::vector<float> data(2 * num_frames);
+
+    for (uint32_t i = 0; i < num_frames; ++i) {
+        data[2 * i + 0] = static_cast<float>(total_frames + i);
+        data[2 * i + 1] = 0.0f;
+    }
+
+    OSLMP_EXPECT(buffer.put_captured_data(2, SAMPLING_RATE, &data[0], num_frames, &write_time));
+
+    total_frames += num_frames;
+}
+
+void check_captured_time(HQVisualizerCapturedAudioDataBuffer &buffer, uint32_t total_frames,
+                         const timespec &write_time)
+{
+    uint32_t num_channels = 0;
+    uint32_t sampling_rate = 0;
+    const float *data = nullptr;
+    timespec captured_time = utils::timespec_utils::ZERO();
+
+    OSLMP_EXPECT(
+        buffer.get_captured_data(CAPTURE_SIZE, READ_RATE, &num_channels, &sampling_rate, &data, &captured_time));
+    OSLMP_EXPECT(data != nullptr);
+
+    if (!data)
+        return;
+
+    OSLMP_EXPECT(num_channels == 2);
+    OSLMP_EXPECT(sampling_rate == SAMPLING_RATE);
+
+    // frames written after the last frame of the returned window
+    const uint32_t window_end = static_cast<uint32_t>(data[0]) + CAPTURE_SIZE;
+    OSLMP_EXPECT(window_end <= total_frames);
+
+    const int64_t newer_frames = static_cast<int64_t>(total_frames - window_end);
+    const int64_t expected_ns = to_ns(write_time) - (newer_frames * 1000000000000LL) / SAMPLING_RATE;
+
+    OSLMP_EXPECT(to_ns(captured_time) == expected_ns);
+    OSLMP_EXPECT(to_ns(captured_time) <= to_ns(write_time));
+}
+
+//
+// Test cases
+//
+void test_no_data()
+{
+    HQVisualizerCapturedAudioDataBuffer buffer(BUFFER_SIZE, MAX_READ_SIZE);
+
+    uint32_t num_channels = 0;
+    uint32_t sampling_rate = 0;
+    const float *data = nullptr;
+    timespec captured_time = utils::timespec_utils::ZERO();
+
+    // not written yet
+    OSLMP_EXPECT(
+        !buffer.get_captured_data(CAPTURE_SIZE, READ_RATE, &num_channels, &sampling_rate, &data, &captured_time));
+    OSLMP_EXPECT(utils::timespec_utils::is_zero(captured_time));
+
+    // captured_time is required
+    OSLMP_EXPECT(!buffer.get_captured_data(CAPTURE_SIZE, READ_RATE, &num_channels, &sampling_rate, &data, nullptr));
+}
+
+void test_captured_time()
+{
+    HQVisualizerCapturedAudioDataBuffer buffer(BUFFER_SIZE, MAX_READ_SIZE);
+    uint32_t total_frames = 0;
+    timespec write_time;
+
+    OSLMP_EXPECT(utils::timespec_utils::get_current_time(write_time));
+
+    put_ramp(buffer, total_frames, 2048, write_time);
+    check_captured_time(buffer, total_frames, write_time);
+
+    // the read position advances, the captured time follows the latest write
+    write_time = utils::timespec_utils::add_ms(write_time, 10);
+    put_ramp(buffer, total_frames, 480, write_time);
+    check_captured_time(buffer, total_frames, write_time);
+}
+
+void test_captured_time_wrap_around()
+{
+    HQVisualizerCapturedAudioDataBuffer buffer(BUFFER_SIZE, MAX_READ_SIZE);
+    uint32_t total_frames = 0;
+    timespec write_time;
+
+    OSLMP_EXPECT(utils::timespec_utils::get_current_time(write_time));
+
+    // write over the end of the ring buffer several times
+    for (int i = 0; i < 8; ++i) {
+        put_ramp(buffer, total_frames, 1000, write_time);
+        check_captured_time(buffer, total_frames, write_time);
+        write_time = utils::timespec_utils::add_us(write_time, 20833);
+    }
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_no_data);
+    OSLMP_RUN_TEST(test_captured_time);
+    OSLMP_RUN_TEST(test_captured_time_wrap_around);
+
+    return oslmp_host_test::result();
+}
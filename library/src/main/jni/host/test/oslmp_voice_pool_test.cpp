@@ -0,0 +1,382 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+//
+// oslmp_voice_pool_test
+//
+// Correctness tests of the AudioVoicePool (end of clip, looping, playback
+// rate and voice stealing). The voices are mixed by the MixingUnit in the
+// same way as the mixer thread does.
+//
+
+#include <cmath>
+#include <vector>
+
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioClipCache.hpp"
+#include "oslmp/impl/AudioDataTypes.hpp"
+#include "oslmp/impl/AudioVoicePool.hpp"
+#include "oslmp/impl/MixingUnit.hpp"
+
+#include "oslmp_host_test.hpp"
+
+using namespace oslmp;
+using namespace oslmp::impl;
+
+namespace {
+
+// NOTE: 32 kHz; the short fade takes exactly one block
+const uint32_t SAMPLING_RATE = 32000000; // [millihertz]
+const uint32_t BLOCK_SIZE = 256;         // [frames]
+const uint32_t SHORT_FADE_DURATION_MS = 8;
+const uint32_t LONG_FADE_DURATION_MS = 32;
+
+const float TOLERANCE = 1.0e-5f;
+
+// frame i of the ramp clip has the value (i * RAMP_STEP)
+const float RAMP_STEP = 1.0e-4f;
+
+class VoicePoolMixer {
+public:
+    VoicePoolMixer() : mixer_(), pool_(), last_num_sources_(0) {}
+
+    bool init(uint32_t num_voices)
+    {
+        MixingUnit::initialize_args_t mixer_args;
+
+        mixer_args.sampling_rate = SAMPLING_RATE;
+        mixer_args.block_size_in_frames = BLOCK_SIZE;
+        mixer_args.short_fade_duration_ms = SHORT_FADE_DURATION_MS;
+        mixer_args.long_fade_duration_ms = LONG_FADE_DURATION_MS;
+
+        if (!mixer_.initialize(mixer_args))
+            return false;
+
+        AudioVoicePool::initialize_args_t pool_args;
+
+        pool_args.num_voices = num_voices;
+        pool_args.block_size_in_frames = BLOCK_SIZE;
+
+        return pool_.initialize(pool_args) == OSLMP_RESULT_SUCCESS;
+    }
+
+    AudioVoicePool &pool() noexcept { return pool_; }
+
+    uint32_t getLastNumSources() const noexcept { return last_num_sources_; }
+
+    // renders and mixes a block (interleaved stereo)
+    std::vector<float> render()
+    {
+        MixingUnit::Context *contexts[AudioVoicePool::NUM_MAX_MIX_SOURCES];
+        const MixingUnit::in_data_type *srcs[AudioVoicePool::NUM_MAX_MIX_SOURCES];
+        std::vector<float> dest(2 * BLOCK_SIZE, -1.0f);
+
+        OSLMP_EXPECT(mixer_.begin(&dest[0], kAudioSampleFormatType_F32, nullptr, BLOCK_SIZE, nullptr, 0));
+
+        last_num_sources_ = pool_.mixerThreadRender(contexts, srcs, AudioVoicePool::NUM_MAX_MIX_SOURCES, BLOCK_SIZE);
+
+        if (last_num_sources_ > 0) {
+            OSLMP_EXPECT(mixer_.mix(contexts, srcs, last_num_sources_, BLOCK_SIZE));
+        }
+
+        pool_.mixerThreadCommit();
+
+        OSLMP_EXPECT(mixer_.end());
+
+        return dest;
+    }
+
+private:
+    MixingUnit mixer_;
+    AudioVoicePool pool_;
+    uint32_t last_num_sources_;
+};
+
+android::sp<AudioClip> make_clip(uint32_t num_frames, bool ramp, float value)
+{
+    const uint32_t num_blocks = (num_frames + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    android::sp<AudioClip> clip(new AudioClip());
+    std::vector<float> block(2 * BLOCK_SIZE);
+
+    OSLMP_EXPECT(clip->allocate(2, BLOCK_SIZE, num_blocks) == OSLMP_RESULT_SUCCESS);
+
+    for (uint32_t i = 0; i < num_blocks; ++i) {
+        for (uint32_t j = 0; j < BLOCK_SIZE; ++j) {
+            const float v = (ramp) ? ((i * BLOCK_SIZE + j) * RAMP_STEP) : value;
+            block[2 * j + 0] = v;
+            block[2 * j + 1] = -v;
+        }
+        OSLMP_EXPECT(clip->appendBlock(&block[0]));
+    }
+
+    return clip;
+}
+
+AudioVoicePool::play_args_t make_play_args(const android::sp<AudioClip> &clip, uint32_t num_frames)
+{
+    AudioVoicePool::play_args_t args;
+
+    args.clip = clip;
+    args.num_frames = num_frames;
+
+    return args;
+}
+
+// checks the left channel (the right channel has the inverted value)
+bool check_frames(const std::vector<float> &block, uint32_t offset, uint32_t count, float (*expected)(uint32_t))
+{
+    for (uint32_t i = offset; i < (offset + count); ++i) {
+        const float e = expected(i);
+        if (!(std::fabs(block[2 * i + 0] - e) <= TOLERANCE && std::fabs(block[2 * i + 1] + e) <= TOLERANCE))
+            return false;
+    }
+    return true;
+}
+
+float zero(uint32_t) { return 0.0f; }
+
+//
+// Test cases
+//
+void test_end_of_clip()
+{
+    // longer than a chunk of the AudioClip (the data is not contiguous)
+    const uint32_t kNumFrames = BLOCK_SIZE * AudioClip::NUM_BLOCKS_PER_CHUNK + 44;
+    VoicePoolMixer m;
+    android::sp<AudioClip> clip = make_clip(kNumFrames, true, 0.0f);
+    uint32_t voice_id = 0;
+
+    if (!OSLMP_EXPECT(m.init(2)))
+        return;
+
+    OSLMP_EXPECT(m.pool().play(make_play_args(clip, kNumFrames), &voice_id) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(voice_id != 0);
+    OSLMP_EXPECT(m.pool().isActive());
+
+    bool matched = true;
+
+    for (uint32_t i = 0; i < AudioClip::NUM_BLOCKS_PER_CHUNK; ++i) {
+        const std::vector<float> block = m.render();
+
+        for (uint32_t j = 0; j < BLOCK_SIZE; ++j) {
+            matched &= (std::fabs(block[2 * j] - ((i * BLOCK_SIZE + j) * RAMP_STEP)) <= TOLERANCE);
+        }
+    }
+
+    OSLMP_EXPECT(matched);
+    OSLMP_EXPECT(m.pool().isActive());
+
+    // the last block is padded with silence, then the voice finishes
+    {
+        const std::vector<float> block = m.render();
+        float last = 0.0f;
+
+        for (uint32_t j = 0; j < 44; ++j) {
+            last = block[2 * j];
+        }
+
+        OSLMP_EXPECT_NEAR((kNumFrames - 1) * RAMP_STEP, last, TOLERANCE);
+        OSLMP_EXPECT(check_frames(block, 44, BLOCK_SIZE - 44, zero));
+    }
+
+    OSLMP_EXPECT(!m.pool().isActive());
+    OSLMP_EXPECT(clip->getStrongCount() == 1);
+
+    m.render();
+    OSLMP_EXPECT(m.getLastNumSources() == 0);
+
+    // the voice has already been finished (not an error)
+    OSLMP_EXPECT(m.pool().stop(voice_id) == OSLMP_RESULT_SUCCESS);
+}
+
+float loop_expected(uint32_t i) { return (i < 300) ? ((i % 100) * RAMP_STEP) : 0.0f; }
+
+float loop_expected_2nd(uint32_t i) { return loop_expected(BLOCK_SIZE + i); }
+
+void test_looping()
+{
+    VoicePoolMixer m;
+    android::sp<AudioClip> clip = make_clip(100, true, 0.0f);
+    AudioVoicePool::play_args_t args = make_play_args(clip, 100);
+    uint32_t voice_id = 0;
+
+    if (!OSLMP_EXPECT(m.init(1)))
+        return;
+
+    // played 3 times
+    args.loop = 2;
+
+    OSLMP_EXPECT(m.pool().play(args, &voice_id) == OSLMP_RESULT_SUCCESS);
+
+    OSLMP_EXPECT(check_frames(m.render(), 0, BLOCK_SIZE, loop_expected));
+    OSLMP_EXPECT(check_frames(m.render(), 0, BLOCK_SIZE, loop_expected_2nd));
+    OSLMP_EXPECT(!m.pool().isActive());
+
+    // infinite
+    args.loop = -1;
+
+    OSLMP_EXPECT(m.pool().play(args, &voice_id) == OSLMP_RESULT_SUCCESS);
+
+    for (int i = 0; i < 10; ++i) {
+        m.render();
+    }
+
+    OSLMP_EXPECT(m.pool().isActive());
+
+    // stop looping, the voice finishes at the end of the current iteration
+    OSLMP_EXPECT(m.pool().setLoop(voice_id, 0) == OSLMP_RESULT_SUCCESS);
+
+    m.render();
+    OSLMP_EXPECT(!m.pool().isActive());
+}
+
+float rate_2x_expected(uint32_t i) { return (2 * i) * RAMP_STEP; }
+
+float rate_half_expected(uint32_t i) { return (0.5f * i) * RAMP_STEP; }
+
+float rate_half_expected_2nd(uint32_t i) { return rate_half_expected(BLOCK_SIZE + i); }
+
+void test_rate()
+{
+    const uint32_t kNumFrames = BLOCK_SIZE * 4;
+    VoicePoolMixer m;
+    android::sp<AudioClip> clip = make_clip(kNumFrames, true, 0.0f);
+    AudioVoicePool::play_args_t args = make_play_args(clip, kNumFrames);
+    uint32_t voice_id = 0;
+
+    if (!OSLMP_EXPECT(m.init(1)))
+        return;
+
+    // 2x: every other frame, the clip ends after 2 blocks
+    args.rate = 2.0f;
+
+    OSLMP_EXPECT(m.pool().play(args, &voice_id) == OSLMP_RESULT_SUCCESS);
+
+    OSLMP_EXPECT(check_frames(m.render(), 0, BLOCK_SIZE, rate_2x_expected));
+    m.render();
+    OSLMP_EXPECT(m.pool().isActive());
+    m.render();
+    OSLMP_EXPECT(!m.pool().isActive());
+
+    // 0.5x: linear interpolation (exact for the ramp)
+    args.rate = 0.5f;
+
+    OSLMP_EXPECT(m.pool().play(args, &voice_id) == OSLMP_RESULT_SUCCESS);
+
+    OSLMP_EXPECT(check_frames(m.render(), 0, BLOCK_SIZE, rate_half_expected));
+    OSLMP_EXPECT(check_frames(m.render(), 0, BLOCK_SIZE, rate_half_expected_2nd));
+
+    // changed while playing
+    OSLMP_EXPECT(m.pool().setRate(voice_id, 4.0f) == OSLMP_RESULT_ILLEGAL_ARGUMENT);
+    OSLMP_EXPECT(m.pool().setRate(voice_id, 1.0f) == OSLMP_RESULT_SUCCESS);
+
+    const std::vector<float> block = m.render();
+
+    OSLMP_EXPECT_NEAR(BLOCK_SIZE * RAMP_STEP, block[0], TOLERANCE);
+    OSLMP_EXPECT_NEAR((2 * BLOCK_SIZE - 1) * RAMP_STEP, block[2 * (BLOCK_SIZE - 1)], TOLERANCE);
+}
+
+void test_stealing()
+{
+    VoicePoolMixer m;
+    android::sp<AudioClip> clip_a = make_clip(BLOCK_SIZE, false, 0.5f);
+    android::sp<AudioClip> clip_b = make_clip(BLOCK_SIZE, false, 0.25f);
+    AudioVoicePool::play_args_t args_a = make_play_args(clip_a, BLOCK_SIZE);
+    AudioVoicePool::play_args_t args_b = make_play_args(clip_b, BLOCK_SIZE);
+    uint32_t voice_a = 0;
+    uint32_t voice_b = 0;
+    uint32_t voice_c = 0;
+
+    if (!OSLMP_EXPECT(m.init(1)))
+        return;
+
+    args_a.loop = -1;
+    args_a.priority = 1;
+    args_b.loop = -1;
+    args_b.priority = 1;
+
+    OSLMP_EXPECT(m.pool().play(args_a, &voice_a) == OSLMP_RESULT_SUCCESS);
+    m.render();
+
+    // the voice of the higher priority is not stolen
+    AudioVoicePool::play_args_t args_c(args_b);
+    args_c.priority = 0;
+
+    OSLMP_EXPECT(m.pool().play(args_c, &voice_c) == OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED);
+    OSLMP_EXPECT(voice_c == 0);
+
+    // stolen; the new voice starts immediately, and the old one fades out
+    OSLMP_EXPECT(m.pool().play(args_b, &voice_b) == OSLMP_RESULT_SUCCESS);
+    OSLMP_EXPECT(voice_b != voice_a);
+
+    // only the pool retains the clips from now on (except clip_a and clip_b)
+    args_a.clip.clear();
+    args_b.clip.clear();
+    args_c.clip.clear();
+
+    {
+        const std::vector<float> block = m.render();
+        bool monotonic = true;
+
+        OSLMP_EXPECT(m.getLastNumSources() == 2);
+        OSLMP_EXPECT_NEAR(0.75f, block[0], 0.01f);
+        OSLMP_EXPECT_NEAR(0.25f, block[2 * (BLOCK_SIZE - 1)], 0.01f);
+
+        for (uint32_t i = 1; i < BLOCK_SIZE; ++i) {
+            monotonic &= (block[2 * i] <= (block[2 * (i - 1)] + TOLERANCE));
+            monotonic &= (block[2 * i] >= (0.25f - TOLERANCE));
+        }
+
+        OSLMP_EXPECT(monotonic);
+    }
+
+    // the fade out has been completed, the old clip is released
+    OSLMP_EXPECT(clip_a->getStrongCount() == 1);
+
+    {
+        const std::vector<float> block = m.render();
+
+        OSLMP_EXPECT(m.getLastNumSources() == 1);
+        OSLMP_EXPECT_NEAR(0.25f, block[0], TOLERANCE);
+        OSLMP_EXPECT_NEAR(0.25f, block[2 * (BLOCK_SIZE - 1)], TOLERANCE);
+    }
+
+    // the stolen voice ID is not an error, and it does not affect the new voice
+    OSLMP_EXPECT(m.pool().stop(voice_a) == OSLMP_RESULT_SUCCESS);
+    m.render();
+    OSLMP_EXPECT(m.getLastNumSources() == 1);
+
+    // stopped with fading out
+    OSLMP_EXPECT(m.pool().stop(voice_b) == OSLMP_RESULT_SUCCESS);
+    m.render();
+    OSLMP_EXPECT(!m.pool().isActive());
+    OSLMP_EXPECT(clip_b->getStrongCount() == 1);
+}
+
+} // anonymous namespace
+
+int main(int argc, char *argv[])
+{
+    OSLMP_RUN_TEST(test_end_of_clip);
+    OSLMP_RUN_TEST(test_looping);
+    OSLMP_RUN_TEST(test_rate);
+    OSLMP_RUN_TEST(test_stealing);
+
+    return oslmp_host_test::result();
+}
@@ -35,6 +35,8 @@ public:
 
     int bind(const android::sp<OpenSLMediaPlayerHQVisualizer> &visualizer, uint32_t rate, bool waveform,
              bool fft) noexcept;
+    int bindDirect(JNIEnv *env, const android::sp<OpenSLMediaPlayerHQVisualizer> &visualizer, uint32_t rate,
+                   jobject waveform, jobject fft) noexcept;
     int unbind(const android::sp<OpenSLMediaPlayerHQVisualizer> &visualizer) noexcept;
 
     // implementations of InternalPeriodicCaptureThreadEventListener
@@ -46,6 +48,8 @@ public:
     virtual void *onLockCaptureBuffer(OpenSLMediaPlayerHQVisualizer *visualizer, int32_t type) noexcept override;
     virtual void onUnlockCaptureBuffer(OpenSLMediaPlayerHQVisualizer *visualizer, int32_t type,
                                        void *buffer) noexcept override;
+    virtual void onUpdateCapturedTime(OpenSLMediaPlayerHQVisualizer *visualizer,
+                                      int64_t capturedTimeNs) noexcept override;
 
     virtual void onWaveFormDataCapture(OpenSLMediaPlayerHQVisualizer *visualizer, const float *waveform,
                                        uint32_t numChannels, size_t sizeInFrames,
@@ -60,6 +64,26 @@ private:
     OpenSLMediaPlayerHQVisualizerJNIBinder &operator=(const OpenSLMediaPlayerHQVisualizerJNIBinder &) = delete;
 
     void raiseCaptureEvent(jint type, jfloatArray data, jint numChannels, jint samplingRate) noexcept;
+    void raiseDirectCaptureEvent(jint type, jlong sequence, jlong timestamp, jint numChannels,
+                                 jint samplingRate) noexcept;
+    jlong getCapturedTimeNanos() const noexcept;
+
+    struct direct_buffer_t {
+        jglobal_ref_wrapper<jobject> jbuffer;
+        float *address;
+        size_t capacity;   // [floats]
+        size_t frame_size; // [floats]
+        size_t num_slots;
+        uint64_t sequence;
+
+        direct_buffer_t() : jbuffer(), address(nullptr), capacity(0), frame_size(0), num_slots(0), sequence(0) {}
+    };
+
+    bool setupDirectBuffer(JNIEnv *env, direct_buffer_t &db, jobject buffer) noexcept;
+    void releaseDirectBuffer(JNIEnv *env, direct_buffer_t &db) noexcept;
+    void releaseDirectBuffers() noexcept;
+    static void prepareDirectBuffer(direct_buffer_t &db, int32_t size) noexcept;
+    static void *getDirectBufferSlot(direct_buffer_t &db) noexcept;
 
 private:
     enum {
@@ -76,9 +100,14 @@ private:
     jglobal_ref_wrapper<jfloatArray> jwaveform_data_[NUM_BUFFERS];
     jglobal_ref_wrapper<jfloatArray> jfft_data_[NUM_BUFFERS];
     jmethodID methodIdRaiseCaptureEventFromNative_;
+    jmethodID methodIdRaiseDirectCaptureEventFromNative_;
     android::wp<OpenSLMediaPlayerHQVisualizer> visualizer_;
     int waveform_buffer_index_;
     int fft_buffer_index_;
+    bool direct_mode_;
+    direct_buffer_t direct_waveform_;
+    direct_buffer_t direct_fft_;
+    jlong captured_time_ns_;
 };
 
 } // namespace jni
@@ -32,7 +32,8 @@ class OpenSLMediaPlayerJNIBinder : public virtual android::RefBase,
                                    public oslmp::OpenSLMediaPlayer::OnSeekCompleteListener,
                                    public oslmp::OpenSLMediaPlayer::OnBufferingUpdateListener,
                                    public oslmp::OpenSLMediaPlayer::OnInfoListener,
-                                   public oslmp::OpenSLMediaPlayer::OnErrorListener {
+                                   public oslmp::OpenSLMediaPlayer::OnErrorListener,
+                                   public oslmp::OpenSLMediaPlayer::OnCommandCompletionListener {
 public:
     OpenSLMediaPlayerJNIBinder(JNIEnv *env, jclass clazz, jobject weak_thiz);
     virtual ~OpenSLMediaPlayerJNIBinder();
@@ -63,6 +64,11 @@ public:
     // implementations of OnErrorListener
     virtual bool onError(OpenSLMediaPlayer *mp, int32_t what, int32_t extra) noexcept override;
 
+    // implementations of OnCommandCompletionListener
+    virtual void onCommandCompletion(OpenSLMediaPlayer *mp, int32_t token,
+                                     const OpenSLMediaPlayer::command_result_t *results,
+                                     size_t count) noexcept override;
+
 private:
     void postMessageToJava(int32_t what, int32_t arg1, int32_t arg2, jobject obj) noexcept;
 
@@ -63,9 +63,9 @@ private:
 private:
     enum {
         // NOTE:
-        // Needs multiple buffers to avoid data corruption.
-        // In Java layer, event callback is delegated by Looper thread.
-        NUM_BUFFERS = 4,
+        // Only needs a single buffer. Java layer copies the captured data
+        // into its own buffer before the event is delegated to the Looper thread.
+        NUM_BUFFERS = 1,
     };
 
     JavaVM *jvm_;
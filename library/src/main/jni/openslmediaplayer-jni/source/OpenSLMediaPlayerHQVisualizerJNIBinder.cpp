@@ -18,6 +18,8 @@
 
 #include "OpenSLMediaPlayerHQVisualizerJNIBinder.hpp"
 
+#include <time.h>
+
 #include <jni_utils/jni_utils.hpp>
 #include <loghelper/loghelper.h>
 
@@ -36,15 +38,29 @@
 namespace oslmp {
 namespace jni {
 
+static jlong getMonotonicTimeNanos() noexcept
+{
+    timespec ts;
+
+    if (::clock_gettime(CLOCK_MONOTONIC, &ts) != 0)
+        return 0;
+
+    return static_cast<jlong>(ts.tv_sec) * 1000000000LL + static_cast<jlong>(ts.tv_nsec);
+}
+
 OpenSLMediaPlayerHQVisualizerJNIBinder::OpenSLMediaPlayerHQVisualizerJNIBinder(JNIEnv *env, jclass clazz,
                                                                                jobject weak_thiz)
     : jvm_(nullptr), env_(nullptr), jvm_attached_(false), jvisualizer_class_(), jvisualizer_weak_thiz_(),
-      methodIdRaiseCaptureEventFromNative_(0), visualizer_(), waveform_buffer_index_(0), fft_buffer_index_(0)
+      methodIdRaiseCaptureEventFromNative_(0), methodIdRaiseDirectCaptureEventFromNative_(0), visualizer_(),
+      waveform_buffer_index_(0), fft_buffer_index_(0), direct_mode_(false), direct_waveform_(), direct_fft_(),
+      captured_time_ns_(0)
 {
     (void)env->GetJavaVM(&jvm_);
 
     methodIdRaiseCaptureEventFromNative_ =
         env->GetStaticMethodID(clazz, "raiseCaptureEventFromNative", "(Ljava/lang/Object;I[FII)V");
+    methodIdRaiseDirectCaptureEventFromNative_ =
+        env->GetStaticMethodID(clazz, "raiseDirectCaptureEventFromNative", "(Ljava/lang/Object;IJJII)V");
 
     jvisualizer_class_.assign(env, clazz, jref_type::global_reference);
     jvisualizer_weak_thiz_.assign(env, weak_thiz, jref_type::global_reference);
@@ -61,6 +77,8 @@ OpenSLMediaPlayerHQVisualizerJNIBinder::~OpenSLMediaPlayerHQVisualizerJNIBinder(
     if (env) {
         jvisualizer_class_.release(env);
         jvisualizer_weak_thiz_.release(env);
+        releaseDirectBuffer(env, direct_waveform_);
+        releaseDirectBuffer(env, direct_fft_);
     }
 
     jvm_ = nullptr;
@@ -73,7 +91,49 @@ int OpenSLMediaPlayerHQVisualizerJNIBinder::bind(const android::sp<OpenSLMediaPl
     if (!visualizer.get())
         return OSLMP_RESULT_ILLEGAL_ARGUMENT;
 
-    return visualizer->setInternalPeriodicCaptureThreadEventListener(this, rate, waveform, fft);
+    int result = visualizer->setInternalPeriodicCaptureThreadEventListener(this, rate, waveform, fft);
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        releaseDirectBuffers();
+    }
+
+    return result;
+}
+
+int OpenSLMediaPlayerHQVisualizerJNIBinder::bindDirect(JNIEnv *env,
+                                                       const android::sp<OpenSLMediaPlayerHQVisualizer> &visualizer,
+                                                       uint32_t rate, jobject waveform, jobject fft) noexcept
+{
+    if (!visualizer.get())
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!methodIdRaiseDirectCaptureEventFromNative_)
+        return OSLMP_RESULT_INTERNAL_ERROR;
+
+    if (waveform && !env->GetDirectBufferAddress(waveform))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (fft && !env->GetDirectBufferAddress(fft))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    // NOTE:
+    // The listener can be changed only while the visualizer is disabled,
+    // so the capture thread does not access the direct buffers here.
+    int result = visualizer->setInternalPeriodicCaptureThreadEventListener(this, rate, (waveform != nullptr),
+                                                                           (fft != nullptr));
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    releaseDirectBuffer(env, direct_waveform_);
+    releaseDirectBuffer(env, direct_fft_);
+
+    (void)setupDirectBuffer(env, direct_waveform_, waveform);
+    (void)setupDirectBuffer(env, direct_fft_, fft);
+
+    direct_mode_ = true;
+
+    return OSLMP_RESULT_SUCCESS;
 }
 
 int
@@ -82,7 +142,13 @@ OpenSLMediaPlayerHQVisualizerJNIBinder::unbind(const android::sp<OpenSLMediaPlay
     if (!visualizer.get())
         return OSLMP_RESULT_ILLEGAL_ARGUMENT;
 
-    return visualizer->setInternalPeriodicCaptureThreadEventListener(nullptr, 0, false, false);
+    int result = visualizer->setInternalPeriodicCaptureThreadEventListener(nullptr, 0, false, false);
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        releaseDirectBuffers();
+    }
+
+    return result;
 }
 
 void OpenSLMediaPlayerHQVisualizerJNIBinder::onEnterInternalPeriodicCaptureThread(
@@ -129,6 +195,18 @@ void OpenSLMediaPlayerHQVisualizerJNIBinder::onAllocateCaptureBuffer(OpenSLMedia
     if (!jvm_attached_)
         return;
 
+    if (direct_mode_) {
+        switch (type) {
+        case CAPTURE_BUFFER_TYPE_WAVEFORM:
+            prepareDirectBuffer(direct_waveform_, size);
+            break;
+        case CAPTURE_BUFFER_TYPE_FFT:
+            prepareDirectBuffer(direct_fft_, size);
+            break;
+        }
+        return;
+    }
+
     switch (type) {
     case CAPTURE_BUFFER_TYPE_WAVEFORM:
         waveform_buffer_index_ = 0;
@@ -173,6 +251,17 @@ void *OpenSLMediaPlayerHQVisualizerJNIBinder::onLockCaptureBuffer(OpenSLMediaPla
     if (!jvm_attached_)
         return nullptr;
 
+    if (direct_mode_) {
+        switch (type) {
+        case CAPTURE_BUFFER_TYPE_WAVEFORM:
+            return getDirectBufferSlot(direct_waveform_);
+        case CAPTURE_BUFFER_TYPE_FFT:
+            return getDirectBufferSlot(direct_fft_);
+        default:
+            return nullptr;
+        }
+    }
+
     jboolean isCopy = JNI_FALSE;
     void *buffer = nullptr;
 
@@ -200,6 +289,11 @@ void OpenSLMediaPlayerHQVisualizerJNIBinder::onUnlockCaptureBuffer(OpenSLMediaPl
     if (!jvm_attached_)
         return;
 
+    if (direct_mode_) {
+        // nothing to do, the data has been written into the direct buffer
+        return;
+    }
+
     switch (type) {
     case CAPTURE_BUFFER_TYPE_WAVEFORM:
         env_->ReleasePrimitiveArrayCritical(jwaveform_data_[waveform_buffer_index_](), buffer, 0);
@@ -210,11 +304,28 @@ void OpenSLMediaPlayerHQVisualizerJNIBinder::onUnlockCaptureBuffer(OpenSLMediaPl
     }
 }
 
+void OpenSLMediaPlayerHQVisualizerJNIBinder::onUpdateCapturedTime(OpenSLMediaPlayerHQVisualizer *visualizer,
+                                                                  int64_t capturedTimeNs) noexcept
+{
+    captured_time_ns_ = static_cast<jlong>(capturedTimeNs);
+}
+
 void OpenSLMediaPlayerHQVisualizerJNIBinder::onWaveFormDataCapture(OpenSLMediaPlayerHQVisualizer *visualizer,
                                                                    const float *waveform, uint32_t numChannels,
                                                                    size_t sizeInFrames, uint32_t samplingRate) noexcept
 {
 
+    if (direct_mode_) {
+        if (!(jvm_attached_ && direct_waveform_.num_slots))
+            return;
+
+        raiseDirectCaptureEvent(EVENT_TYPE_ON_WAVEFORM_DATA_CAPTURE, static_cast<jlong>(direct_waveform_.sequence),
+                                getCapturedTimeNanos(), numChannels, samplingRate);
+
+        direct_waveform_.sequence += 1;
+        return;
+    }
+
     // NOTE:
     // The 'waveform' argument is nullptr, but the jwaveform_data_ field is
     // already filled with captured data
@@ -237,6 +348,17 @@ void OpenSLMediaPlayerHQVisualizerJNIBinder::onFftDataCapture(OpenSLMediaPlayerH
                                                               size_t sizeInFrames, uint32_t samplingRate) noexcept
 {
 
+    if (direct_mode_) {
+        if (!(jvm_attached_ && direct_fft_.num_slots))
+            return;
+
+        raiseDirectCaptureEvent(EVENT_TYPE_ON_FFT_DATA_CAPTURE, static_cast<jlong>(direct_fft_.sequence),
+                                getCapturedTimeNanos(), numChannels, samplingRate);
+
+        direct_fft_.sequence += 1;
+        return;
+    }
+
     // NOTE:
     // The 'fft' argument is nullptr, but the jfft_data_ field is
     // already filled with captured data
@@ -278,5 +400,98 @@ void OpenSLMediaPlayerHQVisualizerJNIBinder::raiseCaptureEvent(jint type, jfloat
     }
 }
 
+jlong OpenSLMediaPlayerHQVisualizerJNIBinder::getCapturedTimeNanos() const noexcept
+{
+    // NOTE: fall back to the delivery time if the captured time is unknown
+    return (captured_time_ns_ != 0) ? captured_time_ns_ : getMonotonicTimeNanos();
+}
+
+void OpenSLMediaPlayerHQVisualizerJNIBinder::raiseDirectCaptureEvent(jint type, jlong sequence, jlong timestamp,
+                                                                     jint numChannels, jint samplingRate) noexcept
+{
+    if (env_ && jvm_attached_ && jvisualizer_class_() && methodIdRaiseDirectCaptureEventFromNative_) {
+        // void raiseDirectCaptureEventFromNative(
+        //     Object ref, int type, long sequence, long timestamp, int numChannels, int samplingRate);
+        env_->CallStaticVoidMethod(jvisualizer_class_(), methodIdRaiseDirectCaptureEventFromNative_,
+                                   jvisualizer_weak_thiz_(), type, sequence, timestamp, numChannels, samplingRate);
+    }
+}
+
+bool OpenSLMediaPlayerHQVisualizerJNIBinder::setupDirectBuffer(JNIEnv *env, direct_buffer_t &db,
+                                                               jobject buffer) noexcept
+{
+    if (!buffer)
+        return false;
+
+    void *address = env->GetDirectBufferAddress(buffer);
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+
+    if (!address || capacity <= 0)
+        return false;
+
+    db.jbuffer.assign(env, buffer, jref_type::global_reference);
+    db.address = static_cast<float *>(address);
+    db.capacity = static_cast<size_t>(capacity);
+    db.frame_size = 0;
+    db.num_slots = 0;
+    db.sequence = 0;
+
+    return true;
+}
+
+void OpenSLMediaPlayerHQVisualizerJNIBinder::releaseDirectBuffer(JNIEnv *env, direct_buffer_t &db) noexcept
+{
+    db.jbuffer.release(env);
+    db.address = nullptr;
+    db.capacity = 0;
+    db.frame_size = 0;
+    db.num_slots = 0;
+    db.sequence = 0;
+}
+
+void OpenSLMediaPlayerHQVisualizerJNIBinder::releaseDirectBuffers() noexcept
+{
+    JNIEnv *env = nullptr;
+
+    if (jvm_) {
+        (void)jvm_->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6);
+    }
+
+    if (env) {
+        releaseDirectBuffer(env, direct_waveform_);
+        releaseDirectBuffer(env, direct_fft_);
+    }
+
+    direct_mode_ = false;
+}
+
+void OpenSLMediaPlayerHQVisualizerJNIBinder::prepareDirectBuffer(direct_buffer_t &db, int32_t size) noexcept
+{
+    db.sequence = 0;
+
+    if (db.address && size > 0) {
+        db.frame_size = static_cast<size_t>(size);
+        db.num_slots = db.capacity / db.frame_size;
+    } else {
+        db.frame_size = 0;
+        db.num_slots = 0;
+    }
+
+    if (db.address && !db.num_slots) {
+        LOGW("prepareDirectBuffer() - The direct buffer is too small (capacity = %d, required = %d)",
+             static_cast<int>(db.capacity), static_cast<int>(size));
+    }
+}
+
+void *OpenSLMediaPlayerHQVisualizerJNIBinder::getDirectBufferSlot(direct_buffer_t &db) noexcept
+{
+    if (!db.num_slots)
+        return nullptr;
+
+    const size_t slot = static_cast<size_t>(db.sequence % db.num_slots);
+
+    return &(db.address[slot * db.frame_size]);
+}
+
 } // namespace jni
 } // namespace oslmp
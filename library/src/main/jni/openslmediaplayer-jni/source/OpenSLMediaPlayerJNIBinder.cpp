@@ -32,6 +32,7 @@
 #define MESSAGE_ON_BUFFERING_UPDATE 4
 #define MESSAGE_ON_INFO 5
 #define MESSAGE_ON_ERROR 6
+#define MESSAGE_ON_COMMAND_COMPLETION 7
 
 namespace oslmp {
 namespace jni {
@@ -81,6 +82,7 @@ void OpenSLMediaPlayerJNIBinder::bind(const android::sp<oslmp::OpenSLMediaPlayer
     player->setOnBufferingUpdateListener(this);
     player->setOnInfoListener(this);
     player->setOnErrorListener(this);
+    player->setOnCommandCompletionListener(this);
     player->setInternalThreadEventListener(this);
 }
 
@@ -97,6 +99,7 @@ void OpenSLMediaPlayerJNIBinder::unbind() noexcept
     player->setOnBufferingUpdateListener(nullptr);
     player->setOnInfoListener(nullptr);
     player->setOnErrorListener(nullptr);
+    player->setOnCommandCompletionListener(nullptr);
     player->setInternalThreadEventListener(nullptr);
 
     player_.clear();
@@ -164,6 +167,44 @@ bool OpenSLMediaPlayerJNIBinder::onError(OpenSLMediaPlayer *mp, int32_t what, in
     return true;
 }
 
+void OpenSLMediaPlayerJNIBinder::onCommandCompletion(OpenSLMediaPlayer *mp, int32_t token,
+                                                     const OpenSLMediaPlayer::command_result_t *results,
+                                                     size_t count) noexcept
+{
+    if (!(env_ && results && count > 0))
+        return;
+
+    // NOTE:
+    // The handler thread is kept attached to the JVM,
+    // so the local reference has to be deleted explicitly.
+    jlocal_ref_wrapper<jintArray> jresults;
+
+    jresults.assign(env_, env_->NewIntArray(static_cast<jsize>(count * 2)), jref_type::local_reference_explicit_delete);
+
+    if (!jresults) {
+        if (env_->ExceptionCheck()) {
+            env_->ExceptionClear();
+        }
+        LOGE("onCommandCompletion() - failed to allocate result array");
+        return;
+    }
+
+    {
+        jint_array results_(env_, jresults());
+
+        if (!results_) {
+            return;
+        }
+
+        for (size_t i = 0; i < count; ++i) {
+            results_[2 * i + 0] = results[i].result;
+            results_[2 * i + 1] = results[i].value;
+        }
+    }
+
+    postMessageToJava(MESSAGE_ON_COMMAND_COMPLETION, token, static_cast<int32_t>(count), jresults());
+}
+
 void OpenSLMediaPlayerJNIBinder::postMessageToJava(int32_t what, int32_t arg1, int32_t arg2, jobject obj) noexcept
 {
     LOGD("postMessageToJava(what = %d, arg1 = %d, arg2 = %d, obj = %p)", what, arg1, arg2, obj);
@@ -20,6 +20,9 @@
 #include <cxxporthelper/cstdint>
 #include <cxxporthelper/memory>
 
+#include <cstring>
+#include <vector>
+
 #include <oslmp/OpenSLMediaPlayer.hpp>
 
 #include "OpenSLMediaPlayerJNIBinder.hpp"
@@ -32,9 +35,10 @@ public:
     android::sp<oslmp::OpenSLMediaPlayerContext> context;
     android::sp<oslmp::OpenSLMediaPlayer> mp;
     android::sp<oslmp::jni::OpenSLMediaPlayerJNIBinder> binder;
+    jglobal_ref_wrapper<jobject> status_block;
 
 public:
-    OpenSLMediaPlayerJniContextHolder() : context(), mp(), binder() {}
+    OpenSLMediaPlayerJniContextHolder() : context(), mp(), binder(), status_block() {}
 
     ~OpenSLMediaPlayerJniContextHolder()
     {
@@ -46,6 +50,22 @@ public:
         context.clear();
     }
 
+    void releaseStatusBlock(JNIEnv *env) noexcept
+    {
+        if (!status_block())
+            return;
+
+        // NOTE:
+        // Don't release the global reference if failed to detach,
+        // the internal thread may still write to the block.
+        // (jglobal_ref_wrapper does not release it on destruction)
+        if (mp.get() && mp->setStatusBlock(nullptr) != OSLMP_RESULT_SUCCESS) {
+            return;
+        }
+
+        status_block.release(env);
+    }
+
     static jlong toJniHandle(OpenSLMediaPlayerJniContextHolder *holder) noexcept
     {
         return static_cast<jlong>(reinterpret_cast<uintptr_t>(holder));
@@ -124,6 +144,7 @@ Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_deleteNativeImplHandle(JN
 {
     if (handle) {
         Holder *holder = Holder::fromJniHandle(handle);
+        holder->releaseStatusBlock(env);
         delete holder;
     }
 }
@@ -187,6 +208,79 @@ JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_se
     return holder->mp->setDataSourceFd(fd, offset, length);
 }
 
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_addPlaylistItemPathImplNative(JNIEnv *env, jclass clazz,
+                                                                                     jlong handle, jstring path) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jstring_wrapper path_w(env, path);
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->addPlaylistItemPath(path_w.data());
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_addPlaylistItemUriImplNative(JNIEnv *env, jclass clazz,
+                                                                                    jlong handle, jstring uri) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jstring_wrapper uri_w(env, uri);
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->addPlaylistItemUri(uri_w.data());
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_addPlaylistItemFdImplNative__JI(JNIEnv *env, jclass clazz,
+                                                                                       jlong handle, jint fd) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->addPlaylistItemFd(fd);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_addPlaylistItemFdImplNative__JIJJ(
+    JNIEnv *env, jclass clazz, jlong handle, jint fd, jlong offset, jlong length) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->addPlaylistItemFd(fd, offset, length);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_clearPlaylistImplNative(JNIEnv *env,
+                                                                                                      jclass clazz,
+                                                                                                      jlong handle) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->clearPlaylist();
+}
+
 JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_prepareImplNative(JNIEnv *env,
                                                                                                 jclass clazz,
                                                                                                 jlong handle) noexcept
@@ -459,6 +553,119 @@ Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_setNextMediaPlayerImplNat
     return holder->mp->setNextMediaPlayer(&next);
 }
 
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_postCommandsImplNative(JNIEnv *env, jclass clazz,
+                                                                              jlong handle, jint token,
+                                                                              jintArray commands,
+                                                                              jint count) noexcept
+{
+    // NOTE: commands = { what, iarg, floatBitsToInt(farg[0]), floatBitsToInt(farg[1]) } x count
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    const_jint_array commands_(env, commands);
+
+    if (!commands_ || count <= 0 || commands_.length() < static_cast<size_t>(count) * 4) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    try
+    {
+        std::vector<oslmp::OpenSLMediaPlayer::command_t> cmds(count);
+
+        for (jint i = 0; i < count; ++i) {
+            oslmp::OpenSLMediaPlayer::command_t &cmd = cmds[i];
+            const jint *src = &commands_[4 * i];
+
+            cmd.what = src[0];
+            cmd.iarg = src[1];
+            ::memcpy(&(cmd.farg[0]), &src[2], sizeof(float));
+            ::memcpy(&(cmd.farg[1]), &src[3], sizeof(float));
+        }
+
+        return holder->mp->postCommands(&cmds[0], cmds.size(), token);
+    }
+    catch (const std::bad_alloc & /*e*/) {}
+
+    return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_setStatusBlockImplNative(JNIEnv *env, jclass clazz,
+                                                                                jlong handle, jobject block) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    if (!block) {
+        holder->releaseStatusBlock(env);
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    void *address = env->GetDirectBufferAddress(block);
+    const jlong capacity = env->GetDirectBufferCapacity(block);
+
+    if (!address || capacity < static_cast<jlong>(sizeof(oslmp::OpenSLMediaPlayer::status_block_t))) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    if (holder->status_block()) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    jglobal_ref_wrapper<jobject> ref;
+
+    ref.assign(env, block, jref_type::global_reference);
+
+    if (!ref()) {
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+    }
+
+    const int result = holder->mp->setStatusBlock(static_cast<oslmp::OpenSLMediaPlayer::status_block_t *>(address));
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        holder->status_block.move(env, std::move(ref));
+    } else {
+        ref.release(env);
+    }
+
+    return result;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_readStatusBlockImplNative(JNIEnv *env, jclass clazz,
+                                                                                 jobject block,
+                                                                                 jobject snapshot) noexcept
+{
+    typedef oslmp::OpenSLMediaPlayer::status_block_t status_block_t;
+
+    if (!(block && snapshot)) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    const void *block_address = env->GetDirectBufferAddress(block);
+    void *snapshot_address = env->GetDirectBufferAddress(snapshot);
+
+    if (!(block_address && snapshot_address)) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    if (env->GetDirectBufferCapacity(block) < static_cast<jlong>(sizeof(status_block_t)) ||
+        env->GetDirectBufferCapacity(snapshot) < static_cast<jlong>(sizeof(status_block_t))) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    return oslmp::OpenSLMediaPlayer::sReadStatusBlock(static_cast<const status_block_t *>(block_address),
+                                                      static_cast<status_block_t *>(snapshot_address));
+}
+
 JNIEXPORT jint JNICALL
 Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_attachAuxEffectImplNative(JNIEnv *env, jclass clazz,
                                                                                  jlong handle, jint effectId) noexcept
@@ -488,6 +695,67 @@ Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_setAuxEffectSendLevelImpl
     return holder->mp->setAuxEffectSendLevel(level);
 }
 
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_setFadeCurveImplNative(JNIEnv *env, jclass clazz, jlong handle,
+                                                                              jint curve, jint fadeInMs,
+                                                                              jint fadeOutMs) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->setFadeCurve(curve, fadeInMs, fadeOutMs);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_setLoopPointsImplNative(JNIEnv *env, jclass clazz, jlong handle,
+                                                                               jint startMs, jint endMs) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->setLoopPoints(startMs, endMs);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_setInsertEqualizerEnabledImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jboolean enabled) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->setInsertEqualizerEnabled((enabled == JNI_TRUE));
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayer_setInsertEqualizerBandLevelsImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jshortArray levels) noexcept
+{
+
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    const_jshort_array levels_(env, levels);
+
+    if (!levels_) {
+        return OSLMP_RESULT_ERROR;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->mp->setInsertEqualizerBandLevels(levels_.data(), static_cast<uint16_t>(levels_.length()));
+}
+
 #ifdef __cplusplus
 }
 #endif
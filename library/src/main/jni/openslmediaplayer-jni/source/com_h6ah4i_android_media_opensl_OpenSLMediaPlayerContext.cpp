@@ -75,7 +75,8 @@ bool OpenSLMediaPlayerContext_GetInstanceFromJniHandle(jlong handle,
 
 JNIEXPORT jlong JNICALL
 Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_createNativeImplHandle(JNIEnv *env, jclass clazz,
-                                                                                     jintArray params) noexcept
+                                                                                     jintArray params,
+                                                                                     jstring seek_index_cache_dir) noexcept
 {
 
     const_jint_array params_(env, params);
@@ -104,6 +105,24 @@ Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_createNativeImplHa
         create_args.sink_backend_type = params_[10];
         create_args.use_low_latency_if_available = (params_[11]) ? true : false;
         create_args.use_floating_point_if_available = (params_[12]) ? true : false;
+        create_args.sink_buffering_mode = params_[13];
+        create_args.adaptive_sink_min_blocks = params_[14];
+        create_args.adaptive_sink_max_blocks = params_[15];
+        create_args.adaptive_sink_shrink_interval_ms = params_[16];
+        create_args.decoded_clip_cache_size = params_[17];
+        create_args.decoded_clip_max_duration_ms = params_[18];
+        create_args.loop_buffer_max_duration_ms = params_[19];
+        create_args.decoder_backend_type = params_[20];
+        create_args.source_worker_thread_count = params_[21];
+        create_args.mixer_max_sources = params_[22];
+        create_args.seek_index_cache_max_size = params_[23];
+
+        std::unique_ptr<jstring_wrapper> seek_index_cache_dir_w;
+
+        if (seek_index_cache_dir) {
+            seek_index_cache_dir_w.reset(new jstring_wrapper(env, seek_index_cache_dir));
+            create_args.seek_index_cache_dir = seek_index_cache_dir_w->data();
+        }
 
         holder->context = oslmp::OpenSLMediaPlayerContext::create(env, create_args);
 
@@ -140,6 +159,108 @@ Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_getAudioSessionIdI
     }
 }
 
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_installModuleImplNative(JNIEnv *env, jclass clazz,
+                                                                                     jlong handle,
+                                                                                     jint option) noexcept
+{
+    android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+    if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(handle, context)) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    return context->installModule(static_cast<uint32_t>(option));
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_uninstallModuleImplNative(JNIEnv *env, jclass clazz,
+                                                                                       jlong handle,
+                                                                                       jint option) noexcept
+{
+    android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+    if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(handle, context)) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    return context->uninstallModule(static_cast<uint32_t>(option));
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_getEngineStatisticsImplNative(JNIEnv *env, jclass clazz,
+                                                                                           jlong handle,
+                                                                                           jlongArray values) noexcept
+{
+    typedef oslmp::OpenSLMediaPlayerContext::engine_statistics_t engine_statistics_t;
+    const int num_bins = OSLMP_CONTEXT_STATISTICS_NUM_HISTOGRAM_BINS;
+
+    android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+    if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(handle, context)) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jlong_array values_(env, values);
+
+    if (!values_) {
+        return OSLMP_RESULT_ERROR;
+    }
+
+    CHECK_ARG(values_.length() >= (9 + 2 * num_bins));
+
+    engine_statistics_t stats;
+
+    const int result = context->getEngineStatistics(&stats);
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        values_[0] = stats.sink_underrun_count;
+        values_[1] = stats.sink_silent_block_count;
+        values_[2] = stats.mixer_block_count;
+        values_[3] = stats.mixer_late_block_count;
+        values_[4] = static_cast<jlong>(stats.mixer_cpu_time_ns);
+        values_[5] = stats.mixer_max_block_cpu_time_ns;
+        values_[6] = stats.source_starved_block_count;
+        values_[7] = static_cast<jlong>(stats.decoded_frames);
+        values_[8] = static_cast<jlong>(stats.decoder_cpu_time_ns);
+
+        for (int i = 0; i < num_bins; ++i) {
+            values_[9 + i] = stats.sink_queue_depth_histogram[i];
+            values_[9 + num_bins + i] = stats.source_queue_depth_histogram[i];
+        }
+    }
+
+    return result;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_resetEngineStatisticsImplNative(JNIEnv *env,
+                                                                                             jclass clazz,
+                                                                                             jlong handle) noexcept
+{
+    android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+    if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(handle, context)) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    return context->resetEngineStatistics();
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLMediaPlayerContext_clearDecodedClipCacheImplNative(JNIEnv *env,
+                                                                                             jclass clazz,
+                                                                                             jlong handle) noexcept
+{
+    android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+    if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(handle, context)) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    return context->clearDecodedClipCache();
+}
+
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,364 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#include <jni.h>
+#include <jni_utils/jni_utils.hpp>
+
+#include <pthread.h>
+#include <cstdio>
+#include <cstring>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/memory>
+
+#include <oslmp/OpenSLMediaPlayerContext.hpp>
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#define CHECK_ARG(cond)                                                                                                \
+    if (!(cond)) {                                                                                                     \
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;                                                                          \
+    }
+
+extern "C" bool OpenSLMediaPlayerContext_GetInstanceFromJniHandle(jlong handle,
+                                                                  android::sp<oslmp::OpenSLMediaPlayerContext> &dest);
+
+class OfflineRendererJniContextHolder {
+public:
+    enum { WAV_HEADER_SIZE = 44 };
+
+    android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+    pthread_mutex_t mutex;
+    FILE *fp;
+    uint8_t *buffer;
+    size_t buffer_capacity;
+    uint32_t sampling_rate; // [Hz]
+    uint32_t num_channels;
+    bool is_float;
+    bool buffer_full;
+    bool io_error;
+    uint64_t num_frames;
+    uint64_t num_bytes;
+
+public:
+    OfflineRendererJniContextHolder()
+        : context(), fp(nullptr), buffer(nullptr), buffer_capacity(0), sampling_rate(0), num_channels(0),
+          is_float(false), buffer_full(false), io_error(false), num_frames(0), num_bytes(0)
+    {
+        ::pthread_mutex_init(&mutex, nullptr);
+    }
+
+    ~OfflineRendererJniContextHolder()
+    {
+        finish();
+        context.clear();
+        ::pthread_mutex_destroy(&mutex);
+    }
+
+    bool openWavFile(const char *path) noexcept
+    {
+        fp = ::fopen(path, "wb");
+
+        if (!fp)
+            return false;
+
+        // write a placeholder header, it will be updated in finish()
+        uint8_t header[WAV_HEADER_SIZE];
+        makeWavHeader(header);
+
+        if (::fwrite(header, sizeof(header), 1, fp) != 1) {
+            ::fclose(fp);
+            fp = nullptr;
+            return false;
+        }
+
+        return true;
+    }
+
+    void finish() noexcept
+    {
+        if (context.get()) {
+            // NOTE: no more callbacks occur after this call
+            (void)context->setOfflineRenderOutputCallback(nullptr, nullptr);
+        }
+
+        ::pthread_mutex_lock(&mutex);
+
+        if (fp) {
+            uint8_t header[WAV_HEADER_SIZE];
+            makeWavHeader(header);
+
+            if (::fseek(fp, 0, SEEK_SET) != 0 || ::fwrite(header, sizeof(header), 1, fp) != 1) {
+                io_error = true;
+            }
+
+            // NOTE: fclose() flushes the buffered data, so the result have to be checked too
+            if (::fclose(fp) != 0) {
+                io_error = true;
+            }
+            fp = nullptr;
+        }
+
+        buffer = nullptr;
+        buffer_capacity = 0;
+
+        ::pthread_mutex_unlock(&mutex);
+    }
+
+    static void outputCallback(const void *data, uint32_t num_channels, uint32_t num_frames, bool is_float,
+                               void *args) noexcept
+    {
+        OfflineRendererJniContextHolder *thiz = static_cast<OfflineRendererJniContextHolder *>(args);
+
+        ::pthread_mutex_lock(&(thiz->mutex));
+        thiz->write(data, num_channels, num_frames, is_float);
+        ::pthread_mutex_unlock(&(thiz->mutex));
+    }
+
+    static jlong toJniHandle(OfflineRendererJniContextHolder *holder) noexcept
+    {
+        return static_cast<jlong>(reinterpret_cast<uintptr_t>(holder));
+    }
+
+    static OfflineRendererJniContextHolder *fromJniHandle(jlong handle) noexcept
+    {
+        return reinterpret_cast<OfflineRendererJniContextHolder *>(handle);
+    }
+
+private:
+    void write(const void *data, uint32_t num_channels, uint32_t num_frames, bool is_float) noexcept
+    {
+        if (num_frames == 0 || buffer_full || io_error)
+            return;
+
+        const size_t frame_size = num_channels * ((is_float) ? sizeof(float) : sizeof(int16_t));
+        size_t frames_to_write = num_frames;
+
+        if (buffer) {
+            const size_t room_in_frames = (buffer_capacity - static_cast<size_t>(num_bytes)) / frame_size;
+
+            if (room_in_frames <= frames_to_write) {
+                frames_to_write = room_in_frames;
+                buffer_full = true;
+            }
+        }
+
+        const size_t bytes_to_write = frames_to_write * frame_size;
+
+        if (fp) {
+            if (::fwrite(data, bytes_to_write, 1, fp) != 1) {
+                io_error = true;
+                return;
+            }
+        } else if (buffer) {
+            ::memcpy(&buffer[num_bytes], data, bytes_to_write);
+        }
+
+        this->num_channels = num_channels;
+        this->is_float = is_float;
+        this->num_frames += frames_to_write;
+        this->num_bytes += bytes_to_write;
+    }
+
+    void makeWavHeader(uint8_t *header) const noexcept
+    {
+        const uint16_t format_tag = (is_float) ? 3 /* WAVE_FORMAT_IEEE_FLOAT */ : 1 /* WAVE_FORMAT_PCM */;
+        const uint16_t channels = (num_channels) ? num_channels : 2;
+        const uint16_t bits_per_sample = (is_float) ? 32 : 16;
+        const uint16_t block_align = channels * (bits_per_sample / 8);
+        const uint32_t byte_rate = sampling_rate * block_align;
+        const uint32_t data_size = (num_bytes < 0xffffffffUL - 36) ? static_cast<uint32_t>(num_bytes)
+                                                                   : static_cast<uint32_t>(0xffffffffUL - 36);
+
+        ::memcpy(&header[0], "RIFF", 4);
+        put_le32(&header[4], 36 + data_size);
+        ::memcpy(&header[8], "WAVE", 4);
+        ::memcpy(&header[12], "fmt ", 4);
+        put_le32(&header[16], 16);
+        put_le16(&header[20], format_tag);
+        put_le16(&header[22], channels);
+        put_le32(&header[24], sampling_rate);
+        put_le32(&header[28], byte_rate);
+        put_le16(&header[32], block_align);
+        put_le16(&header[34], bits_per_sample);
+        ::memcpy(&header[36], "data", 4);
+        put_le32(&header[40], data_size);
+    }
+
+    static void put_le16(uint8_t *p, uint16_t x) noexcept
+    {
+        p[0] = static_cast<uint8_t>(x);
+        p[1] = static_cast<uint8_t>(x >> 8);
+    }
+
+    static void put_le32(uint8_t *p, uint32_t x) noexcept
+    {
+        p[0] = static_cast<uint8_t>(x);
+        p[1] = static_cast<uint8_t>(x >> 8);
+        p[2] = static_cast<uint8_t>(x >> 16);
+        p[3] = static_cast<uint8_t>(x >> 24);
+    }
+};
+typedef OfflineRendererJniContextHolder Holder;
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+JNIEXPORT jlong JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLOfflineRenderer_createNativeImplHandle(JNIEnv *env, jclass clazz,
+                                                                                  jlong context_handle,
+                                                                                  jint sampling_rate,
+                                                                                  jstring wav_path,
+                                                                                  jobject buffer) noexcept
+{
+    // NOTE: either wav_path or buffer have to be specified
+    if (!((wav_path != nullptr) ^ (buffer != nullptr))) {
+        return 0;
+    }
+
+    if (sampling_rate <= 0) {
+        return 0;
+    }
+
+    try
+    {
+        std::unique_ptr<Holder> holder(new Holder());
+
+        if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(context_handle, holder->context))
+            return 0;
+
+        holder->sampling_rate = static_cast<uint32_t>(sampling_rate);
+
+        if (wav_path) {
+            jstring_wrapper path_w(env, wav_path);
+
+            if (!(path_w.data() && holder->openWavFile(path_w.data())))
+                return 0;
+        } else {
+            void *address = env->GetDirectBufferAddress(buffer);
+            const jlong capacity = env->GetDirectBufferCapacity(buffer);
+
+            if (!address || capacity <= 0)
+                return 0;
+
+            holder->buffer = static_cast<uint8_t *>(address);
+            holder->buffer_capacity = static_cast<size_t>(capacity);
+        }
+
+        const int result = holder->context->setOfflineRenderOutputCallback(Holder::outputCallback, holder.get());
+
+        if (result != OSLMP_RESULT_SUCCESS)
+            return 0;
+
+        return Holder::toJniHandle(holder.release());
+    }
+    catch (const std::bad_alloc & /*e*/) {}
+
+    return 0;
+}
+
+JNIEXPORT void JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLOfflineRenderer_deleteNativeImplHandle(JNIEnv *env, jclass clazz,
+                                                                                  jlong handle) noexcept
+{
+    if (handle) {
+        Holder *holder = Holder::fromJniHandle(handle);
+        delete holder;
+    }
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLOfflineRenderer_getStatusImplNative(JNIEnv *env, jclass clazz,
+                                                                               jlong handle,
+                                                                               jlongArray status) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jlong_array status_(env, status);
+
+    if (!status_) {
+        return OSLMP_RESULT_ERROR;
+    }
+
+    CHECK_ARG(status_.length() >= 4);
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    ::pthread_mutex_lock(&(holder->mutex));
+
+    status_[0] = static_cast<jlong>(holder->num_frames);
+    status_[1] = static_cast<jlong>(holder->num_bytes);
+    status_[2] = (holder->buffer_full) ? 1 : 0;
+    status_[3] = (holder->io_error) ? 1 : 0;
+
+    ::pthread_mutex_unlock(&(holder->mutex));
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLOfflineRenderer_finishImplNative(JNIEnv *env, jclass clazz,
+                                                                            jlong handle) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    holder->finish();
+
+    ::pthread_mutex_lock(&(holder->mutex));
+    const bool io_error = holder->io_error;
+    ::pthread_mutex_unlock(&(holder->mutex));
+
+    return (io_error) ? OSLMP_RESULT_ERROR : OSLMP_RESULT_SUCCESS;
+}
+
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_OpenSLOfflineRenderer_isFloatingPointOutputImplNative(JNIEnv *env,
+                                                                                           jclass clazz,
+                                                                                           jlong context_handle,
+                                                                                           jbooleanArray is_float) noexcept
+{
+    android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+    if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(context_handle, context)) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jboolean_array is_float_(env, is_float);
+
+    if (!is_float_) {
+        return OSLMP_RESULT_ERROR;
+    }
+
+    CHECK_ARG(is_float_.length() >= 1);
+
+    bool value = false;
+    const int result = context->isFloatingPointOutput(&value);
+
+    is_float_[0] = (value) ? JNI_TRUE : JNI_FALSE;
+
+    return result;
+}
+
+#ifdef __cplusplus
+}
+#endif
@@ -0,0 +1,267 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#include <jni.h>
+#include <jni_utils/jni_utils.hpp>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/memory>
+
+#include <oslmp/OpenSLMediaPlayerContext.hpp>
+#include <oslmp/OpenSLMediaPlayerSoundPool.hpp>
+
+extern "C" bool OpenSLMediaPlayerContext_GetInstanceFromJniHandle(jlong handle,
+                                                                  android::sp<oslmp::OpenSLMediaPlayerContext> &dest);
+
+class SoundPoolJniContextHolder {
+public:
+    android::sp<oslmp::OpenSLMediaPlayerSoundPool> soundpool;
+
+public:
+    SoundPoolJniContextHolder() : soundpool() {}
+
+    ~SoundPoolJniContextHolder()
+    {
+        if (soundpool.get()) {
+            soundpool->release();
+        }
+        soundpool.clear();
+    }
+
+    static jlong toJniHandle(SoundPoolJniContextHolder *holder) noexcept
+    {
+        return static_cast<jlong>(reinterpret_cast<uintptr_t>(holder));
+    }
+
+    static SoundPoolJniContextHolder *fromJniHandle(jlong handle) noexcept
+    {
+        return reinterpret_cast<SoundPoolJniContextHolder *>(handle);
+    }
+};
+typedef SoundPoolJniContextHolder Holder;
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+JNIEXPORT jlong JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_createNativeImplHandle(
+    JNIEnv *env, jclass clazz, jlong context_handle, jint max_streams) noexcept
+{
+
+    try
+    {
+        std::unique_ptr<Holder> holder(new Holder());
+        android::sp<oslmp::OpenSLMediaPlayerContext> context;
+
+        if (!OpenSLMediaPlayerContext_GetInstanceFromJniHandle(context_handle, context))
+            return 0;
+
+        holder->soundpool = new oslmp::OpenSLMediaPlayerSoundPool(context, max_streams);
+
+        // check the instance is alive
+        if (holder->soundpool->setPriority(0, 0) == OSLMP_RESULT_DEAD_OBJECT)
+            return 0;
+
+        return Holder::toJniHandle(holder.release());
+    }
+    catch (const std::bad_alloc & /*e*/) {}
+    return 0;
+}
+
+JNIEXPORT void JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_deleteNativeImplHandle(JNIEnv *env,
+                                                                                                  jclass clazz,
+                                                                                                  jlong handle) noexcept
+{
+    if (handle) {
+        Holder *holder = Holder::fromJniHandle(handle);
+        delete holder;
+    }
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_loadPathImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jstring path, jintArray sample_id) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jstring_wrapper path_w(env, path);
+    jint_array sample_id_(env, sample_id);
+
+    if (!sample_id_) {
+        return OSLMP_RESULT_ERROR;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+    int value = 0;
+
+    int result = holder->soundpool->load(path_w.data(), &value);
+
+    sample_id_[0] = value;
+
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_loadFdImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jint fd, jlong offset, jlong length, jintArray sample_id) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jint_array sample_id_(env, sample_id);
+
+    if (!sample_id_) {
+        return OSLMP_RESULT_ERROR;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+    int value = 0;
+
+    int result = holder->soundpool->load(fd, offset, length, &value);
+
+    sample_id_[0] = value;
+
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_unloadImplNative(JNIEnv *env, jclass clazz,
+                                                                                            jlong handle,
+                                                                                            jint sample_id) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->unload(sample_id);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_playImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jint sample_id, jfloat left_volume, jfloat right_volume, jint priority,
+    jint loop, jfloat rate, jintArray stream_id) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    jint_array stream_id_(env, stream_id);
+
+    if (!stream_id_) {
+        return OSLMP_RESULT_ERROR;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+    int value = 0;
+
+    int result = holder->soundpool->play(sample_id, left_volume, right_volume, priority, loop, rate, &value);
+
+    stream_id_[0] = value;
+
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_pauseImplNative(JNIEnv *env, jclass clazz,
+                                                                                           jlong handle,
+                                                                                           jint stream_id) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->pause(stream_id);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_resumeImplNative(JNIEnv *env, jclass clazz,
+                                                                                            jlong handle,
+                                                                                            jint stream_id) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->resume(stream_id);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_stopImplNative(JNIEnv *env, jclass clazz,
+                                                                                          jlong handle,
+                                                                                          jint stream_id) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->stop(stream_id);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_setVolumeImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jint stream_id, jfloat left_volume, jfloat right_volume) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->setVolume(stream_id, left_volume, right_volume);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_setPriorityImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jint stream_id, jint priority) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->setPriority(stream_id, priority);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_setLoopImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jint stream_id, jint loop) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->setLoop(stream_id, loop);
+}
+
+JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_OpenSLSoundPool_setRateImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jint stream_id, jfloat rate) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    return holder->soundpool->setRate(stream_id, rate);
+}
+
+#ifdef __cplusplus
+}
+#endif
@@ -264,6 +264,27 @@ JNIEXPORT jint JNICALL Java_com_h6ah4i_android_media_opensl_audiofx_OpenSLHQVisu
     return result;
 }
 
+JNIEXPORT jint JNICALL
+Java_com_h6ah4i_android_media_opensl_audiofx_OpenSLHQVisualizer_setDirectDataCaptureListenerImplNative(
+    JNIEnv *env, jclass clazz, jlong handle, jint rate, jobject waveform, jobject fft) noexcept
+{
+    if (!handle) {
+        return OSLMP_RESULT_INVALID_HANDLE;
+    }
+
+    Holder *holder = Holder::fromJniHandle(handle);
+
+    int result;
+
+    if (rate != 0 && (waveform || fft)) {
+        result = holder->binder->bindDirect(env, holder->visualizer, rate, waveform, fft);
+    } else {
+        result = holder->binder->unbind(holder->visualizer);
+    }
+
+    return result;
+}
+
 JNIEXPORT jint JNICALL
 Java_com_h6ah4i_android_media_opensl_audiofx_OpenSLHQVisualizer_getMaxCaptureRateImplNative(JNIEnv *env, jclass clazz,
                                                                                             jintArray rate) noexcept
@@ -33,6 +33,9 @@ endif
 
 OSLMP_LOCAL_EXPORT_C_INCLUDES := $(PROJ_LOCAL_PATH)/include
 
+# libdl is required to load libmediandk.so at runtime (AudioDecoderMediaCodecBackend)
+OSLMP_LOCAL_LDLIBS := -ldl
+
 
 #
 # OpenSLMediaPlayer
@@ -46,6 +49,7 @@ LOCAL_C_INCLUDES := $(OSLMP_LOCAL_C_INCLUDES)
 LOCAL_EXPORT_C_INCLUDES := $(OSLMP_LOCAL_EXPORT_C_INCLUDES)
 LOCAL_SRC_FILES := $(OSLMP_LOCAL_SRC_FILES)
 LOCAL_CFLAGS += $(OSLMP_LOCAL_CFLAGS)
+LOCAL_LDLIBS += $(OSLMP_LOCAL_LDLIBS)
 LOCAL_STATIC_LIBRARIES := \
     android-platform-system-core-utils \
     android-platform-system-media-audio_utils \
@@ -79,6 +83,7 @@ LOCAL_C_INCLUDES := $(OSLMP_LOCAL_C_INCLUDES)
 LOCAL_EXPORT_C_INCLUDES := $(OSLMP_LOCAL_EXPORT_C_INCLUDES)
 LOCAL_SRC_FILES := $(OSLMP_LOCAL_SRC_FILES)
 LOCAL_CFLAGS += $(OSLMP_LOCAL_CFLAGS)
+LOCAL_LDLIBS += $(OSLMP_LOCAL_LDLIBS)
 LOCAL_STATIC_LIBRARIES := \
     android-platform-system-core-utils \
     android-platform-system-media-audio_utils \
@@ -105,3 +110,4 @@ OSLMP_LOCAL_C_INCLUDES :=
 OSLMP_LOCAL_SRC_FILES :=
 OSLMP_LOCAL_CFLAGS :=
 OSLMP_LOCAL_EXPORT_C_INCLUDES :=
+OSLMP_LOCAL_LDLIBS :=
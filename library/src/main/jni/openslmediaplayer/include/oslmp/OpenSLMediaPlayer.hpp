@@ -44,6 +44,7 @@
 #define OSLMP_MEDIA_INFO_METADATA_UPDATE 802
 #define OSLMP_MEDIA_INFO_UNSUPPORTED_SUBTITLE 901
 #define OSLMP_MEDIA_INFO_SUBTITLE_TIMED_OUT 902
+#define OSLMP_MEDIA_INFO_PLAYLIST_TRACK_CHANGED 10001 // extra: number of remaining playlist items
 
 #define OSLMP_STREAM_VOICE 0x00000000
 #define OSLMP_STREAM_SYSTEM 0x00000001
@@ -52,6 +53,31 @@
 #define OSLMP_STREAM_ALARM 0x00000004
 #define OSLMP_STREAM_NOTIFICATION 0x00000005
 
+#define OSLMP_COMMAND_PREPARE_ASYNC 1
+#define OSLMP_COMMAND_START 2
+#define OSLMP_COMMAND_STOP 3
+#define OSLMP_COMMAND_PAUSE 4
+#define OSLMP_COMMAND_SEEK_TO 5
+#define OSLMP_COMMAND_SET_VOLUME 6
+#define OSLMP_COMMAND_SET_LOOPING 7
+#define OSLMP_COMMAND_SET_AUX_EFFECT_SEND_LEVEL 8
+#define OSLMP_COMMAND_GET_CURRENT_POSITION 9
+#define OSLMP_COMMAND_GET_DURATION 10
+#define OSLMP_COMMAND_IS_PLAYING 11
+#define OSLMP_COMMAND_IS_LOOPING 12
+
+#define OSLMP_FADE_CURVE_DEFAULT 0 // context's short/long fade
+#define OSLMP_FADE_CURVE_RAISED_COSINE 1
+#define OSLMP_FADE_CURVE_LINEAR 2
+#define OSLMP_FADE_CURVE_EQUAL_POWER 3
+#define OSLMP_FADE_CURVE_LOGARITHMIC 4
+#define OSLMP_FADE_CURVE_S_CURVE 5
+
+#define OSLMP_STATUS_FLAG_PLAYING (1 << 0)
+#define OSLMP_STATUS_FLAG_LOOPING (1 << 1)
+#define OSLMP_STATUS_FLAG_DURATION_AVAILABLE (1 << 2)
+#define OSLMP_STATUS_FLAG_POSITION_AVAILABLE (1 << 3)
+
 namespace oslmp {
 
 class OpenSLMediaPlayer : public virtual android::RefBase {
@@ -63,6 +89,7 @@ public:
     class OnInfoListener;
     class OnErrorListener;
     class InternalThreadEventListener;
+    class OnCommandCompletionListener;
 
     struct initialize_args_t {
         bool use_fade;
@@ -70,6 +97,37 @@ public:
         initialize_args_t() OSLMP_API_ABI : use_fade(true) {}
     };
 
+    // NOTE:
+    // iarg is used by SEEK_TO (msec) and SET_LOOPING (0/1),
+    // farg[] is used by SET_VOLUME (left, right) and SET_AUX_EFFECT_SEND_LEVEL (level)
+    struct command_t {
+        int32_t what; // OSLMP_COMMAND_xxx
+        int32_t iarg;
+        float farg[2];
+    };
+
+    struct command_result_t {
+        int32_t result; // OSLMP_RESULT_xxx
+        int32_t value;  // return value of GET_xxx / IS_xxx commands
+    };
+
+    // NOTE:
+    // Updated by the internal thread, protected by a seqlock
+    // (sequence is odd while updating). The memory layout is shared
+    // with OpenSLMediaPlayer.java, so don't change without updating it.
+    struct status_block_t {
+        uint32_t sequence;         // +0
+        int32_t player_state;      // +4
+        uint32_t flags;            // +8  OSLMP_STATUS_FLAG_xxx
+        int32_t duration;          // +12 [ms]
+        int32_t position;          // +16 [ms]
+        int32_t buffered_position; // +20 [ms]
+        int32_t sampling_rate;     // +24 [Hz]
+        int32_t reserved;          // +28
+        int64_t position_frames;   // +32
+        int64_t timestamp;         // +40 time when position was sampled (CLOCK_MONOTONIC) [ns]
+    };
+
 public:
     OpenSLMediaPlayer(const android::sp<OpenSLMediaPlayerContext> &context) OSLMP_API_ABI;
     virtual ~OpenSLMediaPlayer() OSLMP_API_ABI;
@@ -80,6 +138,16 @@ public:
     int setDataSourceUri(const char *uri) noexcept OSLMP_API_ABI;
     int setDataSourceFd(int fd) noexcept OSLMP_API_ABI;
     int setDataSourceFd(int fd, int64_t offset, int64_t length) noexcept OSLMP_API_ABI;
+
+    // The playlist items are played gaplessly after the current data source,
+    // OnInfoListener is called with OSLMP_MEDIA_INFO_PLAYLIST_TRACK_CHANGED on each transition.
+    // (the items which failed to prepare are skipped)
+    int addPlaylistItemPath(const char *path) noexcept OSLMP_API_ABI;
+    int addPlaylistItemUri(const char *uri) noexcept OSLMP_API_ABI;
+    int addPlaylistItemFd(int fd) noexcept OSLMP_API_ABI;
+    int addPlaylistItemFd(int fd, int64_t offset, int64_t length) noexcept OSLMP_API_ABI;
+    int clearPlaylist() noexcept OSLMP_API_ABI;
+
     int prepare() noexcept OSLMP_API_ABI;
     int prepareAsync() noexcept OSLMP_API_ABI;
     int start() noexcept OSLMP_API_ABI;
@@ -102,6 +170,29 @@ public:
 
     int setNextMediaPlayer(const android::sp<OpenSLMediaPlayer> *next) noexcept OSLMP_API_ABI;
 
+    // Applied to the following start/pause/stop/seek transitions,
+    // (curve = OSLMP_FADE_CURVE_DEFAULT restores the context's short/long fade)
+    int setFadeCurve(int curve, int32_t fadeInMs, int32_t fadeOutMs) noexcept OSLMP_API_ABI;
+
+    // Loop region used while looping, [startMsec, endMsec) (endMsec = -1: end of data)
+    int setLoopPoints(int32_t startMsec, int32_t endMsec) noexcept OSLMP_API_ABI;
+
+    // Equalizer applied to this player's output before mixing
+    // (10 bands, levels in millibels as OpenSLMediaPlayerHQEqualizer; no cost while disabled)
+    int setInsertEqualizerEnabled(bool enabled) noexcept OSLMP_API_ABI;
+    int setInsertEqualizerBandLevels(const int16_t *levels, uint16_t numBands) noexcept OSLMP_API_ABI;
+
+    // Non-blocking; all commands are processed in one handler thread wake-up
+    // and the results are notified via OnCommandCompletionListener
+    int postCommands(const command_t *commands, size_t count, int32_t token) noexcept OSLMP_API_ABI;
+
+    // the block has to be kept valid until detached (block = nullptr) or released
+    int setStatusBlock(status_block_t *block) noexcept OSLMP_API_ABI;
+
+    // takes a consistent snapshot of the block (can be called from any thread)
+    // returns OSLMP_RESULT_SUCCESS, or OSLMP_RESULT_ERROR if the block is not written yet or being updated
+    static int sReadStatusBlock(const status_block_t *block, status_block_t *snapshot) noexcept OSLMP_API_ABI;
+
     int setOnCompletionListener(OnCompletionListener *listener) noexcept OSLMP_API_ABI;
     int setOnPreparedListener(OnPreparedListener *listener) noexcept OSLMP_API_ABI;
     int setOnSeekCompleteListener(OnSeekCompleteListener *listener) noexcept OSLMP_API_ABI;
@@ -110,6 +201,7 @@ public:
     int setOnErrorListener(OnErrorListener *listener) noexcept OSLMP_API_ABI;
 
     int setInternalThreadEventListener(InternalThreadEventListener *listener) noexcept OSLMP_API_ABI;
+    int setOnCommandCompletionListener(OnCommandCompletionListener *listener) noexcept OSLMP_API_ABI;
 
 private:
     // inhibit copy operations
@@ -164,6 +256,13 @@ public:
     virtual void onLeaveInternalThread(OpenSLMediaPlayer *mp) noexcept OSLMP_API_ABI = 0;
 };
 
+class OpenSLMediaPlayer::OnCommandCompletionListener : public virtual android::RefBase {
+public:
+    virtual ~OnCommandCompletionListener() OSLMP_API_ABI {}
+    virtual void onCommandCompletion(OpenSLMediaPlayer *mp, int32_t token, const command_result_t *results,
+                                     size_t count) noexcept OSLMP_API_ABI = 0;
+};
+
 } // namespace oslmp
 
 #endif // OPENSLMEDIAPLAYER_HPP_
@@ -46,6 +46,26 @@
 // Sink backend implementation type specifier
 #define OSLMP_CONTEXT_SINK_BACKEND_TYPE_OPENSL      0
 #define OSLMP_CONTEXT_SINK_BACKEND_TYPE_AUDIO_TRACK 1
+#define OSLMP_CONTEXT_SINK_BACKEND_TYPE_NULL        2
+
+// Sink buffering mode specifier
+#define OSLMP_CONTEXT_SINK_BUFFERING_MODE_FIXED    0
+#define OSLMP_CONTEXT_SINK_BUFFERING_MODE_ADAPTIVE 1
+
+// valid range of the adaptive sink buffering parameters
+#define OSLMP_CONTEXT_ADAPTIVE_SINK_MIN_BLOCKS 2
+#define OSLMP_CONTEXT_ADAPTIVE_SINK_MAX_BLOCKS 32
+
+// Decoder backend implementation type specifier
+#define OSLMP_CONTEXT_DECODER_BACKEND_TYPE_OPENSL     0
+#define OSLMP_CONTEXT_DECODER_BACKEND_TYPE_MEDIACODEC 1 // (falls back to OpenSL if not available)
+
+// source worker thread count specifier
+#define OSLMP_CONTEXT_SOURCE_WORKER_THREAD_COUNT_DISABLED 0
+#define OSLMP_CONTEXT_SOURCE_WORKER_THREAD_COUNT_AUTO 0xffffffffU // (determined by the number of CPU cores)
+
+// number of bins of the queue depth histograms (see engine_statistics_t)
+#define OSLMP_CONTEXT_STATISTICS_NUM_HISTOGRAM_BINS 8
 
 //
 // forward declarations
@@ -64,6 +84,11 @@ class OpenSLMediaPlayerContext : public virtual android::RefBase {
 public:
     class InternalThreadEventListener;
 
+    // called from the sink thread for each rendered block
+    // (data: interleaved samples, int16_t if is_float == false, otherwise float)
+    typedef void (*offline_render_output_callback_t)(const void *data, uint32_t num_channels, uint32_t num_frames,
+                                                     bool is_float, void *args);
+
     struct create_args_t {
         uint32_t system_out_sampling_rate;     // [millihertz]
         uint32_t system_out_frames_per_buffer; // [frames]
@@ -78,6 +103,18 @@ public:
         uint32_t sink_backend_type;
         bool use_low_latency_if_available;
         bool use_floating_point_if_available;
+        uint32_t sink_buffering_mode;
+        uint32_t adaptive_sink_min_blocks;         // (only used in adaptive buffering mode, >= 2)
+        uint32_t adaptive_sink_max_blocks;         // (only used in adaptive buffering mode, min. - 32)
+        uint32_t adaptive_sink_shrink_interval_ms; // (only used in adaptive buffering mode, > 0)
+        uint32_t decoded_clip_cache_size;          // [bytes] (0: disabled)
+        uint32_t decoded_clip_max_duration_ms;     // longer clips are not cached
+        const char *seek_index_cache_dir;          // (nullptr: disabled)
+        uint32_t seek_index_cache_max_size;        // [bytes] (the least recently used index files are deleted)
+        uint32_t loop_buffer_max_duration_ms;      // longer loop regions are not buffered (0: disabled)
+        uint32_t decoder_backend_type;
+        uint32_t source_worker_thread_count;       // (0: the decoder callbacks convert & resample the data)
+        uint32_t mixer_max_sources;                // [1, 128] (number of the sources which can be mixed at once)
         InternalThreadEventListener *listener;
 
         create_args_t() OSLMP_API_ABI : system_out_sampling_rate(44100000),
@@ -93,11 +130,39 @@ public:
                                         hq_equalizer_impl_type(OSLMP_CONTEXT_HQ_EQUALIZER_IMPL_BASIC_PEAKING_FILTER),
                                         sink_backend_type(OSLMP_CONTEXT_SINK_BACKEND_TYPE_OPENSL),
                                         use_low_latency_if_available(false),
-                                        use_floating_point_if_available(true)
+                                        use_floating_point_if_available(true),
+                                        sink_buffering_mode(OSLMP_CONTEXT_SINK_BUFFERING_MODE_FIXED),
+                                        adaptive_sink_min_blocks(2),
+                                        adaptive_sink_max_blocks(16),
+                                        adaptive_sink_shrink_interval_ms(5000),
+                                        decoded_clip_cache_size(0),
+                                        decoded_clip_max_duration_ms(5000),
+                                        seek_index_cache_dir(nullptr),
+                                        seek_index_cache_max_size(4 * 1024 * 1024),
+                                        loop_buffer_max_duration_ms(0),
+                                        decoder_backend_type(OSLMP_CONTEXT_DECODER_BACKEND_TYPE_OPENSL),
+                                        source_worker_thread_count(OSLMP_CONTEXT_SOURCE_WORKER_THREAD_COUNT_DISABLED),
+                                        mixer_max_sources(16)
         {
         }
     };
 
+    struct engine_statistics_t {
+        uint32_t sink_underrun_count;         // number of times the sink ran out of mixed audio data
+        uint32_t sink_silent_block_count;     // number of silent blocks played by the sink
+        uint32_t mixer_block_count;           // number of blocks mixed
+        uint32_t mixer_late_block_count;      // number of blocks mixed after the sink ran out of mixed audio data
+        uint64_t mixer_cpu_time_ns;           // total mixer thread CPU time spent to mix blocks
+        uint32_t mixer_max_block_cpu_time_ns; // max. mixer thread CPU time spent to mix a block
+        uint32_t source_starved_block_count;  // number of times a playing source had no decoded data
+        uint64_t decoded_frames;              // total number of decoded frames
+        uint64_t decoder_cpu_time_ns;         // total decoder callback CPU time (incl. resampling)
+        // queue depth histograms, bin[i] counts the depth in
+        // [i * capacity / NUM_BINS, (i + 1) * capacity / NUM_BINS)
+        uint32_t sink_queue_depth_histogram[OSLMP_CONTEXT_STATISTICS_NUM_HISTOGRAM_BINS];
+        uint32_t source_queue_depth_histogram[OSLMP_CONTEXT_STATISTICS_NUM_HISTOGRAM_BINS];
+    };
+
 public:
     virtual ~OpenSLMediaPlayerContext() OSLMP_API_ABI;
 
@@ -107,6 +172,25 @@ public:
 
     int32_t getAudioSessionId() const noexcept OSLMP_API_ABI;
 
+    // Installs/uninstalls the optional module at runtime
+    // (supported options: OSLMP_CONTEXT_OPTION_USE_HQ_EQUALIZER, OSLMP_CONTEXT_OPTION_USE_PREAMP)
+    int installModule(uint32_t option) noexcept OSLMP_API_ABI;
+    int uninstallModule(uint32_t option) noexcept OSLMP_API_ABI;
+
+    int getEngineStatistics(engine_statistics_t *stats) const noexcept OSLMP_API_ABI;
+    int resetEngineStatistics() noexcept OSLMP_API_ABI;
+
+    // Discards all decoded clips in the cache
+    int clearDecodedClipCache() noexcept OSLMP_API_ABI;
+
+    // Sets the callback which receives the rendered output
+    // (only supported when sink_backend_type is OSLMP_CONTEXT_SINK_BACKEND_TYPE_NULL,
+    //  no more callbacks occur after setting nullptr)
+    int setOfflineRenderOutputCallback(offline_render_output_callback_t callback, void *args) noexcept OSLMP_API_ABI;
+
+    // Gets whether the mixed output (and the offline render output) is 32 bit float
+    int isFloatingPointOutput(bool *is_float) const noexcept OSLMP_API_ABI;
+
 private:
     class Impl;
     OpenSLMediaPlayerContext(Impl *impl);
@@ -102,6 +102,12 @@ public:
                                       int32_t type) noexcept OSLMP_API_ABI = 0;
     virtual void onUnlockCaptureBuffer(OpenSLMediaPlayerHQVisualizer *visualizer, int32_t type,
                                        void *buffer) noexcept OSLMP_API_ABI = 0;
+
+    // NOTE:
+    // Called before the capture callbacks with the CLOCK_MONOTONIC time in nanoseconds when the mixer wrote
+    // the last frame of the captured data (0: unknown)
+    virtual void onUpdateCapturedTime(OpenSLMediaPlayerHQVisualizer *visualizer,
+                                      int64_t capturedTimeNs) noexcept OSLMP_API_ABI {}
 };
 
 } // namespace oslmp
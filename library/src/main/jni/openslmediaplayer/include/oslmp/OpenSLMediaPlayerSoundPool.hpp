@@ -0,0 +1,64 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef OPENSLMEDIAPLAYERSOUNDPOOL_HPP_
+#define OPENSLMEDIAPLAYERSOUNDPOOL_HPP_
+
+#include <oslmp/OpenSLMediaPlayerAPICommon.hpp>
+
+namespace oslmp {
+
+class OpenSLMediaPlayerContext;
+
+//
+// OpenSLMediaPlayerSoundPool
+//
+// Low latency sample playback (similar to the android.media.SoundPool).
+// The samples are decoded into the native memory by load(),
+// and the voices are mixed by the mixer of the context directly.
+//
+class OpenSLMediaPlayerSoundPool : public virtual android::RefBase {
+public:
+    enum { MAX_VOICES = 32, };
+
+    OpenSLMediaPlayerSoundPool(const android::sp<OpenSLMediaPlayerContext> &context, int max_voices) OSLMP_API_ABI;
+    virtual ~OpenSLMediaPlayerSoundPool() OSLMP_API_ABI;
+
+    int release() noexcept OSLMP_API_ABI;
+
+    // NOTE: load() decodes the whole data synchronously
+    int load(const char *path_uri, int *sample_id) noexcept OSLMP_API_ABI;
+    int load(int fd, int64_t offset, int64_t length, int *sample_id) noexcept OSLMP_API_ABI;
+    int unload(int sample_id) noexcept OSLMP_API_ABI;
+
+    int play(int sample_id, float left_volume, float right_volume, int priority, int loop, float rate,
+             int *voice_id) noexcept OSLMP_API_ABI;
+    int pause(int voice_id) noexcept OSLMP_API_ABI;
+    int resume(int voice_id) noexcept OSLMP_API_ABI;
+    int stop(int voice_id) noexcept OSLMP_API_ABI;
+    int setVolume(int voice_id, float left_volume, float right_volume) noexcept OSLMP_API_ABI;
+    int setPriority(int voice_id, int priority) noexcept OSLMP_API_ABI;
+    int setLoop(int voice_id, int loop) noexcept OSLMP_API_ABI;
+    int setRate(int voice_id, float rate) noexcept OSLMP_API_ABI;
+
+private:
+    class Impl;
+    Impl *impl_; // NOTE: do not use unique_ptr to avoid cxxporthelper dependencies
+};
+
+} // namespace oslmp
+
+#endif // OPENSLMEDIAPLAYERSOUNDPOOL_HPP_
@@ -0,0 +1,137 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIOCLIPCACHE_HPP_
+#define AUDIOCLIPCACHE_HPP_
+
+#include <string>
+#include <list>
+#include <map>
+#include <vector>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/memory>
+
+#include <utils/RefBase.h>
+
+#include "oslmp/impl/OpenSLMediaPlayerMetadata.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioClip
+//
+// Decoded and resampled audio data, stored as a sequence of the
+// AudioSourceDataPipe blocks (interleaved stereo float).
+// The storage grows in chunks of NUM_BLOCKS_PER_CHUNK blocks while
+// recording, so the memory is not reserved for the whole (estimated)
+// duration in advance and the appended blocks are never moved.
+//
+class AudioClip : public virtual android::RefBase {
+public:
+    enum { NUM_BLOCKS_PER_CHUNK = 16 };
+
+    AudioClip();
+    virtual ~AudioClip();
+
+    // NOTE: max_num_blocks is the upper limit, the memory is allocated by appendBlock()
+    int allocate(uint32_t num_channels, uint32_t block_size_in_frames, uint32_t max_num_blocks) noexcept;
+
+    // NOTE: returns false if no more room (or failed to allocate memory)
+    bool appendBlock(const float *block) noexcept;
+
+    const float *getBlock(uint32_t index) const noexcept;
+    uint32_t getNumBlocks() const noexcept;
+    uint32_t getBlockSizeInFrames() const noexcept;
+    uint32_t getNumChannels() const noexcept;
+    size_t getSizeInBytes() const noexcept;
+    size_t getAllocatedSizeInBytes() const noexcept;
+
+    void setMetadata(const OpenSLMediaPlayerMetadata &metadata) noexcept;
+    const OpenSLMediaPlayerMetadata &getMetadata() const noexcept;
+
+private:
+    size_t getBlockSizeInSamples() const noexcept;
+
+private:
+    std::vector<std::unique_ptr<float[]>> chunks_;
+    uint32_t num_channels_;
+    uint32_t block_size_in_frames_;
+    uint32_t max_num_blocks_;
+    uint32_t num_blocks_;
+    OpenSLMediaPlayerMetadata metadata_;
+};
+
+//
+// AudioClipCache
+//
+// LRU cache of AudioClip objects keyed by the data source identity
+// (see OpenSLMediaPlayerInternalUtils::sMakeFileIdentityKey()).
+// The cached clips are shared by all AudioSource instances of the
+// context, so that short and frequently replayed sounds are decoded once.
+//
+class AudioClipCache {
+public:
+    struct initialize_args_t {
+        size_t capacity_in_bytes;      // 0: disabled
+        size_t max_clip_size_in_bytes; // clips larger than this size are not cached
+
+        initialize_args_t() : capacity_in_bytes(0), max_clip_size_in_bytes(0) {}
+    };
+
+    AudioClipCache();
+    ~AudioClipCache();
+
+    int initialize(const initialize_args_t &args) noexcept;
+
+    bool isEnabled() const noexcept;
+    size_t getMaxClipSizeInBytes() const noexcept;
+
+    bool lookup(const std::string &key, android::sp<AudioClip> &clip) noexcept;
+    int insert(const std::string &key, const android::sp<AudioClip> &clip) noexcept;
+    void clear() noexcept;
+
+    size_t getNumEntries() const noexcept;
+    size_t getTotalSizeInBytes() const noexcept;
+
+private:
+    struct entry_t {
+        std::string key;
+        android::sp<AudioClip> clip;
+        size_t size;
+    };
+
+    typedef std::list<entry_t> entry_list_t;
+    typedef std::map<std::string, entry_list_t::iterator> entry_index_t;
+
+    void evict(size_t required_size) noexcept;
+    void erase(entry_list_t::iterator it) noexcept;
+
+private:
+    mutable utils::pt_mutex mutex_;
+    entry_list_t entries_; // front: most recently used
+    entry_index_t index_;  // key -> entries_ item
+    size_t capacity_in_bytes_;
+    size_t max_clip_size_in_bytes_;
+    size_t total_size_in_bytes_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIOCLIPCACHE_HPP_
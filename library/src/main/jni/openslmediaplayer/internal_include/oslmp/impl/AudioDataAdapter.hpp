@@ -24,6 +24,8 @@
 namespace oslmp {
 namespace impl {
 
+class PolyphaseResamplerCoeffBankCache;
+
 class AudioDataAdapter {
 public:
     enum resampler_quality_spec_t {
@@ -43,9 +45,12 @@ public:
 
         resampler_quality_spec_t resampler_quality_spec;
 
+        // (optional) shared coefficient banks of the polyphase resampler
+        PolyphaseResamplerCoeffBankCache *resampler_coeff_bank_cache;
+
         initialize_args_t()
             : in_num_channels(0), in_sampling_rate(0), in_block_size(0), out_num_channels(0), out_sampling_rate(0),
-              out_block_size(0), resampler_quality_spec(RESAMPLER_QUALITY_MIDDLE)
+              out_block_size(0), resampler_quality_spec(RESAMPLER_QUALITY_MIDDLE), resampler_coeff_bank_cache(nullptr)
         {
         }
     };
@@ -62,6 +67,9 @@ public:
 
     bool flush() noexcept;
 
+    // discards the pooled data and the resampler state
+    bool reset() noexcept;
+
 private:
     class Impl;
     std::unique_ptr<Impl> impl_;
@@ -29,16 +29,22 @@ namespace impl {
 
 class AudioDataPipeManager {
 public:
+    enum {
+        NUM_MAX_SOURCE_PIPES = 128,
+        NUM_DEFAULT_SOURCE_PIPES = 16,
+    };
+
     struct initialize_args_t {
         sample_format_type sink_format_type;
+        uint32_t source_num_pipes; // [1, NUM_MAX_SOURCE_PIPES]
         uint32_t source_num_items;
         uint32_t sink_num_items;
         uint32_t capture_num_items;
         uint32_t block_size;
 
         initialize_args_t()
-            : sink_format_type(kAudioSampleFormatType_Unknown), source_num_items(0), sink_num_items(0),
-              capture_num_items(0), block_size(0)
+            : sink_format_type(kAudioSampleFormatType_Unknown), source_num_pipes(NUM_DEFAULT_SOURCE_PIPES),
+              source_num_items(0), sink_num_items(0), capture_num_items(0), block_size(0)
         {
         }
     };
@@ -0,0 +1,102 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIODECODERBACKEND_HPP_
+#define AUDIODECODERBACKEND_HPP_
+
+#include <cxxporthelper/cstdint>
+
+//
+// forward declarations
+//
+namespace oslmp {
+namespace impl {
+class OpenSLMediaPlayerInternalContext;
+struct OpenSLMediaPlayerMetadata;
+} // namespace impl
+} // namespace oslmp
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioDecoderBackend
+//
+// Decodes a data source into 16 bit little endian PCM blocks of a fixed size.
+// The backend owns the decoding thread (the OpenSL ES internal thread or its own one)
+// and delivers the decoded blocks to the EventListener.
+//
+class AudioDecoderBackend {
+public:
+    class EventListener {
+    public:
+        virtual ~EventListener() {}
+
+        // NOTE: called from the decoding thread, it may block to throttle the decoder.
+        //       return false to stop delivering (the following output is discarded).
+        //       seek_serial is the one of the last onSeekTo() call handled before the data is decoded.
+        virtual bool onDecoderOutputData(const int16_t *data, uint32_t num_channels, uint32_t num_frames,
+                                         uint32_t seek_serial) noexcept = 0;
+
+        // NOTE: called from the decoding thread
+        virtual void onDecoderEndOfData(uint32_t seek_serial) noexcept = 0;
+
+        // NOTE: called from the decoding thread instead of onDecoderEndOfData() when the decoding fails,
+        //       nothing is delivered after this call until the next onSeekTo() is handled.
+        virtual void onDecoderError(int result, uint32_t seek_serial) noexcept = 0;
+    };
+
+    struct open_args_t {
+        OpenSLMediaPlayerInternalContext *context;
+        const char *path_uri; // (nullptr: use fd)
+        int fd;
+        int64_t offset; // [bytes]
+        int64_t length; // [bytes] (< 0: until the end of the file)
+        uint32_t block_size_in_frames;
+        EventListener *listener;
+
+        open_args_t()
+            : context(nullptr), path_uri(nullptr), fd(-1), offset(0), length(-1), block_size_in_frames(0),
+              listener(nullptr)
+        {
+        }
+    };
+
+    virtual ~AudioDecoderBackend() {}
+
+    virtual int onOpen(const open_args_t &args) noexcept = 0;
+    virtual void onClose() noexcept = 0;
+
+    // NOTE: the output is not delivered until onStart() is called
+    virtual int onStartPrefetch() noexcept = 0;
+    virtual int onPollPrefetch(int timeout_ms, bool &completed) noexcept = 0;
+
+    virtual int onGetMetadata(OpenSLMediaPlayerMetadata &metadata) noexcept = 0;
+
+    // NOTE: the blocks being delivered when this function is called may contain the data before the seek position,
+    //       the following output is tagged with the seek_serial (the initial serial is 0)
+    virtual int onSeekTo(int32_t msec, uint32_t seek_serial) noexcept = 0;
+
+    // NOTE: these functions do not wait for the decoding thread (onClose() does)
+    virtual int onStart() noexcept = 0;
+    virtual int onPause() noexcept = 0;
+    virtual int onStop() noexcept = 0;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIODECODERBACKEND_HPP_
@@ -0,0 +1,117 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIODECODERMEDIACODECBACKEND_HPP_
+#define AUDIODECODERMEDIACODECBACKEND_HPP_
+
+#include <vector>
+
+#include <pthread.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include "oslmp/impl/AudioDecoderBackend.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+//
+// forward declarations
+//
+struct AMediaExtractor;
+struct AMediaCodec;
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioDecoderMediaCodecBackend
+//
+// NOTE:
+// Decodes the data source with the NDK media API (AMediaExtractor + AMediaCodec)
+// on its own thread. The decoded data is re-blocked into the fixed size blocks.
+// The libmediandk.so is loaded at runtime, because it is only available on
+// Android 5.0 or later (see sIsAvailable()).
+//
+class AudioDecoderMediaCodecBackend : public AudioDecoderBackend {
+public:
+    AudioDecoderMediaCodecBackend();
+    virtual ~AudioDecoderMediaCodecBackend() override;
+
+    static bool sIsAvailable() noexcept;
+
+    virtual int onOpen(const open_args_t &args) noexcept override;
+    virtual void onClose() noexcept override;
+    virtual int onStartPrefetch() noexcept override;
+    virtual int onPollPrefetch(int timeout_ms, bool &completed) noexcept override;
+    virtual int onGetMetadata(OpenSLMediaPlayerMetadata &metadata) noexcept override;
+    virtual int onSeekTo(int32_t msec, uint32_t seek_serial) noexcept override;
+    virtual int onStart() noexcept override;
+    virtual int onPause() noexcept override;
+    virtual int onStop() noexcept override;
+
+private:
+    enum prefetch_state_t { PREFETCH_NONE, PREFETCH_RUNNING, PREFETCH_COMPLETED, PREFETCH_ERROR, };
+    enum { DEQUEUE_TIMEOUT_US = 10000, };
+
+    int startDecoderThread() noexcept;
+    void stopDecoderThread() noexcept;
+
+    static void *decoderThreadEntryFunc(void *args) noexcept;
+    void decoderThreadProcess() noexcept;
+
+    bool feedInput(bool &input_eos) noexcept;
+    bool drainOutput(bool &end_of_stream, int &error) noexcept;
+    bool updateOutputFormat() noexcept;
+    bool appendOutputData(const int16_t *data, uint32_t num_frames, int64_t pts_us) noexcept;
+    bool deliverBlocks(bool end_of_stream) noexcept;
+    bool deliverError(int error) noexcept;
+    void setPrefetchState(prefetch_state_t state) noexcept;
+
+private:
+    EventListener *listener_;
+    uint32_t block_size_in_frames_;
+
+    AMediaExtractor *extractor_;
+    AMediaCodec *codec_;
+    bool codec_started_;
+
+    int64_t duration_us_;     // (-1: unknown)
+    uint32_t sampling_rate_;  // [Hz] (decoder thread only, until the prefetch completes)
+    uint32_t num_channels_;   // (decoder thread only, until the prefetch completes)
+
+    pthread_t pt_handle_;
+    utils::pt_mutex mutex_;
+    utils::pt_condition_variable cv_;
+    std::atomic<bool> stop_request_;
+    std::atomic<bool> seek_requested_;
+    bool running_;             // guarded by mutex_
+    int64_t seek_position_us_; // guarded by mutex_
+    uint32_t seek_serial_;     // guarded by mutex_
+    prefetch_state_t prefetch_state_; // guarded by mutex_
+
+    // (decoder thread only)
+    std::vector<int16_t> pcm_buffer_;
+    uint32_t pcm_read_pos_;   // [frames]
+    uint32_t pcm_num_frames_; // [frames]
+    int64_t skip_until_us_;
+    bool delivery_stopped_;
+    uint32_t output_serial_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIODECODERMEDIACODECBACKEND_HPP_
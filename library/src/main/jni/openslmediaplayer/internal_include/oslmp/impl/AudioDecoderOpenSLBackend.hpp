@@ -0,0 +1,94 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIODECODEROPENSLBACKEND_HPP_
+#define AUDIODECODEROPENSLBACKEND_HPP_
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+#include <cxxporthelper/aligned_memory.hpp>
+
+#include <SLESCXX/OpenSLES_CXX.hpp>
+
+#include "oslmp/impl/AudioDecoderBackend.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioDecoderOpenSLBackend
+//
+// NOTE:
+// Decodes the data source with the OpenSL ES audio player object
+// (Android simple buffer queue sink). The output blocks are delivered
+// from the OpenSL ES internal thread.
+//
+class AudioDecoderOpenSLBackend : public AudioDecoderBackend {
+public:
+    AudioDecoderOpenSLBackend();
+    virtual ~AudioDecoderOpenSLBackend() override;
+
+    virtual int onOpen(const open_args_t &args) noexcept override;
+    virtual void onClose() noexcept override;
+    virtual int onStartPrefetch() noexcept override;
+    virtual int onPollPrefetch(int timeout_ms, bool &completed) noexcept override;
+    virtual int onGetMetadata(OpenSLMediaPlayerMetadata &metadata) noexcept override;
+    virtual int onSeekTo(int32_t msec, uint32_t seek_serial) noexcept override;
+    virtual int onStart() noexcept override;
+    virtual int onPause() noexcept override;
+    virtual int onStop() noexcept override;
+
+private:
+    enum { NUM_BLOCKS = 2, MAX_NUM_CHANNELS = 2, };
+
+    int makeDecoder(const open_args_t &args) noexcept;
+    int setupCallbacks() noexcept;
+    int enqueueInitialBuffers() noexcept;
+
+    static void prefetchEventCallback(SLPrefetchStatusItf caller, void *pContext, SLuint32 event) noexcept;
+    static void decoderPlayCallbackEntry(SLPlayItf caller, void *pContext, SLuint32 event) noexcept;
+    static void decodeBufferQueueCallbackEntry(SLAndroidSimpleBufferQueueItf caller, void *pContext) noexcept;
+
+    void decoderPlayCallback(SLPlayItf caller, SLuint32 event) noexcept;
+    void decodeBufferQueueCallback(SLAndroidSimpleBufferQueueItf caller) noexcept;
+
+private:
+    EventListener *listener_;
+
+    opensles::CSLObjectItf obj_decoder_;
+    opensles::CSLPlayItf decoder_;
+    opensles::CSLSeekItf seek_;
+    opensles::CSLAndroidSimpleBufferQueueItf buffer_queue_;
+    opensles::CSLPrefetchStatusItf prefetch_status_itf_;
+    opensles::CSLMetadataExtractionItf metadata_extraction_;
+
+    utils::pt_mutex prefetch_callback_mutex_;
+    utils::pt_condition_variable prefetch_callback_cv_;
+    SLuint32 prefetch_status_;
+
+    cxxporthelper::aligned_memory<int16_t> buffer_pool_;
+    uint32_t block_size_in_frames_;
+    uint32_t num_channels_;
+    int queue_index_;
+    bool queue_initialized_;
+    std::atomic<uint32_t> seek_serial_; // updated after SetPosition() returns
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIODECODEROPENSLBACKEND_HPP_
@@ -0,0 +1,119 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIODECODERPCMBACKEND_HPP_
+#define AUDIODECODERPCMBACKEND_HPP_
+
+#include <vector>
+
+#include <pthread.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include "oslmp/impl/AudioDecoderBackend.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioDecoderPcmBackend
+//
+// NOTE:
+// Reads the linear PCM data of a WAV file directly from the memory mapped
+// data chunk (no decoding). The headers are read with pread(), the file is
+// mapped only when it is recognized. 16 bit samples are delivered without copying,
+// the other sample formats (8/24/32 bit integer, 32 bit float) are converted
+// into 16 bit block by block.
+// onOpen() returns OSLMP_RESULT_CONTENT_UNSUPPORTED if the data source is
+// not a supported WAV file, so the caller can fall back to the other backends.
+//
+class AudioDecoderPcmBackend : public AudioDecoderBackend {
+public:
+    AudioDecoderPcmBackend();
+    virtual ~AudioDecoderPcmBackend() override;
+
+    virtual int onOpen(const open_args_t &args) noexcept override;
+    virtual void onClose() noexcept override;
+    virtual int onStartPrefetch() noexcept override;
+    virtual int onPollPrefetch(int timeout_ms, bool &completed) noexcept override;
+    virtual int onGetMetadata(OpenSLMediaPlayerMetadata &metadata) noexcept override;
+    virtual int onSeekTo(int32_t msec, uint32_t seek_serial) noexcept override;
+    virtual int onStart() noexcept override;
+    virtual int onPause() noexcept override;
+    virtual int onStop() noexcept override;
+
+    enum sample_format_t { SAMPLE_FORMAT_U8, SAMPLE_FORMAT_S16, SAMPLE_FORMAT_S24, SAMPLE_FORMAT_S32, SAMPLE_FORMAT_F32, };
+
+    struct wav_format_t {
+        sample_format_t sample_format;
+        uint32_t num_channels;
+        uint32_t sampling_rate; // [Hz]
+        uint32_t frame_size;    // [bytes]
+        uint64_t data_offset;   // [bytes] (from the beginning of the WAV file)
+        uint32_t num_frames;
+
+        wav_format_t()
+            : sample_format(SAMPLE_FORMAT_S16), num_channels(0), sampling_rate(0), frame_size(0), data_offset(0),
+              num_frames(0)
+        {
+        }
+    };
+
+    // NOTE: reads the headers of the WAV file [offset, offset + length) with pread(),
+    //       public for the host tests
+    static bool sParseWavFile(int fd, int64_t offset, int64_t length, wav_format_t &format) noexcept;
+
+private:
+    static bool sReadFully(int fd, int64_t offset, uint8_t *buffer, size_t size) noexcept;
+
+    int startDeliveryThread() noexcept;
+    void stopDeliveryThread() noexcept;
+
+    static void *deliveryThreadEntryFunc(void *args) noexcept;
+    void deliveryThreadProcess() noexcept;
+
+    const int16_t *getBlock(uint32_t position, uint32_t num_frames) noexcept;
+
+private:
+    EventListener *listener_;
+    uint32_t block_size_in_frames_;
+
+    void *map_addr_;
+    size_t map_length_;
+    const uint8_t *data_;
+    wav_format_t format_;
+
+    pthread_t pt_handle_;
+    utils::pt_mutex mutex_;
+    utils::pt_condition_variable cv_;
+    std::atomic<bool> stop_request_;
+    std::atomic<bool> seek_requested_;
+    bool running_;              // guarded by mutex_
+    uint32_t seek_position_;    // [frames] guarded by mutex_
+    uint32_t seek_serial_;      // guarded by mutex_
+
+    // (delivery thread only)
+    std::vector<int16_t> block_buffer_;
+    uint32_t read_position_;    // [frames]
+    uint32_t output_serial_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIODECODERPCMBACKEND_HPP_
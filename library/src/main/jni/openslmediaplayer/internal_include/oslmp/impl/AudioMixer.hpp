@@ -34,6 +34,8 @@ class AudioSinkDataPipe;
 class AudioCaptureDataPipe;
 class StereoVolumeDataPipe;
 class MixedOutputAudioEffect;
+class EngineStatistics;
+class AudioVoicePool;
 } // namespace impl
 } // namespace oslmp
 
@@ -81,9 +83,12 @@ public:
     } source_client_handle_t;
 
     enum {
-        NUM_MAX_SOURCE_CLIENTS = 4,
-        NUM_MAX_SOURCE_PIPES = (NUM_MAX_SOURCE_CLIENTS * 4),
+        NUM_MAX_SOURCE_CLIENTS = 32, // <= 32 (the per client states are held in 32 bit bitmaps)
+        NUM_MAX_SOURCE_PIPES = 128,  // (== AudioDataPipeManager::NUM_MAX_SOURCE_PIPES)
+        NUM_DEFAULT_SOURCE_PIPES = 16,
         NUM_MAX_MIXOOUT_EFFECTS = 4,
+        NUM_MAX_VOICE_POOLS = 4,
+        NUM_MAX_INSERT_EFFECTS = 4, // (per source client)
     };
 
     enum mixing_mode_t {
@@ -93,6 +98,8 @@ public:
         MIX_MODE_SHORT_FADE_OUT = MixingUnit::MODE_SHORT_FADE_OUT,
         MIX_MODE_LONG_FADE_IN = MixingUnit::MODE_LONG_FADE_IN,
         MIX_MODE_LONG_FADE_OUT = MixingUnit::MODE_LONG_FADE_OUT,
+        MIX_MODE_PROFILE_FADE_IN = MixingUnit::MODE_PROFILE_FADE_IN,
+        MIX_MODE_PROFILE_FADE_OUT = MixingUnit::MODE_PROFILE_FADE_OUT,
     };
 
     enum trigger_mode_t { TRIGGER_NONE, TRIGGER_ON_END_OF_DATA, };
@@ -118,12 +125,17 @@ public:
         uint32_t short_fade_duration_ms;
         uint32_t long_fade_duration_ms;
         uint32_t num_sink_player_blocks;
+        uint32_t num_source_pipes; // [1, NUM_MAX_SOURCE_PIPES]
+        EngineStatistics *statistics;
+        bool offline_mode; // mix only when all the started sources have data
 
         MixedOutputAudioEffect *mixout_effects[NUM_MAX_MIXOOUT_EFFECTS];
 
         initialize_args_t()
             : context(nullptr), pipe_manager(nullptr), sink_pipe(nullptr), capture_pipe(nullptr), sampling_rate(0),
-              short_fade_duration_ms(0), long_fade_duration_ms(0), num_sink_player_blocks(0)
+              short_fade_duration_ms(0), long_fade_duration_ms(0), num_sink_player_blocks(0),
+              num_source_pipes(NUM_DEFAULT_SOURCE_PIPES), statistics(nullptr),
+              offline_mode(false)
         {
 
             for (auto &e : mixout_effects) {
@@ -146,6 +158,7 @@ public:
         mixing_mode_t mix_mode;
         float mix_phase;
         bool mix_phase_override;
+        uint32_t mix_fade_profile; // (only used by MIX_MODE_PROFILE_FADE_IN/OUT)
 
         // trigger (for no looping)
         trigger_mode_t trigger_no_loop_mode;
@@ -162,8 +175,8 @@ public:
 
         attach_update_source_args_t()
             : handle(), operation(OPERATION_NONE), source_no(0), source_pipe(nullptr), mix_mode(MIX_MODE_MUTE),
-              mix_phase(0.0f), mix_phase_override(false), trigger_no_loop_mode(TRIGGER_NONE), trigger_no_loop_target(),
-              trigger_loop_mode(TRIGGER_NONE), trigger_loop_target(), stop_cond(STOP_NONE)
+              mix_phase(0.0f), mix_phase_override(false), mix_fade_profile(0), trigger_no_loop_mode(TRIGGER_NONE),
+              trigger_no_loop_target(), trigger_loop_mode(TRIGGER_NONE), trigger_loop_target(), stop_cond(STOP_NONE)
         {
         }
     };
@@ -216,10 +229,32 @@ public:
     int setVolume(const source_client_handle_t &control_handle, float leftVolume, float rightVolume) noexcept;
     int setLooping(const source_client_handle_t &control_handle, bool looping) noexcept;
 
+    int registerFadeProfile(MixingUnit::fade_curve_t curve, uint32_t duration_ms, uint32_t *profile) noexcept;
+    int unregisterFadeProfile(uint32_t profile) noexcept;
+
     int setAudioCaptureEnabled(bool enabled) noexcept;
 
     int setGlobalPreMixVolumeLevel(float level) noexcept;
 
+    int attachMixOutEffect(MixedOutputAudioEffect *effect) noexcept;
+    int detachMixOutEffect(MixedOutputAudioEffect *effect) noexcept;
+
+    // NOTE:
+    // The voices of the attached pools are rendered and mixed by the mixer thread
+    // together with the source pipes. detachVoicePool() waits until the mixer thread
+    // stops referring the pool. While any pool is attached, the mixer writes only a few
+    // blocks ahead into the sink pipe to keep the trigger latency low.
+    int attachVoicePool(AudioVoicePool *pool) noexcept;
+    int detachVoicePool(AudioVoicePool *pool) noexcept;
+
+    // NOTE:
+    // The source pipes of the client are mixed into the client's own bus (with the
+    // client volume and fades applied) and the insert effects are processed on it
+    // before it is mixed with the others. The bus is skipped while all of the effects
+    // are bypassed. detachInsertEffect() waits until the mixer thread stops referring the effect.
+    int attachInsertEffect(const source_client_handle_t &control_handle, MixedOutputAudioEffect *effect) noexcept;
+    int detachInsertEffect(const source_client_handle_t &control_handle, MixedOutputAudioEffect *effect) noexcept;
+
     int getSinkPullListenerCallback(void (**ppfunc)(void *), void **pargs) noexcept;
 
 private:
@@ -32,6 +32,7 @@ namespace oslmp {
 namespace impl {
 
 class OpenSLMediaPlayerInternalContext;
+class EngineStatistics;
 
 class AudioPipeBufferQueueBinder {
 public:
@@ -42,7 +43,8 @@ public:
     int beforeStart(opensles::CSLAndroidSimpleBufferQueueItf *buffer_queue) noexcept;
     int afterStop(opensles::CSLAndroidSimpleBufferQueueItf *buffer_queue) noexcept;
     int initialize(OpenSLMediaPlayerInternalContext *context, AudioSinkDataPipe *pipe,
-                   opensles::CSLAndroidSimpleBufferQueueItf *buffer_queue, int num_blocks) noexcept;
+                   opensles::CSLAndroidSimpleBufferQueueItf *buffer_queue, int num_blocks,
+                   EngineStatistics *statistics) noexcept;
     void handleCallback(AudioSinkDataPipe *pipe, opensles::CSLAndroidSimpleBufferQueueItf *buffer_queue) noexcept;
 
 private:
@@ -50,6 +52,7 @@ private:
 
 private:
     OpenSLMediaPlayerInternalContext *context_;
+    EngineStatistics *statistics_;
 
     int num_blocks_;
     AudioSinkDataPipe::read_block_t silent_block_;
@@ -20,6 +20,8 @@
 #include <cxxporthelper/memory>
 #include <SLES/OpenSLES.h>
 
+#include <oslmp/OpenSLMediaPlayer.hpp>
+
 //
 // forward declarations
 //
@@ -48,6 +50,8 @@ public:
         virtual void onPrepareCompleted(int prepare_result) noexcept = 0;
         virtual void onSeekCompleted(int seek_result) noexcept = 0;
         virtual void onPlayerStartedAsNextPlayer() noexcept = 0;
+        virtual void onPlaylistTrackChanged(int32_t remaining) noexcept = 0;
+        virtual void onPlaybackError(int error_result) noexcept = 0;
     };
 
     struct initialize_args_t {
@@ -67,6 +71,11 @@ public:
     int setDataSourceFd(int fd) noexcept;
     int setDataSourceFd(int fd, int64_t offset, int64_t length) noexcept;
 
+    int addPlaylistItemPath(const char *path) noexcept;
+    int addPlaylistItemUri(const char *uri) noexcept;
+    int addPlaylistItemFd(int fd, int64_t offset, int64_t length) noexcept;
+    int clearPlaylist() noexcept;
+
     int preparePatialStart() noexcept;
     int preparePatialPoll(bool *completed, bool *need_retry) noexcept;
     void preparePartialCleanup() noexcept;
@@ -83,12 +92,19 @@ public:
     int seekTo(int32_t msec) noexcept;
     int setLooping(bool looping) noexcept;
     int isLooping(bool *looping) noexcept;
+    int setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept;
     int setAudioStreamType(int stream_type) noexcept;
     int getAudioStreamType(int *stream_type) const noexcept;
     int setNextMediaPlayer(AudioPlayer *next) noexcept;
     int attachAuxEffect(int effect_id) noexcept;
     int setAuxEffectSendLevel(float level) noexcept;
     int setFadeInOutEnabled(bool enabled) noexcept;
+    int setFadeCurve(int curve, int32_t fade_in_ms, int32_t fade_out_ms) noexcept;
+    int setInsertEqualizerEnabled(bool enabled) noexcept;
+    int setInsertEqualizerBandLevels(const int16_t *levels, uint16_t num_bands) noexcept;
+
+    int setStatusBlock(OpenSLMediaPlayer::status_block_t *block) noexcept;
+    void publishStatus(int32_t player_state, bool playing) noexcept;
 
     bool isPollingRequired() const noexcept;
     void poll() noexcept;
@@ -0,0 +1,97 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIOSAMPLELOADER_HPP_
+#define AUDIOSAMPLELOADER_HPP_
+
+#include <cxxporthelper/memory>
+#include <cxxporthelper/cstdint>
+
+#include <utils/RefBase.h>
+
+#include "oslmp/impl/AudioDecoderBackend.hpp"
+#include "oslmp/impl/AudioClipCache.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+//
+// forward declarations
+//
+namespace oslmp {
+namespace impl {
+class OpenSLMediaPlayerInternalContext;
+class AudioDataAdapter;
+} // namespace impl
+} // namespace oslmp
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioSampleLoader
+//
+// Decodes a whole (short) data source into an AudioClip synchronously.
+// The clip holds interleaved stereo float data at the system output
+// sampling rate, so it can be played by AudioVoicePool without conversion.
+//
+class AudioSampleLoader : public AudioDecoderBackend::EventListener {
+public:
+    struct load_args_t {
+        OpenSLMediaPlayerInternalContext *context;
+        const char *path_uri; // (nullptr: use fd)
+        int fd;
+        int64_t offset; // [bytes]
+        int64_t length; // [bytes] (< 0: until the end of the file)
+        uint32_t max_duration_ms;
+
+        load_args_t() : context(nullptr), path_uri(nullptr), fd(-1), offset(0), length(-1), max_duration_ms(0) {}
+    };
+
+    AudioSampleLoader();
+    virtual ~AudioSampleLoader();
+
+    // NOTE: blocks until the whole data is decoded
+    int load(const load_args_t &args, android::sp<AudioClip> &clip, uint32_t *num_frames) noexcept;
+
+    // implementations of AudioDecoderBackend::EventListener
+    // NOTE: the decoder is never seeked, so the seek serial is always 0
+    virtual bool onDecoderOutputData(const int16_t *data, uint32_t num_channels, uint32_t num_frames,
+                                     uint32_t seek_serial) noexcept override;
+    virtual void onDecoderEndOfData(uint32_t seek_serial) noexcept override;
+    virtual void onDecoderError(int result, uint32_t seek_serial) noexcept override;
+
+private:
+    int makeDecoder(const load_args_t &args, std::unique_ptr<AudioDecoderBackend> &decoder) noexcept;
+    int waitForCompletion() noexcept;
+    void drainOutputData() noexcept;
+
+private:
+    utils::pt_mutex mutex_;
+    utils::pt_condition_variable cond_;
+    std::unique_ptr<AudioDataAdapter> adapter_;
+    android::sp<AudioClip> clip_;
+    std::unique_ptr<float[]> out_block_;
+    uint32_t out_block_size_;
+    uint64_t decoded_input_frames_;
+    uint32_t progress_count_;
+    bool end_of_data_;
+    bool overflowed_;
+    int decoder_error_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIOSAMPLELOADER_HPP_
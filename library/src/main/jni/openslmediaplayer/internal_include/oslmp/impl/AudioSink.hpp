@@ -32,6 +32,7 @@ namespace impl {
 class OpenSLMediaPlayerInternalContext;
 class AudioSinkDataPipe;
 class AudioDataPipeManager;
+class EngineStatistics;
 } // namespace impl
 } // namespace oslmp
 
@@ -45,7 +46,11 @@ namespace impl {
 class AudioSink {
 public:
     enum state_t { SINK_STATE_NOT_INITIALIZED, SINK_STATE_STOPPED, SINK_STATE_STARTED, SINK_STATE_PAUSED, };
-    enum backend_t { BACKEND_OPENSL, BACKEND_AUDIO_TRACK, };
+    enum backend_t { BACKEND_OPENSL, BACKEND_AUDIO_TRACK, BACKEND_NULL, };
+
+    // NOTE: called from the sink thread for each played block (only supported by BACKEND_NULL)
+    typedef void (*block_consumer_func_t)(const void *data, sample_format_type format, uint32_t num_channels,
+                                          uint32_t num_frames, void *args);
 
     struct initialize_args_t {
         OpenSLMediaPlayerInternalContext *context;
@@ -57,11 +62,12 @@ public:
         AudioDataPipeManager *pipe_manager;
         AudioSinkDataPipe *pipe;
         uint32_t num_player_blocks;
+        EngineStatistics *statistics;
 
         initialize_args_t()
             : context(nullptr), backend(BACKEND_OPENSL), 
               sample_format(kAudioSampleFormatType_Unknown), sampling_rate(0), stream_type(0),
-              opts(0), pipe_manager(nullptr), pipe(nullptr), num_player_blocks(0)
+              opts(0), pipe_manager(nullptr), pipe(nullptr), num_player_blocks(0), statistics(nullptr)
         {
         }
     };
@@ -87,6 +93,7 @@ public:
     SLresult getInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept;
 
     int setNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept;
+    int setBlockConsumer(block_consumer_func_t func, void *args) noexcept;
 
     enum {
         NUM_CHANNELS = 2
@@ -102,7 +109,7 @@ private:
 //
 class AudioSinkBackend {
 public:
-    AudioSinkBackend() : pipe_(nullptr) {
+    AudioSinkBackend() : pipe_(nullptr), statistics_(nullptr) {
     }
 
     virtual ~AudioSinkBackend() {}
@@ -122,9 +129,11 @@ public:
     virtual SLresult onGetInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept = 0;
 
     virtual int onSetNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept = 0;
+    virtual int onSetBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept = 0;
 
 protected:
     AudioSinkDataPipe *pipe_;
+    EngineStatistics *statistics_;
 };
 
 } // namespace impl
@@ -53,6 +53,7 @@ public:
     virtual SLresult onGetInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept override;
 
     virtual int onSetNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept override;
+    virtual int onSetBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept override;
 
 private:
     static int32_t audioTrackStreamCallback(void *buffer, sample_format_type format, uint32_t num_channels, uint32_t buffer_size_in_frames, void *args) noexcept;
@@ -63,6 +64,7 @@ private:
     uint32_t num_pipe_blocks_;
     std::unique_ptr<AudioTrackStream> stream_;
     int32_t audio_session_id_;
+    bool waiting_buffering_;
 
     void (*notify_pull_callback_pfunc_)(void *);
     void *notify_pull_callback_args_;
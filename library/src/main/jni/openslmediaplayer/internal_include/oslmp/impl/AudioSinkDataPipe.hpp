@@ -37,6 +37,24 @@ public:
         bool deferred_buffer_alloc;
     };
 
+    // Adaptive buffering policy
+    //
+    // The number of readable (mixed but not yet played) items is limited to
+    // the "write-ahead limit". The limit is raised by one on every underrun
+    // and lowered by one after shrink_interval_blocks blocks are read without
+    // underruns.
+    struct adaptive_buffering_policy_t {
+        bool enabled;
+        uint32_t min_write_ahead_items;
+        uint32_t max_write_ahead_items;
+        uint32_t shrink_interval_blocks;
+
+        adaptive_buffering_policy_t()
+            : enabled(false), min_write_ahead_items(0), max_write_ahead_items(0), shrink_interval_blocks(0)
+        {
+        }
+    };
+
     struct write_block_t {
         sample_format_type sample_format;
         void *dest;
@@ -74,6 +92,11 @@ public:
     bool unlockRead(read_block_t &block) noexcept;
 
     uint32_t getNumberOfBufferItems() const noexcept;
+    uint32_t getNumberOfReadableItems() const noexcept;
+
+    int setAdaptiveBufferingPolicy(const adaptive_buffering_policy_t &policy) noexcept;
+    void notifyUnderrun() noexcept;
+    uint32_t getWriteAheadLimit() const noexcept;
 
 private:
     class Impl;
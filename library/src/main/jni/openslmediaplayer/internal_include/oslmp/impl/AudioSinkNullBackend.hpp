@@ -0,0 +1,94 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIOSINKNULLBACKEND_HPP_
+#define AUDIOSINKNULLBACKEND_HPP_
+
+#include <pthread.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include "oslmp/impl/AudioSink.hpp"
+#include "oslmp/impl/AudioSinkDataPipe.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioSinkNullBackend
+//
+// NOTE:
+// This back-end does not output any sound. It pulls blocks from the sink pipe
+// as fast as possible and advances a virtual clock by the number of consumed
+// frames, so the mixer runs faster than real-time.
+//
+class AudioSinkNullBackend : public AudioSinkBackend {
+public:
+
+    AudioSinkNullBackend();
+    virtual ~AudioSinkNullBackend() override;
+
+    virtual int onInitialize(const AudioSink::initialize_args_t &args, void *pipe_user) noexcept override;
+    virtual int onStart() noexcept override;
+    virtual int onPause() noexcept override;
+    virtual int onResume() noexcept override;
+    virtual int onStop() noexcept override;
+    virtual uint32_t onGetLatencyInFrames() const noexcept override;
+    virtual int32_t onGetAudioSessionId() const noexcept override;
+    virtual int onSelectActiveAuxEffect(int aux_effect_id) noexcept override;
+    virtual int onSetAuxEffectSendLevel(float level) noexcept override;
+    virtual int onSetAuxEffectEnabled(int aux_effect_id, bool enabled) noexcept override;
+
+    virtual SLresult onGetInterfaceFromOutputMixer(opensles::CSLInterface *itf) noexcept override;
+    virtual SLresult onGetInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept override;
+
+    virtual int onSetNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept override;
+
+    // NOTE: have to be called while stopped
+    virtual int onSetBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept override;
+
+    uint64_t getVirtualClockInFrames() const noexcept;
+    uint32_t getSamplingRate() const noexcept;
+
+private:
+    enum { EMPTY_PIPE_YIELD_COUNT = 8, EMPTY_PIPE_SLEEP_NS = 1000000 };
+
+    int startPullerThread() noexcept;
+    void stopPullerThread() noexcept;
+
+    static void *pullerThreadEntryFunc(void *args) noexcept;
+    void pullerThreadProcess() noexcept;
+
+private:
+    uint32_t block_size_in_frames_;
+    uint32_t num_player_blocks_;
+    uint32_t sampling_rate_; // [millihertz]
+    pthread_t pt_handle_;
+    std::atomic_bool stop_request_;
+    std::atomic<uint64_t> virtual_clock_frames_;
+
+    AudioSink::block_consumer_func_t block_consumer_func_;
+    void *block_consumer_args_;
+
+    void (*notify_pull_callback_pfunc_)(void *);
+    void *notify_pull_callback_args_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIOSINKNULLBACKEND_HPP_
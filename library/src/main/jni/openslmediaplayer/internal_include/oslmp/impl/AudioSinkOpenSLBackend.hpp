@@ -45,6 +45,7 @@ public:
     virtual SLresult onGetInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept override;
 
     virtual int onSetNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept override;
+    virtual int onSetBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept override;
 
 private:
     void releaseOpenSLResources() noexcept;
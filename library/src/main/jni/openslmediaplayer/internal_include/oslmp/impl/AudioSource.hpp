@@ -65,8 +65,14 @@ public:
     struct prepare_args_t {
         data_source_info_t *data_source;
         int32_t initial_seek_position_msec;
-
-        prepare_args_t() : data_source(nullptr), initial_seek_position_msec(0) {}
+        bool looping;
+        int32_t loop_start_msec;
+        int32_t loop_end_msec; // (-1: end of data)
+
+        prepare_args_t()
+            : data_source(nullptr), initial_seek_position_msec(0), looping(false), loop_start_msec(0), loop_end_msec(-1)
+        {
+        }
     };
 
     struct prepare_poll_args_t {
@@ -88,6 +94,18 @@ public:
     int pause() noexcept;
     int stopDecoder() noexcept;
 
+    // NOTE: seeks without re-creating the decoder (the queued blocks are discarded)
+    bool isSeekInPlaceSupported() const noexcept;
+    int seekInPlace(int32_t msec) noexcept;
+    // NOTE: returns true after the first item from the new position is pushed into the pipe
+    bool isSeekInPlaceCompleted() const noexcept;
+
+    // NOTE: the loop region is played from the loop buffer if it fits in the buffer,
+    //       otherwise the source ends at the loop end point
+    int setLooping(bool looping) noexcept;
+    int setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept;
+    uint32_t fetchLoopCount() noexcept;
+
     bool isPreparing() const noexcept;
     bool isPrepared() const noexcept;
     bool isStarted() const noexcept;
@@ -104,6 +122,8 @@ public:
 
     bool isNetworkSource() const noexcept;
     bool isDecoderReachedToEndOfData() const noexcept;
+    // NOTE: returns OSLMP_RESULT_SUCCESS unless the decoder failed in the middle of the stream
+    int getDecoderErrorResult() const noexcept;
 
 private:
     class Impl;
@@ -83,9 +83,14 @@ public:
     bool unlockRecycle(recycle_block_t &block) noexcept;
 
     uint32_t getCapacity() const noexcept;
+    uint32_t getNumberOfConsumableItems() const noexcept;
 
     uint32_t consumerGetLastBlockTag() const noexcept;
 
+    // NOTE: called from the producer side. The items produced before this call
+    // are discarded by the consumer, and reported as TAG_NONE to the recycler.
+    void producerRequestFlush() noexcept;
+
 private:
     class Impl;
     std::unique_ptr<Impl> impl_;
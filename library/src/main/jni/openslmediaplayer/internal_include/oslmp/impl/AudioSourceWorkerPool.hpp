@@ -0,0 +1,110 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIOSOURCEWORKERPOOL_HPP_
+#define AUDIOSOURCEWORKERPOOL_HPP_
+
+#include <vector>
+
+#include <jni.h>
+#include <pthread.h>
+#include <time.h>
+
+#include <cxxporthelper/cstdint>
+
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioSourceWorkerPool
+//
+// Worker threads shared by all AudioSource instances of the context.
+// The sample format conversion and the resampling of each source are
+// performed on the workers instead of the decoder callbacks, so the
+// sources are processed in parallel.
+// The pending task with the earliest deadline (= the time when the source
+// pipe runs out of the data) is processed first, a task is never processed
+// by more than one worker at a time.
+//
+class AudioSourceWorkerPool {
+public:
+    class Task {
+    public:
+        virtual ~Task() {}
+
+        // NOTE: called from a worker thread
+        virtual void onProcessWorkerTask() noexcept = 0;
+    };
+
+    struct initialize_args_t {
+        uint32_t num_threads; // (0: disabled)
+        JavaVM *jvm;
+
+        initialize_args_t() : num_threads(0), jvm(nullptr) {}
+    };
+
+    AudioSourceWorkerPool();
+    ~AudioSourceWorkerPool();
+
+    int initialize(const initialize_args_t &args) noexcept;
+
+    bool isEnabled() const noexcept;
+    uint32_t getNumThreads() const noexcept;
+
+    // returns the recommended number of the worker threads for this device
+    static uint32_t sGetDefaultNumThreads() noexcept;
+
+    // NOTE: the task is processed again if it has been scheduled while running
+    int schedule(Task *task, const timespec &deadline) noexcept;
+
+    // NOTE: waits for the running task, do not call from the task itself
+    void cancel(Task *task) noexcept;
+
+private:
+    enum { MAX_THREADS = 4, };
+    enum task_state_t { TASK_QUEUED, TASK_RUNNING, TASK_RUNNING_REQUEUED, };
+
+    struct entry_t {
+        Task *task;
+        timespec deadline;
+        task_state_t state;
+    };
+
+    void stopWorkerThreads() noexcept;
+    static void *workerThreadEntryFunc(void *args) noexcept;
+    void workerThreadProcess() noexcept;
+
+    entry_t *findEntry(Task *task) noexcept;
+    entry_t *selectNextEntry() noexcept;
+    void removeEntry(entry_t *entry) noexcept;
+
+private:
+    JavaVM *jvm_;
+    std::vector<pthread_t> threads_;
+
+    mutable utils::pt_mutex mutex_;
+    utils::pt_condition_variable cv_;      // signaled when a task is queued
+    utils::pt_condition_variable cv_done_; // signaled when a task has been processed
+    std::vector<entry_t> entries_;         // guarded by mutex_
+    bool stop_request_;                    // guarded by mutex_
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIOSOURCEWORKERPOOL_HPP_
@@ -24,6 +24,8 @@
 
 #include <SLES/OpenSLES.h>
 
+#include "oslmp/impl/AudioDataTypes.hpp"
+
 //
 // forward declarations
 //
@@ -40,6 +42,11 @@ class AudioSource;
 class AudioPlayer;
 class PreAmp;
 class HQEqualizer;
+class EngineStatistics;
+class AudioClipCache;
+class SeekIndexCache;
+class PolyphaseResamplerCoeffBankCache;
+class AudioSourceWorkerPool;
 } // namespace impl
 } // namespace oslmp
 
@@ -62,16 +69,36 @@ public:
         uint32_t sink_backend_type;
         bool use_low_latency_if_available;
         bool use_floating_point_if_available;
+        uint32_t sink_buffering_mode;
+        uint32_t adaptive_sink_min_blocks;
+        uint32_t adaptive_sink_max_blocks;
+        uint32_t adaptive_sink_shrink_interval_ms;
+        uint32_t decoded_clip_cache_size;
+        uint32_t decoded_clip_max_duration_ms;
+        const char *seek_index_cache_dir; // (only used in initialize())
+        uint32_t seek_index_cache_max_size;
+        uint32_t loop_buffer_max_duration_ms;
+        uint32_t decoder_backend_type;
+        uint32_t source_worker_thread_count;
+        uint32_t mixer_max_sources;
 
         initialize_args_t()
             : context(nullptr), system_out_sampling_rate(0), system_out_frames_per_buffer(0),
               system_supports_low_latency(false), system_supports_floating_point(false), stream_type(0),
               short_fade_duration_ms(0), long_fade_duration_ms(0), resampler_quality(0), hq_equalizer_impl_type(0),
-              sink_backend_type(0), use_low_latency_if_available(false), use_floating_point_if_available(false)
+              sink_backend_type(0), use_low_latency_if_available(false), use_floating_point_if_available(false),
+              sink_buffering_mode(0), adaptive_sink_min_blocks(0), adaptive_sink_max_blocks(0),
+              adaptive_sink_shrink_interval_ms(0), decoded_clip_cache_size(0), decoded_clip_max_duration_ms(0),
+              seek_index_cache_dir(nullptr), seek_index_cache_max_size(0), loop_buffer_max_duration_ms(0),
+              decoder_backend_type(0), source_worker_thread_count(0), mixer_max_sources(0)
         {
         }
     };
 
+    // called from the sink thread for each rendered block (only supported by the null sink back-end)
+    typedef void (*offline_render_output_callback_t)(const void *data, uint32_t num_channels, uint32_t num_frames,
+                                                     bool is_float, void *args);
+
     class AudioCaptureEventListener {
     public:
         virtual ~AudioCaptureEventListener() {}
@@ -112,14 +139,29 @@ public:
 
     int getSystemOutputSamplingRate(uint32_t *sampling_rate) const noexcept;
     int getOutputLatencyInFrames(uint32_t *latency) const noexcept;
+    int getOutputSampleFormat(sample_format_type *format) const noexcept;
 
     int getParamResamplerQualityLevel(uint32_t *quality_level) const noexcept;
+    int getParamLoopBufferMaxDuration(uint32_t *duration_ms) const noexcept;
+    int getParamDecoderBackendType(uint32_t *backend_type) const noexcept;
+    int getParamHQEqualizerImplType(uint32_t *impl_type) const noexcept;
 
     int getPreAmp(PreAmp **p_preamp) const noexcept;
     int getHQEqualizer(HQEqualizer **p_hq_equalizer) const noexcept;
 
+    int installOptionalModule(uint32_t option) noexcept;
+    int uninstallOptionalModule(uint32_t option) noexcept;
+
+    EngineStatistics *getStatistics() const noexcept;
+    AudioClipCache *getClipCache() const noexcept;
+    SeekIndexCache *getSeekIndexCache() const noexcept;
+    PolyphaseResamplerCoeffBankCache *getResamplerCoeffBankCache() const noexcept;
+    AudioSourceWorkerPool *getSourceWorkerPool() const noexcept;
+
     int getAudioSessionId(int32_t *p_audio_session_id) const noexcept;
 
+    int setOfflineRenderOutputCallback(offline_render_output_callback_t callback, void *args) noexcept;
+
 private:
     class Impl;
     std::unique_ptr<Impl> impl_;
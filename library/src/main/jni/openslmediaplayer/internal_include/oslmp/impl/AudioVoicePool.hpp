@@ -0,0 +1,118 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef AUDIOVOICEPOOL_HPP_
+#define AUDIOVOICEPOOL_HPP_
+
+#include <cxxporthelper/memory>
+#include <cxxporthelper/cstdint>
+
+#include <utils/RefBase.h>
+
+#include "oslmp/impl/MixingUnit.hpp"
+#include "oslmp/impl/AudioClipCache.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioVoicePool
+//
+// Fixed number of voices which play the preloaded AudioClip data.
+// The voices are rendered and mixed by the mixer thread directly
+// (see AudioMixer::attachVoicePool()), the requests are passed through
+// a lock-free queue and applied at the beginning of the next mixer block.
+// When all voices are busy, the voice of the lowest priority
+// (the oldest one if there are several) is stolen. The stolen voice
+// is not cut off, it keeps fading out in a spare (tail) slot.
+//
+class AudioVoicePool {
+public:
+    enum {
+        NUM_MAX_VOICES = 32,
+        NUM_MAX_MIX_SOURCES = NUM_MAX_VOICES * 2, // voices + stolen ones fading out
+        COMMAND_QUEUE_SIZE = 64,
+    };
+
+    struct initialize_args_t {
+        uint32_t num_voices; // [1, NUM_MAX_VOICES]
+        uint32_t block_size_in_frames;
+
+        initialize_args_t() : num_voices(0), block_size_in_frames(0) {}
+    };
+
+    // NOTE:
+    // The caller has to retain the clip until no voice refers it (= clip->getStrongCount() returns 1),
+    // so that the clip is never destroyed on the mixer thread.
+    struct play_args_t {
+        android::sp<AudioClip> clip; // (interleaved stereo float, the output sampling rate)
+        uint32_t num_frames;         // number of the valid frames in the clip
+        float left_volume;
+        float right_volume;
+        float rate;       // [MIN_RATE, MAX_RATE]
+        int32_t loop;     // number of the repeats (-1: infinite)
+        int32_t priority; // (larger value has higher priority)
+
+        play_args_t()
+            : clip(), num_frames(0), left_volume(1.0f), right_volume(1.0f), rate(1.0f), loop(0), priority(0)
+        {
+        }
+    };
+
+    static const float MIN_RATE;
+    static const float MAX_RATE;
+
+    AudioVoicePool();
+    ~AudioVoicePool();
+
+    int initialize(const initialize_args_t &args) noexcept;
+
+    uint32_t getNumVoices() const noexcept;
+
+    // NOTE: these methods can be called from any thread except the mixer thread
+    int play(const play_args_t &args, uint32_t *voice_id) noexcept;
+    int stop(uint32_t voice_id) noexcept;
+    int pause(uint32_t voice_id) noexcept;
+    int resume(uint32_t voice_id) noexcept;
+    int setVolume(uint32_t voice_id, float left_volume, float right_volume) noexcept;
+    int setRate(uint32_t voice_id, float rate) noexcept;
+    int setLoop(uint32_t voice_id, int32_t loop) noexcept;
+    int setPriority(uint32_t voice_id, int32_t priority) noexcept;
+
+    // stops all voices which play the clip (nullptr: all voices)
+    int stopAll(const AudioClip *clip = nullptr) noexcept;
+
+    // returns true while any voice is playing or any request is pending
+    bool isActive() const noexcept;
+
+    // NOTE:
+    // Called from the mixer thread. mixerThreadRender() applies the pending
+    // requests and renders the playing voices, the rendered blocks are returned
+    // as the sources of MixingUnit::mix(). mixerThreadCommit() has to be called
+    // after mixing to update the fade states.
+    uint32_t mixerThreadRender(MixingUnit::Context *contexts[], const MixingUnit::in_data_type *srcs[],
+                               uint32_t max_sources, uint32_t size_in_frames) noexcept;
+    void mixerThreadCommit() noexcept;
+
+private:
+    class Impl;
+    std::unique_ptr<Impl> impl_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // AUDIOVOICEPOOL_HPP_
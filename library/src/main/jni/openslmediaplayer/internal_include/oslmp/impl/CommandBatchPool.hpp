@@ -0,0 +1,146 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef COMMANDBATCHPOOL_HPP_
+#define COMMANDBATCHPOOL_HPP_
+
+#include <new>
+#include <vector>
+
+#include <cxxporthelper/memory>
+#include <cxxporthelper/cstdint>
+
+#include <oslmp/OpenSLMediaPlayer.hpp>
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// CommandBatchPool
+//
+// NOTE:
+// Owns the command batches posted to the handler thread. A posted message
+// only refers to a slot index, so the batch is not leaked even if the
+// message is discarded without being handled (all slots are freed with
+// the pool). Slots and their buffers are reused, so posting does not
+// allocate memory once the pool has grown to the number of in-flight
+// batches.
+//
+class CommandBatchPool {
+public:
+    struct batch_t {
+        int32_t token;
+        std::vector<OpenSLMediaPlayer::command_t> commands;
+        std::vector<OpenSLMediaPlayer::command_result_t> results;
+        bool in_use;
+
+        batch_t() : token(0), commands(), results(), in_use(false) {}
+    };
+
+    CommandBatchPool() : mutex_(), slots_() {}
+
+    // returns OSLMP_RESULT_xxx, (*index) receives the slot index on success
+    int obtain(const OpenSLMediaPlayer::command_t *commands, size_t count, int32_t token, uint32_t *index) noexcept
+    {
+        if (!(commands && count > 0 && index))
+            return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+        utils::pt_lock_guard lock(mutex_);
+
+        try
+        {
+            uint32_t i = 0;
+
+            while (i < slots_.size() && slots_[i]->in_use) {
+                ++i;
+            }
+
+            if (i == slots_.size()) {
+                std::unique_ptr<batch_t> batch(new batch_t());
+                slots_.push_back(std::move(batch));
+            }
+
+            batch_t &batch = *slots_[i];
+
+            batch.commands.assign(commands, commands + count);
+            batch.results.resize(count);
+            batch.token = token;
+            batch.in_use = true;
+
+            (*index) = i;
+        }
+        catch (const std::bad_alloc & /*e*/) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    // NOTE: the returned batch is valid until recycle() is called
+    batch_t *get(uint32_t index) noexcept
+    {
+        utils::pt_lock_guard lock(mutex_);
+
+        if (!(index < slots_.size() && slots_[index]->in_use))
+            return nullptr;
+
+        return slots_[index].get();
+    }
+
+    void recycle(uint32_t index) noexcept
+    {
+        utils::pt_lock_guard lock(mutex_);
+
+        if (index < slots_.size()) {
+            slots_[index]->in_use = false;
+        }
+    }
+
+    uint32_t numSlots() const noexcept
+    {
+        utils::pt_lock_guard lock(mutex_);
+        return static_cast<uint32_t>(slots_.size());
+    }
+
+    uint32_t numSlotsInUse() const noexcept
+    {
+        utils::pt_lock_guard lock(mutex_);
+        uint32_t n = 0;
+
+        for (const auto &slot : slots_) {
+            if (slot->in_use) {
+                ++n;
+            }
+        }
+
+        return n;
+    }
+
+private:
+    // inhibit copy operations
+    CommandBatchPool(const CommandBatchPool &) = delete;
+    CommandBatchPool &operator=(const CommandBatchPool &) = delete;
+
+private:
+    mutable utils::pt_mutex mutex_;
+    std::vector<std::unique_ptr<batch_t>> slots_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // COMMANDBATCHPOOL_HPP_
@@ -0,0 +1,218 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef ENGINESTATISTICS_HPP_
+#define ENGINESTATISTICS_HPP_
+
+#include <time.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include <oslmp/OpenSLMediaPlayerContext.hpp>
+
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// EngineStatistics
+//
+// NOTE:
+// All counters are updated with relaxed atomic operations, so they can be
+// updated from the real-time threads (mixer, sink callback and decoder
+// callback) without locks. The snapshot is not consistent between fields.
+//
+// The counters are never cleared. reset() records the current values as the
+// baseline and getSnapshot() returns the differences, so a snapshot never
+// observes a partially reset state. (Both methods are called from the
+// non real-time threads.)
+//
+class EngineStatistics {
+public:
+    enum { NUM_HISTOGRAM_BINS = OSLMP_CONTEXT_STATISTICS_NUM_HISTOGRAM_BINS };
+    typedef OpenSLMediaPlayerContext::engine_statistics_t engine_statistics_t;
+
+    EngineStatistics() noexcept : mutex_(), baseline_(), mixer_last_sink_underrun_count_(0)
+    {
+        sink_underrun_count_.store(0, std::memory_order_relaxed);
+        sink_silent_block_count_.store(0, std::memory_order_relaxed);
+        mixer_block_count_.store(0, std::memory_order_relaxed);
+        mixer_late_block_count_.store(0, std::memory_order_relaxed);
+        mixer_cpu_time_ns_.store(0, std::memory_order_relaxed);
+        mixer_max_block_cpu_time_ns_.store(0, std::memory_order_relaxed);
+        source_starved_block_count_.store(0, std::memory_order_relaxed);
+        decoded_frames_.store(0, std::memory_order_relaxed);
+        decoder_cpu_time_ns_.store(0, std::memory_order_relaxed);
+
+        for (int i = 0; i < NUM_HISTOGRAM_BINS; ++i) {
+            sink_queue_depth_histogram_[i].store(0, std::memory_order_relaxed);
+            source_queue_depth_histogram_[i].store(0, std::memory_order_relaxed);
+        }
+    }
+
+    void reset() noexcept
+    {
+        utils::pt_lock_guard lock(mutex_);
+
+        getRawValues(&baseline_);
+
+        // NOTE: the max. value cannot be derived from the baseline
+        (void)mixer_max_block_cpu_time_ns_.exchange(0, std::memory_order_relaxed);
+    }
+
+    // called from the sink callback
+    void onSinkUnderrun() noexcept { increment(sink_underrun_count_); }
+    void onSinkSilentBlock() noexcept { increment(sink_silent_block_count_); }
+
+    // called from the mixer thread
+    // (sink_depth: the number of the readable sink queue items before writing the block)
+    void onMixerBlockProcessed(uint32_t cpu_time_ns, uint32_t sink_depth) noexcept
+    {
+        // NOTE:
+        // The sink queue is also empty when the playback starts or resumes,
+        // but the sink does not report underruns while it is waiting for the
+        // first blocks. So the block is late only if the sink ran out of the
+        // data since the previous block.
+        const uint32_t underrun_count = load(sink_underrun_count_);
+        const bool late = (sink_depth == 0) && (underrun_count != mixer_last_sink_underrun_count_);
+
+        mixer_last_sink_underrun_count_ = underrun_count;
+
+        increment(mixer_block_count_);
+        if (late) {
+            increment(mixer_late_block_count_);
+        }
+        mixer_cpu_time_ns_.fetch_add(cpu_time_ns, std::memory_order_relaxed);
+
+        // NOTE: reset() may be called concurrently, so use CAS instead of load & store
+        uint32_t cur_max = mixer_max_block_cpu_time_ns_.load(std::memory_order_relaxed);
+        while (cpu_time_ns > cur_max &&
+               !mixer_max_block_cpu_time_ns_.compare_exchange_weak(cur_max, cpu_time_ns, std::memory_order_relaxed)) {
+        }
+    }
+
+    void onSourceStarved() noexcept { increment(source_starved_block_count_); }
+
+    void onSinkQueueDepthSampled(uint32_t depth, uint32_t capacity) noexcept
+    {
+        increment(sink_queue_depth_histogram_[calc_bin(depth, capacity)]);
+    }
+
+    void onSourceQueueDepthSampled(uint32_t depth, uint32_t capacity) noexcept
+    {
+        increment(source_queue_depth_histogram_[calc_bin(depth, capacity)]);
+    }
+
+    // called from the decoder callback
+    void onSourceBlockDecoded(uint32_t num_frames, uint32_t cpu_time_ns) noexcept
+    {
+        decoded_frames_.fetch_add(num_frames, std::memory_order_relaxed);
+        decoder_cpu_time_ns_.fetch_add(cpu_time_ns, std::memory_order_relaxed);
+    }
+
+    void getSnapshot(engine_statistics_t *stats) const noexcept
+    {
+        utils::pt_lock_guard lock(mutex_);
+        const engine_statistics_t &b = baseline_;
+
+        getRawValues(stats);
+
+        // NOTE: unsigned subtraction, the counters may wrap around
+        stats->sink_underrun_count -= b.sink_underrun_count;
+        stats->sink_silent_block_count -= b.sink_silent_block_count;
+        stats->mixer_block_count -= b.mixer_block_count;
+        stats->mixer_late_block_count -= b.mixer_late_block_count;
+        stats->mixer_cpu_time_ns -= b.mixer_cpu_time_ns;
+        stats->source_starved_block_count -= b.source_starved_block_count;
+        stats->decoded_frames -= b.decoded_frames;
+        stats->decoder_cpu_time_ns -= b.decoder_cpu_time_ns;
+
+        for (int i = 0; i < NUM_HISTOGRAM_BINS; ++i) {
+            stats->sink_queue_depth_histogram[i] -= b.sink_queue_depth_histogram[i];
+            stats->source_queue_depth_histogram[i] -= b.source_queue_depth_histogram[i];
+        }
+    }
+
+    static bool getThreadCpuTime(timespec &ts) noexcept { return (::clock_gettime(CLOCK_THREAD_CPUTIME_ID, &ts) == 0); }
+
+    static uint32_t calcElapsedNs(const timespec &start, const timespec &end) noexcept
+    {
+        const int64_t ns = (end.tv_sec - start.tv_sec) * 1000000000LL + (end.tv_nsec - start.tv_nsec);
+        if (ns <= 0) {
+            return 0;
+        }
+        return (ns < 0xFFFFFFFFLL) ? static_cast<uint32_t>(ns) : 0xFFFFFFFFU;
+    }
+
+private:
+    // inhibit copy operations
+    EngineStatistics(const EngineStatistics &) = delete;
+    EngineStatistics &operator=(const EngineStatistics &) = delete;
+
+    void getRawValues(engine_statistics_t *stats) const noexcept
+    {
+        stats->sink_underrun_count = load(sink_underrun_count_);
+        stats->sink_silent_block_count = load(sink_silent_block_count_);
+        stats->mixer_block_count = load(mixer_block_count_);
+        stats->mixer_late_block_count = load(mixer_late_block_count_);
+        stats->mixer_cpu_time_ns = mixer_cpu_time_ns_.load(std::memory_order_relaxed);
+        stats->mixer_max_block_cpu_time_ns = load(mixer_max_block_cpu_time_ns_);
+        stats->source_starved_block_count = load(source_starved_block_count_);
+        stats->decoded_frames = decoded_frames_.load(std::memory_order_relaxed);
+        stats->decoder_cpu_time_ns = decoder_cpu_time_ns_.load(std::memory_order_relaxed);
+
+        for (int i = 0; i < NUM_HISTOGRAM_BINS; ++i) {
+            stats->sink_queue_depth_histogram[i] = load(sink_queue_depth_histogram_[i]);
+            stats->source_queue_depth_histogram[i] = load(source_queue_depth_histogram_[i]);
+        }
+    }
+
+    static void increment(std::atomic<uint32_t> &x) noexcept { x.fetch_add(1, std::memory_order_relaxed); }
+    static uint32_t load(const std::atomic<uint32_t> &x) noexcept { return x.load(std::memory_order_relaxed); }
+
+    static int calc_bin(uint32_t depth, uint32_t capacity) noexcept
+    {
+        if (depth >= capacity) {
+            return (NUM_HISTOGRAM_BINS - 1);
+        }
+        return static_cast<int>((static_cast<uint64_t>(depth) * NUM_HISTOGRAM_BINS) / capacity);
+    }
+
+private:
+    mutable utils::pt_mutex mutex_;
+    engine_statistics_t baseline_;
+
+    std::atomic<uint32_t> sink_underrun_count_;
+    std::atomic<uint32_t> sink_silent_block_count_;
+    std::atomic<uint32_t> mixer_block_count_;
+    std::atomic<uint32_t> mixer_late_block_count_;
+    std::atomic<uint64_t> mixer_cpu_time_ns_;
+    std::atomic<uint32_t> mixer_max_block_cpu_time_ns_;
+    std::atomic<uint32_t> source_starved_block_count_;
+    std::atomic<uint64_t> decoded_frames_;
+    std::atomic<uint64_t> decoder_cpu_time_ns_;
+    std::atomic<uint32_t> sink_queue_depth_histogram_[NUM_HISTOGRAM_BINS];
+    std::atomic<uint32_t> source_queue_depth_histogram_[NUM_HISTOGRAM_BINS];
+
+    uint32_t mixer_last_sink_underrun_count_; // accessed only from the mixer thread
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // ENGINESTATISTICS_HPP_
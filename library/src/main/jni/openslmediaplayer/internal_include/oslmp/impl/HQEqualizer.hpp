@@ -73,6 +73,7 @@ public:
 
     virtual int pollFromMixerThread() noexcept;
     virtual int process(float *data, uint32_t num_channels, uint32_t num_frames) noexcept;
+    virtual bool isBypassedFromMixerThread() const noexcept;
 
 private:
     class Impl;
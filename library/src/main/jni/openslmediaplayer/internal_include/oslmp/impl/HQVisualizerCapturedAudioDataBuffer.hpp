@@ -37,8 +37,9 @@ public:
     bool put_captured_data(uint32_t num_channels, uint32_t sampling_rate, const float *data, uint32_t num_frames,
                            const timespec *captured_time) noexcept;
 
+    // NOTE: captured_time is the time when the mixer wrote the last frame of the returned data
     bool get_captured_data(uint32_t num_frames, uint32_t read_rate, uint32_t *num_channels, uint32_t *sampling_rate,
-                           const float **data) noexcept;
+                           const float **data, timespec *captured_time) noexcept;
 
     bool get_latest_captured_data(uint32_t num_frames, uint32_t *num_channels, uint32_t *sampling_rate,
                                   const float **data, timespec *updated_time) noexcept;
@@ -55,6 +56,8 @@ private:
     void copy_to_buffer(uint32_t num_channels, const float *src, uint32_t src_pos, uint32_t dest_pos,
                         uint32_t n) noexcept;
 
+    timespec calc_captured_time(uint32_t end_pos) const noexcept;
+
 private:
     // MEMO:
     // << buffer >>
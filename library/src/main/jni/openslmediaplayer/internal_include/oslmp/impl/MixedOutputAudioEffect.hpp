@@ -37,6 +37,10 @@ public:
 
     virtual int pollFromMixerThread() noexcept = 0;
     virtual int process(float *data, uint32_t num_channels, uint32_t num_frames) noexcept = 0;
+
+    // returns true while process() leaves the data unchanged
+    // (the insert effect chain is skipped if all of its effects are bypassed)
+    virtual bool isBypassedFromMixerThread() const noexcept = 0;
 };
 
 } // namespace impl
@@ -44,14 +44,32 @@ public:
         MODE_SHORT_FADE_OUT,
         MODE_LONG_FADE_IN,
         MODE_LONG_FADE_OUT,
+        MODE_PROFILE_FADE_IN,  // uses Context::fade_profile
+        MODE_PROFILE_FADE_OUT, // uses Context::fade_profile
+    };
+
+    enum fade_curve_t {
+        FADE_CURVE_RAISED_COSINE, // same as the short/long fade
+        FADE_CURVE_LINEAR,
+        FADE_CURVE_EQUAL_POWER,
+        FADE_CURVE_LOGARITHMIC,
+        FADE_CURVE_S_CURVE,
+    };
+
+    enum {
+        NUM_MAX_FADE_PROFILES = 8,
+        MAX_FADE_PROFILE_DURATION_MS = 10000,
+        NUM_SOURCES_PER_PASS = 4,
     };
 
     struct Context {
         mode_t mode;
         float phase;
         float volume[2];
+        uint32_t fade_profile;
+        uint32_t latched_fade_profile; // managed by the MixingUnit
 
-        Context() : mode(MODE_MUTE), phase(0.0f)
+        Context() : mode(MODE_MUTE), phase(0.0f), fade_profile(0), latched_fade_profile(0)
         {
             for (auto &v : volume) {
                 v = 0.0f;
@@ -88,6 +106,30 @@ public:
 
     bool mix(Context *context, const in_data_type *src, uint32_t size_in_frames) noexcept;
 
+    // NOTE:
+    // Mixes multiple sources at once. The constant gain sources (MODE_ADD) are
+    // accumulated up to NUM_SOURCES_PER_PASS sources per pass over the mixing buffer,
+    // the others are processed in the same way as mix().
+    bool mix(Context *contexts[], const in_data_type *srcs[], uint32_t num_sources, uint32_t size_in_frames) noexcept;
+
+    // NOTE:
+    // Fade profiles are precomputed gain tables shared by the same curve & duration, they are reference
+    // counted and released by the last unregisterFadeProfile() call. A fade latches the table when it
+    // starts and keeps using it until the end, the last unregisterFadeProfile() call waits for the
+    // latched fades (bounded by the profile duration). A profile id carries the generation of its slot,
+    // so a stale id never refers to a reused slot (the fade which uses an unknown profile falls back to
+    // the short fade).
+    // These methods must not be called concurrently, but they can be called while the mixer thread is running.
+    int registerFadeProfile(fade_curve_t curve, uint32_t duration_ms, uint32_t *profile) noexcept;
+    int unregisterFadeProfile(uint32_t profile) noexcept;
+
+    // NOTE:
+    // Makes this unit use the fade profiles of the owner, so the same profile ids (and the latched tables)
+    // are valid on both units. Both units have to be initialized with the same sampling rate, and the owner
+    // has to outlive this unit. The profiles are registered through the owner only, and the blocks of this
+    // unit have to be mixed between begin() and end() of the owner, which checks the retired profiles.
+    bool shareFadeProfiles(MixingUnit &owner) noexcept;
+
 private:
     class Impl;
     std::unique_ptr<Impl> impl_;
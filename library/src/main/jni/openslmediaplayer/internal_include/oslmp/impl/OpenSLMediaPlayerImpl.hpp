@@ -27,6 +27,7 @@
 #include "oslmp/impl/OpenSLMediaPlayerExtension.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
 #include "oslmp/impl/AudioPlayer.hpp"
+#include "oslmp/impl/CommandBatchPool.hpp"
 #include "oslmp/utils/pthread_utils.hpp"
 #include "oslmp/utils/optional.hpp"
 
@@ -56,6 +57,11 @@ public:
     int setDataSourceUri(const char *uri) noexcept;
     int setDataSourceFd(int fd) noexcept;
     int setDataSourceFd(int fd, int64_t offset, int64_t length) noexcept;
+    int addPlaylistItemPath(const char *path) noexcept;
+    int addPlaylistItemUri(const char *uri) noexcept;
+    int addPlaylistItemFd(int fd) noexcept;
+    int addPlaylistItemFd(int fd, int64_t offset, int64_t length) noexcept;
+    int clearPlaylist() noexcept;
     int prepare() noexcept;
     int prepareAsync() noexcept;
     int start() noexcept;
@@ -73,9 +79,16 @@ public:
     int setAudioStreamType(int stream_type) noexcept;
     int attachAuxEffect(int effect_id) noexcept;
     int setAuxEffectSendLevel(float level) noexcept;
+    int setFadeCurve(int curve, int32_t fade_in_ms, int32_t fade_out_ms) noexcept;
+    int setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept;
+    int setInsertEqualizerEnabled(bool enabled) noexcept;
+    int setInsertEqualizerBandLevels(const int16_t *levels, uint16_t num_bands) noexcept;
 
     int setNextMediaPlayer(const android::sp<OpenSLMediaPlayer> *next) noexcept;
 
+    int postCommands(const OpenSLMediaPlayer::command_t *commands, size_t count, int32_t token) noexcept;
+    int setStatusBlock(OpenSLMediaPlayer::status_block_t *block) noexcept;
+
     int setOnCompletionListener(OpenSLMediaPlayer::OnCompletionListener *listener) noexcept;
     int setOnPreparedListener(OpenSLMediaPlayer::OnPreparedListener *listener) noexcept;
     int setOnSeekCompleteListener(OpenSLMediaPlayer::OnSeekCompleteListener *listener) noexcept;
@@ -84,6 +97,7 @@ public:
     int setOnErrorListener(OpenSLMediaPlayer::OnErrorListener *listener) noexcept;
 
     int setInternalThreadEventListener(OpenSLMediaPlayer::InternalThreadEventListener *listener) noexcept;
+    int setOnCommandCompletionListener(OpenSLMediaPlayer::OnCommandCompletionListener *listener) noexcept;
 
     android::sp<OpenSLMediaPlayerContext> getPlayerContext() noexcept;
 
@@ -93,6 +107,8 @@ public:
     virtual void onPrepareCompleted(int prepare_result) noexcept override;
     virtual void onSeekCompleted(int seek_result) noexcept override;
     virtual void onPlayerStartedAsNextPlayer() noexcept override;
+    virtual void onPlaylistTrackChanged(int32_t remaining) noexcept override;
+    virtual void onPlaybackError(int error_result) noexcept override;
 
     // implementations of OpenSLMediaPlayerInternalMessageHandler
     virtual int onRegisteredAsMessageHandler() noexcept override;
@@ -117,6 +133,11 @@ private:
     void notifyResult(const Message *msg, int result) noexcept;
 
     OpenSLMediaPlayer *getHolder() const noexcept;
+    void publishStatus() noexcept;
+
+    int processMessage(const Message *msg) noexcept;
+    void handleCommandBatch(const Message *msg) noexcept;
+    int processCommand(const OpenSLMediaPlayer::command_t &cmd, int32_t *value) noexcept;
 
     int handleInternalExtAttachOrInstall(const Message *msg) noexcept;
     int handleInternalExtDetachOrUninstall(const Message *msg) noexcept;
@@ -147,12 +168,16 @@ private:
     android::wp<OpenSLMediaPlayer::OnInfoListener> on_info_listener_;
     android::wp<OpenSLMediaPlayer::OnErrorListener> on_error_listener_;
     android::wp<OpenSLMediaPlayer::InternalThreadEventListener> internal_thread_event_listener_;
+    android::wp<OpenSLMediaPlayer::OnCommandCompletionListener> on_command_completion_listener_;
 
     android::sp<OpenSLMediaPlayerContext> context_;
     impl::OpenSLMediaPlayerInternalMessageHandlerToken msg_handler_token_;
 
     // temporary variable for initialization
     OpenSLMediaPlayer::initialize_args_t tmp_init_args_;
+
+    // batches posted by postCommands()
+    impl::CommandBatchPool command_batch_pool_;
 };
 
 } // namespace oslmp
@@ -87,6 +87,9 @@ public:
 
     virtual void raiseOnBeforeAudioSinkStateChanged(bool next_is_started) noexcept = 0;
 
+    // wakes up the internal thread to poll the audio system (e.g. to resume the suspended mixer)
+    virtual bool requestPolling() noexcept = 0;
+
 #if USE_OSLMP_DEBUG_FEATURES
     virtual NonBlockingTraceLogger &getNonBlockingTraceLogger() const noexcept = 0;
 #endif
@@ -17,6 +17,8 @@
 #ifndef OPENSLMEDIAPLAYERINTERNALCONTEXTIMPL_HPP_
 #define OPENSLMEDIAPLAYERINTERNALCONTEXTIMPL_HPP_
 
+#include <cxxporthelper/atomic>
+
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
 #include "oslmp/impl/MessageHandlerThread.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerThreadMessage.hpp"
@@ -39,6 +41,9 @@ public:
     int initialize(JNIEnv *env, OpenSLMediaPlayerContext *context,
                    const OpenSLMediaPlayerContext::create_args_t &args) noexcept;
 
+    int installModule(uint32_t option) noexcept;
+    int uninstallModule(uint32_t option) noexcept;
+
     // implementations of OpenSLMediaPlayerInternalContext
     virtual JavaVM *getJavaVM() const noexcept override;
     virtual SLresult getInterfaceFromEngine(opensles::CSLInterface *itf) noexcept override;
@@ -58,6 +63,7 @@ public:
                              size_t size) noexcept override;
 
     virtual void raiseOnBeforeAudioSinkStateChanged(bool next_is_started) noexcept override;
+    virtual bool requestPolling() noexcept override;
 
 #if USE_OSLMP_DEBUG_FEATURES
     virtual NonBlockingTraceLogger &getNonBlockingTraceLogger() const noexcept override;
@@ -104,7 +110,7 @@ public:
 private:
     enum {
         NUM_EXTENSIONS = 16,      // <= 32
-        NUM_MESSAGE_HANDLERS = 4, // == AudioMixer::NUM_MAX_SOURCE_CLIENTS
+        NUM_MESSAGE_HANDLERS = 32, // == AudioMixer::NUM_MAX_SOURCE_CLIENTS
     };
 
     struct MessageHandlerInfo {
@@ -141,6 +147,8 @@ private:
     int handleUnregisterMessage(const Message *msg) noexcept;
     int handleExtAttachOrInstallMessage(const Message *msg) noexcept;
     int handleExtDetachOrUninstallMessage(const Message *msg) noexcept;
+    int handleInstallModuleMessage(const Message *msg) noexcept;
+    int handleUninstallModuleMessage(const Message *msg) noexcept;
 
     bool post(Message *msg) noexcept;
     int postAndWaitResult(Message *msg) noexcept;
@@ -169,7 +177,7 @@ private:
 
     MessageHandlerInfo msgHandlers_[NUM_MESSAGE_HANDLERS];
 
-    uint32_t options_;
+    std::atomic<uint32_t> options_;
     ExtensionInfo extensions_[NUM_EXTENSIONS];
     OpenSLMediaPlayerExtensionToken extension_traits_updated_;
     uint32_t audio_capture_extensions_bitmap_;
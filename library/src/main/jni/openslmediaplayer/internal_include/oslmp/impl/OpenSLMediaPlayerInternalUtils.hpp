@@ -18,6 +18,7 @@
 #define OPENSLMEDIAPLAYERINTERNALUTILS_HPP_
 
 #include <string>
+#include <cxxporthelper/cstdint>
 #include <SLES/OpenSLES.h>
 #include "oslmp/impl/OpenSLMediaPlayerInternalDefs.hpp"
 
@@ -34,6 +35,10 @@ public:
     static bool sTranslateToOpenSLStreamType(int streamType, SLint32 *slStreamType) noexcept;
     static bool sTranslateOpenSLStreamType(SLint32 slStreamType, int *streamType) noexcept;
     static const char *sGetPlayerStateName(PlayerState state) noexcept;
+
+    // NOTE: path or fd have to be specified (fd is used if path is nullptr)
+    static bool sMakeFileIdentityKey(const char *path, int fd, int64_t offset, int64_t length,
+                                     std::string &key) noexcept;
 };
 
 } // namespace impl
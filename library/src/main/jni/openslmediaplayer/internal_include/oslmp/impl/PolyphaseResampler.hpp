@@ -0,0 +1,164 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef POLYPHASERESAMPLER_HPP_
+#define POLYPHASERESAMPLER_HPP_
+
+#include <vector>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/aligned_memory.hpp>
+
+#include <utils/RefBase.h>
+
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// PolyphaseResamplerCoeffBank
+//
+// Windowed sinc (Kaiser) FIR filter for the rational ratio L/M, decomposed
+// into L phases. The coefficients are stored in the reversed order and
+// duplicated for each channel of the interleaved stereo frames, so the inner
+// loop of the resampler is a plain multiply-accumulate of the vectors.
+// The bank is immutable after design(), it can be shared between threads.
+//
+class PolyphaseResamplerCoeffBank : public virtual android::RefBase {
+public:
+    enum quality_t { QUALITY_LOW = 0, QUALITY_MIDDLE = 1, QUALITY_HIGH = 2, };
+
+    PolyphaseResamplerCoeffBank();
+    virtual ~PolyphaseResamplerCoeffBank();
+
+    // NOTE: [Hz]
+    static bool sIsSupportedRatio(uint32_t in_sampling_rate, uint32_t out_sampling_rate) noexcept;
+
+    int design(uint32_t in_sampling_rate, uint32_t out_sampling_rate, quality_t quality) noexcept;
+
+    uint32_t getInSamplingRate() const noexcept;
+    uint32_t getOutSamplingRate() const noexcept;
+    quality_t getQuality() const noexcept;
+
+    uint32_t getInterpolationFactor() const noexcept; // L
+    uint32_t getDecimationFactor() const noexcept;    // M
+    uint32_t getNumTaps() const noexcept;             // [frames] (per phase, multiple of 4)
+
+    const float *getPhaseCoeffs(uint32_t phase) const noexcept;
+    size_t getSizeInBytes() const noexcept;
+
+private:
+    cxxporthelper::aligned_memory<float> coeffs_;
+    uint32_t in_sampling_rate_;
+    uint32_t out_sampling_rate_;
+    quality_t quality_;
+    uint32_t interpolation_factor_;
+    uint32_t decimation_factor_;
+    uint32_t num_taps_;
+};
+
+//
+// PolyphaseResamplerCoeffBankCache
+//
+// Coefficient banks keyed by (in rate, out rate, quality). A bank is designed
+// on the first request and shared by all AudioSource instances of the context.
+// The least recently used banks are evicted when the total size exceeds the
+// capacity (the most recent one is always kept). The design is performed
+// without holding the lock, the concurrent requests for the same bank wait
+// for the first one.
+//
+class PolyphaseResamplerCoeffBankCache {
+public:
+    enum { DEFAULT_CAPACITY_IN_BYTES = 1024 * 1024, };
+
+    PolyphaseResamplerCoeffBankCache(size_t capacity_in_bytes = DEFAULT_CAPACITY_IN_BYTES);
+    ~PolyphaseResamplerCoeffBankCache();
+
+    int obtain(uint32_t in_sampling_rate, uint32_t out_sampling_rate, PolyphaseResamplerCoeffBank::quality_t quality,
+               android::sp<PolyphaseResamplerCoeffBank> &bank) noexcept;
+    void clear() noexcept;
+
+    size_t getNumBanks() const noexcept;
+    size_t getTotalSizeInBytes() const noexcept;
+
+private:
+    struct key_t {
+        uint32_t in_sampling_rate;
+        uint32_t out_sampling_rate;
+        PolyphaseResamplerCoeffBank::quality_t quality;
+
+        bool matches(const PolyphaseResamplerCoeffBank &bank) const noexcept;
+        bool operator==(const key_t &other) const noexcept;
+    };
+
+    bool lookup(const key_t &key, android::sp<PolyphaseResamplerCoeffBank> &bank) noexcept;
+    bool isDesigning(const key_t &key) const noexcept;
+    void evict() noexcept;
+
+private:
+    mutable utils::pt_mutex mutex_;
+    utils::pt_condition_variable cv_;
+    size_t capacity_in_bytes_;
+    std::vector<android::sp<PolyphaseResamplerCoeffBank>> banks_; // (most recently used first)
+    std::vector<key_t> designing_;
+};
+
+//
+// PolyphaseResampler
+//
+// Streaming resampler of the interleaved stereo float frames (the interface
+// is compatible with the cxxdasp::resampler::smart_resampler).
+// Only the filter history is owned by the instance.
+//
+class PolyphaseResampler {
+public:
+    PolyphaseResampler();
+    ~PolyphaseResampler();
+
+    int init(const android::sp<PolyphaseResamplerCoeffBank> &bank) noexcept;
+
+    // discards the pooled data and the filter history
+    void reset() noexcept;
+
+    int num_can_put() const noexcept;
+    void put_n(const float *src, int n) noexcept;
+
+    int num_can_get() noexcept;
+    void get_n(float *dest, int n) noexcept;
+
+    void flush() noexcept;
+
+private:
+    enum { MIN_INPUT_CHUNK_SIZE = 1024, };
+
+    void compact() noexcept;
+    void append_flush_frames() noexcept;
+
+private:
+    android::sp<PolyphaseResamplerCoeffBank> bank_;
+    cxxporthelper::aligned_memory<float> buffer_; // interleaved stereo
+    uint32_t capacity_;                           // [frames]
+    uint32_t num_frames_;                         // [frames]
+    uint32_t position_;                           // [frames] (the newest input frame of the next output)
+    uint32_t phase_;
+    uint32_t num_flush_frames_;                   // [frames] (not appended yet)
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // POLYPHASERESAMPLER_HPP_
@@ -0,0 +1,183 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef SEEKINDEXCACHE_HPP_
+#define SEEKINDEXCACHE_HPP_
+
+#include <string>
+#include <list>
+#include <deque>
+#include <map>
+#include <vector>
+
+#include <pthread.h>
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include <utils/RefBase.h>
+
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// SeekIndex
+//
+// Frame offset table of a non-indexed stream (MPEG audio or ADTS AAC).
+// The offset of every frame is stored as the distance to the next frame,
+// so seek points are resolved in memory without accessing the file.
+//
+class SeekIndex : public virtual android::RefBase {
+public:
+    enum format_type_t { FORMAT_UNKNOWN = 0, FORMAT_MPEG_AUDIO = 1, FORMAT_ADTS = 2, };
+
+    struct seek_point_t {
+        int64_t offset;     // [bytes] (relative to the beginning of the data source)
+        int64_t length;     // [bytes]
+        uint32_t skip_usec; // decoded data to discard to reach the requested position [micro seconds]
+
+        seek_point_t() : offset(0), length(0), skip_usec(0) {}
+    };
+
+    SeekIndex();
+    virtual ~SeekIndex();
+
+    bool isValid() const noexcept;
+    uint32_t getDurationInMsec() const noexcept;
+    bool findSeekPoint(int32_t msec, seek_point_t &point) const noexcept;
+
+    // NOTE: returns false if the stream is not supported or the *cancel flag is set
+    bool build(int fd, int64_t offset, int64_t length, const std::atomic_bool *cancel) noexcept;
+
+    bool load(const char *path) noexcept;
+    bool save(const char *path) const noexcept;
+
+private:
+    enum { CHECKPOINT_INTERVAL = 64, };
+
+    bool updateCheckpoints() noexcept;
+    int64_t getFrameOffset(uint32_t frame) const noexcept;
+
+private:
+    uint32_t format_;
+    uint32_t sampling_rate_; // [Hz]
+    uint32_t samples_per_frame_;
+    uint32_t num_preroll_frames_;
+    int64_t first_frame_offset_;
+    std::vector<uint16_t> frame_strides_;
+    std::vector<int64_t> checkpoints_; // offset of every CHECKPOINT_INTERVAL frames
+};
+
+//
+// SeekIndexCache
+//
+// Builds the seek indices on a background thread and persists them into
+// the cache directory. The indices are keyed by the data source identity
+// (see OpenSLMediaPlayerInternalUtils::sMakeFileIdentityKey()).
+// The total size of the index files is capped, the least recently used
+// files are deleted first (the modification time of a file is updated
+// when it is loaded, so the order survives restarts).
+//
+class SeekIndexCache {
+public:
+    enum { DEFAULT_MAX_STORAGE_SIZE = 4 * 1024 * 1024 };
+
+    struct initialize_args_t {
+        const char *directory;    // nullptr: disabled
+        size_t max_storage_size; // [bytes] total size of the index files
+
+        initialize_args_t() : directory(nullptr), max_storage_size(DEFAULT_MAX_STORAGE_SIZE) {}
+    };
+
+    SeekIndexCache();
+    ~SeekIndexCache();
+
+    int initialize(const initialize_args_t &args) noexcept;
+
+    bool isEnabled() const noexcept;
+
+    bool lookup(const std::string &key, android::sp<SeekIndex> &index) noexcept;
+
+    // NOTE: path or fd have to be specified (fd is used if path is nullptr)
+    int requestIndexing(const std::string &key, const char *path, int fd, int64_t offset, int64_t length) noexcept;
+
+    size_t getStorageSizeInBytes() const noexcept;
+
+private:
+    struct entry_t {
+        std::string key;
+        android::sp<SeekIndex> index; // null: not supported
+    };
+
+    struct job_t {
+        std::string key;
+        std::string path;
+        int fd;
+        int64_t offset;
+        int64_t length;
+
+        job_t() : key(), path(), fd(-1), offset(0), length(0) {}
+    };
+
+    struct stored_file_t {
+        std::string path;
+        size_t size;
+    };
+
+    typedef std::list<stored_file_t> stored_file_list_t;
+    typedef std::map<std::string, stored_file_list_t::iterator> stored_file_index_t;
+
+    enum { MAX_MEMORY_ENTRIES = 8, MAX_PENDING_JOBS = 4, };
+
+    bool findEntry(const std::string &key, android::sp<SeekIndex> &index, bool &found) noexcept;
+    void putEntry(const std::string &key, const android::sp<SeekIndex> &index) noexcept;
+    bool isPending(const std::string &key) const noexcept;
+    void makeFilePath(const std::string &key, std::string &path) const;
+
+    void scanStoredFiles() noexcept;
+    void touchStoredFile(const std::string &path) noexcept;
+    void putStoredFile(const std::string &path, size_t size) noexcept;
+    void evictStoredFiles(std::vector<std::string> &evicted) noexcept;
+
+    int startWorkerThread() noexcept;
+    void stopWorkerThread() noexcept;
+    static void *workerThreadEntryFunc(void *args) noexcept;
+    void workerThreadProcess() noexcept;
+    void processJob(job_t &job) noexcept;
+
+private:
+    std::string directory_;
+    size_t max_storage_size_;
+
+    mutable utils::pt_mutex mutex_;
+    utils::pt_condition_variable cv_;
+    std::list<entry_t> entries_; // front: most recently used
+    std::deque<job_t> jobs_;
+    std::string processing_key_;
+    stored_file_list_t stored_files_;          // front: most recently used
+    stored_file_index_t stored_files_index_;   // path -> stored_files_ item
+    size_t storage_size_;
+
+    pthread_t pt_handle_;
+    std::atomic_bool stop_request_;
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // SEEKINDEXCACHE_HPP_
@@ -0,0 +1,108 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef STATUSBLOCKSEQLOCK_HPP_
+#define STATUSBLOCKSEQLOCK_HPP_
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/atomic>
+
+#include <oslmp/OpenSLMediaPlayer.hpp>
+
+namespace oslmp {
+namespace impl {
+
+//
+// StatusBlockSeqLock
+//
+// NOTE:
+// Seqlock protocol of the OpenSLMediaPlayer::status_block_t.
+// The sequence is odd while the writer is updating the fields, and the reader
+// retries until it observes the same even sequence before and after reading
+// the fields. The sequence 0 means that the block has not been written yet.
+//
+class StatusBlockSeqLock {
+public:
+    typedef OpenSLMediaPlayer::status_block_t status_block_t;
+
+    enum { DEFAULT_MAX_READ_RETRIES = 16 };
+
+    // NOTE: single writer
+    static void write(status_block_t *block, const status_block_t &values) noexcept
+    {
+        volatile status_block_t *b = block;
+        const uint32_t seq = b->sequence;
+
+        b->sequence = seq + 1; // odd: updating
+        std::atomic_thread_fence(std::memory_order_release);
+
+        b->player_state = values.player_state;
+        b->flags = values.flags;
+        b->duration = values.duration;
+        b->position = values.position;
+        b->buffered_position = values.buffered_position;
+        b->sampling_rate = values.sampling_rate;
+        b->reserved = values.reserved;
+        b->position_frames = values.position_frames;
+        b->timestamp = values.timestamp;
+
+        std::atomic_thread_fence(std::memory_order_release);
+        b->sequence = seq + 2; // even: stable
+    }
+
+    // returns false if the block has not been written yet, or a consistent
+    // snapshot could not be taken within max_retries
+    static bool read(const status_block_t *block, status_block_t *snapshot,
+                     int max_retries = DEFAULT_MAX_READ_RETRIES) noexcept
+    {
+        const volatile status_block_t *b = block;
+
+        for (int i = 0; i < max_retries; ++i) {
+            const uint32_t seq1 = b->sequence;
+            std::atomic_thread_fence(std::memory_order_acquire);
+
+            if (seq1 & 1) {
+                // the writer is updating
+                continue;
+            }
+
+            snapshot->player_state = b->player_state;
+            snapshot->flags = b->flags;
+            snapshot->duration = b->duration;
+            snapshot->position = b->position;
+            snapshot->buffered_position = b->buffered_position;
+            snapshot->sampling_rate = b->sampling_rate;
+            snapshot->reserved = b->reserved;
+            snapshot->position_frames = b->position_frames;
+            snapshot->timestamp = b->timestamp;
+
+            std::atomic_thread_fence(std::memory_order_acquire);
+            const uint32_t seq2 = b->sequence;
+
+            if (seq1 == seq2) {
+                snapshot->sequence = seq1;
+                return (seq1 != 0);
+            }
+        }
+
+        return false;
+    }
+};
+
+} // namespace impl
+} // namespace oslmp
+
+#endif // STATUSBLOCKSEQLOCK_HPP_
@@ -0,0 +1,175 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+#ifndef FIXED_BITMAP_HPP_
+#define FIXED_BITMAP_HPP_
+
+#include <cxxporthelper/cstdint>
+#include <cxxporthelper/compiler.hpp>
+
+namespace oslmp {
+namespace utils {
+
+//
+// fixed_bitmap
+//
+// A bitmap wider than 32 bits (= array of uint32_t words),
+// the operators are the same as the uint32_t bitmaps.
+//
+template <int NBits>
+class fixed_bitmap {
+public:
+    enum { NUM_BITS = NBits, NUM_WORDS = ((NBits + 31) / 32), };
+
+    fixed_bitmap() noexcept { clear(); }
+
+    fixed_bitmap &clear() noexcept
+    {
+        for (auto &w : words_) {
+            w = 0U;
+        }
+        return (*this);
+    }
+
+    fixed_bitmap &set(int index) noexcept
+    {
+        words_[index >> 5] |= (1U << (index & 31));
+        return (*this);
+    }
+
+    fixed_bitmap &reset(int index) noexcept
+    {
+        words_[index >> 5] &= ~(1U << (index & 31));
+        return (*this);
+    }
+
+    fixed_bitmap &update(int index, bool cond) noexcept { return (cond) ? set(index) : reset(index); }
+
+    bool test(int index) const noexcept { return (words_[index >> 5] & (1U << (index & 31))) != 0U; }
+
+    bool any() const noexcept
+    {
+        uint32_t x = 0U;
+        for (const auto &w : words_) {
+            x |= w;
+        }
+        return (x != 0U);
+    }
+
+    bool none() const noexcept { return !any(); }
+
+    int count() const noexcept
+    {
+        int n = 0;
+        for (const auto &w : words_) {
+            n += ::__builtin_popcount(w);
+        }
+        return n;
+    }
+
+    uint32_t word(int i) const noexcept { return words_[i]; }
+
+    fixed_bitmap &operator|=(const fixed_bitmap &x) noexcept
+    {
+        for (int i = 0; i < NUM_WORDS; ++i) {
+            words_[i] |= x.words_[i];
+        }
+        return (*this);
+    }
+
+    fixed_bitmap &operator&=(const fixed_bitmap &x) noexcept
+    {
+        for (int i = 0; i < NUM_WORDS; ++i) {
+            words_[i] &= x.words_[i];
+        }
+        return (*this);
+    }
+
+    fixed_bitmap operator|(const fixed_bitmap &x) const noexcept { return fixed_bitmap(*this) |= x; }
+
+    fixed_bitmap operator&(const fixed_bitmap &x) const noexcept { return fixed_bitmap(*this) &= x; }
+
+    fixed_bitmap operator~() const noexcept
+    {
+        fixed_bitmap r;
+        for (int i = 0; i < NUM_WORDS; ++i) {
+            r.words_[i] = ~words_[i];
+        }
+        return r;
+    }
+
+    bool operator==(const fixed_bitmap &x) const noexcept
+    {
+        for (int i = 0; i < NUM_WORDS; ++i) {
+            if (words_[i] != x.words_[i])
+                return false;
+        }
+        return true;
+    }
+
+    bool operator!=(const fixed_bitmap &x) const noexcept { return !(*this == x); }
+
+private:
+    uint32_t words_[NUM_WORDS];
+};
+
+// [Usage]
+//   same as the bitmap_looper
+template <int NBits>
+class fixed_bitmap_looper {
+public:
+    fixed_bitmap_looper(const fixed_bitmap<NBits> &bm) : bm_(bm), word_index_(0), index_(-1) {}
+
+    ~fixed_bitmap_looper() {}
+
+    bool loop() noexcept
+    {
+        while (word_index_ < fixed_bitmap<NBits>::NUM_WORDS) {
+            const uint32_t w = bm_.word(word_index_) & cur_word_mask();
+
+            if (CXXPH_LIKELY(w != 0U)) {
+                index_ = (word_index_ << 5) + ::__builtin_ctz(w);
+                return true;
+            }
+
+            word_index_ += 1;
+            index_ = (word_index_ << 5) - 1;
+        }
+
+        index_ = -1;
+        return false;
+    }
+
+    int index() const noexcept { return index_; }
+
+private:
+    // masks the bits which have already been visited
+    uint32_t cur_word_mask() const noexcept
+    {
+        const int bit = (index_ + 1) - (word_index_ << 5);
+        return (bit <= 0) ? 0xFFFFFFFFU : ((bit >= 32) ? 0U : (0xFFFFFFFFU << bit));
+    }
+
+private:
+    fixed_bitmap<NBits> bm_;
+    int word_index_;
+    int index_;
+};
+
+} // namespace utils
+} // namespace oslmp
+
+#endif // FIXED_BITMAP_HPP_
@@ -0,0 +1,271 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "AudioClipCache"
+
+#include "oslmp/impl/AudioClipCache.hpp"
+
+#include <algorithm>
+#include <cstring>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioClip
+//
+AudioClip::AudioClip()
+    : chunks_(), num_channels_(0), block_size_in_frames_(0), max_num_blocks_(0), num_blocks_(0), metadata_()
+{
+}
+
+AudioClip::~AudioClip() {}
+
+int AudioClip::allocate(uint32_t num_channels, uint32_t block_size_in_frames, uint32_t max_num_blocks) noexcept
+{
+    if (!(num_channels && block_size_in_frames && max_num_blocks))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    const uint32_t max_num_chunks = (max_num_blocks + NUM_BLOCKS_PER_CHUNK - 1) / NUM_BLOCKS_PER_CHUNK;
+
+    try
+    {
+        // NOTE: only the chunk table is reserved here
+        chunks_.clear();
+        chunks_.reserve(max_num_chunks);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    num_channels_ = num_channels;
+    block_size_in_frames_ = block_size_in_frames;
+    max_num_blocks_ = max_num_blocks;
+    num_blocks_ = 0;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool AudioClip::appendBlock(const float *block) noexcept
+{
+    if (CXXPH_UNLIKELY(num_blocks_ >= max_num_blocks_))
+        return false;
+
+    const size_t block_size = getBlockSizeInSamples();
+    const uint32_t chunk_index = num_blocks_ / NUM_BLOCKS_PER_CHUNK;
+    const uint32_t index_in_chunk = num_blocks_ % NUM_BLOCKS_PER_CHUNK;
+
+    if (chunk_index >= chunks_.size()) {
+        // NOTE: the last chunk is sized to the max. number of blocks
+        const uint32_t num_blocks_in_chunk =
+            (std::min)(static_cast<uint32_t>(NUM_BLOCKS_PER_CHUNK), max_num_blocks_ - num_blocks_);
+        std::unique_ptr<float[]> chunk(new (std::nothrow) float[block_size * num_blocks_in_chunk]);
+
+        if (CXXPH_UNLIKELY(!chunk))
+            return false;
+
+        // NOTE: never throws, the capacity is reserved in allocate()
+        chunks_.push_back(std::move(chunk));
+    }
+
+    ::memcpy(&(chunks_[chunk_index][block_size * index_in_chunk]), block, sizeof(float) * block_size);
+    num_blocks_ += 1;
+
+    return true;
+}
+
+const float *AudioClip::getBlock(uint32_t index) const noexcept
+{
+    if (CXXPH_UNLIKELY(index >= num_blocks_))
+        return nullptr;
+
+    const uint32_t chunk_index = index / NUM_BLOCKS_PER_CHUNK;
+    const uint32_t index_in_chunk = index % NUM_BLOCKS_PER_CHUNK;
+
+    return &(chunks_[chunk_index][getBlockSizeInSamples() * index_in_chunk]);
+}
+
+uint32_t AudioClip::getNumBlocks() const noexcept { return num_blocks_; }
+
+uint32_t AudioClip::getBlockSizeInFrames() const noexcept { return block_size_in_frames_; }
+
+uint32_t AudioClip::getNumChannels() const noexcept { return num_channels_; }
+
+size_t AudioClip::getSizeInBytes() const noexcept { return sizeof(float) * getBlockSizeInSamples() * num_blocks_; }
+
+size_t AudioClip::getAllocatedSizeInBytes() const noexcept
+{
+    const size_t num_allocated_blocks =
+        (std::min)(static_cast<size_t>(max_num_blocks_), chunks_.size() * NUM_BLOCKS_PER_CHUNK);
+
+    return sizeof(float) * getBlockSizeInSamples() * num_allocated_blocks;
+}
+
+size_t AudioClip::getBlockSizeInSamples() const noexcept
+{
+    return static_cast<size_t>(num_channels_) * block_size_in_frames_;
+}
+
+void AudioClip::setMetadata(const OpenSLMediaPlayerMetadata &metadata) noexcept { metadata_ = metadata; }
+
+const OpenSLMediaPlayerMetadata &AudioClip::getMetadata() const noexcept { return metadata_; }
+
+//
+// AudioClipCache
+//
+AudioClipCache::AudioClipCache()
+    : mutex_(), entries_(), index_(), capacity_in_bytes_(0), max_clip_size_in_bytes_(0), total_size_in_bytes_(0)
+{
+}
+
+AudioClipCache::~AudioClipCache() { clear(); }
+
+int AudioClipCache::initialize(const initialize_args_t &args) noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    if (!entries_.empty())
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    capacity_in_bytes_ = args.capacity_in_bytes;
+    max_clip_size_in_bytes_ = (std::min)(args.max_clip_size_in_bytes, args.capacity_in_bytes);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool AudioClipCache::isEnabled() const noexcept { return (capacity_in_bytes_ != 0); }
+
+size_t AudioClipCache::getMaxClipSizeInBytes() const noexcept { return max_clip_size_in_bytes_; }
+
+bool AudioClipCache::lookup(const std::string &key, android::sp<AudioClip> &clip) noexcept
+{
+    clip.clear();
+
+    if (!isEnabled() || key.empty())
+        return false;
+
+    utils::pt_lock_guard lock(mutex_);
+
+    entry_index_t::iterator found = index_.find(key);
+
+    if (found == index_.end())
+        return false;
+
+    // move to front
+    // NOTE: splice() does not invalidate the iterator held by the index_
+    entries_.splice(entries_.begin(), entries_, (*found).second);
+    clip = entries_.front().clip;
+
+    return true;
+}
+
+int AudioClipCache::insert(const std::string &key, const android::sp<AudioClip> &clip) noexcept
+{
+    if (!isEnabled())
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (key.empty() || !clip.get())
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    // NOTE: the cache accounts the actually allocated memory
+    const size_t size = clip->getAllocatedSizeInBytes();
+
+    if (size > max_clip_size_in_bytes_)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_lock_guard lock(mutex_);
+
+    // remove the old entry
+    entry_index_t::iterator found = index_.find(key);
+
+    if (found != index_.end()) {
+        erase((*found).second);
+    }
+
+    evict(size);
+
+    try
+    {
+        entry_t entry;
+
+        entry.key = key;
+        entry.clip = clip;
+        entry.size = size;
+
+        entries_.push_front(entry);
+
+        try
+        {
+            index_[key] = entries_.begin();
+        }
+        catch (const std::bad_alloc &)
+        {
+            entries_.pop_front();
+            throw;
+        }
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    total_size_in_bytes_ += size;
+
+    LOGD("insert(); %zu bytes, total = %zu bytes, %zu entries", size, total_size_in_bytes_, entries_.size());
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioClipCache::clear() noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    index_.clear();
+    entries_.clear();
+    total_size_in_bytes_ = 0;
+}
+
+size_t AudioClipCache::getNumEntries() const noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+    return entries_.size();
+}
+
+size_t AudioClipCache::getTotalSizeInBytes() const noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+    return total_size_in_bytes_;
+}
+
+void AudioClipCache::evict(size_t required_size) noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    while (!entries_.empty() && (total_size_in_bytes_ + required_size) > capacity_in_bytes_) {
+        erase(--entries_.end());
+    }
+}
+
+void AudioClipCache::erase(entry_list_t::iterator it) noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    total_size_in_bytes_ -= (*it).size;
+    index_.erase((*it).key);
+    entries_.erase(it);
+}
+
+} // namespace impl
+} // namespace oslmp
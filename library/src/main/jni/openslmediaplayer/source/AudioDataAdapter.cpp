@@ -33,6 +33,9 @@
 
 #include <loghelper/loghelper.h>
 
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/PolyphaseResampler.hpp"
 #include "oslmp/utils/timespec_utils.hpp"
 
 namespace oslmp {
@@ -51,6 +54,7 @@ public:
     bool get_output_data(float *data, uint32_t num_channels, uint32_t num_frames) noexcept;
 
     bool flush() noexcept;
+    bool reset() noexcept;
 
 private:
     typedef cxxdasp::datatype::audio_frame<int16_t, 1> s16_mono_frame_t;
@@ -95,6 +99,15 @@ private:
 
     void fill_output_buffer() noexcept;
 
+    int resampler_num_can_put() const noexcept;
+    void resampler_put_n(const f32_stereo_frame_t *src, int n) noexcept;
+    int resampler_num_can_get() noexcept;
+    void resampler_get_n(f32_stereo_frame_t *dest, int n) noexcept;
+    void resampler_flush() noexcept;
+
+    static int sCreatePolyphaseResampler(const AudioDataAdapter::initialize_args_t &args,
+                                         std::unique_ptr<PolyphaseResampler> &resampler) noexcept;
+
     typedef cxxdasp::resampler::smart_resampler<f32_stereo_frame_t, f32_stereo_frame_t,
                                                 f32_stereo_halfband_core_operator_t, fft_backend_t,
                                                 polyphase_core_operator_t> f32_stereo_smart_resampler;
@@ -115,6 +128,7 @@ private:
     bool resampler_flushed_;
 
     std::unique_ptr<f32_stereo_smart_resampler> resampler_;
+    std::unique_ptr<PolyphaseResampler> polyphase_resampler_;
 
     s16_mono_to_f32_stereo_sample_format_converter mono2stereo_converter_;
     s16_to_f32_stereo_sample_format_converter stereo_converter_;
@@ -166,6 +180,13 @@ bool AudioDataAdapter::flush() noexcept
     return impl_->flush();
 }
 
+bool AudioDataAdapter::reset() noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return false;
+    return impl_->reset();
+}
+
 //
 // AudioDataAdapter::Impl
 //
@@ -210,37 +231,47 @@ bool AudioDataAdapter::Impl::init(const AudioDataAdapter::initialize_args_t &arg
         return false;
     }
 
-    cxxdasp::resampler::smart_resampler_params_factory::quality_spec_t smart_resampler_qspec;
-    switch (args.resampler_quality_spec) {
-    case RESAMPLER_QUALITY_LOW:
-        smart_resampler_qspec =
-            cxxdasp::resampler::smart_resampler_params_factory::LowQuality; // S/N = 70 dB, heavy aliasing
-        break;
-    case RESAMPLER_QUALITY_MIDDLE:
-        smart_resampler_qspec =
-            cxxdasp::resampler::smart_resampler_params_factory::MidQuality; // slight aliasing, 16-bit quality
-        break;
-    case RESAMPLER_QUALITY_HIGH:
-        smart_resampler_qspec =
-            cxxdasp::resampler::smart_resampler_params_factory::HighQuality; // no aliasing, 24-bit quality
-        break;
-    default:
-        return false;
-    }
+    std::unique_ptr<f32_stereo_smart_resampler> resampler;
+    std::unique_ptr<PolyphaseResampler> polyphase_resampler;
+
+    if (PolyphaseResamplerCoeffBank::sIsSupportedRatio(args.in_sampling_rate / 1000, args.out_sampling_rate / 1000)) {
+        // use the polyphase resampler (the coefficients are shared via the cache)
+        if (sCreatePolyphaseResampler(args, polyphase_resampler) != OSLMP_RESULT_SUCCESS) {
+            return false;
+        }
+    } else {
+        cxxdasp::resampler::smart_resampler_params_factory::quality_spec_t smart_resampler_qspec;
+        switch (args.resampler_quality_spec) {
+        case RESAMPLER_QUALITY_LOW:
+            smart_resampler_qspec =
+                cxxdasp::resampler::smart_resampler_params_factory::LowQuality; // S/N = 70 dB, heavy aliasing
+            break;
+        case RESAMPLER_QUALITY_MIDDLE:
+            smart_resampler_qspec =
+                cxxdasp::resampler::smart_resampler_params_factory::MidQuality; // slight aliasing, 16-bit quality
+            break;
+        case RESAMPLER_QUALITY_HIGH:
+            smart_resampler_qspec =
+                cxxdasp::resampler::smart_resampler_params_factory::HighQuality; // no aliasing, 24-bit quality
+            break;
+        default:
+            return false;
+        }
 
-    LOGD("Resampler quality: %d", smart_resampler_qspec);
+        LOGD("Resampler quality: %d", smart_resampler_qspec);
 
-    cxxdasp::resampler::smart_resampler_params_factory pf((args.in_sampling_rate / 1000),
-                                                          (args.out_sampling_rate / 1000), smart_resampler_qspec);
+        cxxdasp::resampler::smart_resampler_params_factory pf((args.in_sampling_rate / 1000),
+                                                              (args.out_sampling_rate / 1000), smart_resampler_qspec);
 
-    if (!pf) {
-        return false;
-    }
+        if (!pf) {
+            return false;
+        }
 
-    std::unique_ptr<f32_stereo_smart_resampler> resampler(new (std::nothrow) f32_stereo_smart_resampler(pf.params()));
+        resampler.reset(new (std::nothrow) f32_stereo_smart_resampler(pf.params()));
 
-    if (!resampler) {
-        return false;
+        if (!resampler) {
+            return false;
+        }
     }
 
     cxxporthelper::aligned_memory<f32_stereo_frame_t> f32_stereo_input_buffer(args.in_block_size);
@@ -255,6 +286,7 @@ bool AudioDataAdapter::Impl::init(const AudioDataAdapter::initialize_args_t &arg
     flushed_ = false;
     resampler_flushed_ = false;
     resampler_ = std::move(resampler);
+    polyphase_resampler_ = std::move(polyphase_resampler);
     pooled_input_data_count_ = 0;
     pooled_output_data_count_ = 0;
     f32_stereo_input_buffer_ = std::move(f32_stereo_input_buffer);
@@ -263,6 +295,31 @@ bool AudioDataAdapter::Impl::init(const AudioDataAdapter::initialize_args_t &arg
     return true;
 }
 
+bool AudioDataAdapter::Impl::reset() noexcept
+{
+    if (polyphase_resampler_) {
+        // the coefficients are kept, only the filter history is cleared
+        polyphase_resampler_->reset();
+
+        flushed_ = false;
+        resampler_flushed_ = false;
+        pooled_input_data_count_ = 0;
+        pooled_output_data_count_ = 0;
+
+        return true;
+    }
+
+    if (CXXPH_UNLIKELY(!resampler_)) {
+        return false;
+    }
+
+    // NOTE: the resampler does not provide a way to clear its internal state,
+    // so re-create it with the same parameters
+    const AudioDataAdapter::initialize_args_t args = init_args_;
+
+    return init(args);
+}
+
 bool AudioDataAdapter::Impl::is_output_data_ready() const noexcept
 {
     if (!resampler_flushed_) {
@@ -362,20 +419,20 @@ void AudioDataAdapter::Impl::fill_output_buffer() noexcept
 {
 
     while (true) {
-        const int n_can_put = (std::min)(resampler_->num_can_put(), static_cast<int>(pooled_input_data_count_));
+        const int n_can_put = (std::min)(resampler_num_can_put(), static_cast<int>(pooled_input_data_count_));
 
         if (CXXPH_LIKELY(n_can_put > 0)) {
             const size_t offset = init_args_.in_block_size - pooled_input_data_count_;
-            resampler_->put_n(&f32_stereo_input_buffer_[offset], n_can_put);
+            resampler_put_n(&f32_stereo_input_buffer_[offset], n_can_put);
             pooled_input_data_count_ -= n_can_put;
         }
 
-        const int n_can_get = (std::min)(resampler_->num_can_get(),
+        const int n_can_get = (std::min)(resampler_num_can_get(),
                                          static_cast<int>(init_args_.out_block_size - pooled_output_data_count_));
 
         if (CXXPH_LIKELY(n_can_get > 0)) {
             const size_t offset = pooled_output_data_count_;
-            resampler_->get_n(&f32_stereo_output_buffer_[offset], n_can_get);
+            resampler_get_n(&f32_stereo_output_buffer_[offset], n_can_get);
             pooled_output_data_count_ += n_can_get;
         }
 
@@ -383,7 +440,7 @@ void AudioDataAdapter::Impl::fill_output_buffer() noexcept
             // flush resampler
             if (CXXPH_UNLIKELY(flushed_ && !resampler_flushed_)) {
                 resampler_flushed_ = true;
-                resampler_->flush();
+                resampler_flush();
                 continue;
             }
 
@@ -392,5 +449,101 @@ void AudioDataAdapter::Impl::fill_output_buffer() noexcept
     }
 }
 
+int AudioDataAdapter::Impl::resampler_num_can_put() const noexcept
+{
+    if (polyphase_resampler_) {
+        return polyphase_resampler_->num_can_put();
+    } else {
+        return resampler_->num_can_put();
+    }
+}
+
+void AudioDataAdapter::Impl::resampler_put_n(const f32_stereo_frame_t *src, int n) noexcept
+{
+    if (polyphase_resampler_) {
+        polyphase_resampler_->put_n(reinterpret_cast<const float *>(src), n);
+    } else {
+        resampler_->put_n(src, n);
+    }
+}
+
+int AudioDataAdapter::Impl::resampler_num_can_get() noexcept
+{
+    if (polyphase_resampler_) {
+        return polyphase_resampler_->num_can_get();
+    } else {
+        return resampler_->num_can_get();
+    }
+}
+
+void AudioDataAdapter::Impl::resampler_get_n(f32_stereo_frame_t *dest, int n) noexcept
+{
+    if (polyphase_resampler_) {
+        polyphase_resampler_->get_n(reinterpret_cast<float *>(dest), n);
+    } else {
+        resampler_->get_n(dest, n);
+    }
+}
+
+void AudioDataAdapter::Impl::resampler_flush() noexcept
+{
+    if (polyphase_resampler_) {
+        polyphase_resampler_->flush();
+    } else {
+        resampler_->flush();
+    }
+}
+
+int AudioDataAdapter::Impl::sCreatePolyphaseResampler(const AudioDataAdapter::initialize_args_t &args,
+                                                      std::unique_ptr<PolyphaseResampler> &resampler) noexcept
+{
+    const uint32_t in_sampling_rate = args.in_sampling_rate / 1000;
+    const uint32_t out_sampling_rate = args.out_sampling_rate / 1000;
+    PolyphaseResamplerCoeffBank::quality_t quality;
+    android::sp<PolyphaseResamplerCoeffBank> bank;
+    int result;
+
+    switch (args.resampler_quality_spec) {
+    case RESAMPLER_QUALITY_LOW:
+        quality = PolyphaseResamplerCoeffBank::QUALITY_LOW;
+        break;
+    case RESAMPLER_QUALITY_MIDDLE:
+        quality = PolyphaseResamplerCoeffBank::QUALITY_MIDDLE;
+        break;
+    case RESAMPLER_QUALITY_HIGH:
+        quality = PolyphaseResamplerCoeffBank::QUALITY_HIGH;
+        break;
+    default:
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    if (args.resampler_coeff_bank_cache) {
+        result = args.resampler_coeff_bank_cache->obtain(in_sampling_rate, out_sampling_rate, quality, bank);
+    } else {
+        bank = new (std::nothrow) PolyphaseResamplerCoeffBank();
+        result = (bank.get()) ? bank->design(in_sampling_rate, out_sampling_rate, quality)
+                              : OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+    }
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    std::unique_ptr<PolyphaseResampler> new_resampler(new (std::nothrow) PolyphaseResampler());
+
+    if (!new_resampler)
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+
+    result = new_resampler->init(bank);
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    LOGD("Polyphase resampler: %u -> %u Hz, quality = %d", in_sampling_rate, out_sampling_rate, quality);
+
+    resampler = std::move(new_resampler);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
 } // namespace oslmp
 } // namespace impl
@@ -19,6 +19,7 @@
 #include "oslmp/impl/AudioDataPipeManager.hpp"
 
 #include <cassert>
+#include <vector>
 #ifdef LOG_TAG
 #include <string>
 #endif
@@ -31,7 +32,7 @@
 #include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
 
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
-#include "oslmp/utils/bitmap_looper.hpp"
+#include "oslmp/utils/fixed_bitmap.hpp"
 
 #define ENABLE_DEFFERED_BUFFER_ALLOCATION 1
 
@@ -53,30 +54,47 @@ struct PipeHolder {
     bool is_used() const noexcept { return (in_port_user || out_port_user); }
 };
 
+template <int NMaxPipes>
 struct PipeUserManageBitmap {
-    uint32_t in_port;
-    uint32_t out_port;
+    typedef utils::fixed_bitmap<NMaxPipes> bitmap_t;
 
-    PipeUserManageBitmap() : in_port(0), out_port(0) {}
+    bitmap_t in_port;
+    bitmap_t out_port;
 
-    bool is_used(uint32_t mask) const noexcept { return (mask & (in_port | out_port)); }
+    PipeUserManageBitmap() : in_port(), out_port() {}
 
-    uint32_t get_need_polling_mask() const noexcept { return (in_port | out_port); }
+    bool is_used(int index) const noexcept { return in_port.test(index) || out_port.test(index); }
+
+    bitmap_t get_need_polling_mask() const noexcept { return (in_port | out_port); }
 };
 
-template <class TPipe, class TEventListener, int NPipes>
+template <class TPipe, class TEventListener, int NMaxPipes>
 struct PipeGroup {
     typedef TPipe pipe_t;
     typedef TEventListener event_listener_t;
     typedef PipeHolder<TPipe, TEventListener> holder_t;
 
-    enum { NUM_PIPES = NPipes };
+    enum { MAX_PIPES = NMaxPipes };
 
     // fields
-    holder_t pipes[NPipes];
-    PipeUserManageBitmap user_bitmap;
+    std::vector<holder_t> pipes; // (sized by allocate())
+    PipeUserManageBitmap<NMaxPipes> user_bitmap;
 
     // methods
+    int allocate(uint32_t num_pipes) noexcept
+    {
+        if (!(num_pipes >= 1 && num_pipes <= MAX_PIPES))
+            return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+        try
+        {
+            pipes.resize(num_pipes);
+        }
+        catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+        return OSLMP_RESULT_SUCCESS;
+    }
+
     template <typename Func>
     holder_t *findPipeHolder(Func matcher) noexcept
     {
@@ -117,9 +135,12 @@ struct PipeGroup {
 
     int getIndex(const holder_t *holder) const noexcept
     {
+        if (CXXPH_UNLIKELY(pipes.empty()))
+            return -1;
+
         const uintptr_t addr = reinterpret_cast<uintptr_t>(holder);
         const uintptr_t start = reinterpret_cast<uintptr_t>(&(pipes[0]));
-        const uintptr_t end = reinterpret_cast<uintptr_t>(&(pipes[NUM_PIPES - 1]));
+        const uintptr_t end = reinterpret_cast<uintptr_t>(&(pipes[pipes.size() - 1]));
         const size_t size = sizeof(holder_t);
 
         if ((addr >= start) && (addr <= end) && (((addr - start) % size) == 0)) {
@@ -133,7 +154,7 @@ struct PipeGroup {
 class AudioDataPipeManager::Impl {
 public:
     enum {
-        MAX_SOURCE_PIPES = 16,
+        MAX_SOURCE_PIPES = AudioDataPipeManager::NUM_MAX_SOURCE_PIPES,
         SOURCE_PIPE_NUM_CHANNELS = 2,
         MAX_SINK_PIPES = 1,
         SINK_PIPE_NUM_CHANNELS = 2,
@@ -234,11 +255,11 @@ int setPipeInPortUser(TPipeGroup &group, typename TPipeGroup::pipe_t *pipe, void
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
-    const uint32_t mask = static_cast<uint32_t>(1UL << group.getIndex(holder));
+    const int index = group.getIndex(holder);
 
 #if ENABLE_DEFFERED_BUFFER_ALLOCATION
-    const bool prev_is_used = (((group.user_bitmap.in_port | group.user_bitmap.out_port) & mask) != 0);
-    const bool next_is_used = (set_or_clear) ? true : ((group.user_bitmap.out_port & mask) != 0);
+    const bool prev_is_used = group.user_bitmap.is_used(index);
+    const bool next_is_used = (set_or_clear) ? true : group.user_bitmap.out_port.test(index);
 
     int result;
 
@@ -256,11 +277,11 @@ int setPipeInPortUser(TPipeGroup &group, typename TPipeGroup::pipe_t *pipe, void
 #endif
 
     if (set_or_clear) {
-        group.user_bitmap.in_port |= mask;
+        group.user_bitmap.in_port.set(index);
         holder->in_port_user = user;
         holder->listener = listener;
     } else {
-        group.user_bitmap.in_port &= ~mask;
+        group.user_bitmap.in_port.reset(index);
         holder->in_port_user = nullptr;
         holder->listener = nullptr;
     }
@@ -286,11 +307,11 @@ int setPipeOutPortUser(TPipeGroup &group, typename TPipeGroup::pipe_t *pipe, voi
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
-    const uint32_t mask = static_cast<uint32_t>(1UL << group.getIndex(holder));
+    const int index = group.getIndex(holder);
 
 #if ENABLE_DEFFERED_BUFFER_ALLOCATION
-    const bool prev_is_used = (((group.user_bitmap.in_port | group.user_bitmap.out_port) & mask) != 0);
-    const bool next_is_used = (set_or_clear) ? true : ((group.user_bitmap.in_port & mask) != 0);
+    const bool prev_is_used = group.user_bitmap.is_used(index);
+    const bool next_is_used = (set_or_clear) ? true : group.user_bitmap.in_port.test(index);
 
     int result;
 
@@ -308,10 +329,10 @@ int setPipeOutPortUser(TPipeGroup &group, typename TPipeGroup::pipe_t *pipe, voi
 #endif
 
     if (set_or_clear) {
-        group.user_bitmap.out_port |= mask;
+        group.user_bitmap.out_port.set(index);
         holder->out_port_user = user;
     } else {
-        group.user_bitmap.out_port &= ~mask;
+        group.user_bitmap.out_port.reset(index);
         holder->out_port_user = nullptr;
     }
 
@@ -511,6 +532,15 @@ int AudioDataPipeManager::Impl::initialize(const AudioDataPipeManager::initializ
 {
     int result = OSLMP_RESULT_SUCCESS;
 
+    result = source_pipe_group_.allocate(args.source_num_pipes);
+    if (result == OSLMP_RESULT_SUCCESS)
+        result = sink_pipe_group_.allocate(MAX_SINK_PIPES);
+    if (result == OSLMP_RESULT_SUCCESS)
+        result = capture_pipe_group_.allocate(MAX_CAPTURE_PIPES);
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
     // source
     for (auto &holder : source_pipe_group_.pipes) {
         AudioSourceDataPipe::initialize_args_t src_args;
@@ -690,29 +720,26 @@ int AudioDataPipeManager::Impl::setCapturePipeOutPortUser(AudioCaptureDataPipe *
 
 int AudioDataPipeManager::Impl::getStatus(AudioDataPipeManager::status_t &status) const noexcept
 {
-    status.source_num_in_port_users = ::__builtin_popcount(source_pipe_group_.user_bitmap.in_port);
-    status.source_num_out_port_users = ::__builtin_popcount(source_pipe_group_.user_bitmap.out_port);
-    status.sink_num_in_port_users = ::__builtin_popcount(sink_pipe_group_.user_bitmap.in_port);
-    status.sink_num_out_port_users = ::__builtin_popcount(sink_pipe_group_.user_bitmap.out_port);
-    status.capture_num_in_port_users = ::__builtin_popcount(capture_pipe_group_.user_bitmap.in_port);
-    status.capture_num_out_port_users = ::__builtin_popcount(capture_pipe_group_.user_bitmap.out_port);
+    status.source_num_in_port_users = source_pipe_group_.user_bitmap.in_port.count();
+    status.source_num_out_port_users = source_pipe_group_.user_bitmap.out_port.count();
+    status.sink_num_in_port_users = sink_pipe_group_.user_bitmap.in_port.count();
+    status.sink_num_out_port_users = sink_pipe_group_.user_bitmap.out_port.count();
+    status.capture_num_in_port_users = capture_pipe_group_.user_bitmap.in_port.count();
+    status.capture_num_out_port_users = capture_pipe_group_.user_bitmap.out_port.count();
 
     return OSLMP_RESULT_SUCCESS;
 }
 
 bool AudioDataPipeManager::Impl::isPollingRequired() const noexcept
 {
-    const uint32_t need_polling = source_pipe_group_.user_bitmap.get_need_polling_mask();
-    return (need_polling != 0);
+    return source_pipe_group_.user_bitmap.get_need_polling_mask().any();
 }
 
 void AudioDataPipeManager::Impl::poll() noexcept
 {
     assert(isPollingRequired());
 
-    const uint32_t need_polling = source_pipe_group_.user_bitmap.get_need_polling_mask();
-
-    utils::bitmap_looper looper(need_polling);
+    utils::fixed_bitmap_looper<MAX_SOURCE_PIPES> looper(source_pipe_group_.user_bitmap.get_need_polling_mask());
 
     while (looper.loop()) {
         const int index = looper.index();
@@ -0,0 +1,835 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "ADMediaCodecBackend"
+
+#include "oslmp/impl/AudioDecoderMediaCodecBackend.hpp"
+
+#include <algorithm>
+#include <cstring>
+#include <new>
+
+#include <dlfcn.h>
+#include <unistd.h>
+#include <sys/types.h>
+#include <sys/stat.h>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/OpenSLMediaPlayerMetadata.hpp"
+#include "oslmp/impl/AndroidHelper.hpp"
+
+//
+// forward declarations (NDK media API)
+//
+struct AMediaFormat;
+struct AMediaCrypto;
+struct ANativeWindow;
+
+namespace oslmp {
+namespace impl {
+
+namespace {
+
+// NOTE:
+// The following declarations are compatible with <media/NdkMedia*.h> (API level 21).
+// The headers are not used because the APP_PLATFORM is lower than that.
+
+const int32_t kMediaStatusOk = 0;
+const uint32_t kBufferFlagEndOfStream = 4;
+const ssize_t kInfoOutputFormatChanged = -2;
+const int32_t kSeekPreviousSync = 0;
+const int32_t kPcmEncoding16Bit = 2;
+
+const char kKeyMime[] = "mime";
+const char kKeySampleRate[] = "sample-rate";
+const char kKeyChannelCount[] = "channel-count";
+const char kKeyDuration[] = "durationUs";
+const char kKeyPcmEncoding[] = "pcm-encoding";
+
+struct media_codec_buffer_info_t {
+    int32_t offset;
+    int32_t size;
+    int64_t presentationTimeUs;
+    uint32_t flags;
+};
+
+struct MediaNdkApi {
+    bool available;
+
+    AMediaExtractor *(*AMediaExtractor_new)();
+    int32_t (*AMediaExtractor_delete)(AMediaExtractor *);
+    int32_t (*AMediaExtractor_setDataSourceFd)(AMediaExtractor *, int, off64_t, off64_t);
+    int32_t (*AMediaExtractor_setDataSource)(AMediaExtractor *, const char *);
+    size_t (*AMediaExtractor_getTrackCount)(AMediaExtractor *);
+    AMediaFormat *(*AMediaExtractor_getTrackFormat)(AMediaExtractor *, size_t);
+    int32_t (*AMediaExtractor_selectTrack)(AMediaExtractor *, size_t);
+    ssize_t (*AMediaExtractor_readSampleData)(AMediaExtractor *, uint8_t *, size_t);
+    int64_t (*AMediaExtractor_getSampleTime)(AMediaExtractor *);
+    bool (*AMediaExtractor_advance)(AMediaExtractor *);
+    int32_t (*AMediaExtractor_seekTo)(AMediaExtractor *, int64_t, int32_t);
+
+    int32_t (*AMediaFormat_delete)(AMediaFormat *);
+    bool (*AMediaFormat_getInt32)(AMediaFormat *, const char *, int32_t *);
+    bool (*AMediaFormat_getInt64)(AMediaFormat *, const char *, int64_t *);
+    bool (*AMediaFormat_getString)(AMediaFormat *, const char *, const char **);
+
+    AMediaCodec *(*AMediaCodec_createDecoderByType)(const char *);
+    int32_t (*AMediaCodec_delete)(AMediaCodec *);
+    int32_t (*AMediaCodec_configure)(AMediaCodec *, const AMediaFormat *, ANativeWindow *, AMediaCrypto *, uint32_t);
+    int32_t (*AMediaCodec_start)(AMediaCodec *);
+    int32_t (*AMediaCodec_stop)(AMediaCodec *);
+    int32_t (*AMediaCodec_flush)(AMediaCodec *);
+    ssize_t (*AMediaCodec_dequeueInputBuffer)(AMediaCodec *, int64_t);
+    uint8_t *(*AMediaCodec_getInputBuffer)(AMediaCodec *, size_t, size_t *);
+    int32_t (*AMediaCodec_queueInputBuffer)(AMediaCodec *, size_t, off_t, size_t, uint64_t, uint32_t);
+    ssize_t (*AMediaCodec_dequeueOutputBuffer)(AMediaCodec *, media_codec_buffer_info_t *, int64_t);
+    uint8_t *(*AMediaCodec_getOutputBuffer)(AMediaCodec *, size_t, size_t *);
+    int32_t (*AMediaCodec_releaseOutputBuffer)(AMediaCodec *, size_t, bool);
+    AMediaFormat *(*AMediaCodec_getOutputFormat)(AMediaCodec *);
+};
+
+MediaNdkApi g_media_ndk_api;
+pthread_once_t g_media_ndk_api_once = PTHREAD_ONCE_INIT;
+
+template <typename T>
+bool load_symbol(void *handle, const char *name, T &func) noexcept
+{
+    func = reinterpret_cast<T>(::dlsym(handle, name));
+    return (func != nullptr);
+}
+
+#define LOAD_MEDIA_NDK_SYMBOL(handle, api, name) load_symbol((handle), #name, (api).name)
+
+void load_media_ndk_api() noexcept
+{
+    MediaNdkApi api;
+
+    ::memset(&api, 0, sizeof(api));
+
+    // NOTE: the library is not unloaded once it has been loaded successfully
+    void *handle = ::dlopen("libmediandk.so", RTLD_NOW);
+
+    if (!handle) {
+        LOGD("libmediandk.so is not available");
+        return;
+    }
+
+    bool loaded = true;
+
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_new);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_delete);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_setDataSourceFd);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_setDataSource);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_getTrackCount);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_getTrackFormat);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_selectTrack);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_readSampleData);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_getSampleTime);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_advance);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaExtractor_seekTo);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaFormat_delete);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaFormat_getInt32);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaFormat_getInt64);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaFormat_getString);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_createDecoderByType);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_delete);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_configure);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_start);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_stop);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_flush);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_dequeueInputBuffer);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_getInputBuffer);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_queueInputBuffer);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_dequeueOutputBuffer);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_getOutputBuffer);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_releaseOutputBuffer);
+    loaded = loaded && LOAD_MEDIA_NDK_SYMBOL(handle, api, AMediaCodec_getOutputFormat);
+
+    if (!loaded) {
+        LOGW("libmediandk.so does not export the required functions");
+        (void)::dlclose(handle);
+        return;
+    }
+
+    api.available = true;
+    g_media_ndk_api = api;
+}
+
+const MediaNdkApi &get_media_ndk_api() noexcept
+{
+    (void)::pthread_once(&g_media_ndk_api_once, load_media_ndk_api);
+    return g_media_ndk_api;
+}
+
+} // anonymous namespace
+
+//
+// AudioDecoderMediaCodecBackend
+//
+AudioDecoderMediaCodecBackend::AudioDecoderMediaCodecBackend()
+    : listener_(nullptr), block_size_in_frames_(0), extractor_(nullptr), codec_(nullptr), codec_started_(false),
+      duration_us_(-1), sampling_rate_(0), num_channels_(0), pt_handle_(0), mutex_(), cv_(), stop_request_(false),
+      seek_requested_(false), running_(false), seek_position_us_(0), seek_serial_(0), prefetch_state_(PREFETCH_NONE),
+      pcm_buffer_(), pcm_read_pos_(0), pcm_num_frames_(0), skip_until_us_(-1), delivery_stopped_(false),
+      output_serial_(0)
+{
+}
+
+AudioDecoderMediaCodecBackend::~AudioDecoderMediaCodecBackend() { onClose(); }
+
+bool AudioDecoderMediaCodecBackend::sIsAvailable() noexcept { return get_media_ndk_api().available; }
+
+int AudioDecoderMediaCodecBackend::onOpen(const open_args_t &args) noexcept
+{
+    const MediaNdkApi &api = get_media_ndk_api();
+
+    if (!(args.listener && args.block_size_in_frames))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!(args.path_uri || args.fd >= 0))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!api.available || extractor_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    AMediaExtractor *extractor = api.AMediaExtractor_new();
+
+    if (!extractor)
+        return OSLMP_RESULT_INTERNAL_ERROR;
+
+    // set data source
+    int32_t status;
+
+    if (args.path_uri) {
+        status = api.AMediaExtractor_setDataSource(extractor, args.path_uri);
+    } else {
+        const int64_t offset = (args.offset >= 0) ? args.offset : 0;
+        int64_t length = args.length;
+
+        if (length < 0) {
+            struct stat st;
+            length = (::fstat(args.fd, &st) == 0) ? (static_cast<int64_t>(st.st_size) - offset) : -1;
+        }
+
+        status = (length >= 0) ? api.AMediaExtractor_setDataSourceFd(extractor, args.fd, offset, length) : -1;
+    }
+
+    if (status != kMediaStatusOk) {
+        (void)api.AMediaExtractor_delete(extractor);
+        return OSLMP_RESULT_CONTENT_NOT_FOUND;
+    }
+
+    // select the first audio track
+    const size_t num_tracks = api.AMediaExtractor_getTrackCount(extractor);
+    AMediaCodec *codec = nullptr;
+    int64_t duration_us = -1;
+
+    for (size_t i = 0; i < num_tracks; ++i) {
+        AMediaFormat *format = api.AMediaExtractor_getTrackFormat(extractor, i);
+        const char *mime = nullptr;
+
+        if (!format)
+            continue;
+
+        if (!(api.AMediaFormat_getString(format, kKeyMime, &mime) && mime && ::strncmp(mime, "audio/", 6) == 0)) {
+            (void)api.AMediaFormat_delete(format);
+            continue;
+        }
+
+        if (!api.AMediaFormat_getInt64(format, kKeyDuration, &duration_us)) {
+            duration_us = -1;
+        }
+
+        codec = api.AMediaCodec_createDecoderByType(mime);
+
+        if (codec && !(api.AMediaCodec_configure(codec, format, nullptr, nullptr, 0) == kMediaStatusOk &&
+                       api.AMediaExtractor_selectTrack(extractor, i) == kMediaStatusOk)) {
+            (void)api.AMediaCodec_delete(codec);
+            codec = nullptr;
+        }
+
+        (void)api.AMediaFormat_delete(format);
+        break;
+    }
+
+    if (!codec) {
+        LOGW("No decodable audio track found");
+        (void)api.AMediaExtractor_delete(extractor);
+        return OSLMP_RESULT_CONTENT_UNSUPPORTED;
+    }
+
+    listener_ = args.listener;
+    block_size_in_frames_ = args.block_size_in_frames;
+    extractor_ = extractor;
+    codec_ = codec;
+    duration_us_ = duration_us;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioDecoderMediaCodecBackend::onClose() noexcept
+{
+    const MediaNdkApi &api = get_media_ndk_api();
+
+    stopDecoderThread();
+
+    if (codec_) {
+        if (codec_started_) {
+            (void)api.AMediaCodec_stop(codec_);
+        }
+        (void)api.AMediaCodec_delete(codec_);
+        codec_ = nullptr;
+    }
+
+    if (extractor_) {
+        (void)api.AMediaExtractor_delete(extractor_);
+        extractor_ = nullptr;
+    }
+
+    codec_started_ = false;
+    duration_us_ = -1;
+    sampling_rate_ = 0;
+    num_channels_ = 0;
+    running_ = false;
+    seek_requested_ = false;
+    seek_serial_ = 0;
+    prefetch_state_ = PREFETCH_NONE;
+    pcm_read_pos_ = 0;
+    pcm_num_frames_ = 0;
+    skip_until_us_ = -1;
+    delivery_stopped_ = false;
+    output_serial_ = 0;
+}
+
+int AudioDecoderMediaCodecBackend::onStartPrefetch() noexcept
+{
+    const MediaNdkApi &api = get_media_ndk_api();
+
+    if (!codec_ || pt_handle_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (api.AMediaCodec_start(codec_) != kMediaStatusOk)
+        return OSLMP_RESULT_CONTENT_UNSUPPORTED;
+
+    codec_started_ = true;
+
+    setPrefetchState(PREFETCH_RUNNING);
+
+    return startDecoderThread();
+}
+
+int AudioDecoderMediaCodecBackend::onPollPrefetch(int timeout_ms, bool &completed) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    completed = false;
+
+    if (prefetch_state_ == PREFETCH_RUNNING) {
+        if (timeout_ms < 0) {
+            while (prefetch_state_ == PREFETCH_RUNNING) {
+                cv_.wait(lock);
+            }
+        } else if (timeout_ms > 0) {
+            (void)cv_.wait_relative_ms(lock, timeout_ms);
+        }
+    }
+
+    switch (prefetch_state_) {
+    case PREFETCH_RUNNING:
+        // retry expected
+        return OSLMP_RESULT_SUCCESS;
+    case PREFETCH_COMPLETED:
+        completed = true;
+        return OSLMP_RESULT_SUCCESS;
+    case PREFETCH_ERROR:
+        completed = true;
+        return OSLMP_RESULT_CONTENT_UNSUPPORTED;
+    case PREFETCH_NONE:
+    default:
+        completed = true;
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+}
+
+int AudioDecoderMediaCodecBackend::onGetMetadata(OpenSLMediaPlayerMetadata &metadata) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    metadata.clear();
+
+    if (prefetch_state_ != PREFETCH_COMPLETED)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    metadata.numChannels.set(num_channels_);
+    metadata.samplesPerSec.set(sampling_rate_ * 1000UL);
+    metadata.bitsPerSample.set(SL_PCMSAMPLEFORMAT_FIXED_16);
+    metadata.containerSize.set(16);
+    metadata.channelMask.set((num_channels_ == 1) ? SL_SPEAKER_FRONT_CENTER
+                                                  : (SL_SPEAKER_FRONT_LEFT | SL_SPEAKER_FRONT_RIGHT));
+    metadata.endianness.set(SL_BYTEORDER_LITTLEENDIAN);
+    metadata.duration.set((duration_us_ >= 0) ? static_cast<SLmillisecond>((duration_us_ + 500) / 1000)
+                                              : SL_TIME_UNKNOWN);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderMediaCodecBackend::onSeekTo(int32_t msec, uint32_t seek_serial) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    if (!pt_handle_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    // NOTE: the seek request is handled by the decoder thread
+    seek_position_us_ = static_cast<int64_t>((std::max)(msec, 0)) * 1000;
+    seek_serial_ = seek_serial;
+    seek_requested_.store(true, std::memory_order_release);
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderMediaCodecBackend::onStart() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    if (!pt_handle_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    running_ = true;
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderMediaCodecBackend::onPause() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    running_ = false;
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderMediaCodecBackend::onStop() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    running_ = false;
+    stop_request_.store(true, std::memory_order_release);
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderMediaCodecBackend::startDecoderThread() noexcept
+{
+    pthread_t pt_handle;
+
+    stop_request_ = false;
+
+    if (::pthread_create(&pt_handle, nullptr, &AudioDecoderMediaCodecBackend::decoderThreadEntryFunc, this) != 0) {
+        setPrefetchState(PREFETCH_ERROR);
+        return OSLMP_RESULT_INTERNAL_ERROR;
+    }
+
+    {
+        utils::pt_unique_lock lock(mutex_);
+        pt_handle_ = pt_handle;
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioDecoderMediaCodecBackend::stopDecoderThread() noexcept
+{
+    if (!pt_handle_) {
+        return;
+    }
+
+    {
+        utils::pt_unique_lock lock(mutex_);
+        stop_request_ = true;
+        cv_.notify_all();
+    }
+
+    (void)::pthread_join(pt_handle_, nullptr);
+    pt_handle_ = 0;
+    stop_request_ = false;
+}
+
+void *AudioDecoderMediaCodecBackend::decoderThreadEntryFunc(void *args) noexcept
+{
+    AudioDecoderMediaCodecBackend *thiz = static_cast<AudioDecoderMediaCodecBackend *>(args);
+
+    AndroidHelper::setCurrentThreadName("MediaCodecDecoder");
+
+    thiz->decoderThreadProcess();
+
+    return nullptr;
+}
+
+void AudioDecoderMediaCodecBackend::decoderThreadProcess() noexcept
+{
+    const MediaNdkApi &api = get_media_ndk_api();
+    bool input_eos = false;
+    bool output_eos = false;
+    bool eod_delivered = false;
+    int decode_error = OSLMP_RESULT_SUCCESS;
+
+    while (CXXPH_LIKELY(!stop_request_.load(std::memory_order_acquire))) {
+        bool running;
+        bool prefetched;
+        bool seek = false;
+        int64_t seek_position_us = 0;
+        uint32_t seek_serial = 0;
+
+        {
+            utils::pt_unique_lock lock(mutex_);
+
+            // wait while there is nothing to do
+            while (!(stop_request_.load(std::memory_order_relaxed) || seek_requested_.load(std::memory_order_relaxed))) {
+                const bool has_block = (pcm_num_frames_ - pcm_read_pos_) >= block_size_in_frames_;
+                const bool completed = (prefetch_state_ == PREFETCH_COMPLETED);
+                const bool idle = (prefetch_state_ == PREFETCH_ERROR) || delivery_stopped_ || eod_delivered ||
+                                  (completed && !running_ && (has_block || output_eos));
+
+                if (!idle)
+                    break;
+
+                cv_.wait(lock);
+            }
+
+            if (stop_request_.load(std::memory_order_relaxed))
+                break;
+
+            if (seek_requested_.load(std::memory_order_relaxed)) {
+                seek = true;
+                seek_position_us = seek_position_us_;
+                seek_serial = seek_serial_;
+                seek_requested_.store(false, std::memory_order_relaxed);
+            }
+
+            running = running_;
+            prefetched = (prefetch_state_ == PREFETCH_COMPLETED);
+        }
+
+        if (seek) {
+            (void)api.AMediaExtractor_seekTo(extractor_, seek_position_us, kSeekPreviousSync);
+            (void)api.AMediaCodec_flush(codec_);
+
+            // the decoding restarts from the preceding sync sample,
+            // the output before the seek position is discarded
+            pcm_read_pos_ = 0;
+            pcm_num_frames_ = 0;
+            skip_until_us_ = seek_position_us;
+            output_serial_ = seek_serial;
+            input_eos = false;
+            output_eos = false;
+            eod_delivered = false;
+            decode_error = OSLMP_RESULT_SUCCESS;
+            delivery_stopped_ = false;
+            continue;
+        }
+
+        bool succeeded = true;
+        int error = OSLMP_RESULT_ERROR;
+
+        if (!input_eos && decode_error == OSLMP_RESULT_SUCCESS) {
+            succeeded = feedInput(input_eos);
+        }
+
+        if (succeeded && !output_eos) {
+            succeeded = drainOutput(output_eos, error);
+        }
+
+        if (!prefetched) {
+            // the prefetch completes when the output format is determined
+            if (succeeded && sampling_rate_ != 0 && num_channels_ != 0) {
+                setPrefetchState(PREFETCH_COMPLETED);
+            } else if (!succeeded || output_eos) {
+                LOGE("Failed to determine the output format");
+                setPrefetchState(PREFETCH_ERROR);
+            }
+            continue;
+        }
+
+        if (!succeeded) {
+            // the rest of the stream is discarded, the error is reported instead of the end of data
+            LOGE("Decoding error, the rest of the stream is discarded");
+            decode_error = error;
+            input_eos = true;
+            output_eos = true;
+        }
+
+        if (running) {
+            if (decode_error == OSLMP_RESULT_SUCCESS) {
+                eod_delivered = deliverBlocks(output_eos);
+            } else {
+                eod_delivered = deliverError(decode_error);
+            }
+        }
+    }
+}
+
+bool AudioDecoderMediaCodecBackend::feedInput(bool &input_eos) noexcept
+{
+    const MediaNdkApi &api = get_media_ndk_api();
+
+    const ssize_t index = api.AMediaCodec_dequeueInputBuffer(codec_, 0);
+
+    if (index < 0) {
+        // no room
+        return true;
+    }
+
+    size_t capacity = 0;
+    uint8_t *buffer = api.AMediaCodec_getInputBuffer(codec_, index, &capacity);
+
+    if (CXXPH_UNLIKELY(!buffer))
+        return false;
+
+    const ssize_t size = api.AMediaExtractor_readSampleData(extractor_, buffer, capacity);
+
+    if (size < 0) {
+        // end of stream
+        input_eos = true;
+        return (api.AMediaCodec_queueInputBuffer(codec_, index, 0, 0, 0, kBufferFlagEndOfStream) == kMediaStatusOk);
+    }
+
+    const int64_t sample_time_us = api.AMediaExtractor_getSampleTime(extractor_);
+
+    if (api.AMediaCodec_queueInputBuffer(codec_, index, 0, size, (sample_time_us >= 0) ? sample_time_us : 0, 0) !=
+        kMediaStatusOk)
+        return false;
+
+    (void)api.AMediaExtractor_advance(extractor_);
+
+    return true;
+}
+
+bool AudioDecoderMediaCodecBackend::drainOutput(bool &end_of_stream, int &error) noexcept
+{
+    const MediaNdkApi &api = get_media_ndk_api();
+
+    media_codec_buffer_info_t info;
+    const ssize_t index = api.AMediaCodec_dequeueOutputBuffer(codec_, &info, DEQUEUE_TIMEOUT_US);
+
+    if (index == kInfoOutputFormatChanged) {
+        return updateOutputFormat();
+    } else if (index < 0) {
+        // try again later / output buffers changed
+        return true;
+    }
+
+    bool result = true;
+
+    // NOTE: some decoders do not notify the format change before the first output
+    if (!(sampling_rate_ != 0 && num_channels_ != 0)) {
+        result = updateOutputFormat();
+    }
+
+    if (result && info.size > 0) {
+        size_t capacity = 0;
+        const uint8_t *buffer = api.AMediaCodec_getOutputBuffer(codec_, index, &capacity);
+
+        if (buffer) {
+            const uint32_t num_frames = info.size / (sizeof(int16_t) * num_channels_);
+            if (!appendOutputData(reinterpret_cast<const int16_t *>(buffer + info.offset), num_frames,
+                                  info.presentationTimeUs)) {
+                error = OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+                result = false;
+            }
+        }
+    }
+
+    if (info.flags & kBufferFlagEndOfStream) {
+        end_of_stream = true;
+    }
+
+    (void)api.AMediaCodec_releaseOutputBuffer(codec_, index, false);
+
+    return result;
+}
+
+bool AudioDecoderMediaCodecBackend::updateOutputFormat() noexcept
+{
+    const MediaNdkApi &api = get_media_ndk_api();
+
+    AMediaFormat *format = api.AMediaCodec_getOutputFormat(codec_);
+
+    if (!format)
+        return false;
+
+    int32_t sampling_rate = 0;
+    int32_t num_channels = 0;
+    int32_t pcm_encoding = kPcmEncoding16Bit;
+
+    const bool available = api.AMediaFormat_getInt32(format, kKeySampleRate, &sampling_rate) &&
+                           api.AMediaFormat_getInt32(format, kKeyChannelCount, &num_channels);
+    (void)api.AMediaFormat_getInt32(format, kKeyPcmEncoding, &pcm_encoding);
+
+    (void)api.AMediaFormat_delete(format);
+
+    if (!(available && sampling_rate > 0 && num_channels > 0 && pcm_encoding == kPcmEncoding16Bit))
+        return false;
+
+    if (sampling_rate_ != 0 &&
+        !(static_cast<uint32_t>(sampling_rate) == sampling_rate_ && static_cast<uint32_t>(num_channels) == num_channels_)) {
+        LOGW("The output format has been changed while decoding");
+        return false;
+    }
+
+    if (sampling_rate_ == 0) {
+        utils::pt_unique_lock lock(mutex_);
+        sampling_rate_ = sampling_rate;
+        num_channels_ = num_channels;
+    }
+
+    return true;
+}
+
+bool AudioDecoderMediaCodecBackend::appendOutputData(const int16_t *data, uint32_t num_frames, int64_t pts_us) noexcept
+{
+    const uint32_t num_channels = num_channels_;
+    uint32_t skip = 0;
+
+    // discard the decoded data before the seek position
+    if (skip_until_us_ >= 0) {
+        if (pts_us < skip_until_us_) {
+            const uint64_t skip_frames = static_cast<uint64_t>(skip_until_us_ - pts_us) * sampling_rate_ / 1000000;
+            skip = static_cast<uint32_t>((std::min)(skip_frames, static_cast<uint64_t>(num_frames)));
+        }
+
+        if (skip < num_frames) {
+            skip_until_us_ = -1;
+        }
+    }
+
+    const uint32_t count = num_frames - skip;
+
+    if (count == 0)
+        return true;
+
+    // move the remnant to the front
+    if (pcm_read_pos_ > 0) {
+        const uint32_t remains = pcm_num_frames_ - pcm_read_pos_;
+
+        ::memmove(&pcm_buffer_[0], &pcm_buffer_[num_channels * pcm_read_pos_], sizeof(int16_t) * num_channels * remains);
+        pcm_read_pos_ = 0;
+        pcm_num_frames_ = remains;
+    }
+
+    // NOTE: one more block is reserved for padding the last block
+    const size_t required_size = static_cast<size_t>(num_channels) * (pcm_num_frames_ + count + block_size_in_frames_);
+
+    if (pcm_buffer_.size() < required_size) {
+        try
+        {
+            pcm_buffer_.resize(required_size);
+        }
+        catch (const std::bad_alloc &)
+        {
+            LOGE("appendOutputData() - memory allocation failed");
+            return false;
+        }
+    }
+
+    ::memcpy(&pcm_buffer_[num_channels * pcm_num_frames_], &data[num_channels * skip],
+             sizeof(int16_t) * num_channels * count);
+    pcm_num_frames_ += count;
+
+    return true;
+}
+
+bool AudioDecoderMediaCodecBackend::deliverBlocks(bool end_of_stream) noexcept
+{
+    const uint32_t block_size = block_size_in_frames_;
+    const uint32_t num_channels = num_channels_;
+
+    while (!delivery_stopped_) {
+        if (stop_request_.load(std::memory_order_acquire) || seek_requested_.load(std::memory_order_acquire))
+            return false;
+
+        const uint32_t remains = pcm_num_frames_ - pcm_read_pos_;
+
+        if (remains == 0)
+            break;
+
+        if (remains < block_size) {
+            if (!end_of_stream)
+                break;
+
+            // NOTE: the remnant is padded with silence (the OpenSL decoder discards it)
+            if (pcm_buffer_.size() < static_cast<size_t>(num_channels) * (pcm_read_pos_ + block_size))
+                break;
+
+            ::memset(&pcm_buffer_[num_channels * pcm_num_frames_], 0,
+                     sizeof(int16_t) * num_channels * (block_size - remains));
+            pcm_num_frames_ += (block_size - remains);
+        }
+
+        if (!listener_->onDecoderOutputData(&pcm_buffer_[num_channels * pcm_read_pos_], num_channels, block_size,
+                                        output_serial_)) {
+            delivery_stopped_ = true;
+        }
+
+        pcm_read_pos_ += block_size;
+    }
+
+    if (end_of_stream && !delivery_stopped_ && pcm_read_pos_ >= pcm_num_frames_) {
+        pcm_read_pos_ = 0;
+        pcm_num_frames_ = 0;
+        listener_->onDecoderEndOfData(output_serial_);
+        return true;
+    }
+
+    return false;
+}
+
+bool AudioDecoderMediaCodecBackend::deliverError(int error) noexcept
+{
+    // deliver the complete blocks decoded before the error (the remnant is discarded)
+    (void)deliverBlocks(false);
+
+    if (stop_request_.load(std::memory_order_acquire) || seek_requested_.load(std::memory_order_acquire))
+        return false;
+
+    pcm_read_pos_ = 0;
+    pcm_num_frames_ = 0;
+
+    if (!delivery_stopped_) {
+        listener_->onDecoderError(error, output_serial_);
+    }
+
+    return true;
+}
+
+void AudioDecoderMediaCodecBackend::setPrefetchState(prefetch_state_t state) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+    prefetch_state_ = state;
+    cv_.notify_all();
+}
+
+} // namespace impl
+} // namespace oslmp
@@ -0,0 +1,638 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "ADOpenSLBackend"
+
+#include "oslmp/impl/AudioDecoderOpenSLBackend.hpp"
+
+#include <cstring>
+#include <vector>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/OpenSLMediaPlayerInternalUtils.hpp"
+#include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
+#include "oslmp/impl/OpenSLMediaPlayerMetadata.hpp"
+#include "oslmp/utils/timespec_utils.hpp"
+
+#define PREFETCHSTATUS_NONE ((SLuint32)0)
+#define PREFETCHSTATUS_UNKNOWN_ERROR ((SLuint32)0xFFFFFFFFUL)
+
+#define PREFETCHEVENT_ERROR_CANDIDATE (SL_PREFETCHEVENT_STATUSCHANGE | SL_PREFETCHEVENT_FILLLEVELCHANGE)
+
+#define TRANSLATE_RESULT(result) InternalUtils::sTranslateOpenSLErrorCode(result)
+
+#define IS_SL_RESULT_SUCCESS(slresult) CXXPH_LIKELY((slresult) == SL_RESULT_SUCCESS)
+
+namespace oslmp {
+namespace impl {
+
+using namespace ::opensles;
+
+typedef OpenSLMediaPlayerInternalUtils InternalUtils;
+
+//
+// AudioDecoderOpenSLBackend
+//
+AudioDecoderOpenSLBackend::AudioDecoderOpenSLBackend()
+    : listener_(nullptr), obj_decoder_(), decoder_(), seek_(), buffer_queue_(), prefetch_status_itf_(),
+      metadata_extraction_(), prefetch_callback_mutex_(), prefetch_callback_cv_(),
+      prefetch_status_(PREFETCHSTATUS_NONE), buffer_pool_(), block_size_in_frames_(0), num_channels_(0),
+      queue_index_(0), queue_initialized_(false), seek_serial_(0)
+{
+}
+
+AudioDecoderOpenSLBackend::~AudioDecoderOpenSLBackend() { onClose(); }
+
+int AudioDecoderOpenSLBackend::onOpen(const open_args_t &args) noexcept
+{
+    if (!(args.context && args.listener && args.block_size_in_frames))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!(args.path_uri || args.fd >= 0))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (obj_decoder_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    cxxporthelper::aligned_memory<int16_t> buffer_pool(args.block_size_in_frames * MAX_NUM_CHANNELS * NUM_BLOCKS);
+
+    if (!buffer_pool)
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+
+    buffer_pool_ = std::move(buffer_pool);
+    block_size_in_frames_ = args.block_size_in_frames;
+    listener_ = args.listener;
+
+    int result;
+
+    result = makeDecoder(args);
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    return setupCallbacks();
+}
+
+void AudioDecoderOpenSLBackend::onClose() noexcept
+{
+    metadata_extraction_.unbind();
+    prefetch_status_itf_.unbind();
+    buffer_queue_.unbind();
+    seek_.unbind();
+    decoder_.unbind();
+
+    // NOTE: this operation takes time (1000 - 15000 us)
+    obj_decoder_.Destroy();
+
+    queue_index_ = 0;
+    queue_initialized_ = false;
+    seek_serial_.store(0, std::memory_order_release);
+}
+
+int AudioDecoderOpenSLBackend::onStartPrefetch() noexcept
+{
+    SLresult slResult;
+
+    slResult = prefetch_status_itf_.RegisterCallback(prefetchEventCallback, this);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    slResult = prefetch_status_itf_.SetCallbackEventsMask(PREFETCHEVENT_ERROR_CANDIDATE);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    prefetch_status_ = PREFETCHSTATUS_NONE;
+
+    // start prefetching
+    slResult = decoder_.SetPlayState(SL_PLAYSTATE_PAUSED);
+
+    return TRANSLATE_RESULT(slResult);
+}
+
+int AudioDecoderOpenSLBackend::onPollPrefetch(int timeout_ms, bool &completed) noexcept
+{
+    utils::pt_mutex &mutex = prefetch_callback_mutex_;
+    utils::pt_condition_variable &cond = prefetch_callback_cv_;
+    utils::pt_unique_lock lock(mutex, true);
+    SLuint32 captured_prefetch_status;
+
+    timespec timeout_abstime;
+    int lock_result;
+
+    completed = false;
+
+    if (timeout_ms == 0) {
+        lock_result = lock.try_lock();
+    } else if (timeout_ms < 0) {
+        lock_result = lock.lock();
+    } else { // timeout_ms > 0
+        if (!utils::timespec_utils::get_current_time(timeout_abstime))
+            return OSLMP_RESULT_ILLEGAL_STATE;
+
+        utils::timespec_utils::add_ms(timeout_abstime, timeout_ms);
+
+        // NOTE: The bionic doesn't have pthread_mutex_timedlock() function
+        // and pthread_mutex_lock_timeout_np() should be avoided because it's
+        // not available on recently Android.
+
+        lock_result = lock.lock();
+    }
+
+    if (!lock.owns_lock()) {
+        if (lock_result == EBUSY) {
+            return OSLMP_RESULT_SUCCESS;
+        } else {
+            completed = true;
+            return OSLMP_RESULT_INTERNAL_ERROR;
+        }
+    }
+
+    int wait_result = 0;
+
+    while (true) {
+        captured_prefetch_status = prefetch_status_;
+
+        if (captured_prefetch_status != PREFETCHSTATUS_NONE)
+            break;
+
+        if (timeout_ms == 0) {
+            wait_result = ETIMEDOUT;
+            break;
+        } else if (timeout_ms < 0) {
+            wait_result = cond.wait(lock);
+        } else { // timeout_ms > 0
+            wait_result = cond.wait_absolute(lock, timeout_abstime);
+        }
+
+        if (wait_result != 0) {
+            break;
+        }
+    }
+    lock.unlock();
+
+    int result = OSLMP_RESULT_INTERNAL_ERROR;
+
+    if (wait_result == 0) {
+        completed = true;
+
+#if 0
+        // XXX Lack of the head data will be occurred if uncomment this line
+        (void) decoder_.SetPlayState(SL_PLAYSTATE_STOPPED);
+#endif
+
+        if (captured_prefetch_status == SL_PREFETCHSTATUS_SUFFICIENTDATA) {
+            result = OSLMP_RESULT_SUCCESS;
+        } else {
+            result = OSLMP_RESULT_CONTENT_NOT_FOUND;
+        }
+    } else if (wait_result == ETIMEDOUT) {
+        // return SUCCESS with completed = false (retry expected)
+        result = OSLMP_RESULT_SUCCESS;
+    } else {
+        completed = true;
+        result = OSLMP_RESULT_INTERNAL_ERROR;
+    }
+
+    return result;
+}
+
+int AudioDecoderOpenSLBackend::onGetMetadata(OpenSLMediaPlayerMetadata &metadata) noexcept
+{
+    CSLPlayItf &player = decoder_;
+    CSLMetadataExtractionItf &metaext = metadata_extraction_;
+    OpenSLMediaPlayerMetadata &destMeta = metadata;
+    OpenSLMediaPlayerMetadata tmpMeta;
+    SLresult slResult;
+    int result;
+
+    // clear destination
+    destMeta.clear();
+
+    // obtain info from SLPlayerItf
+    {
+        SLmillisecond duration = 0;
+
+        slResult = player.GetDuration(&duration);
+        if (!IS_SL_RESULT_SUCCESS(slResult))
+            return TRANSLATE_RESULT(slResult);
+
+        tmpMeta.duration.set(duration);
+    }
+
+    // obtain info from SLMetadataExtractionItf
+    try
+    {
+        SLuint32 itemCount = 0;
+
+        std::vector<uint32_t> keyBuff(16);
+        std::vector<uint32_t> valueBuff(16);
+
+        slResult = metaext.GetItemCount(&itemCount);
+
+        if (!IS_SL_RESULT_SUCCESS(slResult))
+            return TRANSLATE_RESULT(slResult);
+
+        for (SLuint32 i = 0; i < itemCount; ++i) {
+            SLuint32 keySize = 0;
+            SLuint32 valueSize = 0;
+
+            // get key & value sizes
+            if (metaext.GetKeySize(i, &keySize) != SL_RESULT_SUCCESS)
+                break;
+
+            if (metaext.GetValueSize(i, &valueSize) != SL_RESULT_SUCCESS)
+                break;
+
+            // resize buffers
+            if (keyBuff.size() * sizeof(uint32_t) < keySize) {
+                keyBuff.resize((keySize + sizeof(uint32_t) - 1) / sizeof(uint32_t));
+            }
+
+            if (valueBuff.size() * sizeof(uint32_t) < valueSize) {
+                valueBuff.resize((valueSize + sizeof(uint32_t) - 1) / sizeof(uint32_t));
+            }
+
+            // get key & value
+            SLMetadataInfo *key = reinterpret_cast<SLMetadataInfo *>(&keyBuff[0]);
+            SLMetadataInfo *value = reinterpret_cast<SLMetadataInfo *>(&valueBuff[0]);
+
+            if (metaext.GetKey(i, keySize, key) != SL_RESULT_SUCCESS)
+                break;
+
+            if (metaext.GetValue(i, valueSize, value) != SL_RESULT_SUCCESS)
+                break;
+
+            // update keySize & valueSize variables
+            keySize = key->size;
+            valueSize = value->size;
+
+            const char *keyStr = reinterpret_cast<const char *>(key->data);
+
+            const bool sizeIsUint32 = (valueSize) == sizeof(SLuint32);
+            union slu32u8_t {
+                SLuint32 u32;
+                SLuint8 u8[4];
+            };
+            const slu32u8_t *u32value = reinterpret_cast<const slu32u8_t *>(&(value->data[0]));
+
+            if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_NUMCHANNELS, keySize) == 0) {
+                // num channels
+                tmpMeta.numChannels.set(u32value->u32);
+            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_SAMPLERATE, keySize) == 0) {
+                // sample rate [Hz]  (!!! NOT milli hertz)
+                tmpMeta.samplesPerSec.set(u32value->u32 * 1000UL);
+            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_BITSPERSAMPLE, keySize) == 0) {
+                // bits per sample [bits]
+                tmpMeta.bitsPerSample.set(u32value->u32);
+            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_CONTAINERSIZE, keySize) == 0) {
+                // container size [bytes]
+                tmpMeta.containerSize.set(u32value->u32);
+            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_CHANNELMASK, keySize) == 0) {
+                // channel mask [ch]
+                tmpMeta.channelMask.set(u32value->u32);
+            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_ENDIANNESS, keySize) == 0) {
+                // endianness
+                tmpMeta.endianness.set(u32value->u32);
+            }
+        }
+
+        // copy metadata to destination
+        if (slResult == SL_RESULT_SUCCESS && tmpMeta.isValid()) {
+            destMeta = tmpMeta;
+            num_channels_ = tmpMeta.numChannels.get();
+        }
+
+        result = TRANSLATE_RESULT(slResult);
+    }
+    catch (const std::bad_alloc &) { result = OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    return result;
+}
+
+int AudioDecoderOpenSLBackend::onSeekTo(int32_t msec, uint32_t seek_serial) noexcept
+{
+    const SLresult slResult = seek_.SetPosition(msec, SL_SEEKMODE_ACCURATE);
+
+    if (IS_SL_RESULT_SUCCESS(slResult)) {
+        // NOTE: the callbacks entered before this point deliver the data before the seek position
+        seek_serial_.store(seek_serial, std::memory_order_release);
+    }
+
+    return TRANSLATE_RESULT(slResult);
+}
+
+int AudioDecoderOpenSLBackend::onStart() noexcept
+{
+    if (!queue_initialized_) {
+        const int result = enqueueInitialBuffers();
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+        queue_initialized_ = true;
+    }
+
+    return TRANSLATE_RESULT(decoder_.SetPlayState(SL_PLAYSTATE_PLAYING));
+}
+
+int AudioDecoderOpenSLBackend::onPause() noexcept
+{
+    return TRANSLATE_RESULT(decoder_.SetPlayState(SL_PLAYSTATE_PAUSED));
+}
+
+int AudioDecoderOpenSLBackend::onStop() noexcept
+{
+    if (CXXPH_UNLIKELY(!decoder_))
+        return OSLMP_RESULT_SUCCESS;
+
+    return TRANSLATE_RESULT(decoder_.SetPlayState(SL_PLAYSTATE_STOPPED));
+}
+
+int AudioDecoderOpenSLBackend::makeDecoder(const open_args_t &args) noexcept
+{
+    SLresult slResult;
+    CSLEngineItf engine;
+
+    slResult = args.context->getInterfaceFromEngine(&engine);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // configure audio source
+    SLDataLocator_URI src_loc_uri = {};
+    SLDataLocator_AndroidFD src_loc_fd = {};
+    SLDataFormat_MIME src_format_mime = {};
+    SLDataSource audioSrc = {};
+    void *src_locator = nullptr;
+
+    if (args.path_uri) {
+        src_loc_uri.locatorType = SL_DATALOCATOR_URI;
+        src_loc_uri.URI = reinterpret_cast<SLchar *>(const_cast<char *>(args.path_uri));
+        src_locator = &src_loc_uri;
+    } else {
+        src_loc_fd.locatorType = SL_DATALOCATOR_ANDROIDFD;
+        src_loc_fd.fd = args.fd;
+        src_loc_fd.offset = (args.offset >= 0) ? args.offset : 0;
+        src_loc_fd.length = (args.length >= 0) ? args.length : SL_DATALOCATOR_ANDROIDFD_USE_FILE_SIZE;
+        src_locator = &src_loc_fd;
+    }
+
+    src_format_mime.formatType = SL_DATAFORMAT_MIME;
+    src_format_mime.mimeType = nullptr;
+    src_format_mime.containerType = SL_CONTAINERTYPE_UNSPECIFIED;
+
+    audioSrc.pLocator = src_locator;
+    audioSrc.pFormat = &src_format_mime;
+
+    // configure audio sink
+    SLDataLocator_AndroidSimpleBufferQueue sink_loc_destBq = {};
+    SLDataFormat_PCM sink_format_destPcm = {};
+    SLDataSink audioSink = {};
+
+    sink_loc_destBq.locatorType = SL_DATALOCATOR_ANDROIDSIMPLEBUFFERQUEUE;
+    sink_loc_destBq.numBuffers = NUM_BLOCKS;
+
+    // FIXME: Fill valid values.
+    //
+    // (However it's impossible to determine them before creating SLPlayItf, because
+    //  obtaining SLMetadataExtractionItf from SLEngine is not supported in Android yet.
+    //  So far these format is not used in current OpenSL implementation.)
+    sink_format_destPcm.formatType = SL_DATAFORMAT_PCM;
+    sink_format_destPcm.numChannels = 2;
+    sink_format_destPcm.samplesPerSec = SL_SAMPLINGRATE_44_1;
+    sink_format_destPcm.bitsPerSample = SL_PCMSAMPLEFORMAT_FIXED_16;
+    sink_format_destPcm.containerSize = 16;
+    sink_format_destPcm.channelMask = SL_SPEAKER_FRONT_LEFT | SL_SPEAKER_FRONT_RIGHT;
+    sink_format_destPcm.endianness = SL_BYTEORDER_LITTLEENDIAN;
+
+    audioSink.pLocator = &sink_loc_destBq;
+    audioSink.pFormat = &sink_format_destPcm;
+
+    CSLObjectItf decoderObj;
+    CSLPlayItf decoder;
+    CSLSeekItf seek;
+    CSLAndroidSimpleBufferQueueItf bufferQueue;
+    CSLPrefetchStatusItf prefetchStatus;
+    CSLMetadataExtractionItf metadataExtraction;
+
+    // create audio player
+    {
+        const SLInterfaceID ids[4] = { seek.getIID(), bufferQueue.getIID(), prefetchStatus.getIID(),
+                                       metadataExtraction.getIID() };
+        const SLboolean req[4] = { SL_BOOLEAN_TRUE, SL_BOOLEAN_TRUE, SL_BOOLEAN_TRUE, SL_BOOLEAN_TRUE };
+
+        slResult = engine.CreateAudioPlayer(&decoderObj, &audioSrc, &audioSink, 4, ids, req);
+    }
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // realize the decoder
+    slResult = decoderObj.Realize(SL_BOOLEAN_FALSE);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // get the decoder interface
+    slResult = decoderObj.GetInterface(&decoder);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // get the seek interface
+    slResult = decoderObj.GetInterface(&seek);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // get the buffer queue interface
+    slResult = decoderObj.GetInterface(&bufferQueue);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // get the prefetch status interface
+    slResult = decoderObj.GetInterface(&prefetchStatus);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // get the metadata extraction status interface
+    slResult = decoderObj.GetInterface(&metadataExtraction);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    // update fields
+    queue_index_ = 0;
+    queue_initialized_ = false;
+    obj_decoder_ = std::move(decoderObj);
+
+    decoder_ = std::move(decoder);
+    seek_ = std::move(seek);
+    buffer_queue_ = std::move(bufferQueue);
+    prefetch_status_itf_ = std::move(prefetchStatus);
+    metadata_extraction_ = std::move(metadataExtraction);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderOpenSLBackend::setupCallbacks() noexcept
+{
+    SLresult slResult;
+
+    slResult = decoder_.SetCallbackEventsMask(SL_PLAYEVENT_HEADATEND |
+                                              /* SL_PLAYEVENT_HEADATMARKER | */
+                                              /* SL_PLAYEVENT_HEADATNEWPOS | */
+                                              /* SL_PLAYEVENT_HEADMOVING |  */
+                                              /* SL_PLAYEVENT_HEADSTALLED | */
+                                              0);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    slResult = decoder_.RegisterCallback(decoderPlayCallbackEntry, this);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    slResult = buffer_queue_.RegisterCallback(decodeBufferQueueCallbackEntry, this);
+    if (!IS_SL_RESULT_SUCCESS(slResult))
+        return TRANSLATE_RESULT(slResult);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderOpenSLBackend::enqueueInitialBuffers() noexcept
+{
+    const uint32_t block_size = block_size_in_frames_;
+    const uint32_t num_channels = num_channels_;
+    int16_t *dataBuff = &buffer_pool_[0];
+    SLresult slResult;
+
+    if (!(num_channels >= 1 && num_channels <= MAX_NUM_CHANNELS))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    for (int i = 0; i < NUM_BLOCKS; ++i) {
+        int16_t *buff = &dataBuff[block_size * num_channels * i];
+        size_t size = block_size * num_channels * sizeof(int16_t);
+
+        slResult = buffer_queue_.Enqueue(buff, size);
+        if (!IS_SL_RESULT_SUCCESS(slResult))
+            return TRANSLATE_RESULT(slResult);
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioDecoderOpenSLBackend::prefetchEventCallback(SLPrefetchStatusItf caller, void *pContext,
+                                                      SLuint32 event) noexcept
+{
+    AudioDecoderOpenSLBackend *thiz = static_cast<AudioDecoderOpenSLBackend *>(pContext);
+    SLresult result;
+    CSLPrefetchStatusItf caller2;
+
+    caller2.assign(caller);
+
+    SLpermille level = 0;
+    SLuint32 status;
+
+    if (!(event & SL_PREFETCHEVENT_STATUSCHANGE)) {
+        return;
+    }
+
+    result = caller2.GetFillLevel(&level);
+    if (!IS_SL_RESULT_SUCCESS(result))
+        return;
+
+    result = caller2.GetPrefetchStatus(&status);
+    if (!IS_SL_RESULT_SUCCESS(result))
+        return;
+
+    {
+        utils::pt_unique_lock lock(thiz->prefetch_callback_mutex_);
+        SLuint32 corrected_status;
+
+        if (status == SL_PREFETCHSTATUS_SUFFICIENTDATA || status == SL_PREFETCHSTATUS_OVERFLOW ||
+            status == SL_PREFETCHSTATUS_UNDERFLOW) {
+            corrected_status = status;
+        } else {
+            corrected_status = PREFETCHSTATUS_UNKNOWN_ERROR;
+        }
+
+        thiz->prefetch_status_ = corrected_status;
+        thiz->prefetch_callback_cv_.notify_one();
+    }
+}
+
+void AudioDecoderOpenSLBackend::decoderPlayCallbackEntry(SLPlayItf caller, void *pContext, SLuint32 event) noexcept
+{
+    static_cast<AudioDecoderOpenSLBackend *>(pContext)->decoderPlayCallback(caller, event);
+}
+
+void AudioDecoderOpenSLBackend::decodeBufferQueueCallbackEntry(SLAndroidSimpleBufferQueueItf caller,
+                                                               void *pContext) noexcept
+{
+    static_cast<AudioDecoderOpenSLBackend *>(pContext)->decodeBufferQueueCallback(caller);
+}
+
+void AudioDecoderOpenSLBackend::decoderPlayCallback(SLPlayItf caller, SLuint32 event) noexcept
+{
+    if (event & SL_PLAYEVENT_HEADATEND) {
+        LOGD("decoderPlayCallback(event = HEADATEND)");
+    }
+    if (event & SL_PLAYEVENT_HEADATMARKER) {
+        LOGD("decoderPlayCallback(event = HEADATMARKER)");
+    }
+    if (event & SL_PLAYEVENT_HEADATNEWPOS) {
+        LOGD("decoderPlayCallback(event = HEADATNEWPOS)");
+    }
+    if (event & SL_PLAYEVENT_HEADMOVING) {
+        LOGD("decoderPlayCallback(event = HEADMOVING)");
+    }
+    if (event & SL_PLAYEVENT_HEADSTALLED) {
+        LOGD("decoderPlayCallback(event = HEADSTALLED)");
+    }
+
+    if (event & SL_PLAYEVENT_HEADATEND) {
+        listener_->onDecoderEndOfData(seek_serial_.load(std::memory_order_acquire));
+    }
+}
+
+void AudioDecoderOpenSLBackend::decodeBufferQueueCallback(SLAndroidSimpleBufferQueueItf caller) noexcept
+{
+    if (CXXPH_UNLIKELY(buffer_queue_.self() != caller))
+        return;
+
+    // NOTE: the buffer queue callbacks are serialized by the OpenSL ES internal thread
+    const int index = queue_index_;
+    const uint32_t seek_serial = seek_serial_.load(std::memory_order_acquire);
+
+#if 1
+    static_assert(((NUM_BLOCKS & (NUM_BLOCKS - 1)) == 0), "Check NUM_BLOCKS is power of two");
+    queue_index_ = (index + 1) & (NUM_BLOCKS - 1);
+#else
+    queue_index_ = (index + 1) % NUM_BLOCKS;
+#endif
+
+    const uint32_t num_channels = num_channels_;
+    const uint32_t block_size_in_frames = block_size_in_frames_;
+    const size_t block_size_in_bytes = sizeof(int16_t) * block_size_in_frames * num_channels;
+    const int16_t *block = &(buffer_pool_[block_size_in_frames * num_channels * index]);
+
+    if (!listener_->onDecoderOutputData(block, num_channels, block_size_in_frames, seek_serial)) {
+        // the decoder output is no longer used (the buffer is not re-enqueued)
+        return;
+    }
+
+    // re-enqueue the empty buffer
+    buffer_queue_.Enqueue(block, block_size_in_bytes);
+}
+
+} // namespace impl
+} // namespace oslmp
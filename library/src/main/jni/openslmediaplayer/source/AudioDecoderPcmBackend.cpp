@@ -0,0 +1,552 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "ADPcmBackend"
+
+#include "oslmp/impl/AudioDecoderPcmBackend.hpp"
+
+#include <algorithm>
+#include <cerrno>
+#include <cstring>
+#include <limits>
+#include <new>
+
+#include <fcntl.h>
+#include <unistd.h>
+#include <sys/mman.h>
+#include <sys/types.h>
+#include <sys/stat.h>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/OpenSLMediaPlayerMetadata.hpp"
+#include "oslmp/impl/AndroidHelper.hpp"
+
+namespace oslmp {
+namespace impl {
+
+namespace {
+
+const uint16_t kWaveFormatPcm = 0x0001;
+const uint16_t kWaveFormatIeeeFloat = 0x0003;
+const uint16_t kWaveFormatExtensible = 0xFFFE;
+
+const uint32_t kMaxNumChannels = 2;
+
+inline uint16_t read_le16(const uint8_t *p) noexcept { return static_cast<uint16_t>(p[0] | (p[1] << 8)); }
+
+inline uint32_t read_le32(const uint8_t *p) noexcept
+{
+    return static_cast<uint32_t>(p[0]) | (static_cast<uint32_t>(p[1]) << 8) | (static_cast<uint32_t>(p[2]) << 16) |
+           (static_cast<uint32_t>(p[3]) << 24);
+}
+
+inline int16_t clip_to_s16(int32_t x) noexcept
+{
+    return static_cast<int16_t>((std::min)((std::max)(x, static_cast<int32_t>(-32768)), static_cast<int32_t>(32767)));
+}
+
+} // anonymous namespace
+
+//
+// AudioDecoderPcmBackend
+//
+AudioDecoderPcmBackend::AudioDecoderPcmBackend()
+    : listener_(nullptr), block_size_in_frames_(0), map_addr_(nullptr), map_length_(0), data_(nullptr), format_(),
+      pt_handle_(0), mutex_(), cv_(), stop_request_(false), seek_requested_(false), running_(false), seek_position_(0),
+      seek_serial_(0), block_buffer_(), read_position_(0), output_serial_(0)
+{
+}
+
+AudioDecoderPcmBackend::~AudioDecoderPcmBackend() { onClose(); }
+
+int AudioDecoderPcmBackend::onOpen(const open_args_t &args) noexcept
+{
+    if (!(args.listener && args.block_size_in_frames))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (map_addr_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    // open
+    int fd = args.fd;
+    int64_t offset = (args.offset >= 0) ? args.offset : 0;
+    int64_t length = args.length;
+
+    if (args.path_uri) {
+        fd = ::open(args.path_uri, O_RDONLY);
+        offset = 0;
+        length = -1;
+    }
+
+    if (fd < 0)
+        return OSLMP_RESULT_CONTENT_NOT_FOUND;
+
+    struct stat st;
+    int64_t file_size = -1;
+
+    if (::fstat(fd, &st) == 0 && S_ISREG(st.st_mode)) {
+        file_size = st.st_size;
+    }
+
+    if (length < 0 && file_size >= 0) {
+        length = file_size - offset;
+    }
+
+    // parse the header (the file is not mapped unless it is a supported WAV file)
+    wav_format_t format;
+    bool recognized = false;
+
+    if (file_size >= 0 && length > 0 && (offset + length) <= file_size) {
+        recognized = sParseWavFile(fd, offset, length, format);
+    }
+
+    // map the data chunk (mmap() requires the page aligned offset)
+    const int64_t data_offset = offset + static_cast<int64_t>(format.data_offset);
+    const int64_t data_length = static_cast<int64_t>(format.num_frames) * format.frame_size;
+    const int64_t page_size = ::sysconf(_SC_PAGESIZE);
+    const int64_t map_offset = (page_size > 0) ? (data_offset - (data_offset % page_size)) : data_offset;
+    const int64_t map_length = data_length + (data_offset - map_offset);
+    void *map_addr = MAP_FAILED;
+
+    if (recognized && map_offset <= static_cast<int64_t>((std::numeric_limits<off_t>::max)()) &&
+        static_cast<uint64_t>(map_length) <= static_cast<uint64_t>((std::numeric_limits<size_t>::max)())) {
+        map_addr = ::mmap(nullptr, static_cast<size_t>(map_length), PROT_READ, MAP_PRIVATE, fd,
+                          static_cast<off_t>(map_offset));
+    }
+
+    if (args.path_uri) {
+        // NOTE: the mapping remains valid after closing the file
+        ::close(fd);
+    }
+
+    if (map_addr == MAP_FAILED)
+        return OSLMP_RESULT_CONTENT_UNSUPPORTED;
+
+    (void)::madvise(map_addr, static_cast<size_t>(map_length), MADV_SEQUENTIAL);
+
+    // allocate conversion buffer
+    try
+    {
+        block_buffer_.resize(args.block_size_in_frames * format.num_channels);
+    }
+    catch (const std::bad_alloc &)
+    {
+        (void)::munmap(map_addr, static_cast<size_t>(map_length));
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+    }
+
+    listener_ = args.listener;
+    block_size_in_frames_ = args.block_size_in_frames;
+    map_addr_ = map_addr;
+    map_length_ = static_cast<size_t>(map_length);
+    data_ = static_cast<const uint8_t *>(map_addr) + (data_offset - map_offset);
+    format_ = format;
+    read_position_ = 0;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioDecoderPcmBackend::onClose() noexcept
+{
+    stopDeliveryThread();
+
+    if (map_addr_) {
+        (void)::munmap(map_addr_, map_length_);
+        map_addr_ = nullptr;
+        map_length_ = 0;
+        data_ = nullptr;
+    }
+
+    format_ = wav_format_t();
+    running_ = false;
+    seek_requested_ = false;
+    seek_position_ = 0;
+    seek_serial_ = 0;
+    read_position_ = 0;
+    output_serial_ = 0;
+}
+
+int AudioDecoderPcmBackend::onStartPrefetch() noexcept
+{
+    if (!map_addr_ || pt_handle_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    return startDeliveryThread();
+}
+
+int AudioDecoderPcmBackend::onPollPrefetch(int timeout_ms, bool &completed) noexcept
+{
+    // NOTE: the format is already known (nothing to prefetch)
+    completed = true;
+    return (pt_handle_) ? OSLMP_RESULT_SUCCESS : OSLMP_RESULT_ILLEGAL_STATE;
+}
+
+int AudioDecoderPcmBackend::onGetMetadata(OpenSLMediaPlayerMetadata &metadata) noexcept
+{
+    metadata.clear();
+
+    if (!map_addr_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    const uint64_t duration_ms = static_cast<uint64_t>(format_.num_frames) * 1000 / format_.sampling_rate;
+
+    // NOTE: the output is always 16 bit
+    metadata.numChannels.set(format_.num_channels);
+    metadata.samplesPerSec.set(format_.sampling_rate * 1000UL);
+    metadata.bitsPerSample.set(SL_PCMSAMPLEFORMAT_FIXED_16);
+    metadata.containerSize.set(16);
+    metadata.channelMask.set((format_.num_channels == 1) ? SL_SPEAKER_FRONT_CENTER
+                                                         : (SL_SPEAKER_FRONT_LEFT | SL_SPEAKER_FRONT_RIGHT));
+    metadata.endianness.set(SL_BYTEORDER_LITTLEENDIAN);
+    metadata.duration.set(static_cast<SLmillisecond>(duration_ms));
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderPcmBackend::onSeekTo(int32_t msec, uint32_t seek_serial) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    if (!pt_handle_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    const uint64_t position = static_cast<uint64_t>((std::max)(msec, 0)) * format_.sampling_rate / 1000;
+
+    // NOTE: the seek request is handled by the delivery thread
+    seek_position_ = static_cast<uint32_t>((std::min)(position, static_cast<uint64_t>(format_.num_frames)));
+    seek_serial_ = seek_serial;
+    seek_requested_.store(true, std::memory_order_release);
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderPcmBackend::onStart() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    if (!pt_handle_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    running_ = true;
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderPcmBackend::onPause() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    running_ = false;
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioDecoderPcmBackend::onStop() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    running_ = false;
+    stop_request_.store(true, std::memory_order_release);
+    cv_.notify_all();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool AudioDecoderPcmBackend::sParseWavFile(int fd, int64_t offset, int64_t length, wav_format_t &format) noexcept
+{
+    // NOTE: the size of the fmt chunk contents used (WAVE_FORMAT_EXTENSIBLE)
+    const uint32_t kMaxFmtSize = 40;
+
+    if (fd < 0 || offset < 0 || length < 12)
+        return false;
+
+    const uint64_t size = static_cast<uint64_t>(length);
+
+    // RIFF header
+    uint8_t riff[12];
+
+    if (!sReadFully(fd, offset, riff, sizeof(riff)))
+        return false;
+
+    if (!(::memcmp(&riff[0], "RIFF", 4) == 0 && ::memcmp(&riff[8], "WAVE", 4) == 0))
+        return false;
+
+    uint8_t fmt[kMaxFmtSize];
+    uint32_t fmt_size = 0;
+    bool fmt_found = false;
+    uint64_t data_offset = 0;
+    uint32_t data_size = 0;
+    bool data_found = false;
+    uint64_t pos = 12;
+
+    // find 'fmt ' and 'data' chunks
+    while ((pos + 8) <= size) {
+        uint8_t chunk[8];
+
+        if (!sReadFully(fd, offset + static_cast<int64_t>(pos), chunk, sizeof(chunk)))
+            return false;
+
+        const uint64_t remains = size - (pos + 8);
+        const uint32_t chunk_size = read_le32(&chunk[4]);
+
+        if (::memcmp(&chunk[0], "data", 4) == 0) {
+            // NOTE: the size field of the data chunk may not be updated (streaming)
+            data_offset = pos + 8;
+            data_size = static_cast<uint32_t>((std::min)(static_cast<uint64_t>(chunk_size), remains));
+            data_found = true;
+            break;
+        }
+
+        // the chunk exceeds the file range
+        if (chunk_size > remains)
+            return false;
+
+        if (::memcmp(&chunk[0], "fmt ", 4) == 0) {
+            const uint32_t n = (std::min)(chunk_size, kMaxFmtSize);
+
+            if (!sReadFully(fd, offset + static_cast<int64_t>(pos + 8), fmt, n))
+                return false;
+
+            fmt_size = chunk_size;
+            fmt_found = true;
+        }
+
+        // chunks are word aligned
+        pos += 8 + static_cast<uint64_t>(chunk_size) + (chunk_size & 1);
+    }
+
+    if (!(fmt_found && fmt_size >= 16 && data_found))
+        return false;
+
+    uint16_t format_tag = read_le16(&fmt[0]);
+    const uint16_t num_channels = read_le16(&fmt[2]);
+    const uint32_t sampling_rate = read_le32(&fmt[4]);
+    const uint16_t block_align = read_le16(&fmt[12]);
+    const uint16_t bits_per_sample = read_le16(&fmt[14]);
+
+    if (format_tag == kWaveFormatExtensible) {
+        // the first two bytes of the SubFormat GUID are the format tag
+        if (fmt_size < 40)
+            return false;
+        format_tag = read_le16(&fmt[24]);
+    }
+
+    if (!(num_channels >= 1 && num_channels <= kMaxNumChannels && sampling_rate > 0))
+        return false;
+
+    if (block_align != (num_channels * ((bits_per_sample + 7) / 8)))
+        return false;
+
+    sample_format_t sample_format;
+
+    if (format_tag == kWaveFormatPcm && bits_per_sample == 8) {
+        sample_format = SAMPLE_FORMAT_U8;
+    } else if (format_tag == kWaveFormatPcm && bits_per_sample == 16) {
+        sample_format = SAMPLE_FORMAT_S16;
+    } else if (format_tag == kWaveFormatPcm && bits_per_sample == 24) {
+        sample_format = SAMPLE_FORMAT_S24;
+    } else if (format_tag == kWaveFormatPcm && bits_per_sample == 32) {
+        sample_format = SAMPLE_FORMAT_S32;
+    } else if (format_tag == kWaveFormatIeeeFloat && bits_per_sample == 32) {
+        sample_format = SAMPLE_FORMAT_F32;
+    } else {
+        return false;
+    }
+
+    const uint32_t num_frames = data_size / block_align;
+
+    if (num_frames == 0)
+        return false;
+
+    format.sample_format = sample_format;
+    format.num_channels = num_channels;
+    format.sampling_rate = sampling_rate;
+    format.frame_size = block_align;
+    format.data_offset = data_offset;
+    format.num_frames = num_frames;
+
+    return true;
+}
+
+bool AudioDecoderPcmBackend::sReadFully(int fd, int64_t offset, uint8_t *buffer, size_t size) noexcept
+{
+    while (size > 0) {
+        const ssize_t n = ::pread(fd, buffer, size, static_cast<off_t>(offset));
+
+        if (n < 0 && errno == EINTR)
+            continue;
+
+        if (n <= 0)
+            return false;
+
+        buffer += n;
+        size -= static_cast<size_t>(n);
+        offset += n;
+    }
+
+    return true;
+}
+
+int AudioDecoderPcmBackend::startDeliveryThread() noexcept
+{
+    pthread_t pt_handle;
+
+    stop_request_ = false;
+
+    if (::pthread_create(&pt_handle, nullptr, &AudioDecoderPcmBackend::deliveryThreadEntryFunc, this) != 0) {
+        return OSLMP_RESULT_INTERNAL_ERROR;
+    }
+
+    {
+        utils::pt_unique_lock lock(mutex_);
+        pt_handle_ = pt_handle;
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioDecoderPcmBackend::stopDeliveryThread() noexcept
+{
+    if (!pt_handle_) {
+        return;
+    }
+
+    {
+        utils::pt_unique_lock lock(mutex_);
+        stop_request_ = true;
+        cv_.notify_all();
+    }
+
+    (void)::pthread_join(pt_handle_, nullptr);
+    pt_handle_ = 0;
+    stop_request_ = false;
+}
+
+void *AudioDecoderPcmBackend::deliveryThreadEntryFunc(void *args) noexcept
+{
+    AudioDecoderPcmBackend *thiz = static_cast<AudioDecoderPcmBackend *>(args);
+
+    AndroidHelper::setCurrentThreadName("PcmSourceReader");
+
+    thiz->deliveryThreadProcess();
+
+    return nullptr;
+}
+
+void AudioDecoderPcmBackend::deliveryThreadProcess() noexcept
+{
+    const uint32_t block_size = block_size_in_frames_;
+    const uint32_t num_frames = format_.num_frames;
+    bool delivery_stopped = false;
+    bool eod_delivered = false;
+
+    while (CXXPH_LIKELY(!stop_request_.load(std::memory_order_acquire))) {
+        {
+            utils::pt_unique_lock lock(mutex_);
+
+            // wait while there is nothing to do
+            while (!(stop_request_.load(std::memory_order_relaxed) || seek_requested_.load(std::memory_order_relaxed) ||
+                     (running_ && !delivery_stopped && !eod_delivered))) {
+                cv_.wait(lock);
+            }
+
+            if (stop_request_.load(std::memory_order_relaxed))
+                break;
+
+            if (seek_requested_.load(std::memory_order_relaxed)) {
+                read_position_ = seek_position_;
+                output_serial_ = seek_serial_;
+                seek_requested_.store(false, std::memory_order_relaxed);
+                delivery_stopped = false;
+                eod_delivered = false;
+                continue;
+            }
+        }
+
+        if (read_position_ >= num_frames) {
+            listener_->onDecoderEndOfData(output_serial_);
+            eod_delivered = true;
+            continue;
+        }
+
+        const int16_t *block = getBlock(read_position_, (std::min)(block_size, num_frames - read_position_));
+
+        if (!listener_->onDecoderOutputData(block, format_.num_channels, block_size, output_serial_)) {
+            delivery_stopped = true;
+        }
+
+        read_position_ += block_size;
+    }
+}
+
+const int16_t *AudioDecoderPcmBackend::getBlock(uint32_t position, uint32_t num_frames) noexcept
+{
+    const uint32_t num_channels = format_.num_channels;
+    const uint32_t num_samples = num_frames * num_channels;
+    const uint8_t *src = &data_[static_cast<size_t>(format_.frame_size) * position];
+    int16_t *dest = &block_buffer_[0];
+
+    // NOTE: the last partial block is padded with silence
+    if (num_frames < block_size_in_frames_) {
+        ::memset(&dest[num_samples], 0, sizeof(int16_t) * (block_size_in_frames_ - num_frames) * num_channels);
+    }
+
+    switch (format_.sample_format) {
+    case SAMPLE_FORMAT_U8:
+        for (uint32_t i = 0; i < num_samples; ++i) {
+            dest[i] = static_cast<int16_t>((static_cast<int32_t>(src[i]) - 128) << 8);
+        }
+        break;
+    case SAMPLE_FORMAT_S16:
+        // zero-copy (the WAV data is little endian, as well as the supported ABIs)
+        if (num_frames == block_size_in_frames_ && (reinterpret_cast<uintptr_t>(src) & (sizeof(int16_t) - 1)) == 0) {
+            return reinterpret_cast<const int16_t *>(src);
+        }
+        ::memcpy(dest, src, sizeof(int16_t) * num_samples);
+        break;
+    case SAMPLE_FORMAT_S24:
+        for (uint32_t i = 0; i < num_samples; ++i) {
+            dest[i] = static_cast<int16_t>(read_le16(&src[3 * i + 1]));
+        }
+        break;
+    case SAMPLE_FORMAT_S32:
+        for (uint32_t i = 0; i < num_samples; ++i) {
+            dest[i] = static_cast<int16_t>(read_le16(&src[4 * i + 2]));
+        }
+        break;
+    case SAMPLE_FORMAT_F32:
+        for (uint32_t i = 0; i < num_samples; ++i) {
+            float x;
+            ::memcpy(&x, &src[4 * i], sizeof(float));
+            x = (x >= -1.0f) ? (std::min)(x, 1.0f) : -1.0f; // (also rejects NaN)
+            dest[i] = clip_to_s16(static_cast<int32_t>(x * 32768.0f));
+        }
+        break;
+    }
+
+    return dest;
+}
+
+} // namespace impl
+} // namespace oslmp
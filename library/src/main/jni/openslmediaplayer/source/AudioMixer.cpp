@@ -26,9 +26,11 @@
 #endif
 
 #include <algorithm>
+#include <cstring>
 
 #include <cxxporthelper/memory>
 #include <cxxporthelper/time.hpp>
+#include <cxxporthelper/aligned_memory.hpp>
 
 #include <lockfree/lockfree_circulation_buffer.hpp>
 
@@ -43,13 +45,20 @@
 #include "oslmp/impl/StereoVolumeDataPipe.hpp"
 #include "oslmp/impl/AndroidHelper.hpp"
 #include "oslmp/impl/MixedOutputAudioEffect.hpp"
+#include "oslmp/impl/AudioVoicePool.hpp"
+#include "oslmp/impl/EngineStatistics.hpp"
 #include "oslmp/utils/pthread_utils.hpp"
 #include "oslmp/utils/bitmap_looper.hpp"
+#include "oslmp/utils/fixed_bitmap.hpp"
 #include "oslmp/utils/timespec_utils.hpp"
 
 #define AUDIO_SOURCE_SET_QUEUE_SIZE 64
 #define NUM_AUDIO_SOURCE_SET_QUEUE_ITEMS_PER_THREAD ((AUDIO_SOURCE_SET_QUEUE_SIZE / 2) - 1)
 
+// max. number of the blocks written ahead into the sink pipe while any voice pool is attached
+// (same as the lower limit of the adaptive buffering)
+#define VOICE_POOL_MAX_SINK_WRITE_AHEAD_BLOCKS 2
+
 // [b31:b8] : Check code, [b7:b0] : Index
 #define SOURCE_CLIENT_CONTROL_HANDLE_PATTERN 0xC3A76A00UL
 #define VERIFY_CALLING_CONTEXT_IS_NORMAL() assert(calling_context_ == CALLING_CONTEXT_NORMAL)
@@ -99,6 +108,12 @@ enum source_slot_state_t {
 
 typedef std::atomic<uint32_t> control_flags_t;
 
+// NOTE: the per client states (looping, insert effects) are held in 32 bit bitmaps
+static_assert(AudioMixer::NUM_MAX_SOURCE_CLIENTS <= 32, "Verify NUM_MAX_SOURCE_CLIENTS");
+
+typedef utils::fixed_bitmap<AudioMixer::NUM_MAX_SOURCE_PIPES> source_bitmap_t;
+typedef utils::fixed_bitmap_looper<AudioMixer::NUM_MAX_SOURCE_PIPES> source_bitmap_looper;
+
 struct AudioSourceSlot {
     // handle
     AudioMixer::source_client_handle_t client_handle;
@@ -120,6 +135,7 @@ struct AudioSourceSlot {
     AudioMixer::mixing_mode_t mix_mode;
     float mix_phase;
     bool mix_phase_override;
+    uint32_t mix_fade_profile;
 
     // trigger (for no looping)
     AudioMixer::trigger_mode_t trigger_no_loop_mode;
@@ -139,9 +155,10 @@ struct AudioSourceSlot {
     AudioSourceSlot()
         : client_handle(), handle_index(0), source_client(nullptr), operation(AudioMixer::OPERATION_NONE),
           source_pipe(nullptr), source_no(0), mix_mode(AudioMixer::MIX_MODE_MUTE), mix_phase(0.0f),
-          mix_phase_override(false), trigger_no_loop_mode(AudioMixer::TRIGGER_NONE), trigger_no_loop_target(),
-          trigger_no_loop_source_no(0), trigger_loop_mode(AudioMixer::TRIGGER_NONE), trigger_loop_target(),
-          trigger_loop_source_no(0), stop_cond(AudioMixer::STOP_NONE), state(SOURCE_SLOT_STATE_UNUSED)
+          mix_phase_override(false), mix_fade_profile(0), trigger_no_loop_mode(AudioMixer::TRIGGER_NONE),
+          trigger_no_loop_target(), trigger_no_loop_source_no(0), trigger_loop_mode(AudioMixer::TRIGGER_NONE),
+          trigger_loop_target(), trigger_loop_source_no(0), stop_cond(AudioMixer::STOP_NONE),
+          state(SOURCE_SLOT_STATE_UNUSED)
     {
     }
 
@@ -156,6 +173,7 @@ struct AudioSourceSlot {
         mix_mode = AudioMixer::MIX_MODE_MUTE;
         mix_phase = 0.0f;
         mix_phase_override = false;
+        mix_fade_profile = 0;
         trigger_no_loop_mode = AudioMixer::TRIGGER_NONE;
         trigger_no_loop_target = AudioMixer::source_client_handle_t();
         trigger_no_loop_source_no = 0;
@@ -177,10 +195,18 @@ struct AudioSinkSlot {
 
 struct AudioSourceSet {
     const item_owner_t owner;
-    uint32_t updated_bitmap;
-    AudioSourceSlot slots[AudioMixer::NUM_MAX_SOURCE_PIPES];
+    source_bitmap_t updated_bitmap;
+    AudioSourceSlot *slots; // (allocated from the slot pool of the AudioMixer::Impl)
+    int num_slots;
+
+    AudioSourceSet() : owner(OWNER_REQUEST_THREAD), updated_bitmap(), slots(nullptr), num_slots(0) {}
 
-    AudioSourceSet() : owner(OWNER_REQUEST_THREAD), updated_bitmap(0) {}
+    AudioSourceSet &bind(AudioSourceSlot *slots_, int num_slots_) noexcept
+    {
+        slots = slots_;
+        num_slots = num_slots_;
+        return clear();
+    }
 
     AudioSourceSet &init_for_request_thread() noexcept
     {
@@ -196,18 +222,18 @@ struct AudioSourceSet {
 
     AudioSourceSet &clear() noexcept
     {
-        for (auto &slot : slots) {
-            slot.clear();
+        for (int i = 0; i < num_slots; ++i) {
+            slots[i].clear();
         }
-        updated_bitmap = 0;
+        updated_bitmap.clear();
 
         return (*this);
     }
 
     AudioSourceSet &copy(const AudioSourceSet &src) noexcept
     {
-        // NOTE: keeo the 'owner' field
-        for (int i = 0; i < AudioMixer::NUM_MAX_SOURCE_PIPES; ++i) {
+        // NOTE: keeo the 'owner' field (all sets have the same number of the slots)
+        for (int i = 0; i < num_slots; ++i) {
             slots[i] = src.slots[i];
         }
         updated_bitmap = src.updated_bitmap;
@@ -217,7 +243,7 @@ struct AudioSourceSet {
 
     int find(AudioSourceDataPipe *pipe) const noexcept
     {
-        for (int i = 0; i < AudioMixer::NUM_MAX_SOURCE_PIPES; ++i) {
+        for (int i = 0; i < num_slots; ++i) {
             if (slots[i].source_pipe == pipe) {
                 return i;
             }
@@ -227,7 +253,7 @@ struct AudioSourceSet {
 
     int find_free() const noexcept
     {
-        for (int i = 0; i < AudioMixer::NUM_MAX_SOURCE_PIPES; ++i) {
+        for (int i = 0; i < num_slots; ++i) {
             if (!(slots[i].source_pipe)) {
                 return i;
             }
@@ -235,9 +261,9 @@ struct AudioSourceSet {
         return -1;
     }
 
-    void mark_updated(int index) noexcept { updated_bitmap |= (1U << static_cast<uint32_t>(index)); }
+    void mark_updated(int index) noexcept { updated_bitmap.set(index); }
 
-    void unmark_updated(int index) noexcept { updated_bitmap &= ~(1U << static_cast<uint32_t>(index)); }
+    void unmark_updated(int index) noexcept { updated_bitmap.reset(index); }
 };
 
 struct MixerSourceClient {
@@ -341,26 +367,92 @@ union u32_float_t {
     float f;
 };
 
+// work area of the mixer thread (sized by the number of the source pipes, allocated by initialize())
+struct MixerThreadWorkArea {
+    std::unique_ptr<uint32_t[]> flags;
+    std::unique_ptr<MixingUnit::Context[]> mixer_unit_context;
+    std::unique_ptr<AudioSourceDataPipe::consume_block_t[]> src_blocks;
+    std::unique_ptr<AudioSourceDataPipe *[]> src_block_pipes;
+    std::unique_ptr<MixingUnit::Context *[]> src_block_mix_contexts;
+    std::unique_ptr<const MixingUnit::in_data_type *[]> src_block_data;
+    std::unique_ptr<uint32_t[]> src_block_clients;
+    std::unique_ptr<MixingUnit::Context *[]> insert_bus_src_mix_contexts;
+    std::unique_ptr<const MixingUnit::in_data_type *[]> insert_bus_src_data;
+    uint32_t num_source_pipes;
+    uint32_t num_mix_sources;
+
+    MixerThreadWorkArea() : num_source_pipes(0U), num_mix_sources(0U) {}
+
+    bool allocate(uint32_t num_pipes) noexcept
+    {
+        // (source pipes + voices)
+        const uint32_t num_mix = num_pipes + AudioMixer::NUM_MAX_VOICE_POOLS * AudioVoicePool::NUM_MAX_MIX_SOURCES;
+
+        flags.reset(new (std::nothrow) uint32_t[num_pipes]);
+        mixer_unit_context.reset(new (std::nothrow) MixingUnit::Context[num_pipes]);
+        src_blocks.reset(new (std::nothrow) AudioSourceDataPipe::consume_block_t[num_pipes]);
+        src_block_pipes.reset(new (std::nothrow) AudioSourceDataPipe *[num_pipes]);
+        src_block_mix_contexts.reset(new (std::nothrow) MixingUnit::Context *[num_mix]);
+        src_block_data.reset(new (std::nothrow) const MixingUnit::in_data_type *[num_mix]);
+        src_block_clients.reset(new (std::nothrow) uint32_t[num_pipes]);
+        insert_bus_src_mix_contexts.reset(new (std::nothrow) MixingUnit::Context *[num_pipes]);
+        insert_bus_src_data.reset(new (std::nothrow) const MixingUnit::in_data_type *[num_pipes]);
+
+        if (!(flags && mixer_unit_context && src_blocks && src_block_pipes && src_block_mix_contexts &&
+              src_block_data && src_block_clients && insert_bus_src_mix_contexts && insert_bus_src_data)) {
+            return false;
+        }
+
+        num_source_pipes = num_pipes;
+        num_mix_sources = num_mix;
+
+        return true;
+    }
+};
+
 struct MixerThreadContext {
     OpenSLMediaPlayerInternalContext *oslmp_context;
 
     // source
     AudioSourceSet currnt_src_set;
-    uint32_t flags[AudioMixer::NUM_MAX_SOURCE_PIPES];
-    MixingUnit::Context mixer_unit_context[AudioMixer::NUM_MAX_SOURCE_PIPES];
+    uint32_t *flags;
+    MixingUnit::Context *mixer_unit_context;
+
+    // mixing (work area of mixerThreadHandleAudioDataBlocks())
+    AudioSourceDataPipe::consume_block_t *src_blocks;
+    AudioSourceDataPipe **src_block_pipes;
+    MixingUnit::Context **src_block_mix_contexts; // (source pipes + voices)
+    const MixingUnit::in_data_type **src_block_data;
+    uint32_t *src_block_clients; // (source client index of each source block)
+    uint32_t max_mix_sources;
+
+    // insert effects (work area of mixerThreadProcessInsertEffects())
+    MixingUnit::Context **insert_bus_src_mix_contexts;
+    const MixingUnit::in_data_type **insert_bus_src_data;
+    MixingUnit::Context insert_bus_mix_context[AudioMixer::NUM_MAX_SOURCE_CLIENTS];
+    MixingUnit::in_data_type *insert_bus_data[AudioMixer::NUM_MAX_SOURCE_CLIENTS];
 
     // sink
     AudioSinkSlot sink_slot;
 
-    uint32_t attached_bitmap;
-    uint32_t started_bitmap;
-    uint32_t detach_requested_bitmap;
-    uint32_t looping_bitmap;
+    source_bitmap_t attached_bitmap;
+    source_bitmap_t started_bitmap;
+    source_bitmap_t detach_requested_bitmap;
+    uint32_t looping_bitmap; // (indexed by the source client)
 
     uint32_t max_process_block_at_once;
 
     MixedOutputAudioEffect *mixout_effects[AudioMixer::NUM_MAX_MIXOOUT_EFFECTS];
     uint32_t num_mixout_effects;
+    uint32_t mixout_effects_revision;
+
+    AudioVoicePool *voice_pools[AudioMixer::NUM_MAX_VOICE_POOLS];
+    uint32_t num_voice_pools;
+    uint32_t voice_pools_revision;
+
+    MixedOutputAudioEffect *insert_effects[AudioMixer::NUM_MAX_SOURCE_CLIENTS][AudioMixer::NUM_MAX_INSERT_EFFECTS];
+    uint32_t num_insert_effects[AudioMixer::NUM_MAX_SOURCE_CLIENTS];
+    uint32_t insert_effects_revision;
 
     float global_premix_level;
 
@@ -369,17 +461,47 @@ struct MixerThreadContext {
 #endif
 
     MixerThreadContext()
-        : oslmp_context(nullptr), attached_bitmap(0U), started_bitmap(0U), detach_requested_bitmap(0U),
-          looping_bitmap(0U), max_process_block_at_once(0U), num_mixout_effects(0U), global_premix_level(0.0f)
+        : oslmp_context(nullptr), flags(nullptr), mixer_unit_context(nullptr), src_blocks(nullptr),
+          src_block_pipes(nullptr), src_block_mix_contexts(nullptr), src_block_data(nullptr),
+          src_block_clients(nullptr), max_mix_sources(0U), insert_bus_src_mix_contexts(nullptr),
+          insert_bus_src_data(nullptr), attached_bitmap(), started_bitmap(), detach_requested_bitmap(),
+          looping_bitmap(0U), max_process_block_at_once(0U), num_mixout_effects(0U), mixout_effects_revision(0U),
+          num_voice_pools(0U), voice_pools_revision(0U), insert_effects_revision(0U), global_premix_level(0.0f)
     {
         currnt_src_set.init_for_mixer_thread();
 
-        for (auto &f : flags) {
-            f = FLAG_NONE;
-        }
         for (auto &e : mixout_effects) {
             e = nullptr;
         }
+        for (auto &p : voice_pools) {
+            p = nullptr;
+        }
+        for (uint32_t i = 0; i < AudioMixer::NUM_MAX_SOURCE_CLIENTS; ++i) {
+            for (auto &e : insert_effects[i]) {
+                e = nullptr;
+            }
+            num_insert_effects[i] = 0;
+            insert_bus_data[i] = nullptr;
+        }
+    }
+
+    void bind(MixerThreadWorkArea &wa) noexcept
+    {
+        flags = wa.flags.get();
+        mixer_unit_context = wa.mixer_unit_context.get();
+        src_blocks = wa.src_blocks.get();
+        src_block_pipes = wa.src_block_pipes.get();
+        src_block_mix_contexts = wa.src_block_mix_contexts.get();
+        src_block_data = wa.src_block_data.get();
+        src_block_clients = wa.src_block_clients.get();
+        max_mix_sources = wa.num_mix_sources;
+        insert_bus_src_mix_contexts = wa.insert_bus_src_mix_contexts.get();
+        insert_bus_src_data = wa.insert_bus_src_data.get();
+
+        for (uint32_t i = 0; i < wa.num_source_pipes; ++i) {
+            flags[i] = FLAG_NONE;
+            mixer_unit_context[i] = MixingUnit::Context();
+        }
     }
 };
 
@@ -417,10 +539,22 @@ public:
     int setVolume(const source_client_handle_t &control_handle, float leftVolume, float rightVolume) noexcept;
     int setLooping(const source_client_handle_t &control_handle, bool looping) noexcept;
 
+    int registerFadeProfile(MixingUnit::fade_curve_t curve, uint32_t duration_ms, uint32_t *profile) noexcept;
+    int unregisterFadeProfile(uint32_t profile) noexcept;
+
     int setAudioCaptureEnabled(bool enabled) noexcept;
 
     int setGlobalPreMixVolumeLevel(float level) noexcept;
 
+    int attachMixOutEffect(MixedOutputAudioEffect *effect) noexcept;
+    int detachMixOutEffect(MixedOutputAudioEffect *effect) noexcept;
+
+    int attachVoicePool(AudioVoicePool *pool) noexcept;
+    int detachVoicePool(AudioVoicePool *pool) noexcept;
+
+    int attachInsertEffect(const source_client_handle_t &control_handle, MixedOutputAudioEffect *effect) noexcept;
+    int detachInsertEffect(const source_client_handle_t &control_handle, MixedOutputAudioEffect *effect) noexcept;
+
     int getSinkPullListenerCallback(void (**ppfunc)(void *), void **pargs) noexcept;
 
 #ifdef LOG_TAG
@@ -435,6 +569,7 @@ private:
     bool requestThreadReceiveOneAudioSourceSetItem() noexcept;
     int requestThreadRecycleAllAudioSourceSetItems() noexcept;
     void requestThreadApplyAllVolumes() noexcept;
+    void requestThreadRemoveInsertEffect(utils::pt_unique_lock &lock, uint32_t index, int position) noexcept;
     void requestThreadRaiseOnMixingStarted(const AudioSourceSlot &slot, source_slot_state_t next_state) noexcept;
     void requestThreadRaiseOnMixingStopped(const AudioSourceSlot &slot, source_slot_state_t next_state) noexcept;
     void requestThreadHandleOnMixingStateChanged(const AudioSourceSlot &slot, source_slot_state_t cur_state,
@@ -451,11 +586,18 @@ private:
     bool mixerThreadCheckStopConditions(MixerThreadContext &c) noexcept;
     void mixerThreadCleanUpCurrentSourceSet(MixerThreadContext &c) noexcept;
     bool mixerThreadHandleAudioDataBlocks(MixerThreadContext &c) noexcept;
+    bool mixerThreadCheckStartedSourcesAreReady(MixerThreadContext &c) noexcept;
     void mixerThreadHandleNonAudioDataBlocks(MixerThreadContext &c) noexcept;
     void mixerThreadUpdateGlobalPreMixLevel(MixerThreadContext &c) noexcept;
     bool mixerThreadUpdateMixVolumes(MixerThreadContext &c) noexcept;
     void mixerThreadUpdateLoopingBitmap(MixerThreadContext &c) noexcept;
     void mixerThreadPollMixOutEffects(MixerThreadContext &c) noexcept;
+    void mixerThreadUpdateMixOutEffects(MixerThreadContext &c, bool locked) noexcept;
+    void mixerThreadUpdateVoicePools(MixerThreadContext &c, bool locked) noexcept;
+    void mixerThreadPollInsertEffects(MixerThreadContext &c) noexcept;
+    void mixerThreadUpdateInsertEffects(MixerThreadContext &c, bool locked) noexcept;
+    uint32_t mixerThreadProcessInsertEffects(MixerThreadContext &c, uint32_t num_sources,
+                                             uint32_t size_in_frames) noexcept;
 
     bool isInitialized() const noexcept;
     bool isStarted() const noexcept;
@@ -481,6 +623,11 @@ private:
     AudioSourceSet active_source_set_;
     AudioSinkSlot sink_slot_;
 
+    // slots of the all AudioSourceSet (sized by the number of the source pipes)
+    std::unique_ptr<AudioSourceSlot[]> source_slot_pool_;
+    AudioSourceSlot *mixer_thread_source_slots_;
+    int num_source_pipes_;
+
     // for communication with mixer thread
     AudioSourceSet audio_src_set_request_thread_item_pool_[NUM_AUDIO_SOURCE_SET_QUEUE_ITEMS_PER_THREAD];
     AudioSourceSet audio_src_set_mixer_thread_item_pool_[NUM_AUDIO_SOURCE_SET_QUEUE_ITEMS_PER_THREAD];
@@ -498,11 +645,34 @@ private:
     utils::pt_mutex mutex_mixer_thread_;
     utils::pt_condition_variable cond_mixer_thread_;
 
+    utils::pt_mutex mutex_fade_profiles_;
+
     MixedOutputAudioEffect *mixout_effects_[NUM_MAX_MIXOOUT_EFFECTS];
     uint32_t num_mixout_effects_;
+    std::atomic<uint32_t> mixout_effects_revision_;
+    uint32_t applied_mixout_effects_revision_; // guarded by mutex_mixer_thread_
+    utils::pt_condition_variable cond_mixout_effects_applied_;
+
+    mutable utils::pt_mutex mutex_voice_pools_; // guards voice_pools_ for canSuspend()
+    AudioVoicePool *voice_pools_[NUM_MAX_VOICE_POOLS];
+    uint32_t num_voice_pools_;
+    std::atomic<uint32_t> voice_pools_revision_;
+    uint32_t applied_voice_pools_revision_; // guarded by mutex_mixer_thread_
+    utils::pt_condition_variable cond_voice_pools_applied_;
+
+    MixedOutputAudioEffect *insert_effects_[NUM_MAX_SOURCE_CLIENTS][NUM_MAX_INSERT_EFFECTS];
+    uint32_t num_insert_effects_[NUM_MAX_SOURCE_CLIENTS];
+    std::atomic<uint32_t> insert_effects_revision_;
+    uint32_t applied_insert_effects_revision_; // guarded by mutex_mixer_thread_
+    utils::pt_condition_variable cond_insert_effects_applied_;
 
     // for mixer thread
     MixingUnit mixing_unit_;
+    MixingUnit insert_bus_mixing_unit_; // (shares the fade profiles with mixing_unit_)
+    cxxporthelper::aligned_memory<MixingUnit::in_data_type> insert_bus_buffs_[NUM_MAX_SOURCE_CLIENTS]; // (stereo)
+
+    // work area of the mixer thread
+    MixerThreadWorkArea mixer_thread_work_area_;
 
     // audio data capturing
     AudioCaptureDataPipe *capture_pipe_;
@@ -514,6 +684,9 @@ private:
     uint32_t max_process_block_at_once_;
 
     calling_context_t calling_context_;
+
+    EngineStatistics *statistics_;
+    bool offline_mode_;
 };
 
 //
@@ -540,9 +713,15 @@ static inline bool isValidSourceClientControlHandle(const AudioMixer::source_cli
     return (check_code == SOURCE_CLIENT_CONTROL_HANDLE_PATTERN) && (index < AudioMixer::NUM_MAX_SOURCE_CLIENTS);
 }
 
-static inline uint32_t update_bitmap(uint32_t value, uint32_t mask, bool cond) noexcept
+
+static inline bool contains(MixedOutputAudioEffect *const effects[], uint32_t num_effects,
+                            const MixedOutputAudioEffect *effect) noexcept
 {
-    return (cond) ? (value | mask) : (value & ~mask);
+    for (uint32_t i = 0; i < num_effects; ++i) {
+        if (effects[i] == effect)
+            return true;
+    }
+    return false;
 }
 
 static inline bool should_suspend(uint32_t flags) noexcept
@@ -827,6 +1006,20 @@ int AudioMixer::setLooping(const AudioMixer::source_client_handle_t &control_han
     return impl_->setLooping(control_handle, looping);
 }
 
+int AudioMixer::registerFadeProfile(MixingUnit::fade_curve_t curve, uint32_t duration_ms, uint32_t *profile) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->registerFadeProfile(curve, duration_ms, profile);
+}
+
+int AudioMixer::unregisterFadeProfile(uint32_t profile) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->unregisterFadeProfile(profile);
+}
+
 int AudioMixer::setAudioCaptureEnabled(bool enabled) noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -841,6 +1034,50 @@ int AudioMixer::setGlobalPreMixVolumeLevel(float level) noexcept
     return impl_->setGlobalPreMixVolumeLevel(level);
 }
 
+int AudioMixer::attachMixOutEffect(MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->attachMixOutEffect(effect);
+}
+
+int AudioMixer::detachMixOutEffect(MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->detachMixOutEffect(effect);
+}
+
+int AudioMixer::attachVoicePool(AudioVoicePool *pool) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->attachVoicePool(pool);
+}
+
+int AudioMixer::detachVoicePool(AudioVoicePool *pool) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->detachVoicePool(pool);
+}
+
+int AudioMixer::attachInsertEffect(const source_client_handle_t &control_handle,
+                                   MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->attachInsertEffect(control_handle, effect);
+}
+
+int AudioMixer::detachInsertEffect(const source_client_handle_t &control_handle,
+                                   MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->detachInsertEffect(control_handle, effect);
+}
+
 int AudioMixer::getSinkPullListenerCallback(void (**ppfunc)(void *), void **pargs) noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -854,10 +1091,14 @@ int AudioMixer::getSinkPullListenerCallback(void (**ppfunc)(void *), void **parg
 //
 AudioMixer::Impl::Impl()
     : context_(nullptr), state_(MIXER_STATE_NOT_INITIALIZED), thread_(0), pipe_manager_(nullptr),
-      requested_source_set_(), sink_slot_(), source_client_counter_(0U), looping_bitmap_(0U),
-      mixer_thread_control_flags_(0U), num_mixout_effects_(0), mixing_unit_(), capture_pipe_(nullptr),
+      requested_source_set_(), sink_slot_(), source_slot_pool_(), mixer_thread_source_slots_(nullptr),
+      num_source_pipes_(0), source_client_counter_(0U), looping_bitmap_(0U),
+      mixer_thread_control_flags_(0U), num_mixout_effects_(0), mixout_effects_revision_(0U),
+      applied_mixout_effects_revision_(0U), mutex_voice_pools_(), num_voice_pools_(0U), voice_pools_revision_(0U),
+      applied_voice_pools_revision_(0U), insert_effects_revision_(0U), applied_insert_effects_revision_(0U),
+      mixing_unit_(), insert_bus_mixing_unit_(), mixer_thread_work_area_(), capture_pipe_(nullptr),
       captuing_enabled_(false), u32_global_premix_level_(0U), sleep_duration_ns_(0U), max_process_block_at_once_(0U),
-      calling_context_(CALLING_CONTEXT_NORMAL)
+      calling_context_(CALLING_CONTEXT_NORMAL), statistics_(nullptr), offline_mode_(false)
 {
 }
 
@@ -875,10 +1116,49 @@ int AudioMixer::Impl::initialize(const AudioMixer::initialize_args_t &args) noex
     if (!args.sink_pipe)
         return OSLMP_RESULT_ILLEGAL_ARGUMENT;
 
+    if (!(args.num_source_pipes >= 1 && args.num_source_pipes <= NUM_MAX_SOURCE_PIPES))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
     // check states
     if (state_ != MIXER_STATE_NOT_INITIALIZED)
         return OSLMP_RESULT_ILLEGAL_STATE;
 
+    // allocate source slots
+    // (request thread items + mixer thread items + requested/active sets + mixer thread context)
+    {
+        const int num_slots = static_cast<int>(args.num_source_pipes);
+        const int num_sets = (NUM_AUDIO_SOURCE_SET_QUEUE_ITEMS_PER_THREAD * 2) + 3;
+
+        source_slot_pool_.reset(new (std::nothrow) AudioSourceSlot[num_sets * num_slots]);
+
+        if (!source_slot_pool_) {
+            return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+        }
+
+        AudioSourceSlot *p = &source_slot_pool_[0];
+
+        for (auto &item : audio_src_set_request_thread_item_pool_) {
+            item.bind(p, num_slots);
+            p += num_slots;
+        }
+        for (auto &item : audio_src_set_mixer_thread_item_pool_) {
+            item.bind(p, num_slots);
+            p += num_slots;
+        }
+        requested_source_set_.bind(p, num_slots);
+        p += num_slots;
+        active_source_set_.bind(p, num_slots);
+        p += num_slots;
+        mixer_thread_source_slots_ = p;
+
+        num_source_pipes_ = num_slots;
+    }
+
+    // allocate the work area of the mixer thread
+    if (!mixer_thread_work_area_.allocate(args.num_source_pipes)) {
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+    }
+
     // initialize free/request/recycle queues
     audio_src_set_request_thread_free_queue_.clear();
     audio_src_set_mixer_thread_free_queue_.clear();
@@ -937,6 +1217,15 @@ int AudioMixer::Impl::initialize(const AudioMixer::initialize_args_t &args) noex
         if (!mixing_unit_.initialize(init_args)) {
             return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
         }
+
+        if (!insert_bus_mixing_unit_.initialize(init_args)) {
+            return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+        }
+
+        // the sources of a client are moved between the main mix and the bus, so the profile ids must be same
+        if (!insert_bus_mixing_unit_.shareFadeProfiles(mixing_unit_)) {
+            return OSLMP_RESULT_INTERNAL_ERROR;
+        }
     }
 
     // set sink pipe user
@@ -973,6 +1262,8 @@ int AudioMixer::Impl::initialize(const AudioMixer::initialize_args_t &args) noex
     pipe_manager_ = args.pipe_manager;
     sink_slot_.pipe = args.sink_pipe;
     capture_pipe_ = args.capture_pipe;
+    statistics_ = args.statistics;
+    offline_mode_ = args.offline_mode;
     thread_ = 0;
     u32_global_premix_level_ = float_to_u32(1.0f);
     mixer_thread_control_flags_ = 0;
@@ -987,6 +1278,24 @@ int AudioMixer::Impl::initialize(const AudioMixer::initialize_args_t &args) noex
             num_mixout_effects_ += 1;
         }
     }
+    mixout_effects_revision_ = 0;
+    applied_mixout_effects_revision_ = 0;
+
+    num_voice_pools_ = 0;
+    for (auto &p : voice_pools_) {
+        p = nullptr;
+    }
+    voice_pools_revision_ = 0;
+    applied_voice_pools_revision_ = 0;
+
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        for (auto &e : insert_effects_[i]) {
+            e = nullptr;
+        }
+        num_insert_effects_[i] = 0;
+    }
+    insert_effects_revision_ = 0;
+    applied_insert_effects_revision_ = 0;
 
     state_ = MIXER_STATE_STOPPED;
 
@@ -1209,6 +1518,7 @@ int AudioMixer::Impl::attachOrUpdateSourcePipe(const AudioMixer::attach_update_s
     slot.mix_mode = args.mix_mode;
     slot.mix_phase = args.mix_phase;
     slot.mix_phase_override = args.mix_phase_override;
+    slot.mix_fade_profile = args.mix_fade_profile;
     slot.source_pipe = args.source_pipe;
     slot.source_no = args.source_no;
     slot.trigger_no_loop_mode = args.trigger_no_loop_mode;
@@ -1300,6 +1610,14 @@ bool AudioMixer::Impl::isPollingRequired() const noexcept
         }
     }
 
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        for (uint32_t j = 0; j < num_insert_effects_[i]; ++j) {
+            if ((insert_effects_[i][j])->isPollingRequired()) {
+                return true;
+            }
+        }
+    }
+
     return false;
 }
 
@@ -1323,6 +1641,15 @@ int AudioMixer::Impl::poll() noexcept
         }
     }
 
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        for (uint32_t j = 0; j < num_insert_effects_[i]; ++j) {
+            MixedOutputAudioEffect &effect = *(insert_effects_[i][j]);
+            if (effect.isPollingRequired()) {
+                effect.poll();
+            }
+        }
+    }
+
     if (state_ == MIXER_STATE_SUSPENDED) {
         // temporary wakeup mixer thread to call MixedOutputAudioEffect::pollFromMixerThread()
         utils::pt_unique_lock lock(mutex_mixer_thread_);
@@ -1336,23 +1663,33 @@ AudioMixer::state_t AudioMixer::Impl::getState() const noexcept { return state_;
 
 bool AudioMixer::Impl::canSuspend() const noexcept
 {
-    uint32_t bitmap_act_started = 0;
+    bool act_started = false;
     const bool is_req_to_mix_request_no_pending =
         (audio_src_set_request_thread_free_queue_.size() == NUM_AUDIO_SOURCE_SET_QUEUE_ITEMS_PER_THREAD);
     const bool is_mix_to_req_request_no_pending =
         (audio_src_set_mixer_thread_free_queue_.size() == NUM_AUDIO_SOURCE_SET_QUEUE_ITEMS_PER_THREAD);
 
-    for (int i = 0; i < AudioMixer::NUM_MAX_SOURCE_PIPES; ++i) {
-        const uint32_t index_mask = (1U << i);
+    for (int i = 0; i < active_source_set_.num_slots; ++i) {
         const AudioSourceSlot &act_slot = active_source_set_.slots[i];
-        const AudioSourceSlot &req_slot = requested_source_set_.slots[i];
 
         if (is_started_state(act_slot.state)) {
-            bitmap_act_started |= index_mask;
+            act_started = true;
+            break;
         }
     }
 
-    return (bitmap_act_started == 0) && is_req_to_mix_request_no_pending && is_mix_to_req_request_no_pending;
+    bool voice_active = false;
+    {
+        utils::pt_lock_guard lock(mutex_voice_pools_);
+        for (int i = 0; i < num_voice_pools_; ++i) {
+            if ((voice_pools_[i])->isActive()) {
+                voice_active = true;
+                break;
+            }
+        }
+    }
+
+    return (!act_started) && (!voice_active) && is_req_to_mix_request_no_pending && is_mix_to_req_request_no_pending;
 }
 
 AudioCaptureDataPipe *AudioMixer::Impl::getCapturePipe() const noexcept { return capture_pipe_; }
@@ -1438,6 +1775,15 @@ int AudioMixer::Impl::unregisterSourceClient(const AudioMixer::source_client_han
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
+    // detach the remaining insert effects
+    if (num_insert_effects_[index] > 0) {
+        utils::pt_unique_lock lock(mutex_mixer_thread_);
+
+        while (num_insert_effects_[index] > 0) {
+            requestThreadRemoveInsertEffect(lock, index, (num_insert_effects_[index] - 1));
+        }
+    }
+
     (void)source_clients_[index].reset();
 
     return OSLMP_RESULT_SUCCESS;
@@ -1503,6 +1849,30 @@ int AudioMixer::Impl::setLooping(const source_client_handle_t &control_handle, b
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioMixer::Impl::registerFadeProfile(MixingUnit::fade_curve_t curve, uint32_t duration_ms,
+                                          uint32_t *profile) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized())) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    utils::pt_unique_lock lock(mutex_fade_profiles_);
+
+    // NOTE: the insert effect bus shares the profiles
+    return mixing_unit_.registerFadeProfile(curve, duration_ms, profile);
+}
+
+int AudioMixer::Impl::unregisterFadeProfile(uint32_t profile) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized())) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    utils::pt_unique_lock lock(mutex_fade_profiles_);
+
+    return mixing_unit_.unregisterFadeProfile(profile);
+}
+
 int AudioMixer::Impl::setAudioCaptureEnabled(bool enabled) noexcept
 {
     captuing_enabled_ = enabled;
@@ -1515,6 +1885,263 @@ int AudioMixer::Impl::setGlobalPreMixVolumeLevel(float level) noexcept
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioMixer::Impl::attachMixOutEffect(MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized()))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (CXXPH_UNLIKELY(!effect))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_);
+
+    for (int i = 0; i < num_mixout_effects_; ++i) {
+        if (mixout_effects_[i] == effect)
+            return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    if (num_mixout_effects_ >= NUM_MAX_MIXOOUT_EFFECTS)
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    mixout_effects_[num_mixout_effects_] = effect;
+    num_mixout_effects_ += 1;
+
+    // the mixer thread picks up the new list at the next cycle
+    mixout_effects_revision_.fetch_add(1, std::memory_order_release);
+    cond_mixer_thread_.notify_one();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioMixer::Impl::detachMixOutEffect(MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized()))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (CXXPH_UNLIKELY(!effect))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_);
+
+    int index = -1;
+    for (int i = 0; i < num_mixout_effects_; ++i) {
+        if (mixout_effects_[i] == effect) {
+            index = i;
+            break;
+        }
+    }
+
+    if (index < 0)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    for (int i = index; i < (num_mixout_effects_ - 1); ++i) {
+        mixout_effects_[i] = mixout_effects_[i + 1];
+    }
+    num_mixout_effects_ -= 1;
+    mixout_effects_[num_mixout_effects_] = nullptr;
+
+    const uint32_t revision = mixout_effects_revision_.fetch_add(1, std::memory_order_release) + 1;
+    cond_mixer_thread_.notify_one();
+
+    // wait until the mixer thread stops referring the effect,
+    // the caller may destroy the effect instance just after this call
+    while ((mixer_thread_control_flags_.load(std::memory_order_acquire) & CONTROL_FLAG_STATUS_RUNNING) &&
+           (applied_mixout_effects_revision_ != revision)) {
+        cond_mixout_effects_applied_.wait_relative_ms(lock, 10);
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioMixer::Impl::attachVoicePool(AudioVoicePool *pool) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized()))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (CXXPH_UNLIKELY(!pool))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_);
+    utils::pt_lock_guard lock_pools(mutex_voice_pools_);
+
+    for (int i = 0; i < num_voice_pools_; ++i) {
+        if (voice_pools_[i] == pool)
+            return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    if (num_voice_pools_ >= NUM_MAX_VOICE_POOLS)
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    voice_pools_[num_voice_pools_] = pool;
+    num_voice_pools_ += 1;
+
+    // the mixer thread picks up the new list at the next cycle
+    voice_pools_revision_.fetch_add(1, std::memory_order_release);
+    cond_mixer_thread_.notify_one();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioMixer::Impl::detachVoicePool(AudioVoicePool *pool) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized()))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (CXXPH_UNLIKELY(!pool))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_);
+    uint32_t revision;
+
+    {
+        utils::pt_lock_guard lock_pools(mutex_voice_pools_);
+
+        int index = -1;
+        for (int i = 0; i < num_voice_pools_; ++i) {
+            if (voice_pools_[i] == pool) {
+                index = i;
+                break;
+            }
+        }
+
+        if (index < 0)
+            return OSLMP_RESULT_ILLEGAL_STATE;
+
+        for (int i = index; i < (num_voice_pools_ - 1); ++i) {
+            voice_pools_[i] = voice_pools_[i + 1];
+        }
+        num_voice_pools_ -= 1;
+        voice_pools_[num_voice_pools_] = nullptr;
+
+        revision = voice_pools_revision_.fetch_add(1, std::memory_order_release) + 1;
+    }
+
+    cond_mixer_thread_.notify_one();
+
+    // wait until the mixer thread stops referring the pool,
+    // the caller may destroy the pool instance just after this call
+    while ((mixer_thread_control_flags_.load(std::memory_order_acquire) & CONTROL_FLAG_STATUS_RUNNING) &&
+           (applied_voice_pools_revision_ != revision)) {
+        cond_voice_pools_applied_.wait_relative_ms(lock, 10);
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioMixer::Impl::attachInsertEffect(const source_client_handle_t &control_handle,
+                                         MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized()))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (CXXPH_UNLIKELY(!isValidSourceClientControlHandle(control_handle)))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (CXXPH_UNLIKELY(!effect))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    const uint32_t index = getSourceClientControlHandleIndex(control_handle);
+
+    if (CXXPH_UNLIKELY(source_clients_[index].handle != control_handle)) {
+        // client is not registered
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_);
+
+    // an effect instance can be used only at one place
+    if (contains(mixout_effects_, num_mixout_effects_, effect))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        if (contains(insert_effects_[i], num_insert_effects_[i], effect))
+            return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    if (num_insert_effects_[index] >= NUM_MAX_INSERT_EFFECTS)
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    // NOTE: the bus buffer is allocated at the first attachment and kept until the mixer is destroyed,
+    // the mixer thread refers to it while the client has an insert effect
+    if (!insert_bus_buffs_[index]) {
+        cxxporthelper::aligned_memory<MixingUnit::in_data_type> bus_buff(mixing_unit_.blockSizeInFrames() * 2);
+
+        if (!bus_buff) {
+            return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+        }
+
+        insert_bus_buffs_[index] = std::move(bus_buff);
+    }
+
+    insert_effects_[index][num_insert_effects_[index]] = effect;
+    num_insert_effects_[index] += 1;
+
+    // the mixer thread picks up the new chain at the next cycle
+    insert_effects_revision_.fetch_add(1, std::memory_order_release);
+    cond_mixer_thread_.notify_one();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioMixer::Impl::detachInsertEffect(const source_client_handle_t &control_handle,
+                                         MixedOutputAudioEffect *effect) noexcept
+{
+    if (CXXPH_UNLIKELY(!isInitialized()))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (CXXPH_UNLIKELY(!isValidSourceClientControlHandle(control_handle)))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (CXXPH_UNLIKELY(!effect))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    const uint32_t index = getSourceClientControlHandleIndex(control_handle);
+
+    if (CXXPH_UNLIKELY(source_clients_[index].handle != control_handle)) {
+        // client is not registered
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_);
+
+    int position = -1;
+    for (int i = 0; i < num_insert_effects_[index]; ++i) {
+        if (insert_effects_[index][i] == effect) {
+            position = i;
+            break;
+        }
+    }
+
+    if (position < 0)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    requestThreadRemoveInsertEffect(lock, index, position);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioMixer::Impl::requestThreadRemoveInsertEffect(utils::pt_unique_lock &lock, uint32_t index,
+                                                       int position) noexcept
+{
+    MixedOutputAudioEffect **chain = insert_effects_[index];
+
+    for (int i = position; i < (num_insert_effects_[index] - 1); ++i) {
+        chain[i] = chain[i + 1];
+    }
+    num_insert_effects_[index] -= 1;
+    chain[num_insert_effects_[index]] = nullptr;
+
+    const uint32_t revision = insert_effects_revision_.fetch_add(1, std::memory_order_release) + 1;
+    cond_mixer_thread_.notify_one();
+
+    // wait until the mixer thread stops referring the effect,
+    // the caller may destroy the effect instance just after this call
+    while ((mixer_thread_control_flags_.load(std::memory_order_acquire) & CONTROL_FLAG_STATUS_RUNNING) &&
+           (applied_insert_effects_revision_ != revision)) {
+        cond_insert_effects_applied_.wait_relative_ms(lock, 10);
+    }
+}
+
 int AudioMixer::Impl::getSinkPullListenerCallback(void (**ppfunc)(void *), void **pargs) noexcept
 {
     *ppfunc = onSinkPullListenerCallback;
@@ -1525,7 +2152,7 @@ int AudioMixer::Impl::getSinkPullListenerCallback(void (**ppfunc)(void *), void
 
 bool AudioMixer::Impl::requestThreadApplyAudioSourceSetItems() noexcept
 {
-    if (requested_source_set_.updated_bitmap == 0)
+    if (requested_source_set_.updated_bitmap.none())
         return false;
 
     bool applied = false;
@@ -1553,7 +2180,7 @@ bool AudioMixer::Impl::requestThreadApplyAudioSourceSetItems() noexcept
             queue.unlock_write(index);
 
             // clear updated flags
-            requested_source_set_.updated_bitmap = 0;
+            requested_source_set_.updated_bitmap.clear();
 
             applied = true;
         } else {
@@ -1597,7 +2224,7 @@ bool AudioMixer::Impl::requestThreadReceiveOneAudioSourceSetItem() noexcept
         return false;
 
     // update
-    utils::bitmap_looper looper(item->updated_bitmap);
+    source_bitmap_looper looper(item->updated_bitmap);
     while (looper.loop()) {
         const int index = looper.index();
 
@@ -1820,11 +2447,14 @@ void AudioMixer::Impl::mixerThreadProcess() noexcept
 
     MixerThreadContext c;
 
+    c.currnt_src_set.bind(mixer_thread_source_slots_, num_source_pipes_);
+    c.bind(mixer_thread_work_area_);
+
     {
         utils::pt_unique_lock lock(mutex_mixer_thread_);
 
         // initialize
-        for (int i = 0; i < NUM_MAX_SOURCE_PIPES; ++i) {
+        for (int i = 0; i < requested_source_set_.num_slots; ++i) {
             const AudioSourceSlot &req_slot = requested_source_set_.slots[i];
             if (req_slot.source_pipe) {
                 mixerThreadInitializeSource(c, i, req_slot);
@@ -1838,6 +2468,34 @@ void AudioMixer::Impl::mixerThreadProcess() noexcept
         for (int i = 0; i < c.num_mixout_effects; ++i) {
             c.mixout_effects[i] = mixout_effects_[i];
         }
+        c.mixout_effects_revision = mixout_effects_revision_.load(std::memory_order_acquire);
+        applied_mixout_effects_revision_ = c.mixout_effects_revision;
+
+        c.num_voice_pools = num_voice_pools_;
+        for (int i = 0; i < c.num_voice_pools; ++i) {
+            c.voice_pools[i] = voice_pools_[i];
+        }
+        c.voice_pools_revision = voice_pools_revision_.load(std::memory_order_acquire);
+        applied_voice_pools_revision_ = c.voice_pools_revision;
+
+        for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+            c.num_insert_effects[i] = num_insert_effects_[i];
+            for (int j = 0; j < c.num_insert_effects[i]; ++j) {
+                c.insert_effects[i][j] = insert_effects_[i][j];
+            }
+
+            // the bus is mixed as is (the client volume has been applied)
+            MixingUnit::Context &bus_context = c.insert_bus_mix_context[i];
+            bus_context.mode = MixingUnit::MODE_ADD;
+            bus_context.phase = 1.0f;
+            bus_context.volume[0] = 1.0f;
+            bus_context.volume[1] = 1.0f;
+
+            c.insert_bus_data[i] = insert_bus_buffs_[i].get();
+        }
+        c.insert_effects_revision = insert_effects_revision_.load(std::memory_order_acquire);
+        applied_insert_effects_revision_ = c.insert_effects_revision;
+
         c.global_premix_level = u32_to_float(u32_global_premix_level_.load(std::memory_order_acquire));
 
 #if USE_OSLMP_DEBUG_FEATURES
@@ -1849,6 +2507,11 @@ void AudioMixer::Impl::mixerThreadProcess() noexcept
         for (int i = 0; i < c.num_mixout_effects; ++i) {
             (c.mixout_effects[i])->onAttachedToMixerThread();
         }
+        for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+            for (int j = 0; j < c.num_insert_effects[i]; ++j) {
+                (c.insert_effects[i][j])->onAttachedToMixerThread();
+            }
+        }
         std::atomic_thread_fence(std::memory_order_seq_cst);
 
         // set CONTROL_FLAG_STATUS_RUNNING and CONTROL_FLAG_STATUS_INITIALIZED flags
@@ -1885,8 +2548,14 @@ void AudioMixer::Impl::mixerThreadProcess() noexcept
                     // Process non-audio blocks
                     mixerThreadHandleNonAudioDataBlocks(c);
 
+                    // Apply attached/detached effects and voice pools
+                    mixerThreadUpdateMixOutEffects(c, true);
+                    mixerThreadUpdateInsertEffects(c, true);
+                    mixerThreadUpdateVoicePools(c, true);
+
                     // Call effect polling method
                     mixerThreadPollMixOutEffects(c);
+                    mixerThreadPollInsertEffects(c);
 
                     // wait
                     cond_mixer_thread_.wait(lock);
@@ -1908,8 +2577,14 @@ void AudioMixer::Impl::mixerThreadProcess() noexcept
         // Update looping
         mixerThreadUpdateLoopingBitmap(c);
 
+        // Apply attached/detached effects and voice pools
+        mixerThreadUpdateMixOutEffects(c, false);
+        mixerThreadUpdateInsertEffects(c, false);
+        mixerThreadUpdateVoicePools(c, false);
+
         // Call effect polling method
         mixerThreadPollMixOutEffects(c);
+        mixerThreadPollInsertEffects(c);
 
         // Update audio source set
         mixerThreadUpdateAudioSourceSets(c, AUDIO_SOURCE_SET_QUEUE_SIZE);
@@ -1985,6 +2660,11 @@ void AudioMixer::Impl::mixerThreadProcess() noexcept
     for (int i = 0; i < c.num_mixout_effects; ++i) {
         (c.mixout_effects[i])->onDetachedFromMixerThread();
     }
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        for (int j = 0; j < c.num_insert_effects[i]; ++j) {
+            (c.insert_effects[i][j])->onDetachedFromMixerThread();
+        }
+    }
     std::atomic_thread_fence(std::memory_order_seq_cst);
 
     // clean up
@@ -2004,11 +2684,35 @@ bool AudioMixer::Impl::mixerThreadHandleAudioDataBlocks(MixerThreadContext &c) n
 
     AudioSinkDataPipe::write_block_t dest_block;
 
+    if (offline_mode_ && !mixerThreadCheckStartedSourcesAreReady(c)) {
+        NB_LOGV("mixerThreadHandleAudioDataBlocks() - waiting for source data (offline mode)");
+        return false;
+    }
+
+    // NOTE: the voice requests are applied to the next rendered block, so the blocks
+    //       written ahead into the sink pipe are added to the trigger latency
+    if (c.num_voice_pools > 0 &&
+        c.sink_slot.pipe->getNumberOfReadableItems() >= VOICE_POOL_MAX_SINK_WRITE_AHEAD_BLOCKS) {
+        NB_LOGV("mixerThreadHandleAudioDataBlocks() - write ahead limit (voice pool attached)");
+        return false;
+    }
+
     if (CXXPH_LIKELY(!(c.sink_slot.pipe->lockWrite(dest_block)))) {
         NB_LOGV("mixerThreadHandleAudioDataBlocks() - lockWrite() returns false");
         return false;
     }
 
+    EngineStatistics *stats = statistics_;
+    uint32_t sink_depth = 0;
+    timespec cpu_time_start;
+
+    if (stats) {
+        sink_depth = c.sink_slot.pipe->getNumberOfReadableItems();
+        if (!EngineStatistics::getThreadCpuTime(cpu_time_start)) {
+            stats = nullptr;
+        }
+    }
+
     const bool capture_enabled = (capture_pipe_ && captuing_enabled_);
     AudioCaptureDataPipe::write_block_t capture_block;
     AudioCaptureDataPipe::data_type *capture_buff = nullptr;
@@ -2030,21 +2734,63 @@ bool AudioMixer::Impl::mixerThreadHandleAudioDataBlocks(MixerThreadContext &c) n
     if (CXXPH_LIKELY(mixing_unit_.begin(dest_block.dest, dest_block.sample_format, capture_buff, dest_block.num_frames,
                                         c.mixout_effects, c.num_mixout_effects))) {
 
-        utils::bitmap_looper looper(c.started_bitmap);
+        uint32_t num_src_blocks = 0;
+
+        // lock the source blocks
+        source_bitmap_looper looper(c.started_bitmap);
         while (CXXPH_LIKELY(looper.loop())) {
             const int index = looper.index();
             AudioSourceSlot &src_slot = c.currnt_src_set.slots[index];
 
-            AudioSourceDataPipe::consume_block_t src_block;
+            if (stats) {
+                stats->onSourceQueueDepthSampled(src_slot.source_pipe->getNumberOfConsumableItems(),
+                                                 src_slot.source_pipe->getCapacity());
+            }
+
+            AudioSourceDataPipe::consume_block_t &src_block = c.src_blocks[num_src_blocks];
             if (src_slot.source_pipe->lockConsume(src_block, 0, FILTER_AUDIO_DATA)) {
-                mixing_unit_.mix(&(c.mixer_unit_context[index]), src_block.src, src_block.num_frames);
-                src_slot.source_pipe->unlockConsume(src_block);
-                source_data_available = true;
+                assert(src_block.num_frames == dest_block.num_frames);
+
+                c.src_block_pipes[num_src_blocks] = src_slot.source_pipe;
+                c.src_block_mix_contexts[num_src_blocks] = &(c.mixer_unit_context[index]);
+                c.src_block_data[num_src_blocks] = src_block.src;
+                c.src_block_clients[num_src_blocks] = src_slot.handle_index;
+                num_src_blocks += 1;
             } else {
                 c.mixer_unit_context[index].phase = 1.0f;
+                if (stats) {
+                    stats->onSourceStarved();
+                }
             }
         }
 
+        // process the insert effects (the source blocks of the client are replaced with its bus)
+        uint32_t num_mix_sources = mixerThreadProcessInsertEffects(c, num_src_blocks, dest_block.num_frames);
+
+        // render the voices (appended after the source blocks)
+
+        for (int i = 0; i < c.num_voice_pools; ++i) {
+            num_mix_sources += (c.voice_pools[i])->mixerThreadRender(
+                &(c.src_block_mix_contexts[num_mix_sources]), &(c.src_block_data[num_mix_sources]),
+                (c.max_mix_sources - num_mix_sources), dest_block.num_frames);
+        }
+
+        // mix all sources at once (the constant gain sources are accumulated N-way)
+        if (num_mix_sources > 0) {
+            mixing_unit_.mix(c.src_block_mix_contexts, c.src_block_data, num_mix_sources, dest_block.num_frames);
+            source_data_available = true;
+        }
+
+        // unlock the source blocks
+        for (uint32_t i = 0; i < num_src_blocks; ++i) {
+            c.src_block_pipes[i]->unlockConsume(c.src_blocks[i]);
+        }
+
+        // update the voice states (fade completion, end of data)
+        for (int i = 0; i < c.num_voice_pools; ++i) {
+            (c.voice_pools[i])->mixerThreadCommit();
+        }
+
         mixing_unit_.end();
     }
 
@@ -2059,6 +2805,14 @@ bool AudioMixer::Impl::mixerThreadHandleAudioDataBlocks(MixerThreadContext &c) n
 
     c.sink_slot.pipe->unlockWrite(dest_block);
 
+    if (stats) {
+        timespec cpu_time_end;
+        if (EngineStatistics::getThreadCpuTime(cpu_time_end)) {
+            stats->onMixerBlockProcessed(EngineStatistics::calcElapsedNs(cpu_time_start, cpu_time_end), sink_depth);
+        }
+        stats->onSinkQueueDepthSampled(sink_depth, c.sink_slot.pipe->getNumberOfBufferItems());
+    }
+
     if (CXXPH_LIKELY(source_data_available)) {
         NB_LOGV("mixerThreadHandleAudioDataBlocks() - OK (index = %d)", dest_locked_index);
     } else {
@@ -2068,10 +2822,36 @@ bool AudioMixer::Impl::mixerThreadHandleAudioDataBlocks(MixerThreadContext &c) n
     return true;
 }
 
+bool AudioMixer::Impl::mixerThreadCheckStartedSourcesAreReady(MixerThreadContext &c) noexcept
+{
+    // NOTE:
+    // In offline mode, a block is mixed only when at least one source is
+    // started and all of the started sources have data. So the output does
+    // not depend on the decoding speed and no silent block is produced after
+    // the end of data.
+
+    if (c.started_bitmap.none()) {
+        return false;
+    }
+
+    source_bitmap_looper looper(c.started_bitmap);
+
+    while (looper.loop()) {
+        const int index = looper.index();
+        AudioSourceSlot &src_slot = c.currnt_src_set.slots[index];
+
+        if (!(src_slot.source_pipe && src_slot.source_pipe->getNumberOfConsumableItems() > 0)) {
+            return false;
+        }
+    }
+
+    return true;
+}
+
 void AudioMixer::Impl::mixerThreadHandleNonAudioDataBlocks(MixerThreadContext &c) noexcept
 {
     const uint32_t FILTER_NON_AUDIO_DATA = ~(1U << AudioSourceDataPipe::TAG_AUDIO_DATA);
-    utils::bitmap_looper looper(c.started_bitmap);
+    source_bitmap_looper looper(c.started_bitmap);
 
     while (looper.loop()) {
         const int index = looper.index();
@@ -2161,6 +2941,7 @@ void AudioMixer::Impl::mixerThreadInitializeSource(MixerThreadContext &c, int in
     // set mixing unit context
     const MixingUnit::mode_t prev_mix_mode = mix_context.mode;
     mix_context.mode = static_cast<MixingUnit::mode_t>(new_slot.mix_mode);
+    mix_context.fade_profile = new_slot.mix_fade_profile;
     if (new_slot.mix_phase_override) {
         mix_context.phase = new_slot.mix_phase;
     } else {
@@ -2218,10 +2999,9 @@ void AudioMixer::Impl::mixerThreadInitializeSource(MixerThreadContext &c, int in
     cur_slot.state = next_state;
 
     // update fields
-    const uint32_t bitmap_mask = (1U << index);
-    c.attached_bitmap = update_bitmap(c.attached_bitmap, bitmap_mask, true);
-    c.started_bitmap = update_bitmap(c.started_bitmap, bitmap_mask, (flags & FLAG_STARTED));
-    c.detach_requested_bitmap = update_bitmap(c.detach_requested_bitmap, bitmap_mask, (flags & FLAG_DETACH_REQUESTED));
+    c.attached_bitmap.set(index);
+    c.started_bitmap.update(index, (flags & FLAG_STARTED));
+    c.detach_requested_bitmap.update(index, (flags & FLAG_DETACH_REQUESTED));
 }
 
 bool AudioMixer::Impl::mixerThreadUpdateAudioSourceSetOne(MixerThreadContext &c) noexcept
@@ -2248,7 +3028,7 @@ bool AudioMixer::Impl::mixerThreadUpdateAudioSourceSetOne(MixerThreadContext &c)
 
     if (item->owner == OWNER_REQUEST_THREAD) {
         // update
-        utils::bitmap_looper looper(item->updated_bitmap);
+        source_bitmap_looper looper(item->updated_bitmap);
 
         while (looper.loop()) {
             const int index = looper.index();
@@ -2288,7 +3068,7 @@ bool AudioMixer::Impl::mixerThreadUpdateAudioSourceSetOne(MixerThreadContext &c)
     mixerThreadCheckStartConditions(c);
 
     if (applied) {
-        c.currnt_src_set.updated_bitmap = 0;
+        c.currnt_src_set.updated_bitmap.clear();
         mixerThreadCleanUpCurrentSourceSet(c);
     }
 
@@ -2307,7 +3087,7 @@ bool AudioMixer::Impl::mixerThreadNotifyCurrentAudioSourceSets(MixerThreadContex
     audio_src_set_queue_t::index_t free_index = audio_src_set_queue_t::INVALID_INDEX;
     audio_src_set_queue_t::index_t notify_index = audio_src_set_queue_t::INVALID_INDEX;
 
-    if (!(c.currnt_src_set.updated_bitmap)) {
+    if (c.currnt_src_set.updated_bitmap.none()) {
         // no need to notify
         return false;
     }
@@ -2334,7 +3114,7 @@ bool AudioMixer::Impl::mixerThreadNotifyCurrentAudioSourceSets(MixerThreadContex
         notify_queue.at(notify_index) = free_item;
         notify_queue.unlock_write(notify_index);
 
-        c.currnt_src_set.updated_bitmap = 0;
+        c.currnt_src_set.updated_bitmap.clear();
 
 #ifdef LOG_TAG
         dump_mixer_thread_source_source_slot_usage(c);
@@ -2351,27 +3131,26 @@ bool AudioMixer::Impl::mixerThreadNotifyCurrentAudioSourceSets(MixerThreadContex
 
 void AudioMixer::Impl::mixerThreadCleanUpCurrentSourceSet(MixerThreadContext &c) noexcept
 {
-    utils::bitmap_looper looper(c.detach_requested_bitmap);
+    source_bitmap_looper looper(c.detach_requested_bitmap);
 
     while (looper.loop()) {
         const int index = looper.index();
-        uint32_t mask = (1U << index);
 
         c.currnt_src_set.slots[index].clear();
         c.flags[index] = 0;
         clear(c.mixer_unit_context[index]);
 
-        c.attached_bitmap = update_bitmap(c.attached_bitmap, mask, false);
-        c.detach_requested_bitmap = update_bitmap(c.detach_requested_bitmap, mask, false);
-        c.started_bitmap = update_bitmap(c.started_bitmap, mask, false);
+        c.attached_bitmap.reset(index);
+        c.detach_requested_bitmap.reset(index);
+        c.started_bitmap.reset(index);
     }
 }
 
 bool AudioMixer::Impl::mixerThreadCheckStartConditions(MixerThreadContext &c) noexcept
 {
-    uint32_t started_bitmap = 0;
+    source_bitmap_t started_bitmap;
 
-    utils::bitmap_looper outer_looper((c.attached_bitmap) & (~c.started_bitmap));
+    source_bitmap_looper outer_looper((c.attached_bitmap) & (~c.started_bitmap));
     while (outer_looper.loop()) {
         const int target_index = outer_looper.index();
         AudioSourceSlot &target_slot = c.currnt_src_set.slots[target_index];
@@ -2379,7 +3158,7 @@ bool AudioMixer::Impl::mixerThreadCheckStartConditions(MixerThreadContext &c) no
 
         int triggered_index = -1;
 
-        utils::bitmap_looper inner_looper(c.attached_bitmap & ~(1U << target_index));
+        source_bitmap_looper inner_looper(source_bitmap_t(c.attached_bitmap).reset(target_index));
         while (inner_looper.loop() && (triggered_index < 0)) {
             const int trigger_index = inner_looper.index();
             const AudioSourceSlot &trigger_slot = c.currnt_src_set.slots[trigger_index];
@@ -2419,7 +3198,7 @@ bool AudioMixer::Impl::mixerThreadCheckStartConditions(MixerThreadContext &c) no
             // inherit mixer state (copy mixer unit context)
             c.mixer_unit_context[target_index] = c.mixer_unit_context[triggered_index];
 
-            started_bitmap |= (1U << target_index);
+            started_bitmap.set(target_index);
         }
     }
 
@@ -2427,19 +3206,19 @@ bool AudioMixer::Impl::mixerThreadCheckStartConditions(MixerThreadContext &c) no
     c.currnt_src_set.updated_bitmap |= started_bitmap;
 
 #ifdef LOG_TAG
-    if (started_bitmap != 0) {
+    if (started_bitmap.any()) {
         dump_mixer_thread_source_source_slot_usage(c);
     }
 #endif
 
-    return (started_bitmap != 0);
+    return started_bitmap.any();
 }
 
 bool AudioMixer::Impl::mixerThreadCheckStopConditions(MixerThreadContext &c) noexcept
 {
-    uint32_t stopped_bitmap = 0;
+    source_bitmap_t stopped_bitmap;
 
-    utils::bitmap_looper looper(c.started_bitmap);
+    source_bitmap_looper looper(c.started_bitmap);
 
     while (looper.loop()) {
         const int index = looper.index();
@@ -2473,7 +3252,7 @@ bool AudioMixer::Impl::mixerThreadCheckStopConditions(MixerThreadContext &c) noe
             flags &= ~FLAG_STARTED;
             slot.state = stop_state;
 
-            stopped_bitmap |= (1U << index);
+            stopped_bitmap.set(index);
         }
     }
 
@@ -2481,12 +3260,12 @@ bool AudioMixer::Impl::mixerThreadCheckStopConditions(MixerThreadContext &c) noe
     c.currnt_src_set.updated_bitmap |= stopped_bitmap;
 
 #ifdef LOG_TAG
-    if (stopped_bitmap != 0) {
+    if (stopped_bitmap.any()) {
         dump_mixer_thread_source_source_slot_usage(c);
     }
 #endif
 
-    return (stopped_bitmap != 0);
+    return stopped_bitmap.any();
 }
 
 void AudioMixer::Impl::mixerThreadUpdateGlobalPreMixLevel(MixerThreadContext &c) noexcept
@@ -2502,7 +3281,7 @@ bool AudioMixer::Impl::mixerThreadUpdateMixVolumes(MixerThreadContext &c) noexce
         updated |= client.mixerThreadUpdate();
     }
 
-    utils::bitmap_looper looper(c.attached_bitmap);
+    source_bitmap_looper looper(c.attached_bitmap);
     while (looper.loop()) {
         const int index = looper.index();
         AudioSourceSlot &slot = c.currnt_src_set.slots[index];
@@ -2529,11 +3308,207 @@ void AudioMixer::Impl::mixerThreadPollMixOutEffects(MixerThreadContext &c) noexc
     }
 }
 
+void AudioMixer::Impl::mixerThreadUpdateMixOutEffects(MixerThreadContext &c, bool locked) noexcept
+{
+    if (CXXPH_LIKELY(mixout_effects_revision_.load(std::memory_order_acquire) == c.mixout_effects_revision))
+        return;
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_, true);
+
+    if (!locked) {
+        // don't block the mixer thread, retry at the next cycle
+        lock.try_lock();
+        if (!lock.owns_lock())
+            return;
+    }
+
+    // call MixedOutputAudioEffect::onDetachedFromMixerThread() for removed effects
+    for (int i = 0; i < c.num_mixout_effects; ++i) {
+        bool found = false;
+        for (int j = 0; j < num_mixout_effects_; ++j) {
+            if (mixout_effects_[j] == c.mixout_effects[i]) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            (c.mixout_effects[i])->onDetachedFromMixerThread();
+        }
+    }
+
+    // call MixedOutputAudioEffect::onAttachedToMixerThread() for added effects
+    for (int i = 0; i < num_mixout_effects_; ++i) {
+        bool found = false;
+        for (int j = 0; j < c.num_mixout_effects; ++j) {
+            if (c.mixout_effects[j] == mixout_effects_[i]) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            (mixout_effects_[i])->onAttachedToMixerThread();
+        }
+    }
+
+    c.num_mixout_effects = num_mixout_effects_;
+    for (int i = 0; i < NUM_MAX_MIXOOUT_EFFECTS; ++i) {
+        c.mixout_effects[i] = (i < num_mixout_effects_) ? mixout_effects_[i] : nullptr;
+    }
+    c.mixout_effects_revision = mixout_effects_revision_.load(std::memory_order_relaxed);
+
+    applied_mixout_effects_revision_ = c.mixout_effects_revision;
+    cond_mixout_effects_applied_.notify_all();
+}
+
+void AudioMixer::Impl::mixerThreadUpdateVoicePools(MixerThreadContext &c, bool locked) noexcept
+{
+    if (CXXPH_LIKELY(voice_pools_revision_.load(std::memory_order_acquire) == c.voice_pools_revision))
+        return;
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_, true);
+
+    if (!locked) {
+        // don't block the mixer thread, retry at the next cycle
+        lock.try_lock();
+        if (!lock.owns_lock())
+            return;
+    }
+
+    c.num_voice_pools = num_voice_pools_;
+    for (int i = 0; i < NUM_MAX_VOICE_POOLS; ++i) {
+        c.voice_pools[i] = (i < num_voice_pools_) ? voice_pools_[i] : nullptr;
+    }
+    c.voice_pools_revision = voice_pools_revision_.load(std::memory_order_relaxed);
+
+    applied_voice_pools_revision_ = c.voice_pools_revision;
+    cond_voice_pools_applied_.notify_all();
+}
+
+void AudioMixer::Impl::mixerThreadPollInsertEffects(MixerThreadContext &c) noexcept
+{
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        for (int j = 0; j < c.num_insert_effects[i]; ++j) {
+            (c.insert_effects[i][j])->pollFromMixerThread();
+        }
+    }
+}
+
+void AudioMixer::Impl::mixerThreadUpdateInsertEffects(MixerThreadContext &c, bool locked) noexcept
+{
+    if (CXXPH_LIKELY(insert_effects_revision_.load(std::memory_order_acquire) == c.insert_effects_revision))
+        return;
+
+    utils::pt_unique_lock lock(mutex_mixer_thread_, true);
+
+    if (!locked) {
+        // don't block the mixer thread, retry at the next cycle
+        lock.try_lock();
+        if (!lock.owns_lock())
+            return;
+    }
+
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        MixedOutputAudioEffect **cur_chain = c.insert_effects[i];
+        MixedOutputAudioEffect **new_chain = insert_effects_[i];
+
+        // call MixedOutputAudioEffect::onDetachedFromMixerThread() for removed effects
+        for (int j = 0; j < c.num_insert_effects[i]; ++j) {
+            if (!contains(new_chain, num_insert_effects_[i], cur_chain[j])) {
+                (cur_chain[j])->onDetachedFromMixerThread();
+            }
+        }
+
+        // call MixedOutputAudioEffect::onAttachedToMixerThread() for added effects
+        for (int j = 0; j < num_insert_effects_[i]; ++j) {
+            if (!contains(cur_chain, c.num_insert_effects[i], new_chain[j])) {
+                (new_chain[j])->onAttachedToMixerThread();
+            }
+        }
+
+        c.num_insert_effects[i] = num_insert_effects_[i];
+        for (int j = 0; j < NUM_MAX_INSERT_EFFECTS; ++j) {
+            cur_chain[j] = (j < num_insert_effects_[i]) ? new_chain[j] : nullptr;
+        }
+        c.insert_bus_data[i] = insert_bus_buffs_[i].get();
+    }
+    c.insert_effects_revision = insert_effects_revision_.load(std::memory_order_relaxed);
+
+    applied_insert_effects_revision_ = c.insert_effects_revision;
+    cond_insert_effects_applied_.notify_all();
+}
+
+uint32_t AudioMixer::Impl::mixerThreadProcessInsertEffects(MixerThreadContext &c, uint32_t num_sources,
+                                                           uint32_t size_in_frames) noexcept
+{
+    uint32_t active_clients = 0;
+
+    for (uint32_t i = 0; i < NUM_MAX_SOURCE_CLIENTS; ++i) {
+        for (int j = 0; j < c.num_insert_effects[i]; ++j) {
+            if (!(c.insert_effects[i][j])->isBypassedFromMixerThread()) {
+                active_clients |= (1U << i);
+                break;
+            }
+        }
+    }
+
+    // the bypassed chains cost nothing
+    if (CXXPH_LIKELY(active_clients == 0)) {
+        return num_sources;
+    }
+
+    utils::bitmap_looper looper(active_clients);
+
+    while (looper.loop()) {
+        const uint32_t client = static_cast<uint32_t>(looper.index());
+        uint32_t num_bus_sources = 0;
+        uint32_t num_remains = 0;
+
+        // move the source blocks of the client to the bus
+        for (uint32_t i = 0; i < num_sources; ++i) {
+            if (c.src_block_clients[i] == client) {
+                c.insert_bus_src_mix_contexts[num_bus_sources] = c.src_block_mix_contexts[i];
+                c.insert_bus_src_data[num_bus_sources] = c.src_block_data[i];
+                num_bus_sources += 1;
+            } else {
+                c.src_block_mix_contexts[num_remains] = c.src_block_mix_contexts[i];
+                c.src_block_data[num_remains] = c.src_block_data[i];
+                c.src_block_clients[num_remains] = c.src_block_clients[i];
+                num_remains += 1;
+            }
+        }
+
+        // NOTE: the chain is not processed while the client has no playing source
+        if (num_bus_sources == 0) {
+            continue;
+        }
+
+        MixingUnit &bus = insert_bus_mixing_unit_;
+        MixingUnit::in_data_type *bus_data = c.insert_bus_data[client];
+
+        if (CXXPH_LIKELY(bus.begin(bus_data, kAudioSampleFormatType_F32, nullptr, size_in_frames,
+                                   c.insert_effects[client], c.num_insert_effects[client]))) {
+            bus.mix(c.insert_bus_src_mix_contexts, c.insert_bus_src_data, num_bus_sources, size_in_frames);
+            bus.end();
+        } else {
+            ::memset(bus_data, 0, sizeof(MixingUnit::in_data_type) * size_in_frames * 2);
+        }
+
+        c.src_block_mix_contexts[num_remains] = &(c.insert_bus_mix_context[client]);
+        c.src_block_data[num_remains] = bus_data;
+        c.src_block_clients[num_remains] = client;
+
+        num_sources = num_remains + 1;
+    }
+
+    return num_sources;
+}
+
 int AudioMixer::Impl::isFadeIn(MixingUnit::mode_t mode) noexcept
 {
     switch (mode) {
     case MixingUnit::MODE_SHORT_FADE_IN:
     case MixingUnit::MODE_LONG_FADE_IN:
+    case MixingUnit::MODE_PROFILE_FADE_IN:
         return true;
     default:
         return false;
@@ -2545,6 +3520,7 @@ int AudioMixer::Impl::isFadeOut(MixingUnit::mode_t mode) noexcept
     switch (mode) {
     case MixingUnit::MODE_SHORT_FADE_OUT:
     case MixingUnit::MODE_LONG_FADE_OUT:
+    case MixingUnit::MODE_PROFILE_FADE_OUT:
         return true;
     default:
         return false;
@@ -2564,9 +3540,11 @@ int AudioMixer::Impl::getMixingDirection(MixingUnit::mode_t mode) noexcept
         return 0;
     case MixingUnit::MODE_SHORT_FADE_IN:
     case MixingUnit::MODE_LONG_FADE_IN:
+    case MixingUnit::MODE_PROFILE_FADE_IN:
         return +1;
     case MixingUnit::MODE_SHORT_FADE_OUT:
     case MixingUnit::MODE_LONG_FADE_OUT:
+    case MixingUnit::MODE_PROFILE_FADE_OUT:
         return -1;
     default:
         return 0;
@@ -2627,7 +3605,7 @@ void AudioMixer::Impl::dump_request_thread_source_source_slot_usage() noexcept
 {
     std::string str;
 
-    for (int i = 0; i < NUM_MAX_SOURCE_PIPES; ++i) {
+    for (int i = 0; i < requested_source_set_.num_slots; ++i) {
         const auto &req_slot = requested_source_set_.slots[i];
         const auto &act_slot = active_source_set_.slots[i];
 
@@ -2649,7 +3627,7 @@ void AudioMixer::Impl::dump_request_thread_source_source_slot_usage() noexcept
             str += "-";
         }
 
-        if (requested_source_set_.updated_bitmap & (1 << i)) {
+        if (requested_source_set_.updated_bitmap.test(i)) {
             str += "!";
         } else {
             str += "-";
@@ -2671,7 +3649,7 @@ void AudioMixer::Impl::dump_mixer_thread_source_source_slot_usage(const MixerThr
 {
     std::string str;
 
-    for (int i = 0; i < NUM_MAX_SOURCE_PIPES; ++i) {
+    for (int i = 0; i < c.currnt_src_set.num_slots; ++i) {
         const auto &slot = c.currnt_src_set.slots[i];
 
         str += "[";
@@ -2692,7 +3670,7 @@ void AudioMixer::Impl::dump_mixer_thread_source_source_slot_usage(const MixerThr
             str += "-";
         }
 
-        if (c.currnt_src_set.updated_bitmap & (1 << i)) {
+        if (c.currnt_src_set.updated_bitmap.test(i)) {
             str += "!";
         } else {
             str += "-";
@@ -29,6 +29,7 @@
 #include "oslmp/impl/AndroidHelper.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalUtils.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
+#include "oslmp/impl/EngineStatistics.hpp"
 
 #define TRANSLATE_RESULT(result) InternalUtils::sTranslateOpenSLErrorCode(result)
 
@@ -58,7 +59,7 @@ static inline size_t getSize(const AudioSinkDataPipe::write_block_t &wb) noexcep
 //
 
 AudioPipeBufferQueueBinder::AudioPipeBufferQueueBinder()
- : context_(nullptr), num_blocks_(0), wait_buffering_(0)
+ : context_(nullptr), statistics_(nullptr), num_blocks_(0), wait_buffering_(0)
 #ifdef USE_OSLMP_DEBUG_FEATURES
     , callback_trace_toggle_(0)
 #endif
@@ -89,6 +90,7 @@ void AudioPipeBufferQueueBinder::release() noexcept
 {
     wait_buffering_ = 0;
     context_ = nullptr;
+    statistics_ = nullptr;
 }
 
 int AudioPipeBufferQueueBinder::beforeStart(CSLAndroidSimpleBufferQueueItf *buffer_queue) noexcept
@@ -133,7 +135,8 @@ int AudioPipeBufferQueueBinder::afterStop(CSLAndroidSimpleBufferQueueItf *buffer
 }
 
 int AudioPipeBufferQueueBinder::initialize(OpenSLMediaPlayerInternalContext *context, AudioSinkDataPipe *pipe,
-                                           CSLAndroidSimpleBufferQueueItf *buffer_queue, int num_blocks) noexcept
+                                           CSLAndroidSimpleBufferQueueItf *buffer_queue, int num_blocks,
+                                           EngineStatistics *statistics) noexcept
 {
     if (CXXPH_UNLIKELY(!getSilentReadBlock(pipe, silent_block_))) {
         return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
@@ -147,6 +150,7 @@ int AudioPipeBufferQueueBinder::initialize(OpenSLMediaPlayerInternalContext *con
     pooled_blocks_.initialize(num_blocks);
     num_blocks_ = num_blocks;
     context_ = context;
+    statistics_ = statistics;
 
 #if USE_OSLMP_DEBUG_FEATURES
     nb_logger_.reset(context_->getNonBlockingTraceLogger().create_new_client());
@@ -187,6 +191,15 @@ void AudioPipeBufferQueueBinder::handleCallback(AudioSinkDataPipe *pipe,
             wait_buffering_ = 0;
             NB_LOGV("valid audio block (index = %d)", rb.dbg_lock_index);
         } else {
+            if (!wait_buffering_) {
+                pipe->notifyUnderrun();
+            }
+            if (statistics_) {
+                if (!wait_buffering_) {
+                    statistics_->onSinkUnderrun();
+                }
+                statistics_->onSinkSilentBlock();
+            }
             wait_buffering_ = 1;
             rb = silent_block_;
             NB_LOGI("silent block is used");
@@ -19,8 +19,10 @@
 #include "oslmp/impl/AudioPlayer.hpp"
 
 #include <cassert>
+#include <deque>
 
 #include <cxxporthelper/memory>
+#include <cxxporthelper/atomic>
 
 #include <loghelper/loghelper.h>
 
@@ -30,8 +32,10 @@
 #include "oslmp/impl/AudioDataPipeManager.hpp"
 #include "oslmp/impl/AudioSystem.hpp"
 #include "oslmp/impl/AudioMixer.hpp"
+#include "oslmp/impl/HQEqualizer.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerMetadata.hpp"
+#include "oslmp/impl/StatusBlockSeqLock.hpp"
 #include "oslmp/utils/timespec_utils.hpp"
 
 #define MIN_SEEK_REQUEST_PERIOD_MSEC 100
@@ -63,6 +67,7 @@ enum audio_source_create_reason_t {
     AUDIO_SOURCE_CREATE_REASON_PREPARING,
     AUDIO_SOURCE_CREATE_REASON_SEEKING,
     AUDIO_SOURCE_CREATE_REASON_REWINDING,
+    AUDIO_SOURCE_CREATE_REASON_ADVANCING,
 };
 
 struct poll_results_info_t {
@@ -75,13 +80,18 @@ struct poll_results_info_t {
     bool playback_completed;
     bool playback_looped;
     bool next_player_started;
+    bool playlist_advanced;
 
     bool buffering_status_updated;
     int32_t bufferred_percentage;
 
+    bool playback_error;
+    int playback_error_result;
+
     poll_results_info_t()
         : prepare_completed(false), prepare_result(0), seek_completed(false), seek_result(0), playback_completed(false),
-          playback_looped(false), next_player_started(false), buffering_status_updated(false), bufferred_percentage(0)
+          playback_looped(false), next_player_started(false), playlist_advanced(false), buffering_status_updated(false),
+          bufferred_percentage(0), playback_error(false), playback_error_result(0)
     {
     }
 };
@@ -98,6 +108,9 @@ public:
     int setDataSourceFd(int fd) noexcept;
     int setDataSourceFd(int fd, int64_t offset, int64_t length) noexcept;
 
+    int addPlaylistItem(const AudioSource::data_source_info_t &item) noexcept;
+    int clearPlaylist() noexcept;
+
     int preparePatialStart() noexcept;
     bool isPreparing() const noexcept;
 
@@ -113,12 +126,19 @@ public:
     int seekTo(int32_t msec) noexcept;
     int setLooping(bool looping) noexcept;
     int isLooping(bool *looping) noexcept;
+    int setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept;
     int setAudioStreamType(int stream_type) noexcept;
     int getAudioStreamType(int *stream_type) const noexcept;
     int setNextMediaPlayer(AudioPlayer *next) noexcept;
     int attachAuxEffect(int effect_id) noexcept;
     int setAuxEffectSendLevel(float level) noexcept;
     int setFadeInOutEnabled(bool enabled) noexcept;
+    int setFadeCurve(int curve, int32_t fade_in_ms, int32_t fade_out_ms) noexcept;
+    int setInsertEqualizerEnabled(bool enabled) noexcept;
+    int setInsertEqualizerBandLevels(const int16_t *levels, uint16_t num_bands) noexcept;
+
+    int setStatusBlock(OpenSLMediaPlayer::status_block_t *block) noexcept;
+    void publishStatus(int32_t player_state, bool playing) noexcept;
 
     bool isPollingRequired() const noexcept;
     void poll() noexcept;
@@ -138,12 +158,24 @@ private:
     int handlePreparationCompleteForPrepareing(int result) noexcept;
     int handlePreparationCompleteForSeeking(int result) noexcept;
     int handlePreparationCompleteForRewinding(int result) noexcept;
+    int handlePreparationCompleteForAdvancing(int result, poll_results_info_t &results) noexcept;
     void pollHandleStartPending() noexcept;
     void pollHandlePendingSeekRequest() noexcept;
+    int seekInPlace(int32_t msec) noexcept;
     void pollHandlePlaybackCompletion(poll_results_info_t &results) noexcept;
+    void pollHandleDecoderError(poll_results_info_t &results) noexcept;
     bool checkConditionForRewindedSourceCreation() const noexcept;
-    int createAndStartPreparingAudioSource(std::unique_ptr<AudioSource> &dest_source, int32_t seek_position) noexcept;
+    int createAndStartPreparingAudioSource(std::unique_ptr<AudioSource> &dest_source,
+                                           AudioSource::data_source_info_t *data_source,
+                                           int32_t seek_position) noexcept;
     int createAndStartPreparingNextAudioSource(audio_source_create_reason_t reason, int32_t seek_position) noexcept;
+    int createAndStartPreparingFollowingAudioSource() noexcept;
+
+    bool hasPendingPlaylistItem() const noexcept;
+    void adoptPlaylistItem(AudioSource::data_source_info_t &item, std::unique_ptr<AudioSource> &source) noexcept;
+    void invalidateFollowingAudioSource() noexcept;
+    void updateMixerLooping() noexcept;
+    void updateSourceLooping() noexcept;
 
     int refreshCurrentSourceToMixer(AudioMixer::DeferredApplication *mixer_da = nullptr) noexcept;
 
@@ -169,6 +201,9 @@ private:
     std::unique_ptr<AudioSource> &getCurrentSource() noexcept;
     const std::unique_ptr<AudioSource> &getCurrentSource() const noexcept;
     AudioMixer *getAudioMixer() const noexcept;
+    void releaseFadeProfiles() noexcept;
+    int prepareInsertEqualizer() noexcept;
+    void releaseInsertEqualizer() noexcept;
 
     void setHandle(AudioMixer::attach_update_source_args_t &args) const noexcept;
     void setTriggerConditions(AudioMixer::attach_update_source_args_t &args) const noexcept;
@@ -186,13 +221,16 @@ private:
         noexcept;
 
     void setStartedStatus(bool started, bool clear_pending) noexcept;
+    void writeStatusBlock() noexcept;
     bool isSeeking() const noexcept;
 
     void raiseOnPlayerStartedAsNextPlayerEvent() noexcept;
+    void raiseOnPlaylistTrackChangedEvent() noexcept;
     void raiseOnPlaybackCompletionEvent(AudioPlayer::PlaybackCompletionType completion_type) noexcept;
     void raiseOnDecoderBufferingUpdate(int32_t percent) noexcept;
     void raiseOnSeekCompleted(int seek_result) noexcept;
     void raiseOnPrepareCompleted(int prepare_result) noexcept;
+    void raiseOnPlaybackError(int error_result) noexcept;
 
 #ifdef OUTPUT_DETAIL_DEBUG_LOGS
     void dumpCurrentAudioSourceState(const char *msg) const noexcept;
@@ -212,10 +250,28 @@ private:
     OpenSLMediaPlayerMetadata metadata_;
     AudioSource::data_source_info_t data_source_;
 
+    // NOTE:
+    // The playlist_ holds the upcoming items. The item which is being
+    // prepared (or waiting in the next_source_ slot) is taken out of the list,
+    // and it is put back to the head of the list when the source is released.
+    std::deque<AudioSource::data_source_info_t> playlist_;
+    AudioSource::data_source_info_t preparing_playlist_item_;
+    AudioSource::data_source_info_t next_playlist_item_;
+    bool next_source_is_playlist_item_;
+    bool playlist_advanced_;
+
     AudioMixer::source_client_handle_t mixer_control_handle_;
 
     bool looping_;
+    int32_t loop_start_msec_;
+    int32_t loop_end_msec_; // (-1: end of data)
     bool fade_in_out_enabled_;
+    bool fade_profile_enabled_;
+    uint32_t fade_in_profile_;
+    uint32_t fade_out_profile_;
+
+    // NOTE: created on demand, attached to the mixer as an insert effect until released
+    std::unique_ptr<HQEqualizer> insert_equalizer_;
 
     bool prepared_;
     bool started_;
@@ -233,10 +289,16 @@ private:
     timespec ts_last_seek_request_;
     bool seek_pending_;
     int32_t pending_seek_position_;
+    bool in_place_seek_pending_; // completed when the first block from the new position is produced
 
     AudioMixer::mixing_stop_cause_t current_source_stop_cause_;
 
     int32_t output_latency_ms_;
+    uint32_t output_sampling_rate_;
+
+    OpenSLMediaPlayer::status_block_t *status_block_;
+    int32_t status_player_state_;
+    bool status_playing_;
 };
 
 class TimeoutChecker {
@@ -309,6 +371,21 @@ static inline void safeStopDecoder(const std::unique_ptr<AudioSource> &source) n
     }
 }
 
+static inline void safeSetLooping(const std::unique_ptr<AudioSource> &source, bool looping) noexcept
+{
+    if (source) {
+        source->setLooping(looping);
+    }
+}
+
+static inline void safeSetLoopPoints(const std::unique_ptr<AudioSource> &source, int32_t start_msec,
+                                     int32_t end_msec) noexcept
+{
+    if (source) {
+        source->setLoopPoints(start_msec, end_msec);
+    }
+}
+
 static inline void checkedMoveAudioSource(std::unique_ptr<AudioSource> &dest,
                                           std::unique_ptr<AudioSource> &src) noexcept
 {
@@ -358,6 +435,57 @@ int AudioPlayer::setDataSourceFd(int fd, int64_t offset, int64_t length) noexcep
     return impl_->setDataSourceFd(fd, offset, length);
 }
 
+int AudioPlayer::addPlaylistItemPath(const char *path) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    if (!path)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    AudioSource::data_source_info_t item;
+    item.type = AudioSource::DATA_SOURCE_PATH;
+    item.path_uri = path;
+
+    return impl_->addPlaylistItem(item);
+}
+
+int AudioPlayer::addPlaylistItemUri(const char *uri) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    if (!uri)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    AudioSource::data_source_info_t item;
+    item.type = AudioSource::DATA_SOURCE_URI;
+    item.path_uri = uri;
+
+    return impl_->addPlaylistItem(item);
+}
+
+int AudioPlayer::addPlaylistItemFd(int fd, int64_t offset, int64_t length) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    if (fd <= 0)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    AudioSource::data_source_info_t item;
+    item.type = AudioSource::DATA_SOURCE_FD;
+    item.fd = fd;
+    item.offset = offset;
+    item.length = length;
+
+    return impl_->addPlaylistItem(item);
+}
+
+int AudioPlayer::clearPlaylist() noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->clearPlaylist();
+}
+
 int AudioPlayer::preparePatialStart() noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -491,6 +619,48 @@ int AudioPlayer::setFadeInOutEnabled(bool enabled) noexcept
     return impl_->setFadeInOutEnabled(enabled);
 }
 
+int AudioPlayer::setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setLoopPoints(start_msec, end_msec);
+}
+
+int AudioPlayer::setFadeCurve(int curve, int32_t fade_in_ms, int32_t fade_out_ms) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setFadeCurve(curve, fade_in_ms, fade_out_ms);
+}
+
+int AudioPlayer::setInsertEqualizerEnabled(bool enabled) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setInsertEqualizerEnabled(enabled);
+}
+
+int AudioPlayer::setInsertEqualizerBandLevels(const int16_t *levels, uint16_t num_bands) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setInsertEqualizerBandLevels(levels, num_bands);
+}
+
+int AudioPlayer::setStatusBlock(OpenSLMediaPlayer::status_block_t *block) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setStatusBlock(block);
+}
+
+void AudioPlayer::publishStatus(int32_t player_state, bool playing) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return;
+    impl_->publishStatus(player_state, playing);
+}
+
 bool AudioPlayer::isPollingRequired() const noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -510,12 +680,16 @@ void AudioPlayer::poll() noexcept
 //
 AudioPlayer::Impl::Impl(AudioPlayer *holder)
     : holder_(holder), player_instance_id_(0), active_source_(), next_source_(), context_(nullptr),
-      event_handler_(nullptr), data_source_(), mixer_control_handle_(), looping_(false), fade_in_out_enabled_(false),
+      event_handler_(nullptr), data_source_(), playlist_(), preparing_playlist_item_(), next_playlist_item_(),
+      next_source_is_playlist_item_(false), playlist_advanced_(false), mixer_control_handle_(), looping_(false),
+      loop_start_msec_(0), loop_end_msec_(-1), fade_in_out_enabled_(false), fade_profile_enabled_(false), fade_in_profile_(0), fade_out_profile_(0),
+      insert_equalizer_(),
       prepared_(false), started_(false), start_pending_(false), playback_completed_(false), last_stopped_position_(0),
       preparing_source_create_reason_(AUDIO_SOURCE_CREATE_REASON_NONE), next_player_(nullptr),
       next_player_instance_id_(0), last_buffering_update_notified_position_(0), ts_playback_completed_(utils::timespec_utils::ZERO()),
       ts_last_seek_request_(utils::timespec_utils::ZERO()), seek_pending_(false), pending_seek_position_(false),
-      current_source_stop_cause_(MIXING_STOP_CAUSE_INVALID)
+      in_place_seek_pending_(false), current_source_stop_cause_(MIXING_STOP_CAUSE_INVALID), output_latency_ms_(0),
+      output_sampling_rate_(0), status_block_(nullptr), status_player_state_(0), status_playing_(false)
 {
 }
 
@@ -571,6 +745,7 @@ int AudioPlayer::Impl::initialize(const AudioPlayer::initialize_args_t &args) no
     mixer_control_handle_ = reg_src_args.control_handle;
     preparing_source_create_reason_ = AUDIO_SOURCE_CREATE_REASON_NONE;
     output_latency_ms_ = (latency_in_frames * 1000) / (sampling_rate / 1000);
+    output_sampling_rate_ = sampling_rate;
 
     return OSLMP_RESULT_SUCCESS;
 }
@@ -582,6 +757,12 @@ int AudioPlayer::Impl::release() noexcept
     AudioSystem *audio_system = (context_) ? context_->getAudioSystem() : nullptr;
     AudioMixer *mixer = (audio_system) ? audio_system->getMixer() : nullptr;
 
+    // detach insert effects
+    releaseInsertEqualizer();
+
+    // release fade profiles
+    releaseFadeProfiles();
+
     // unregister volume controller client
     if (mixer) {
         (void)mixer->unregisterSourceClient(mixer_control_handle_);
@@ -595,6 +776,7 @@ int AudioPlayer::Impl::release() noexcept
     holder_ = nullptr;
     player_instance_id_ = 0;
     context_ = nullptr;
+    status_block_ = nullptr;
     event_handler_ = nullptr;
     mixer_control_handle_ = AudioMixer::source_client_handle_t();
 
@@ -637,7 +819,37 @@ int AudioPlayer::Impl::setDataSourceFd(int fd, int64_t offset, int64_t length) n
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioPlayer::Impl::addPlaylistItem(const AudioSource::data_source_info_t &item) noexcept
+{
+    const bool was_pending = hasPendingPlaylistItem();
+
+    playlist_.push_back(item);
+
+    // the rewinded source is no longer needed
+    if (!looping_ && !was_pending) {
+        invalidateFollowingAudioSource();
+    }
+
+    updateMixerLooping();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioPlayer::Impl::clearPlaylist() noexcept
+{
+    if (!looping_ && hasPendingPlaylistItem()) {
+        invalidateFollowingAudioSource();
+    }
+
+    playlist_.clear();
+
+    updateMixerLooping();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
 int AudioPlayer::Impl::createAndStartPreparingAudioSource(std::unique_ptr<AudioSource> &dest_source,
+                                                          AudioSource::data_source_info_t *data_source,
                                                           int32_t seek_position) noexcept
 {
 
@@ -688,9 +900,16 @@ int AudioPlayer::Impl::createAndStartPreparingAudioSource(std::unique_ptr<AudioS
     {
         AudioSource::prepare_args_t prepare_args;
 
-        prepare_args.data_source = &data_source_;
+        prepare_args.data_source = data_source;
         prepare_args.initial_seek_position_msec = seek_position;
 
+        // NOTE: the loop points are not applied to the playlist items
+        if (data_source == &data_source_) {
+            prepare_args.looping = looping_;
+            prepare_args.loop_start_msec = loop_start_msec_;
+            prepare_args.loop_end_msec = loop_end_msec_;
+        }
+
         result = new_source->startPreparing(prepare_args);
     }
 
@@ -707,17 +926,45 @@ int AudioPlayer::Impl::createAndStartPreparingAudioSource(std::unique_ptr<AudioS
 int AudioPlayer::Impl::createAndStartPreparingNextAudioSource(audio_source_create_reason_t reason,
                                                               int32_t seek_position) noexcept
 {
-    const int result = createAndStartPreparingAudioSource(preparing_source_, seek_position);
+    AudioSource::data_source_info_t *data_source = &data_source_;
+
+    if (reason == AUDIO_SOURCE_CREATE_REASON_ADVANCING) {
+        if (playlist_.empty())
+            return OSLMP_RESULT_ILLEGAL_STATE;
+
+        preparing_playlist_item_ = playlist_.front();
+        playlist_.pop_front();
+        data_source = &preparing_playlist_item_;
+    }
+
+    const int result = createAndStartPreparingAudioSource(preparing_source_, data_source, seek_position);
 
     if (result == OSLMP_RESULT_SUCCESS) {
         preparing_source_create_reason_ = reason;
     } else {
         preparing_source_create_reason_ = AUDIO_SOURCE_CREATE_REASON_NONE;
+
+        if (reason == AUDIO_SOURCE_CREATE_REASON_ADVANCING) {
+            // skip the bad item
+            LOGW("%d Failed to start preparing a playlist item (result = %d), skipped", player_instance_id_, result);
+            clear(preparing_playlist_item_);
+            updateMixerLooping();
+        }
     }
 
     return result;
 }
 
+int AudioPlayer::Impl::createAndStartPreparingFollowingAudioSource() noexcept
+{
+    if (!looping_ && !playlist_.empty()) {
+        return createAndStartPreparingNextAudioSource(AUDIO_SOURCE_CREATE_REASON_ADVANCING, 0);
+    } else {
+        return createAndStartPreparingNextAudioSource(AUDIO_SOURCE_CREATE_REASON_REWINDING,
+                                                      (looping_) ? loop_start_msec_ : 0);
+    }
+}
+
 int AudioPlayer::Impl::refreshCurrentSourceToMixer(AudioMixer::DeferredApplication *mixer_da) noexcept
 {
     std::unique_ptr<AudioSource> &current_source = getCurrentSource();
@@ -775,6 +1022,10 @@ int AudioPlayer::Impl::pollPreparingSourceOnce(poll_results_info_t &results, boo
             result = handlePreparationCompleteForRewinding(result);
             break;
 
+        case AUDIO_SOURCE_CREATE_REASON_ADVANCING:
+            result = handlePreparationCompleteForAdvancing(result, results);
+            break;
+
         default:
             LOGE("%d preparePatialPollNextSource() - Unknown reason (%d)", player_instance_id_, reason);
             break;
@@ -968,13 +1219,64 @@ int AudioPlayer::Impl::handlePreparationCompleteForRewinding(int result) noexcep
     return result;
 }
 
+int AudioPlayer::Impl::handlePreparationCompleteForAdvancing(int result, poll_results_info_t &results) noexcept
+{
+    AudioMixer *mixer = getAudioMixer();
+    AudioMixer::DeferredApplication mixer_da(mixer);
+    const bool set_as_active = (!ready_source_ && !active_source_);
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        AudioMixer::attach_update_source_args_t args;
+        if (set_as_active) {
+            makeActiveFadeInParams(args, preparing_source_);
+        } else {
+            makeNextFadeInParams(args, preparing_source_);
+        }
+        result = mixer->attachOrUpdateSourcePipe(args, &mixer_da);
+    }
+
+    // update fields
+    if (result == OSLMP_RESULT_SUCCESS) {
+        if (set_as_active) {
+            movePreparingSourceToReadySource(&mixer_da);
+
+            if (started_) {
+                startReadySourceInternal(&mixer_da);
+            }
+        } else {
+            movePreparingSourceToNextSource(&mixer_da);
+        }
+    } else {
+        // NOTE:
+        // Don't stop the current track, just skip the bad item.
+        LOGW("%d Failed to prepare a playlist item (result = %d), skipped", player_instance_id_, result);
+
+        clear(preparing_playlist_item_);
+        releasePreparingAudioSource(&mixer_da);
+        updateMixerLooping();
+
+        if (set_as_active) {
+            if (!looping_ && !playlist_.empty()) {
+                createAndStartPreparingNextAudioSource(AUDIO_SOURCE_CREATE_REASON_ADVANCING, 0);
+            } else if (started_) {
+                playback_completed_ = true;
+                utils::timespec_utils::get_current_time(ts_playback_completed_);
+                setStartedStatus(false, false);
+                results.playback_completed = true;
+            }
+        }
+    }
+
+    return result;
+}
+
 void AudioPlayer::Impl::pollHandleStartPending() noexcept
 {
     int state = 0; // 0: not started, 1: started, 2: start next player
     int result;
     Impl *next_player_impl = getNextPlayerImpl();
 
-    if (!looping_ && next_player_impl) {
+    if (!looping_ && !hasPendingPlaylistItem() && next_player_impl) {
         result = next_player_impl->startAsNextPlayer();
 
         if (result == OSLMP_RESULT_SUCCESS) {
@@ -1023,6 +1325,13 @@ void AudioPlayer::Impl::pollHandlePendingSeekRequest() noexcept
     // release preparing audio source
     releasePreparingAudioSource();
 
+    // NOTE:
+    // The decoder of the next playlist item will be stopped by the seek operation,
+    // so release it here. (it will be prepared again when reached to the end of data)
+    if (next_source_is_playlist_item_) {
+        releaseNextAudioSource();
+    }
+
     result = createAndStartPreparingNextAudioSource(AUDIO_SOURCE_CREATE_REASON_SEEKING, msec);
 
     if (result == OSLMP_RESULT_SUCCESS) {
@@ -1030,6 +1339,26 @@ void AudioPlayer::Impl::pollHandlePendingSeekRequest() noexcept
     }
 }
 
+void AudioPlayer::Impl::pollHandleDecoderError(poll_results_info_t &results) noexcept
+{
+    const std::unique_ptr<AudioSource> &current_source = getCurrentSource();
+
+    if (!current_source)
+        return;
+
+    const int result = current_source->getDecoderErrorResult();
+
+    if (result == OSLMP_RESULT_SUCCESS)
+        return;
+
+    LOGE("%d The playback is stopped due to a decoding error (result = %d)", player_instance_id_, result);
+
+    (void)stop();
+
+    results.playback_error = true;
+    results.playback_error_result = result;
+}
+
 void AudioPlayer::Impl::pollHandlePlaybackCompletion(poll_results_info_t &results) noexcept
 {
     std::unique_ptr<AudioSource> &current_source = getCurrentSource();
@@ -1046,6 +1375,8 @@ void AudioPlayer::Impl::pollHandlePlaybackCompletion(poll_results_info_t &result
 
     const AudioSource::playback_completion_type_t comp_type = safeGetPlaybackCompletionType(current_source);
     const bool looped = (stop_cause == AudioMixer::MIXING_STOP_CAUSE_END_OF_DATA_TRIGGERED_LOOPING_SOURCE);
+    // NOTE: loop trigger is also used to switch to the next playlist item
+    const bool advanced = (looped && !looping_);
     const bool next_player_started = (stop_cause == AudioMixer::MIXING_STOP_CAUSE_END_OF_DATA_TRIGGERED_NO_LOOPING_SOURCE);
 
     if (looped || (comp_type == AudioSource::PLAYBACK_COMPLETED_WITH_LOOP_POINT)) {
@@ -1092,11 +1423,11 @@ void AudioPlayer::Impl::pollHandlePlaybackCompletion(poll_results_info_t &result
     }
 
     if (!next_source_ && !preparing_source_ && !active_source_ && !ready_source_) {
-        createAndStartPreparingNextAudioSource(AUDIO_SOURCE_CREATE_REASON_REWINDING, 0);
+        createAndStartPreparingFollowingAudioSource();
     }
 
     results.playback_completed = (playback_completed_ && !looped && !next_player_started);
-    results.playback_looped = looped;
+    results.playback_looped = (looped && !advanced);
     results.next_player_started = next_player_started;
 }
 
@@ -1126,7 +1457,7 @@ int AudioPlayer::Impl::start() noexcept
         playback_completed_ = false;
 
         if (!next_source_ && !preparing_source_) {
-            createAndStartPreparingNextAudioSource(AUDIO_SOURCE_CREATE_REASON_REWINDING, 0);
+            createAndStartPreparingFollowingAudioSource();
         }
 
         result = OSLMP_RESULT_SUCCESS;
@@ -1251,6 +1582,7 @@ int AudioPlayer::Impl::stop() noexcept
     playback_completed_ = false;
     seek_pending_ = false;
     pending_seek_position_ = 0;
+    in_place_seek_pending_ = false;
     utils::timespec_utils::set_zero(ts_last_seek_request_);
 
     setStartedStatus(false, true);
@@ -1262,10 +1594,13 @@ int AudioPlayer::Impl::reset() noexcept
 {
     stop();
     setLooping(false);
+    clearPlaylist();
 
     clear(data_source_);
     metadata_.clear();
     prepared_ = false;
+    loop_start_msec_ = 0;
+    loop_end_msec_ = -1;
     last_stopped_position_ = 0;
     current_source_stop_cause_ = MIXING_STOP_CAUSE_INVALID;
 
@@ -1399,6 +1734,15 @@ int AudioPlayer::Impl::seekTo(int32_t msec) noexcept
     // update fields
     playback_completed_ = false;
 
+    // seek without re-creating the audio source if possible
+    // (the request is not deferred because it does not create a new decoder)
+    if (seekInPlace(msec) == OSLMP_RESULT_SUCCESS) {
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    // the pending in-place seek is superseded by this request
+    in_place_seek_pending_ = false;
+
     int result;
 
     if (!defer_request) {
@@ -1435,6 +1779,43 @@ int AudioPlayer::Impl::seekTo(int32_t msec) noexcept
     return result;
 }
 
+int AudioPlayer::Impl::seekInPlace(int32_t msec) noexcept
+{
+    std::unique_ptr<AudioSource> &current_source = getCurrentSource();
+
+    if (!current_source || preparing_source_ || seek_pending_) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    if (!current_source->isSeekInPlaceSupported()) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    int result = current_source->seekInPlace(msec);
+
+    if (result != OSLMP_RESULT_SUCCESS) {
+        return result;
+    }
+
+    // NOTE: no cross-fade, the source is faded in from the new position instead
+    if (started_) {
+        AudioMixer *mixer = getAudioMixer();
+        AudioMixer::DeferredApplication mixer_da(mixer);
+
+        AudioMixer::attach_update_source_args_t args;
+        makeActiveFadeInParams(args, current_source);
+        args.mix_phase = 0.0f;
+        args.mix_phase_override = true;
+        (void)mixer->attachOrUpdateSourcePipe(args, &mixer_da);
+    }
+
+    // the completion event will be raised by the poll() function
+    // (after the first block from the new position is pushed into the pipe)
+    in_place_seek_pending_ = true;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
 int AudioPlayer::Impl::setLooping(bool looping) noexcept
 {
     if (looping_ == looping)
@@ -1442,10 +1823,49 @@ int AudioPlayer::Impl::setLooping(bool looping) noexcept
 
     looping_ = looping;
 
-    AudioMixer *mixer = getAudioMixer();
+    // the following source has to be switched (rewinded one <-> playlist item),
+    // and the rewinded one starts from the loop start point only while looping
+    if (hasPendingPlaylistItem() || loop_start_msec_ != 0) {
+        invalidateFollowingAudioSource();
+    }
 
-    if (mixer) {
-        mixer->setLooping(mixer_control_handle_, looping);
+    updateMixerLooping();
+    updateSourceLooping();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioPlayer::Impl::setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept
+{
+    if (!(start_msec >= 0 && (end_msec < 0 || end_msec > start_msec)))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (end_msec < 0) {
+        end_msec = -1;
+    }
+
+    if (loop_start_msec_ == start_msec && loop_end_msec_ == end_msec)
+        return OSLMP_RESULT_SUCCESS;
+
+    const bool start_changed = (loop_start_msec_ != start_msec);
+
+    loop_start_msec_ = start_msec;
+    loop_end_msec_ = end_msec;
+
+    // the rewinded source has to start from the new loop start point
+    if (looping_ && start_changed) {
+        invalidateFollowingAudioSource();
+    }
+
+    safeSetLoopPoints(active_source_, start_msec, end_msec);
+    safeSetLoopPoints(ready_source_, start_msec, end_msec);
+
+    if (!next_source_is_playlist_item_) {
+        safeSetLoopPoints(next_source_, start_msec, end_msec);
+    }
+
+    if (preparing_source_create_reason_ != AUDIO_SOURCE_CREATE_REASON_ADVANCING) {
+        safeSetLoopPoints(preparing_source_, start_msec, end_msec);
     }
 
     return OSLMP_RESULT_SUCCESS;
@@ -1505,6 +1925,233 @@ int AudioPlayer::Impl::setFadeInOutEnabled(bool enabled) noexcept
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioPlayer::Impl::setFadeCurve(int curve, int32_t fade_in_ms, int32_t fade_out_ms) noexcept
+{
+    MixingUnit::fade_curve_t mixer_curve;
+
+    switch (curve) {
+    case OSLMP_FADE_CURVE_DEFAULT:
+        releaseFadeProfiles();
+        return OSLMP_RESULT_SUCCESS;
+    case OSLMP_FADE_CURVE_RAISED_COSINE:
+        mixer_curve = MixingUnit::FADE_CURVE_RAISED_COSINE;
+        break;
+    case OSLMP_FADE_CURVE_LINEAR:
+        mixer_curve = MixingUnit::FADE_CURVE_LINEAR;
+        break;
+    case OSLMP_FADE_CURVE_EQUAL_POWER:
+        mixer_curve = MixingUnit::FADE_CURVE_EQUAL_POWER;
+        break;
+    case OSLMP_FADE_CURVE_LOGARITHMIC:
+        mixer_curve = MixingUnit::FADE_CURVE_LOGARITHMIC;
+        break;
+    case OSLMP_FADE_CURVE_S_CURVE:
+        mixer_curve = MixingUnit::FADE_CURVE_S_CURVE;
+        break;
+    default:
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    if (!(fade_in_ms >= 0 && fade_out_ms >= 0))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    AudioMixer *mixer = getAudioMixer();
+
+    if (!mixer)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    // NOTE:
+    // gain tables are computed here (not on the mixer thread), and
+    // shared with other players which use the same curve & duration
+    uint32_t fade_in_profile = 0;
+    uint32_t fade_out_profile = 0;
+    int result;
+
+    result = mixer->registerFadeProfile(mixer_curve, static_cast<uint32_t>(fade_in_ms), &fade_in_profile);
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    result = mixer->registerFadeProfile(mixer_curve, static_cast<uint32_t>(fade_out_ms), &fade_out_profile);
+    if (result != OSLMP_RESULT_SUCCESS) {
+        (void)mixer->unregisterFadeProfile(fade_in_profile);
+        return result;
+    }
+
+    // NOTE: the previous profiles are released after registering the new ones, so the same ones are not re-created
+    releaseFadeProfiles();
+
+    fade_in_profile_ = fade_in_profile;
+    fade_out_profile_ = fade_out_profile;
+    fade_profile_enabled_ = true;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioPlayer::Impl::setInsertEqualizerEnabled(bool enabled) noexcept
+{
+    if (!insert_equalizer_) {
+        if (!enabled)
+            return OSLMP_RESULT_SUCCESS;
+
+        const int result = prepareInsertEqualizer();
+
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+    }
+
+    // NOTE: the disabled equalizer is bypassed by the mixer after the bands are faded to flat
+    return insert_equalizer_->setEnabled(enabled);
+}
+
+int AudioPlayer::Impl::setInsertEqualizerBandLevels(const int16_t *levels, uint16_t num_bands) noexcept
+{
+    if (!(levels && num_bands == HQEqualizer::NUM_BANDS))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!insert_equalizer_) {
+        const int result = prepareInsertEqualizer();
+
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+    }
+
+    int16_t min_level = 0;
+    int16_t max_level = 0;
+
+    (void)insert_equalizer_->getBandLevelRange(&min_level, &max_level);
+
+    for (int i = 0; i < num_bands; ++i) {
+        if (!(levels[i] >= min_level && levels[i] <= max_level))
+            return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    return insert_equalizer_->setAllBandLevel(levels, num_bands);
+}
+
+int AudioPlayer::Impl::prepareInsertEqualizer() noexcept
+{
+    AudioSystem *audio_system = (context_) ? context_->getAudioSystem() : nullptr;
+    AudioMixer *mixer = (audio_system) ? audio_system->getMixer() : nullptr;
+
+    if (!mixer)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    uint32_t impl_type = HQEqualizer::kImplBasicPeakingFilter;
+
+    (void)audio_system->getParamHQEqualizerImplType(&impl_type);
+
+    std::unique_ptr<HQEqualizer> equalizer(new (std::nothrow) HQEqualizer());
+
+    if (!equalizer)
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+
+    HQEqualizer::initialize_args_t init_args;
+
+    init_args.num_channels = 2;
+    init_args.sampling_rate = output_sampling_rate_;
+    init_args.block_size_in_frames = audio_system->getPipeManager()->getBlockSizeInFrames();
+    init_args.impl_type = static_cast<HQEqualizer::impl_type_specifiler>(impl_type);
+
+    if (!equalizer->initialize(init_args))
+        return OSLMP_RESULT_INTERNAL_ERROR;
+
+    const int result = mixer->attachInsertEffect(mixer_control_handle_, equalizer.get());
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    insert_equalizer_ = std::move(equalizer);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioPlayer::Impl::releaseInsertEqualizer() noexcept
+{
+    if (!insert_equalizer_)
+        return;
+
+    AudioMixer *mixer = getAudioMixer();
+
+    // NOTE: detachInsertEffect() waits until the mixer thread stops referring the equalizer
+    if (mixer) {
+        (void)mixer->detachInsertEffect(mixer_control_handle_, insert_equalizer_.get());
+    }
+
+    insert_equalizer_.reset();
+}
+
+int AudioPlayer::Impl::setStatusBlock(OpenSLMediaPlayer::status_block_t *block) noexcept
+{
+    status_block_ = block;
+
+    if (block) {
+        writeStatusBlock();
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioPlayer::Impl::publishStatus(int32_t player_state, bool playing) noexcept
+{
+    status_player_state_ = player_state;
+    status_playing_ = playing;
+
+    writeStatusBlock();
+}
+
+void AudioPlayer::Impl::writeStatusBlock() noexcept
+{
+    typedef OpenSLMediaPlayer::status_block_t status_block_t;
+
+    if (!status_block_)
+        return;
+
+    // collect values
+    uint32_t flags = 0;
+    int32_t duration = 0;
+    int32_t position = 0;
+    int32_t buffered_position = 0;
+    timespec ts_now;
+
+    if (status_playing_) {
+        flags |= OSLMP_STATUS_FLAG_PLAYING;
+    }
+    if (looping_) {
+        flags |= OSLMP_STATUS_FLAG_LOOPING;
+    }
+    if (getDuration(&duration) == OSLMP_RESULT_SUCCESS) {
+        flags |= OSLMP_STATUS_FLAG_DURATION_AVAILABLE;
+    }
+
+    utils::timespec_utils::get_current_time(ts_now);
+
+    if (getCurrentPosition(&position) == OSLMP_RESULT_SUCCESS) {
+        flags |= OSLMP_STATUS_FLAG_POSITION_AVAILABLE;
+    }
+
+    if (active_source_ && active_source_->isNetworkSource()) {
+        (void)active_source_->getBufferedPosition(&buffered_position);
+    } else {
+        buffered_position = duration;
+    }
+
+    status_block_t values;
+
+    values.sequence = 0;
+    values.player_state = status_player_state_;
+    values.flags = flags;
+    values.duration = duration;
+    values.position = position;
+    values.buffered_position = buffered_position;
+    values.sampling_rate = static_cast<int32_t>(output_sampling_rate_);
+    values.reserved = 0;
+    values.position_frames = (static_cast<int64_t>(position) * output_sampling_rate_) / 1000;
+    values.timestamp = static_cast<int64_t>(ts_now.tv_sec) * 1000000000LL + ts_now.tv_nsec;
+
+    // update (single writer; handler thread only)
+    StatusBlockSeqLock::write(status_block_, values);
+}
+
 bool AudioPlayer::Impl::isPollingRequired() const noexcept
 {
     if (started_)
@@ -1515,6 +2162,8 @@ bool AudioPlayer::Impl::isPollingRequired() const noexcept
         return true;
     if (seek_pending_)
         return true;
+    if (in_place_seek_pending_)
+        return true;
 
     return false;
 }
@@ -1530,9 +2179,23 @@ void AudioPlayer::Impl::poll() noexcept
         pollHandlePendingSeekRequest();
     }
 
+    // in-place seek completion
+    if (in_place_seek_pending_) {
+        const std::unique_ptr<AudioSource> &current_source = getCurrentSource();
+
+        if (!current_source || current_source->isSeekInPlaceCompleted()) {
+            in_place_seek_pending_ = false;
+            results.seek_completed = true;
+            results.seek_result = OSLMP_RESULT_SUCCESS;
+        }
+    }
+
+    // decoding error (the playback is stopped)
+    pollHandleDecoderError(results);
+
     // next source creation
     if (checkConditionForRewindedSourceCreation()) {
-        createAndStartPreparingNextAudioSource(AUDIO_SOURCE_CREATE_REASON_REWINDING, 0);
+        createAndStartPreparingFollowingAudioSource();
     }
 
     // prepare source
@@ -1551,6 +2214,18 @@ void AudioPlayer::Impl::poll() noexcept
     // check playback completion
     pollHandlePlaybackCompletion(results);
 
+    // looped without switching the source (played from the loop buffer)
+    {
+        std::unique_ptr<AudioSource> &current_source = getCurrentSource();
+
+        if (current_source && current_source->fetchLoopCount() > 0) {
+            results.playback_looped = true;
+        }
+    }
+
+    results.playlist_advanced = playlist_advanced_;
+    playlist_advanced_ = false;
+
     // raise events
     if (results.buffering_status_updated) {
         raiseOnDecoderBufferingUpdate(results.bufferred_percentage);
@@ -1561,6 +2236,9 @@ void AudioPlayer::Impl::poll() noexcept
     if (results.seek_completed) {
         raiseOnSeekCompleted(results.seek_result);
     }
+    if (results.playlist_advanced) {
+        raiseOnPlaylistTrackChangedEvent();
+    }
     if (results.playback_completed) {
         raiseOnPlaybackCompletionEvent(AudioPlayer::kCompletionNormal);
     }
@@ -1570,6 +2248,12 @@ void AudioPlayer::Impl::poll() noexcept
     if (results.playback_looped) {
         raiseOnPlaybackCompletionEvent(AudioPlayer::kPlaybackLooped);
     }
+    if (results.playback_error) {
+        raiseOnPlaybackError(results.playback_error_result);
+    }
+
+    // publish the latest position
+    writeStatusBlock();
 }
 
 bool AudioPlayer::Impl::checkConditionForRewindedSourceCreation() const noexcept
@@ -1673,6 +2357,13 @@ void AudioPlayer::Impl::releaseAudioSource(std::unique_ptr<AudioSource> &source,
 
 void AudioPlayer::Impl::releasePreparingAudioSource(AudioMixer::DeferredApplication *mixer_da) noexcept
 {
+    if (preparing_source_create_reason_ == AUDIO_SOURCE_CREATE_REASON_ADVANCING &&
+        preparing_playlist_item_.type != AudioSource::DATA_SOURCE_NONE) {
+        // put back to the playlist
+        playlist_.push_front(preparing_playlist_item_);
+        clear(preparing_playlist_item_);
+    }
+
     releaseAudioSource(preparing_source_, mixer_da);
     preparing_source_create_reason_ = AUDIO_SOURCE_CREATE_REASON_NONE;
     DEBUG_CURRENT_AUDIO_SOURCE_STATE("releasePreparingAudioSource");
@@ -1692,6 +2383,13 @@ void AudioPlayer::Impl::releaseReadyAudioSource(AudioMixer::DeferredApplication
 
 void AudioPlayer::Impl::releaseNextAudioSource(AudioMixer::DeferredApplication *mixer_da) noexcept
 {
+    if (next_source_is_playlist_item_) {
+        // put back to the playlist
+        playlist_.push_front(next_playlist_item_);
+        clear(next_playlist_item_);
+        next_source_is_playlist_item_ = false;
+    }
+
     releaseAudioSource(next_source_, mixer_da);
     DEBUG_CURRENT_AUDIO_SOURCE_STATE("releaseNextAudioSource");
 }
@@ -1706,6 +2404,9 @@ void AudioPlayer::Impl::movePreparingSourceToReadySource(AudioMixer::DeferredApp
 {
     releaseReadyAudioSource(mixer_da);
     checkedMoveAudioSource(ready_source_, preparing_source_);
+    if (preparing_source_create_reason_ == AUDIO_SOURCE_CREATE_REASON_ADVANCING) {
+        adoptPlaylistItem(preparing_playlist_item_, ready_source_);
+    }
     preparing_source_create_reason_ = AUDIO_SOURCE_CREATE_REASON_NONE;
     DEBUG_CURRENT_AUDIO_SOURCE_STATE("movePreparingSourceToReadySource");
 }
@@ -1714,6 +2415,11 @@ void AudioPlayer::Impl::movePreparingSourceToNextSource(AudioMixer::DeferredAppl
 {
     releaseNextAudioSource(mixer_da);
     checkedMoveAudioSource(next_source_, preparing_source_);
+    if (preparing_source_create_reason_ == AUDIO_SOURCE_CREATE_REASON_ADVANCING) {
+        next_playlist_item_ = preparing_playlist_item_;
+        clear(preparing_playlist_item_);
+        next_source_is_playlist_item_ = true;
+    }
     preparing_source_create_reason_ = AUDIO_SOURCE_CREATE_REASON_NONE;
     DEBUG_CURRENT_AUDIO_SOURCE_STATE("movePreparingSourceToNextSource");
 }
@@ -1722,6 +2428,10 @@ void AudioPlayer::Impl::moveNextSourceToReadySource(AudioMixer::DeferredApplicat
 {
     releaseReadyAudioSource(mixer_da);
     checkedMoveAudioSource(ready_source_, next_source_);
+    if (next_source_is_playlist_item_) {
+        next_source_is_playlist_item_ = false;
+        adoptPlaylistItem(next_playlist_item_, ready_source_);
+    }
     DEBUG_CURRENT_AUDIO_SOURCE_STATE("moveNextSourceToReadySource");
 }
 
@@ -1758,6 +2468,73 @@ void AudioPlayer::Impl::releaseAllAudioSources(AudioMixer::DeferredApplication *
     releaseReadyAudioSource(da);
 }
 
+bool AudioPlayer::Impl::hasPendingPlaylistItem() const noexcept
+{
+    return !playlist_.empty() || next_source_is_playlist_item_ ||
+           (preparing_source_ && preparing_source_create_reason_ == AUDIO_SOURCE_CREATE_REASON_ADVANCING);
+}
+
+void AudioPlayer::Impl::adoptPlaylistItem(AudioSource::data_source_info_t &item,
+                                          std::unique_ptr<AudioSource> &source) noexcept
+{
+    data_source_ = item;
+    clear(item);
+
+    // NOTE: the loop points are specific to the data source
+    loop_start_msec_ = 0;
+    loop_end_msec_ = -1;
+
+    if (source) {
+        (void)source->getMetaData(&metadata_);
+    }
+
+    last_stopped_position_ = 0;
+    playlist_advanced_ = true;
+
+    updateMixerLooping();
+}
+
+void AudioPlayer::Impl::invalidateFollowingAudioSource() noexcept
+{
+    // NOTE:
+    // The mixer may already have switched to the next source.
+    // Leave it as is, pollHandlePlaybackCompletion() will handle it.
+    if (safeIsPlaybackCompleted(getCurrentSource()))
+        return;
+
+    if (preparing_source_ && getCurrentSource() &&
+        (preparing_source_create_reason_ == AUDIO_SOURCE_CREATE_REASON_REWINDING ||
+         preparing_source_create_reason_ == AUDIO_SOURCE_CREATE_REASON_ADVANCING)) {
+        releasePreparingAudioSource();
+    }
+
+    releaseNextAudioSource();
+}
+
+void AudioPlayer::Impl::updateMixerLooping() noexcept
+{
+    AudioMixer *mixer = getAudioMixer();
+
+    // NOTE: loop trigger is also used to switch to the next playlist item
+    if (mixer) {
+        mixer->setLooping(mixer_control_handle_, (looping_ || hasPendingPlaylistItem()));
+    }
+}
+
+void AudioPlayer::Impl::updateSourceLooping() noexcept
+{
+    safeSetLooping(active_source_, looping_);
+    safeSetLooping(ready_source_, looping_);
+
+    if (!next_source_is_playlist_item_) {
+        safeSetLooping(next_source_, looping_);
+    }
+
+    if (preparing_source_create_reason_ != AUDIO_SOURCE_CREATE_REASON_ADVANCING) {
+        safeSetLooping(preparing_source_, looping_);
+    }
+}
+
 AudioPlayer::Impl *AudioPlayer::Impl::getNextPlayerImpl() const noexcept
 {
     AudioSystem *as = context_->getAudioSystem();
@@ -1786,6 +2563,23 @@ AudioMixer *AudioPlayer::Impl::getAudioMixer() const noexcept
     return mixer;
 }
 
+void AudioPlayer::Impl::releaseFadeProfiles() noexcept
+{
+    if (!fade_profile_enabled_)
+        return;
+
+    AudioMixer *mixer = getAudioMixer();
+
+    if (mixer) {
+        (void)mixer->unregisterFadeProfile(fade_in_profile_);
+        (void)mixer->unregisterFadeProfile(fade_out_profile_);
+    }
+
+    fade_profile_enabled_ = false;
+    fade_in_profile_ = 0;
+    fade_out_profile_ = 0;
+}
+
 void AudioPlayer::Impl::setHandle(AudioMixer::attach_update_source_args_t &args) const noexcept
 {
     args.handle = mixer_control_handle_;
@@ -1825,12 +2619,24 @@ void AudioPlayer::Impl::setStopConditions(AudioMixer::attach_update_source_args_
 
 void AudioPlayer::Impl::setMixModeFadeIn(AudioMixer::attach_update_source_args_t &args) const noexcept
 {
-    args.mix_mode = (fade_in_out_enabled_) ? AudioMixer::MIX_MODE_LONG_FADE_IN : AudioMixer::MIX_MODE_SHORT_FADE_IN;
+    if (fade_profile_enabled_) {
+        args.mix_mode = AudioMixer::MIX_MODE_PROFILE_FADE_IN;
+        args.mix_fade_profile = fade_in_profile_;
+    } else {
+        args.mix_mode =
+            (fade_in_out_enabled_) ? AudioMixer::MIX_MODE_LONG_FADE_IN : AudioMixer::MIX_MODE_SHORT_FADE_IN;
+    }
 }
 
 void AudioPlayer::Impl::setMixModeFadeOut(AudioMixer::attach_update_source_args_t &args) const noexcept
 {
-    args.mix_mode = (fade_in_out_enabled_) ? AudioMixer::MIX_MODE_LONG_FADE_OUT : AudioMixer::MIX_MODE_SHORT_FADE_OUT;
+    if (fade_profile_enabled_) {
+        args.mix_mode = AudioMixer::MIX_MODE_PROFILE_FADE_OUT;
+        args.mix_fade_profile = fade_out_profile_;
+    } else {
+        args.mix_mode =
+            (fade_in_out_enabled_) ? AudioMixer::MIX_MODE_LONG_FADE_OUT : AudioMixer::MIX_MODE_SHORT_FADE_OUT;
+    }
 }
 
 void AudioPlayer::Impl::makeActiveFadeInParams(AudioMixer::attach_update_source_args_t &args,
@@ -1915,6 +2721,22 @@ void AudioPlayer::Impl::raiseOnPlayerStartedAsNextPlayerEvent() noexcept
     }
 }
 
+void AudioPlayer::Impl::raiseOnPlaylistTrackChangedEvent() noexcept
+{
+    if (event_handler_) {
+        int32_t remaining = static_cast<int32_t>(playlist_.size());
+
+        if (next_source_is_playlist_item_) {
+            remaining += 1;
+        }
+        if (preparing_source_ && preparing_source_create_reason_ == AUDIO_SOURCE_CREATE_REASON_ADVANCING) {
+            remaining += 1;
+        }
+
+        event_handler_->onPlaylistTrackChanged(remaining);
+    }
+}
+
 void AudioPlayer::Impl::raiseOnPlaybackCompletionEvent(AudioPlayer::PlaybackCompletionType completion_type) noexcept
 {
     if (event_handler_) {
@@ -1943,6 +2765,13 @@ void AudioPlayer::Impl::raiseOnPrepareCompleted(int prepare_result) noexcept
     }
 }
 
+void AudioPlayer::Impl::raiseOnPlaybackError(int error_result) noexcept
+{
+    if (event_handler_) {
+        event_handler_->onPlaybackError(error_result);
+    }
+}
+
 #ifdef OUTPUT_DETAIL_DEBUG_LOGS
 void AudioPlayer::Impl::dumpCurrentAudioSourceState(const char *msg) const noexcept
 {
@@ -0,0 +1,345 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "AudioSampleLoader"
+
+#include "oslmp/impl/AudioSampleLoader.hpp"
+
+#include <algorithm>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+#include <oslmp/OpenSLMediaPlayerContext.hpp>
+
+#include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
+#include "oslmp/impl/OpenSLMediaPlayerMetadata.hpp"
+#include "oslmp/impl/AudioSystem.hpp"
+#include "oslmp/impl/AudioDataPipeManager.hpp"
+#include "oslmp/impl/AudioDataAdapter.hpp"
+#include "oslmp/impl/AudioDecoderOpenSLBackend.hpp"
+#include "oslmp/impl/AudioDecoderMediaCodecBackend.hpp"
+#include "oslmp/impl/AudioDecoderPcmBackend.hpp"
+
+// NOTE: same as the AudioSource
+#define DECODE_BLOCK_SIZE_IN_FRAMES 1152
+
+namespace oslmp {
+namespace impl {
+
+AudioSampleLoader::AudioSampleLoader()
+    : mutex_(), cond_(), adapter_(), clip_(), out_block_(), out_block_size_(0), decoded_input_frames_(0),
+      progress_count_(0), end_of_data_(false), overflowed_(false), decoder_error_(OSLMP_RESULT_SUCCESS)
+{
+}
+
+AudioSampleLoader::~AudioSampleLoader() {}
+
+int AudioSampleLoader::load(const load_args_t &args, android::sp<AudioClip> &clip, uint32_t *num_frames) noexcept
+{
+    // NOTE: margin for the resampler flush and rounding
+    const uint32_t kMarginBlocks = 4;
+    const int kPrefetchPollingTimeoutMs = 100;
+    const int kMaxPrefetchPollingCount = 50;
+
+    clip.clear();
+
+    if (!(args.context && num_frames && args.max_duration_ms > 0))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!args.path_uri && args.fd < 0)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*num_frames) = 0;
+
+    AudioSystem *audio_system = args.context->getAudioSystem();
+
+    if (!audio_system)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    uint32_t out_sampling_rate = 0;
+    uint32_t resampler_quality_level = 0;
+
+    (void)audio_system->getSystemOutputSamplingRate(&out_sampling_rate);
+    (void)audio_system->getParamResamplerQualityLevel(&resampler_quality_level);
+
+    const uint32_t pipe_block_size = audio_system->getPipeManager()->getBlockSizeInFrames();
+
+    // open & prefetch
+    std::unique_ptr<AudioDecoderBackend> decoder;
+    int result = makeDecoder(args, decoder);
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    result = decoder->onStartPrefetch();
+
+    for (int i = 0; result == OSLMP_RESULT_SUCCESS; ++i) {
+        bool completed = false;
+
+        if (i >= kMaxPrefetchPollingCount) {
+            result = OSLMP_RESULT_TIMED_OUT;
+            break;
+        }
+
+        result = decoder->onPollPrefetch(kPrefetchPollingTimeoutMs, completed);
+
+        if (completed)
+            break;
+    }
+
+    OpenSLMediaPlayerMetadata metadata;
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        result = decoder->onGetMetadata(metadata);
+    }
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        if (!(metadata.numChannels.available() && metadata.samplesPerSec.available() &&
+              metadata.samplesPerSec.get() >= 1000)) {
+            result = OSLMP_RESULT_CONTENT_UNSUPPORTED;
+        } else if (metadata.duration.available() && metadata.duration.get() > args.max_duration_ms) {
+            LOGW("The sample is too long (duration = %u ms)", static_cast<uint32_t>(metadata.duration.get()));
+            result = OSLMP_RESULT_CONTENT_UNSUPPORTED;
+        }
+    }
+
+    // create adapter & clip
+    if (result == OSLMP_RESULT_SUCCESS) {
+        AudioDataAdapter::initialize_args_t init_args;
+
+        init_args.in_num_channels = metadata.numChannels.get();
+        init_args.in_sampling_rate = metadata.samplesPerSec.get();
+        init_args.in_block_size = DECODE_BLOCK_SIZE_IN_FRAMES;
+
+        init_args.out_num_channels = 2;
+        init_args.out_sampling_rate = out_sampling_rate;
+        init_args.out_block_size = pipe_block_size;
+
+        init_args.resampler_quality_spec =
+            static_cast<AudioDataAdapter::resampler_quality_spec_t>(resampler_quality_level);
+        init_args.resampler_coeff_bank_cache = audio_system->getResamplerCoeffBankCache();
+
+        adapter_.reset(new (std::nothrow) AudioDataAdapter());
+        out_block_.reset(new (std::nothrow) float[pipe_block_size * 2]);
+        out_block_size_ = pipe_block_size;
+
+        if (!(adapter_ && out_block_)) {
+            result = OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+        } else if (!adapter_->init(init_args)) {
+            result = OSLMP_RESULT_CONTENT_UNSUPPORTED;
+        }
+    }
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        const uint32_t duration_ms =
+            (metadata.duration.available() && metadata.duration.get() > 0) ? metadata.duration.get()
+                                                                            : args.max_duration_ms;
+        const uint64_t duration_in_frames = static_cast<uint64_t>(duration_ms) * (out_sampling_rate / 1000) / 1000;
+        const uint64_t max_num_blocks = ((duration_in_frames + pipe_block_size - 1) / pipe_block_size) + kMarginBlocks;
+
+        clip_ = new (std::nothrow) AudioClip();
+
+        if (!clip_.get()) {
+            result = OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+        } else {
+            result = clip_->allocate(2, pipe_block_size, static_cast<uint32_t>(max_num_blocks));
+        }
+    }
+
+    // decode
+    if (result == OSLMP_RESULT_SUCCESS) {
+        clip_->setMetadata(metadata);
+
+        decoded_input_frames_ = 0;
+        progress_count_ = 0;
+        end_of_data_ = false;
+        overflowed_ = false;
+        decoder_error_ = OSLMP_RESULT_SUCCESS;
+
+        result = decoder->onStart();
+
+        if (result == OSLMP_RESULT_SUCCESS) {
+            result = waitForCompletion();
+        }
+
+        (void)decoder->onStop();
+    }
+
+    // NOTE: onClose() waits for the decoding thread
+    decoder->onClose();
+    decoder.reset();
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        const uint64_t in_sampling_rate_hz = metadata.samplesPerSec.get() / 1000;
+        const uint64_t out_sampling_rate_hz = out_sampling_rate / 1000;
+        const uint64_t clip_frames = static_cast<uint64_t>(clip_->getNumBlocks()) * clip_->getBlockSizeInFrames();
+        const uint64_t n = (std::min)(decoded_input_frames_ * out_sampling_rate_hz / in_sampling_rate_hz, clip_frames);
+
+        if (overflowed_) {
+            LOGW("The decoded data is truncated");
+        }
+
+        if (n == 0) {
+            result = OSLMP_RESULT_CONTENT_UNSUPPORTED;
+        } else {
+            clip = clip_;
+            (*num_frames) = static_cast<uint32_t>(n);
+        }
+    }
+
+    clip_.clear();
+    adapter_.reset();
+    out_block_.reset();
+
+    return result;
+}
+
+int AudioSampleLoader::makeDecoder(const load_args_t &args, std::unique_ptr<AudioDecoderBackend> &decoder) noexcept
+{
+    AudioDecoderBackend::open_args_t open_args;
+
+    open_args.context = args.context;
+    open_args.path_uri = args.path_uri;
+    open_args.fd = args.fd;
+    open_args.offset = args.offset;
+    open_args.length = args.length;
+    open_args.block_size_in_frames = DECODE_BLOCK_SIZE_IN_FRAMES;
+    open_args.listener = this;
+
+    // local WAV files are read from the mapped file directly (no decoder is used)
+    decoder.reset(new (std::nothrow) AudioDecoderPcmBackend());
+
+    if (decoder && decoder->onOpen(open_args) == OSLMP_RESULT_SUCCESS) {
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    decoder.reset();
+
+    uint32_t backend_type = OSLMP_CONTEXT_DECODER_BACKEND_TYPE_OPENSL;
+
+    (void)args.context->getAudioSystem()->getParamDecoderBackendType(&backend_type);
+
+    if (backend_type == OSLMP_CONTEXT_DECODER_BACKEND_TYPE_MEDIACODEC &&
+        AudioDecoderMediaCodecBackend::sIsAvailable()) {
+        decoder.reset(new (std::nothrow) AudioDecoderMediaCodecBackend());
+    }
+
+    if (!decoder) {
+        decoder.reset(new (std::nothrow) AudioDecoderOpenSLBackend());
+    }
+
+    if (!decoder) {
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+    }
+
+    const int result = decoder->onOpen(open_args);
+
+    if (result != OSLMP_RESULT_SUCCESS) {
+        decoder.reset();
+    }
+
+    return result;
+}
+
+int AudioSampleLoader::waitForCompletion() noexcept
+{
+    // NOTE: fails if no block is decoded within this period
+    const int kNoProgressTimeoutMs = 3000;
+
+    utils::pt_unique_lock lock(mutex_);
+
+    while (!(end_of_data_ || overflowed_)) {
+        const uint32_t progress_count = progress_count_;
+
+        (void)cond_.wait_relative_ms(lock, kNoProgressTimeoutMs);
+
+        if (!(end_of_data_ || overflowed_) && progress_count_ == progress_count) {
+            LOGE("Decoding sample data timed out");
+            return OSLMP_RESULT_TIMED_OUT;
+        }
+    }
+
+    if (CXXPH_UNLIKELY(decoder_error_ != OSLMP_RESULT_SUCCESS)) {
+        LOGE("Decoding sample data failed (result = %d)", decoder_error_);
+        return decoder_error_;
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioSampleLoader::drainOutputData() noexcept
+{
+    while (adapter_->is_output_data_ready()) {
+        if (!adapter_->get_output_data(out_block_.get(), 2, out_block_size_))
+            break;
+
+        if (!clip_->appendBlock(out_block_.get())) {
+            overflowed_ = true;
+            break;
+        }
+    }
+}
+
+bool AudioSampleLoader::onDecoderOutputData(const int16_t *data, uint32_t num_channels, uint32_t num_frames,
+                                            uint32_t /*seek_serial*/) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    if (CXXPH_UNLIKELY(end_of_data_ || overflowed_))
+        return false;
+
+    adapter_->put_input_data(data, num_channels, num_frames);
+    decoded_input_frames_ += num_frames;
+
+    drainOutputData();
+
+    progress_count_ += 1;
+    cond_.notify_one();
+
+    return !overflowed_;
+}
+
+void AudioSampleLoader::onDecoderEndOfData(uint32_t /*seek_serial*/) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    if (!(end_of_data_ || overflowed_)) {
+        adapter_->flush();
+        drainOutputData();
+    }
+
+    end_of_data_ = true;
+    cond_.notify_one();
+}
+
+void AudioSampleLoader::onDecoderError(int result, uint32_t /*seek_serial*/) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    // NOTE: the truncated data is not used as a sample
+    if (!(end_of_data_ || overflowed_)) {
+        decoder_error_ = result;
+    }
+
+    end_of_data_ = true;
+    cond_.notify_one();
+}
+
+} // namespace impl
+} // namespace oslmp
@@ -35,6 +35,7 @@
 #include "oslmp/impl/AudioSinkDataPipeReadBlockQueue.hpp"
 #include "oslmp/impl/AudioSinkOpenSLBackend.hpp"
 #include "oslmp/impl/AudioSinkAudioTrackBackend.hpp"
+#include "oslmp/impl/AudioSinkNullBackend.hpp"
 #include "oslmp/impl/AudioTrackStream.hpp"
 #include "oslmp/utils/timespec_utils.hpp"
 
@@ -67,6 +68,7 @@ public:
     SLresult getInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept;
 
     int setNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept;
+    int setBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept;
 
 private:
     void updateState(state_t state);
@@ -194,6 +196,13 @@ int AudioSink::setNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept
     return impl_->setNotifyPullCallback(pfunc, args);
 }
 
+int AudioSink::setBlockConsumer(block_consumer_func_t func, void *args) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setBlockConsumer(func, args);
+}
+
 //
 // AudioSink::Impl
 //
@@ -258,6 +267,10 @@ int AudioSink::Impl::initialize(const AudioSink::initialize_args_t &args) noexce
         LOGD("Back-end type: AudioTrack");
         backend.reset(new(std::nothrow) AudioSinkAudioTrackBackend());
         break;
+    case BACKEND_NULL:
+        LOGD("Back-end type: Null");
+        backend.reset(new(std::nothrow) AudioSinkNullBackend());
+        break;
     }
 
     if (!backend) {
@@ -413,6 +426,14 @@ int AudioSink::Impl::setNotifyPullCallback(void (*pfunc)(void *), void *args) no
     return backend_->onSetNotifyPullCallback(pfunc, args);
 }
 
+int AudioSink::Impl::setBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept
+{
+    if (!backend_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    return backend_->onSetBlockConsumer(func, args);
+}
+
 
 
 } // namespace impl
@@ -29,6 +29,7 @@
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
 #include "oslmp/impl/AudioDataPipeManager.hpp"
 #include "oslmp/impl/AudioTrackStream.hpp"
+#include "oslmp/impl/EngineStatistics.hpp"
 
 
 namespace oslmp {
@@ -40,7 +41,7 @@ namespace impl {
 //
 AudioSinkAudioTrackBackend::AudioSinkAudioTrackBackend()
     : AudioSinkBackend(), block_size_in_frames_(0), num_player_blocks_(0), num_pipe_blocks_(0), audio_session_id_(0),
-      notify_pull_callback_pfunc_(nullptr), notify_pull_callback_args_(nullptr)
+      waiting_buffering_(true), notify_pull_callback_pfunc_(nullptr), notify_pull_callback_args_(nullptr)
 {
 }
 
@@ -86,6 +87,7 @@ int AudioSinkAudioTrackBackend::onInitialize(const AudioSink::initialize_args_t
     num_player_blocks_ = num_player_blocks;
     num_pipe_blocks_ = num_pipe_blocks;
     pipe_ = args.pipe;
+    statistics_ = args.statistics;
 
 #if USE_OSLMP_DEBUG_FEATURES
     nb_logger_.reset(args.context->getNonBlockingTraceLogger().create_new_client());
@@ -96,6 +98,7 @@ int AudioSinkAudioTrackBackend::onInitialize(const AudioSink::initialize_args_t
 
 int AudioSinkAudioTrackBackend::onStart() noexcept
 {
+    waiting_buffering_ = true;
     return stream_->start(audioTrackStreamCallback, this);
 }
 
@@ -157,6 +160,12 @@ int AudioSinkAudioTrackBackend::onSetNotifyPullCallback(void (*pfunc)(void *), v
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioSinkAudioTrackBackend::onSetBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept
+{
+    // not supported
+    return OSLMP_RESULT_ILLEGAL_STATE;
+}
+
 int32_t AudioSinkAudioTrackBackend::audioTrackStreamCallback(
     void *buffer, sample_format_type format, uint32_t num_channels, uint32_t buffer_size_in_frames, void *args) noexcept
 {
@@ -178,8 +187,20 @@ int32_t AudioSinkAudioTrackBackend::audioTrackStreamCallback(
         size_in_frames = (std::min)(rb.num_frames, buffer_size_in_frames);
         (void) ::memcpy(buffer, rb.src, (bytes_per_sample * size_in_frames * num_channels));
         pipe->unlockRead(rb);
+        thiz->waiting_buffering_ = false;
     } else {
         size_in_frames = 0;
+
+        if (!(thiz->waiting_buffering_)) {
+            pipe->notifyUnderrun();
+        }
+        if (thiz->statistics_) {
+            if (!(thiz->waiting_buffering_)) {
+                thiz->statistics_->onSinkUnderrun();
+            }
+            thiz->statistics_->onSinkSilentBlock();
+        }
+        thiz->waiting_buffering_ = true;
     }
 
     if (thiz->notify_pull_callback_pfunc_) {
@@ -21,6 +21,7 @@
 #include <algorithm>
 
 #include <cxxporthelper/memory>
+#include <cxxporthelper/atomic>
 #include <cxxporthelper/aligned_memory.hpp>
 
 #include <lockfree/lockfree_circulation_buffer.hpp>
@@ -67,6 +68,11 @@ public:
     bool unlockRead(AudioSinkDataPipe::read_block_t &block) noexcept;
 
     uint32_t getNumberOfBufferItems() const noexcept;
+    uint32_t getNumberOfReadableItems() const noexcept;
+
+    int setAdaptiveBufferingPolicy(const adaptive_buffering_policy_t &policy) noexcept;
+    void notifyUnderrun() noexcept;
+    uint32_t getWriteAheadLimit() const noexcept;
 
 private:
     int setupQueues(const initialize_args_t &args, size_t block_size, uint8_t *buffer_pool) noexcept;
@@ -81,6 +87,10 @@ private:
     cxxporthelper::aligned_memory<uint8_t> buffer_pool_;
     audio_sink_buffer_queue_t producer_queue_;
     audio_sink_buffer_queue_t consumer_queue_;
+
+    adaptive_buffering_policy_t adaptive_policy_;
+    std::atomic<uint32_t> write_ahead_limit_; // written by the consumer thread, read by the producer thread
+    uint32_t stable_read_count_;              // accessed only from the consumer thread
 };
 
 //
@@ -181,11 +191,43 @@ uint32_t AudioSinkDataPipe::getNumberOfBufferItems() const noexcept
     return impl_->getNumberOfBufferItems();
 }
 
+uint32_t AudioSinkDataPipe::getNumberOfReadableItems() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return 0;
+    return impl_->getNumberOfReadableItems();
+}
+
+int AudioSinkDataPipe::setAdaptiveBufferingPolicy(const adaptive_buffering_policy_t &policy) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setAdaptiveBufferingPolicy(policy);
+}
+
+void AudioSinkDataPipe::notifyUnderrun() noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return;
+    impl_->notifyUnderrun();
+}
+
+uint32_t AudioSinkDataPipe::getWriteAheadLimit() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return 0;
+    return impl_->getWriteAheadLimit();
+}
+
 //
 // AudioSinkDataPipe::Impl
 //
 
-AudioSinkDataPipe::Impl::Impl() : initialized_(false), init_args_(), cache_aligned_block_size_(0), buffer_pool_() {}
+AudioSinkDataPipe::Impl::Impl()
+    : initialized_(false), init_args_(), cache_aligned_block_size_(0), buffer_pool_(), adaptive_policy_(),
+      write_ahead_limit_(MAX_BUFFER_ITEM_COUNT), stable_read_count_(0)
+{
+}
 
 AudioSinkDataPipe::Impl::~Impl() {}
 
@@ -243,6 +285,9 @@ int AudioSinkDataPipe::Impl::reset() noexcept
     if (CXXPH_UNLIKELY(!initialized_))
         return OSLMP_RESULT_ILLEGAL_STATE;
 
+    // NOTE: keep the write-ahead limit, it reflects the device characteristics
+    stable_read_count_ = 0;
+
     int result;
     if (buffer_pool_) {
         result = setupQueues(init_args_, cache_aligned_block_size_, &buffer_pool_[0]);
@@ -340,6 +385,13 @@ bool AudioSinkDataPipe::Impl::lockWrite(AudioSinkDataPipe::write_block_t &block,
     if (CXXPH_UNLIKELY(!(initialized_ && buffer_pool_)))
         return false;
 
+    // limit the number of blocks written ahead
+    if (adaptive_policy_.enabled &&
+        consumer_queue_.size() >= write_ahead_limit_.load(std::memory_order_relaxed)) {
+        clear(block);
+        return false;
+    }
+
     // obtain free item from the producer_queue_
     audio_sink_buffer_queue_t::index_t index = audio_sink_buffer_queue_t::INVALID_INDEX;
     audio_sink_buffer_queue_t &queue = producer_queue_;
@@ -422,6 +474,18 @@ bool AudioSinkDataPipe::Impl::lockRead(AudioSinkDataPipe::read_block_t &block, s
 
         queue.unlock_read(index);
 
+        // shrink the write-ahead limit if the stream is stable
+        if (adaptive_policy_.enabled) {
+            stable_read_count_ += 1;
+            if (stable_read_count_ >= adaptive_policy_.shrink_interval_blocks) {
+                const uint32_t limit = write_ahead_limit_.load(std::memory_order_relaxed);
+                if (limit > adaptive_policy_.min_write_ahead_items) {
+                    write_ahead_limit_.store(limit - 1, std::memory_order_relaxed);
+                }
+                stable_read_count_ = 0;
+            }
+        }
+
         return true;
     } else {
         clear(block);
@@ -459,5 +523,47 @@ bool AudioSinkDataPipe::Impl::unlockRead(AudioSinkDataPipe::read_block_t &block)
 
 uint32_t AudioSinkDataPipe::Impl::getNumberOfBufferItems() const noexcept { return init_args_.num_buffer_items; }
 
+uint32_t AudioSinkDataPipe::Impl::getNumberOfReadableItems() const noexcept
+{
+    return static_cast<uint32_t>(consumer_queue_.size());
+}
+
+int AudioSinkDataPipe::Impl::setAdaptiveBufferingPolicy(const adaptive_buffering_policy_t &policy) noexcept
+{
+    if (CXXPH_UNLIKELY(!initialized_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (policy.enabled) {
+        // NOTE: the sink waits for 2 blocks after an underrun
+        if (!(policy.min_write_ahead_items >= 2 && policy.min_write_ahead_items <= policy.max_write_ahead_items &&
+              policy.max_write_ahead_items <= init_args_.num_buffer_items && policy.shrink_interval_blocks > 0))
+            return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    adaptive_policy_ = policy;
+    write_ahead_limit_.store((policy.enabled) ? policy.min_write_ahead_items : init_args_.num_buffer_items,
+                             std::memory_order_relaxed);
+    stable_read_count_ = 0;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioSinkDataPipe::Impl::notifyUnderrun() noexcept
+{
+    if (!adaptive_policy_.enabled)
+        return;
+
+    const uint32_t limit = write_ahead_limit_.load(std::memory_order_relaxed);
+    if (limit < adaptive_policy_.max_write_ahead_items) {
+        write_ahead_limit_.store(limit + 1, std::memory_order_relaxed);
+    }
+    stable_read_count_ = 0;
+}
+
+uint32_t AudioSinkDataPipe::Impl::getWriteAheadLimit() const noexcept
+{
+    return write_ahead_limit_.load(std::memory_order_relaxed);
+}
+
 } // namespace impl
 } // namespace oslmp
@@ -0,0 +1,230 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "ASNullBackend"
+
+#include "oslmp/impl/AudioSinkNullBackend.hpp"
+
+#include <sched.h>
+#include <time.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include "oslmp/impl/AudioDataPipeManager.hpp"
+#include "oslmp/impl/AndroidHelper.hpp"
+
+namespace oslmp {
+namespace impl {
+
+//
+// AudioSinkNullBackend
+//
+AudioSinkNullBackend::AudioSinkNullBackend()
+    : AudioSinkBackend(), block_size_in_frames_(0), num_player_blocks_(0), sampling_rate_(0), pt_handle_(0),
+      stop_request_(false), virtual_clock_frames_(0), block_consumer_func_(nullptr), block_consumer_args_(nullptr),
+      notify_pull_callback_pfunc_(nullptr), notify_pull_callback_args_(nullptr)
+{
+}
+
+AudioSinkNullBackend::~AudioSinkNullBackend() { stopPullerThread(); }
+
+int AudioSinkNullBackend::onInitialize(const AudioSink::initialize_args_t &args, void *pipe_user) noexcept
+{
+    if (!(args.pipe_manager && args.pipe)) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    // set pipe user
+    const int result = args.pipe_manager->setSinkPipeOutPortUser(args.pipe, pipe_user, true);
+    if (CXXPH_UNLIKELY(result != OSLMP_RESULT_SUCCESS))
+        return result;
+
+    block_size_in_frames_ = args.pipe_manager->getBlockSizeInFrames();
+    num_player_blocks_ = args.num_player_blocks;
+    sampling_rate_ = args.sampling_rate;
+    pipe_ = args.pipe;
+    statistics_ = args.statistics;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSinkNullBackend::onStart() noexcept
+{
+    virtual_clock_frames_.store(0, std::memory_order_relaxed);
+    return startPullerThread();
+}
+
+int AudioSinkNullBackend::onPause() noexcept
+{
+    stopPullerThread();
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSinkNullBackend::onResume() noexcept { return startPullerThread(); }
+
+int AudioSinkNullBackend::onStop() noexcept
+{
+    stopPullerThread();
+    return OSLMP_RESULT_SUCCESS;
+}
+
+uint32_t AudioSinkNullBackend::onGetLatencyInFrames() const noexcept
+{
+    return block_size_in_frames_ * num_player_blocks_;
+}
+
+int32_t AudioSinkNullBackend::onGetAudioSessionId() const noexcept { return 0; }
+
+int AudioSinkNullBackend::onSelectActiveAuxEffect(int aux_effect_id) noexcept { return OSLMP_RESULT_ILLEGAL_STATE; }
+
+int AudioSinkNullBackend::onSetAuxEffectSendLevel(float level) noexcept { return OSLMP_RESULT_ILLEGAL_STATE; }
+
+int AudioSinkNullBackend::onSetAuxEffectEnabled(int aux_effect_id, bool enabled) noexcept
+{
+    return OSLMP_RESULT_SUCCESS;
+}
+
+SLresult AudioSinkNullBackend::onGetInterfaceFromOutputMixer(opensles::CSLInterface *itf) noexcept
+{
+    return SL_RESULT_FEATURE_UNSUPPORTED;
+}
+
+SLresult AudioSinkNullBackend::onGetInterfaceFromSinkPlayer(opensles::CSLInterface *itf) noexcept
+{
+    return SL_RESULT_FEATURE_UNSUPPORTED;
+}
+
+int AudioSinkNullBackend::onSetNotifyPullCallback(void (*pfunc)(void *), void *args) noexcept
+{
+    notify_pull_callback_pfunc_ = pfunc;
+    notify_pull_callback_args_ = args;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSinkNullBackend::onSetBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept
+{
+    if (pt_handle_) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    block_consumer_func_ = func;
+    block_consumer_args_ = args;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+uint64_t AudioSinkNullBackend::getVirtualClockInFrames() const noexcept
+{
+    return virtual_clock_frames_.load(std::memory_order_acquire);
+}
+
+uint32_t AudioSinkNullBackend::getSamplingRate() const noexcept { return sampling_rate_; }
+
+int AudioSinkNullBackend::startPullerThread() noexcept
+{
+    if (!pipe_) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    if (pt_handle_) {
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    pthread_t pt_handle;
+
+    stop_request_ = false;
+
+    if (::pthread_create(&pt_handle, nullptr, &AudioSinkNullBackend::pullerThreadEntryFunc, this) != 0) {
+        return OSLMP_RESULT_INTERNAL_ERROR;
+    }
+
+    pt_handle_ = pt_handle;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioSinkNullBackend::stopPullerThread() noexcept
+{
+    if (!pt_handle_) {
+        return;
+    }
+
+    stop_request_ = true;
+    (void)::pthread_join(pt_handle_, nullptr);
+    pt_handle_ = 0;
+    stop_request_ = false;
+}
+
+void *AudioSinkNullBackend::pullerThreadEntryFunc(void *args) noexcept
+{
+    AudioSinkNullBackend *thiz = static_cast<AudioSinkNullBackend *>(args);
+
+    AndroidHelper::setCurrentThreadName("NullSinkPuller");
+
+    thiz->pullerThreadProcess();
+
+    return nullptr;
+}
+
+void AudioSinkNullBackend::pullerThreadProcess() noexcept
+{
+    AudioSinkDataPipe *pipe = pipe_;
+    int num_empty = 0;
+
+    while (CXXPH_LIKELY(!stop_request_)) {
+        AudioSinkDataPipe::read_block_t rb;
+
+        if (CXXPH_LIKELY(pipe->lockRead(rb, 0))) {
+            if (block_consumer_func_) {
+                (*block_consumer_func_)(rb.src, rb.sample_format, rb.num_channels, rb.num_frames, block_consumer_args_);
+            }
+
+            const uint32_t num_frames = rb.num_frames;
+
+            pipe->unlockRead(rb);
+
+            virtual_clock_frames_.fetch_add(num_frames, std::memory_order_release);
+
+            num_empty = 0;
+        } else {
+            // NOTE:
+            // An empty pipe is not an underrun on the virtual clock;
+            // the clock simply does not advance until the mixer catches up.
+            // Back off after a few retries not to starve the decoder threads.
+            if (num_empty < EMPTY_PIPE_YIELD_COUNT) {
+                ++num_empty;
+                (void)::sched_yield();
+            } else {
+                struct timespec ts;
+                ts.tv_sec = 0;
+                ts.tv_nsec = EMPTY_PIPE_SLEEP_NS;
+                (void)::nanosleep(&ts, nullptr);
+            }
+        }
+
+        if (notify_pull_callback_pfunc_) {
+            (*notify_pull_callback_pfunc_)(notify_pull_callback_args_);
+        }
+    }
+}
+
+} // namespace impl
+} // namespace oslmp
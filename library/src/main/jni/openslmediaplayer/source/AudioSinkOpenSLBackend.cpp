@@ -288,7 +288,7 @@ int AudioSinkOpenSLBackend::onInitialize(const AudioSink::initialize_args_t &arg
         return result;
 
     // bind buffer
-    result = queue_binder_.initialize(args.context, args.pipe, &buffer_queue, num_player_blocks);
+    result = queue_binder_.initialize(args.context, args.pipe, &buffer_queue, num_player_blocks, args.statistics);
     if (CXXPH_UNLIKELY(result != OSLMP_RESULT_SUCCESS)) {
         args.pipe_manager->setSinkPipeOutPortUser(args.pipe, pipe_user, false);
         return result;
@@ -307,6 +307,7 @@ int AudioSinkOpenSLBackend::onInitialize(const AudioSink::initialize_args_t &arg
     num_pipe_blocks_ = num_pipe_blocks;
     opts_ = args.opts;
     pipe_ = args.pipe;
+    statistics_ = args.statistics;
 
     return OSLMP_RESULT_SUCCESS;
 }
@@ -525,6 +526,12 @@ int AudioSinkOpenSLBackend::onSetNotifyPullCallback(void (*pfunc)(void *), void
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioSinkOpenSLBackend::onSetBlockConsumer(AudioSink::block_consumer_func_t func, void *args) noexcept
+{
+    // not supported
+    return OSLMP_RESULT_ILLEGAL_STATE;
+}
+
 int AudioSinkOpenSLBackend::applyActiveAuxEffectSettings() noexcept
 {
     CSLEffectSendItf effect_send;
@@ -23,6 +23,7 @@
 #include <cstring>
 #include <vector>
 #include <limits>
+#include <fcntl.h>
 #include <unistd.h>
 
 #include <cxxporthelper/memory>
@@ -34,6 +35,7 @@
 #include <loghelper/loghelper.h>
 
 #include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+#include <oslmp/OpenSLMediaPlayerContext.hpp>
 
 #include "oslmp/impl/OpenSLMediaPlayerInternalUtils.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
@@ -41,21 +43,25 @@
 #include "oslmp/impl/AudioSystem.hpp"
 #include "oslmp/impl/AudioDataPipeManager.hpp"
 #include "oslmp/impl/AudioDataAdapter.hpp"
+#include "oslmp/impl/AudioSourceWorkerPool.hpp"
+#include "oslmp/impl/AudioDecoderBackend.hpp"
+#include "oslmp/impl/AudioDecoderOpenSLBackend.hpp"
+#include "oslmp/impl/AudioDecoderMediaCodecBackend.hpp"
+#include "oslmp/impl/AudioDecoderPcmBackend.hpp"
 #include "oslmp/impl/AndroidHelper.hpp"
+#include "oslmp/impl/EngineStatistics.hpp"
+#include "oslmp/impl/AudioClipCache.hpp"
+#include "oslmp/impl/SeekIndexCache.hpp"
 #include "oslmp/utils/timespec_utils.hpp"
 #include "oslmp/utils/pthread_utils.hpp"
 
 // XXX If this option enabled, sound gap will be occurred
 //#define ENABLE_DECODER_PAUSING
 
-#define PREFETCHSTATUS_NONE ((SLuint32)0)
-#define PREFETCHSTATUS_UNKNOWN_ERROR ((SLuint32)0xFFFFFFFFUL)
-
-#define PREFETCHEVENT_ERROR_CANDIDATE (SL_PREFETCHEVENT_STATUSCHANGE | SL_PREFETCHEVENT_FILLLEVELCHANGE)
-
 #define PRODUCER_QUEUE_PUSH_POLLING_INTERVAL_MS 100
 
-#define TRANSLATE_RESULT(result) InternalUtils::sTranslateOpenSLErrorCode(result)
+// number of the decoded blocks which can be queued for the worker thread
+#define WORKER_INPUT_QUEUE_BLOCKS 4
 
 #define IS_SL_RESULT_SUCCESS(slresult) CXXPH_LIKELY((slresult) == SL_RESULT_SUCCESS)
 
@@ -94,15 +100,14 @@ public:
         PHASE_NONE,
         PHASE_STARTED,
         PHASE_MAKE_SOURCE,
-        PHASE_SETUP_CALLBACKS,
         PHASE_START_DECODER_PREFETCH,
         PHASE_WAIT_DECODER_PREFETCH,
         PHASE_GET_METADATA,
         PHASE_CREATE_AUDIODATA_ADAPTER,
         PHASE_SEEK_TO_INITIAL_POSITION,
-        PHASE_SETUP_SOURCE_QUEUE,
         PHASE_START_QUEUE_PREFETCH,
         PHASE_WAIT_QUEUE_PREFETCH,
+        PHASE_FEED_CACHED_CLIP,
         PHASE_COMPLETED,
     } phase_t;
 
@@ -130,10 +135,10 @@ public:
     int poll_timeout_ms_;
 };
 
-class AudioSource::Impl : public AudioDataPipeManager::SourcePipeEventListener {
+class AudioSource::Impl : public AudioDataPipeManager::SourcePipeEventListener,
+                          public AudioDecoderBackend::EventListener,
+                          public AudioSourceWorkerPool::Task {
 public:
-    enum { NUM_BLOCKS = 2, MAX_NUM_CHANNELS = 2, };
-
     Impl(AudioSource *holder);
     virtual ~Impl();
 
@@ -145,6 +150,14 @@ public:
     int start() noexcept;
     int pause() noexcept;
 
+    bool isSeekInPlaceSupported() const noexcept;
+    int seekInPlace(int32_t msec) noexcept;
+    bool isSeekInPlaceCompleted() const noexcept;
+
+    int setLooping(bool looping) noexcept;
+    int setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept;
+    uint32_t fetchLoopCount() noexcept;
+
     bool isPreparing() const noexcept;
     bool isPrepared() const noexcept;
     bool isStarted() const noexcept;
@@ -161,6 +174,7 @@ public:
 
     bool isNetworkSource() const noexcept;
     bool isDecoderReachedToEndOfData() const noexcept;
+    int getDecoderErrorResult() const noexcept;
 
     int stopDecoder() noexcept;
 
@@ -168,7 +182,18 @@ public:
     virtual void onRecycleItem(AudioSourceDataPipe *pipe,
                                const AudioSourceDataPipe::recycle_block_t *block) noexcept override;
 
+    // implementations of AudioDecoderBackend::EventListener
+    virtual bool onDecoderOutputData(const int16_t *data, uint32_t num_channels, uint32_t num_frames,
+                                     uint32_t seek_serial) noexcept override;
+    virtual void onDecoderEndOfData(uint32_t seek_serial) noexcept override;
+    virtual void onDecoderError(int result, uint32_t seek_serial) noexcept override;
+
+    // implementations of AudioSourceWorkerPool::Task
+    virtual void onProcessWorkerTask() noexcept override;
+
 private:
+    enum loop_action_t { LOOP_ACTION_NONE, LOOP_ACTION_WRAPPED, LOOP_ACTION_END_OF_DATA, };
+
     int setDataSourceFd(int fd, int64_t offset, int64_t length) noexcept;
     int setDataSourcePath(const char *path) noexcept;
     int setDataSourceUri(const char *uri) noexcept;
@@ -177,41 +202,59 @@ private:
 
     void prepareInternalCleanup() noexcept;
     int prepareInternalMakeDecoder() noexcept;
-    int prepareInternalSetupCallbacks() noexcept;
     int prepareInternalStartDecoderPrefetch() noexcept;
     int prepareInternalPollDecoderPrefetch(int timeout_ms, bool &completed) noexcept;
     int prepareInternalExtractMetadata() noexcept;
     int prepareInternalCreateAudioDataAdapter() noexcept;
     int prepareInternalSeekToInitialPosition() noexcept;
-    int prepareInternalSetupDecoderQueue() noexcept;
     int prepareInternalStartQueuePrefetch() noexcept;
     int prepareInternalPollQueuePrefetch(int timeout_ms, bool &completed) noexcept;
+    bool prepareInternalLookupClipCache() noexcept;
+    int prepareInternalStartCachedClipFeeding() noexcept;
+    void prepareInternalStartClipRecording() noexcept;
+    void prepareInternalLookupSeekIndex() noexcept;
+    void prepareInternalSetupLoopBuffer() noexcept;
+    bool allocateLoopBuffer() noexcept;
+
+    void feedCachedClip() noexcept;
+    void commitRecordedClip() noexcept;
+
+    void resetLoopCapture() noexcept;
+    loop_action_t processLoopRegion(float *block) noexcept;
+    void fillFromLoopBuffer(float *dest, uint32_t num_frames) noexcept;
+    void feedLoopBuffer() noexcept;
+    uint64_t calcOutputFramesFromMsec(int32_t msec) const noexcept;
 
     bool checkIsSupportedMedia(const OpenSLMediaPlayerMetadata &metadata) const noexcept;
 
-    static void prefetchEventCallback(SLPrefetchStatusItf caller, void *pContext, SLuint32 event) noexcept;
-
-    void decoderPlayCallback(SLPlayItf caller, SLuint32 event) noexcept;
-
-    void decodeBufferQueueCallback(SLAndroidSimpleBufferQueueItf caller) noexcept;
-
-    static void decoderPlayCallbackEntry(SLPlayItf caller, void *pContext, SLuint32 event) noexcept;
-
-    static void decodeBufferQueueCallbackEntry(SLAndroidSimpleBufferQueueItf caller, void *pContext) noexcept;
-
     bool waitForProducerQueueAudioDataItem(utils::pt_unique_lock &lock, AudioSourceDataPipe::produce_block_t &pb,
                                            uint32_t retry_wait_ms, uint32_t max_retries) noexcept;
 
     bool waitForProducerQueueEventItem(utils::pt_unique_lock &lock, AudioSourceDataPipe::produce_block_t &pb,
                                        uint32_t retry_wait_ms, uint32_t max_retries) noexcept;
 
-    bool pushConvertedDataIntoProducerQueue(utils::pt_unique_lock &lock, bool called_from_queue_callback) noexcept;
+    bool tryLockProducerQueueAudioDataItem(AudioSourceDataPipe::produce_block_t &pb) noexcept;
+    bool tryLockProducerQueueEventItem(AudioSourceDataPipe::produce_block_t &pb) noexcept;
+
+    bool pushConvertedDataIntoProducerQueue(utils::pt_unique_lock &lock, bool called_from_queue_callback,
+                                            bool blocking = true) noexcept;
+    bool pushEndOfDataIntoProducerQueue(utils::pt_unique_lock &lock, bool blocking = true) noexcept;
+
+    void flushAdapterAtEndOfData() noexcept;
+
+    bool queueDecoderOutputDataToWorker(utils::pt_unique_lock &lock, const int16_t *data, uint32_t num_channels,
+                                        uint32_t num_frames) noexcept;
+    void processWorkerInputBlock() noexcept;
+    void clearWorkerInputQueue() noexcept;
+    void scheduleWorkerTask() noexcept;
+    void cancelWorkerTask() noexcept;
 
     int32_t calcCurrentPositionInMsec() noexcept;
 
 private:
     AudioSource *holder_;
     OpenSLMediaPlayerInternalContext *context_;
+    EngineStatistics *statistics_;
 
     initialize_args_t init_args_;
 
@@ -221,25 +264,13 @@ private:
     int64_t dataSourceFdLength_;
     bool is_network_source_;
 
-    opensles::CSLObjectItf objDecoder_;
-
-    opensles::CSLPlayItf decoder_;
-    opensles::CSLSeekItf decoderSeek_;
-    opensles::CSLAndroidSimpleBufferQueueItf decoderBufferQueue_;
-    opensles::CSLPrefetchStatusItf decoderPrefetchStatus_;
-    opensles::CSLMetadataExtractionItf decoderMetadataExtraction_;
+    std::unique_ptr<AudioDecoderBackend> decoder_;
 
     // Metadata
     OpenSLMediaPlayerMetadata metadata_;
     AudioSourcePrepareContext prepareContext_;
 
-    utils::pt_mutex prefetch_callback_mutex_;
-    utils::pt_condition_variable prefetch_callback_cv_;
-    SLuint32 prefetch_status_;
-
     SLuint32 decoder_play_state_;
-    int decoderQueueIndex_;
-    cxxporthelper::aligned_memory<int16_t> decoderBufferPool_;
     uint32_t decoderBufferBlockSize_;
     uint32_t pipeBufferBlockSize_;
 
@@ -264,6 +295,57 @@ private:
 
     DecodeQueueParams queue_params_;
 
+    AudioClipCache *clip_cache_;
+    std::string clip_cache_key_;
+    android::sp<AudioClip> cached_clip_;    // (cache hit) fed into the pipe instead of the decoder output
+    uint32_t cached_clip_read_index_;
+    android::sp<AudioClip> recording_clip_; // (cache miss) guarded by decoder_callback_mutex_
+
+    SeekIndexCache *seek_index_cache_;
+    std::string seek_index_key_; // (empty: the source is not indexable)
+    int seek_index_fd_; // opened for the path data source (-1: not opened)
+    bool seek_by_index_;
+    int64_t seek_index_offset_; // [bytes]
+    int64_t seek_index_length_; // [bytes]
+    uint32_t seek_index_duration_msec_;
+    uint32_t seek_index_skip_usec_;
+    uint32_t decoder_skip_frames_; // guarded by decoder_callback_mutex_
+
+    std::atomic<uint32_t> decoder_seek_serial_;  // modified with decoder_callback_mutex_ locked
+    std::atomic<uint32_t> produced_seek_serial_; // the seek serial of the last item pushed into the pipe
+    std::atomic<int> decoder_error_result_;      // modified with decoder_callback_mutex_ locked
+
+    // loop region [loop_start_msec_, loop_end_msec_), guarded by decoder_callback_mutex_ unless noted
+    uint32_t loop_buffer_max_duration_ms_;
+    std::atomic<bool> looping_;
+    int32_t loop_start_msec_;
+    int32_t loop_end_msec_;                            // (-1: end of data)
+    bool loop_region_ready_;                           // the seek position and the metadata are fixed
+    bool loop_invalidated_;                            // the loop points have been changed while feeding
+    cxxporthelper::aligned_memory<float> loop_buffer_; // interleaved stereo
+    uint32_t loop_buffer_capacity_;                    // [frames]
+    uint32_t loop_num_frames_;                         // [frames]
+    bool loop_capturing_;
+    uint64_t loop_start_frame_;                        // [frames] (relative to the init_seek_position_msec_)
+    uint64_t loop_end_frame_;                          // [frames] (relative to the init_seek_position_msec_)
+    uint64_t decoded_input_frames_;                    // [frames] (relative to the init_seek_position_msec_)
+    std::atomic<bool> loop_feeding_;                   // the loop buffer is fed instead of the decoder output
+    uint32_t loop_read_pos_;                           // [frames]
+    int32_t loop_start_position_msec_;                 // position of the loop_buffer_[0]
+    int32_t last_recycled_position_msec_;              // (internal thread only)
+    uint32_t loop_count_;                              // (internal thread only)
+
+    // worker mode (the conversion is performed on the worker thread), guarded by decoder_callback_mutex_ unless noted
+    AudioSourceWorkerPool *worker_pool_;               // (nullptr: converted on the decoder callback)
+    std::vector<int16_t> worker_input_buffer_;         // ring buffer of the decoded blocks
+    uint32_t worker_input_read_index_;                 // [blocks]
+    uint32_t worker_input_count_;                      // [blocks]
+    uint32_t worker_input_num_channels_;
+    bool worker_end_of_data_pending_;                  // the decoder reached the end, but not flushed yet
+    bool worker_adapter_flushed_;                      // flushed (or the loop end), the end of data is not pushed yet
+    std::atomic<bool> worker_waiting_for_pipe_;        // the worker task waits for a recycled pipe block
+    uint32_t pipe_block_duration_us_;
+
 #ifdef USE_OSLMP_DEBUG_FEATURES
     std::unique_ptr<NonBlockingTraceLoggerClient> decoder_callback_nb_logger_;
 #endif
@@ -311,6 +393,48 @@ int AudioSource::pause() noexcept
     return impl_->pause();
 }
 
+bool AudioSource::isSeekInPlaceSupported() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return false;
+    return impl_->isSeekInPlaceSupported();
+}
+
+int AudioSource::seekInPlace(int32_t msec) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->seekInPlace(msec);
+}
+
+bool AudioSource::isSeekInPlaceCompleted() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return false;
+    return impl_->isSeekInPlaceCompleted();
+}
+
+int AudioSource::setLooping(bool looping) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setLooping(looping);
+}
+
+int AudioSource::setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setLoopPoints(start_msec, end_msec);
+}
+
+uint32_t AudioSource::fetchLoopCount() noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return 0;
+    return impl_->fetchLoopCount();
+}
+
 bool AudioSource::isPreparing() const noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -388,6 +512,13 @@ bool AudioSource::isDecoderReachedToEndOfData() const noexcept
     return impl_->isDecoderReachedToEndOfData();
 }
 
+int AudioSource::getDecoderErrorResult() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->getDecoderErrorResult();
+}
+
 int AudioSource::stopDecoder() noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -399,16 +530,24 @@ int AudioSource::stopDecoder() noexcept
 // AudioSource::Impl
 //
 AudioSource::Impl::Impl(AudioSource *holder)
-    : holder_(holder), context_(nullptr), init_args_(), dataSourceUri_(), dataSourceFd_(0), dataSourceFdOffset_(0),
-      dataSourceFdLength_(0), is_network_source_(false), objDecoder_(), decoder_(), decoderSeek_(),
-      decoderBufferQueue_(), decoderPrefetchStatus_(), decoderMetadataExtraction_(), metadata_(), prepareContext_(),
-      prefetch_callback_mutex_(), prefetch_callback_cv_(), prefetch_status_(PREFETCHSTATUS_NONE),
-      decoder_play_state_(SL_PLAYSTATE_STOPPED), decoderQueueIndex_(0), decoderBufferPool_(),
-      decoderBufferBlockSize_(0), pipeBufferBlockSize_(0), pipe_mgr_(nullptr), pipe_(nullptr), pushed_block_count_(0),
-      decoder_end_of_data_detected_(false), decoder_callback_mutex_(), decoder_callback_cv_(),
-      current_position_msec_(0), init_seek_position_msec_(0), current_position_calc_coeff_(0),
-      buffered_position_msec_(0), playback_completed_(PLAYBACK_NOT_COMPLETED),
-      queue_params_()
+    : holder_(holder), context_(nullptr), statistics_(nullptr), init_args_(), dataSourceUri_(), dataSourceFd_(0),
+      dataSourceFdOffset_(0), dataSourceFdLength_(0), is_network_source_(false), decoder_(), metadata_(),
+      prepareContext_(), decoder_play_state_(SL_PLAYSTATE_STOPPED), decoderBufferBlockSize_(0), pipeBufferBlockSize_(0),
+      pipe_mgr_(nullptr), pipe_(nullptr), pushed_block_count_(0), decoder_end_of_data_detected_(false),
+      decoder_callback_mutex_(), decoder_callback_cv_(), current_position_msec_(0), init_seek_position_msec_(0),
+      current_position_calc_coeff_(0), buffered_position_msec_(0), playback_completed_(PLAYBACK_NOT_COMPLETED),
+      queue_params_(), clip_cache_(nullptr), clip_cache_key_(), cached_clip_(), cached_clip_read_index_(0),
+      recording_clip_(), seek_index_cache_(nullptr), seek_index_key_(), seek_index_fd_(-1), seek_by_index_(false),
+      seek_index_offset_(0), seek_index_length_(0), seek_index_duration_msec_(0), seek_index_skip_usec_(0),
+      decoder_skip_frames_(0), decoder_seek_serial_(0), produced_seek_serial_(0),
+      decoder_error_result_(OSLMP_RESULT_SUCCESS), loop_buffer_max_duration_ms_(0),
+      looping_(false), loop_start_msec_(0), loop_end_msec_(-1), loop_region_ready_(false), loop_invalidated_(false),
+      loop_buffer_(), loop_buffer_capacity_(0), loop_num_frames_(0), loop_capturing_(false), loop_start_frame_(0),
+      loop_end_frame_(UINT64_MAX), decoded_input_frames_(0), loop_feeding_(false), loop_read_pos_(0),
+      loop_start_position_msec_(0), last_recycled_position_msec_(0), loop_count_(0), worker_pool_(nullptr),
+      worker_input_buffer_(), worker_input_read_index_(0), worker_input_count_(0), worker_input_num_channels_(0),
+      worker_end_of_data_pending_(false), worker_adapter_flushed_(false), worker_waiting_for_pipe_(false),
+      pipe_block_duration_us_(0)
 {
 }
 
@@ -416,6 +555,9 @@ AudioSource::Impl::~Impl()
 {
     stopDecoder();
 
+    // NOTE: the worker task refers the pipe, so it has to be finished before unregistering
+    cancelWorkerTask();
+
     // unregister in port user
     if (pipe_) {
         if (pipe_mgr_) {
@@ -424,6 +566,10 @@ AudioSource::Impl::~Impl()
         pipe_ = nullptr;
     }
 
+    // NOTE: no more task is scheduled at this point (the decoder has been stopped and no more recycle event is raised)
+    cancelWorkerTask();
+    worker_pool_ = nullptr;
+
     metadata_.clear();
     prepareContext_.clear();
 
@@ -468,12 +614,9 @@ int AudioSource::Impl::initialize(const initialize_args_t &args) noexcept
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
-    // allocate buffer
     const uint32_t pipeBlockSize = args.pipe_manager->getBlockSizeInFrames();
     const uint32_t decodeBlockSize = DECODE_BLOCK_SIZE_IN_FRAMES;
 
-    cxxporthelper::aligned_memory<int16_t> decoderBuffPool(decodeBlockSize * MAX_NUM_CHANNELS * NUM_BLOCKS);
-
     // set pipe user
     int result;
     result = args.pipe_manager->setSourcePipeInPortUser(args.pipe, holder_, this, true);
@@ -486,17 +629,26 @@ int AudioSource::Impl::initialize(const initialize_args_t &args) noexcept
 #endif
 
     // update fields
-    decoderBufferPool_ = std::move(decoderBuffPool);
-
     decoderBufferBlockSize_ = decodeBlockSize;
     pipeBufferBlockSize_ = pipeBlockSize;
 
     current_position_calc_coeff_ = (pipeBlockSize * 1000) / (args.sampling_rate * 0.001);
+    pipe_block_duration_us_ = static_cast<uint32_t>(static_cast<uint64_t>(pipeBlockSize) * 1000000 /
+                                                    (std::max)(args.sampling_rate / 1000, 1U));
 
     queue_params_ = queue_params;
 
     init_args_ = args;
     context_ = args.context;
+    statistics_ = args.context->getAudioSystem()->getStatistics();
+    clip_cache_ = args.context->getAudioSystem()->getClipCache();
+    seek_index_cache_ = args.context->getAudioSystem()->getSeekIndexCache();
+    (void)args.context->getAudioSystem()->getParamLoopBufferMaxDuration(&loop_buffer_max_duration_ms_);
+
+    {
+        AudioSourceWorkerPool *worker_pool = args.context->getAudioSystem()->getSourceWorkerPool();
+        worker_pool_ = (worker_pool && worker_pool->isEnabled()) ? worker_pool : nullptr;
+    }
     pipe_mgr_ = args.pipe_manager;
     pipe_ = args.pipe;
 
@@ -611,6 +763,14 @@ int AudioSource::Impl::startPreparing(const AudioSource::prepare_args_t &args) n
 
     init_seek_position_msec_ = args.initial_seek_position_msec;
 
+    {
+        utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+        looping_ = args.looping;
+        loop_start_msec_ = args.loop_start_msec;
+        loop_end_msec_ = args.loop_end_msec;
+    }
+
     prepareContext_.setPhase(C::PHASE_STARTED);
 
     return OSLMP_RESULT_SUCCESS;
@@ -636,14 +796,15 @@ int AudioSource::Impl::pollPreparing(AudioSource::prepare_poll_args_t &args) noe
     case C::PHASE_STARTED:
         prepareInternalCleanup();
         result = SL_RESULT_SUCCESS;
-        next_phase = C::PHASE_MAKE_SOURCE;
+        if (prepareInternalLookupClipCache()) {
+            next_phase = C::PHASE_FEED_CACHED_CLIP;
+        } else {
+            prepareInternalLookupSeekIndex();
+            next_phase = C::PHASE_MAKE_SOURCE;
+        }
         break;
     case C::PHASE_MAKE_SOURCE:
         result = prepareInternalMakeDecoder();
-        next_phase = C::PHASE_SETUP_CALLBACKS;
-        break;
-    case C::PHASE_SETUP_CALLBACKS:
-        result = prepareInternalSetupCallbacks();
         next_phase = C::PHASE_START_DECODER_PREFETCH;
         break;
     case C::PHASE_START_DECODER_PREFETCH:
@@ -665,6 +826,10 @@ int AudioSource::Impl::pollPreparing(AudioSource::prepare_poll_args_t &args) noe
     } break;
     case C::PHASE_GET_METADATA:
         result = prepareInternalExtractMetadata();
+        if (result == OSLMP_RESULT_SUCCESS && seek_by_index_) {
+            // the decoder only knows the duration of the remaining part
+            metadata_.duration.set(seek_index_duration_msec_);
+        }
         if (result == OSLMP_RESULT_SUCCESS) {
             if (!checkIsSupportedMedia(metadata_)) {
                 LOGW("Not supported format");
@@ -675,14 +840,16 @@ int AudioSource::Impl::pollPreparing(AudioSource::prepare_poll_args_t &args) noe
         break;
     case C::PHASE_CREATE_AUDIODATA_ADAPTER:
         result = prepareInternalCreateAudioDataAdapter();
+        if (result == OSLMP_RESULT_SUCCESS) {
+            prepareInternalStartClipRecording();
+        }
         next_phase = C::PHASE_SEEK_TO_INITIAL_POSITION;
         break;
     case C::PHASE_SEEK_TO_INITIAL_POSITION:
         result = prepareInternalSeekToInitialPosition();
-        next_phase = C::PHASE_SETUP_SOURCE_QUEUE;
-        break;
-    case C::PHASE_SETUP_SOURCE_QUEUE:
-        result = prepareInternalSetupDecoderQueue();
+        if (result == OSLMP_RESULT_SUCCESS) {
+            prepareInternalSetupLoopBuffer();
+        }
         next_phase = C::PHASE_START_QUEUE_PREFETCH;
         break;
     case C::PHASE_START_QUEUE_PREFETCH:
@@ -702,6 +869,10 @@ int AudioSource::Impl::pollPreparing(AudioSource::prepare_poll_args_t &args) noe
             args.need_retry = false;
         }
     } break;
+    case C::PHASE_FEED_CACHED_CLIP:
+        result = prepareInternalStartCachedClipFeeding();
+        next_phase = C::PHASE_COMPLETED;
+        break;
     case C::PHASE_COMPLETED:
         result = c.getError();
         next_phase = C::PHASE_COMPLETED;
@@ -739,23 +910,55 @@ void AudioSource::Impl::prepareInternalCleanup() noexcept
     buffered_position_msec_ = 0;
     pushed_block_count_ = 0;
     decoder_end_of_data_detected_ = 0;
+    decoder_error_result_ = OSLMP_RESULT_SUCCESS;
+
+    clip_cache_key_.clear();
+    cached_clip_.clear();
+    cached_clip_read_index_ = 0;
+    recording_clip_.clear();
+
+    if (seek_index_fd_ >= 0) {
+        ::close(seek_index_fd_);
+        seek_index_fd_ = -1;
+    }
+    seek_index_key_.clear();
+    seek_by_index_ = false;
+    seek_index_offset_ = 0;
+    seek_index_length_ = 0;
+    seek_index_duration_msec_ = 0;
+    seek_index_skip_usec_ = 0;
+    decoder_skip_frames_ = 0;
+
+    loop_region_ready_ = false;
+    loop_invalidated_ = false;
+    loop_buffer_.free();
+    loop_buffer_capacity_ = 0;
+    loop_num_frames_ = 0;
+    loop_capturing_ = false;
+    loop_start_frame_ = 0;
+    loop_end_frame_ = UINT64_MAX;
+    decoded_input_frames_ = 0;
+    loop_feeding_ = false;
+    loop_read_pos_ = 0;
+    loop_start_position_msec_ = 0;
+    last_recycled_position_msec_ = 0;
+    loop_count_ = 0;
 }
 
 void AudioSource::Impl::releaseDecoderResources() noexcept
 {
-    decoderMetadataExtraction_.unbind();
-    decoderPrefetchStatus_.unbind();
-    decoderBufferQueue_.unbind();
-    decoderSeek_.unbind();
-    decoder_.unbind();
-
-    // NOTE: this operation takes time (1000 - 15000 us)
-    objDecoder_.Destroy();
+    if (decoder_) {
+        // NOTE: this operation takes time (1000 - 15000 us)
+        decoder_->onClose();
+        decoder_.reset();
+    }
 }
 
 int AudioSource::Impl::start() noexcept
 {
-    if (CXXPH_UNLIKELY(!decoder_)) {
+    const bool loop_feeding = loop_feeding_.load(std::memory_order_acquire);
+
+    if (CXXPH_UNLIKELY(!(decoder_ || cached_clip_.get() || loop_feeding))) {
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
@@ -763,32 +966,40 @@ int AudioSource::Impl::start() noexcept
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
+    if (cached_clip_.get() || loop_feeding) {
+        // no decoder is used while feeding the cached clip or the loop buffer
+        decoder_play_state_ = SL_PLAYSTATE_PLAYING;
+        return OSLMP_RESULT_SUCCESS;
+    }
+
     int result;
 
     {
         utils::pt_unique_lock lock(decoder_callback_mutex_);
 
-        SLresult slResult;
+        result = decoder_->onStart();
 
-        slResult = decoder_.SetPlayState(SL_PLAYSTATE_PLAYING);
-
-        if (slResult == SL_RESULT_SUCCESS) {
+        if (result == OSLMP_RESULT_SUCCESS) {
             decoder_play_state_ = SL_PLAYSTATE_PLAYING;
         }
 
-        result = TRANSLATE_RESULT(slResult);
-
         decoder_callback_cv_.notify_all();
     }
 
+    if (worker_pool_) {
+        scheduleWorkerTask();
+    }
+
     return result;
 }
 
 int AudioSource::Impl::pause() noexcept
 {
-    SLresult slResult;
+    int result;
 
-    if (CXXPH_UNLIKELY(!decoder_)) {
+    const bool loop_feeding = loop_feeding_.load(std::memory_order_acquire);
+
+    if (CXXPH_UNLIKELY(!(decoder_ || cached_clip_.get() || loop_feeding))) {
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
@@ -796,28 +1007,48 @@ int AudioSource::Impl::pause() noexcept
         return OSLMP_RESULT_ILLEGAL_STATE;
     }
 
+    if (cached_clip_.get() || loop_feeding) {
+        decoder_play_state_ = SL_PLAYSTATE_PAUSED;
+        return OSLMP_RESULT_SUCCESS;
+    }
+
     {
         utils::pt_unique_lock lock(decoder_callback_mutex_);
 
 #ifdef ENABLE_DECODER_PAUSING
-        slResult = decoder_.SetPlayState(SL_PLAYSTATE_PAUSED);
-        if (slResult == SL_RESULT_SUCCESS) {
+        result = decoder_->onPause();
+        if (result == OSLMP_RESULT_SUCCESS) {
             decoder_play_state_ = SL_PLAYSTATE_PAUSED;
         }
 #else
-        slResult = SL_RESULT_SUCCESS;
+        result = OSLMP_RESULT_SUCCESS;
         decoder_play_state_ = SL_PLAYSTATE_PAUSED;
 #endif
 
         decoder_callback_cv_.notify_all();
     }
 
-    return TRANSLATE_RESULT(slResult);
+    if (worker_pool_) {
+        scheduleWorkerTask();
+    }
+
+    return result;
 }
 
 int AudioSource::Impl::stopDecoder() noexcept
 {
-    if (CXXPH_UNLIKELY(!objDecoder_)) {
+    if (cached_clip_.get()) {
+        decoder_play_state_ = SL_PLAYSTATE_STOPPED;
+        cached_clip_.clear();
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    if (loop_feeding_.load(std::memory_order_acquire)) {
+        // stop feeding the loop buffer
+        decoder_play_state_ = SL_PLAYSTATE_STOPPED;
+    }
+
+    if (CXXPH_UNLIKELY(!decoder_)) {
         return OSLMP_RESULT_SUCCESS; // already stopped
     }
 
@@ -826,16 +1057,189 @@ int AudioSource::Impl::stopDecoder() noexcept
     {
         utils::pt_unique_lock lock(decoder_callback_mutex_);
 
-        (void)decoder_.SetPlayState(SL_PLAYSTATE_STOPPED);
+        (void)decoder_->onStop();
         decoder_play_state_ = SL_PLAYSTATE_STOPPED;
         decoder_callback_cv_.notify_all();
     }
 
+    // NOTE: the queued worker task must not run against the released adapter
+    cancelWorkerTask();
+
     releaseDecoderResources();
 
     return OSLMP_RESULT_SUCCESS;
 }
 
+bool AudioSource::Impl::isSeekInPlaceSupported() const noexcept
+{
+    if (!isPrepared())
+        return false;
+
+    // NOTE: the end of data event may have already been handled by the mixer,
+    //       and the decoder is released while feeding the loop buffer
+    if (decoder_end_of_data_detected_.load(std::memory_order_acquire) || loop_feeding_.load(std::memory_order_acquire))
+        return false;
+
+    if (cached_clip_.get())
+        return true;
+
+    // NOTE:
+    // - network sources may need re-buffering
+    // - the decoder of a source prepared by the seek index does not start from the beginning of the stream
+    if (is_network_source_ || seek_by_index_ || !decoder_)
+        return false;
+
+    // NOTE:
+    // Once the seek index is available, the seek operation is routed through it
+    // (the source is re-created from the seek point, see prepareInternalLookupSeekIndex()),
+    // because the decoder seeks compressed streams by estimation.
+    if (!seek_index_key_.empty()) {
+        android::sp<SeekIndex> index;
+        if (seek_index_cache_->lookup(seek_index_key_, index))
+            return false;
+    }
+
+    return true;
+}
+
+bool AudioSource::Impl::isSeekInPlaceCompleted() const noexcept
+{
+    // NOTE: both of the serials are modified on the caller thread or the decoding thread with the lock held,
+    //       and the produced serial reaches the requested one when the first item from the new position is pushed
+    const uint32_t produced_serial = produced_seek_serial_.load(std::memory_order_acquire);
+    return (produced_serial == decoder_seek_serial_.load(std::memory_order_acquire));
+}
+
+int AudioSource::Impl::seekInPlace(int32_t msec) noexcept
+{
+    if (CXXPH_UNLIKELY(!isSeekInPlaceSupported())) {
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    }
+
+    const int32_t duration = static_cast<int32_t>(metadata_.duration.get());
+    const int32_t seek_pos = (std::min)((std::max)(msec, 0), duration);
+
+    if (cached_clip_.get()) {
+        const uint32_t sampling_rate_hz = init_args_.sampling_rate / 1000;
+        const uint64_t seek_pos_in_frames = static_cast<uint64_t>(seek_pos) * sampling_rate_hz / 1000;
+
+        // discard the queued blocks
+        pipe_->producerRequestFlush();
+        {
+            utils::pt_unique_lock lock(decoder_callback_mutex_);
+            decoder_seek_serial_ += 1;
+        }
+
+        // NOTE: seek in block granularity
+        cached_clip_read_index_ = static_cast<uint32_t>(
+            (std::min)(seek_pos_in_frames / pipeBufferBlockSize_, static_cast<uint64_t>(cached_clip_->getNumBlocks())));
+        init_seek_position_msec_ = seek_pos;
+        pushed_block_count_ = 0;
+        current_position_msec_ = seek_pos;
+        buffered_position_msec_.store(seek_pos);
+
+        feedCachedClip();
+
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    {
+        utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+        // re-check, the end of data (or the loop end point) may have been detected by the decoder callback
+        if (decoder_end_of_data_detected_.load(std::memory_order_relaxed) ||
+            loop_feeding_.load(std::memory_order_relaxed) || worker_end_of_data_pending_ || worker_adapter_flushed_) {
+            return OSLMP_RESULT_ILLEGAL_STATE;
+        }
+
+        // discard the pooled data
+        if (!adapter_->reset()) {
+            return OSLMP_RESULT_INTERNAL_ERROR;
+        }
+
+        // NOTE:
+        // The blocks decoded before the seek are delivered with the previous serial,
+        // they are discarded in onDecoderOutputData() (the lock is held until the serial is updated)
+        const uint32_t seek_serial = decoder_seek_serial_.load(std::memory_order_relaxed) + 1;
+        const int result = decoder_->onSeekTo(seek_pos, seek_serial);
+
+        if (result != OSLMP_RESULT_SUCCESS) {
+            return result;
+        }
+
+        // discard the queued blocks
+        pipe_->producerRequestFlush();
+        decoder_seek_serial_.store(seek_serial, std::memory_order_release);
+        decoder_error_result_.store(OSLMP_RESULT_SUCCESS, std::memory_order_release);
+        clearWorkerInputQueue();
+
+        // the partially recorded clip is not usable
+        recording_clip_.clear();
+
+        init_seek_position_msec_ = seek_pos;
+        pushed_block_count_ = 0;
+        current_position_msec_ = seek_pos;
+        buffered_position_msec_.store(seek_pos);
+
+        // capture the loop region again from the new position
+        decoded_input_frames_ = 0;
+        resetLoopCapture();
+        last_recycled_position_msec_ = seek_pos;
+
+        decoder_callback_cv_.notify_all();
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSource::Impl::setLooping(bool looping) noexcept
+{
+    looping_.store(looping, std::memory_order_release);
+
+    if (looping) {
+        utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+        // looping is enabled after the preparation, capturing succeeds
+        // only if the decoder has not passed the loop start point yet
+        if (loop_region_ready_ && !loop_buffer_ && !loop_feeding_.load(std::memory_order_relaxed) &&
+            !decoder_end_of_data_detected_.load(std::memory_order_relaxed) && allocateLoopBuffer()) {
+            resetLoopCapture();
+        }
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSource::Impl::setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept
+{
+    utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+    if (start_msec == loop_start_msec_ && end_msec == loop_end_msec_)
+        return OSLMP_RESULT_SUCCESS;
+
+    loop_start_msec_ = start_msec;
+    loop_end_msec_ = end_msec;
+
+    if (loop_feeding_.load(std::memory_order_relaxed)) {
+        // finish at the end of the current iteration,
+        // the following source starts from the new loop start point
+        loop_invalidated_ = true;
+    } else if (loop_region_ready_) {
+        // NOTE: the loop buffer is not re-allocated, so the capturing
+        //       is abandoned if the new region does not fit in it
+        resetLoopCapture();
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+uint32_t AudioSource::Impl::fetchLoopCount() noexcept
+{
+    const uint32_t count = loop_count_;
+    loop_count_ = 0;
+    return count;
+}
+
 bool AudioSource::Impl::isPreparing() const noexcept
 {
     typedef AudioSourcePrepareContext C;
@@ -903,411 +1307,157 @@ bool AudioSource::Impl::isDecoderReachedToEndOfData() const noexcept
     return decoder_end_of_data_detected_.load(std::memory_order_acquire);
 }
 
+int AudioSource::Impl::getDecoderErrorResult() const noexcept
+{
+    return decoder_error_result_.load(std::memory_order_acquire);
+}
+
 void AudioSource::Impl::onRecycleItem(AudioSourceDataPipe *pipe,
                                       const AudioSourceDataPipe::recycle_block_t *block) noexcept
 {
 
     switch (block->tag) {
+    case AudioSourceDataPipe::TAG_NONE:
+        // flushed by seekInPlace()
+        break;
     case AudioSourceDataPipe::TAG_AUDIO_DATA:
+        // count the loops played from the loop buffer
+        if (block->position_msec < last_recycled_position_msec_ && loop_feeding_.load(std::memory_order_acquire)) {
+            loop_count_ += 1;
+        }
+        last_recycled_position_msec_ = block->position_msec;
+
         // update current position
         current_position_msec_ = block->position_msec;
         break;
     case AudioSourceDataPipe::TAG_EVENT_END_OF_DATA:
         playback_completed_ = PLAYBACK_COMPLETED;
         current_position_msec_ = block->position_msec;
+        commitRecordedClip();
         break;
     case AudioSourceDataPipe::TAG_EVENT_END_OF_DATA_WITH_LOOP_POINT:
         playback_completed_ = PLAYBACK_COMPLETED_WITH_LOOP_POINT;
         current_position_msec_ = block->position_msec;
+        commitRecordedClip();
         break;
     default:
         LOGE("Unknown TAG (%u)", block->tag);
         break;
     }
+
+    // NOTE: the cached clip and the loop buffer are fed from here because there is no decoder thread
+    if (cached_clip_.get()) {
+        feedCachedClip();
+    } else if (loop_feeding_.load(std::memory_order_acquire)) {
+        feedLoopBuffer();
+    } else if (worker_pool_ && worker_waiting_for_pipe_.exchange(false, std::memory_order_acq_rel)) {
+        scheduleWorkerTask();
+    }
 }
 
 int AudioSource::Impl::prepareInternalMakeDecoder() noexcept
 {
-    SLresult slResult;
-    CSLEngineItf engine;
-
-    slResult = context_->getInterfaceFromEngine(&engine);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
-
-    // configure audio source
-    SLDataLocator_URI src_loc_uri = {};
-    SLDataLocator_AndroidFD src_loc_fd = {};
-    SLDataFormat_MIME src_format_mime = {};
-    SLDataSource audioSrc = {};
-    void *src_locator = nullptr;
-
-    if (!dataSourceUri_.empty()) {
-        src_loc_uri.locatorType = SL_DATALOCATOR_URI;
-        src_loc_uri.URI = reinterpret_cast<SLchar *>(const_cast<char *>(dataSourceUri_.data()));
-        src_locator = &src_loc_uri;
+    // configure data source
+    AudioDecoderBackend::open_args_t args;
+
+    if (seek_by_index_) {
+        // start decoding from the seek point
+        args.fd = (seek_index_fd_ >= 0) ? seek_index_fd_ : dataSourceFd_;
+        args.offset = seek_index_offset_;
+        args.length = seek_index_length_;
+    } else if (!dataSourceUri_.empty()) {
+        args.path_uri = dataSourceUri_.c_str();
     } else {
-        src_loc_fd.locatorType = SL_DATALOCATOR_ANDROIDFD;
-        src_loc_fd.fd = dataSourceFd_;
-        src_loc_fd.offset = (dataSourceFdOffset_ >= 0) ? dataSourceFdOffset_ : 0;
-        src_loc_fd.length = (dataSourceFdLength_ >= 0) ? dataSourceFdLength_ : SL_DATALOCATOR_ANDROIDFD_USE_FILE_SIZE;
-        src_locator = &src_loc_fd;
-    }
-
-    src_format_mime.formatType = SL_DATAFORMAT_MIME;
-    src_format_mime.mimeType = nullptr;
-    src_format_mime.containerType = SL_CONTAINERTYPE_UNSPECIFIED;
-
-    audioSrc.pLocator = src_locator;
-    audioSrc.pFormat = &src_format_mime;
-
-    // configure audio sink
-    SLDataLocator_AndroidSimpleBufferQueue sink_loc_destBq = {};
-    SLDataFormat_PCM sink_format_destPcm = {};
-    SLDataSink audioSink = {};
-
-    sink_loc_destBq.locatorType = SL_DATALOCATOR_ANDROIDSIMPLEBUFFERQUEUE;
-    sink_loc_destBq.numBuffers = NUM_BLOCKS;
-
-    // FIXME: Fill valid values.
-    //
-    // (However it's impossible to determine them before creating SLPlayItf, because
-    //  obtaining SLMetadataExtractionItf from SLEngine is not supported in Android yet.
-    //  So far these format is not used in current OpenSL implementation.)
-    sink_format_destPcm.formatType = SL_DATAFORMAT_PCM;
-    sink_format_destPcm.numChannels = 2;
-    sink_format_destPcm.samplesPerSec = SL_SAMPLINGRATE_44_1;
-    sink_format_destPcm.bitsPerSample = SL_PCMSAMPLEFORMAT_FIXED_16;
-    sink_format_destPcm.containerSize = 16;
-    sink_format_destPcm.channelMask = SL_SPEAKER_FRONT_LEFT | SL_SPEAKER_FRONT_RIGHT;
-    sink_format_destPcm.endianness = SL_BYTEORDER_LITTLEENDIAN;
-
-    audioSink.pLocator = &sink_loc_destBq;
-    audioSink.pFormat = &sink_format_destPcm;
-
-    CSLObjectItf decoderObj;
-    CSLPlayItf decoder;
-    CSLSeekItf seek;
-    CSLAndroidSimpleBufferQueueItf bufferQueue;
-    CSLPrefetchStatusItf prefetchStatus;
-    CSLMetadataExtractionItf metadataExtraction;
-
-    // create audio player
-    {
-        const SLInterfaceID ids[4] = { seek.getIID(), bufferQueue.getIID(), prefetchStatus.getIID(),
-                                       metadataExtraction.getIID() };
-        const SLboolean req[4] = { SL_BOOLEAN_TRUE, SL_BOOLEAN_TRUE, SL_BOOLEAN_TRUE, SL_BOOLEAN_TRUE };
-
-        slResult = engine.CreateAudioPlayer(&decoderObj, &audioSrc, &audioSink, 4, ids, req);
+        args.fd = dataSourceFd_;
+        args.offset = (dataSourceFdOffset_ >= 0) ? dataSourceFdOffset_ : 0;
+        args.length = dataSourceFdLength_;
     }
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
 
-    // realize the decoder
-    slResult = decoderObj.Realize(SL_BOOLEAN_FALSE);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    args.context = context_;
+    args.block_size_in_frames = decoderBufferBlockSize_;
+    args.listener = this;
 
-    // get the decoder interface
-    slResult = decoderObj.GetInterface(&decoder);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    std::unique_ptr<AudioDecoderBackend> decoder;
 
-    // get the seek interface
-    slResult = decoderObj.GetInterface(&seek);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    // local WAV files are read from the mapped file directly (no decoder is used)
+    if (!(is_network_source_ || seek_by_index_)) {
+        decoder.reset(new (std::nothrow) AudioDecoderPcmBackend());
 
-    // get the buffer queue interface
-    slResult = decoderObj.GetInterface(&bufferQueue);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+        if (decoder && decoder->onOpen(args) == OSLMP_RESULT_SUCCESS) {
+            decoder_ = std::move(decoder);
+            return OSLMP_RESULT_SUCCESS;
+        }
 
-    // get the prefetch status interface
-    slResult = decoderObj.GetInterface(&prefetchStatus);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+        decoder.reset();
+    }
 
-    // get the metadata extraction status interface
-    slResult = decoderObj.GetInterface(&metadataExtraction);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    uint32_t backend_type = OSLMP_CONTEXT_DECODER_BACKEND_TYPE_OPENSL;
 
-    // update fields
-    decoderQueueIndex_ = 0;
-    objDecoder_ = std::move(decoderObj);
+    (void)context_->getAudioSystem()->getParamDecoderBackendType(&backend_type);
 
-    decoder_ = std::move(decoder);
-    decoderSeek_ = std::move(seek);
-    decoderBufferQueue_ = std::move(bufferQueue);
-    decoderPrefetchStatus_ = std::move(prefetchStatus);
-    decoderMetadataExtraction_ = std::move(metadataExtraction);
+    if (backend_type == OSLMP_CONTEXT_DECODER_BACKEND_TYPE_MEDIACODEC) {
+        if (AudioDecoderMediaCodecBackend::sIsAvailable()) {
+            decoder.reset(new (std::nothrow) AudioDecoderMediaCodecBackend());
+        } else {
+            LOGW("MediaCodec decoder is not available, falls back to the OpenSL decoder");
+        }
+    }
 
-    return OSLMP_RESULT_SUCCESS;
-}
+    if (!decoder) {
+        decoder.reset(new (std::nothrow) AudioDecoderOpenSLBackend());
+    }
 
-int AudioSource::Impl::prepareInternalSetupCallbacks() noexcept
-{
-    SLresult slResult;
+    if (!decoder) {
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+    }
 
-    slResult = decoder_.SetCallbackEventsMask(SL_PLAYEVENT_HEADATEND |
-                                              /* SL_PLAYEVENT_HEADATMARKER | */
-                                              /* SL_PLAYEVENT_HEADATNEWPOS | */
-                                              /* SL_PLAYEVENT_HEADMOVING |  */
-                                              /* SL_PLAYEVENT_HEADSTALLED | */
-                                              0);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    const int result = decoder->onOpen(args);
 
-    slResult = decoder_.RegisterCallback(decoderPlayCallbackEntry, this);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    if (result != OSLMP_RESULT_SUCCESS) {
+        return result;
+    }
 
-    slResult = decoderBufferQueue_.RegisterCallback(decodeBufferQueueCallbackEntry, this);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    // update fields
+    decoder_ = std::move(decoder);
 
     return OSLMP_RESULT_SUCCESS;
 }
 
 int AudioSource::Impl::prepareInternalStartDecoderPrefetch() noexcept
 {
-    SLresult slResult;
-
-    slResult = decoderPrefetchStatus_.RegisterCallback(prefetchEventCallback, this);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
+    const int result = decoder_->onStartPrefetch();
 
-    slResult = decoderPrefetchStatus_.SetCallbackEventsMask(PREFETCHEVENT_ERROR_CANDIDATE);
-    if (!IS_SL_RESULT_SUCCESS(slResult))
-        return TRANSLATE_RESULT(slResult);
-
-    prefetch_status_ = PREFETCHSTATUS_NONE;
-
-    // start prefetching
-    slResult = decoder_.SetPlayState(SL_PLAYSTATE_PAUSED);
-    if (slResult == SL_RESULT_SUCCESS) {
+    if (result == OSLMP_RESULT_SUCCESS) {
         decoder_play_state_ = SL_PLAYSTATE_PAUSED;
     }
 
-    return TRANSLATE_RESULT(slResult);
+    return result;
 }
 
 int AudioSource::Impl::prepareInternalPollDecoderPrefetch(int timeout_ms, bool &completed) noexcept
 {
-    utils::pt_mutex &mutex = prefetch_callback_mutex_;
-    utils::pt_condition_variable &cond = prefetch_callback_cv_;
-    utils::pt_unique_lock lock(mutex, true);
-    SLuint32 captured_prefetch_status;
+    return decoder_->onPollPrefetch(timeout_ms, completed);
+}
 
-    timespec timeout_abstime;
-    int lock_result;
+int AudioSource::Impl::prepareInternalExtractMetadata() noexcept { return decoder_->onGetMetadata(metadata_); }
 
-    completed = false;
+int AudioSource::Impl::prepareInternalCreateAudioDataAdapter() noexcept
+{
+    uint32_t resampler_quality_level = 0;
+    context_->getAudioSystem()->getParamResamplerQualityLevel(&resampler_quality_level);
 
-    if (timeout_ms == 0) {
-        lock_result = lock.try_lock();
-    } else if (timeout_ms < 0) {
-        lock_result = lock.lock();
-    } else { // timeout_ms > 0
-        if (!utils::timespec_utils::get_current_time(timeout_abstime))
-            return OSLMP_RESULT_ILLEGAL_STATE;
+    AudioDataAdapter::initialize_args_t init_args;
 
-        utils::timespec_utils::add_ms(timeout_abstime, timeout_ms);
+    init_args.in_num_channels = metadata_.numChannels.get();
+    init_args.in_sampling_rate = metadata_.samplesPerSec.get();
+    init_args.in_block_size = decoderBufferBlockSize_;
 
-        // NOTE: The bionic doesn't have pthread_mutex_timedlock() function
-        // and pthread_mutex_lock_timeout_np() should be avoided because it's
-        // not available on recently Android.
+    init_args.out_num_channels = 2;
+    init_args.out_sampling_rate = init_args_.sampling_rate;
+    init_args.out_block_size = pipeBufferBlockSize_;
 
-        lock_result = lock.lock();
-    }
-
-    if (!lock.owns_lock()) {
-        if (lock_result == EBUSY) {
-            return OSLMP_RESULT_SUCCESS;
-        } else {
-            completed = true;
-            return OSLMP_RESULT_INTERNAL_ERROR;
-        }
-    }
-
-    int wait_result = 0;
-
-    while (true) {
-        captured_prefetch_status = prefetch_status_;
-
-        if (captured_prefetch_status != PREFETCHSTATUS_NONE)
-            break;
-
-        if (timeout_ms == 0) {
-            wait_result = ETIMEDOUT;
-            break;
-        } else if (timeout_ms < 0) {
-            wait_result = cond.wait(lock);
-        } else { // timeout_ms > 0
-            wait_result = cond.wait_absolute(lock, timeout_abstime);
-        }
-
-        if (wait_result != 0) {
-            break;
-        }
-    }
-    lock.unlock();
-
-    int result = OSLMP_RESULT_INTERNAL_ERROR;
-
-    if (wait_result == 0) {
-        completed = true;
-
-#if 0
-        // XXX Lack of the head data will be occurred if uncomment this line
-        (void) decoder_.SetPlayState(SL_PLAYSTATE_STOPPED);
-#endif
-
-        if (captured_prefetch_status == SL_PREFETCHSTATUS_SUFFICIENTDATA) {
-            result = OSLMP_RESULT_SUCCESS;
-        } else {
-            result = OSLMP_RESULT_CONTENT_NOT_FOUND;
-        }
-    } else if (wait_result == ETIMEDOUT) {
-        // return SUCCESS with completed = false (retry expected)
-        result = OSLMP_RESULT_SUCCESS;
-    } else {
-        completed = true;
-        result = OSLMP_RESULT_INTERNAL_ERROR;
-    }
-
-    return result;
-}
-
-int AudioSource::Impl::prepareInternalExtractMetadata() noexcept
-{
-    CSLPlayItf &player = decoder_;
-    CSLMetadataExtractionItf &metaext = decoderMetadataExtraction_;
-    OpenSLMediaPlayerMetadata &destMeta = metadata_;
-    OpenSLMediaPlayerMetadata tmpMeta;
-    SLresult slResult;
-    int result;
-
-    // clear destination
-    destMeta.clear();
-
-    // obtain info from SLPlayerItf
-    {
-        SLmillisecond duration = 0;
-
-        slResult = player.GetDuration(&duration);
-        if (!IS_SL_RESULT_SUCCESS(slResult))
-            return TRANSLATE_RESULT(slResult);
-
-        tmpMeta.duration.set(duration);
-    }
-
-    // obtain info from SLMetadataExtractionItf
-    try
-    {
-        SLuint32 itemCount = 0;
-
-        std::vector<uint32_t> keyBuff(16);
-        std::vector<uint32_t> valueBuff(16);
-
-        slResult = metaext.GetItemCount(&itemCount);
-
-        if (!IS_SL_RESULT_SUCCESS(slResult))
-            return TRANSLATE_RESULT(slResult);
-
-        for (SLuint32 i = 0; i < itemCount; ++i) {
-            SLuint32 keySize = 0;
-            SLuint32 valueSize = 0;
-
-            // get key & value sizes
-            if (metaext.GetKeySize(i, &keySize) != SL_RESULT_SUCCESS)
-                break;
-
-            if (metaext.GetValueSize(i, &valueSize) != SL_RESULT_SUCCESS)
-                break;
-
-            // resize buffers
-            if (keyBuff.size() * sizeof(uint32_t) < keySize) {
-                keyBuff.resize((keySize + sizeof(uint32_t) - 1) / sizeof(uint32_t));
-            }
-
-            if (valueBuff.size() * sizeof(uint32_t) < valueSize) {
-                valueBuff.resize((valueSize + sizeof(uint32_t) - 1) / sizeof(uint32_t));
-            }
-
-            // get key & value
-            SLMetadataInfo *key = reinterpret_cast<SLMetadataInfo *>(&keyBuff[0]);
-            SLMetadataInfo *value = reinterpret_cast<SLMetadataInfo *>(&valueBuff[0]);
-
-            if (metaext.GetKey(i, keySize, key) != SL_RESULT_SUCCESS)
-                break;
-
-            if (metaext.GetValue(i, valueSize, value) != SL_RESULT_SUCCESS)
-                break;
-
-            // update keySize & valueSize variables
-            keySize = key->size;
-            valueSize = value->size;
-
-            const char *keyStr = reinterpret_cast<const char *>(key->data);
-
-            const bool sizeIsUint32 = (valueSize) == sizeof(SLuint32);
-            union slu32u8_t {
-                SLuint32 u32;
-                SLuint8 u8[4];
-            };
-            const slu32u8_t *u32value = reinterpret_cast<const slu32u8_t *>(&(value->data[0]));
-
-            if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_NUMCHANNELS, keySize) == 0) {
-                // num channels
-                tmpMeta.numChannels.set(u32value->u32);
-            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_SAMPLERATE, keySize) == 0) {
-                // sample rate [Hz]  (!!! NOT milli hertz)
-                tmpMeta.samplesPerSec.set(u32value->u32 * 1000UL);
-            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_BITSPERSAMPLE, keySize) == 0) {
-                // bits per sample [bits]
-                tmpMeta.bitsPerSample.set(u32value->u32);
-            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_CONTAINERSIZE, keySize) == 0) {
-                // container size [bytes]
-                tmpMeta.containerSize.set(u32value->u32);
-            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_CHANNELMASK, keySize) == 0) {
-                // channel mask [ch]
-                tmpMeta.channelMask.set(u32value->u32);
-            } else if (sizeIsUint32 && ::strncmp(keyStr, ANDROID_KEY_PCMFORMAT_ENDIANNESS, keySize) == 0) {
-                // endianness
-                tmpMeta.endianness.set(u32value->u32);
-            }
-        }
-
-        // copy metadata to destination
-        if (slResult == SL_RESULT_SUCCESS && tmpMeta.isValid()) {
-            destMeta = tmpMeta;
-        }
-
-        result = TRANSLATE_RESULT(slResult);
-    }
-    catch (const std::bad_alloc &) { result = OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
-
-    return result;
-}
-
-int AudioSource::Impl::prepareInternalCreateAudioDataAdapter() noexcept
-{
-    uint32_t resampler_quality_level = 0;
-    context_->getAudioSystem()->getParamResamplerQualityLevel(&resampler_quality_level);
-
-    AudioDataAdapter::initialize_args_t init_args;
-
-    init_args.in_num_channels = metadata_.numChannels.get();
-    init_args.in_sampling_rate = metadata_.samplesPerSec.get();
-    init_args.in_block_size = decoderBufferBlockSize_;
-
-    init_args.out_num_channels = 2;
-    init_args.out_sampling_rate = init_args_.sampling_rate;
-    init_args.out_block_size = pipeBufferBlockSize_;
-
-    init_args.resampler_quality_spec = static_cast<AudioDataAdapter::resampler_quality_spec_t>(resampler_quality_level);
+    init_args.resampler_quality_spec = static_cast<AudioDataAdapter::resampler_quality_spec_t>(resampler_quality_level);
+    init_args.resampler_coeff_bank_cache = context_->getAudioSystem()->getResamplerCoeffBankCache();
 
     std::unique_ptr<AudioDataAdapter> adapter(new (std::nothrow) AudioDataAdapter());
 
@@ -1319,6 +1469,16 @@ int AudioSource::Impl::prepareInternalCreateAudioDataAdapter() noexcept
         return OSLMP_RESULT_CONTENT_UNSUPPORTED;
     }
 
+    if (worker_pool_) {
+        try
+        {
+            worker_input_buffer_.resize(WORKER_INPUT_QUEUE_BLOCKS * decoderBufferBlockSize_ * init_args.in_num_channels);
+        }
+        catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+        worker_input_num_channels_ = init_args.in_num_channels;
+    }
+
     adapter_ = std::move(adapter);
 
     return OSLMP_RESULT_SUCCESS;
@@ -1328,58 +1488,59 @@ int AudioSource::Impl::prepareInternalSeekToInitialPosition() noexcept
 {
     const int32_t duration = static_cast<int32_t>(metadata_.duration.get());
     int32_t &seek_pos = init_seek_position_msec_;
-    SLresult slResult;
+    int result;
 
     // fix seek position
     seek_pos = (std::min)((std::max)(seek_pos, 0), duration);
 
+    if (seek_by_index_) {
+        // the decoder already starts from the seek point, the remaining part
+        // is discarded in the decoder callback (in decoder block granularity)
+        const uint64_t sampling_rate_hz = metadata_.samplesPerSec.get() / 1000;
+        const uint64_t block_size_in_frames = decoderBufferBlockSize_;
+        const uint64_t skip_frames = seek_index_skip_usec_ * sampling_rate_hz / 1000000;
+        const uint64_t skip_blocks = (block_size_in_frames != 0) ? (skip_frames / block_size_in_frames) : 0;
+        const uint64_t residue_frames = skip_frames - (skip_blocks * block_size_in_frames);
+        const int32_t residue_msec =
+            (sampling_rate_hz != 0) ? static_cast<int32_t>(residue_frames * 1000 / sampling_rate_hz) : 0;
+
+        {
+            utils::pt_unique_lock lock(decoder_callback_mutex_);
+            decoder_skip_frames_ = static_cast<uint32_t>(skip_blocks * block_size_in_frames);
+        }
+
+        seek_pos = (std::max)(seek_pos - residue_msec, 0);
+        current_position_msec_ = seek_pos;
+
+        return OSLMP_RESULT_SUCCESS;
+    }
+
     if (seek_pos != 0) {
-        slResult = decoderSeek_.SetPosition(seek_pos, SL_SEEKMODE_ACCURATE);
+        result = decoder_->onSeekTo(seek_pos, decoder_seek_serial_.load(std::memory_order_relaxed));
     } else {
         // Workaround
         //  Issue 64053: MediaPlayer seekTo(0) got a clipped audio at the beginning
         //  https://code.google.com/p/android/issues/detail?id=64053
-        slResult = SL_RESULT_SUCCESS;
+        result = OSLMP_RESULT_SUCCESS;
     }
 
-    if (slResult == SL_RESULT_SUCCESS) {
+    if (result == OSLMP_RESULT_SUCCESS) {
         current_position_msec_ = seek_pos;
     }
 
-    return TRANSLATE_RESULT(slResult);
-}
-
-int AudioSource::Impl::prepareInternalSetupDecoderQueue() noexcept
-{
-    const int block_size = decoderBufferBlockSize_;
-    int16_t *dataBuff = &decoderBufferPool_[0];
-    CSLAndroidSimpleBufferQueueItf &bufferQueue = decoderBufferQueue_;
-    const SLuint32 numChannels = metadata_.numChannels.get();
-    SLresult slResult;
-
-    for (int i = 0; i < NUM_BLOCKS; ++i) {
-        int16_t *buff = &dataBuff[block_size * numChannels * i];
-        size_t size = block_size * numChannels * sizeof(int16_t);
-
-        slResult = bufferQueue.Enqueue(buff, size);
-        if (!IS_SL_RESULT_SUCCESS(slResult))
-            return TRANSLATE_RESULT(slResult);
-    }
-
-    return OSLMP_RESULT_SUCCESS;
+    return result;
 }
 
 int AudioSource::Impl::prepareInternalStartQueuePrefetch() noexcept
 {
     utils::pt_unique_lock lock(decoder_callback_mutex_);
-    SLresult slResult;
 
-    slResult = decoder_.SetPlayState(SL_PLAYSTATE_PLAYING);
-    if (slResult == SL_RESULT_SUCCESS) {
+    const int result = decoder_->onStart();
+    if (result == OSLMP_RESULT_SUCCESS) {
         decoder_play_state_ = SL_PLAYSTATE_PLAYING;
     }
 
-    return TRANSLATE_RESULT(slResult);
+    return result;
 }
 
 int AudioSource::Impl::prepareInternalPollQueuePrefetch(int timeout_ms, bool &completed) noexcept
@@ -1417,27 +1578,27 @@ int AudioSource::Impl::prepareInternalPollQueuePrefetch(int timeout_ms, bool &co
         }
     }
 
-    if (decoder_end_of_data_detected_ || (pushed_block_count_ >= queue_params_.prefetch_count)) {
+    if (decoder_end_of_data_detected_ || loop_feeding_ || (pushed_block_count_ >= queue_params_.prefetch_count)) {
         // completed
 
         completed = true;
 
-        SLresult slResult;
+        int result;
 #ifdef ENABLE_DECODER_PAUSING
-        slResult = decoder_.SetPlayState(SL_PLAYSTATE_PAUSED);
-        if (slResult == SL_RESULT_SUCCESS) {
+        result = decoder_->onPause();
+        if (result == OSLMP_RESULT_SUCCESS) {
             decoder_play_state_ = SL_PLAYSTATE_PAUSED;
         } else {
-            (void)decoder_.SetPlayState(SL_PLAYSTATE_STOPPED);
+            (void)decoder_->onStop();
             decoder_play_state_ = SL_PLAYSTATE_STOPPED;
         }
 #else
         decoder_play_state_ = SL_PLAYSTATE_PAUSED;
-        slResult = SL_RESULT_SUCCESS;
+        result = OSLMP_RESULT_SUCCESS;
 #endif
         decoder_callback_cv_.notify_all();
 
-        return TRANSLATE_RESULT(slResult);
+        return result;
     } else {
         // not completed yet
         completed = false;
@@ -1445,140 +1606,549 @@ int AudioSource::Impl::prepareInternalPollQueuePrefetch(int timeout_ms, bool &co
     }
 }
 
-bool AudioSource::Impl::checkIsSupportedMedia(const OpenSLMediaPlayerMetadata &metadata) const noexcept
+bool AudioSource::Impl::prepareInternalLookupClipCache() noexcept
 {
-    if (!metadata.isValid())
+    if (!(clip_cache_ && clip_cache_->isEnabled()) || is_network_source_)
         return false;
 
-    if (metadata.bitsPerSample.get() != SL_PCMSAMPLEFORMAT_FIXED_16)
-        return false;
+    const char *path = (!dataSourceUri_.empty()) ? dataSourceUri_.c_str() : nullptr;
 
-    if (metadata.endianness.get() != SL_BYTEORDER_LITTLEENDIAN)
+    if (!InternalUtils::sMakeFileIdentityKey(path, dataSourceFd_, dataSourceFdOffset_, dataSourceFdLength_, clip_cache_key_))
         return false;
 
-    if (metadata.containerSize.get() != 16)
+    android::sp<AudioClip> clip;
+
+    if (!clip_cache_->lookup(clip_cache_key_, clip))
         return false;
 
-    switch (metadata.numChannels.get()) {
-    case 1:
-    case 2:
-        break;
-    default:
+    if (!(clip->getNumChannels() == 2 && clip->getBlockSizeInFrames() == pipeBufferBlockSize_))
         return false;
-    }
 
-    // metadata.samplesPerSec
-    // metadata.channelMask
-    // metadata.duration
+    LOGD("Decoded clip cache hit (%u blocks)", clip->getNumBlocks());
+
+    cached_clip_ = clip;
 
     return true;
 }
 
-void AudioSource::Impl::prefetchEventCallback(SLPrefetchStatusItf caller, void *pContext, SLuint32 event) noexcept
+int AudioSource::Impl::prepareInternalStartCachedClipFeeding() noexcept
 {
-    Impl *thiz = static_cast<Impl *>(pContext);
-    SLresult result;
-    CSLPrefetchStatusItf caller2;
+    const uint32_t sampling_rate_hz = init_args_.sampling_rate / 1000;
+
+    metadata_ = cached_clip_->getMetadata();
+
+    const int32_t duration = static_cast<int32_t>(metadata_.duration.get());
+    int32_t &seek_pos = init_seek_position_msec_;
+
+    // fix seek position
+    seek_pos = (std::min)((std::max)(seek_pos, 0), duration);
+
+    // NOTE: seek in block granularity
+    const uint64_t seek_pos_in_frames = static_cast<uint64_t>(seek_pos) * sampling_rate_hz / 1000;
+
+    cached_clip_read_index_ = static_cast<uint32_t>(
+        (std::min)(seek_pos_in_frames / pipeBufferBlockSize_, static_cast<uint64_t>(cached_clip_->getNumBlocks())));
+    current_position_msec_ = seek_pos;
+    decoder_play_state_ = SL_PLAYSTATE_PAUSED;
+
+    // prefetch
+    feedCachedClip();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioSource::Impl::prepareInternalStartClipRecording() noexcept
+{
+    // NOTE: margin for the resampler flush and rounding
+    const uint32_t kMarginBlocks = 4;
+
+    if (clip_cache_key_.empty() || init_seek_position_msec_ > 0)
+        return;
+
+    const uint32_t sampling_rate_hz = init_args_.sampling_rate / 1000;
+    const uint64_t duration_in_frames = static_cast<uint64_t>(metadata_.duration.get()) * sampling_rate_hz / 1000;
+    const uint64_t max_num_blocks =
+        ((duration_in_frames + pipeBufferBlockSize_ - 1) / pipeBufferBlockSize_) + kMarginBlocks;
+    const uint64_t block_size_in_bytes = sizeof(AudioSourceDataPipe::data_type) * 2 * pipeBufferBlockSize_;
+
+    if ((max_num_blocks * block_size_in_bytes) > clip_cache_->getMaxClipSizeInBytes())
+        return;
 
-    caller2.assign(caller);
+    android::sp<AudioClip> clip(new (std::nothrow) AudioClip());
 
-    SLpermille level = 0;
-    SLuint32 status;
+    if (!clip.get())
+        return;
 
-    if (!(event & SL_PREFETCHEVENT_STATUSCHANGE)) {
+    // NOTE: the estimated length is only the upper limit, the clip grows while recording
+    if (clip->allocate(2, pipeBufferBlockSize_, static_cast<uint32_t>(max_num_blocks)) != OSLMP_RESULT_SUCCESS)
         return;
+
+    clip->setMetadata(metadata_);
+
+    {
+        utils::pt_unique_lock lock(decoder_callback_mutex_);
+        recording_clip_ = clip;
     }
+}
 
-    result = caller2.GetFillLevel(&level);
-    if (!IS_SL_RESULT_SUCCESS(result))
+void AudioSource::Impl::prepareInternalLookupSeekIndex() noexcept
+{
+    if (!(seek_index_cache_ && seek_index_cache_->isEnabled()) || is_network_source_)
         return;
 
-    result = caller2.GetPrefetchStatus(&status);
-    if (!IS_SL_RESULT_SUCCESS(result))
+    const char *path = (!dataSourceUri_.empty()) ? dataSourceUri_.c_str() : nullptr;
+    std::string key;
+
+    if (!InternalUtils::sMakeFileIdentityKey(path, dataSourceFd_, dataSourceFdOffset_, dataSourceFdLength_, key))
         return;
 
+    try
     {
-        utils::pt_unique_lock lock(thiz->prefetch_callback_mutex_);
-        SLuint32 corrected_status;
+        seek_index_key_ = key;
+    }
+    catch (const std::bad_alloc &) {}
 
-        if (status == SL_PREFETCHSTATUS_SUFFICIENTDATA || status == SL_PREFETCHSTATUS_OVERFLOW ||
-            status == SL_PREFETCHSTATUS_UNDERFLOW) {
-            corrected_status = status;
-        } else {
-            corrected_status = PREFETCHSTATUS_UNKNOWN_ERROR;
-        }
+    android::sp<SeekIndex> index;
 
-        thiz->prefetch_status_ = corrected_status;
-        thiz->prefetch_callback_cv_.notify_one();
+    if (!seek_index_cache_->lookup(key, index)) {
+        // build the index in background, it will be used by the subsequent seek operations
+        (void)seek_index_cache_->requestIndexing(key, path, dataSourceFd_, dataSourceFdOffset_, dataSourceFdLength_);
+        return;
     }
+
+    SeekIndex::seek_point_t point;
+
+    if (!(init_seek_position_msec_ > 0 && index->findSeekPoint(init_seek_position_msec_, point)))
+        return;
+
+    int fd = dataSourceFd_;
+    int64_t base_offset = (dataSourceFdOffset_ >= 0) ? dataSourceFdOffset_ : 0;
+
+    if (path) {
+        fd = ::open(path, O_RDONLY);
+
+        if (fd < 0)
+            return;
+
+        seek_index_fd_ = fd;
+        base_offset = 0;
+    }
+
+    seek_by_index_ = true;
+    seek_index_offset_ = base_offset + point.offset;
+    seek_index_length_ = point.length;
+    seek_index_duration_msec_ = index->getDurationInMsec();
+    seek_index_skip_usec_ = point.skip_usec;
 }
 
-void AudioSource::Impl::decoderPlayCallback(SLPlayItf caller, SLuint32 event) noexcept
+void AudioSource::Impl::feedCachedClip() noexcept
 {
-    if (event & SL_PLAYEVENT_HEADATEND) {
-        LOGD("decoderPlayCallback(event = HEADATEND)");
+    if (decoder_end_of_data_detected_.load(std::memory_order_relaxed))
+        return;
+
+    if (decoder_play_state_ == SL_PLAYSTATE_STOPPED)
+        return;
+
+    const uint32_t num_blocks = cached_clip_->getNumBlocks();
+    const size_t block_size_in_bytes = sizeof(AudioSourceDataPipe::data_type) * 2 * pipeBufferBlockSize_;
+
+    while (cached_clip_read_index_ < num_blocks) {
+        AudioSourceDataPipe::produce_block_t pb;
+
+        if (!pipe_->lockProduce(pb, queue_params_.room_for_audio_data_while_playing))
+            return;
+
+        const int32_t position_in_msec = calcCurrentPositionInMsec();
+
+        ::memcpy(pb.dest, cached_clip_->getBlock(cached_clip_read_index_), block_size_in_bytes);
+
+        // update info
+        pb.tag = AudioSourceDataPipe::TAG_AUDIO_DATA;
+        pb.position_msec = position_in_msec;
+
+        // unlock
+        pipe_->unlockProduce(pb);
+        produced_seek_serial_.store(decoder_seek_serial_.load(std::memory_order_relaxed), std::memory_order_release);
+
+        cached_clip_read_index_ += 1;
+        pushed_block_count_ += 1;
+
+        // update bufferd position
+        buffered_position_msec_.store(position_in_msec);
     }
-    if (event & SL_PLAYEVENT_HEADATMARKER) {
-        LOGD("decoderPlayCallback(event = HEADATMARKER)");
+
+    // push TAG_EVENT_END_OF_DATA item
+    AudioSourceDataPipe::produce_block_t pb;
+
+    if (pipe_->lockProduce(pb, 0)) {
+        const int32_t position_in_msec = calcCurrentPositionInMsec();
+
+        // update info
+        pb.tag = AudioSourceDataPipe::TAG_EVENT_END_OF_DATA;
+        pb.position_msec = position_in_msec;
+
+        // unlock
+        pipe_->unlockProduce(pb);
+        produced_seek_serial_.store(decoder_seek_serial_.load(std::memory_order_relaxed), std::memory_order_release);
+
+        // set EOD flag
+        decoder_end_of_data_detected_ = true;
+
+        // update bufferd position
+        buffered_position_msec_.store(position_in_msec);
     }
-    if (event & SL_PLAYEVENT_HEADATNEWPOS) {
-        LOGD("decoderPlayCallback(event = HEADATNEWPOS)");
+}
+
+void AudioSource::Impl::commitRecordedClip() noexcept
+{
+    android::sp<AudioClip> clip;
+
+    {
+        utils::pt_unique_lock lock(decoder_callback_mutex_);
+        clip = recording_clip_;
+        recording_clip_.clear();
     }
-    if (event & SL_PLAYEVENT_HEADMOVING) {
-        LOGD("decoderPlayCallback(event = HEADMOVING)");
+
+    if (!(clip.get() && clip->getNumBlocks() > 0))
+        return;
+
+    (void)clip_cache_->insert(clip_cache_key_, clip);
+}
+
+void AudioSource::Impl::prepareInternalSetupLoopBuffer() noexcept
+{
+    utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+    if (looping_.load(std::memory_order_relaxed)) {
+        (void)allocateLoopBuffer();
     }
-    if (event & SL_PLAYEVENT_HEADSTALLED) {
-        LOGD("decoderPlayCallback(event = HEADSTALLED)");
+
+    loop_region_ready_ = true;
+    resetLoopCapture();
+}
+
+bool AudioSource::Impl::allocateLoopBuffer() noexcept
+{
+    // NOTE: the decoder_callback_mutex_ have to be locked by the caller
+
+    // NOTE: margin for the resampler flush and the inaccurate duration
+    const int32_t kMarginMsec = 500;
+
+    const int32_t duration = static_cast<int32_t>(metadata_.duration.get());
+    const int32_t loop_start = (std::min)((std::max)(loop_start_msec_, 0), duration);
+    const int32_t loop_end = (loop_end_msec_ >= 0) ? (std::min)(loop_end_msec_, duration) : duration;
+    const int32_t loop_duration = loop_end - loop_start;
+
+    if (!(loop_duration > 0 && static_cast<uint32_t>(loop_duration) <= loop_buffer_max_duration_ms_))
+        return false;
+
+    const uint64_t capacity = calcOutputFramesFromMsec(loop_duration + kMarginMsec);
+    cxxporthelper::aligned_memory<float> buffer(static_cast<size_t>(capacity * 2));
+
+    if (!buffer)
+        return false;
+
+    loop_buffer_ = std::move(buffer);
+    loop_buffer_capacity_ = static_cast<uint32_t>(capacity);
+
+    return true;
+}
+
+void AudioSource::Impl::resetLoopCapture() noexcept
+{
+    // NOTE: the decoder_callback_mutex_ have to be locked by the caller
+    const int32_t duration = static_cast<int32_t>(metadata_.duration.get());
+    const int32_t seek_pos = init_seek_position_msec_;
+    const int32_t loop_start = (std::min)((std::max)(loop_start_msec_, 0), duration);
+    const int32_t loop_end = (loop_end_msec_ >= 0) ? (std::min)(loop_end_msec_, duration) : duration;
+
+    loop_start_position_msec_ = loop_start;
+    loop_start_frame_ = calcOutputFramesFromMsec(loop_start - seek_pos);
+    loop_end_frame_ =
+        (loop_end_msec_ >= 0 && loop_end > seek_pos) ? calcOutputFramesFromMsec(loop_end - seek_pos) : UINT64_MAX;
+    loop_num_frames_ = 0;
+    loop_read_pos_ = 0;
+
+    // NOTE: the region before the current position cannot be captured
+    loop_capturing_ = (loop_buffer_ && loop_start >= seek_pos && loop_end > loop_start);
+}
+
+AudioSource::Impl::loop_action_t AudioSource::Impl::processLoopRegion(float *block) noexcept
+{
+    // NOTE: the decoder_callback_mutex_ have to be locked by the caller
+    const uint32_t block_size_in_frames = pipeBufferBlockSize_;
+    const uint64_t block_start_frame = static_cast<uint64_t>(pushed_block_count_) * block_size_in_frames;
+    const bool reached_to_loop_end = (loop_end_frame_ != UINT64_MAX) &&
+                                     ((block_start_frame + block_size_in_frames) >= loop_end_frame_);
+    const uint32_t num_valid_frames =
+        (!reached_to_loop_end) ? block_size_in_frames
+                               : static_cast<uint32_t>(
+                                     (loop_end_frame_ > block_start_frame) ? (loop_end_frame_ - block_start_frame) : 0);
+
+    // capture the loop region
+    if (loop_capturing_ && (block_start_frame + num_valid_frames) > loop_start_frame_) {
+        const uint32_t skip = (block_start_frame < loop_start_frame_)
+                                  ? static_cast<uint32_t>(loop_start_frame_ - block_start_frame)
+                                  : 0;
+        const uint32_t count = num_valid_frames - skip;
+
+        if ((block_start_frame + skip - loop_start_frame_) == loop_num_frames_ &&
+            (loop_num_frames_ + count) <= loop_buffer_capacity_) {
+            ::memcpy(&loop_buffer_[2 * loop_num_frames_], &block[2 * skip], sizeof(float) * 2 * count);
+            loop_num_frames_ += count;
+        } else {
+            // not contiguous or longer than expected, give up
+            loop_capturing_ = false;
+            loop_buffer_.free();
+            loop_buffer_capacity_ = 0;
+            loop_num_frames_ = 0;
+        }
     }
 
-    if (event & SL_PLAYEVENT_HEADATEND) {
-        utils::pt_unique_lock lock(decoder_callback_mutex_);
+    if (!(reached_to_loop_end && looping_.load(std::memory_order_acquire)))
+        return LOOP_ACTION_NONE;
 
-        // flush adapter pooled data
-        adapter_->flush();
+    const uint64_t loop_length = (loop_end_frame_ > loop_start_frame_) ? (loop_end_frame_ - loop_start_frame_) : 0;
 
-        pushConvertedDataIntoProducerQueue(lock, false);
+    if (loop_capturing_ && loop_length > 0 && loop_num_frames_ >= loop_length) {
+        // splice the beginning of the loop region
+        loop_capturing_ = false;
+        loop_num_frames_ = static_cast<uint32_t>(loop_length);
+        loop_read_pos_ = 0;
+        fillFromLoopBuffer(&block[2 * num_valid_frames], block_size_in_frames - num_valid_frames);
+        return LOOP_ACTION_WRAPPED;
+    }
 
-        const int32_t position_in_msec = calcCurrentPositionInMsec();
+    if (loop_end_msec_ >= 0) {
+        // end at the loop end point
+        ::memset(&block[2 * num_valid_frames], 0, sizeof(float) * 2 * (block_size_in_frames - num_valid_frames));
+        return LOOP_ACTION_END_OF_DATA;
+    }
 
-        // set EOD flag
-        decoder_end_of_data_detected_ = true;
+    return LOOP_ACTION_NONE;
+}
+
+void AudioSource::Impl::fillFromLoopBuffer(float *dest, uint32_t num_frames) noexcept
+{
+    while (num_frames > 0) {
+        if (loop_read_pos_ >= loop_num_frames_) {
+            loop_read_pos_ = 0;
+        }
+
+        const uint32_t count = (std::min)(num_frames, loop_num_frames_ - loop_read_pos_);
+
+        ::memcpy(dest, &loop_buffer_[2 * loop_read_pos_], sizeof(float) * 2 * count);
+
+        dest += 2 * count;
+        num_frames -= count;
+        loop_read_pos_ += count;
+    }
+}
+
+void AudioSource::Impl::feedLoopBuffer() noexcept
+{
+    if (decoder_) {
+        // the decoder is no longer used
+        {
+            utils::pt_unique_lock lock(decoder_callback_mutex_);
+            (void)decoder_->onStop();
+            decoder_callback_cv_.notify_all();
+        }
+
+        releaseDecoderResources();
+    }
+
+    if (decoder_end_of_data_detected_.load(std::memory_order_relaxed))
+        return;
+
+    if (decoder_play_state_ == SL_PLAYSTATE_STOPPED)
+        return;
+
+    const uint32_t block_size_in_frames = pipeBufferBlockSize_;
+    const uint32_t sampling_rate_hz = init_args_.sampling_rate / 1000;
+
+    while (true) {
+        bool looping;
+
+        {
+            utils::pt_unique_lock lock(decoder_callback_mutex_);
+            looping = looping_.load(std::memory_order_acquire) && !loop_invalidated_;
+        }
+
+        if (!looping && loop_read_pos_ >= loop_num_frames_)
+            break;
 
-        // push TAG_EVENT_END_OF_DATA item
         AudioSourceDataPipe::produce_block_t pb;
-        if (waitForProducerQueueEventItem(lock, pb, PRODUCER_QUEUE_PUSH_POLLING_INTERVAL_MS, 500)) {
-            // update info
-            pb.tag = AudioSourceDataPipe::TAG_EVENT_END_OF_DATA;
-            pb.position_msec = position_in_msec;
 
-            // unlock
-            pipe_->unlockProduce(pb);
+        if (!pipe_->lockProduce(pb, queue_params_.room_for_audio_data_while_playing))
+            return;
+
+        const int32_t position_in_msec =
+            loop_start_position_msec_ +
+            static_cast<int32_t>(static_cast<uint64_t>(loop_read_pos_ % loop_num_frames_) * 1000 / sampling_rate_hz);
+
+        if (looping) {
+            fillFromLoopBuffer(pb.dest, block_size_in_frames);
+        } else {
+            // play the rest of the current iteration
+            const uint32_t count = (std::min)(block_size_in_frames, loop_num_frames_ - loop_read_pos_);
 
-            // update bufferd position
-            buffered_position_msec_.store(position_in_msec);
+            ::memcpy(pb.dest, &loop_buffer_[2 * loop_read_pos_], sizeof(float) * 2 * count);
+            ::memset(&pb.dest[2 * count], 0, sizeof(float) * 2 * (block_size_in_frames - count));
+            loop_read_pos_ += count;
         }
+
+        // update info
+        pb.tag = AudioSourceDataPipe::TAG_AUDIO_DATA;
+        pb.position_msec = position_in_msec;
+
+        // unlock
+        pipe_->unlockProduce(pb);
+
+        // update bufferd position
+        buffered_position_msec_.store(position_in_msec);
+    }
+
+    // push TAG_EVENT_END_OF_DATA item
+    AudioSourceDataPipe::produce_block_t pb;
+
+    if (pipe_->lockProduce(pb, 0)) {
+        const int32_t position_in_msec =
+            loop_start_position_msec_ +
+            static_cast<int32_t>(static_cast<uint64_t>(loop_num_frames_) * 1000 / sampling_rate_hz);
+
+        // update info
+        pb.tag = AudioSourceDataPipe::TAG_EVENT_END_OF_DATA;
+        pb.position_msec = position_in_msec;
+
+        // unlock
+        pipe_->unlockProduce(pb);
+
+        // set EOD flag
+        decoder_end_of_data_detected_ = true;
+
+        // update bufferd position
+        buffered_position_msec_.store(position_in_msec);
     }
 }
 
-void AudioSource::Impl::decoderPlayCallbackEntry(SLPlayItf caller, void *pContext, SLuint32 event) noexcept
+uint64_t AudioSource::Impl::calcOutputFramesFromMsec(int32_t msec) const noexcept
 {
-    static_cast<Impl *>(pContext)->decoderPlayCallback(caller, event);
+    const uint64_t sampling_rate_hz = init_args_.sampling_rate / 1000;
+    return (msec > 0) ? (static_cast<uint64_t>(msec) * sampling_rate_hz / 1000) : 0;
 }
 
-void AudioSource::Impl::decodeBufferQueueCallbackEntry(SLAndroidSimpleBufferQueueItf caller, void *pContext) noexcept
+bool AudioSource::Impl::checkIsSupportedMedia(const OpenSLMediaPlayerMetadata &metadata) const noexcept
 {
-    TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(1);
-    static_cast<Impl *>(pContext)->decodeBufferQueueCallback(caller);
-    TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(0);
+    if (!metadata.isValid())
+        return false;
+
+    if (metadata.bitsPerSample.get() != SL_PCMSAMPLEFORMAT_FIXED_16)
+        return false;
+
+    if (metadata.endianness.get() != SL_BYTEORDER_LITTLEENDIAN)
+        return false;
+
+    if (metadata.containerSize.get() != 16)
+        return false;
+
+    switch (metadata.numChannels.get()) {
+    case 1:
+    case 2:
+        break;
+    default:
+        return false;
+    }
+
+    // metadata.samplesPerSec
+    // metadata.channelMask
+    // metadata.duration
+
+    return true;
+}
+
+void AudioSource::Impl::onDecoderEndOfData(uint32_t seek_serial) noexcept
+{
+    LOGD("onDecoderEndOfData()");
+
+    utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+    // reached to the end before seekInPlace() is called
+    if (seek_serial != decoder_seek_serial_.load(std::memory_order_relaxed))
+        return;
+
+    // already switched to the loop buffer or ended at the loop end point
+    if (loop_feeding_.load(std::memory_order_relaxed) || decoder_end_of_data_detected_.load(std::memory_order_relaxed))
+        return;
+
+    if (worker_pool_) {
+        // flushed after the queued blocks are processed (see onProcessWorkerTask())
+        worker_end_of_data_pending_ = true;
+        lock.unlock();
+        scheduleWorkerTask();
+        return;
+    }
+
+    flushAdapterAtEndOfData();
+
+    pushConvertedDataIntoProducerQueue(lock, false);
+
+    if (loop_feeding_.load(std::memory_order_relaxed) || decoder_end_of_data_detected_.load(std::memory_order_relaxed))
+        return;
+
+    pushEndOfDataIntoProducerQueue(lock);
+}
+
+void AudioSource::Impl::onDecoderError(int result, uint32_t seek_serial) noexcept
+{
+    LOGE("onDecoderError(result = %d)", result);
+
+    utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+    // failed before seekInPlace() is called (decoding restarts from the new position)
+    if (seek_serial != decoder_seek_serial_.load(std::memory_order_relaxed))
+        return;
+
+    // already switched to the loop buffer or ended at the loop end point
+    if (loop_feeding_.load(std::memory_order_relaxed) || decoder_end_of_data_detected_.load(std::memory_order_relaxed))
+        return;
+
+    // the partially recorded clip is not usable
+    recording_clip_.clear();
+
+    // NOTE: the end of data is not pushed, the player stops the playback (see AudioPlayer::Impl::poll())
+    decoder_error_result_.store(result, std::memory_order_release);
+}
+
+void AudioSource::Impl::flushAdapterAtEndOfData() noexcept
+{
+    // flush adapter pooled data
+    adapter_->flush();
+
+    if (loop_end_msec_ < 0) {
+        // the loop end is the end of data (estimated from the number of decoded frames)
+        const uint64_t in_sampling_rate_hz = metadata_.samplesPerSec.get() / 1000;
+        const uint64_t out_sampling_rate_hz = init_args_.sampling_rate / 1000;
+
+        if (in_sampling_rate_hz != 0) {
+            loop_end_frame_ = decoded_input_frames_ * out_sampling_rate_hz / in_sampling_rate_hz;
+        }
+    }
 }
 
 bool AudioSource::Impl::waitForProducerQueueAudioDataItem(utils::pt_unique_lock &lock,
                                                           AudioSourceDataPipe::produce_block_t &pb,
                                                           uint32_t retry_wait_ms, uint32_t max_retries) noexcept
 {
+    const uint32_t seek_serial = decoder_seek_serial_;
     uint32_t retry_cnt = 0;
 
     while (true) {
+        if (CXXPH_UNLIKELY(decoder_seek_serial_ != seek_serial)) {
+            // abandon (seekInPlace() has been called while waiting)
+            break;
+        }
+
         // lock
         if (CXXPH_LIKELY(decoder_play_state_ == SL_PLAYSTATE_PLAYING)) {
             // active & playing
@@ -1645,7 +2215,28 @@ bool AudioSource::Impl::waitForProducerQueueEventItem(utils::pt_unique_lock &loc
     return false;
 }
 
-bool AudioSource::Impl::pushConvertedDataIntoProducerQueue(utils::pt_unique_lock &lock, bool called_from_queue_callback) noexcept
+bool AudioSource::Impl::tryLockProducerQueueAudioDataItem(AudioSourceDataPipe::produce_block_t &pb) noexcept
+{
+    if (CXXPH_LIKELY(decoder_play_state_ == SL_PLAYSTATE_PLAYING)) {
+        return pipe_->lockProduce(pb, queue_params_.room_for_audio_data_while_playing);
+    } else if (decoder_play_state_ == SL_PLAYSTATE_PAUSED) {
+        return pipe_->lockProduce(pb, queue_params_.room_for_audio_data_while_paused);
+    } else {
+        return false;
+    }
+}
+
+bool AudioSource::Impl::tryLockProducerQueueEventItem(AudioSourceDataPipe::produce_block_t &pb) noexcept
+{
+    if (CXXPH_LIKELY(decoder_play_state_ == SL_PLAYSTATE_PLAYING || decoder_play_state_ == SL_PLAYSTATE_PAUSED)) {
+        return pipe_->lockProduce(pb, 0);
+    } else {
+        return false;
+    }
+}
+
+bool AudioSource::Impl::pushConvertedDataIntoProducerQueue(utils::pt_unique_lock &lock, bool called_from_queue_callback,
+                                                           bool blocking) noexcept
 {
     REF_NB_LOGGER_CLIENT(decoder_callback_nb_logger_);
 
@@ -1656,20 +2247,41 @@ bool AudioSource::Impl::pushConvertedDataIntoProducerQueue(utils::pt_unique_lock
         const int32_t position_in_msec = calcCurrentPositionInMsec();
 
         AudioSourceDataPipe::produce_block_t pb;
+        loop_action_t loop_action = LOOP_ACTION_NONE;
 
-        if (CXXPH_LIKELY(waitForProducerQueueAudioDataItem(lock, pb, PRODUCER_QUEUE_PUSH_POLLING_INTERVAL_MS, 500))) {
+        const bool locked = (blocking)
+                                ? waitForProducerQueueAudioDataItem(lock, pb, PRODUCER_QUEUE_PUSH_POLLING_INTERVAL_MS, 500)
+                                : tryLockProducerQueueAudioDataItem(pb);
+
+        if (CXXPH_LIKELY(locked)) {
             TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(4);
             adapter_->get_output_data(pb.dest, 2, out_block_size_in_frames);
             TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(3);
+
+            loop_action = processLoopRegion(pb.dest);
+
+            if (recording_clip_.get() && (loop_action != LOOP_ACTION_NONE || !recording_clip_->appendBlock(pb.dest))) {
+                // longer than expected (or truncated at the loop end), give up caching
+                recording_clip_.clear();
+            }
+
             // update info
             pb.tag = AudioSourceDataPipe::TAG_AUDIO_DATA;
             pb.position_msec = position_in_msec;
 
             // unlock
             pipe_->unlockProduce(pb);
+            produced_seek_serial_.store(decoder_seek_serial_.load(std::memory_order_relaxed),
+                                        std::memory_order_release);
 
             NB_LOGV("pushConvertedDataIntoProducerQueue()");
+        } else if (!blocking) {
+            // no room, the remaining data is pushed on the next try
+            result = false;
+            break;
         } else {
+            // the block is lost, so the recorded clip is not usable
+            recording_clip_.clear();
             result = false;
             break;
         }
@@ -1678,47 +2290,286 @@ bool AudioSource::Impl::pushConvertedDataIntoProducerQueue(utils::pt_unique_lock
 
         // update bufferd position
         buffered_position_msec_.store(position_in_msec);
+
+        if (CXXPH_UNLIKELY(loop_action == LOOP_ACTION_WRAPPED)) {
+            // the following blocks are fed from the loop buffer (see onRecycleItem())
+            loop_feeding_.store(true, std::memory_order_release);
+            break;
+        } else if (CXXPH_UNLIKELY(loop_action == LOOP_ACTION_END_OF_DATA)) {
+            // the following source starts from the loop start point
+            if (!pushEndOfDataIntoProducerQueue(lock, blocking)) {
+                // no room, pushed on the next try (see onProcessWorkerTask()),
+                // the data after the loop end point is not used
+                (void)adapter_->reset();
+                worker_adapter_flushed_ = true;
+                result = false;
+            }
+            break;
+        }
     }
 
     return result;
 }
 
-void AudioSource::Impl::decodeBufferQueueCallback(SLAndroidSimpleBufferQueueItf caller) noexcept
+bool AudioSource::Impl::pushEndOfDataIntoProducerQueue(utils::pt_unique_lock &lock, bool blocking) noexcept
 {
-    utils::pt_unique_lock lock(decoder_callback_mutex_);
+    const int32_t position_in_msec = calcCurrentPositionInMsec();
+    AudioSourceDataPipe::produce_block_t pb;
 
-    if (CXXPH_UNLIKELY(decoderBufferQueue_.self() != caller))
-        return;
+    // NOTE: the non-blocking one leaves the EOD flag untouched if there is no room, the caller retries it
+    if (!blocking && !tryLockProducerQueueEventItem(pb))
+        return false;
 
-    SLresult result;
+    // set EOD flag
+    decoder_end_of_data_detected_ = true;
 
-    const int index = decoderQueueIndex_;
+    // push TAG_EVENT_END_OF_DATA item
+    if (!blocking || waitForProducerQueueEventItem(lock, pb, PRODUCER_QUEUE_PUSH_POLLING_INTERVAL_MS, 500)) {
+        // update info
+        pb.tag = AudioSourceDataPipe::TAG_EVENT_END_OF_DATA;
+        pb.position_msec = position_in_msec;
 
-#if 1
-    static_assert(((NUM_BLOCKS & (NUM_BLOCKS - 1)) == 0), "Check NUM_BLOCKS is power of two");
-    decoderQueueIndex_ = (index + 1) & (NUM_BLOCKS - 1);
-#else
-    decoderQueueIndex_ = (index + 1) % NUM_BLOCKS;
-#endif
+        // unlock
+        pipe_->unlockProduce(pb);
+        produced_seek_serial_.store(decoder_seek_serial_.load(std::memory_order_relaxed), std::memory_order_release);
 
-    {
-        const SLuint32 numChannels = metadata_.numChannels.get();
-        const uint32_t block_size_in_frames = decoderBufferBlockSize_;
-        const size_t block_size_in_bytes = sizeof(int16_t) * block_size_in_frames * numChannels;
-        const int16_t *block = &(decoderBufferPool_[block_size_in_frames * numChannels * index]);
+        // update bufferd position
+        buffered_position_msec_.store(position_in_msec);
+    }
 
-        AudioSourceDataPipe::produce_block_t pb;
+    return true;
+}
+
+bool AudioSource::Impl::onDecoderOutputData(const int16_t *data, uint32_t num_channels, uint32_t num_frames,
+                                             uint32_t seek_serial) noexcept
+{
+    TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(1);
+
+    utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+    if (CXXPH_UNLIKELY(loop_feeding_.load(std::memory_order_relaxed) ||
+                       decoder_end_of_data_detected_.load(std::memory_order_relaxed))) {
+        // the decoder output is no longer used
+        TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(0);
+        return false;
+    }
+
+    if (CXXPH_UNLIKELY(seek_serial != decoder_seek_serial_.load(std::memory_order_relaxed))) {
+        // decoded before seekInPlace() is called, discard
+        TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(0);
+        return true;
+    }
 
-        // put decoded data
+    if (worker_pool_) {
+        // converted on the worker thread (see onProcessWorkerTask())
         TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(2);
-        adapter_->put_input_data(block, numChannels, block_size_in_frames);
-        TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(3);
+        if (CXXPH_UNLIKELY(decoder_skip_frames_ != 0)) {
+            // discard (seek by index)
+            decoder_skip_frames_ -= (std::min)(decoder_skip_frames_, num_frames);
+        } else if (queueDecoderOutputDataToWorker(lock, data, num_channels, num_frames)) {
+            lock.unlock();
+            scheduleWorkerTask();
+        }
+        TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(0);
+        return true;
+    }
+
+    timespec cpu_time_start;
+    const bool measure_cpu_time = (statistics_ && EngineStatistics::getThreadCpuTime(cpu_time_start));
 
-        // re-enqueue the empty buffer
-        decoderBufferQueue_.Enqueue(block, block_size_in_bytes);
+    // put decoded data
+    TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(2);
+    if (CXXPH_LIKELY(decoder_skip_frames_ == 0)) {
+        adapter_->put_input_data(data, num_channels, num_frames);
+        decoded_input_frames_ += num_frames;
+    } else {
+        // discard (seek by index)
+        decoder_skip_frames_ -= (std::min)(decoder_skip_frames_, num_frames);
     }
+    TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(3);
 
     pushConvertedDataIntoProducerQueue(lock, true);
+
+    if (measure_cpu_time) {
+        timespec cpu_time_end;
+        if (EngineStatistics::getThreadCpuTime(cpu_time_end)) {
+            statistics_->onSourceBlockDecoded(num_frames,
+                                              EngineStatistics::calcElapsedNs(cpu_time_start, cpu_time_end));
+        }
+    }
+
+    TRACE_DECODER_BUFFER_QUEUE_CALLBACK_STATE(0);
+
+    return true;
+}
+
+bool AudioSource::Impl::queueDecoderOutputDataToWorker(utils::pt_unique_lock &lock, const int16_t *data,
+                                                       uint32_t num_channels, uint32_t num_frames) noexcept
+{
+    const uint32_t block_size_in_frames = decoderBufferBlockSize_;
+
+    if (CXXPH_UNLIKELY(num_channels != worker_input_num_channels_ || num_frames > block_size_in_frames)) {
+        LOGE("Unexpected decoder output (channels = %u, frames = %u)", num_channels, num_frames);
+        return false;
+    }
+
+    const uint32_t seek_serial = decoder_seek_serial_;
+
+    // wait for a free slot
+    while (worker_input_count_ >= WORKER_INPUT_QUEUE_BLOCKS) {
+        if (CXXPH_UNLIKELY(decoder_seek_serial_ != seek_serial || decoder_play_state_ == SL_PLAYSTATE_STOPPED ||
+                           loop_feeding_.load(std::memory_order_relaxed) ||
+                           decoder_end_of_data_detected_.load(std::memory_order_relaxed))) {
+            // abandon
+            return false;
+        }
+
+        decoder_callback_cv_.wait_relative_ms(lock, PRODUCER_QUEUE_PUSH_POLLING_INTERVAL_MS);
+    }
+
+    if (CXXPH_UNLIKELY(decoder_seek_serial_ != seek_serial)) {
+        // abandon (seekInPlace() has been called while waiting)
+        return false;
+    }
+
+    const uint32_t slot = (worker_input_read_index_ + worker_input_count_) % WORKER_INPUT_QUEUE_BLOCKS;
+    const uint32_t slot_size = block_size_in_frames * num_channels;
+    int16_t *dest = &worker_input_buffer_[slot * slot_size];
+
+    ::memcpy(dest, data, sizeof(int16_t) * num_frames * num_channels);
+    if (num_frames < block_size_in_frames) {
+        ::memset(&dest[num_frames * num_channels], 0, sizeof(int16_t) * (block_size_in_frames - num_frames) * num_channels);
+    }
+
+    worker_input_count_ += 1;
+    decoded_input_frames_ += num_frames;
+
+    return true;
+}
+
+void AudioSource::Impl::processWorkerInputBlock() noexcept
+{
+    const uint32_t block_size_in_frames = decoderBufferBlockSize_;
+    const uint32_t num_channels = worker_input_num_channels_;
+    const int16_t *src = &worker_input_buffer_[worker_input_read_index_ * block_size_in_frames * num_channels];
+
+    timespec cpu_time_start;
+    const bool measure_cpu_time = (statistics_ && EngineStatistics::getThreadCpuTime(cpu_time_start));
+
+    adapter_->put_input_data(src, num_channels, block_size_in_frames);
+
+    worker_input_read_index_ = (worker_input_read_index_ + 1) % WORKER_INPUT_QUEUE_BLOCKS;
+    worker_input_count_ -= 1;
+
+    // wake up the decoder callback waiting for a free slot
+    decoder_callback_cv_.notify_all();
+
+    if (measure_cpu_time) {
+        timespec cpu_time_end;
+        if (EngineStatistics::getThreadCpuTime(cpu_time_end)) {
+            statistics_->onSourceBlockDecoded(block_size_in_frames,
+                                              EngineStatistics::calcElapsedNs(cpu_time_start, cpu_time_end));
+        }
+    }
+}
+
+void AudioSource::Impl::clearWorkerInputQueue() noexcept
+{
+    worker_input_read_index_ = 0;
+    worker_input_count_ = 0;
+    worker_end_of_data_pending_ = false;
+    worker_adapter_flushed_ = false;
+    decoder_callback_cv_.notify_all();
+}
+
+void AudioSource::Impl::scheduleWorkerTask() noexcept
+{
+    if (CXXPH_UNLIKELY(decoder_play_state_ == SL_PLAYSTATE_STOPPED || !pipe_))
+        return;
+
+    // NOTE:
+    // The deadline is the time when the mixer consumes all the queued blocks of this source,
+    // so the source which is about to run out of the data is processed first.
+    const uint32_t num_queued = pipe_->getNumberOfConsumableItems();
+    uint32_t num_blocks;
+
+    if (decoder_play_state_ == SL_PLAYSTATE_PLAYING) {
+        num_blocks = (num_queued > 0) ? (num_queued - 1) : 0;
+    } else {
+        // not consumed while pausing (prefetching)
+        num_blocks = queue_params_.required_capacity;
+    }
+
+    timespec deadline;
+
+    if (!utils::timespec_utils::get_current_time(deadline)) {
+        utils::timespec_utils::set_zero(deadline);
+    }
+
+    deadline = utils::timespec_utils::add_us(deadline, num_blocks * pipe_block_duration_us_);
+
+    (void)worker_pool_->schedule(this, deadline);
+}
+
+void AudioSource::Impl::cancelWorkerTask() noexcept
+{
+    if (worker_pool_) {
+        // NOTE: waits for the running task
+        worker_pool_->cancel(this);
+    }
+}
+
+void AudioSource::Impl::onProcessWorkerTask() noexcept
+{
+    utils::pt_unique_lock lock(decoder_callback_mutex_);
+
+    // NOTE:
+    // The flag is set before trying to lock the pipe blocks, so a block recycled
+    // after a failed try re-schedules this task (see onRecycleItem()).
+    worker_waiting_for_pipe_.store(true, std::memory_order_release);
+
+    while (true) {
+        if (CXXPH_UNLIKELY(decoder_play_state_ == SL_PLAYSTATE_STOPPED || !pipe_)) {
+            // stopped (see stopDecoder())
+            clearWorkerInputQueue();
+            break;
+        }
+
+        if (CXXPH_UNLIKELY(loop_feeding_.load(std::memory_order_relaxed) ||
+                           decoder_end_of_data_detected_.load(std::memory_order_relaxed))) {
+            // the decoder output is no longer used
+            clearWorkerInputQueue();
+            break;
+        }
+
+        if (worker_adapter_flushed_ && !adapter_->is_output_data_ready()) {
+            // all the data (or the data until the loop end point) has been pushed
+            if (!pushEndOfDataIntoProducerQueue(lock, false)) {
+                // re-scheduled when a block is recycled (see onRecycleItem())
+                return;
+            }
+            worker_adapter_flushed_ = false;
+            break;
+        }
+
+        // push the converted data first, the adapter accepts a new input block only if the output has been drained
+        if (!pushConvertedDataIntoProducerQueue(lock, false, false)) {
+            // re-scheduled when a block is recycled (see onRecycleItem())
+            return;
+        }
+
+        if (worker_input_count_ > 0) {
+            processWorkerInputBlock();
+        } else if (worker_end_of_data_pending_) {
+            worker_end_of_data_pending_ = false;
+            worker_adapter_flushed_ = true;
+            flushAdapterAtEndOfData();
+        } else if (!worker_adapter_flushed_) {
+            break;
+        }
+    }
+
+    worker_waiting_for_pipe_.store(false, std::memory_order_release);
 }
 
 int32_t AudioSource::Impl::calcCurrentPositionInMsec() noexcept
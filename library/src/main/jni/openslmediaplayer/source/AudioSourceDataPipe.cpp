@@ -21,6 +21,7 @@
 #include <algorithm>
 
 #include <cxxporthelper/memory>
+#include <cxxporthelper/atomic>
 #include <cxxporthelper/aligned_memory.hpp>
 
 #include <lockfree/lockfree_circulation_buffer.hpp>
@@ -41,9 +42,11 @@ struct AudioSourceDataPipeItem {
     uint32_t num_frames;
     uint32_t tag;
     int32_t position_msec;
+    uint32_t serial;
 
     AudioSourceDataPipeItem()
-        : buffer(nullptr), num_channels(0), num_frames(0), tag(AudioSourceDataPipe::TAG_NONE), position_msec(0)
+        : buffer(nullptr), num_channels(0), num_frames(0), tag(AudioSourceDataPipe::TAG_NONE), position_msec(0),
+          serial(0)
     {
     }
 
@@ -51,6 +54,7 @@ struct AudioSourceDataPipeItem {
     {
         tag = AudioSourceDataPipe::TAG_NONE;
         position_msec = 0;
+        serial = 0;
     }
 };
 
@@ -78,11 +82,15 @@ public:
     bool unlockRecycle(AudioSourceDataPipe::recycle_block_t &block) noexcept;
 
     uint32_t getCapacity() const noexcept;
+    uint32_t getNumberOfConsumableItems() const noexcept;
 
     uint32_t consumerGetLastBlockTag() const noexcept;
 
+    void producerRequestFlush() noexcept;
+
 private:
     int setupQueues(const initialize_args_t &args, size_t block_size, uint8_t *buffer_pool) noexcept;
+    bool isFlushedItem(const AudioSourceDataPipeItem *item) const noexcept;
 
 private:
     bool initialized_;
@@ -97,6 +105,9 @@ private:
     audio_source_buffer_queue_t recycler_queue_;
 
     uint32_t last_consumer_tag_;
+
+    // items which have older serial than this value are discarded
+    std::atomic<uint32_t> flush_serial_;
 };
 
 //
@@ -218,6 +229,13 @@ uint32_t AudioSourceDataPipe::getCapacity() const noexcept
     return impl_->getCapacity();
 }
 
+uint32_t AudioSourceDataPipe::getNumberOfConsumableItems() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return 0;
+    return impl_->getNumberOfConsumableItems();
+}
+
 uint32_t AudioSourceDataPipe::consumerGetLastBlockTag() const noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -225,13 +243,20 @@ uint32_t AudioSourceDataPipe::consumerGetLastBlockTag() const noexcept
     return impl_->consumerGetLastBlockTag();
 }
 
+void AudioSourceDataPipe::producerRequestFlush() noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return;
+    impl_->producerRequestFlush();
+}
+
 //
 // AudioSourceDataPipe::Impl
 //
 
 AudioSourceDataPipe::Impl::Impl()
     : initialized_(false), cache_aligned_block_size_(0), buffer_pool_(),
-      last_consumer_tag_(AudioSourceDataPipe::TAG_NONE)
+      last_consumer_tag_(AudioSourceDataPipe::TAG_NONE), flush_serial_(0)
 {
 }
 
@@ -279,6 +304,7 @@ int AudioSourceDataPipe::Impl::initialize(const initialize_args_t &args) noexcep
     cache_aligned_block_size_ = cache_aligned_block_size;
     initialized_ = true;
     last_consumer_tag_ = TAG_NONE;
+    flush_serial_.store(0, std::memory_order_release);
 
     return OSLMP_RESULT_SUCCESS;
 }
@@ -289,6 +315,7 @@ int AudioSourceDataPipe::Impl::reset() noexcept
         return OSLMP_RESULT_ILLEGAL_STATE;
 
     last_consumer_tag_ = TAG_NONE;
+    flush_serial_.store(0, std::memory_order_release);
 
     int result;
     if (buffer_pool_) {
@@ -432,6 +459,7 @@ bool AudioSourceDataPipe::Impl::unlockProduce(AudioSourceDataPipe::produce_block
         AudioSourceDataPipeItem *item = reinterpret_cast<AudioSourceDataPipeItem *>(block.lock);
         item->tag = block.tag;
         item->position_msec = block.position_msec;
+        item->serial = flush_serial_.load(std::memory_order_relaxed);
         queue.at(index) = item;
         queue.unlock_write(index);
 
@@ -458,10 +486,29 @@ bool AudioSourceDataPipe::Impl::lockConsume(AudioSourceDataPipe::consume_block_t
     audio_source_buffer_queue_t::index_t index = audio_source_buffer_queue_t::INVALID_INDEX;
     audio_source_buffer_queue_t &queue = consumer_queue_;
 
-    if (CXXPH_LIKELY(queue.lock_read(index, min_remains))) {
+    while (CXXPH_LIKELY(queue.lock_read(index, min_remains))) {
         AudioSourceDataPipeItem *item = queue.at(index);
         bool commit;
 
+        if (CXXPH_UNLIKELY(isFlushedItem(item))) {
+            // discard the flushed item
+            audio_source_buffer_queue_t::index_t recycler_index = audio_source_buffer_queue_t::INVALID_INDEX;
+
+            if (CXXPH_UNLIKELY(!recycler_queue_.lock_write(recycler_index))) {
+                LOGE("lockConsume() - recycler_queue_.lock_write() failed");
+                queue.unlock_read(index, false);
+                break;
+            }
+
+            queue.at(index) = nullptr;
+            queue.unlock_read(index);
+
+            recycler_queue_.at(recycler_index) = item;
+            recycler_queue_.unlock_write(recycler_index);
+
+            continue;
+        }
+
         if (tag_mask_bitmap & (1UL << item->tag)) {
             queue.at(index) = nullptr;
 
@@ -480,11 +527,11 @@ bool AudioSourceDataPipe::Impl::lockConsume(AudioSourceDataPipe::consume_block_t
         queue.unlock_read(index, commit);
 
         return commit;
-    } else {
-        clear(block);
-
-        return false;
     }
+
+    clear(block);
+
+    return false;
 }
 
 bool AudioSourceDataPipe::Impl::unlockConsume(AudioSourceDataPipe::consume_block_t &block) noexcept
@@ -537,7 +584,7 @@ bool AudioSourceDataPipe::Impl::lockRecycle(AudioSourceDataPipe::recycle_block_t
         block.src = item->buffer;
         block.num_channels = item->num_channels;
         block.num_frames = item->num_frames;
-        block.tag = item->tag;
+        block.tag = (isFlushedItem(item)) ? TAG_NONE : item->tag;
         block.position_msec = item->position_msec;
         block.lock = reinterpret_cast<uintptr_t>(item);
 
@@ -583,7 +630,22 @@ bool AudioSourceDataPipe::Impl::unlockRecycle(AudioSourceDataPipe::recycle_block
 
 uint32_t AudioSourceDataPipe::Impl::getCapacity() const noexcept { return init_args_.num_buffer_items; }
 
+uint32_t AudioSourceDataPipe::Impl::getNumberOfConsumableItems() const noexcept
+{
+    return static_cast<uint32_t>(consumer_queue_.size());
+}
+
 uint32_t AudioSourceDataPipe::Impl::consumerGetLastBlockTag() const noexcept { return last_consumer_tag_; }
 
+void AudioSourceDataPipe::Impl::producerRequestFlush() noexcept
+{
+    flush_serial_.fetch_add(1, std::memory_order_release);
+}
+
+bool AudioSourceDataPipe::Impl::isFlushedItem(const AudioSourceDataPipeItem *item) const noexcept
+{
+    return (item->serial != flush_serial_.load(std::memory_order_acquire));
+}
+
 } // namespace impl
 } // namespace oslmp
@@ -0,0 +1,270 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "AudioSourceWorkerPool"
+
+#include "oslmp/impl/AudioSourceWorkerPool.hpp"
+
+#include <algorithm>
+#include <unistd.h>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AndroidHelper.hpp"
+#include "oslmp/utils/timespec_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+typedef utils::timespec_utils ts_utils;
+
+AudioSourceWorkerPool::AudioSourceWorkerPool()
+    : jvm_(nullptr), threads_(), mutex_(), cv_(), cv_done_(), entries_(), stop_request_(false)
+{
+}
+
+AudioSourceWorkerPool::~AudioSourceWorkerPool() { stopWorkerThreads(); }
+
+int AudioSourceWorkerPool::initialize(const initialize_args_t &args) noexcept
+{
+    if (!threads_.empty())
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (args.num_threads == 0)
+        return OSLMP_RESULT_SUCCESS; // disabled
+
+    const uint32_t num_threads = (std::min)(args.num_threads, static_cast<uint32_t>(MAX_THREADS));
+
+    try
+    {
+        threads_.reserve(num_threads);
+        entries_.reserve(16);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    jvm_ = args.jvm;
+    stop_request_ = false;
+
+    for (uint32_t i = 0; i < num_threads; ++i) {
+        pthread_t pt_handle;
+
+        if (::pthread_create(&pt_handle, nullptr, &AudioSourceWorkerPool::workerThreadEntryFunc, this) != 0) {
+            stopWorkerThreads();
+            return OSLMP_RESULT_INTERNAL_ERROR;
+        }
+
+        threads_.push_back(pt_handle);
+    }
+
+    LOGD("AudioSourceWorkerPool: %u threads", num_threads);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool AudioSourceWorkerPool::isEnabled() const noexcept { return !threads_.empty(); }
+
+uint32_t AudioSourceWorkerPool::getNumThreads() const noexcept { return static_cast<uint32_t>(threads_.size()); }
+
+uint32_t AudioSourceWorkerPool::sGetDefaultNumThreads() noexcept
+{
+    // NOTE:
+    // The configured number of the cores is used instead of the online one,
+    // because the big cores of the big.LITTLE SoCs are often hot-plugged out
+    // while the load is low. One core is left for the mixer thread.
+    const long num_cores = ::sysconf(_SC_NPROCESSORS_CONF);
+
+    if (num_cores <= 1)
+        return 1;
+
+    return static_cast<uint32_t>((std::min)(num_cores - 1, static_cast<long>(MAX_THREADS)));
+}
+
+int AudioSourceWorkerPool::schedule(Task *task, const timespec &deadline) noexcept
+{
+    if (CXXPH_UNLIKELY(!task))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_unique_lock lock(mutex_);
+
+    if (CXXPH_UNLIKELY(threads_.empty() || stop_request_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    entry_t *entry = findEntry(task);
+
+    if (entry) {
+        switch (entry->state) {
+        case TASK_QUEUED:
+        case TASK_RUNNING_REQUEUED:
+            // keep the earlier one
+            if (ts_utils::compare_less_than(deadline, entry->deadline)) {
+                entry->deadline = deadline;
+            }
+            break;
+        case TASK_RUNNING:
+            entry->state = TASK_RUNNING_REQUEUED;
+            entry->deadline = deadline;
+            break;
+        }
+        return OSLMP_RESULT_SUCCESS;
+    }
+
+    try
+    {
+        entry_t new_entry;
+
+        new_entry.task = task;
+        new_entry.deadline = deadline;
+        new_entry.state = TASK_QUEUED;
+
+        entries_.push_back(new_entry);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    cv_.notify_one();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioSourceWorkerPool::cancel(Task *task) noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    while (true) {
+        entry_t *entry = findEntry(task);
+
+        if (!entry)
+            break;
+
+        if (entry->state == TASK_QUEUED) {
+            removeEntry(entry);
+            break;
+        }
+
+        // wait for the running one (and do not process it again)
+        entry->state = TASK_RUNNING;
+        cv_done_.wait(lock);
+    }
+}
+
+void AudioSourceWorkerPool::stopWorkerThreads() noexcept
+{
+    if (threads_.empty())
+        return;
+
+    {
+        utils::pt_lock_guard lock(mutex_);
+        stop_request_ = true;
+        cv_.notify_all();
+    }
+
+    for (pthread_t pt_handle : threads_) {
+        (void)::pthread_join(pt_handle, nullptr);
+    }
+
+    threads_.clear();
+    entries_.clear();
+    stop_request_ = false;
+}
+
+void *AudioSourceWorkerPool::workerThreadEntryFunc(void *args) noexcept
+{
+    AudioSourceWorkerPool *thiz = static_cast<AudioSourceWorkerPool *>(args);
+
+    // NOTE: slightly lower than the mixer thread, the mixer must not be preempted by the workers
+    AndroidHelper::setThreadPriority(thiz->jvm_, 0,
+                                     ANDROID_THREAD_PRIORITY_AUDIO + ANDROID_THREAD_PRIORITY_LESS_FAVORABLE * 7);
+
+    AndroidHelper::setCurrentThreadName("OSLMPSrcWorker");
+
+    thiz->workerThreadProcess();
+
+    return nullptr;
+}
+
+void AudioSourceWorkerPool::workerThreadProcess() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    while (!stop_request_) {
+        entry_t *entry = selectNextEntry();
+
+        if (!entry) {
+            cv_.wait(lock);
+            continue;
+        }
+
+        Task *task = entry->task;
+
+        entry->state = TASK_RUNNING;
+
+        lock.unlock();
+        task->onProcessWorkerTask();
+        lock.lock();
+
+        // NOTE: the entries_ may be re-allocated while processing
+        entry = findEntry(task);
+
+        if (entry) {
+            if (entry->state == TASK_RUNNING_REQUEUED) {
+                entry->state = TASK_QUEUED;
+            } else {
+                removeEntry(entry);
+            }
+        }
+
+        cv_done_.notify_all();
+    }
+}
+
+AudioSourceWorkerPool::entry_t *AudioSourceWorkerPool::findEntry(Task *task) noexcept
+{
+    for (auto &entry : entries_) {
+        if (entry.task == task)
+            return &entry;
+    }
+    return nullptr;
+}
+
+AudioSourceWorkerPool::entry_t *AudioSourceWorkerPool::selectNextEntry() noexcept
+{
+    // earliest deadline first
+    entry_t *next = nullptr;
+
+    for (auto &entry : entries_) {
+        if (entry.state != TASK_QUEUED)
+            continue;
+
+        if (!next || ts_utils::compare_less_than(entry.deadline, next->deadline)) {
+            next = &entry;
+        }
+    }
+
+    return next;
+}
+
+void AudioSourceWorkerPool::removeEntry(entry_t *entry) noexcept
+{
+    // NOTE: the order of the entries is not significant
+    (*entry) = entries_.back();
+    entries_.pop_back();
+}
+
+} // namespace impl
+} // namespace oslmp
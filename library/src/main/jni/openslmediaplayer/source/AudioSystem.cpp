@@ -41,11 +41,18 @@
 #include "oslmp/impl/AudioSink.hpp"
 #include "oslmp/impl/AudioMixer.hpp"
 #include "oslmp/impl/AudioDataPipeManager.hpp"
+#include "oslmp/impl/AudioSinkDataPipe.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalUtils.hpp"
 #include "oslmp/impl/PreAmp.hpp"
 #include "oslmp/impl/HQEqualizer.hpp"
+#include "oslmp/impl/EngineStatistics.hpp"
+#include "oslmp/impl/AudioClipCache.hpp"
+#include "oslmp/impl/SeekIndexCache.hpp"
+#include "oslmp/impl/PolyphaseResampler.hpp"
+#include "oslmp/impl/AudioSourceWorkerPool.hpp"
 #include "oslmp/utils/timespec_utils.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
 
 #define TRANSLATE_RESULT(result) InternalUtils::sTranslateOpenSLErrorCode(result)
 
@@ -113,18 +120,34 @@ public:
 
     int getSystemOutputSamplingRate(uint32_t *sampling_rate) const noexcept;
     int getOutputLatencyInFrames(uint32_t *latency) const noexcept;
+    int getOutputSampleFormat(sample_format_type *format) const noexcept;
 
     int getParamResamplerQualityLevel(uint32_t *quality_level) const noexcept;
+    int getParamLoopBufferMaxDuration(uint32_t *duration_ms) const noexcept;
+    int getParamDecoderBackendType(uint32_t *backend_type) const noexcept;
+    int getParamHQEqualizerImplType(uint32_t *impl_type) const noexcept;
 
     int getPreAmp(PreAmp **p_preamp) const noexcept;
     int getHQEqualizer(HQEqualizer **p_hq_equalizer) const noexcept;
 
+    int installOptionalModule(uint32_t option) noexcept;
+    int uninstallOptionalModule(uint32_t option) noexcept;
+
+    EngineStatistics *getStatistics() const noexcept;
+    AudioClipCache *getClipCache() const noexcept;
+    SeekIndexCache *getSeekIndexCache() const noexcept;
+    PolyphaseResamplerCoeffBankCache *getResamplerCoeffBankCache() const noexcept;
+    AudioSourceWorkerPool *getSourceWorkerPool() const noexcept;
+
     int getAudioSessionId(int32_t *audio_session_id) const noexcept;
 
+    int setOfflineRenderOutputCallback(offline_render_output_callback_t callback, void *args) noexcept;
+
 private:
     int initSubmodules(const AudioSystem::initialize_args_t &args, uint32_t output_frame_size, bool is_low_latency_mode,
                        std::unique_ptr<AudioSink> &sink, std::unique_ptr<AudioDataPipeManager> &pipe_mgr,
-                       std::unique_ptr<AudioMixer> &mixer, MixedOutputAudioEffect *mixout_effects[]) const noexcept;
+                       std::unique_ptr<AudioMixer> &mixer, MixedOutputAudioEffect *mixout_effects[],
+                       EngineStatistics *statistics) const noexcept;
 
     int initEngine(uint32_t opts, CSLObjectItf &engineObj) const noexcept;
 
@@ -138,8 +161,12 @@ private:
     void pollControlMixerAndSinkSuspendResume() noexcept;
     void pollObtainCapturedAudioData() noexcept;
 
+    static void sinkBlockConsumerCallback(const void *data, sample_format_type format, uint32_t num_channels,
+                                          uint32_t num_frames, void *args) noexcept;
+
     static bool check_is_low_latency(const initialize_args_t &args) noexcept;
     static bool check_use_floating_point_output(const initialize_args_t &args) noexcept;
+    static sample_format_type determine_sink_sample_format(const initialize_args_t &args) noexcept;
     static uint32_t determine_output_frame_size(const initialize_args_t &args, bool is_low_latency, bool floating_point) noexcept;
     static uint32_t calc_android_NormalMixer_FrameCount(uint32_t frame_count, uint32_t sample_rate_hz) noexcept;
     static int32_t audio_track_get_min_buffer_size(JNIEnv *env, int32_t sample_rate_in_hz, int32_t channel_config, int32_t audio_format);
@@ -172,6 +199,16 @@ private:
     std::unique_ptr<HQEqualizer> mixout_effect_hq_equalizer_;
 
     bool audio_player_instance_updated_;
+
+    mutable EngineStatistics statistics_;
+    mutable AudioClipCache clip_cache_;
+    mutable SeekIndexCache seek_index_cache_;
+    mutable PolyphaseResamplerCoeffBankCache resampler_coeff_bank_cache_;
+    mutable AudioSourceWorkerPool source_worker_pool_;
+
+    utils::pt_mutex offline_render_output_mutex_;
+    offline_render_output_callback_t offline_render_output_callback_;
+    void *offline_render_output_callback_args_;
 };
 
 //
@@ -337,6 +374,13 @@ int AudioSystem::getOutputLatencyInFrames(uint32_t *latency) const noexcept
     return impl_->getOutputLatencyInFrames(latency);
 }
 
+int AudioSystem::getOutputSampleFormat(sample_format_type *format) const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->getOutputSampleFormat(format);
+}
+
 int AudioSystem::getParamResamplerQualityLevel(uint32_t *quality_level) const noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -344,6 +388,27 @@ int AudioSystem::getParamResamplerQualityLevel(uint32_t *quality_level) const no
     return impl_->getParamResamplerQualityLevel(quality_level);
 }
 
+int AudioSystem::getParamLoopBufferMaxDuration(uint32_t *duration_ms) const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->getParamLoopBufferMaxDuration(duration_ms);
+}
+
+int AudioSystem::getParamDecoderBackendType(uint32_t *backend_type) const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->getParamDecoderBackendType(backend_type);
+}
+
+int AudioSystem::getParamHQEqualizerImplType(uint32_t *impl_type) const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->getParamHQEqualizerImplType(impl_type);
+}
+
 int AudioSystem::getPreAmp(PreAmp **p_preamp) const noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -358,6 +423,55 @@ int AudioSystem::getHQEqualizer(HQEqualizer **p_hq_equalizer) const noexcept
     return impl_->getHQEqualizer(p_hq_equalizer);
 }
 
+int AudioSystem::installOptionalModule(uint32_t option) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->installOptionalModule(option);
+}
+
+int AudioSystem::uninstallOptionalModule(uint32_t option) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->uninstallOptionalModule(option);
+}
+
+AudioClipCache *AudioSystem::getClipCache() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return nullptr;
+    return impl_->getClipCache();
+}
+
+SeekIndexCache *AudioSystem::getSeekIndexCache() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return nullptr;
+    return impl_->getSeekIndexCache();
+}
+
+PolyphaseResamplerCoeffBankCache *AudioSystem::getResamplerCoeffBankCache() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return nullptr;
+    return impl_->getResamplerCoeffBankCache();
+}
+
+AudioSourceWorkerPool *AudioSystem::getSourceWorkerPool() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return nullptr;
+    return impl_->getSourceWorkerPool();
+}
+
+EngineStatistics *AudioSystem::getStatistics() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return nullptr;
+    return impl_->getStatistics();
+}
+
 int AudioSystem::getAudioSessionId(int32_t *p_audio_session_id) const noexcept
 {
     if (CXXPH_UNLIKELY(!impl_))
@@ -365,6 +479,13 @@ int AudioSystem::getAudioSessionId(int32_t *p_audio_session_id) const noexcept
     return impl_->getAudioSessionId(p_audio_session_id);
 }
 
+int AudioSystem::setOfflineRenderOutputCallback(offline_render_output_callback_t callback, void *args) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setOfflineRenderOutputCallback(callback, args);
+}
+
 
 //
 // AudioSystem::Impl
@@ -375,7 +496,8 @@ AudioSystem::Impl::Impl()
       sink_(), mixer_(), pipe_mgr_(), capture_pipe_(nullptr), audio_capture_event_listener_(nullptr), objEngine_(),
       audio_players_info_(), audio_player_player_id_counter_(0),
       ts_mixer_enter_can_suspend_(utils::timespec_utils::ZERO()), ts_prev_polling_(utils::timespec_utils::ZERO()),
-      preamp_(), mixout_effect_hq_equalizer_(), audio_player_instance_updated_(false)
+      preamp_(), mixout_effect_hq_equalizer_(), audio_player_instance_updated_(false), offline_render_output_mutex_(),
+      offline_render_output_callback_(nullptr), offline_render_output_callback_args_(nullptr)
 {
     cxxdasp::cxxdasp_init();
 }
@@ -426,6 +548,26 @@ int AudioSystem::Impl::initialize(const initialize_args_t &args) noexcept
     const uint32_t context_opts = args.context->getContextOptions();
 
 // check parameter
+    if (!(args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_OPENSL ||
+          args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_AUDIO_TRACK ||
+          args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_NULL)) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+    if (!(args.sink_buffering_mode == OSLMP_CONTEXT_SINK_BUFFERING_MODE_FIXED ||
+          args.sink_buffering_mode == OSLMP_CONTEXT_SINK_BUFFERING_MODE_ADAPTIVE)) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+    if (args.sink_buffering_mode == OSLMP_CONTEXT_SINK_BUFFERING_MODE_ADAPTIVE &&
+        !(args.adaptive_sink_min_blocks >= OSLMP_CONTEXT_ADAPTIVE_SINK_MIN_BLOCKS &&
+          args.adaptive_sink_max_blocks >= args.adaptive_sink_min_blocks &&
+          args.adaptive_sink_max_blocks <= OSLMP_CONTEXT_ADAPTIVE_SINK_MAX_BLOCKS &&
+          args.adaptive_sink_shrink_interval_ms > 0)) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+    if (!(args.decoder_backend_type == OSLMP_CONTEXT_DECODER_BACKEND_TYPE_OPENSL ||
+          args.decoder_backend_type == OSLMP_CONTEXT_DECODER_BACKEND_TYPE_MEDIACODEC)) {
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
 #if !CXXDASP_ENABLE_POLYPHASE_RESAMPLER_FACTORY_LOW_QUALITY
     if (!args.use_high_quality_resampler) {
         return OSLMP_RESULT_ILLEGAL_ARGUMENT;
@@ -455,7 +597,8 @@ int AudioSystem::Impl::initialize(const initialize_args_t &args) noexcept
 
     // initialize sub modules
     mixout_effects[0] = mixout_effect_hq_equalizer.get();
-    result = initSubmodules(args, output_frame_size, is_low_latency_mode, sink, pipe_mgr, mixer, mixout_effects);
+    result = initSubmodules(args, output_frame_size, is_low_latency_mode, sink, pipe_mgr, mixer, mixout_effects,
+                            &statistics_);
 
     if (result != OSLMP_RESULT_SUCCESS) {
         objEngine_.Destroy();
@@ -473,6 +616,66 @@ int AudioSystem::Impl::initialize(const initialize_args_t &args) noexcept
         return result;
     }
 
+    // bind offline render output callback
+    if (args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_NULL) {
+        result = sink->setBlockConsumer(sinkBlockConsumerCallback, this);
+        if (result != OSLMP_RESULT_SUCCESS) {
+            objEngine_.Destroy();
+            context_ = nullptr;
+            return result;
+        }
+    }
+
+    // initialize decoded clip cache
+    {
+        AudioClipCache::initialize_args_t cache_args;
+        const uint64_t bytes_per_sec =
+            static_cast<uint64_t>(args.system_out_sampling_rate / 1000) * 2 * sizeof(AudioSourceDataPipe::data_type);
+
+        cache_args.capacity_in_bytes = args.decoded_clip_cache_size;
+        cache_args.max_clip_size_in_bytes =
+            static_cast<size_t>((bytes_per_sec * args.decoded_clip_max_duration_ms) / 1000);
+
+        result = clip_cache_.initialize(cache_args);
+        if (result != OSLMP_RESULT_SUCCESS) {
+            objEngine_.Destroy();
+            context_ = nullptr;
+            return result;
+        }
+    }
+
+    // initialize seek index cache
+    {
+        SeekIndexCache::initialize_args_t cache_args;
+
+        cache_args.directory = args.seek_index_cache_dir;
+        cache_args.max_storage_size = args.seek_index_cache_max_size;
+
+        result = seek_index_cache_.initialize(cache_args);
+        if (result != OSLMP_RESULT_SUCCESS) {
+            objEngine_.Destroy();
+            context_ = nullptr;
+            return result;
+        }
+    }
+
+    // initialize source worker threads
+    {
+        AudioSourceWorkerPool::initialize_args_t pool_args;
+
+        pool_args.num_threads = (args.source_worker_thread_count == OSLMP_CONTEXT_SOURCE_WORKER_THREAD_COUNT_AUTO)
+                                    ? AudioSourceWorkerPool::sGetDefaultNumThreads()
+                                    : args.source_worker_thread_count;
+        pool_args.jvm = args.context->getJavaVM();
+
+        result = source_worker_pool_.initialize(pool_args);
+        if (result != OSLMP_RESULT_SUCCESS) {
+            objEngine_.Destroy();
+            context_ = nullptr;
+            return result;
+        }
+    }
+
     // initialize pre.amp module
     // (ignore the result because preamp module is optional)
     (void)initPreAmp(context_opts, preamp, mixer);
@@ -497,16 +700,22 @@ int AudioSystem::Impl::initialize(const initialize_args_t &args) noexcept
 int AudioSystem::Impl::initSubmodules(const AudioSystem::initialize_args_t &args, uint32_t output_frame_size, bool is_low_latency_mode,
                                       std::unique_ptr<AudioSink> &sink, std::unique_ptr<AudioDataPipeManager> &pipe_mgr,
                                       std::unique_ptr<AudioMixer> &mixer,
-                                      MixedOutputAudioEffect *mixout_effects[]) const noexcept
+                                      MixedOutputAudioEffect *mixout_effects[],
+                                      EngineStatistics *statistics) const noexcept
 {
     const bool uses_opensl_sink = (args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_OPENSL);
+    const bool uses_null_sink = (args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_NULL);
 
     const uint32_t kSourcePipeMinDurationInMsec = 2000;  // 2 sec.
     const uint32_t kSourcePipeRoomDurationInMsec = 1000; // 1 sec.
     const uint32_t kSourcePipeMaxNumBlocks = static_cast<uint32_t>(AudioSourceDataPipe::MAX_BUFFER_ITEM_COUNT);
 
-    const uint32_t kAudioMixerSinkPooledNumBlocks = (uses_opensl_sink) ? 4 : 2;
+    const bool uses_adaptive_buffering = (args.sink_buffering_mode == OSLMP_CONTEXT_SINK_BUFFERING_MODE_ADAPTIVE);
     const uint32_t kSinkPlayerNumBlocks = (uses_opensl_sink) ? ((is_low_latency_mode) ? 8 : 4) : 1;
+    const uint32_t kAudioMixerSinkPooledNumBlocks = (uses_adaptive_buffering)
+            ? (std::min)(args.adaptive_sink_max_blocks,
+                         static_cast<uint32_t>(AudioSinkDataPipe::MAX_BUFFER_ITEM_COUNT - kSinkPlayerNumBlocks - 1))
+            : ((uses_opensl_sink) ? 4 : 2);
     const uint32_t kSinkPipeNumBlocks = (uses_opensl_sink)
             ? (kSinkPlayerNumBlocks + kAudioMixerSinkPooledNumBlocks + 1) /* +1: silent buffer internally used in AudioSink */
             : (kSinkPlayerNumBlocks + kAudioMixerSinkPooledNumBlocks);
@@ -532,8 +741,7 @@ int AudioSystem::Impl::initSubmodules(const AudioSystem::initialize_args_t &args
     AudioSinkDataPipe *sink_pipe = nullptr;
     AudioCaptureDataPipe *capture_pipe = nullptr;
     AudioDataPipeManager::initialize_args_t pipe_mgr_args;
-    sample_format_type sink_sample_format = (args.system_supports_floating_point && args.use_floating_point_if_available)
-        ? kAudioSampleFormatType_F32 : kAudioSampleFormatType_S16;
+    const sample_format_type sink_sample_format = determine_sink_sample_format(args);
 
     pipe_mgr_args.sink_format_type = sink_sample_format;
     pipe_mgr_args.source_num_items =
@@ -544,6 +752,7 @@ int AudioSystem::Impl::initSubmodules(const AudioSystem::initialize_args_t &args
                  (std::min)(kCapturePipeMaxNumBlocks,
                             ((kCapturePipeDurationInMsec * sampling_rate_hz / 1000) / output_frame_size)));
     pipe_mgr_args.block_size = output_frame_size;
+    pipe_mgr_args.source_num_pipes = args.mixer_max_sources;
 
     // initialize pipe manager
     result = pipe_mgr->initialize(pipe_mgr_args);
@@ -558,6 +767,22 @@ int AudioSystem::Impl::initSubmodules(const AudioSystem::initialize_args_t &args
     if (result != OSLMP_RESULT_SUCCESS)
         return result;
 
+    // set up adaptive buffering
+    if (uses_adaptive_buffering) {
+        AudioSinkDataPipe::adaptive_buffering_policy_t policy;
+
+        policy.enabled = true;
+        policy.min_write_ahead_items = args.adaptive_sink_min_blocks;
+        policy.max_write_ahead_items = kAudioMixerSinkPooledNumBlocks;
+        policy.shrink_interval_blocks =
+            (std::max)(1U, static_cast<uint32_t>((static_cast<uint64_t>(args.adaptive_sink_shrink_interval_ms) *
+                                                  sampling_rate_hz / 1000) / output_frame_size));
+
+        result = sink_pipe->setAdaptiveBufferingPolicy(policy);
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+    }
+
     // initialize sink
     {
         AudioSink::initialize_args_t init_args;
@@ -570,7 +795,9 @@ int AudioSystem::Impl::initSubmodules(const AudioSystem::initialize_args_t &args
         init_args.pipe_manager = pipe_mgr.get();
         init_args.pipe = sink_pipe;
         init_args.num_player_blocks = kSinkPlayerNumBlocks;
-        init_args.backend = uses_opensl_sink ? AudioSink::BACKEND_OPENSL : AudioSink::BACKEND_AUDIO_TRACK;
+        init_args.backend = (uses_opensl_sink) ? AudioSink::BACKEND_OPENSL
+                                               : ((uses_null_sink) ? AudioSink::BACKEND_NULL : AudioSink::BACKEND_AUDIO_TRACK);
+        init_args.statistics = statistics;
         result = sink->initialize(init_args);
 
         if (result != OSLMP_RESULT_SUCCESS)
@@ -589,6 +816,9 @@ int AudioSystem::Impl::initSubmodules(const AudioSystem::initialize_args_t &args
         init_args.short_fade_duration_ms = args.short_fade_duration_ms;
         init_args.long_fade_duration_ms = args.long_fade_duration_ms;
         init_args.num_sink_player_blocks = kSinkPlayerNumBlocks;
+        init_args.num_source_pipes = args.mixer_max_sources;
+        init_args.statistics = statistics;
+        init_args.offline_mode = uses_null_sink;
 
         for (int i = 0; i < AudioMixer::NUM_MAX_MIXOOUT_EFFECTS; ++i) {
             init_args.mixout_effects[i] = mixout_effects[i];
@@ -1108,6 +1338,16 @@ int AudioSystem::Impl::getSystemOutputSamplingRate(uint32_t *sampling_rate) cons
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioSystem::Impl::getOutputSampleFormat(sample_format_type *format) const noexcept
+{
+    if (!format)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*format) = determine_sink_sample_format(init_args_);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
 int AudioSystem::Impl::getOutputLatencyInFrames(uint32_t *latency) const noexcept
 {
     if (!latency)
@@ -1134,6 +1374,36 @@ int AudioSystem::Impl::getParamResamplerQualityLevel(uint32_t *quality_level) co
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioSystem::Impl::getParamLoopBufferMaxDuration(uint32_t *duration_ms) const noexcept
+{
+    if (!duration_ms)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*duration_ms) = init_args_.loop_buffer_max_duration_ms;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSystem::Impl::getParamDecoderBackendType(uint32_t *backend_type) const noexcept
+{
+    if (!backend_type)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*backend_type) = init_args_.decoder_backend_type;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSystem::Impl::getParamHQEqualizerImplType(uint32_t *impl_type) const noexcept
+{
+    if (!impl_type)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*impl_type) = init_args_.hq_equalizer_impl_type;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
 int AudioSystem::Impl::getPreAmp(PreAmp **p_preamp) const noexcept
 {
     if (!p_preamp)
@@ -1160,6 +1430,106 @@ int AudioSystem::Impl::getHQEqualizer(HQEqualizer **p_hq_equalizer) const noexce
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioSystem::Impl::installOptionalModule(uint32_t option) noexcept
+{
+    if (!mixer_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    int result;
+
+    switch (option) {
+    case OSLMP_CONTEXT_OPTION_USE_HQ_EQUALIZER: {
+        if (mixout_effect_hq_equalizer_)
+            return OSLMP_RESULT_SUCCESS;
+
+        std::unique_ptr<HQEqualizer> hq_equalizer;
+
+        result = initMixOutAudioEffects(init_args_, option, output_frame_size_, init_args_.system_out_sampling_rate,
+                                        hq_equalizer);
+
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+
+        result = mixer_->attachMixOutEffect(hq_equalizer.get());
+
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+
+        mixout_effect_hq_equalizer_ = std::move(hq_equalizer);
+    } break;
+    case OSLMP_CONTEXT_OPTION_USE_PREAMP: {
+        if (preamp_)
+            return OSLMP_RESULT_SUCCESS;
+
+        std::unique_ptr<PreAmp> preamp;
+
+        result = initPreAmp(option, preamp, mixer_);
+
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+
+        preamp_ = std::move(preamp);
+    } break;
+    default:
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioSystem::Impl::uninstallOptionalModule(uint32_t option) noexcept
+{
+    if (!mixer_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    int result;
+
+    switch (option) {
+    case OSLMP_CONTEXT_OPTION_USE_HQ_EQUALIZER:
+        if (!mixout_effect_hq_equalizer_)
+            return OSLMP_RESULT_SUCCESS;
+
+        // NOTE: detachMixOutEffect() blocks until the mixer thread releases the effect
+        result = mixer_->detachMixOutEffect(mixout_effect_hq_equalizer_.get());
+
+        if (result != OSLMP_RESULT_SUCCESS)
+            return result;
+
+        mixout_effect_hq_equalizer_.reset();
+        break;
+    case OSLMP_CONTEXT_OPTION_USE_PREAMP:
+        if (!preamp_)
+            return OSLMP_RESULT_SUCCESS;
+
+        preamp_.reset();
+
+        // restore unity gain
+        (void)mixer_->setGlobalPreMixVolumeLevel(1.0f);
+        break;
+    default:
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+EngineStatistics *AudioSystem::Impl::getStatistics() const noexcept { return &statistics_; }
+
+AudioClipCache *AudioSystem::Impl::getClipCache() const noexcept { return &clip_cache_; }
+
+SeekIndexCache *AudioSystem::Impl::getSeekIndexCache() const noexcept { return &seek_index_cache_; }
+
+PolyphaseResamplerCoeffBankCache *AudioSystem::Impl::getResamplerCoeffBankCache() const noexcept
+{
+    return &resampler_coeff_bank_cache_;
+}
+
+AudioSourceWorkerPool *AudioSystem::Impl::getSourceWorkerPool() const noexcept
+{
+    // NOTE: returns nullptr if disabled
+    return (source_worker_pool_.isEnabled()) ? &source_worker_pool_ : nullptr;
+}
+
 int AudioSystem::Impl::getAudioSessionId(int32_t *p_audio_session_id) const noexcept
 {
     if (!p_audio_session_id)
@@ -1173,6 +1543,39 @@ int AudioSystem::Impl::getAudioSessionId(int32_t *p_audio_session_id) const noex
     return OSLMP_RESULT_SUCCESS;
 }
 
+int AudioSystem::Impl::setOfflineRenderOutputCallback(offline_render_output_callback_t callback, void *args) noexcept
+{
+    if (!sink_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (init_args_.sink_backend_type != OSLMP_CONTEXT_SINK_BACKEND_TYPE_NULL)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    // NOTE:
+    // The sink thread calls the callback while holding the mutex,
+    // so no more calls occur after this function returns.
+    utils::pt_lock_guard lock(offline_render_output_mutex_);
+
+    offline_render_output_callback_ = callback;
+    offline_render_output_callback_args_ = args;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void AudioSystem::Impl::sinkBlockConsumerCallback(const void *data, sample_format_type format, uint32_t num_channels,
+                                                  uint32_t num_frames, void *args) noexcept
+{
+    AudioSystem::Impl *thiz = static_cast<AudioSystem::Impl *>(args);
+
+    utils::pt_lock_guard lock(thiz->offline_render_output_mutex_);
+
+    if (thiz->offline_render_output_callback_) {
+        const bool is_float = (format == kAudioSampleFormatType_F32);
+        (*(thiz->offline_render_output_callback_))(data, num_channels, num_frames, is_float,
+                                                   thiz->offline_render_output_callback_args_);
+    }
+}
+
 bool AudioSystem::Impl::check_is_low_latency(const initialize_args_t &args) noexcept
 {
     // NOTE: Normal mixer (not FastMixer) is used if these flags are enabled
@@ -1195,12 +1598,22 @@ bool AudioSystem::Impl::check_use_floating_point_output(const initialize_args_t
     return (args.system_supports_floating_point && args.use_low_latency_if_available);
 }
 
+sample_format_type AudioSystem::Impl::determine_sink_sample_format(const initialize_args_t &args) noexcept
+{
+    return (args.system_supports_floating_point && args.use_floating_point_if_available) ? kAudioSampleFormatType_F32
+                                                                                          : kAudioSampleFormatType_S16;
+}
+
 uint32_t AudioSystem::Impl::determine_output_frame_size(const initialize_args_t &args, bool is_low_latency, bool floating_point) noexcept
 {
     const bool uses_opensl_sink = (args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_OPENSL);
+    const bool uses_null_sink = (args.sink_backend_type == OSLMP_CONTEXT_SINK_BACKEND_TYPE_NULL);
     const int kBufferSizeMultiple = (uses_opensl_sink) ? 1 : 1;
 
-    if (uses_opensl_sink) {
+    if (uses_null_sink) {
+        return calc_android_NormalMixer_FrameCount(args.system_out_frames_per_buffer,
+                                                   args.system_out_sampling_rate / 1000);
+    } else if (uses_opensl_sink) {
         if (is_low_latency) {
             LOGD("uses_opensl_sink = true && is_low_latency = true  / %d", args.system_out_frames_per_buffer);
             return args.system_out_frames_per_buffer;
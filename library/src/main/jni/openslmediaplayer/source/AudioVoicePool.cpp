@@ -0,0 +1,848 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "AudioVoicePool"
+
+#include "oslmp/impl/AudioVoicePool.hpp"
+
+#include <algorithm>
+#include <cstring>
+#include <vector>
+
+#include <cxxporthelper/compiler.hpp>
+#include <cxxporthelper/atomic>
+
+#include <lockfree/lockfree_circulation_buffer.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AudioClipCache.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+namespace oslmp {
+namespace impl {
+
+const float AudioVoicePool::MIN_RATE = 0.5f;
+const float AudioVoicePool::MAX_RATE = 2.0f;
+
+#define VOICE_ID_SLOT_BITS 8
+#define VOICE_ID_SLOT_MASK ((1U << VOICE_ID_SLOT_BITS) - 1)
+#define POSITION_FRAC_BITS 32
+#define POSITION_ONE (static_cast<uint64_t>(1) << POSITION_FRAC_BITS)
+
+namespace {
+
+enum voice_command_type_t {
+    VOICE_COMMAND_PLAY,
+    VOICE_COMMAND_STOP,
+    VOICE_COMMAND_PAUSE,
+    VOICE_COMMAND_RESUME,
+    VOICE_COMMAND_SET_VOLUME,
+    VOICE_COMMAND_SET_RATE,
+    VOICE_COMMAND_SET_LOOP,
+    VOICE_COMMAND_STOP_ALL,
+};
+
+enum voice_state_t {
+    VOICE_STATE_IDLE,
+    VOICE_STATE_PLAYING,
+    VOICE_STATE_PAUSING,  // fading out, then PAUSED
+    VOICE_STATE_PAUSED,
+    VOICE_STATE_STOPPING, // fading out, then IDLE
+};
+
+struct VoiceCommand {
+    voice_command_type_t type;
+    uint32_t slot;
+    uint32_t voice_id;
+    android::sp<AudioClip> clip;   // PLAY
+    const AudioClip *target_clip;  // STOP_ALL (nullptr: all voices)
+    uint32_t num_frames;           // PLAY
+    float volume[2];               // PLAY, SET_VOLUME
+    float rate;                    // PLAY, SET_RATE
+    int32_t loop;                  // PLAY, SET_LOOP
+
+    VoiceCommand()
+        : type(VOICE_COMMAND_STOP), slot(0), voice_id(0), clip(), target_clip(nullptr), num_frames(0), rate(1.0f),
+          loop(0)
+    {
+        volume[0] = 0.0f;
+        volume[1] = 0.0f;
+    }
+};
+
+struct Voice {
+    voice_state_t state;
+    uint32_t voice_id;
+    android::sp<AudioClip> clip; // interleaved stereo
+    uint32_t clip_block_size;    // [frames]
+    uint32_t num_frames;
+    uint64_t position;  // [frames] (32.32 fixed point)
+    uint64_t increment; // [frames] (32.32 fixed point)
+    int32_t loop;
+    bool reached_end;
+    MixingUnit::Context mix_context;
+
+    Voice()
+        : state(VOICE_STATE_IDLE), voice_id(0), clip(), clip_block_size(0), num_frames(0), position(0),
+          increment(POSITION_ONE), loop(0), reached_end(false), mix_context()
+    {
+    }
+};
+
+struct RequestSideSlot {
+    uint32_t voice_id;
+    int32_t priority;
+    uint64_t serial;
+
+    RequestSideSlot() : voice_id(0), priority(0), serial(0) {}
+};
+
+typedef lockfree::lockfree_circulation_buffer<VoiceCommand, AudioVoicePool::COMMAND_QUEUE_SIZE> voice_command_queue_t;
+
+} // anonymous namespace
+
+class AudioVoicePool::Impl {
+public:
+    Impl();
+    ~Impl();
+
+    int initialize(const initialize_args_t &args) noexcept;
+
+    uint32_t getNumVoices() const noexcept { return num_voices_; }
+
+    int play(const play_args_t &args, uint32_t *voice_id) noexcept;
+    int postVoiceCommand(uint32_t voice_id, VoiceCommand &cmd) noexcept;
+    int setPriority(uint32_t voice_id, int32_t priority) noexcept;
+    int stopAll(const AudioClip *clip) noexcept;
+    bool isActive() const noexcept;
+
+    uint32_t mixerThreadRender(MixingUnit::Context *contexts[], const MixingUnit::in_data_type *srcs[],
+                               uint32_t max_sources, uint32_t size_in_frames) noexcept;
+    void mixerThreadCommit() noexcept;
+
+private:
+    bool isRequestSideSlotBusy(uint32_t slot) const noexcept;
+    int selectSlot(int32_t priority) const noexcept;
+    bool checkVoiceId(uint32_t voice_id) const noexcept;
+    bool enqueueCommand(VoiceCommand &cmd) noexcept;
+
+    void mixerThreadApplyCommand(VoiceCommand &cmd) noexcept;
+    void mixerThreadStopVoice(Voice &voice) noexcept;
+    void mixerThreadStealVoice(Voice &voice) noexcept;
+    void mixerThreadFinishVoice(uint32_t slot) noexcept;
+    static void mixerThreadResetVoice(Voice &voice) noexcept;
+    void mixerThreadUpdateNumActiveVoices() noexcept;
+    static void renderVoice(Voice &voice, float *CXXPH_RESTRICT dest, uint32_t size_in_frames) noexcept;
+
+    static bool isRenderingState(voice_state_t state) noexcept
+    {
+        return (state == VOICE_STATE_PLAYING) || (state == VOICE_STATE_PAUSING) || (state == VOICE_STATE_STOPPING);
+    }
+
+    static uint64_t rateToIncrement(float rate) noexcept
+    {
+        const float r = (std::min)((std::max)(rate, AudioVoicePool::MIN_RATE), AudioVoicePool::MAX_RATE);
+        return static_cast<uint64_t>(static_cast<double>(r) * POSITION_ONE);
+    }
+
+private:
+    uint32_t num_voices_;
+    uint32_t block_size_in_frames_;
+
+    // request side
+    mutable utils::pt_mutex mutex_;
+    RequestSideSlot req_slots_[NUM_MAX_VOICES];
+    uint32_t voice_id_counter_;
+    uint64_t serial_counter_;
+    voice_command_queue_t command_queue_;
+
+    // shared
+    std::atomic<uint32_t> finished_voice_ids_[NUM_MAX_VOICES];
+    std::atomic<uint32_t> num_active_voices_;
+
+    // mixer side
+    Voice voices_[NUM_MAX_VOICES];
+    Voice tail_voices_[NUM_MAX_VOICES]; // stolen voices which are fading out
+    std::vector<float> render_buffer_;  // [voices_ | tail_voices_]
+};
+
+//
+// AudioVoicePool
+//
+AudioVoicePool::AudioVoicePool() : impl_(new (std::nothrow) Impl()) {}
+
+AudioVoicePool::~AudioVoicePool() {}
+
+int AudioVoicePool::initialize(const initialize_args_t &args) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->initialize(args);
+}
+
+uint32_t AudioVoicePool::getNumVoices() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return 0;
+    return impl_->getNumVoices();
+}
+
+int AudioVoicePool::play(const play_args_t &args, uint32_t *voice_id) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->play(args, voice_id);
+}
+
+int AudioVoicePool::stop(uint32_t voice_id) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    VoiceCommand cmd;
+    cmd.type = VOICE_COMMAND_STOP;
+    return impl_->postVoiceCommand(voice_id, cmd);
+}
+
+int AudioVoicePool::pause(uint32_t voice_id) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    VoiceCommand cmd;
+    cmd.type = VOICE_COMMAND_PAUSE;
+    return impl_->postVoiceCommand(voice_id, cmd);
+}
+
+int AudioVoicePool::resume(uint32_t voice_id) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    VoiceCommand cmd;
+    cmd.type = VOICE_COMMAND_RESUME;
+    return impl_->postVoiceCommand(voice_id, cmd);
+}
+
+int AudioVoicePool::setVolume(uint32_t voice_id, float left_volume, float right_volume) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (!(left_volume >= 0.0f && right_volume >= 0.0f))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    VoiceCommand cmd;
+    cmd.type = VOICE_COMMAND_SET_VOLUME;
+    cmd.volume[0] = left_volume;
+    cmd.volume[1] = right_volume;
+    return impl_->postVoiceCommand(voice_id, cmd);
+}
+
+int AudioVoicePool::setRate(uint32_t voice_id, float rate) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (!(rate >= MIN_RATE && rate <= MAX_RATE))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    VoiceCommand cmd;
+    cmd.type = VOICE_COMMAND_SET_RATE;
+    cmd.rate = rate;
+    return impl_->postVoiceCommand(voice_id, cmd);
+}
+
+int AudioVoicePool::setLoop(uint32_t voice_id, int32_t loop) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (loop < -1)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    VoiceCommand cmd;
+    cmd.type = VOICE_COMMAND_SET_LOOP;
+    cmd.loop = loop;
+    return impl_->postVoiceCommand(voice_id, cmd);
+}
+
+int AudioVoicePool::setPriority(uint32_t voice_id, int32_t priority) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->setPriority(voice_id, priority);
+}
+
+int AudioVoicePool::stopAll(const AudioClip *clip) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->stopAll(clip);
+}
+
+bool AudioVoicePool::isActive() const noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return false;
+    return impl_->isActive();
+}
+
+uint32_t AudioVoicePool::mixerThreadRender(MixingUnit::Context *contexts[], const MixingUnit::in_data_type *srcs[],
+                                           uint32_t max_sources, uint32_t size_in_frames) noexcept
+{
+    return impl_->mixerThreadRender(contexts, srcs, max_sources, size_in_frames);
+}
+
+void AudioVoicePool::mixerThreadCommit() noexcept { impl_->mixerThreadCommit(); }
+
+//
+// AudioVoicePool::Impl
+//
+AudioVoicePool::Impl::Impl()
+    : num_voices_(0), block_size_in_frames_(0), mutex_(), voice_id_counter_(0), serial_counter_(0), command_queue_(),
+      num_active_voices_(0), render_buffer_()
+{
+    for (auto &id : finished_voice_ids_) {
+        id.store(0U, std::memory_order_relaxed);
+    }
+}
+
+AudioVoicePool::Impl::~Impl() {}
+
+int AudioVoicePool::Impl::initialize(const initialize_args_t &args) noexcept
+{
+    if (num_voices_ != 0)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (!(args.num_voices >= 1 && args.num_voices <= NUM_MAX_VOICES))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (args.block_size_in_frames == 0)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    try
+    {
+        render_buffer_.resize(static_cast<size_t>(args.num_voices) * 2 * args.block_size_in_frames * 2);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    num_voices_ = args.num_voices;
+    block_size_in_frames_ = args.block_size_in_frames;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool AudioVoicePool::Impl::isRequestSideSlotBusy(uint32_t slot) const noexcept
+{
+    const uint32_t id = req_slots_[slot].voice_id;
+    return (id != 0) && (finished_voice_ids_[slot].load(std::memory_order_acquire) != id);
+}
+
+int AudioVoicePool::Impl::selectSlot(int32_t priority) const noexcept
+{
+    int victim = -1;
+
+    for (uint32_t i = 0; i < num_voices_; ++i) {
+        if (!isRequestSideSlotBusy(i)) {
+            return static_cast<int>(i);
+        }
+
+        if (victim < 0) {
+            victim = static_cast<int>(i);
+        } else {
+            const RequestSideSlot &s = req_slots_[i];
+            const RequestSideSlot &v = req_slots_[victim];
+
+            if ((s.priority < v.priority) || (s.priority == v.priority && s.serial < v.serial)) {
+                victim = static_cast<int>(i);
+            }
+        }
+    }
+
+    // the lowest priority voice is stolen only if its priority is not higher than the new one
+    if (victim >= 0 && req_slots_[victim].priority > priority) {
+        return -1;
+    }
+
+    return victim;
+}
+
+bool AudioVoicePool::Impl::checkVoiceId(uint32_t voice_id) const noexcept
+{
+    const uint32_t slot = (voice_id & VOICE_ID_SLOT_MASK);
+    return (voice_id != 0) && (slot < num_voices_) && (req_slots_[slot].voice_id == voice_id);
+}
+
+bool AudioVoicePool::Impl::enqueueCommand(VoiceCommand &cmd) noexcept
+{
+    voice_command_queue_t::index_t lock_index = voice_command_queue_t::INVALID_INDEX;
+
+    if (CXXPH_UNLIKELY(!command_queue_.lock_write(lock_index))) {
+        return false;
+    }
+
+    command_queue_.at(lock_index) = cmd;
+    command_queue_.unlock_write(lock_index);
+
+    return true;
+}
+
+int AudioVoicePool::Impl::play(const play_args_t &args, uint32_t *voice_id) noexcept
+{
+    if (CXXPH_UNLIKELY(!voice_id))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*voice_id) = 0;
+
+    if (CXXPH_UNLIKELY(num_voices_ == 0))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (!args.clip.get() || args.clip->getNumChannels() != 2 || args.num_frames == 0 ||
+        args.num_frames > (args.clip->getNumBlocks() * args.clip->getBlockSizeInFrames()))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!(args.left_volume >= 0.0f && args.right_volume >= 0.0f && args.rate >= MIN_RATE && args.rate <= MAX_RATE &&
+          args.loop >= -1))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_lock_guard lock(mutex_);
+
+    const int slot = selectSlot(args.priority);
+
+    if (slot < 0)
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    // make a new voice ID (never be 0)
+    voice_id_counter_ = (voice_id_counter_ + 1) & (0xFFFFFFFFU >> VOICE_ID_SLOT_BITS);
+    if (voice_id_counter_ == 0) {
+        voice_id_counter_ = 1;
+    }
+    const uint32_t id = (voice_id_counter_ << VOICE_ID_SLOT_BITS) | static_cast<uint32_t>(slot);
+
+    VoiceCommand cmd;
+
+    cmd.type = VOICE_COMMAND_PLAY;
+    cmd.slot = static_cast<uint32_t>(slot);
+    cmd.voice_id = id;
+    cmd.clip = args.clip;
+    cmd.num_frames = args.num_frames;
+    cmd.volume[0] = args.left_volume;
+    cmd.volume[1] = args.right_volume;
+    cmd.rate = args.rate;
+    cmd.loop = args.loop;
+
+    if (!enqueueCommand(cmd))
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    RequestSideSlot &s = req_slots_[slot];
+
+    s.voice_id = id;
+    s.priority = args.priority;
+    s.serial = (++serial_counter_);
+
+    (*voice_id) = id;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioVoicePool::Impl::postVoiceCommand(uint32_t voice_id, VoiceCommand &cmd) noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    if (!checkVoiceId(voice_id)) {
+        // the voice has already been stolen (same as the SoundPool, this is not an error)
+        return (voice_id != 0) ? OSLMP_RESULT_SUCCESS : OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    cmd.slot = (voice_id & VOICE_ID_SLOT_MASK);
+    cmd.voice_id = voice_id;
+
+    if (!enqueueCommand(cmd))
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int AudioVoicePool::Impl::setPriority(uint32_t voice_id, int32_t priority) noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    if (checkVoiceId(voice_id)) {
+        req_slots_[voice_id & VOICE_ID_SLOT_MASK].priority = priority;
+    }
+
+    return (voice_id != 0) ? OSLMP_RESULT_SUCCESS : OSLMP_RESULT_ILLEGAL_ARGUMENT;
+}
+
+int AudioVoicePool::Impl::stopAll(const AudioClip *clip) noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    if (CXXPH_UNLIKELY(num_voices_ == 0))
+        return OSLMP_RESULT_SUCCESS;
+
+    VoiceCommand cmd;
+
+    cmd.type = VOICE_COMMAND_STOP_ALL;
+    cmd.target_clip = clip;
+
+    if (!enqueueCommand(cmd))
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool AudioVoicePool::Impl::isActive() const noexcept
+{
+    return (!command_queue_.empty()) || (num_active_voices_.load(std::memory_order_acquire) != 0);
+}
+
+uint32_t AudioVoicePool::Impl::mixerThreadRender(MixingUnit::Context *contexts[],
+                                                 const MixingUnit::in_data_type *srcs[], uint32_t max_sources,
+                                                 uint32_t size_in_frames) noexcept
+{
+    // apply pending commands
+    {
+        voice_command_queue_t::index_t lock_index = voice_command_queue_t::INVALID_INDEX;
+
+        while (command_queue_.lock_read(lock_index)) {
+            VoiceCommand &cmd = command_queue_.at(lock_index);
+
+            mixerThreadApplyCommand(cmd);
+
+            // NOTE: the owner retains the clip, so this never releases the last reference
+            cmd.clip.clear();
+
+            command_queue_.unlock_read(lock_index);
+        }
+    }
+
+    mixerThreadUpdateNumActiveVoices();
+
+    if (CXXPH_UNLIKELY(size_in_frames > block_size_in_frames_))
+        return 0;
+
+    // render voices
+    uint32_t n = 0;
+
+    for (uint32_t i = 0; i < num_voices_ && n < max_sources; ++i) {
+        Voice &voice = voices_[i];
+
+        if (!isRenderingState(voice.state))
+            continue;
+
+        float *dest = &render_buffer_[static_cast<size_t>(i) * block_size_in_frames_ * 2];
+
+        renderVoice(voice, dest, size_in_frames);
+
+        contexts[n] = &(voice.mix_context);
+        srcs[n] = dest;
+        ++n;
+    }
+
+    // render the stolen voices (fading out)
+    for (uint32_t i = 0; i < num_voices_ && n < max_sources; ++i) {
+        Voice &voice = tail_voices_[i];
+
+        if (voice.state != VOICE_STATE_STOPPING)
+            continue;
+
+        float *dest = &render_buffer_[static_cast<size_t>(num_voices_ + i) * block_size_in_frames_ * 2];
+
+        renderVoice(voice, dest, size_in_frames);
+
+        contexts[n] = &(voice.mix_context);
+        srcs[n] = dest;
+        ++n;
+    }
+
+    return n;
+}
+
+void AudioVoicePool::Impl::mixerThreadCommit() noexcept
+{
+    for (uint32_t i = 0; i < num_voices_; ++i) {
+        Voice &voice = voices_[i];
+
+        if (!isRenderingState(voice.state))
+            continue;
+
+        const bool fade_completed = (voice.mix_context.phase >= 1.0f);
+
+        switch (voice.state) {
+        case VOICE_STATE_PLAYING:
+            if (voice.mix_context.mode == MixingUnit::MODE_SHORT_FADE_IN && fade_completed) {
+                voice.mix_context.mode = MixingUnit::MODE_ADD;
+            }
+            if (voice.reached_end) {
+                mixerThreadFinishVoice(i);
+            }
+            break;
+        case VOICE_STATE_PAUSING:
+            if (voice.reached_end) {
+                mixerThreadFinishVoice(i);
+            } else if (fade_completed) {
+                voice.state = VOICE_STATE_PAUSED;
+                voice.mix_context.mode = MixingUnit::MODE_MUTE;
+            }
+            break;
+        case VOICE_STATE_STOPPING:
+            if (voice.reached_end || fade_completed) {
+                mixerThreadFinishVoice(i);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    for (uint32_t i = 0; i < num_voices_; ++i) {
+        Voice &voice = tail_voices_[i];
+
+        if (voice.state == VOICE_STATE_STOPPING && (voice.reached_end || voice.mix_context.phase >= 1.0f)) {
+            mixerThreadResetVoice(voice);
+        }
+    }
+
+    mixerThreadUpdateNumActiveVoices();
+}
+
+void AudioVoicePool::Impl::mixerThreadApplyCommand(VoiceCommand &cmd) noexcept
+{
+    if (cmd.type == VOICE_COMMAND_STOP_ALL) {
+        for (uint32_t i = 0; i < num_voices_; ++i) {
+            Voice &voice = voices_[i];
+            if (voice.state != VOICE_STATE_IDLE && (!cmd.target_clip || voice.clip.get() == cmd.target_clip)) {
+                mixerThreadStopVoice(voice);
+                if (voice.state == VOICE_STATE_IDLE) {
+                    finished_voice_ids_[i].store(voice.voice_id, std::memory_order_release);
+                }
+            }
+        }
+        return;
+    }
+
+    if (CXXPH_UNLIKELY(cmd.slot >= num_voices_))
+        return;
+
+    Voice &voice = voices_[cmd.slot];
+
+    if (cmd.type == VOICE_COMMAND_PLAY) {
+        if (isRenderingState(voice.state)) {
+            mixerThreadStealVoice(voice);
+        }
+
+        voice.state = VOICE_STATE_PLAYING;
+        voice.voice_id = cmd.voice_id;
+        voice.clip = cmd.clip;
+        voice.clip_block_size = cmd.clip->getBlockSizeInFrames();
+        voice.num_frames = cmd.num_frames;
+        voice.position = 0;
+        voice.increment = rateToIncrement(cmd.rate);
+        voice.loop = cmd.loop;
+        voice.reached_end = false;
+        voice.mix_context.mode = MixingUnit::MODE_ADD;
+        voice.mix_context.phase = 0.0f;
+        voice.mix_context.volume[0] = cmd.volume[0];
+        voice.mix_context.volume[1] = cmd.volume[1];
+        return;
+    }
+
+    if (voice.voice_id != cmd.voice_id || voice.state == VOICE_STATE_IDLE)
+        return;
+
+    switch (cmd.type) {
+    case VOICE_COMMAND_STOP:
+        mixerThreadStopVoice(voice);
+        if (voice.state == VOICE_STATE_IDLE) {
+            finished_voice_ids_[cmd.slot].store(voice.voice_id, std::memory_order_release);
+        }
+        break;
+    case VOICE_COMMAND_PAUSE:
+        if (voice.state == VOICE_STATE_PLAYING) {
+            const float phase = (voice.mix_context.mode == MixingUnit::MODE_SHORT_FADE_IN)
+                                    ? (1.0f - voice.mix_context.phase)
+                                    : 0.0f;
+            voice.state = VOICE_STATE_PAUSING;
+            voice.mix_context.mode = MixingUnit::MODE_SHORT_FADE_OUT;
+            voice.mix_context.phase = phase;
+        }
+        break;
+    case VOICE_COMMAND_RESUME:
+        if (voice.state == VOICE_STATE_PAUSED || voice.state == VOICE_STATE_PAUSING) {
+            const float phase = (voice.state == VOICE_STATE_PAUSING) ? (1.0f - voice.mix_context.phase) : 0.0f;
+            voice.state = VOICE_STATE_PLAYING;
+            voice.mix_context.mode = MixingUnit::MODE_SHORT_FADE_IN;
+            voice.mix_context.phase = phase;
+        }
+        break;
+    case VOICE_COMMAND_SET_VOLUME:
+        voice.mix_context.volume[0] = cmd.volume[0];
+        voice.mix_context.volume[1] = cmd.volume[1];
+        break;
+    case VOICE_COMMAND_SET_RATE:
+        voice.increment = rateToIncrement(cmd.rate);
+        break;
+    case VOICE_COMMAND_SET_LOOP:
+        voice.loop = cmd.loop;
+        break;
+    default:
+        break;
+    }
+}
+
+void AudioVoicePool::Impl::mixerThreadStopVoice(Voice &voice) noexcept
+{
+    switch (voice.state) {
+    case VOICE_STATE_PLAYING: {
+        const float phase =
+            (voice.mix_context.mode == MixingUnit::MODE_SHORT_FADE_IN) ? (1.0f - voice.mix_context.phase) : 0.0f;
+        voice.state = VOICE_STATE_STOPPING;
+        voice.mix_context.mode = MixingUnit::MODE_SHORT_FADE_OUT;
+        voice.mix_context.phase = phase;
+    } break;
+    case VOICE_STATE_PAUSING:
+        // continue fading out
+        voice.state = VOICE_STATE_STOPPING;
+        break;
+    case VOICE_STATE_PAUSED:
+        voice.state = VOICE_STATE_IDLE;
+        voice.clip.clear();
+        break;
+    default:
+        break;
+    }
+}
+
+void AudioVoicePool::Impl::mixerThreadStealVoice(Voice &voice) noexcept
+{
+    // the stolen voice keeps fading out in a tail slot, so that it is not cut off
+    for (uint32_t i = 0; i < num_voices_; ++i) {
+        Voice &tail = tail_voices_[i];
+
+        if (tail.state == VOICE_STATE_IDLE) {
+            tail = voice;
+            mixerThreadStopVoice(tail);
+            return;
+        }
+    }
+
+    // NOTE: all tail slots are busy (stolen several times within a block), the voice is cut off
+}
+
+void AudioVoicePool::Impl::mixerThreadFinishVoice(uint32_t slot) noexcept
+{
+    Voice &voice = voices_[slot];
+
+    mixerThreadResetVoice(voice);
+
+    finished_voice_ids_[slot].store(voice.voice_id, std::memory_order_release);
+}
+
+void AudioVoicePool::Impl::mixerThreadResetVoice(Voice &voice) noexcept
+{
+    voice.state = VOICE_STATE_IDLE;
+    voice.clip.clear();
+    voice.mix_context.mode = MixingUnit::MODE_MUTE;
+}
+
+void AudioVoicePool::Impl::mixerThreadUpdateNumActiveVoices() noexcept
+{
+    uint32_t n = 0;
+
+    for (uint32_t i = 0; i < num_voices_; ++i) {
+        if (isRenderingState(voices_[i].state)) {
+            ++n;
+        }
+        if (tail_voices_[i].state != VOICE_STATE_IDLE) {
+            ++n;
+        }
+    }
+
+    num_active_voices_.store(n, std::memory_order_release);
+}
+
+void AudioVoicePool::Impl::renderVoice(Voice &voice, float *CXXPH_RESTRICT dest, uint32_t size_in_frames) noexcept
+{
+    const AudioClip *clip = voice.clip.get();
+    const uint32_t block_size = voice.clip_block_size;
+    const uint32_t num_frames = voice.num_frames;
+    const uint64_t end_position = static_cast<uint64_t>(num_frames) << POSITION_FRAC_BITS;
+    uint32_t n = 0;
+
+    while (n < size_in_frames) {
+        if (voice.position >= end_position) {
+            if (voice.loop != 0) {
+                if (voice.loop > 0) {
+                    voice.loop -= 1;
+                }
+                voice.position -= end_position;
+                continue;
+            }
+
+            // end of the data
+            ::memset(&dest[n * 2], 0, sizeof(float) * 2 * (size_in_frames - n));
+            voice.reached_end = true;
+            break;
+        }
+
+        // NOTE: the clip data is contiguous only within a block
+        const uint32_t ipos = static_cast<uint32_t>(voice.position >> POSITION_FRAC_BITS);
+        const uint32_t offset = ipos % block_size;
+        const float *CXXPH_RESTRICT src = clip->getBlock(ipos / block_size) + (offset * 2);
+
+        if (voice.increment == POSITION_ONE && (voice.position & (POSITION_ONE - 1)) == 0) {
+            // fast path (original rate)
+            const uint32_t count =
+                (std::min)((std::min)((size_in_frames - n), (num_frames - ipos)), (block_size - offset));
+
+            ::memcpy(&dest[n * 2], src, sizeof(float) * 2 * count);
+
+            voice.position += (static_cast<uint64_t>(count) << POSITION_FRAC_BITS);
+            n += count;
+        } else {
+            // linear interpolation
+            const uint32_t inext = ipos + 1;
+            const float *next;
+
+            if (inext >= num_frames) {
+                next = (voice.loop != 0) ? clip->getBlock(0) : nullptr;
+            } else {
+                next = ((offset + 1) < block_size) ? (src + 2) : clip->getBlock(inext / block_size);
+            }
+
+            const float frac =
+                static_cast<float>(voice.position & (POSITION_ONE - 1)) * (1.0f / static_cast<float>(POSITION_ONE));
+            const float l0 = src[0];
+            const float r0 = src[1];
+            const float l1 = (next) ? next[0] : 0.0f;
+            const float r1 = (next) ? next[1] : 0.0f;
+
+            dest[n * 2 + 0] = l0 + (l1 - l0) * frac;
+            dest[n * 2 + 1] = r0 + (r1 - r0) * frac;
+
+            voice.position += voice.increment;
+            n += 1;
+        }
+    }
+}
+
+} // namespace impl
+} // namespace oslmp
@@ -130,6 +130,7 @@ public:
     void onDetachedFromMixerThread() noexcept;
     int pollFromMixerThread() noexcept;
     int process(f32_stereo_frame_t *data, uint32_t num_frames) noexcept;
+    bool isBypassed() const noexcept;
 
 protected:
     virtual void onSetup() noexcept {}
@@ -247,6 +248,7 @@ public:
     void onDetachedFromMixerThread() noexcept;
     int pollFromMixerThread() noexcept;
     int process(float *data, uint32_t num_channels, uint32_t num_frames) noexcept;
+    bool isBypassedFromMixerThread() const noexcept;
 
 private:
     void recycleRequestItems() noexcept;
@@ -462,6 +464,13 @@ int HQEqualizer::process(float *data, uint32_t num_channels, uint32_t num_frames
     return impl_->process(data, num_channels, num_frames);
 }
 
+bool HQEqualizer::isBypassedFromMixerThread() const noexcept
+{
+    if (!impl_)
+        return true;
+    return impl_->isBypassedFromMixerThread();
+}
+
 //
 // HQEqualizer::Impl
 //
@@ -761,6 +770,8 @@ int HQEqualizer::Impl::process(float *data, uint32_t num_channels, uint32_t num_
     return processor_->process(reinterpret_cast<f32_stereo_frame_t *>(data), num_frames);
 }
 
+bool HQEqualizer::Impl::isBypassedFromMixerThread() const noexcept { return processor_->isBypassed(); }
+
 //
 // BaseEqualizerProcessor
 //
@@ -849,6 +860,12 @@ int BaseEqualizerProcessor::process(f32_stereo_frame_t *data, uint32_t num_frame
     return OSLMP_RESULT_SUCCESS;
 }
 
+bool BaseEqualizerProcessor::isBypassed() const noexcept
+{
+    // no band is processed while disabled, except the bands fading to the flat response
+    return !(current_.enabled) && (bitmap_updating_bands_ == 0);
+}
+
 //
 // PeakingFilterEqualizerProcessor
 //
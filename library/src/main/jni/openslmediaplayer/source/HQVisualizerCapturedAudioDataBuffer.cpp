@@ -160,7 +160,7 @@ bool HQVisualizerCapturedAudioDataBuffer::put_captured_data(uint32_t num_channel
 
 bool HQVisualizerCapturedAudioDataBuffer::get_captured_data(uint32_t num_frames, uint32_t read_rate,
                                                             uint32_t *num_channels, uint32_t *sampling_rate,
-                                                            const float **data) noexcept
+                                                            const float **data, timespec *captured_time) noexcept
 {
 
     if (CXXPH_UNLIKELY(!(num_frames <= max_read_size_in_frames_)))
@@ -169,12 +169,13 @@ bool HQVisualizerCapturedAudioDataBuffer::get_captured_data(uint32_t num_frames,
     if (CXXPH_UNLIKELY(read_rate == 0))
         return false;
 
-    if (CXXPH_UNLIKELY(!(num_channels && sampling_rate && data)))
+    if (CXXPH_UNLIKELY(!(num_channels && sampling_rate && data && captured_time)))
         return false;
 
     (*num_channels) = 0;
     (*sampling_rate) = 0;
     (*data) = nullptr;
+    (*captured_time) = utils::timespec_utils::ZERO();
 
     if (CXXPH_UNLIKELY(!buffer_))
         return false;
@@ -228,6 +229,7 @@ bool HQVisualizerCapturedAudioDataBuffer::get_captured_data(uint32_t num_frames,
         (*num_channels) = buffer_num_channels_;
         (*sampling_rate) = sampling_rate_;
         (*data) = &buffer_[buffer_num_channels_ * read_pos_];
+        (*captured_time) = calc_captured_time(read_pos_ + num_frames);
 
         dbg_read_counter_ += 1;
 
@@ -317,6 +319,29 @@ void HQVisualizerCapturedAudioDataBuffer::copy_to_buffer(uint32_t num_channels,
     }
 }
 
+timespec HQVisualizerCapturedAudioDataBuffer::calc_captured_time(uint32_t end_pos) const noexcept
+{
+    // NOTE:
+    // write_time_ is the time when the mixer wrote the frame just before write_pos_,
+    // so the frames between end_pos and write_pos_ were written after the requested frame.
+    int32_t num_newer_frames = static_cast<int32_t>(write_pos_) - static_cast<int32_t>(end_pos);
+
+    num_newer_frames %= static_cast<int32_t>(buffer_size_in_frames_);
+    if (num_newer_frames < 0)
+        num_newer_frames += buffer_size_in_frames_;
+
+    const int64_t write_time_ns = static_cast<int64_t>(write_time_.tv_sec) * 1000000000LL + write_time_.tv_nsec;
+    const int64_t newer_frames_ns = (static_cast<int64_t>(num_newer_frames) * 1000000000000LL) / sampling_rate_;
+    const int64_t captured_time_ns = write_time_ns - newer_frames_ns;
+
+    timespec t;
+
+    t.tv_sec = static_cast<time_t>(captured_time_ns / 1000000000LL);
+    t.tv_nsec = static_cast<long>(captured_time_ns % 1000000000LL);
+
+    return t;
+}
+
 void HQVisualizerCapturedAudioDataBuffer::set_output_latency(uint32_t latency_in_frames) noexcept
 {
     utils::pt_lock_guard lock(syncobj_);
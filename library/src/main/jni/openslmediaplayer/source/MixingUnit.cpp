@@ -20,11 +20,14 @@
 
 #include <limits>
 
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
 #include <cxxporthelper/memory>
 #include <cxxporthelper/cmath>
 #include <cxxporthelper/cstdint>
 #include <cxxporthelper/compiler.hpp>
 #include <cxxporthelper/aligned_memory.hpp>
+#include <cxxporthelper/atomic>
 
 #include <cxxdasp/utils/utils.hpp>
 #include <cxxdasp/utils/fast_sincos_generator.hpp>
@@ -33,34 +36,122 @@
 #include <cxxdasp/mixer/mixer.hpp>
 #include <cxxdasp/mixer/mixer_core_operators.hpp>
 
+#if ((CXXPH_TARGET_ARCH == CXXPH_ARCH_ARM) || (CXXPH_TARGET_ARCH == CXXPH_ARCH_ARM64)) &&                              \
+    CXXPH_COMPILER_SUPPORTS_ARM_NEON
+#define OSLMP_MIXING_UNIT_USE_NEON 1
+#include <arm_neon.h>
+#elif(CXXPH_TARGET_ARCH == CXXPH_ARCH_I386) || (CXXPH_TARGET_ARCH == CXXPH_ARCH_X86_64)
+#define OSLMP_MIXING_UNIT_USE_SSE 1
+#include <xmmintrin.h>
+#endif
+
 #include <loghelper/loghelper.h>
 
 #include "oslmp/impl/MixedOutputAudioEffect.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+#include "oslmp/utils/timespec_utils.hpp"
 
 namespace oslmp {
 namespace impl {
 
+namespace {
+
+// NOTE:
+// dest[i] = (accumulate ? dest[i] : 0) + sum_k(src[k][i] * volume[k])
+// The destination is read and written only once for NSources sources.
+template <int NSources>
+void accumulate_f32_stereo(float *CXXPH_RESTRICT dest, const float *const *CXXPH_RESTRICT src,
+                           const float (*volume)[2], uint32_t size_in_frames, bool accumulate) noexcept
+{
+    uint32_t i = 0;
+    const uint32_t n = size_in_frames * 2;
+
+#if OSLMP_MIXING_UNIT_USE_NEON
+    float32x4_t vol[NSources];
+
+    for (int k = 0; k < NSources; ++k) {
+        const float32x2_t v = vld1_f32(volume[k]);
+        vol[k] = vcombine_f32(v, v);
+    }
+
+    for (; (i + 4) <= n; i += 4) {
+        float32x4_t acc = (accumulate) ? vld1q_f32(&dest[i]) : vdupq_n_f32(0.0f);
+
+        for (int k = 0; k < NSources; ++k) {
+            acc = vmlaq_f32(acc, vld1q_f32(&src[k][i]), vol[k]);
+        }
+
+        vst1q_f32(&dest[i], acc);
+    }
+#elif OSLMP_MIXING_UNIT_USE_SSE
+    __m128 vol[NSources];
+
+    for (int k = 0; k < NSources; ++k) {
+        vol[k] = _mm_setr_ps(volume[k][0], volume[k][1], volume[k][0], volume[k][1]);
+    }
+
+    for (; (i + 4) <= n; i += 4) {
+        __m128 acc = (accumulate) ? _mm_loadu_ps(&dest[i]) : _mm_setzero_ps();
+
+        for (int k = 0; k < NSources; ++k) {
+            acc = _mm_add_ps(acc, _mm_mul_ps(_mm_loadu_ps(&src[k][i]), vol[k]));
+        }
+
+        _mm_storeu_ps(&dest[i], acc);
+    }
+#endif
+
+    // remains
+    for (; i < n; i += 2) {
+        float acc_l = (accumulate) ? dest[i + 0] : 0.0f;
+        float acc_r = (accumulate) ? dest[i + 1] : 0.0f;
+
+        for (int k = 0; k < NSources; ++k) {
+            acc_l += src[k][i + 0] * volume[k][0];
+            acc_r += src[k][i + 1] * volume[k][1];
+        }
+
+        dest[i + 0] = acc_l;
+        dest[i + 1] = acc_r;
+    }
+}
+
+} // anonymous namespace
+
 class FadeTable {
 public:
-    FadeTable() : table_(), size_() {}
+    FadeTable() : table_(), size_(), curve_(MixingUnit::FADE_CURVE_RAISED_COSINE) {}
     ~FadeTable() {}
 
-    bool initialize(uint32_t size) noexcept;
+    bool initialize(uint32_t size, MixingUnit::fade_curve_t curve = MixingUnit::FADE_CURVE_RAISED_COSINE) noexcept;
 
     const float *table() const noexcept { return table_.get(); }
 
     uint32_t size() const noexcept { return size_; }
 
+    MixingUnit::fade_curve_t curve() const noexcept { return curve_; }
+
     explicit operator bool() const noexcept { return static_cast<bool>(table_); }
 
+    void release() noexcept
+    {
+        table_.reset();
+        size_ = 0;
+    }
+
     const float &operator[](int i) const { return table_[i]; }
 
 private:
     static void makeFadeTable(float *table, uint32_t n) noexcept;
+    static void makeLinearFadeTable(float *table, uint32_t n) noexcept;
+    static void makeEqualPowerFadeTable(float *table, uint32_t n) noexcept;
+    static void makeLogarithmicFadeTable(float *table, uint32_t n) noexcept;
+    static void makeSCurveFadeTable(float *table, uint32_t n) noexcept;
 
 private:
     std::unique_ptr<float[]> table_;
     uint32_t size_;
+    MixingUnit::fade_curve_t curve_;
 };
 
 class MixingUnit::Impl {
@@ -79,6 +170,11 @@ public:
     bool end() noexcept;
 
     bool mix(Context *context, const in_data_type *src, uint32_t size_in_frames) noexcept;
+    bool mix(Context *contexts[], const in_data_type *srcs[], uint32_t num_sources, uint32_t size_in_frames) noexcept;
+
+    int registerFadeProfile(fade_curve_t curve, uint32_t duration_ms, uint32_t *profile) noexcept;
+    int unregisterFadeProfile(uint32_t profile) noexcept;
+    bool shareFadeProfiles(Impl &owner) noexcept;
 
 private:
     typedef cxxdasp::datatype::s16_stereo_frame_t s16_stereo_frame_t;
@@ -103,6 +199,16 @@ private:
 #endif
 
     bool prepared() const noexcept;
+    bool checkSourceParams(const Context *context, const in_data_type *src, uint32_t size_in_frames) const noexcept;
+    bool beginMix() noexcept;
+
+    void mixAddMultiple(const float *const *srcs, const float (*volumes)[2], uint32_t num_sources,
+                        uint32_t size_in_frames, bool first_mix) noexcept;
+
+    const FadeTable *acquireProfileFadeTable(Context *context) noexcept;
+    void releaseProfileFadeTable(uint32_t index) noexcept;
+    void checkRetiredFadeProfiles() noexcept;
+    void notifyFadeProfileWaiter() noexcept;
 
     bool mixMute(Context *context, f32_stereo_frame_t *CXXPH_RESTRICT mix_buff,
                  const f32_stereo_frame_t *CXXPH_RESTRICT src, uint32_t size_in_frames, bool first_mix) const noexcept;
@@ -135,6 +241,28 @@ private:
     FadeTable short_fade_table_;
     FadeTable long_fade_table_;
 
+    // NOTE:
+    // The table of a registered profile is immutable and readable from the mixer thread.
+    // - fade_profile_ids_: the generation tagged id of the registered profile (0: free)
+    // - fade_profile_active_: new fades can latch the table
+    // - fade_profile_readers_: the mixer thread counts itself while using the table
+    // - fade_profile_used_: the table was used by a latched fade in the current block
+    // - fade_profile_quiescent_: the retired (inactive) table was not used in a whole block
+    // The table is released after the profile is retired, the latched fades are finished
+    // and no reader is left.
+    FadeTable fade_profiles_[NUM_MAX_FADE_PROFILES];
+    uint32_t fade_profile_refs_[NUM_MAX_FADE_PROFILES];
+    uint32_t fade_profile_generations_[NUM_MAX_FADE_PROFILES];
+    std::atomic<uint32_t> fade_profile_ids_[NUM_MAX_FADE_PROFILES];
+    std::atomic<bool> fade_profile_active_[NUM_MAX_FADE_PROFILES];
+    std::atomic<uint32_t> fade_profile_readers_[NUM_MAX_FADE_PROFILES];
+    std::atomic<bool> fade_profile_used_[NUM_MAX_FADE_PROFILES];
+    std::atomic<bool> fade_profile_quiescent_[NUM_MAX_FADE_PROFILES];
+    std::atomic<uint32_t> num_retired_fade_profiles_;
+    utils::pt_mutex mutex_fade_profile_wait_;
+    utils::pt_condition_variable cond_fade_profile_wait_;
+    Impl *fade_profile_owner_; // this, or the unit which this one shares the fade profiles with
+
     sample_format_type dest_sample_format_;
     void *dest_buff_;
     f32_stereo_frame_t *capture_buff_;
@@ -149,6 +277,17 @@ private:
     cxxdasp::mixer::mixer<f32_stereo_frame_t, float, f32_stereo_mixer_core_operator_t> f32_stereo_mixer_;
 };
 
+// NOTE: profile id = (generation << FADE_PROFILE_INDEX_BITS) | slot index, the generation is never 0
+enum {
+    FADE_PROFILE_INDEX_BITS = 8,
+    FADE_PROFILE_INDEX_MASK = (1U << FADE_PROFILE_INDEX_BITS) - 1,
+    FADE_PROFILE_GENERATION_MASK = (0xffffffffU >> FADE_PROFILE_INDEX_BITS),
+    FADE_PROFILE_WAIT_POLLING_PERIOD_MS = 5,
+    FADE_PROFILE_WAIT_MARGIN_MS = 100,
+};
+
+static inline uint32_t getFadeProfileIndex(uint32_t profile) noexcept { return (profile & FADE_PROFILE_INDEX_MASK); }
+
 static inline void setPhase(MixingUnit::Context *context, float phase)
 {
     context->phase = (std::min)((std::max)(phase, 0.0f), 1.0f);
@@ -200,16 +339,55 @@ bool MixingUnit::mix(MixingUnit::Context *context, const in_data_type *src, uint
     return impl_->mix(context, src, size_in_frames);
 }
 
+bool MixingUnit::mix(MixingUnit::Context *contexts[], const in_data_type *srcs[], uint32_t num_sources,
+                     uint32_t size_in_frames) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return false;
+    return impl_->mix(contexts, srcs, num_sources, size_in_frames);
+}
+
+int MixingUnit::registerFadeProfile(fade_curve_t curve, uint32_t duration_ms, uint32_t *profile) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->registerFadeProfile(curve, duration_ms, profile);
+}
+
+int MixingUnit::unregisterFadeProfile(uint32_t profile) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+    return impl_->unregisterFadeProfile(profile);
+}
+
+bool MixingUnit::shareFadeProfiles(MixingUnit &owner) noexcept
+{
+    if (CXXPH_UNLIKELY(!(impl_ && owner.impl_)))
+        return false;
+    return impl_->shareFadeProfiles(*(owner.impl_));
+}
+
 //
 // MixingUnit::Impl
 //
 
 MixingUnit::Impl::Impl()
-    : init_args_(), internal_mix_buff_(), short_fade_table_(), long_fade_table_(),
+    : init_args_(), internal_mix_buff_(), short_fade_table_(), long_fade_table_(), fade_profiles_(),
+      num_retired_fade_profiles_(0), mutex_fade_profile_wait_(), cond_fade_profile_wait_(), fade_profile_owner_(this),
       dest_sample_format_(kAudioSampleFormatType_Unknown), dest_buff_(nullptr), capture_buff_(nullptr),
       mix_buff_(nullptr), mixout_effects_(nullptr), num_mixout_effects_(0), processed_count_(0),
       f32_to_s16_stereo_converter_(), f32_stereo_mixer_()
 {
+    for (uint32_t i = 0; i < NUM_MAX_FADE_PROFILES; ++i) {
+        fade_profile_refs_[i] = 0;
+        fade_profile_generations_[i] = 0;
+        fade_profile_ids_[i].store(0, std::memory_order_relaxed);
+        fade_profile_active_[i].store(false, std::memory_order_relaxed);
+        fade_profile_readers_[i].store(0, std::memory_order_relaxed);
+        fade_profile_used_[i].store(false, std::memory_order_relaxed);
+        fade_profile_quiescent_[i].store(false, std::memory_order_relaxed);
+    }
 }
 
 MixingUnit::Impl::~Impl() {}
@@ -332,6 +510,12 @@ bool MixingUnit::Impl::end() noexcept
         ::memcpy(capture_buff_, mix_buff_, sizeof(f32_stereo_frame_t) * blockSizeInFrames());
     }
 
+    // check the fade profiles being unregistered (the owner checks the shared ones)
+    if (CXXPH_UNLIKELY(fade_profile_owner_ == this &&
+                       num_retired_fade_profiles_.load(std::memory_order_acquire) != 0)) {
+        checkRetiredFadeProfiles();
+    }
+
     // clear fields
     dest_sample_format_ = kAudioSampleFormatType_Unknown;
     dest_buff_ = nullptr;
@@ -346,10 +530,9 @@ bool MixingUnit::Impl::end() noexcept
 
 bool MixingUnit::Impl::prepared() const noexcept { return (dest_buff_ && mix_buff_); }
 
-bool MixingUnit::Impl::mix(MixingUnit::Context *context, const in_data_type *src, uint32_t size_in_frames) noexcept
+bool MixingUnit::Impl::checkSourceParams(const Context *context, const in_data_type *src,
+                                         uint32_t size_in_frames) const noexcept
 {
-
-    // check parameters
     if (CXXPH_UNLIKELY(!(context && src && size_in_frames == blockSizeInFrames()))) {
         return false;
     }
@@ -362,6 +545,30 @@ bool MixingUnit::Impl::mix(MixingUnit::Context *context, const in_data_type *src
         return false;
     }
 
+    return true;
+}
+
+bool MixingUnit::Impl::beginMix() noexcept
+{
+    // NOTE: the mixing buffer has not been written yet while no source is processed
+    // (the muted sources do not write anything)
+    const bool first_mix = (processed_count_ <= 0);
+
+    if (processed_count_ < 0) {
+        processed_count_ = 0;
+    }
+
+    return first_mix;
+}
+
+bool MixingUnit::Impl::mix(MixingUnit::Context *context, const in_data_type *src, uint32_t size_in_frames) noexcept
+{
+
+    // check parameters
+    if (CXXPH_UNLIKELY(!checkSourceParams(context, src, size_in_frames))) {
+        return false;
+    }
+
     if (CXXPH_UNLIKELY(!prepared())) {
         return false;
     }
@@ -369,11 +576,7 @@ bool MixingUnit::Impl::mix(MixingUnit::Context *context, const in_data_type *src
     f32_stereo_frame_t *mix_buff = &mix_buff_[0];
     const f32_stereo_frame_t *f32_stereo_src = reinterpret_cast<const f32_stereo_frame_t *>(src);
 
-    bool first_mix = false;
-    if (processed_count_ < 0) {
-        processed_count_ = 0;
-        first_mix = true;
-    }
+    const bool first_mix = beginMix();
 
     bool processed = false;
 
@@ -401,6 +604,26 @@ bool MixingUnit::Impl::mix(MixingUnit::Context *context, const in_data_type *src
     case MODE_LONG_FADE_OUT:
         processed = mixFadeOut(context, long_fade_table_, mix_buff, f32_stereo_src, size_in_frames, first_mix);
         break;
+    case MODE_PROFILE_FADE_IN: {
+        // NOTE: the table is no longer needed once the fade is finished
+        const FadeTable *table =
+            (context->phase < 1.0f) ? fade_profile_owner_->acquireProfileFadeTable(context) : nullptr;
+        processed = mixFadeIn(context, (table) ? (*table) : short_fade_table_, mix_buff, f32_stereo_src,
+                              size_in_frames, first_mix);
+        if (table) {
+            fade_profile_owner_->releaseProfileFadeTable(getFadeProfileIndex(context->fade_profile));
+        }
+    } break;
+    case MODE_PROFILE_FADE_OUT: {
+        // NOTE: the table is no longer needed once the fade is finished
+        const FadeTable *table =
+            (context->phase < 1.0f) ? fade_profile_owner_->acquireProfileFadeTable(context) : nullptr;
+        processed = mixFadeOut(context, (table) ? (*table) : short_fade_table_, mix_buff, f32_stereo_src,
+                               size_in_frames, first_mix);
+        if (table) {
+            fade_profile_owner_->releaseProfileFadeTable(getFadeProfileIndex(context->fade_profile));
+        }
+    } break;
     default:
         processed = false;
         break;
@@ -413,6 +636,287 @@ bool MixingUnit::Impl::mix(MixingUnit::Context *context, const in_data_type *src
     return true;
 }
 
+bool MixingUnit::Impl::mix(MixingUnit::Context *contexts[], const in_data_type *srcs[], uint32_t num_sources,
+                           uint32_t size_in_frames) noexcept
+{
+    if (CXXPH_UNLIKELY(!(contexts && srcs))) {
+        return false;
+    }
+
+    if (CXXPH_UNLIKELY(!prepared())) {
+        return false;
+    }
+
+    const float *add_srcs[NUM_SOURCES_PER_PASS];
+    float add_volumes[NUM_SOURCES_PER_PASS][2];
+    uint32_t num_add_srcs = 0;
+    bool result = true;
+
+    for (uint32_t i = 0; i < num_sources; ++i) {
+        Context *context = contexts[i];
+        const in_data_type *src = srcs[i];
+
+        if (CXXPH_UNLIKELY(!checkSourceParams(context, src, size_in_frames))) {
+            result = false;
+            continue;
+        }
+
+        if (context->mode == MODE_ADD && !isMuted(context)) {
+            // constant gain, deferred
+            add_srcs[num_add_srcs] = src;
+            add_volumes[num_add_srcs][0] = context->volume[0];
+            add_volumes[num_add_srcs][1] = context->volume[1];
+            num_add_srcs += 1;
+
+            if (num_add_srcs == NUM_SOURCES_PER_PASS) {
+                mixAddMultiple(add_srcs, add_volumes, num_add_srcs, size_in_frames, beginMix());
+                num_add_srcs = 0;
+            }
+        } else {
+            // fading (or muted)
+            (void)mix(context, src, size_in_frames);
+        }
+    }
+
+    if (num_add_srcs > 0) {
+        mixAddMultiple(add_srcs, add_volumes, num_add_srcs, size_in_frames, beginMix());
+    }
+
+    return result;
+}
+
+int MixingUnit::Impl::registerFadeProfile(fade_curve_t curve, uint32_t duration_ms, uint32_t *profile) noexcept
+{
+    if (!profile)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*profile) = 0;
+
+    // NOTE: the shared profiles are registered through the owner
+    if (fade_profile_owner_ != this)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    switch (curve) {
+    case FADE_CURVE_RAISED_COSINE:
+    case FADE_CURVE_LINEAR:
+    case FADE_CURVE_EQUAL_POWER:
+    case FADE_CURVE_LOGARITHMIC:
+    case FADE_CURVE_S_CURVE:
+        break;
+    default:
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    if (duration_ms > MAX_FADE_PROFILE_DURATION_MS)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (init_args_.sampling_rate == 0)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    const uint32_t sampling_rate_in_hz = (init_args_.sampling_rate / 1000);
+    const uint32_t duration_in_frames = (std::max)(1U, (sampling_rate_in_hz * duration_ms) / 1000);
+    uint32_t free_slot = NUM_MAX_FADE_PROFILES;
+
+    // reuse the same one
+    for (uint32_t i = 0; i < NUM_MAX_FADE_PROFILES; ++i) {
+        if (fade_profile_refs_[i] == 0) {
+            free_slot = (std::min)(free_slot, i);
+        } else if (fade_profiles_[i].curve() == curve && fade_profiles_[i].size() == duration_in_frames) {
+            fade_profile_refs_[i] += 1;
+            (*profile) = fade_profile_ids_[i].load(std::memory_order_relaxed);
+            return OSLMP_RESULT_SUCCESS;
+        }
+    }
+
+    if (free_slot >= NUM_MAX_FADE_PROFILES)
+        return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+
+    // NOTE: the id of a free slot is 0, so the mixer thread does not refer it
+    if (!fade_profiles_[free_slot].initialize(duration_in_frames, curve))
+        return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+
+    uint32_t generation = (fade_profile_generations_[free_slot] + 1) & FADE_PROFILE_GENERATION_MASK;
+    if (generation == 0) {
+        generation = 1;
+    }
+    fade_profile_generations_[free_slot] = generation;
+
+    const uint32_t id = (generation << FADE_PROFILE_INDEX_BITS) | free_slot;
+
+    fade_profile_refs_[free_slot] = 1;
+    fade_profile_used_[free_slot].store(false, std::memory_order_relaxed);
+    fade_profile_quiescent_[free_slot].store(false, std::memory_order_relaxed);
+
+    // publish to the mixer thread
+    fade_profile_ids_[free_slot].store(id, std::memory_order_seq_cst);
+    fade_profile_active_[free_slot].store(true, std::memory_order_seq_cst);
+
+    (*profile) = id;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int MixingUnit::Impl::unregisterFadeProfile(uint32_t profile) noexcept
+{
+    const uint32_t index = getFadeProfileIndex(profile);
+
+    if (fade_profile_owner_ != this)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (!(profile != 0 && index < NUM_MAX_FADE_PROFILES && fade_profile_refs_[index] > 0 &&
+          fade_profile_ids_[index].load(std::memory_order_relaxed) == profile))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    fade_profile_refs_[index] -= 1;
+
+    if (fade_profile_refs_[index] > 0)
+        return OSLMP_RESULT_SUCCESS;
+
+    // NOTE:
+    // The profile which has never been used by any fade is not latched.
+    // (read before retiring, the mixer thread clears the flag of the retired profiles)
+    const bool used = fade_profile_used_[index].load(std::memory_order_seq_cst);
+
+    // retire, new fades can not latch the table any more
+    fade_profile_quiescent_[index].store(false, std::memory_order_relaxed);
+    fade_profile_active_[index].store(false, std::memory_order_seq_cst);
+    num_retired_fade_profiles_.fetch_add(1, std::memory_order_seq_cst);
+
+    {
+        utils::pt_unique_lock lock(mutex_fade_profile_wait_);
+
+        // wait for the latched fades finish
+        // NOTE:
+        // The wait is bounded by the profile duration, because the mixer thread may not be running.
+        // The fade which is not finished by then falls back to the short fade.
+        const uint64_t sampling_rate_in_hz = (std::max)(1U, init_args_.sampling_rate / 1000);
+        const uint64_t duration_ms = (fade_profiles_[index].size() * 1000ULL) / sampling_rate_in_hz;
+        const uint32_t wait_ms = static_cast<uint32_t>(duration_ms) + FADE_PROFILE_WAIT_MARGIN_MS;
+        timespec timeout;
+
+        utils::timespec_utils::get_current_time(timeout);
+        timeout = utils::timespec_utils::add_ms(timeout, wait_ms);
+
+        while (used && !fade_profile_quiescent_[index].load(std::memory_order_acquire)) {
+            timespec now;
+            utils::timespec_utils::get_current_time(now);
+
+            if (utils::timespec_utils::compare_greater_than_or_equals(now, timeout))
+                break;
+
+            // NOTE: the mixer thread does not block on the mutex, so the notification may be lost
+            (void)cond_fade_profile_wait_.wait_relative_ms(lock, FADE_PROFILE_WAIT_POLLING_PERIOD_MS);
+        }
+
+        // invalidate the latches, and wait for the mixer thread finishes using the table (at most one mix() call)
+        fade_profile_ids_[index].store(0, std::memory_order_seq_cst);
+
+        while (fade_profile_readers_[index].load(std::memory_order_seq_cst) != 0) {
+            (void)cond_fade_profile_wait_.wait_relative_ms(lock, FADE_PROFILE_WAIT_POLLING_PERIOD_MS);
+        }
+    }
+
+    num_retired_fade_profiles_.fetch_sub(1, std::memory_order_seq_cst);
+
+    fade_profiles_[index].release();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool MixingUnit::Impl::shareFadeProfiles(Impl &owner) noexcept
+{
+    // NOTE: the owner has its own profiles (no chain)
+    if (&owner == this || owner.fade_profile_owner_ != &owner)
+        return false;
+
+    if (init_args_.sampling_rate == 0 || init_args_.sampling_rate != owner.init_args_.sampling_rate)
+        return false;
+
+    for (uint32_t i = 0; i < NUM_MAX_FADE_PROFILES; ++i) {
+        if (fade_profile_refs_[i] != 0)
+            return false;
+    }
+
+    fade_profile_owner_ = &owner;
+
+    return true;
+}
+
+const FadeTable *MixingUnit::Impl::acquireProfileFadeTable(Context *context) noexcept
+{
+    const uint32_t profile = context->fade_profile;
+    const uint32_t index = getFadeProfileIndex(profile);
+
+    if (CXXPH_UNLIKELY(!(profile != 0 && index < NUM_MAX_FADE_PROFILES))) {
+        context->latched_fade_profile = 0;
+        return nullptr;
+    }
+
+    // NOTE:
+    // A fade latches the table when it starts, and keeps using it even if the
+    // profile is unregistered (retired) meanwhile.
+    const bool fade_start = (context->phase == 0.0f) || (context->latched_fade_profile != profile);
+
+    fade_profile_readers_[index].fetch_add(1, std::memory_order_seq_cst);
+
+    const bool valid = (fade_profile_ids_[index].load(std::memory_order_seq_cst) == profile) &&
+                       (!fade_start || fade_profile_active_[index].load(std::memory_order_seq_cst));
+
+    // NOTE: the unknown profile falls back to the short fade
+    if (CXXPH_UNLIKELY(!valid)) {
+        context->latched_fade_profile = 0;
+        releaseProfileFadeTable(index);
+        return nullptr;
+    }
+
+    context->latched_fade_profile = profile;
+    fade_profile_used_[index].store(true, std::memory_order_relaxed);
+
+    return &fade_profiles_[index];
+}
+
+void MixingUnit::Impl::releaseProfileFadeTable(uint32_t index) noexcept
+{
+    const uint32_t prev_readers = fade_profile_readers_[index].fetch_sub(1, std::memory_order_seq_cst);
+
+    if (CXXPH_UNLIKELY(prev_readers == 1 && !fade_profile_active_[index].load(std::memory_order_relaxed))) {
+        notifyFadeProfileWaiter();
+    }
+}
+
+void MixingUnit::Impl::checkRetiredFadeProfiles() noexcept
+{
+    bool notify = false;
+
+    for (uint32_t i = 0; i < NUM_MAX_FADE_PROFILES; ++i) {
+        if (fade_profile_ids_[i].load(std::memory_order_relaxed) == 0 ||
+            fade_profile_active_[i].load(std::memory_order_seq_cst))
+            continue;
+
+        // NOTE: the retired table is no longer latched if it was not used in a whole block
+        if (!fade_profile_used_[i].exchange(false, std::memory_order_relaxed) &&
+            !fade_profile_quiescent_[i].load(std::memory_order_relaxed)) {
+            fade_profile_quiescent_[i].store(true, std::memory_order_release);
+            notify = true;
+        }
+    }
+
+    if (notify) {
+        notifyFadeProfileWaiter();
+    }
+}
+
+void MixingUnit::Impl::notifyFadeProfileWaiter() noexcept
+{
+    // don't block the mixer thread, the waiter polls periodically
+    utils::pt_unique_lock lock(mutex_fade_profile_wait_, true);
+
+    lock.try_lock();
+    if (lock.owns_lock()) {
+        cond_fade_profile_wait_.notify_all();
+    }
+}
+
 bool MixingUnit::Impl::mixMute(MixingUnit::Context *context, f32_stereo_frame_t *CXXPH_RESTRICT mix_buff,
                                const f32_stereo_frame_t *CXXPH_RESTRICT src, uint32_t size_in_frames,
                                bool first_mix) const noexcept
@@ -433,6 +937,31 @@ bool MixingUnit::Impl::mixAdd(MixingUnit::Context *context, f32_stereo_frame_t *
     return true;
 }
 
+void MixingUnit::Impl::mixAddMultiple(const float *const *srcs, const float (*volumes)[2], uint32_t num_sources,
+                                      uint32_t size_in_frames, bool first_mix) noexcept
+{
+    float *mix_buff = reinterpret_cast<float *>(&mix_buff_[0]);
+
+    switch (num_sources) {
+    case 1:
+        accumulate_f32_stereo<1>(mix_buff, srcs, volumes, size_in_frames, !first_mix);
+        break;
+    case 2:
+        accumulate_f32_stereo<2>(mix_buff, srcs, volumes, size_in_frames, !first_mix);
+        break;
+    case 3:
+        accumulate_f32_stereo<3>(mix_buff, srcs, volumes, size_in_frames, !first_mix);
+        break;
+    case 4:
+        accumulate_f32_stereo<4>(mix_buff, srcs, volumes, size_in_frames, !first_mix);
+        break;
+    default:
+        return;
+    }
+
+    processed_count_ += 1;
+}
+
 bool MixingUnit::Impl::mixFadeIn(MixingUnit::Context *context, const FadeTable &fade_table,
                                  f32_stereo_frame_t *CXXPH_RESTRICT mix_buff,
                                  const f32_stereo_frame_t *CXXPH_RESTRICT src, uint32_t size_in_frames,
@@ -497,7 +1026,7 @@ bool MixingUnit::Impl::mixFadeOut(MixingUnit::Context *context, const FadeTable
 //
 // FadeTable
 //
-bool FadeTable::initialize(uint32_t size) noexcept
+bool FadeTable::initialize(uint32_t size, MixingUnit::fade_curve_t curve) noexcept
 {
     std::unique_ptr<float[]> table;
 
@@ -508,11 +1037,29 @@ bool FadeTable::initialize(uint32_t size) noexcept
             return false;
         }
 
-        makeFadeTable(&table[0], size);
+        switch (curve) {
+        case MixingUnit::FADE_CURVE_LINEAR:
+            makeLinearFadeTable(&table[0], size);
+            break;
+        case MixingUnit::FADE_CURVE_EQUAL_POWER:
+            makeEqualPowerFadeTable(&table[0], size);
+            break;
+        case MixingUnit::FADE_CURVE_LOGARITHMIC:
+            makeLogarithmicFadeTable(&table[0], size);
+            break;
+        case MixingUnit::FADE_CURVE_S_CURVE:
+            makeSCurveFadeTable(&table[0], size);
+            break;
+        case MixingUnit::FADE_CURVE_RAISED_COSINE:
+        default:
+            makeFadeTable(&table[0], size);
+            break;
+        }
     }
 
     table_ = std::move(table);
     size_ = size;
+    curve_ = curve;
 
     return true;
 }
@@ -528,5 +1075,51 @@ void FadeTable::makeFadeTable(float *table, uint32_t n) noexcept
     }
 }
 
+void FadeTable::makeLinearFadeTable(float *table, uint32_t n) noexcept
+{
+    const double step = (n > 1) ? (1.0 / (n - 1)) : 0.0;
+
+    for (size_t i = 0; i < n; ++i) {
+        table[i] = static_cast<float>(step * i);
+    }
+}
+
+void FadeTable::makeEqualPowerFadeTable(float *table, uint32_t n) noexcept
+{
+    // NOTE:
+    // sin() for fade in, and the backward read (= cos()) for fade out,
+    // so the total power of a crossfade is kept constant.
+    const double phase_step = (n > 1) ? ((M_PI / 2) / (n - 1)) : 0.0;
+    cxxdasp::utils::fast_sincos_generator<float> gen(0.0, phase_step);
+
+    for (size_t i = 0; i < n; ++i) {
+        table[i] = gen.s();
+        gen.update();
+    }
+}
+
+void FadeTable::makeLogarithmicFadeTable(float *table, uint32_t n) noexcept
+{
+    // -60 dB -> 0 dB (linear in dB scale)
+    const double range_db = 60.0;
+    const double step = (n > 1) ? (1.0 / (n - 1)) : 0.0;
+
+    for (size_t i = 0; i < n; ++i) {
+        const double db = range_db * (step * i - 1.0);
+        table[i] = (i == 0) ? 0.0f : static_cast<float>(std::pow(10.0, db / 20.0));
+    }
+}
+
+void FadeTable::makeSCurveFadeTable(float *table, uint32_t n) noexcept
+{
+    // smootherstep; steeper center than the raised cosine
+    const double step = (n > 1) ? (1.0 / (n - 1)) : 0.0;
+
+    for (size_t i = 0; i < n; ++i) {
+        const double x = step * i;
+        table[i] = static_cast<float>(x * x * x * (x * (x * 6.0 - 15.0) + 10.0));
+    }
+}
+
 } // namespace impl
 } // namespace oslmp
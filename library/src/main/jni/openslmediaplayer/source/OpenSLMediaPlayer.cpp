@@ -19,6 +19,7 @@
 #include <new>
 
 #include "oslmp/impl/OpenSLMediaPlayerImpl.hpp"
+#include "oslmp/impl/StatusBlockSeqLock.hpp"
 
 namespace oslmp {
 
@@ -75,6 +76,41 @@ int OpenSLMediaPlayer::setDataSourceFd(int fd, int64_t offset, int64_t length) n
     return impl_->setDataSourceFd(fd, offset, length);
 }
 
+int OpenSLMediaPlayer::addPlaylistItemPath(const char *path) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->addPlaylistItemPath(path);
+}
+
+int OpenSLMediaPlayer::addPlaylistItemUri(const char *uri) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->addPlaylistItemUri(uri);
+}
+
+int OpenSLMediaPlayer::addPlaylistItemFd(int fd) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->addPlaylistItemFd(fd);
+}
+
+int OpenSLMediaPlayer::addPlaylistItemFd(int fd, int64_t offset, int64_t length) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->addPlaylistItemFd(fd, offset, length);
+}
+
+int OpenSLMediaPlayer::clearPlaylist() noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->clearPlaylist();
+}
+
 int OpenSLMediaPlayer::prepare() noexcept
 {
     if (CXXPH_UNLIKELY(!impl_.get()))
@@ -194,6 +230,34 @@ int OpenSLMediaPlayer::setAudioStreamType(int streamtype) noexcept
     return impl_->setAudioStreamType(streamtype);
 }
 
+int OpenSLMediaPlayer::setFadeCurve(int curve, int32_t fadeInMs, int32_t fadeOutMs) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->setFadeCurve(curve, fadeInMs, fadeOutMs);
+}
+
+int OpenSLMediaPlayer::setLoopPoints(int32_t startMsec, int32_t endMsec) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->setLoopPoints(startMsec, endMsec);
+}
+
+int OpenSLMediaPlayer::setInsertEqualizerEnabled(bool enabled) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->setInsertEqualizerEnabled(enabled);
+}
+
+int OpenSLMediaPlayer::setInsertEqualizerBandLevels(const int16_t *levels, uint16_t numBands) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->setInsertEqualizerBandLevels(levels, numBands);
+}
+
 int OpenSLMediaPlayer::setNextMediaPlayer(const android::sp<OpenSLMediaPlayer> *next) noexcept
 {
     if (CXXPH_UNLIKELY(!impl_.get()))
@@ -201,6 +265,31 @@ int OpenSLMediaPlayer::setNextMediaPlayer(const android::sp<OpenSLMediaPlayer> *
     return impl_->setNextMediaPlayer(next);
 }
 
+int OpenSLMediaPlayer::postCommands(const command_t *commands, size_t count, int32_t token) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->postCommands(commands, count, token);
+}
+
+int OpenSLMediaPlayer::setStatusBlock(status_block_t *block) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->setStatusBlock(block);
+}
+
+int OpenSLMediaPlayer::sReadStatusBlock(const status_block_t *block, status_block_t *snapshot) noexcept
+{
+    if (CXXPH_UNLIKELY(!(block && snapshot)))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!impl::StatusBlockSeqLock::read(block, snapshot))
+        return OSLMP_RESULT_ERROR;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
 int OpenSLMediaPlayer::setOnCompletionListener(OpenSLMediaPlayer::OnCompletionListener *listener) noexcept
 {
     if (CXXPH_UNLIKELY(!impl_.get()))
@@ -250,4 +339,11 @@ int OpenSLMediaPlayer::setInternalThreadEventListener(OpenSLMediaPlayer::Interna
     return impl_->setInternalThreadEventListener(listener);
 }
 
+int OpenSLMediaPlayer::setOnCommandCompletionListener(OpenSLMediaPlayer::OnCommandCompletionListener *listener) noexcept
+{
+    if (CXXPH_UNLIKELY(!impl_.get()))
+        return OSLMP_RESULT_ERROR;
+    return impl_->setOnCommandCompletionListener(listener);
+}
+
 } // namespace oslmp
@@ -22,6 +22,8 @@
 
 #include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
 #include "oslmp/impl/OpenSLMediaPlayerInternalContextImpl.hpp"
+#include "oslmp/impl/EngineStatistics.hpp"
+#include "oslmp/impl/AudioClipCache.hpp"
 
 //
 // macros
@@ -66,6 +68,77 @@ int32_t OpenSLMediaPlayerContext::getAudioSessionId() const noexcept
     }
 }
 
+int OpenSLMediaPlayerContext::installModule(uint32_t option) noexcept
+{
+    return impl_->internal_->installModule(option);
+}
+
+int OpenSLMediaPlayerContext::uninstallModule(uint32_t option) noexcept
+{
+    return impl_->internal_->uninstallModule(option);
+}
+
+int OpenSLMediaPlayerContext::getEngineStatistics(OpenSLMediaPlayerContext::engine_statistics_t *stats) const noexcept
+{
+    if (!stats)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    AudioSystem *audio_system = getInternal().getAudioSystem();
+    EngineStatistics *statistics = (audio_system) ? audio_system->getStatistics() : nullptr;
+
+    if (CXXPH_UNLIKELY(!statistics))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    statistics->getSnapshot(stats);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int OpenSLMediaPlayerContext::resetEngineStatistics() noexcept
+{
+    AudioSystem *audio_system = getInternal().getAudioSystem();
+    EngineStatistics *statistics = (audio_system) ? audio_system->getStatistics() : nullptr;
+
+    if (CXXPH_UNLIKELY(!statistics))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    statistics->reset();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int OpenSLMediaPlayerContext::clearDecodedClipCache() noexcept
+{
+    AudioSystem *audio_system = getInternal().getAudioSystem();
+    AudioClipCache *clip_cache = (audio_system) ? audio_system->getClipCache() : nullptr;
+
+    if (CXXPH_UNLIKELY(!clip_cache))
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    clip_cache->clear();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int OpenSLMediaPlayerContext::setOfflineRenderOutputCallback(offline_render_output_callback_t callback,
+                                                             void *args) noexcept
+{
+    return getInternal().getAudioSystem()->setOfflineRenderOutputCallback(callback, args);
+}
+
+int OpenSLMediaPlayerContext::isFloatingPointOutput(bool *is_float) const noexcept
+{
+    if (!is_float)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    sample_format_type format = kAudioSampleFormatType_Unknown;
+    const int result = getInternal().getAudioSystem()->getOutputSampleFormat(&format);
+
+    (*is_float) = (format == kAudioSampleFormatType_F32);
+
+    return result;
+}
+
 OpenSLMediaPlayerInternalContext &OpenSLMediaPlayerContext::getInternal() const noexcept
 {
     return (*(impl_->internal_));
@@ -192,6 +192,7 @@ struct periodic_capture_thread_context_t {
 
     uint32_t sampling_rate;
     uint32_t capture_start_delay;
+    timespec captured_time;
 
     cxxdasp::fft::fft<float, std::complex<float>, fft_backend_type::forward_real> fftr_rch;
     cxxdasp::fft::fft<float, std::complex<float>, fft_backend_type::forward_real> fftr_lch;
@@ -1195,13 +1196,17 @@ void HQVisualizerExtModule::processPeriodicCapture(periodic_capture_thread_conte
     uint32_t num_channels = 0;
     uint32_t sampling_rate = 0;
     const float *data = nullptr;
+    timespec captured_time = utils::timespec_utils::ZERO();
 
-    if (captured_data_buffer_.get_captured_data(c.capture_size, c.capture_rate, &num_channels, &sampling_rate, &data)) {
+    if (captured_data_buffer_.get_captured_data(c.capture_size, c.capture_rate, &num_channels, &sampling_rate, &data,
+                                                &captured_time)) {
         c.sampling_rate = sampling_rate;
         c.capture_start_delay = 0;
+        c.captured_time = captured_time;
     } else {
         // captured data is not present
         data = nullptr;
+        c.captured_time = utils::timespec_utils::ZERO();
 
         // delay capture callback until capture_start_delay counter remains
         if (c.capture_start_delay > 0) {
@@ -1319,6 +1324,12 @@ void HQVisualizerExtModule::processPeriodicCapture(periodic_capture_thread_conte
     }
 
     // raise callbacks
+    if (c.internal_event_listener.get()) {
+        const int64_t captured_time_ns =
+            static_cast<int64_t>(c.captured_time.tv_sec) * 1000000000LL + c.captured_time.tv_nsec;
+        c.internal_event_listener->onUpdateCapturedTime(c.visualizer, captured_time_ns);
+    }
+
     if (c.capture_waveform && c.internal_event_listener.get()) {
         c.internal_event_listener->onWaveFormDataCapture(c.visualizer, dest_waveform, c.num_channels, c.capture_size,
                                                          c.sampling_rate);
@@ -1369,6 +1380,7 @@ void *HQVisualizerExtModule::periodicCaptureThreadEntryFunc(void *args) noexcept
     c.sampling_rate = thiz->status_.sampling_rate.load(std::memory_order_acquire);
     c.window_type = thiz->status_.window_type;
     c.capture_start_delay = 5;
+    c.captured_time = utils::timespec_utils::ZERO();
 
     {
         c.window_table.allocate(c.capture_size, CXXPH_PLATFORM_SIMD_ALIGNMENT, false);
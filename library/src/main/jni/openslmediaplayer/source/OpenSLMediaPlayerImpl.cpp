@@ -19,6 +19,7 @@
 #include "oslmp/impl/OpenSLMediaPlayerImpl.hpp"
 
 #include <cassert>
+#include <vector>
 
 #include <loghelper/loghelper.h>
 
@@ -92,6 +93,17 @@ enum {
     MSG_SET_NEXT_MEDIA_PLAYER,
     MSG_ATTACH_AUX_EFFECT,
     MSG_SET_AUX_EFFECT_SEND_LEVEL,
+    MSG_COMMAND_BATCH,
+    MSG_SET_STATUS_BLOCK,
+    MSG_ADD_PLAYLIST_ITEM_PATH,
+    MSG_ADD_PLAYLIST_ITEM_URI,
+    MSG_ADD_PLAYLIST_ITEM_FD,
+    MSG_ADD_PLAYLIST_ITEM_FD_OFFSET_LENGTH,
+    MSG_CLEAR_PLAYLIST,
+    MSG_SET_FADE_CURVE,
+    MSG_SET_LOOP_POINTS,
+    MSG_SET_INSERT_EQUALIZER_ENABLED,
+    MSG_SET_INSERT_EQUALIZER_BAND_LEVELS,
 };
 
 //
@@ -156,17 +168,46 @@ struct msg_blob_set_aux_effect_send_level {
     float level;
 };
 
+struct msg_blob_set_fade_curve {
+    int curve;
+    int32_t fade_in_ms;
+    int32_t fade_out_ms;
+};
+
+struct msg_blob_set_loop_points {
+    int32_t start_msec;
+    int32_t end_msec;
+};
+
+struct msg_blob_set_insert_equalizer_enabled {
+    bool enabled;
+};
+
+struct msg_blob_set_insert_equalizer_band_levels {
+    const int16_t *levels;
+    uint16_t num_bands;
+};
+
 struct msg_blob_set_audio_stream_type {
     int stream_type;
 };
 
+struct msg_blob_set_status_block {
+    OpenSLMediaPlayer::status_block_t *block;
+};
+
+struct msg_blob_command_batch {
+    uint32_t slot; // NOTE: the batch is owned by command_batch_pool_
+};
+
 //
 // OpenSLMediaPlayer::Impl::MessageEventHandlerAdapter
 //
 
 OpenSLMediaPlayer::Impl::Impl(const android::sp<OpenSLMediaPlayerContext> &context, OpenSLMediaPlayer *holder)
     : holder_(holder), player_(), cond_wait_processed_(), mutex_wait_processed_(), state_(STATE_CREATED),
-      prev_error_state_(STATE_CREATED), context_(context), msg_handler_token_(0), tmp_init_args_()
+      prev_error_state_(STATE_CREATED), context_(context), msg_handler_token_(0), tmp_init_args_(),
+      command_batch_pool_()
 {
 }
 
@@ -286,6 +327,28 @@ const char *OpenSLMediaPlayer::Impl::getCorrespondOperationName(int msg) noexcep
         return "attachAuxEffect";
     case MSG_SET_AUX_EFFECT_SEND_LEVEL:
         return "setAuxEffectSendLevel";
+    case MSG_COMMAND_BATCH:
+        return "postCommands";
+    case MSG_SET_STATUS_BLOCK:
+        return "setStatusBlock";
+    case MSG_ADD_PLAYLIST_ITEM_PATH:
+        return "addPlaylistItem_path";
+    case MSG_ADD_PLAYLIST_ITEM_URI:
+        return "addPlaylistItem_uri";
+    case MSG_ADD_PLAYLIST_ITEM_FD:
+        return "addPlaylistItem_fd";
+    case MSG_ADD_PLAYLIST_ITEM_FD_OFFSET_LENGTH:
+        return "addPlaylistItem_fd_offset_length";
+    case MSG_CLEAR_PLAYLIST:
+        return "clearPlaylist";
+    case MSG_SET_FADE_CURVE:
+        return "setFadeCurve";
+    case MSG_SET_LOOP_POINTS:
+        return "setLoopPoints";
+    case MSG_SET_INSERT_EQUALIZER_ENABLED:
+        return "setInsertEqualizerEnabled";
+    case MSG_SET_INSERT_EQUALIZER_BAND_LEVELS:
+        return "setInsertEqualizerBandLevels";
     default:
         return "unknown";
     }
@@ -405,6 +468,7 @@ int OpenSLMediaPlayer::Impl::release() noexcept
     on_info_listener_ = nullptr;
     on_error_listener_ = nullptr;
     internal_thread_event_listener_ = nullptr;
+    on_command_completion_listener_ = nullptr;
 
     setState(STATE_END);
 
@@ -477,6 +541,80 @@ int OpenSLMediaPlayer::Impl::setDataSourceFd(int fd, int64_t offset, int64_t len
     return postAndWaitResult(&msg);
 }
 
+int OpenSLMediaPlayer::Impl::addPlaylistItemPath(const char *path) noexcept
+{
+    typedef msg_blob_set_data_source_path blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    if (!path)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_ADD_PLAYLIST_ITEM_PATH);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.path = path;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayer::Impl::addPlaylistItemUri(const char *uri) noexcept
+{
+    typedef msg_blob_set_data_source_uri blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    if (!uri)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_ADD_PLAYLIST_ITEM_URI);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.uri = uri;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayer::Impl::addPlaylistItemFd(int fd) noexcept
+{
+    typedef msg_blob_set_data_source_fd blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_ADD_PLAYLIST_ITEM_FD);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.fd = fd;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayer::Impl::addPlaylistItemFd(int fd, int64_t offset, int64_t length) noexcept
+{
+    typedef msg_blob_set_data_source_fd blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_ADD_PLAYLIST_ITEM_FD_OFFSET_LENGTH);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.fd = fd;
+        blob.offset = offset;
+        blob.length = length;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayer::Impl::clearPlaylist() noexcept
+{
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_CLEAR_PLAYLIST);
+    return postAndWaitResult(&msg);
+}
+
 int OpenSLMediaPlayer::Impl::prepare() noexcept
 {
     Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_PREPARE);
@@ -696,6 +834,74 @@ int OpenSLMediaPlayer::Impl::setAuxEffectSendLevel(float level) noexcept
     return postAndWaitResult(&msg);
 }
 
+int OpenSLMediaPlayer::Impl::setFadeCurve(int curve, int32_t fade_in_ms, int32_t fade_out_ms) noexcept
+{
+    typedef msg_blob_set_fade_curve blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_FADE_CURVE);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.curve = curve;
+        blob.fade_in_ms = fade_in_ms;
+        blob.fade_out_ms = fade_out_ms;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayer::Impl::setLoopPoints(int32_t start_msec, int32_t end_msec) noexcept
+{
+    typedef msg_blob_set_loop_points blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_LOOP_POINTS);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.start_msec = start_msec;
+        blob.end_msec = end_msec;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayer::Impl::setInsertEqualizerEnabled(bool enabled) noexcept
+{
+    typedef msg_blob_set_insert_equalizer_enabled blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_INSERT_EQUALIZER_ENABLED);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.enabled = enabled;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayer::Impl::setInsertEqualizerBandLevels(const int16_t *levels, uint16_t num_bands) noexcept
+{
+    typedef msg_blob_set_insert_equalizer_band_levels blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    if (!levels)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_INSERT_EQUALIZER_BAND_LEVELS);
+
+    // NOTE: levels can be passed by pointer because postAndWaitResult() blocks
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.levels = levels;
+        blob.num_bands = num_bands;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
 // implementations of AudioPlayer::EventHandler
 void OpenSLMediaPlayer::Impl::onDecoderBufferingUpdate(int32_t percent) noexcept
 {
@@ -722,6 +928,7 @@ void OpenSLMediaPlayer::Impl::onPlaybackCompletion(impl::AudioPlayer::PlaybackCo
         return;
 
     processOnCompletion(completion_type);
+    publishStatus();
 }
 
 void OpenSLMediaPlayer::Impl::onPrepareCompleted(int prepare_result) noexcept
@@ -735,11 +942,13 @@ void OpenSLMediaPlayer::Impl::onPrepareCompleted(int prepare_result) noexcept
             raiseError(ERROR_WHAT_INVALID_OPERATION, 0);
         }
 
+        publishStatus();
         handleOnPrepareFinished(prepare_result, async);
     } else {
         LOGE("\"prepare_completed\" flag is set when state %s", getStateName(state_));
         setState(STATE_ERROR);
         raiseError(ERROR_WHAT_UNKNOWN_ERROR, 0);
+        publishStatus();
     }
 }
 
@@ -755,6 +964,8 @@ void OpenSLMediaPlayer::Impl::onSeekCompleted(int seek_result) noexcept
         setState(STATE_ERROR);
         raiseError(ERROR_WHAT_INVALID_OPERATION, 0);
     }
+
+    publishStatus();
 }
 
 void OpenSLMediaPlayer::Impl::onPlayerStartedAsNextPlayer() noexcept
@@ -765,6 +976,38 @@ void OpenSLMediaPlayer::Impl::onPlayerStartedAsNextPlayer() noexcept
         return;
 
     setState(STATE_STARTED);
+    publishStatus();
+}
+
+void OpenSLMediaPlayer::Impl::onPlaylistTrackChanged(int32_t remaining) noexcept
+{
+    const int state_mask = SMASK(STARTED) | SMASK(PAUSED) | SMASK(PLAYBACK_COMPLETED);
+
+    if (!checkCurrentState(state_mask))
+        return;
+
+    publishStatus();
+
+    // raise onInfo() event
+    android::sp<OnInfoListener> listener(on_info_listener_.promote());
+
+    if (listener.get()) {
+        listener->onInfo(getHolder(), OSLMP_MEDIA_INFO_PLAYLIST_TRACK_CHANGED, remaining);
+    }
+}
+
+void OpenSLMediaPlayer::Impl::onPlaybackError(int error_result) noexcept
+{
+    LOGD("onPlaybackError(error_result = %d)", error_result);
+
+    const int state_mask = SMASK(STARTED) | SMASK(PAUSED) | SMASK(PREPARED) | SMASK(PLAYBACK_COMPLETED);
+
+    if (!checkCurrentState(state_mask))
+        return;
+
+    setState(STATE_ERROR);
+    raiseError(translateToErrorWhat(error_result), 0);
+    publishStatus();
 }
 
 int OpenSLMediaPlayer::Impl::setNextMediaPlayer(const android::sp<OpenSLMediaPlayer> *next) noexcept
@@ -789,6 +1032,63 @@ int OpenSLMediaPlayer::Impl::setNextMediaPlayer(const android::sp<OpenSLMediaPla
     return postAndWaitResult(&msg);
 }
 
+int OpenSLMediaPlayer::Impl::postCommands(const OpenSLMediaPlayer::command_t *commands, size_t count,
+                                          int32_t token) noexcept
+{
+    typedef msg_blob_command_batch blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    if (!commands || count == 0)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    for (size_t i = 0; i < count; ++i) {
+        if (!(commands[i].what >= OSLMP_COMMAND_PREPARE_ASYNC && commands[i].what <= OSLMP_COMMAND_IS_LOOPING))
+            return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    if (state_ == STATE_CREATED || state_ == STATE_END)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    uint32_t slot = 0;
+    int result = command_batch_pool_.obtain(commands, count, token, &slot);
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_COMMAND_BATCH);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.slot = slot;
+    }
+
+    if (!post(&msg)) {
+        command_batch_pool_.recycle(slot);
+        return OSLMP_RESULT_ERROR;
+    }
+
+    // the slot will be recycled in handleCommandBatch()
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int OpenSLMediaPlayer::Impl::setStatusBlock(OpenSLMediaPlayer::status_block_t *block) noexcept
+{
+    typedef msg_blob_set_status_block blob_t;
+    CHECK_MSG_BLOB_SIZE(blob_t);
+
+    if (block && (reinterpret_cast<uintptr_t>(block) % sizeof(int64_t)) != 0)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_STATUS_BLOCK);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+        blob.block = block;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
 int OpenSLMediaPlayer::Impl::setOnCompletionListener(OpenSLMediaPlayer::OnCompletionListener *listener) noexcept
 {
     on_completion_listener_ = listener;
@@ -846,6 +1146,14 @@ int OpenSLMediaPlayer::Impl::setInternalThreadEventListener(
     return OSLMP_RESULT_SUCCESS;
 }
 
+int OpenSLMediaPlayer::Impl::setOnCommandCompletionListener(
+    OpenSLMediaPlayer::OnCommandCompletionListener *listener) noexcept
+{
+    on_command_completion_listener_ = listener;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
 android::sp<OpenSLMediaPlayerContext> OpenSLMediaPlayer::Impl::getPlayerContext() noexcept { return context_; }
 
 void OpenSLMediaPlayer::Impl::handleOnPrepareFinished(int result, bool async) noexcept
@@ -934,6 +1242,128 @@ void OpenSLMediaPlayer::Impl::onHandleMessage(const void *msg_) noexcept
 {
     const Message *msg = reinterpret_cast<const Message *>(msg_);
 
+    if (msg->what == MSG_COMMAND_BATCH) {
+        handleCommandBatch(msg);
+    } else {
+        (void)processMessage(msg);
+    }
+}
+
+void OpenSLMediaPlayer::Impl::handleCommandBatch(const Message *msg) noexcept
+{
+    typedef msg_blob_command_batch blob_t;
+    const blob_t &blob = GET_MSG_BLOB(*msg);
+    impl::CommandBatchPool::batch_t *batch = command_batch_pool_.get(blob.slot);
+
+    if (!batch)
+        return;
+
+    const size_t count = batch->commands.size();
+
+    // process all commands in this wake-up, in posted order
+    for (size_t i = 0; i < count; ++i) {
+        OpenSLMediaPlayer::command_result_t &r = batch->results[i];
+
+        r.value = 0;
+        r.result = processCommand(batch->commands[i], &r.value);
+    }
+
+    // raise onCommandCompletion() event
+    android::sp<OnCommandCompletionListener> listener(on_command_completion_listener_.promote());
+
+    if (listener.get()) {
+        listener->onCommandCompletion(getHolder(), batch->token, &(batch->results[0]), count);
+    }
+
+    command_batch_pool_.recycle(blob.slot);
+}
+
+int OpenSLMediaPlayer::Impl::processCommand(const OpenSLMediaPlayer::command_t &cmd, int32_t *value) noexcept
+{
+    int32_t ivalue = 0;
+    bool bvalue = false;
+    int result;
+
+    switch (cmd.what) {
+    case OSLMP_COMMAND_PREPARE_ASYNC: {
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_PREPARE_ASYNC);
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_START: {
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_START);
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_STOP: {
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_STOP);
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_PAUSE: {
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_PAUSE);
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_SEEK_TO: {
+        typedef msg_blob_seek_to blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SEEK_TO);
+        GET_MSG_BLOB(msg).msec = cmd.iarg;
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_SET_VOLUME: {
+        typedef msg_blob_set_volume blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_VOLUME);
+        GET_MSG_BLOB(msg).left_volume = cmd.farg[0];
+        GET_MSG_BLOB(msg).right_volume = cmd.farg[1];
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_SET_LOOPING: {
+        typedef msg_blob_set_looping blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_LOOPING);
+        GET_MSG_BLOB(msg).looping = (cmd.iarg != 0);
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_SET_AUX_EFFECT_SEND_LEVEL: {
+        typedef msg_blob_set_aux_effect_send_level blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_SET_AUX_EFFECT_SEND_LEVEL);
+        GET_MSG_BLOB(msg).level = cmd.farg[0];
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_GET_CURRENT_POSITION: {
+        typedef msg_blob_get_current_position blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_GET_CURRENT_POSITION);
+        GET_MSG_BLOB(msg).position = &ivalue;
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_GET_DURATION: {
+        typedef msg_blob_get_duration blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_GET_DURATION);
+        GET_MSG_BLOB(msg).duration = &ivalue;
+        result = processMessage(&msg);
+    } break;
+    case OSLMP_COMMAND_IS_PLAYING: {
+        typedef msg_blob_get_is_playing blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_GET_IS_PLAYING);
+        GET_MSG_BLOB(msg).playing = &bvalue;
+        result = processMessage(&msg);
+        ivalue = (bvalue) ? 1 : 0;
+    } break;
+    case OSLMP_COMMAND_IS_LOOPING: {
+        typedef msg_blob_get_is_looping blob_t;
+        Message msg(INTERNAL_MESSAGE_CATEGORY, MSG_GET_IS_LOOPING);
+        GET_MSG_BLOB(msg).looping = &bvalue;
+        result = processMessage(&msg);
+        ivalue = (bvalue) ? 1 : 0;
+    } break;
+    default:
+        result = OSLMP_RESULT_ILLEGAL_ARGUMENT;
+        break;
+    }
+
+    (*value) = ivalue;
+
+    return result;
+}
+
+int OpenSLMediaPlayer::Impl::processMessage(const Message *msg) noexcept
+{
     int result = OSLMP_RESULT_ERROR;
     const PlayerState prev_state = state_;
     const bool is_error = (prev_state == STATE_ERROR);
@@ -1271,6 +1701,113 @@ void OpenSLMediaPlayer::Impl::onHandleMessage(const void *msg_) noexcept
             }
         }
     } break;
+    case MSG_SET_STATUS_BLOCK: {
+        typedef msg_blob_set_status_block blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+
+        result = player_->setStatusBlock(blob.block);
+    } break;
+    case MSG_ADD_PLAYLIST_ITEM_PATH: {
+        typedef msg_blob_set_data_source_path blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = SMASK(IDLE) | SMASK(INITIALIZED) | STATE_MASK_PREPARING | SMASK(PREPARED) |
+                               SMASK(STARTED) | SMASK(PAUSED) | SMASK(STOPPED) | SMASK(PLAYBACK_COMPLETED);
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->addPlaylistItemPath(blob.path);
+        } else {
+            result = (is_error) ? OSLMP_RESULT_IN_ERROR_STATE : OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_ADD_PLAYLIST_ITEM_URI: {
+        typedef msg_blob_set_data_source_uri blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = SMASK(IDLE) | SMASK(INITIALIZED) | STATE_MASK_PREPARING | SMASK(PREPARED) |
+                               SMASK(STARTED) | SMASK(PAUSED) | SMASK(STOPPED) | SMASK(PLAYBACK_COMPLETED);
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->addPlaylistItemUri(blob.uri);
+        } else {
+            result = (is_error) ? OSLMP_RESULT_IN_ERROR_STATE : OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_ADD_PLAYLIST_ITEM_FD: {
+        typedef msg_blob_set_data_source_fd blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = SMASK(IDLE) | SMASK(INITIALIZED) | STATE_MASK_PREPARING | SMASK(PREPARED) |
+                               SMASK(STARTED) | SMASK(PAUSED) | SMASK(STOPPED) | SMASK(PLAYBACK_COMPLETED);
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->addPlaylistItemFd(blob.fd, -1, -1);
+        } else {
+            result = (is_error) ? OSLMP_RESULT_IN_ERROR_STATE : OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_ADD_PLAYLIST_ITEM_FD_OFFSET_LENGTH: {
+        typedef msg_blob_set_data_source_fd blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = SMASK(IDLE) | SMASK(INITIALIZED) | STATE_MASK_PREPARING | SMASK(PREPARED) |
+                               SMASK(STARTED) | SMASK(PAUSED) | SMASK(STOPPED) | SMASK(PLAYBACK_COMPLETED);
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->addPlaylistItemFd(blob.fd, blob.offset, blob.length);
+        } else {
+            result = (is_error) ? OSLMP_RESULT_IN_ERROR_STATE : OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_CLEAR_PLAYLIST: {
+        const int state_mask = STATE_MASK_ANY;
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->clearPlaylist();
+        } else {
+            result = OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_SET_FADE_CURVE: {
+        typedef msg_blob_set_fade_curve blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = STATE_MASK_ANY;
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->setFadeCurve(blob.curve, blob.fade_in_ms, blob.fade_out_ms);
+        } else {
+            result = OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_SET_LOOP_POINTS: {
+        typedef msg_blob_set_loop_points blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = STATE_MASK_ANY;
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->setLoopPoints(blob.start_msec, blob.end_msec);
+        } else {
+            result = OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_SET_INSERT_EQUALIZER_ENABLED: {
+        typedef msg_blob_set_insert_equalizer_enabled blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = STATE_MASK_ANY;
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->setInsertEqualizerEnabled(blob.enabled);
+        } else {
+            result = OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
+    case MSG_SET_INSERT_EQUALIZER_BAND_LEVELS: {
+        typedef msg_blob_set_insert_equalizer_band_levels blob_t;
+        const blob_t &blob = GET_MSG_BLOB(*msg);
+        const int state_mask = STATE_MASK_ANY;
+
+        if (checkCurrentState(state_mask)) {
+            result = player_->setInsertEqualizerBandLevels(blob.levels, blob.num_bands);
+        } else {
+            result = OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    } break;
     case MSG_SET_AUX_EFFECT_SEND_LEVEL: {
         typedef msg_blob_set_aux_effect_send_level blob_t;
         const blob_t &blob = GET_MSG_BLOB(*msg);
@@ -1291,6 +1828,9 @@ void OpenSLMediaPlayer::Impl::onHandleMessage(const void *msg_) noexcept
         break;
     }
 
+    // publish status before notifying result, the caller may read it immediately
+    publishStatus();
+
     // notify result
     if (msg->needNotification()) {
         notifyResult(msg, result);
@@ -1322,6 +1862,8 @@ void OpenSLMediaPlayer::Impl::onHandleMessage(const void *msg_) noexcept
     if (raise_error) {
         raiseError(translateToErrorWhat(result), 0);
     }
+
+    return result;
 }
 
 // ---
@@ -1378,6 +1920,13 @@ void OpenSLMediaPlayer::Impl::notifyResult(const OpenSLMediaPlayer::Impl::Messag
 
 OpenSLMediaPlayer *OpenSLMediaPlayer::Impl::getHolder() const noexcept { return holder_; }
 
+void OpenSLMediaPlayer::Impl::publishStatus() noexcept
+{
+    if (player_) {
+        player_->publishStatus(static_cast<int32_t>(state_), (state_ == STATE_STARTED));
+    }
+}
+
 int OpenSLMediaPlayer::Impl::processOnCompletion(impl::AudioPlayer::PlaybackCompletionType completion_type) noexcept
 {
 #if 0
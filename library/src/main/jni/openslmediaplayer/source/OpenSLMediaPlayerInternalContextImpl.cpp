@@ -54,6 +54,8 @@ enum {
     MSG_UNREGISTER_MESSAGE_HANDLER,
     MSG_EXT_ATTACH_OR_INSTALL,
     MSG_EXT_DETACH_OR_UNINSTALL,
+    MSG_INSTALL_MODULE,
+    MSG_UNINSTALL_MODULE,
 };
 
 //
@@ -82,6 +84,14 @@ struct msg_blob_ext_detach_or_uninstall {
     void *user_arg;
 };
 
+struct msg_blob_install_module {
+    uint32_t option;
+};
+
+struct msg_blob_uninstall_module {
+    uint32_t option;
+};
+
 //
 // OpenSLMediaPlayerInternalContext
 //
@@ -175,6 +185,18 @@ int OpenSLMediaPlayerInternalContextImpl::initialize(JNIEnv *env, OpenSLMediaPla
         init_args.sink_backend_type = args.sink_backend_type;
         init_args.use_low_latency_if_available = args.use_low_latency_if_available;
         init_args.use_floating_point_if_available = args.use_floating_point_if_available;
+        init_args.sink_buffering_mode = args.sink_buffering_mode;
+        init_args.adaptive_sink_min_blocks = args.adaptive_sink_min_blocks;
+        init_args.adaptive_sink_max_blocks = args.adaptive_sink_max_blocks;
+        init_args.adaptive_sink_shrink_interval_ms = args.adaptive_sink_shrink_interval_ms;
+        init_args.decoded_clip_cache_size = args.decoded_clip_cache_size;
+        init_args.decoded_clip_max_duration_ms = args.decoded_clip_max_duration_ms;
+        init_args.seek_index_cache_dir = args.seek_index_cache_dir;
+        init_args.seek_index_cache_max_size = args.seek_index_cache_max_size;
+        init_args.loop_buffer_max_duration_ms = args.loop_buffer_max_duration_ms;
+        init_args.decoder_backend_type = args.decoder_backend_type;
+        init_args.source_worker_thread_count = args.source_worker_thread_count;
+        init_args.mixer_max_sources = args.mixer_max_sources;
 
         result = audio_system_->initialize(init_args);
     }
@@ -336,6 +358,13 @@ void OpenSLMediaPlayerInternalContextImpl::raiseOnBeforeAudioSinkStateChanged(bo
     }
 }
 
+bool OpenSLMediaPlayerInternalContextImpl::requestPolling() noexcept
+{
+    // NOTE: the polling time is re-evaluated after the message is handled
+    Message msg(0, MSG_NOP);
+    return post(&msg);
+}
+
 #if USE_OSLMP_DEBUG_FEATURES
 NonBlockingTraceLogger &OpenSLMediaPlayerInternalContextImpl::getNonBlockingTraceLogger() const noexcept
 {
@@ -362,6 +391,36 @@ OpenSLMediaPlayerInternalContextImpl::verifyExtensionToken(OpenSLMediaPlayerInte
     return ((token >= min_token) && (token <= max_token) && (((token - min_token) % sizeof(ExtensionInfo)) == 0));
 }
 
+int OpenSLMediaPlayerInternalContextImpl::installModule(uint32_t option) noexcept
+{
+    typedef msg_blob_install_module blob_t;
+    CHECK_MSB_BLOB_SIZE(blob_t);
+    Message msg(0, MSG_INSTALL_MODULE);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+
+        blob.option = option;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
+int OpenSLMediaPlayerInternalContextImpl::uninstallModule(uint32_t option) noexcept
+{
+    typedef msg_blob_uninstall_module blob_t;
+    CHECK_MSB_BLOB_SIZE(blob_t);
+    Message msg(0, MSG_UNINSTALL_MODULE);
+
+    {
+        blob_t &blob = GET_MSG_BLOB(msg);
+
+        blob.option = option;
+    }
+
+    return postAndWaitResult(&msg);
+}
+
 //
 // implementations of OpenSLMediaPlayerExtensionManager
 //
@@ -600,6 +659,12 @@ void OpenSLMediaPlayerInternalContextImpl::handleInternalMessages(const Message
     case MSG_EXT_DETACH_OR_UNINSTALL:
         result = handleExtDetachOrUninstallMessage(msg);
         break;
+    case MSG_INSTALL_MODULE:
+        result = handleInstallModuleMessage(msg);
+        break;
+    case MSG_UNINSTALL_MODULE:
+        result = handleUninstallModuleMessage(msg);
+        break;
     }
 
     if (msg->needNotification()) {
@@ -773,6 +838,67 @@ int OpenSLMediaPlayerInternalContextImpl::handleExtDetachOrUninstallMessage(cons
     return result;
 }
 
+int OpenSLMediaPlayerInternalContextImpl::handleInstallModuleMessage(const Message *msg) noexcept
+{
+    typedef msg_blob_install_module blob_t;
+    const blob_t &blob = GET_MSG_BLOB(*msg);
+
+    if (!audio_system_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    const int result = audio_system_->installOptionalModule(blob.option);
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        options_.fetch_or(blob.option);
+    }
+
+    LOGD("Module install status : option = %08x, result = %d", blob.option, result);
+
+    return result;
+}
+
+int OpenSLMediaPlayerInternalContextImpl::handleUninstallModuleMessage(const Message *msg) noexcept
+{
+    typedef msg_blob_uninstall_module blob_t;
+    const blob_t &blob = GET_MSG_BLOB(*msg);
+
+    if (!audio_system_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    const char *ext_module_name = nullptr;
+
+    switch (blob.option) {
+    case OSLMP_CONTEXT_OPTION_USE_HQ_EQUALIZER:
+        ext_module_name = "HQEqualizer";
+        break;
+    case OSLMP_CONTEXT_OPTION_USE_PREAMP:
+        ext_module_name = "PreAmp";
+        break;
+    default:
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+    }
+
+    // the module is still used by the extension (= effect instances are alive)
+    const std::string name(ext_module_name);
+    for (int i = 0; i < NUM_EXTENSIONS; ++i) {
+        const ExtensionInfo &ext = extensions_[i];
+
+        if (ext.instance && name == ext.instance->getExtensionModuleName()) {
+            return OSLMP_RESULT_ILLEGAL_STATE;
+        }
+    }
+
+    const int result = audio_system_->uninstallOptionalModule(blob.option);
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        options_.fetch_and(~blob.option);
+    }
+
+    LOGD("Module uninstall status : option = %08x, result = %d", blob.option, result);
+
+    return result;
+}
+
 int OpenSLMediaPlayerInternalContextImpl::onDetermineWaitTimeout() noexcept
 {
     if (audio_system_) {
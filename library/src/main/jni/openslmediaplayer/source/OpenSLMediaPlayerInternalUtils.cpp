@@ -19,6 +19,8 @@
 #include <string>
 #include <vector>
 #include <cstdlib>
+#include <cstdio>
+#include <sys/stat.h>
 
 #include <SLES/OpenSLES.h>
 #include <SLES/OpenSLES_Android.h>
@@ -217,5 +219,46 @@ const char *OpenSLMediaPlayerInternalUtils::sGetPlayerStateName(PlayerState stat
     }
 }
 
+bool OpenSLMediaPlayerInternalUtils::sMakeFileIdentityKey(const char *path, int fd, int64_t offset, int64_t length,
+                                                          std::string &key) noexcept
+{
+    struct stat st;
+
+    key.clear();
+
+    if (path) {
+        if (::stat(path, &st) != 0)
+            return false;
+    } else {
+        if (::fstat(fd, &st) != 0)
+            return false;
+    }
+
+    // NOTE: only regular files are cacheable (their identity and modification time are known)
+    if (!S_ISREG(st.st_mode))
+        return false;
+
+    const int64_t file_size = static_cast<int64_t>(st.st_size);
+
+    if (offset < 0)
+        offset = 0;
+    if (length < 0 || (offset + length) > file_size)
+        length = file_size - offset;
+
+    char buff[128];
+
+    ::snprintf(buff, sizeof(buff), "%llx:%llx:%lld:%lld:%lld:%lld", static_cast<unsigned long long>(st.st_dev),
+               static_cast<unsigned long long>(st.st_ino), static_cast<long long>(st.st_mtime),
+               static_cast<long long>(file_size), static_cast<long long>(offset), static_cast<long long>(length));
+
+    try
+    {
+        key = buff;
+    }
+    catch (const std::bad_alloc &) { return false; }
+
+    return true;
+}
+
 } // namespace impl
 } // namespace oslmp
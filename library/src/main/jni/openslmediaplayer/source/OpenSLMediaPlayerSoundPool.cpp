@@ -0,0 +1,423 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "OpenSLMediaPlayerSoundPool"
+
+#include "oslmp/OpenSLMediaPlayerSoundPool.hpp"
+
+#include <algorithm>
+#include <map>
+#include <vector>
+
+#include <cxxporthelper/memory>
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerContext.hpp>
+
+#include "oslmp/impl/OpenSLMediaPlayerInternalContext.hpp"
+#include "oslmp/impl/AudioSystem.hpp"
+#include "oslmp/impl/AudioMixer.hpp"
+#include "oslmp/impl/AudioDataPipeManager.hpp"
+#include "oslmp/impl/AudioClipCache.hpp"
+#include "oslmp/impl/AudioSampleLoader.hpp"
+#include "oslmp/impl/AudioVoicePool.hpp"
+#include "oslmp/utils/pthread_utils.hpp"
+
+//
+// Constants
+//
+#define MAX_SAMPLE_DURATION_MS 30000
+
+//
+// helper macros
+//
+#define GET_IMPL(varname)                                                                                              \
+    Impl *varname = impl_;                                                                                             \
+    if (CXXPH_UNLIKELY(!varname)) {                                                                                    \
+        return OSLMP_RESULT_DEAD_OBJECT;                                                                               \
+    }
+
+// NOTE: release() may be called from another thread, the voice pool is used while holding the lock
+#define LOCK_AND_CHECK_VOICE_POOL(impl, lockname)                                                                      \
+    utils::pt_lock_guard lockname((impl)->mutex_);                                                                     \
+    if (CXXPH_UNLIKELY(!((impl)->voice_pool_))) {                                                                      \
+        return OSLMP_RESULT_DEAD_OBJECT;                                                                               \
+    }
+
+namespace oslmp {
+
+using namespace ::oslmp::impl;
+
+typedef OpenSLMediaPlayerInternalContext InternalContext;
+
+// NOTE: same as the SoundPool, the playback rate is clamped
+static inline float clampRate(float rate) noexcept
+{
+    return (std::min)((std::max)(rate, AudioVoicePool::MIN_RATE), AudioVoicePool::MAX_RATE);
+}
+
+class OpenSLMediaPlayerSoundPool::Impl {
+public:
+    struct sample_t {
+        android::sp<AudioClip> clip;
+        uint32_t num_frames;
+
+        sample_t() : clip(), num_frames(0) {}
+    };
+
+    Impl(const android::sp<OpenSLMediaPlayerContext> &context, int max_voices);
+    ~Impl();
+
+    void release() noexcept;
+
+    int load(const AudioSampleLoader::load_args_t &args, int *sample_id) noexcept;
+    int unload(int sample_id) noexcept;
+    int play(int sample_id, float left_volume, float right_volume, int priority, int loop, float rate,
+             int *voice_id) noexcept;
+
+    // called after a voice command is posted
+    int notifyVoiceCommandPosted(int result) noexcept;
+
+    void purgeUnusedClips() noexcept;
+
+    android::sp<OpenSLMediaPlayerContext> context_;
+    InternalContext *internal_context_;
+    AudioMixer *mixer_;
+    std::unique_ptr<AudioVoicePool> voice_pool_;
+
+    utils::pt_mutex mutex_;
+    std::map<int, sample_t> samples_;
+    std::vector<android::sp<AudioClip>> unloaded_clips_; // waiting for the voices to be finished
+    int sample_id_counter_;
+};
+
+//
+// OpenSLMediaPlayerSoundPool
+//
+OpenSLMediaPlayerSoundPool::OpenSLMediaPlayerSoundPool(const android::sp<OpenSLMediaPlayerContext> &context,
+                                                       int max_voices)
+    : impl_(new (std::nothrow) Impl(context, max_voices))
+{
+}
+
+OpenSLMediaPlayerSoundPool::~OpenSLMediaPlayerSoundPool()
+{
+    delete impl_;
+    impl_ = nullptr;
+}
+
+int OpenSLMediaPlayerSoundPool::release() noexcept
+{
+    if (impl_) {
+        impl_->release();
+    }
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int OpenSLMediaPlayerSoundPool::load(const char *path_uri, int *sample_id) noexcept
+{
+    GET_IMPL(impl);
+
+    if (!path_uri)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    AudioSampleLoader::load_args_t args;
+
+    args.path_uri = path_uri;
+
+    return impl->load(args, sample_id);
+}
+
+int OpenSLMediaPlayerSoundPool::load(int fd, int64_t offset, int64_t length, int *sample_id) noexcept
+{
+    GET_IMPL(impl);
+
+    if (fd < 0 || offset < 0)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    AudioSampleLoader::load_args_t args;
+
+    args.fd = fd;
+    args.offset = offset;
+    args.length = length;
+
+    return impl->load(args, sample_id);
+}
+
+int OpenSLMediaPlayerSoundPool::unload(int sample_id) noexcept
+{
+    GET_IMPL(impl);
+    return impl->unload(sample_id);
+}
+
+int OpenSLMediaPlayerSoundPool::play(int sample_id, float left_volume, float right_volume, int priority, int loop,
+                                     float rate, int *voice_id) noexcept
+{
+    GET_IMPL(impl);
+    return impl->play(sample_id, left_volume, right_volume, priority, loop, rate, voice_id);
+}
+
+int OpenSLMediaPlayerSoundPool::pause(int voice_id) noexcept
+{
+    GET_IMPL(impl);
+    LOCK_AND_CHECK_VOICE_POOL(impl, lock);
+    return impl->notifyVoiceCommandPosted(impl->voice_pool_->pause(static_cast<uint32_t>(voice_id)));
+}
+
+int OpenSLMediaPlayerSoundPool::resume(int voice_id) noexcept
+{
+    GET_IMPL(impl);
+    LOCK_AND_CHECK_VOICE_POOL(impl, lock);
+    return impl->notifyVoiceCommandPosted(impl->voice_pool_->resume(static_cast<uint32_t>(voice_id)));
+}
+
+int OpenSLMediaPlayerSoundPool::stop(int voice_id) noexcept
+{
+    GET_IMPL(impl);
+    LOCK_AND_CHECK_VOICE_POOL(impl, lock);
+    return impl->notifyVoiceCommandPosted(impl->voice_pool_->stop(static_cast<uint32_t>(voice_id)));
+}
+
+int OpenSLMediaPlayerSoundPool::setVolume(int voice_id, float left_volume, float right_volume) noexcept
+{
+    GET_IMPL(impl);
+    LOCK_AND_CHECK_VOICE_POOL(impl, lock);
+    return impl->notifyVoiceCommandPosted(
+        impl->voice_pool_->setVolume(static_cast<uint32_t>(voice_id), left_volume, right_volume));
+}
+
+int OpenSLMediaPlayerSoundPool::setPriority(int voice_id, int priority) noexcept
+{
+    GET_IMPL(impl);
+    LOCK_AND_CHECK_VOICE_POOL(impl, lock);
+    return impl->voice_pool_->setPriority(static_cast<uint32_t>(voice_id), priority);
+}
+
+int OpenSLMediaPlayerSoundPool::setLoop(int voice_id, int loop) noexcept
+{
+    GET_IMPL(impl);
+    LOCK_AND_CHECK_VOICE_POOL(impl, lock);
+    return impl->notifyVoiceCommandPosted(impl->voice_pool_->setLoop(static_cast<uint32_t>(voice_id), loop));
+}
+
+int OpenSLMediaPlayerSoundPool::setRate(int voice_id, float rate) noexcept
+{
+    GET_IMPL(impl);
+    LOCK_AND_CHECK_VOICE_POOL(impl, lock);
+    return impl->notifyVoiceCommandPosted(
+        impl->voice_pool_->setRate(static_cast<uint32_t>(voice_id), clampRate(rate)));
+}
+
+//
+// OpenSLMediaPlayerSoundPool::Impl
+//
+OpenSLMediaPlayerSoundPool::Impl::Impl(const android::sp<OpenSLMediaPlayerContext> &context, int max_voices)
+    : context_(context), internal_context_(nullptr), mixer_(nullptr), voice_pool_(), mutex_(), samples_(),
+      unloaded_clips_(), sample_id_counter_(0)
+{
+    if (!context.get())
+        return;
+
+    if (!(max_voices >= 1 && max_voices <= MAX_VOICES)) {
+        LOGE("Invalid max_voices (%d)", max_voices);
+        return;
+    }
+
+    InternalContext &internal = InternalContext::sGetInternal(*context);
+    AudioSystem *audio_system = internal.getAudioSystem();
+    AudioMixer *mixer = (audio_system) ? audio_system->getMixer() : nullptr;
+
+    if (!mixer)
+        return;
+
+    std::unique_ptr<AudioVoicePool> voice_pool(new (std::nothrow) AudioVoicePool());
+
+    if (!voice_pool)
+        return;
+
+    AudioVoicePool::initialize_args_t init_args;
+
+    init_args.num_voices = static_cast<uint32_t>(max_voices);
+    init_args.block_size_in_frames = audio_system->getPipeManager()->getBlockSizeInFrames();
+
+    if (voice_pool->initialize(init_args) != OSLMP_RESULT_SUCCESS)
+        return;
+
+    if (mixer->attachVoicePool(voice_pool.get()) != OSLMP_RESULT_SUCCESS) {
+        LOGE("Failed to attach the voice pool to the mixer");
+        return;
+    }
+
+    internal_context_ = &internal;
+    mixer_ = mixer;
+    voice_pool_ = std::move(voice_pool);
+}
+
+OpenSLMediaPlayerSoundPool::Impl::~Impl() { release(); }
+
+void OpenSLMediaPlayerSoundPool::Impl::release() noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    if (voice_pool_) {
+        // NOTE: detachVoicePool() waits until the mixer thread stops referring the pool
+        (void)mixer_->detachVoicePool(voice_pool_.get());
+        voice_pool_.reset();
+    }
+
+    samples_.clear();
+    unloaded_clips_.clear();
+}
+
+int OpenSLMediaPlayerSoundPool::Impl::load(const AudioSampleLoader::load_args_t &args, int *sample_id) noexcept
+{
+    if (!sample_id)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*sample_id) = 0;
+
+    {
+        LOCK_AND_CHECK_VOICE_POOL(this, lock);
+    }
+
+    AudioSampleLoader::load_args_t load_args(args);
+    AudioSampleLoader loader;
+    sample_t sample;
+
+    load_args.context = internal_context_;
+    load_args.max_duration_ms = MAX_SAMPLE_DURATION_MS;
+
+    // NOTE: decoding is performed without holding the lock
+    const int result = loader.load(load_args, sample.clip, &(sample.num_frames));
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    // NOTE: released while decoding
+    LOCK_AND_CHECK_VOICE_POOL(this, lock);
+
+    purgeUnusedClips();
+
+    sample_id_counter_ += 1;
+    if (sample_id_counter_ <= 0) {
+        sample_id_counter_ = 1;
+    }
+
+    try
+    {
+        samples_[sample_id_counter_] = sample;
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    (*sample_id) = sample_id_counter_;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int OpenSLMediaPlayerSoundPool::Impl::unload(int sample_id) noexcept
+{
+    LOCK_AND_CHECK_VOICE_POOL(this, lock);
+
+    auto it = samples_.find(sample_id);
+
+    if (it == samples_.end())
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    android::sp<AudioClip> clip = (*it).second.clip;
+
+    samples_.erase(it);
+
+    // stop all voices playing the sample, the clip is released after the mixer thread releases it
+    (void)notifyVoiceCommandPosted(voice_pool_->stopAll(clip.get()));
+
+    try
+    {
+        unloaded_clips_.push_back(clip);
+    }
+    catch (const std::bad_alloc &)
+    {
+        // NOTE: keep the clip alive rather than releasing it on the mixer thread
+        LOGE("Failed to retain the unloaded clip");
+        clip->incStrong(this);
+    }
+
+    purgeUnusedClips();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+int OpenSLMediaPlayerSoundPool::Impl::play(int sample_id, float left_volume, float right_volume, int priority,
+                                           int loop, float rate, int *voice_id) noexcept
+{
+    if (!voice_id)
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    (*voice_id) = 0;
+
+    AudioVoicePool::play_args_t args;
+
+    LOCK_AND_CHECK_VOICE_POOL(this, lock);
+
+    auto it = samples_.find(sample_id);
+
+    if (it == samples_.end())
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    args.clip = (*it).second.clip;
+    args.num_frames = (*it).second.num_frames;
+
+    args.left_volume = left_volume;
+    args.right_volume = right_volume;
+    args.rate = clampRate(rate);
+    args.loop = loop;
+    args.priority = priority;
+
+    uint32_t id = 0;
+    const int result = notifyVoiceCommandPosted(voice_pool_->play(args, &id));
+
+    if (result == OSLMP_RESULT_SUCCESS) {
+        (*voice_id) = static_cast<int>(id);
+    }
+
+    return result;
+}
+
+int OpenSLMediaPlayerSoundPool::Impl::notifyVoiceCommandPosted(int result) noexcept
+{
+    // the suspended mixer is resumed by the polling on the internal thread
+    if (result == OSLMP_RESULT_SUCCESS && mixer_->getState() != AudioMixer::MIXER_STATE_STARTED) {
+        (void)internal_context_->requestPolling();
+    }
+
+    return result;
+}
+
+void OpenSLMediaPlayerSoundPool::Impl::purgeUnusedClips() noexcept
+{
+    // NOTE: the clips are never referred by the mixer thread if this instance has the only reference
+    auto it = unloaded_clips_.begin();
+    while (it != unloaded_clips_.end()) {
+        if ((*it)->getStrongCount() == 1) {
+            it = unloaded_clips_.erase(it);
+        } else {
+            ++it;
+        }
+    }
+}
+
+} // namespace oslmp
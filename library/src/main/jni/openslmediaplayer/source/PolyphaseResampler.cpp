@@ -0,0 +1,567 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "PolyphaseResampler"
+
+#include "oslmp/impl/PolyphaseResampler.hpp"
+
+#include <algorithm>
+#include <cstring>
+#include <limits>
+#include <new>
+
+#include <cxxporthelper/cmath>
+#include <cxxporthelper/compiler.hpp>
+
+#if ((CXXPH_TARGET_ARCH == CXXPH_ARCH_ARM) || (CXXPH_TARGET_ARCH == CXXPH_ARCH_ARM64)) &&                              \
+    CXXPH_COMPILER_SUPPORTS_ARM_NEON
+#define OSLMP_POLYPHASE_RESAMPLER_USE_NEON 1
+#include <arm_neon.h>
+#elif(CXXPH_TARGET_ARCH == CXXPH_ARCH_I386) || (CXXPH_TARGET_ARCH == CXXPH_ARCH_X86_64)
+#define OSLMP_POLYPHASE_RESAMPLER_USE_SSE 1
+#include <xmmintrin.h>
+#endif
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+namespace oslmp {
+namespace impl {
+
+namespace {
+
+const uint32_t kMaxInterpolationFactor = 640; // 11.025 kHz -> 48 kHz
+const uint32_t kMaxDecimationRatio = 2;       // 96 kHz -> 48 kHz
+
+struct filter_spec_t {
+    uint32_t num_taps; // [frames] (per phase, without decimation)
+    double kaiser_beta;
+    double rolloff;    // cutoff frequency (relative to the Nyquist frequency)
+};
+
+const filter_spec_t kFilterSpecs[] = {
+    { 16, 6.0, 0.85 },  // QUALITY_LOW (stopband: approx. -60 dB)
+    { 32, 8.5, 0.90 },  // QUALITY_MIDDLE (stopband: approx. -85 dB)
+    { 64, 11.0, 0.94 }, // QUALITY_HIGH (stopband: approx. -110 dB)
+};
+
+uint32_t gcd(uint32_t a, uint32_t b) noexcept
+{
+    while (b != 0) {
+        const uint32_t t = a % b;
+        a = b;
+        b = t;
+    }
+    return a;
+}
+
+// zeroth order modified Bessel function of the first kind
+double bessel_i0(double x) noexcept
+{
+    const double y = (x * x) * 0.25;
+    double sum = 1.0;
+    double term = 1.0;
+
+    for (int k = 1; k < 64; ++k) {
+        term *= y / (static_cast<double>(k) * k);
+        sum += term;
+        if (term < (sum * 1e-12))
+            break;
+    }
+
+    return sum;
+}
+
+// NOTE: x and c point to the interleaved stereo data, num_taps must be a multiple of 4
+inline void dot_product_f32_stereo(const float *x, const float *c, uint32_t num_taps, float *dest) noexcept
+{
+#if OSLMP_POLYPHASE_RESAMPLER_USE_NEON
+    float32x4_t acc0 = vdupq_n_f32(0.0f);
+    float32x4_t acc1 = vdupq_n_f32(0.0f);
+
+    for (uint32_t i = 0; i < num_taps; i += 4) {
+        acc0 = vmlaq_f32(acc0, vld1q_f32(&x[0]), vld1q_f32(&c[0]));
+        acc1 = vmlaq_f32(acc1, vld1q_f32(&x[4]), vld1q_f32(&c[4]));
+        x += 8;
+        c += 8;
+    }
+
+    acc0 = vaddq_f32(acc0, acc1);
+    vst1_f32(dest, vadd_f32(vget_low_f32(acc0), vget_high_f32(acc0)));
+#elif OSLMP_POLYPHASE_RESAMPLER_USE_SSE
+    __m128 acc0 = _mm_setzero_ps();
+    __m128 acc1 = _mm_setzero_ps();
+
+    for (uint32_t i = 0; i < num_taps; i += 4) {
+        acc0 = _mm_add_ps(acc0, _mm_mul_ps(_mm_loadu_ps(&x[0]), _mm_loadu_ps(&c[0])));
+        acc1 = _mm_add_ps(acc1, _mm_mul_ps(_mm_loadu_ps(&x[4]), _mm_loadu_ps(&c[4])));
+        x += 8;
+        c += 8;
+    }
+
+    acc0 = _mm_add_ps(acc0, acc1);
+    acc0 = _mm_add_ps(acc0, _mm_movehl_ps(acc0, acc0));
+    _mm_storel_pi(reinterpret_cast<__m64 *>(dest), acc0);
+#else
+    float acc_l = 0.0f;
+    float acc_r = 0.0f;
+
+    for (uint32_t i = 0; i < num_taps; ++i) {
+        acc_l += x[0] * c[0];
+        acc_r += x[1] * c[1];
+        x += 2;
+        c += 2;
+    }
+
+    dest[0] = acc_l;
+    dest[1] = acc_r;
+#endif
+}
+
+} // anonymous namespace
+
+//
+// PolyphaseResamplerCoeffBank
+//
+PolyphaseResamplerCoeffBank::PolyphaseResamplerCoeffBank()
+    : coeffs_(), in_sampling_rate_(0), out_sampling_rate_(0), quality_(QUALITY_MIDDLE), interpolation_factor_(0),
+      decimation_factor_(0), num_taps_(0)
+{
+}
+
+PolyphaseResamplerCoeffBank::~PolyphaseResamplerCoeffBank() {}
+
+bool PolyphaseResamplerCoeffBank::sIsSupportedRatio(uint32_t in_sampling_rate, uint32_t out_sampling_rate) noexcept
+{
+    if (!(in_sampling_rate && out_sampling_rate))
+        return false;
+
+    const uint32_t g = gcd(in_sampling_rate, out_sampling_rate);
+    const uint32_t L = out_sampling_rate / g;
+    const uint32_t M = in_sampling_rate / g;
+
+    return (L != M) && (L <= kMaxInterpolationFactor) && (M <= (L * kMaxDecimationRatio));
+}
+
+int PolyphaseResamplerCoeffBank::design(uint32_t in_sampling_rate, uint32_t out_sampling_rate,
+                                        quality_t quality) noexcept
+{
+    if (!sIsSupportedRatio(in_sampling_rate, out_sampling_rate))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    if (!(quality == QUALITY_LOW || quality == QUALITY_MIDDLE || quality == QUALITY_HIGH))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    const filter_spec_t &spec = kFilterSpecs[quality];
+    const uint32_t g = gcd(in_sampling_rate, out_sampling_rate);
+    const uint32_t L = out_sampling_rate / g;
+    const uint32_t M = in_sampling_rate / g;
+
+    // widen the filter for decimation to keep the transition band width
+    uint32_t num_taps = spec.num_taps;
+    if (M > L) {
+        num_taps = (num_taps * M + (L - 1)) / L;
+    }
+    num_taps = (num_taps + 3) & ~3U;
+
+    const uint32_t N = L * num_taps;
+
+    std::vector<double> h;
+
+    try
+    {
+        h.resize(N);
+        coeffs_.allocate(static_cast<size_t>(N) * 2);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    // prototype low-pass filter (at the L times upsampled rate)
+    // NOTE: the center is placed at N / 2 (= integer sample), so the delay is
+    // exactly (num_taps / 2) input frames (compensated in PolyphaseResampler::reset())
+    const double fc = (0.5 * spec.rolloff) / (std::max)(L, M);
+    const double center = N * 0.5;
+    const double inv_i0_beta = 1.0 / bessel_i0(spec.kaiser_beta);
+
+    for (uint32_t n = 0; n < N; ++n) {
+        const double x = n - center;
+        const double r = x / center;
+        const double wx = 2.0 * M_PI * fc * x;
+        const double sinc = (x == 0.0) ? 1.0 : (::sin(wx) / wx);
+        const double w = bessel_i0(spec.kaiser_beta * ::sqrt((std::max)(0.0, 1.0 - r * r))) * inv_i0_beta;
+
+        h[n] = sinc * w;
+    }
+
+    // decompose into phases (reversed & duplicated for stereo, normalized to unity DC gain)
+    for (uint32_t p = 0; p < L; ++p) {
+        double sum = 0.0;
+
+        for (uint32_t k = 0; k < num_taps; ++k) {
+            sum += h[p + k * L];
+        }
+
+        const double scale = (sum != 0.0) ? (1.0 / sum) : 0.0;
+        float *dest = &coeffs_[static_cast<size_t>(p) * num_taps * 2];
+
+        for (uint32_t t = 0; t < num_taps; ++t) {
+            const float c = static_cast<float>(h[p + (num_taps - 1 - t) * L] * scale);
+            dest[2 * t + 0] = c;
+            dest[2 * t + 1] = c;
+        }
+    }
+
+    in_sampling_rate_ = in_sampling_rate;
+    out_sampling_rate_ = out_sampling_rate;
+    quality_ = quality;
+    interpolation_factor_ = L;
+    decimation_factor_ = M;
+    num_taps_ = num_taps;
+
+    LOGD("Polyphase resampler coefficients: %u -> %u Hz, L = %u, M = %u, taps = %u", in_sampling_rate,
+         out_sampling_rate, L, M, num_taps);
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+uint32_t PolyphaseResamplerCoeffBank::getInSamplingRate() const noexcept { return in_sampling_rate_; }
+
+uint32_t PolyphaseResamplerCoeffBank::getOutSamplingRate() const noexcept { return out_sampling_rate_; }
+
+PolyphaseResamplerCoeffBank::quality_t PolyphaseResamplerCoeffBank::getQuality() const noexcept { return quality_; }
+
+uint32_t PolyphaseResamplerCoeffBank::getInterpolationFactor() const noexcept { return interpolation_factor_; }
+
+uint32_t PolyphaseResamplerCoeffBank::getDecimationFactor() const noexcept { return decimation_factor_; }
+
+uint32_t PolyphaseResamplerCoeffBank::getNumTaps() const noexcept { return num_taps_; }
+
+const float *PolyphaseResamplerCoeffBank::getPhaseCoeffs(uint32_t phase) const noexcept
+{
+    return &coeffs_[static_cast<size_t>(phase) * num_taps_ * 2];
+}
+
+size_t PolyphaseResamplerCoeffBank::getSizeInBytes() const noexcept
+{
+    return sizeof(float) * 2 * static_cast<size_t>(interpolation_factor_) * num_taps_;
+}
+
+//
+// PolyphaseResamplerCoeffBankCache
+//
+PolyphaseResamplerCoeffBankCache::PolyphaseResamplerCoeffBankCache(size_t capacity_in_bytes)
+    : mutex_(), cv_(), capacity_in_bytes_(capacity_in_bytes), banks_(), designing_()
+{
+}
+
+PolyphaseResamplerCoeffBankCache::~PolyphaseResamplerCoeffBankCache() { clear(); }
+
+int PolyphaseResamplerCoeffBankCache::obtain(uint32_t in_sampling_rate, uint32_t out_sampling_rate,
+                                             PolyphaseResamplerCoeffBank::quality_t quality,
+                                             android::sp<PolyphaseResamplerCoeffBank> &bank) noexcept
+{
+    bank.clear();
+
+    key_t key;
+
+    key.in_sampling_rate = in_sampling_rate;
+    key.out_sampling_rate = out_sampling_rate;
+    key.quality = quality;
+
+    utils::pt_unique_lock lock(mutex_);
+
+    // NOTE: the concurrent requests for the same bank wait for the first one
+    while (true) {
+        if (lookup(key, bank))
+            return OSLMP_RESULT_SUCCESS;
+
+        if (!isDesigning(key))
+            break;
+
+        cv_.wait(lock);
+    }
+
+    try
+    {
+        designing_.push_back(key);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    // design without holding the lock (the requests for the other banks are not blocked)
+    lock.unlock();
+
+    android::sp<PolyphaseResamplerCoeffBank> new_bank(new (std::nothrow) PolyphaseResamplerCoeffBank());
+    int result = OSLMP_RESULT_MEMORY_ALLOCATION_FAILED;
+
+    if (new_bank.get()) {
+        result = new_bank->design(in_sampling_rate, out_sampling_rate, quality);
+    }
+
+    lock.lock();
+
+    designing_.erase(std::find(designing_.begin(), designing_.end(), key));
+    cv_.notify_all();
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    try
+    {
+        banks_.insert(banks_.begin(), new_bank);
+    }
+    catch (const std::bad_alloc &)
+    {
+        // NOTE: the bank is usable without being cached
+    }
+
+    evict();
+
+    bank = new_bank;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void PolyphaseResamplerCoeffBankCache::clear() noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+    banks_.clear();
+}
+
+size_t PolyphaseResamplerCoeffBankCache::getNumBanks() const noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+    return banks_.size();
+}
+
+size_t PolyphaseResamplerCoeffBankCache::getTotalSizeInBytes() const noexcept
+{
+    utils::pt_unique_lock lock(mutex_);
+
+    size_t total = 0;
+
+    for (size_t i = 0; i < banks_.size(); ++i) {
+        total += banks_[i]->getSizeInBytes();
+    }
+
+    return total;
+}
+
+bool PolyphaseResamplerCoeffBankCache::lookup(const key_t &key,
+                                              android::sp<PolyphaseResamplerCoeffBank> &bank) noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    for (size_t i = 0; i < banks_.size(); ++i) {
+        if (key.matches(*(banks_[i]))) {
+            // move to front
+            std::rotate(banks_.begin(), banks_.begin() + i, banks_.begin() + i + 1);
+            bank = banks_[0];
+            return true;
+        }
+    }
+
+    return false;
+}
+
+bool PolyphaseResamplerCoeffBankCache::isDesigning(const key_t &key) const noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    return std::find(designing_.begin(), designing_.end(), key) != designing_.end();
+}
+
+void PolyphaseResamplerCoeffBankCache::evict() noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    size_t total = 0;
+    size_t n = 0;
+
+    // keep the most recently used banks within the capacity (the first one is always kept)
+    for (; n < banks_.size(); ++n) {
+        const size_t size = banks_[n]->getSizeInBytes();
+
+        if (n > 0 && (total + size) > capacity_in_bytes_)
+            break;
+
+        total += size;
+    }
+
+    // NOTE: the evicted banks are released when the resamplers using them are destroyed
+    banks_.resize(n);
+}
+
+bool PolyphaseResamplerCoeffBankCache::key_t::matches(const PolyphaseResamplerCoeffBank &bank) const noexcept
+{
+    return bank.getInSamplingRate() == in_sampling_rate && bank.getOutSamplingRate() == out_sampling_rate &&
+           bank.getQuality() == quality;
+}
+
+bool PolyphaseResamplerCoeffBankCache::key_t::operator==(const key_t &other) const noexcept
+{
+    return in_sampling_rate == other.in_sampling_rate && out_sampling_rate == other.out_sampling_rate &&
+           quality == other.quality;
+}
+
+//
+// PolyphaseResampler
+//
+PolyphaseResampler::PolyphaseResampler()
+    : bank_(), buffer_(), capacity_(0), num_frames_(0), position_(0), phase_(0), num_flush_frames_(0)
+{
+}
+
+PolyphaseResampler::~PolyphaseResampler() {}
+
+int PolyphaseResampler::init(const android::sp<PolyphaseResamplerCoeffBank> &bank) noexcept
+{
+    if (!(bank.get() && bank->getNumTaps()))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    const uint32_t capacity = 2 * bank->getNumTaps() + MIN_INPUT_CHUNK_SIZE;
+
+    try
+    {
+        buffer_.allocate(static_cast<size_t>(capacity) * 2);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    bank_ = bank;
+    capacity_ = capacity;
+
+    reset();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void PolyphaseResampler::reset() noexcept
+{
+    if (CXXPH_UNLIKELY(!bank_.get()))
+        return;
+
+    const uint32_t num_taps = bank_->getNumTaps();
+
+    // NOTE:
+    // The first output is computed when (num_taps - 1) frames are available.
+    // (num_taps / 2 - 1) frames of silence are prepended, so the center of
+    // the filter is aligned to the first input frame (no delay).
+    const uint32_t num_prepended = num_taps / 2 - 1;
+
+    ::memset(&buffer_[0], 0, sizeof(float) * 2 * num_prepended);
+
+    num_frames_ = num_prepended;
+    position_ = num_taps - 1;
+    phase_ = 0;
+    num_flush_frames_ = 0;
+}
+
+int PolyphaseResampler::num_can_put() const noexcept
+{
+    const uint32_t num_taps = bank_->getNumTaps();
+    const uint32_t discardable = (std::min)(position_ - (num_taps - 1), num_frames_);
+
+    return static_cast<int>(capacity_ - num_frames_ + discardable);
+}
+
+void PolyphaseResampler::put_n(const float *src, int n) noexcept
+{
+    compact();
+
+    const uint32_t count = (std::min)(static_cast<uint32_t>((std::max)(n, 0)), capacity_ - num_frames_);
+
+    ::memcpy(&buffer_[2 * num_frames_], src, sizeof(float) * 2 * count);
+    num_frames_ += count;
+}
+
+int PolyphaseResampler::num_can_get() noexcept
+{
+    append_flush_frames();
+
+    if (position_ >= num_frames_)
+        return 0;
+
+    const uint64_t L = bank_->getInterpolationFactor();
+    const uint64_t M = bank_->getDecimationFactor();
+    const uint64_t available = num_frames_ - position_;
+    const uint64_t count = (available * L - phase_ + (M - 1)) / M;
+
+    return static_cast<int>((std::min)(count, static_cast<uint64_t>((std::numeric_limits<int>::max)())));
+}
+
+void PolyphaseResampler::get_n(float *dest, int n) noexcept
+{
+    const PolyphaseResamplerCoeffBank *bank = bank_.get();
+    const uint32_t num_taps = bank->getNumTaps();
+    const uint32_t L = bank->getInterpolationFactor();
+    const uint32_t M = bank->getDecimationFactor();
+    const float *buffer = &buffer_[0];
+    uint32_t position = position_;
+    uint32_t phase = phase_;
+
+    for (int i = 0; i < n; ++i) {
+        if (CXXPH_UNLIKELY(position >= num_frames_))
+            break;
+
+        dot_product_f32_stereo(&buffer[2 * (position - (num_taps - 1))], bank->getPhaseCoeffs(phase), num_taps,
+                               &dest[2 * i]);
+
+        phase += M;
+        position += phase / L;
+        phase %= L;
+    }
+
+    position_ = position;
+    phase_ = phase;
+}
+
+void PolyphaseResampler::flush() noexcept
+{
+    if (CXXPH_UNLIKELY(!bank_.get()))
+        return;
+
+    // append silence to output the tail of the filter response
+    num_flush_frames_ = bank_->getNumTaps() / 2;
+    append_flush_frames();
+}
+
+void PolyphaseResampler::compact() noexcept
+{
+    const uint32_t num_taps = bank_->getNumTaps();
+    const uint32_t discardable = (std::min)(position_ - (num_taps - 1), num_frames_);
+
+    if (discardable == 0)
+        return;
+
+    ::memmove(&buffer_[0], &buffer_[2 * discardable], sizeof(float) * 2 * (num_frames_ - discardable));
+
+    num_frames_ -= discardable;
+    position_ -= discardable;
+}
+
+void PolyphaseResampler::append_flush_frames() noexcept
+{
+    if (CXXPH_LIKELY(num_flush_frames_ == 0))
+        return;
+
+    compact();
+
+    const uint32_t count = (std::min)(num_flush_frames_, capacity_ - num_frames_);
+
+    ::memset(&buffer_[2 * num_frames_], 0, sizeof(float) * 2 * count);
+
+    num_frames_ += count;
+    num_flush_frames_ -= count;
+}
+
+} // namespace impl
+} // namespace oslmp
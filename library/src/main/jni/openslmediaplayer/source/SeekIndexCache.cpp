@@ -0,0 +1,1107 @@
+//
+//    Copyright (C) 2014 Haruki Hasegawa
+//
+//    Licensed under the Apache License, Version 2.0 (the "License");
+//    you may not use this file except in compliance with the License.
+//    You may obtain a copy of the License at
+//
+//        http://www.apache.org/licenses/LICENSE-2.0
+//
+//    Unless required by applicable law or agreed to in writing, software
+//    distributed under the License is distributed on an "AS IS" BASIS,
+//    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//    See the License for the specific language governing permissions and
+//    limitations under the License.
+//
+
+// #define LOG_TAG "SeekIndexCache"
+
+#include "oslmp/impl/SeekIndexCache.hpp"
+
+#include <algorithm>
+#include <cerrno>
+#include <cstdio>
+#include <cstring>
+#include <dirent.h>
+#include <fcntl.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
+#include <cxxporthelper/compiler.hpp>
+
+#include <loghelper/loghelper.h>
+
+#include <oslmp/OpenSLMediaPlayerResultCodes.hpp>
+
+#include "oslmp/impl/AndroidHelper.hpp"
+
+namespace oslmp {
+namespace impl {
+
+namespace {
+
+const char INDEX_FILE_MAGIC[8] = { 'O', 'S', 'L', 'M', 'P', 'S', 'I', 'X' };
+const uint32_t INDEX_FILE_VERSION = 1;
+const char INDEX_FILE_EXTENSION[] = ".idx";
+const char TEMP_FILE_EXTENSION[] = ".idx.tmp";
+
+const uint32_t MAX_NUM_FRAMES = (1U << 26);
+const int64_t SYNC_SEARCH_LIMIT = 64 * 1024;   // [bytes]
+const int64_t RESYNC_SEARCH_LIMIT = 16 * 1024; // [bytes]
+const int NUM_SYNC_CHECK_FRAMES = 2;
+const size_t FRAME_HEADER_PEEK_SIZE = 7;
+
+// NOTE: the index file is only read on the same device, so it is stored in the native byte order
+struct index_file_header_t {
+    char magic[8];
+    uint32_t version;
+    uint32_t format;
+    uint32_t sampling_rate;
+    uint32_t samples_per_frame;
+    uint32_t num_preroll_frames;
+    uint32_t num_frames;
+    int64_t first_frame_offset;
+};
+
+struct frame_header_t {
+    uint32_t signature; // header bits which have to be constant in a stream
+    uint32_t sampling_rate;
+    uint32_t samples_per_frame;
+    uint32_t frame_size;
+    uint32_t layer;       // (MPEG audio only)
+    uint32_t side_info_size; // (MPEG audio Layer III only)
+};
+
+class StreamReader {
+public:
+    enum { BUFFER_SIZE = 64 * 1024 };
+
+    StreamReader(int fd, int64_t base, int64_t length)
+        : fd_(fd), base_(base), length_(length), buffer_(BUFFER_SIZE), buf_pos_(0), buf_len_(0)
+    {
+    }
+
+    int64_t length() const noexcept { return length_; }
+
+    // returns nullptr if the n bytes at the position are not available
+    const uint8_t *peek(int64_t pos, size_t n) noexcept
+    {
+        if (CXXPH_UNLIKELY(pos < 0 || (pos + static_cast<int64_t>(n)) > length_))
+            return nullptr;
+
+        if (!(pos >= buf_pos_ && (pos + static_cast<int64_t>(n)) <= (buf_pos_ + buf_len_))) {
+            const size_t to_read = static_cast<size_t>((std::min)(static_cast<int64_t>(BUFFER_SIZE), length_ - pos));
+            ssize_t nread;
+
+            do {
+                nread = ::pread(fd_, &buffer_[0], to_read, base_ + pos);
+            } while (nread < 0 && errno == EINTR);
+
+            if (nread < static_cast<ssize_t>(n))
+                return nullptr;
+
+            buf_pos_ = pos;
+            buf_len_ = nread;
+        }
+
+        return &buffer_[static_cast<size_t>(pos - buf_pos_)];
+    }
+
+private:
+    int fd_;
+    int64_t base_;
+    int64_t length_;
+    std::vector<uint8_t> buffer_;
+    int64_t buf_pos_;
+    int64_t buf_len_;
+};
+
+bool parseMpegAudioFrameHeader(const uint8_t *h, frame_header_t &fh) noexcept
+{
+    static const uint16_t bitrate_table[2][3][16] = {
+        // MPEG 1
+        { { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448, 0 }, // Layer I
+          { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384, 0 },    // Layer II
+          { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0 } },   // Layer III
+        // MPEG 2, 2.5
+        { { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256, 0 }, // Layer I
+          { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0 },      // Layer II
+          { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0 } },    // Layer III
+    };
+    static const uint32_t sampling_rate_table[3] = { 44100, 48000, 32000 };
+
+    if (!(h[0] == 0xff && (h[1] & 0xe0) == 0xe0))
+        return false;
+
+    const uint32_t version = (h[1] >> 3) & 0x3; // 0: MPEG 2.5, 1: reserved, 2: MPEG 2, 3: MPEG 1
+    const uint32_t layer = 4 - ((h[1] >> 1) & 0x3);
+    const uint32_t bitrate_index = (h[2] >> 4) & 0xf;
+    const uint32_t sampling_rate_index = (h[2] >> 2) & 0x3;
+    const uint32_t padding = (h[2] >> 1) & 0x1;
+    const uint32_t channel_mode = (h[3] >> 6) & 0x3;
+
+    // NOTE: free format bitstreams are not supported
+    if (version == 1 || layer == 4 || bitrate_index == 0 || bitrate_index == 15 || sampling_rate_index == 3)
+        return false;
+
+    const bool is_mpeg1 = (version == 3);
+    const uint32_t bitrate = bitrate_table[is_mpeg1 ? 0 : 1][layer - 1][bitrate_index] * 1000U;
+    const uint32_t sampling_rate = sampling_rate_table[sampling_rate_index] >> ((version == 3) ? 0 : (version == 2) ? 1 : 2);
+
+    uint32_t samples_per_frame;
+    uint32_t frame_size;
+
+    switch (layer) {
+    case 1:
+        samples_per_frame = 384;
+        frame_size = ((12 * bitrate / sampling_rate) + padding) * 4;
+        break;
+    case 2:
+        samples_per_frame = 1152;
+        frame_size = (144 * bitrate / sampling_rate) + padding;
+        break;
+    default:
+        samples_per_frame = (is_mpeg1) ? 1152 : 576;
+        frame_size = (((is_mpeg1) ? 144 : 72) * bitrate / sampling_rate) + padding;
+        break;
+    }
+
+    fh.signature = ((h[1] & 0xfe) << 8) | (h[2] & 0x0c);
+    fh.sampling_rate = sampling_rate;
+    fh.samples_per_frame = samples_per_frame;
+    fh.frame_size = frame_size;
+    fh.layer = layer;
+    fh.side_info_size = (is_mpeg1) ? ((channel_mode == 3) ? 17 : 32) : ((channel_mode == 3) ? 9 : 17);
+
+    return (frame_size > 4);
+}
+
+bool parseAdtsFrameHeader(const uint8_t *h, frame_header_t &fh) noexcept
+{
+    static const uint32_t sampling_rate_table[16] = { 96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050,
+                                                      16000, 12000, 11025, 8000,  7350,  0,     0,     0 };
+
+    // syncword (12 bits) + layer (must be 0)
+    if (!(h[0] == 0xff && (h[1] & 0xf6) == 0xf0))
+        return false;
+
+    const uint32_t protection_absent = h[1] & 0x1;
+    const uint32_t sampling_rate = sampling_rate_table[(h[2] >> 2) & 0xf];
+    const uint32_t frame_size = ((h[3] & 0x3) << 11) | (h[4] << 3) | ((h[5] >> 5) & 0x7);
+    const uint32_t num_raw_data_blocks = (h[6] & 0x3) + 1;
+    const uint32_t header_size = (protection_absent) ? 7 : 9;
+
+    if (sampling_rate == 0 || frame_size <= header_size)
+        return false;
+
+    fh.signature = ((h[1] & 0xfe) << 16) | ((h[2] & 0xfc) << 8) | (h[6] & 0x3);
+    fh.sampling_rate = sampling_rate;
+    fh.samples_per_frame = 1024 * num_raw_data_blocks;
+    fh.frame_size = frame_size;
+    fh.layer = 0;
+    fh.side_info_size = 0;
+
+    return true;
+}
+
+bool parseFrameHeader(uint32_t format, const uint8_t *h, frame_header_t &fh) noexcept
+{
+    switch (format) {
+    case SeekIndex::FORMAT_MPEG_AUDIO:
+        return parseMpegAudioFrameHeader(h, fh);
+    case SeekIndex::FORMAT_ADTS:
+        return parseAdtsFrameHeader(h, fh);
+    default:
+        return false;
+    }
+}
+
+bool checkFollowingFrames(StreamReader &reader, int64_t pos, uint32_t format, const frame_header_t &fh) noexcept
+{
+    int64_t next = pos + fh.frame_size;
+
+    for (int i = 0; i < NUM_SYNC_CHECK_FRAMES; ++i) {
+        if (next == reader.length())
+            return true;
+
+        const uint8_t *h = reader.peek(next, FRAME_HEADER_PEEK_SIZE);
+        frame_header_t fh2;
+
+        if (!(h && parseFrameHeader(format, h, fh2) && fh2.signature == fh.signature))
+            return false;
+
+        next += fh2.frame_size;
+    }
+
+    return true;
+}
+
+// NOTE: format == FORMAT_UNKNOWN detects the format
+bool findSyncedFrame(StreamReader &reader, int64_t start, int64_t limit, uint32_t &format, uint32_t signature,
+                     frame_header_t &fh, int64_t &found_pos) noexcept
+{
+    static const uint32_t candidates[] = { SeekIndex::FORMAT_MPEG_AUDIO, SeekIndex::FORMAT_ADTS };
+
+    for (int64_t pos = start; pos < limit; ++pos) {
+        const uint8_t *h = reader.peek(pos, FRAME_HEADER_PEEK_SIZE);
+
+        if (!h)
+            return false;
+
+        if (h[0] != 0xff)
+            continue;
+
+        for (uint32_t candidate : candidates) {
+            if (format != SeekIndex::FORMAT_UNKNOWN && format != candidate)
+                continue;
+
+            if (!parseFrameHeader(candidate, h, fh))
+                continue;
+
+            if (signature != 0 && fh.signature != signature)
+                continue;
+
+            if (checkFollowingFrames(reader, pos, candidate, fh)) {
+                format = candidate;
+                found_pos = pos;
+                return true;
+            }
+        }
+    }
+
+    return false;
+}
+
+int64_t skipId3v2Tag(StreamReader &reader) noexcept
+{
+    const uint8_t *h = reader.peek(0, 10);
+
+    if (!(h && h[0] == 'I' && h[1] == 'D' && h[2] == '3'))
+        return 0;
+
+    // syncsafe integer
+    const int64_t size = (static_cast<int64_t>(h[6] & 0x7f) << 21) | ((h[7] & 0x7f) << 14) | ((h[8] & 0x7f) << 7) |
+                         (h[9] & 0x7f);
+    const bool has_footer = (h[5] & 0x10) != 0;
+
+    return 10 + size + ((has_footer) ? 10 : 0);
+}
+
+bool hasSuffix(const char *str, const char *suffix) noexcept
+{
+    const size_t len = ::strlen(str);
+    const size_t suffix_len = ::strlen(suffix);
+
+    return (len > suffix_len) && (::strcmp(&str[len - suffix_len], suffix) == 0);
+}
+
+bool isVbrInfoFrame(StreamReader &reader, int64_t pos, const frame_header_t &fh) noexcept
+{
+    // Xing / Info / VBRI header frames do not contain audio data
+    if (fh.layer != 3)
+        return false;
+
+    const uint8_t *p = reader.peek(pos, 4 + 32 + 4);
+
+    if (!p)
+        return false;
+
+    const uint8_t *xing = p + 4 + fh.side_info_size;
+    const uint8_t *vbri = p + 4 + 32;
+
+    return (::memcmp(xing, "Xing", 4) == 0 || ::memcmp(xing, "Info", 4) == 0 || ::memcmp(vbri, "VBRI", 4) == 0);
+}
+
+} // anonymous namespace
+
+//
+// SeekIndex
+//
+SeekIndex::SeekIndex()
+    : format_(FORMAT_UNKNOWN), sampling_rate_(0), samples_per_frame_(0), num_preroll_frames_(0), first_frame_offset_(0),
+      frame_strides_(), checkpoints_()
+{
+}
+
+SeekIndex::~SeekIndex() {}
+
+bool SeekIndex::isValid() const noexcept
+{
+    return (format_ != FORMAT_UNKNOWN) && (sampling_rate_ != 0) && (samples_per_frame_ != 0) &&
+           !frame_strides_.empty() && !checkpoints_.empty();
+}
+
+uint32_t SeekIndex::getDurationInMsec() const noexcept
+{
+    if (!isValid())
+        return 0;
+
+    const uint64_t num_samples = static_cast<uint64_t>(frame_strides_.size()) * samples_per_frame_;
+
+    return static_cast<uint32_t>(num_samples * 1000 / sampling_rate_);
+}
+
+bool SeekIndex::findSeekPoint(int32_t msec, seek_point_t &point) const noexcept
+{
+    if (!isValid() || msec < 0)
+        return false;
+
+    const uint32_t num_frames = static_cast<uint32_t>(frame_strides_.size());
+    const uint64_t target_sample = static_cast<uint64_t>(msec) * sampling_rate_ / 1000;
+    const uint32_t frame =
+        static_cast<uint32_t>((std::min)(target_sample / samples_per_frame_, static_cast<uint64_t>(num_frames - 1)));
+
+    // NOTE: start decoding a few frames earlier to fill the bit reservoir / overlap buffer of the decoder
+    const uint32_t start_frame = (frame > num_preroll_frames_) ? (frame - num_preroll_frames_) : 0;
+    const uint64_t start_sample = static_cast<uint64_t>(start_frame) * samples_per_frame_;
+
+    point.offset = getFrameOffset(start_frame);
+    point.length = getFrameOffset(num_frames) - point.offset;
+    point.skip_usec = static_cast<uint32_t>((target_sample - start_sample) * 1000000 / sampling_rate_);
+
+    return true;
+}
+
+int64_t SeekIndex::getFrameOffset(uint32_t frame) const noexcept
+{
+    const uint32_t cp = frame / CHECKPOINT_INTERVAL;
+    int64_t offset = checkpoints_[cp];
+
+    for (uint32_t i = cp * CHECKPOINT_INTERVAL; i < frame; ++i) {
+        offset += frame_strides_[i];
+    }
+
+    return offset;
+}
+
+bool SeekIndex::updateCheckpoints() noexcept
+{
+    const size_t n = frame_strides_.size();
+    int64_t offset = first_frame_offset_;
+
+    try
+    {
+        checkpoints_.clear();
+        checkpoints_.reserve((n / CHECKPOINT_INTERVAL) + 1);
+
+        for (size_t i = 0; i <= n; ++i) {
+            if ((i % CHECKPOINT_INTERVAL) == 0) {
+                checkpoints_.push_back(offset);
+            }
+            if (i < n) {
+                offset += frame_strides_[i];
+            }
+        }
+    }
+    catch (const std::bad_alloc &) { return false; }
+
+    return true;
+}
+
+bool SeekIndex::build(int fd, int64_t offset, int64_t length, const std::atomic_bool *cancel) noexcept
+{
+    StreamReader reader(fd, offset, length);
+    uint32_t format = FORMAT_UNKNOWN;
+    frame_header_t first_fh;
+    int64_t pos = skipId3v2Tag(reader);
+
+    frame_strides_.clear();
+    checkpoints_.clear();
+    format_ = FORMAT_UNKNOWN;
+
+    if (!findSyncedFrame(reader, pos, pos + SYNC_SEARCH_LIMIT, format, 0, first_fh, pos))
+        return false;
+
+    if (format == FORMAT_MPEG_AUDIO && isVbrInfoFrame(reader, pos, first_fh)) {
+        pos += first_fh.frame_size;
+    }
+
+    const uint32_t signature = first_fh.signature;
+    int64_t prev_pos = -1;
+    uint32_t prev_frame_size = 0;
+
+    try
+    {
+        while (true) {
+            if (cancel && cancel->load(std::memory_order_relaxed))
+                return false;
+
+            const uint8_t *h = reader.peek(pos, FRAME_HEADER_PEEK_SIZE);
+            frame_header_t fh;
+
+            if (!h)
+                break;
+
+            if (!(parseFrameHeader(format, h, fh) && fh.signature == signature)) {
+                // lost sync (junk data or trailing tags)
+                if (!findSyncedFrame(reader, pos + 1, pos + RESYNC_SEARCH_LIMIT, format, signature, fh, pos))
+                    break;
+            }
+
+            // truncated frame
+            if ((pos + fh.frame_size) > length)
+                break;
+
+            if (prev_pos >= 0) {
+                const int64_t stride = pos - prev_pos;
+
+                if (stride > 0xffff)
+                    return false;
+
+                frame_strides_.push_back(static_cast<uint16_t>(stride));
+            } else {
+                first_frame_offset_ = pos;
+            }
+
+            if (frame_strides_.size() >= MAX_NUM_FRAMES)
+                return false;
+
+            prev_pos = pos;
+            prev_frame_size = fh.frame_size;
+            pos += fh.frame_size;
+        }
+
+        if (prev_pos < 0)
+            return false;
+
+        // NOTE: the stride of the last frame is its size
+        frame_strides_.push_back(static_cast<uint16_t>(prev_frame_size));
+    }
+    catch (const std::bad_alloc &) { return false; }
+
+    format_ = format;
+    sampling_rate_ = first_fh.sampling_rate;
+    samples_per_frame_ = first_fh.samples_per_frame;
+    num_preroll_frames_ = (format == FORMAT_MPEG_AUDIO && first_fh.layer == 3) ? 4 : 1;
+
+    if (!updateCheckpoints())
+        return false;
+
+    LOGD("build(); format = %u, %zu frames, duration = %u ms", format_, frame_strides_.size(), getDurationInMsec());
+
+    return true;
+}
+
+bool SeekIndex::load(const char *path) noexcept
+{
+    FILE *fp = ::fopen(path, "rb");
+
+    if (!fp)
+        return false;
+
+    index_file_header_t header;
+    bool result = false;
+
+    frame_strides_.clear();
+    checkpoints_.clear();
+    format_ = FORMAT_UNKNOWN;
+
+    if (::fread(&header, sizeof(header), 1, fp) == 1 &&
+        ::memcmp(header.magic, INDEX_FILE_MAGIC, sizeof(INDEX_FILE_MAGIC)) == 0 &&
+        header.version == INDEX_FILE_VERSION &&
+        (header.format == FORMAT_MPEG_AUDIO || header.format == FORMAT_ADTS) && header.sampling_rate != 0 &&
+        header.samples_per_frame != 0 && header.num_frames != 0 && header.num_frames <= MAX_NUM_FRAMES &&
+        header.first_frame_offset >= 0) {
+        try
+        {
+            frame_strides_.resize(header.num_frames);
+
+            if (::fread(&frame_strides_[0], sizeof(uint16_t), header.num_frames, fp) == header.num_frames) {
+                first_frame_offset_ = header.first_frame_offset;
+                sampling_rate_ = header.sampling_rate;
+                samples_per_frame_ = header.samples_per_frame;
+                num_preroll_frames_ = header.num_preroll_frames;
+
+                result = updateCheckpoints();
+            }
+        }
+        catch (const std::bad_alloc &) {}
+    }
+
+    ::fclose(fp);
+
+    if (result) {
+        format_ = header.format;
+    } else {
+        frame_strides_.clear();
+        checkpoints_.clear();
+    }
+
+    return result;
+}
+
+bool SeekIndex::save(const char *path) const noexcept
+{
+    if (!isValid())
+        return false;
+
+    std::string tmp_path;
+
+    try
+    {
+        tmp_path = path;
+        tmp_path += ".tmp";
+    }
+    catch (const std::bad_alloc &) { return false; }
+
+    FILE *fp = ::fopen(tmp_path.c_str(), "wb");
+
+    if (!fp)
+        return false;
+
+    index_file_header_t header;
+
+    ::memset(&header, 0, sizeof(header));
+    ::memcpy(header.magic, INDEX_FILE_MAGIC, sizeof(INDEX_FILE_MAGIC));
+    header.version = INDEX_FILE_VERSION;
+    header.format = format_;
+    header.sampling_rate = sampling_rate_;
+    header.samples_per_frame = samples_per_frame_;
+    header.num_preroll_frames = num_preroll_frames_;
+    header.num_frames = static_cast<uint32_t>(frame_strides_.size());
+    header.first_frame_offset = first_frame_offset_;
+
+    bool written = (::fwrite(&header, sizeof(header), 1, fp) == 1) &&
+                   (::fwrite(&frame_strides_[0], sizeof(uint16_t), frame_strides_.size(), fp) ==
+                    frame_strides_.size());
+
+    written = (::fclose(fp) == 0) && written;
+
+    // NOTE: rename the file atomically so that the readers never see a partially written file
+    if (!(written && ::rename(tmp_path.c_str(), path) == 0)) {
+        (void)::unlink(tmp_path.c_str());
+        return false;
+    }
+
+    return true;
+}
+
+//
+// SeekIndexCache
+//
+SeekIndexCache::SeekIndexCache()
+    : directory_(), max_storage_size_(DEFAULT_MAX_STORAGE_SIZE), mutex_(), cv_(), entries_(), jobs_(),
+      processing_key_(), stored_files_(), stored_files_index_(), storage_size_(0), pt_handle_(0), stop_request_(false)
+{
+}
+
+SeekIndexCache::~SeekIndexCache()
+{
+    stopWorkerThread();
+
+    for (auto &job : jobs_) {
+        if (job.fd >= 0) {
+            ::close(job.fd);
+        }
+    }
+    jobs_.clear();
+}
+
+int SeekIndexCache::initialize(const initialize_args_t &args) noexcept
+{
+    if (pt_handle_)
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    try
+    {
+        directory_.clear();
+
+        if (args.directory && args.directory[0] != '\0') {
+            directory_ = args.directory;
+        }
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    max_storage_size_ = args.max_storage_size;
+
+    if (!directory_.empty()) {
+        if (::mkdir(directory_.c_str(), 0700) != 0 && errno != EEXIST) {
+            LOGW("Failed to create the seek index cache directory (errno = %d)", errno);
+            directory_.clear();
+        }
+    }
+
+    if (!directory_.empty()) {
+        // apply the size limit to the files stored by the previous sessions
+        scanStoredFiles();
+    }
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+bool SeekIndexCache::isEnabled() const noexcept { return !directory_.empty(); }
+
+bool SeekIndexCache::lookup(const std::string &key, android::sp<SeekIndex> &index) noexcept
+{
+    bool found = false;
+
+    index.clear();
+
+    if (!isEnabled() || key.empty())
+        return false;
+
+    std::string path;
+
+    try
+    {
+        makeFilePath(key, path);
+    }
+    catch (const std::bad_alloc &) { return false; }
+
+    // memory
+    if (findEntry(key, index, found)) {
+        touchStoredFile(path);
+        return true;
+    }
+
+    if (found)
+        return false; // not supported
+
+    // storage
+
+    android::sp<SeekIndex> loaded(new (std::nothrow) SeekIndex());
+
+    if (!(loaded.get() && loaded->load(path.c_str())))
+        return false;
+
+    touchStoredFile(path);
+    putEntry(key, loaded);
+    index = loaded;
+
+    return true;
+}
+
+int SeekIndexCache::requestIndexing(const std::string &key, const char *path, int fd, int64_t offset,
+                                    int64_t length) noexcept
+{
+    if (!isEnabled())
+        return OSLMP_RESULT_ILLEGAL_STATE;
+
+    if (key.empty() || !(path || fd >= 0))
+        return OSLMP_RESULT_ILLEGAL_ARGUMENT;
+
+    utils::pt_lock_guard lock(mutex_);
+
+    for (const auto &entry : entries_) {
+        if (entry.key == key)
+            return OSLMP_RESULT_SUCCESS;
+    }
+
+    if (isPending(key))
+        return OSLMP_RESULT_SUCCESS;
+
+    try
+    {
+        job_t job;
+
+        job.key = key;
+        job.offset = offset;
+        job.length = length;
+
+        if (path) {
+            job.path = path;
+        } else {
+            // NOTE: the application may close the original fd before the job is processed
+            job.fd = ::dup(fd);
+
+            if (job.fd < 0)
+                return OSLMP_RESULT_RESOURCE_ALLOCATION_FAILED;
+        }
+
+        // drop the oldest request
+        if (jobs_.size() >= MAX_PENDING_JOBS) {
+            if (jobs_.front().fd >= 0) {
+                ::close(jobs_.front().fd);
+            }
+            jobs_.pop_front();
+        }
+
+        jobs_.push_back(job);
+    }
+    catch (const std::bad_alloc &) { return OSLMP_RESULT_MEMORY_ALLOCATION_FAILED; }
+
+    int result = startWorkerThread();
+
+    if (result != OSLMP_RESULT_SUCCESS)
+        return result;
+
+    cv_.notify_one();
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+size_t SeekIndexCache::getStorageSizeInBytes() const noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+    return storage_size_;
+}
+
+bool SeekIndexCache::findEntry(const std::string &key, android::sp<SeekIndex> &index, bool &found) noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    found = false;
+
+    for (auto it = entries_.begin(); it != entries_.end(); ++it) {
+        if ((*it).key == key) {
+            // move to front
+            entries_.splice(entries_.begin(), entries_, it);
+            index = entries_.front().index;
+            found = true;
+            return (index.get() != nullptr);
+        }
+    }
+
+    return false;
+}
+
+void SeekIndexCache::putEntry(const std::string &key, const android::sp<SeekIndex> &index) noexcept
+{
+    utils::pt_lock_guard lock(mutex_);
+
+    for (auto it = entries_.begin(); it != entries_.end(); ++it) {
+        if ((*it).key == key) {
+            entries_.erase(it);
+            break;
+        }
+    }
+
+    try
+    {
+        entry_t entry;
+
+        entry.key = key;
+        entry.index = index;
+
+        entries_.push_front(entry);
+    }
+    catch (const std::bad_alloc &) { return; }
+
+    while (entries_.size() > MAX_MEMORY_ENTRIES) {
+        entries_.pop_back();
+    }
+}
+
+bool SeekIndexCache::isPending(const std::string &key) const noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    if (processing_key_ == key)
+        return true;
+
+    for (const auto &job : jobs_) {
+        if (job.key == key)
+            return true;
+    }
+
+    return false;
+}
+
+void SeekIndexCache::makeFilePath(const std::string &key, std::string &path) const
+{
+    path = directory_;
+    path += '/';
+
+    for (char c : key) {
+        path += (c == ':') ? '_' : c;
+    }
+
+    path += INDEX_FILE_EXTENSION;
+}
+
+void SeekIndexCache::scanStoredFiles() noexcept
+{
+    struct found_file_t {
+        std::string path;
+        size_t size;
+        time_t mtime;
+    };
+
+    std::vector<found_file_t> found;
+    std::vector<std::string> evicted;
+
+    DIR *dir = ::opendir(directory_.c_str());
+
+    if (!dir)
+        return;
+
+    try
+    {
+        struct dirent *ent;
+
+        while ((ent = ::readdir(dir)) != nullptr) {
+            const bool is_index = hasSuffix(ent->d_name, INDEX_FILE_EXTENSION);
+            const bool is_temp = hasSuffix(ent->d_name, TEMP_FILE_EXTENSION);
+
+            if (!(is_index || is_temp))
+                continue;
+
+            found_file_t file;
+            struct stat st;
+
+            file.path = directory_;
+            file.path += '/';
+            file.path += ent->d_name;
+
+            if (is_temp) {
+                // left by an interrupted save()
+                (void)::unlink(file.path.c_str());
+                continue;
+            }
+
+            if (!(::stat(file.path.c_str(), &st) == 0 && S_ISREG(st.st_mode)))
+                continue;
+
+            file.size = static_cast<size_t>(st.st_size);
+            file.mtime = st.st_mtime;
+
+            found.push_back(file);
+        }
+    }
+    catch (const std::bad_alloc &) {}
+
+    ::closedir(dir);
+
+    // least recently used first
+    std::sort(found.begin(), found.end(),
+              [](const found_file_t &a, const found_file_t &b) { return a.mtime < b.mtime; });
+
+    {
+        utils::pt_lock_guard lock(mutex_);
+
+        for (const auto &file : found) {
+            putStoredFile(file.path, file.size);
+        }
+
+        evictStoredFiles(evicted);
+    }
+
+    for (const auto &path : evicted) {
+        (void)::unlink(path.c_str());
+    }
+}
+
+void SeekIndexCache::touchStoredFile(const std::string &path) noexcept
+{
+    // NOTE: the modification time is used to restore the LRU order in scanStoredFiles()
+    (void)::utimensat(AT_FDCWD, path.c_str(), nullptr, 0);
+
+    utils::pt_lock_guard lock(mutex_);
+
+    stored_file_index_t::iterator found = stored_files_index_.find(path);
+
+    if (found != stored_files_index_.end()) {
+        // move to front
+        stored_files_.splice(stored_files_.begin(), stored_files_, (*found).second);
+    }
+}
+
+void SeekIndexCache::putStoredFile(const std::string &path, size_t size) noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    stored_file_index_t::iterator found = stored_files_index_.find(path);
+
+    if (found != stored_files_index_.end()) {
+        storage_size_ -= (*(*found).second).size;
+        stored_files_.erase((*found).second);
+        stored_files_index_.erase(found);
+    }
+
+    try
+    {
+        stored_file_t file;
+
+        file.path = path;
+        file.size = size;
+
+        stored_files_.push_front(file);
+
+        try
+        {
+            stored_files_index_[path] = stored_files_.begin();
+        }
+        catch (const std::bad_alloc &)
+        {
+            stored_files_.pop_front();
+            throw;
+        }
+    }
+    catch (const std::bad_alloc &) { return; }
+
+    storage_size_ += size;
+}
+
+void SeekIndexCache::evictStoredFiles(std::vector<std::string> &evicted) noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller,
+    // and the evicted files have to be deleted by the caller after unlocking the mutex_
+    while (!stored_files_.empty() && storage_size_ > max_storage_size_) {
+        stored_file_t &file = stored_files_.back();
+
+        try
+        {
+            evicted.push_back(file.path);
+        }
+        catch (const std::bad_alloc &) { break; }
+
+        storage_size_ -= file.size;
+        stored_files_index_.erase(file.path);
+        stored_files_.pop_back();
+    }
+}
+
+int SeekIndexCache::startWorkerThread() noexcept
+{
+    // NOTE: the mutex_ have to be locked by the caller
+    if (pt_handle_)
+        return OSLMP_RESULT_SUCCESS;
+
+    pthread_t pt_handle;
+
+    stop_request_ = false;
+
+    if (::pthread_create(&pt_handle, nullptr, &SeekIndexCache::workerThreadEntryFunc, this) != 0) {
+        return OSLMP_RESULT_INTERNAL_ERROR;
+    }
+
+    pt_handle_ = pt_handle;
+
+    return OSLMP_RESULT_SUCCESS;
+}
+
+void SeekIndexCache::stopWorkerThread() noexcept
+{
+    if (!pt_handle_)
+        return;
+
+    {
+        utils::pt_lock_guard lock(mutex_);
+        stop_request_ = true;
+        cv_.notify_one();
+    }
+
+    (void)::pthread_join(pt_handle_, nullptr);
+    pt_handle_ = 0;
+    stop_request_ = false;
+}
+
+void *SeekIndexCache::workerThreadEntryFunc(void *args) noexcept
+{
+    SeekIndexCache *thiz = static_cast<SeekIndexCache *>(args);
+
+    AndroidHelper::setCurrentThreadName("SeekIndexer");
+
+    thiz->workerThreadProcess();
+
+    return nullptr;
+}
+
+void SeekIndexCache::workerThreadProcess() noexcept
+{
+    while (true) {
+        job_t job;
+
+        {
+            utils::pt_unique_lock lock(mutex_);
+
+            while (jobs_.empty() && !stop_request_) {
+                cv_.wait(lock);
+            }
+
+            if (stop_request_)
+                break;
+
+            try
+            {
+                job = jobs_.front();
+                processing_key_ = job.key;
+            }
+            catch (const std::bad_alloc &) {}
+
+            jobs_.pop_front();
+        }
+
+        processJob(job);
+
+        {
+            utils::pt_lock_guard lock(mutex_);
+            processing_key_.clear();
+        }
+    }
+}
+
+void SeekIndexCache::processJob(job_t &job) noexcept
+{
+    int fd = job.fd;
+
+    job.fd = -1;
+
+    if (job.key.empty()) {
+        if (fd >= 0) {
+            ::close(fd);
+        }
+        return;
+    }
+
+    if (!job.path.empty()) {
+        fd = ::open(job.path.c_str(), O_RDONLY);
+    }
+
+    if (fd < 0)
+        return;
+
+    struct stat st;
+    android::sp<SeekIndex> index;
+    bool built = false;
+
+    if (::fstat(fd, &st) == 0 && S_ISREG(st.st_mode)) {
+        const int64_t file_size = static_cast<int64_t>(st.st_size);
+        const int64_t offset = (std::max)(job.offset, static_cast<int64_t>(0));
+        const int64_t length =
+            (job.length < 0 || (offset + job.length) > file_size) ? (file_size - offset) : job.length;
+
+        index = new (std::nothrow) SeekIndex();
+
+        built = (index.get() && length > 0) && index->build(fd, offset, length, &stop_request_);
+    }
+
+    ::close(fd);
+
+    if (stop_request_)
+        return;
+
+    if (built) {
+        std::string path;
+
+        try
+        {
+            makeFilePath(job.key, path);
+        }
+        catch (const std::bad_alloc &) {}
+
+        if (!(path.empty() || index->save(path.c_str()))) {
+            LOGW("Failed to save the seek index");
+        } else if (!path.empty()) {
+            struct stat st;
+            std::vector<std::string> evicted;
+
+            if (::stat(path.c_str(), &st) == 0) {
+                utils::pt_lock_guard lock(mutex_);
+
+                putStoredFile(path, static_cast<size_t>(st.st_size));
+                evictStoredFiles(evicted);
+            }
+
+            for (const auto &evicted_path : evicted) {
+                (void)::unlink(evicted_path.c_str());
+            }
+        }
+    } else {
+        // remember the data source is not supported
+        index.clear();
+    }
+
+    putEntry(job.key, index);
+}
+
+} // namespace impl
+} // namespace oslmp
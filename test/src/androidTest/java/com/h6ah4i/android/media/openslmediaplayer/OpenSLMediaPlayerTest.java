@@ -22,14 +22,28 @@ import android.os.Debug;
 
 import com.h6ah4i.android.media.IMediaPlayerFactory;
 import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerFactory;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.AdaptiveSinkBufferingTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.BasicMediaPlayerClassTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.BassBoostTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.CommandBatchTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.DecoderErrorTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.EnvironmentalReverbTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.EqualizerTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.HQEqualizerTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.HQVisualizerTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.InsertEffectTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.LoopPointsTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.ModuleInstallTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.NativeLibraryLoaderTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.NativeResourceReaperTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.OfflineRendererTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.PlayerPoolTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.PlaylistTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.PreAmpTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.PresetReverbTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.SeekInPlaceTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.SoundPoolTestCase;
+import com.h6ah4i.android.media.openslmediaplayer.classtest.StatusBlockTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.VirtualizerTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.classtest.VisualizerTestCase;
 import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_AttachAuxEffectMethod;
@@ -50,6 +64,7 @@ import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTes
 import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_SetDataSourceFdOffsetLengthMethod;
 import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_SetDataSourcePathMethod;
 import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_SetDataSourceUriMethod;
+import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_SetLoopPointsMethod;
 import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_SetLoopingMethod;
 import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_SetNextMediaPlayerMethod;
 import com.h6ah4i.android.media.openslmediaplayer.methodtest.BasicMediaPlayerTestCase_SetOnBufferingUpdateListenerMethod;
@@ -140,6 +155,21 @@ public class OpenSLMediaPlayerTest extends TestCase {
         suite.addTest(HQEqualizerTestCase.buildTestSuite(factory));
         suite.addTest(PreAmpTestCase.buildTestSuite(factory));
         suite.addTest(HQVisualizerTestCase.buildTestSuite(factory));
+        suite.addTest(SoundPoolTestCase.buildTestSuite(factory));
+        suite.addTest(BasicMediaPlayerTestCase_SetLoopPointsMethod.buildTestSuite(factory));
+        suite.addTest(PlaylistTestCase.buildTestSuite(factory));
+        suite.addTest(CommandBatchTestCase.buildTestSuite(factory));
+        suite.addTest(StatusBlockTestCase.buildTestSuite(factory));
+        suite.addTest(PlayerPoolTestCase.buildTestSuite(factory));
+        suite.addTest(NativeLibraryLoaderTestCase.buildTestSuite(factory));
+        suite.addTest(ModuleInstallTestCase.buildTestSuite(factory));
+        suite.addTest(NativeResourceReaperTestCase.buildTestSuite(factory));
+        suite.addTest(AdaptiveSinkBufferingTestCase.buildTestSuite(factory));
+        suite.addTest(OfflineRendererTestCase.buildTestSuite(factory));
+        suite.addTest(SeekInPlaceTestCase.buildTestSuite(factory));
+        suite.addTest(LoopPointsTestCase.buildTestSuite(factory));
+        suite.addTest(DecoderErrorTestCase.buildTestSuite(factory));
+        suite.addTest(InsertEffectTestCase.buildTestSuite(factory));
 
         return suite;
     }
@@ -0,0 +1,137 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class AdaptiveSinkBufferingTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                AdaptiveSinkBufferingTestCase.class, factoryClazz);
+    }
+
+    public AdaptiveSinkBufferingTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private static OpenSLMediaPlayerContext.Parameters createAdaptiveParams(
+            int minBlocks, int maxBlocks, int shrinkInterval) {
+        final OpenSLMediaPlayerContext.Parameters params = new OpenSLMediaPlayerContext.Parameters();
+
+        params.sinkBufferingMode = OpenSLMediaPlayerContext.SINK_BUFFERING_MODE_ADAPTIVE;
+        params.adaptiveSinkMinBlocks = minBlocks;
+        params.adaptiveSinkMaxBlocks = maxBlocks;
+        params.adaptiveSinkShrinkInterval = shrinkInterval;
+
+        return params;
+    }
+
+    private void assertInvalidParameters(OpenSLMediaPlayerContext.Parameters params) {
+        OpenSLMediaPlayerContext context = null;
+
+        try {
+            context = new OpenSLMediaPlayerContext(getContext(), params);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            releaseQuietly(context);
+        }
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testInvalidParameters() throws Exception {
+        // min. blocks
+        assertInvalidParameters(createAdaptiveParams(
+                OpenSLMediaPlayerContext.ADAPTIVE_SINK_MIN_BLOCKS - 1, 16, 5000));
+        // max. blocks < min. blocks
+        assertInvalidParameters(createAdaptiveParams(8, 7, 5000));
+        // max. blocks
+        assertInvalidParameters(createAdaptiveParams(
+                2, OpenSLMediaPlayerContext.ADAPTIVE_SINK_MAX_BLOCKS + 1, 5000));
+        // shrink interval
+        assertInvalidParameters(createAdaptiveParams(2, 16, 0));
+        assertInvalidParameters(createAdaptiveParams(2, 16, -1));
+
+        // buffering mode
+        final OpenSLMediaPlayerContext.Parameters params = new OpenSLMediaPlayerContext.Parameters();
+        params.sinkBufferingMode = 100;
+        assertInvalidParameters(params);
+    }
+
+    public void testAdaptiveParametersAreIgnoredInFixedMode() throws Exception {
+        final OpenSLMediaPlayerContext.Parameters params = createAdaptiveParams(0, 0, 0);
+        OpenSLMediaPlayerContext context = null;
+
+        params.sinkBufferingMode = OpenSLMediaPlayerContext.SINK_BUFFERING_MODE_FIXED;
+
+        try {
+            // NOTE: release the default factory to free the players of its context
+            releaseQuietly(getFactory());
+
+            context = new OpenSLMediaPlayerContext(getContext(), params);
+        } finally {
+            releaseQuietly(context);
+        }
+    }
+
+    public void testPlayInAdaptiveMode() throws Exception {
+        final int[][] ranges = new int[][] {
+                { OpenSLMediaPlayerContext.ADAPTIVE_SINK_MIN_BLOCKS,
+                        OpenSLMediaPlayerContext.ADAPTIVE_SINK_MIN_BLOCKS },
+                { 2, 16 },
+                { 4, OpenSLMediaPlayerContext.ADAPTIVE_SINK_MAX_BLOCKS },
+        };
+
+        // NOTE: release the default factory to free the players of its context
+        releaseQuietly(getFactory());
+
+        for (int[] range : ranges) {
+            OpenSLMediaPlayerContext context = null;
+            OpenSLMediaPlayer player = null;
+
+            try {
+                context = new OpenSLMediaPlayerContext(
+                        getContext(), createAdaptiveParams(range[0], range[1], 100));
+                player = new OpenSLMediaPlayer(context, 0);
+
+                player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+                player.prepare();
+                player.start();
+
+                Thread.sleep(500);
+
+                assertTrue(player.isPlaying());
+                assertTrue(player.getCurrentPosition() > 0);
+            } finally {
+                releaseQuietly(player);
+                releaseQuietly(context);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class CommandBatchTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                CommandBatchTestCase.class, factoryClazz);
+    }
+
+    public CommandBatchTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private static class CompletionRecorder
+            implements OpenSLMediaPlayer.OnCommandBatchCompletionListener {
+        private final List<OpenSLMediaPlayer.CommandBatch> mCompleted =
+                new ArrayList<OpenSLMediaPlayer.CommandBatch>();
+        private final CountDownLatch mLatch;
+
+        public CompletionRecorder(int count) {
+            mLatch = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onCommandBatchCompletion(
+                OpenSLMediaPlayer mp, OpenSLMediaPlayer.CommandBatch batch) {
+            synchronized (mCompleted) {
+                mCompleted.add(batch);
+            }
+            mLatch.countDown();
+        }
+
+        public boolean await(long timeoutMillis) throws InterruptedException {
+            return mLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public List<OpenSLMediaPlayer.CommandBatch> getCompleted() {
+            synchronized (mCompleted) {
+                return new ArrayList<OpenSLMediaPlayer.CommandBatch>(mCompleted);
+            }
+        }
+    }
+
+    private OpenSLMediaPlayer createPreparedPlayer() throws IOException {
+        final OpenSLMediaPlayer player = (OpenSLMediaPlayer) getFactory().createMediaPlayer();
+
+        player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+        player.prepare();
+
+        return player;
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testCommandBatchResults() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPreparedPlayer();
+
+            final CompletionRecorder recorder = new CompletionRecorder(1);
+            final OpenSLMediaPlayer.CommandBatch batch = new OpenSLMediaPlayer.CommandBatch()
+                    .setLooping(true)
+                    .isLooping()
+                    .getDuration()
+                    .start()
+                    .isPlaying()
+                    .pause()
+                    .isPlaying();
+
+            player.postCommandBatch(batch, recorder);
+
+            assertTrue(recorder.await(DEFAULT_EVENT_WAIT_DURATION));
+            assertSame(batch, recorder.getCompleted().get(0));
+            assertTrue(batch.isCompleted());
+
+            for (int i = 0; i < batch.size(); i++) {
+                assertTrue(batch.isSucceeded(i));
+            }
+
+            assertTrue(batch.getBooleanResult(1));
+            assertEquals(player.getDuration(), batch.getIntResult(2));
+            assertTrue(batch.getBooleanResult(4));
+            assertFalse(batch.getBooleanResult(6));
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testManyCommandBatchesInFlight() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPreparedPlayer();
+
+            // post without waiting, the batches are completed in posted order
+            final int numBatches = 100;
+            final CompletionRecorder recorder = new CompletionRecorder(numBatches);
+            final List<OpenSLMediaPlayer.CommandBatch> posted =
+                    new ArrayList<OpenSLMediaPlayer.CommandBatch>();
+
+            for (int i = 0; i < numBatches; i++) {
+                final OpenSLMediaPlayer.CommandBatch batch = new OpenSLMediaPlayer.CommandBatch();
+
+                // vary the batch size so the pooled buffers have to grow
+                for (int j = 0; j <= (i % 8); j++) {
+                    batch.setVolume(0.5f, 0.5f);
+                }
+                batch.getCurrentPosition();
+
+                player.postCommandBatch(batch, recorder);
+                posted.add(batch);
+            }
+
+            assertTrue(recorder.await(DEFAULT_EVENT_WAIT_DURATION * 4));
+
+            final List<OpenSLMediaPlayer.CommandBatch> completed = recorder.getCompleted();
+
+            assertEquals(numBatches, completed.size());
+
+            for (int i = 0; i < numBatches; i++) {
+                final OpenSLMediaPlayer.CommandBatch batch = completed.get(i);
+
+                assertSame(posted.get(i), batch);
+
+                for (int j = 0; j < batch.size(); j++) {
+                    assertTrue(batch.isSucceeded(j));
+                }
+            }
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testReleaseWithPendingCommandBatches() throws Exception {
+        // the batches which are not handled before release() are discarded
+        // along with the player (no completion events are raised)
+        for (int n = 0; n < 10; n++) {
+            OpenSLMediaPlayer player = null;
+
+            try {
+                player = createPreparedPlayer();
+
+                final CompletionRecorder recorder = new CompletionRecorder(1);
+
+                for (int i = 0; i < 20; i++) {
+                    player.postCommandBatch(
+                            new OpenSLMediaPlayer.CommandBatch().start().pause(), recorder);
+                }
+
+                player.release();
+                player = null;
+            } finally {
+                releaseQuietly(player);
+            }
+        }
+    }
+
+    public void testPostCommandBatchWithInvalidArguments() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPreparedPlayer();
+
+            try {
+                player.postCommandBatch(null, null);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            try {
+                player.postCommandBatch(new OpenSLMediaPlayer.CommandBatch(), null);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            final OpenSLMediaPlayer.CommandBatch batch =
+                    new OpenSLMediaPlayer.CommandBatch().isPlaying();
+
+            player.postCommandBatch(batch, null);
+
+            try {
+                player.postCommandBatch(batch, null);
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+}
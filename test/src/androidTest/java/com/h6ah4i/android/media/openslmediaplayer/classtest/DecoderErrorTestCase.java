@@ -0,0 +1,168 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.TestSuite;
+import android.os.Build;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.opensl.OpenSLSoundPool;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+import com.h6ah4i.android.media.openslmediaplayer.utils.BasicMediaPlayerEventListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.CompletionListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.ErrorListenerObject;
+
+public class DecoderErrorTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                DecoderErrorTestCase.class, factoryClazz);
+    }
+
+    public DecoderErrorTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private static boolean isMediaCodecBackendAvailable() {
+        return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+    }
+
+    private OpenSLMediaPlayerContext createMediaCodecContext() {
+        final OpenSLMediaPlayerContext.Parameters params = new OpenSLMediaPlayerContext.Parameters();
+
+        params.decoderBackEndType = OpenSLMediaPlayerContext.DECODER_BACKEND_TYPE_MEDIACODEC;
+
+        // NOTE: release the default factory to free the players of its context
+        releaseQuietly(getFactory());
+
+        return new OpenSLMediaPlayerContext(getContext(), params);
+    }
+
+    private static void append(OutputStream os, String path) throws IOException {
+        final InputStream is = new FileInputStream(path);
+        final byte[] buffer = new byte[4096];
+
+        try {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                os.write(buffer, 0, n);
+            }
+        } finally {
+            closeQuietly(is);
+        }
+    }
+
+    // the stereo stream is followed by the monaural one, the output format changes in the middle of the stream
+    private File createFormatChangingFile() throws IOException {
+        final File file = new File(getTempDir(), "decoder_error_test.mp3");
+        final OutputStream os = new FileOutputStream(file);
+
+        try {
+            append(os, getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            append(os, getStorageFilePath(LOCAL_440HZ_MONO_MP3));
+        } finally {
+            os.close();
+        }
+
+        return file;
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testPlaybackErrorIsReported() throws Exception {
+        if (!isMediaCodecBackendAvailable()) {
+            return;
+        }
+
+        final File file = createFormatChangingFile();
+        OpenSLMediaPlayerContext context = null;
+        OpenSLMediaPlayer player = null;
+
+        try {
+            context = createMediaCodecContext();
+            player = new OpenSLMediaPlayer(context, 0);
+
+            final Object sharedSyncObj = new Object();
+            final ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, true);
+            final CompletionListenerObject comp = new CompletionListenerObject(sharedSyncObj);
+
+            player.setOnErrorListener(err);
+            player.setOnCompletionListener(comp);
+
+            player.setDataSource(file.getAbsolutePath());
+            player.prepare();
+            player.start();
+
+            final int waitTime = determineWaitCompletionTime(player);
+
+            if (!BasicMediaPlayerEventListenerObject.awaitAny(waitTime, err, comp)) {
+                fail();
+            }
+
+            // the rest of the stream is not handled as the end of data
+            assertTrue(err.occurred());
+            assertFalse(comp.occurred());
+            assertFalse(player.isPlaying());
+        } finally {
+            releaseQuietly(player);
+            releaseQuietly(context);
+            file.delete();
+        }
+    }
+
+    public void testSampleLoadErrorIsReported() throws Exception {
+        if (!isMediaCodecBackendAvailable()) {
+            return;
+        }
+
+        final File file = createFormatChangingFile();
+        OpenSLMediaPlayerContext context = null;
+        OpenSLSoundPool pool = null;
+
+        try {
+            context = createMediaCodecContext();
+            pool = new OpenSLSoundPool(context, 1);
+
+            // the truncated data is not loaded as a sample
+            try {
+                pool.load(file.getAbsolutePath());
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            releaseQuietly(pool);
+            releaseQuietly(context);
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.audiofx.OpenSLHQEqualizer;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+import com.h6ah4i.android.media.openslmediaplayer.utils.BasicMediaPlayerEventListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.CompletionListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.ErrorListenerObject;
+
+public class InsertEffectTestCase extends BasicMediaPlayerTestCaseBase {
+    private static final int SWITCHING_INTERVAL = 50;
+    private static final int NUM_SWITCHING = 20;
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                InsertEffectTestCase.class, factoryClazz);
+    }
+
+    public InsertEffectTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private OpenSLMediaPlayerContext getOpenSLMediaPlayerContext() {
+        return ((OpenSLMediaPlayerFactory) getFactory()).getOpenSLMediaPlayerContext();
+    }
+
+    // non-flat levels, so the insert equalizer is not bypassed by the mixer
+    private short[] createBoostedBandLevels() {
+        final OpenSLHQEqualizer eq = new OpenSLHQEqualizer(getOpenSLMediaPlayerContext());
+
+        try {
+            final short[] levels = new short[eq.getNumberOfBands()];
+            final short[] range = eq.getBandLevelRange();
+
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = ((i % 2) == 0) ? range[1] : range[0];
+            }
+
+            return levels;
+        } finally {
+            eq.release();
+        }
+    }
+
+    private OpenSLMediaPlayer createPreparedPlayer(boolean insertEffectEnabled) throws Exception {
+        final OpenSLMediaPlayer player = new OpenSLMediaPlayer(getOpenSLMediaPlayerContext(), 0);
+
+        try {
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.prepare();
+
+            if (insertEffectEnabled) {
+                player.setInsertEqualizerBandLevels(createBoostedBandLevels());
+                player.setInsertEqualizerEnabled(true);
+            }
+        } catch (Exception e) {
+            releaseQuietly(player);
+            throw e;
+        }
+
+        return player;
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testPlaybackThroughInsertEffectBus() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPreparedPlayer(true);
+
+            final Object sharedSyncObj = new Object();
+            final ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, false);
+            final CompletionListenerObject comp = new CompletionListenerObject(sharedSyncObj);
+
+            player.setOnErrorListener(err);
+            player.setOnCompletionListener(comp);
+
+            player.start();
+
+            final int waitTime = determineWaitCompletionTime(player);
+
+            if (!BasicMediaPlayerEventListenerObject.awaitAny(waitTime, err, comp)) {
+                fail();
+            }
+
+            assertFalse(err.occurred());
+            assertTrue(comp.occurred());
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testBypassSwitchingDuringPlayback() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPreparedPlayer(true);
+
+            final Object sharedSyncObj = new Object();
+            final ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, false);
+
+            player.setOnErrorListener(err);
+
+            player.start();
+
+            final int startPosition = player.getCurrentPosition();
+
+            // the source moves between the insert effect bus and the main mix while playing
+            for (int i = 0; i < NUM_SWITCHING; i++) {
+                player.setInsertEqualizerEnabled((i % 2) != 0);
+                Thread.sleep(SWITCHING_INTERVAL);
+            }
+
+            assertFalse(err.occurred());
+            assertTrue(player.isPlaying());
+            assertTrue(player.getCurrentPosition() > startPosition);
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testDetachDuringPlayback() throws Exception {
+        OpenSLMediaPlayer player1 = null;
+        OpenSLMediaPlayer player2 = null;
+        OpenSLMediaPlayer player3 = null;
+
+        try {
+            player1 = createPreparedPlayer(true);
+            player2 = createPreparedPlayer(true);
+
+            final Object sharedSyncObj = new Object();
+            final ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, false);
+            final CompletionListenerObject comp = new CompletionListenerObject(sharedSyncObj);
+
+            player2.setOnErrorListener(err);
+            player2.setOnCompletionListener(comp);
+
+            player1.start();
+            player2.start();
+
+            Thread.sleep(SWITCHING_INTERVAL);
+
+            // the insert equalizer of the first player is detached from the bus while it is in use
+            player1.release();
+            player1 = null;
+
+            final int waitTime = determineWaitCompletionTime(player2);
+
+            // the other player on the bus is not affected
+            if (!BasicMediaPlayerEventListenerObject.awaitAny(waitTime, err, comp)) {
+                fail();
+            }
+
+            assertFalse(err.occurred());
+            assertTrue(comp.occurred());
+
+            // reset while the source is on the bus
+            player2.reset();
+            player2.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player2.prepare();
+            player2.start();
+
+            Thread.sleep(SWITCHING_INTERVAL);
+
+            player2.reset();
+
+            // the insert equalizer can be attached again
+            player3 = createPreparedPlayer(true);
+            player3.start();
+
+            Thread.sleep(SWITCHING_INTERVAL);
+
+            assertTrue(player3.isPlaying());
+        } finally {
+            releaseQuietly(player1);
+            releaseQuietly(player2);
+            releaseQuietly(player3);
+        }
+    }
+}
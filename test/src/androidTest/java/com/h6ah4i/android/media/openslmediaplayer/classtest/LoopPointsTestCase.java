@@ -0,0 +1,184 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IBasicMediaPlayer;
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+import com.h6ah4i.android.media.openslmediaplayer.utils.CompletionListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.ErrorListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.SeekCompleteListenerObject;
+
+public class LoopPointsTestCase extends BasicMediaPlayerTestCaseBase {
+    private static final int LOOP_START = 1000; // [ms]
+    private static final int LOOP_END = 1500; // [ms]
+    private static final int POSITION_TOLERANCE = 300; // [ms]
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                LoopPointsTestCase.class, factoryClazz);
+    }
+
+    public LoopPointsTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    // NOTE: the loop event is notified via OnSeekCompleteListener
+    private static class LoopEventCounter implements IBasicMediaPlayer.OnSeekCompleteListener {
+        private int mCount;
+
+        @Override
+        public void onSeekComplete(IBasicMediaPlayer mp) {
+            synchronized (this) {
+                mCount += 1;
+                notifyAll();
+            }
+        }
+
+        public int getCount() {
+            synchronized (this) {
+                return mCount;
+            }
+        }
+
+        public boolean awaitCount(int count, int timeout) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + timeout;
+
+            synchronized (this) {
+                while (mCount < count) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private void checkABLoop(int loopBufferMaxDuration) throws Exception {
+        final OpenSLMediaPlayerContext.Parameters params = new OpenSLMediaPlayerContext.Parameters();
+        OpenSLMediaPlayerContext context = null;
+        OpenSLMediaPlayer player = null;
+
+        params.loopBufferMaxDuration = loopBufferMaxDuration;
+
+        // NOTE: release the default factory to free the players of its context
+        releaseQuietly(getFactory());
+
+        try {
+            context = new OpenSLMediaPlayerContext(getContext(), params);
+            player = new OpenSLMediaPlayer(context, 0);
+
+            final Object sharedSyncObj = new Object();
+            final ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, false);
+            final CompletionListenerObject comp = new CompletionListenerObject(sharedSyncObj);
+            final LoopEventCounter loop = new LoopEventCounter();
+
+            player.setOnErrorListener(err);
+            player.setOnCompletionListener(comp);
+
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.prepare();
+            player.setLooping(true);
+            player.setLoopPoints(LOOP_START, LOOP_END);
+
+            final SeekCompleteListenerObject seek = new SeekCompleteListenerObject();
+
+            player.setOnSeekCompleteListener(seek);
+            player.seekTo(LOOP_START);
+
+            assertTrue(seek.await(DEFAULT_EVENT_WAIT_DURATION));
+
+            // NOTE: set after the seek completion to count the loop events only
+            player.setOnSeekCompleteListener(loop);
+
+            player.start();
+
+            // the playback stays in the loop region
+            final int numLoops = 3;
+            final int timeout = (LOOP_END - LOOP_START) * (numLoops + 1) + DEFAULT_EVENT_WAIT_DURATION;
+            final long deadline = System.currentTimeMillis() + timeout;
+
+            while (loop.getCount() < numLoops && System.currentTimeMillis() < deadline) {
+                assertRange(LOOP_START - POSITION_TOLERANCE, LOOP_END + POSITION_TOLERANCE,
+                        player.getCurrentPosition());
+                Thread.sleep(50);
+            }
+
+            assertTrue(loop.awaitCount(numLoops, 0));
+            assertTrue(player.isPlaying());
+            assertFalse(comp.occurred());
+            assertFalse(err.occurred());
+
+            // plays to the end once looping is disabled
+            player.setLooping(false);
+
+            final int waitTime = determineWaitCompletionTime(player);
+
+            if (!comp.await(waitTime)) {
+                fail(comp + ", " + err);
+            }
+
+            assertFalse(err.occurred());
+        } finally {
+            releaseQuietly(player);
+            releaseQuietly(context);
+        }
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testABLoopFromLoopBuffer() throws Exception {
+        checkABLoop(5000);
+    }
+
+    public void testABLoopByRewinding() throws Exception {
+        // the loop buffer is disabled
+        checkABLoop(0);
+    }
+
+    public void testLoopPointsAreIgnoredWhileNotLooping() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = (OpenSLMediaPlayer) getFactory().createMediaPlayer();
+
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.prepare();
+            player.setLoopPoints(0, 300);
+            player.start();
+
+            Thread.sleep(1000);
+
+            assertTrue(player.isPlaying());
+            assertLargerThanOrEqual(300, player.getCurrentPosition());
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+}
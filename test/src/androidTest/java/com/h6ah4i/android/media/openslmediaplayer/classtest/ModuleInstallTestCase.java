@@ -0,0 +1,230 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IBasicMediaPlayer;
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.audiofx.IAudioEffect;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.audiofx.OpenSLHQEqualizer;
+import com.h6ah4i.android.media.opensl.audiofx.OpenSLPreAmp;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class ModuleInstallTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                ModuleInstallTestCase.class, factoryClazz);
+    }
+
+    public ModuleInstallTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private OpenSLMediaPlayerFactory createFactoryWithoutModules() {
+        final OpenSLMediaPlayerContext.Parameters params = new OpenSLMediaPlayerContext.Parameters();
+
+        params.options = 0;
+
+        // NOTE: release the default factory to free the players of its context
+        releaseQuietly(getFactory());
+
+        return new OpenSLMediaPlayerFactory(getContext(), params);
+    }
+
+    private static void assertCannotCreateHQEqualizer(OpenSLMediaPlayerContext context) {
+        try {
+            new OpenSLHQEqualizer(context).release();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private static void assertCannotCreatePreAmp(OpenSLMediaPlayerContext context) {
+        try {
+            new OpenSLPreAmp(context).release();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testInstallAndUninstallModules() throws Exception {
+        OpenSLMediaPlayerFactory factory = null;
+        OpenSLHQEqualizer equalizer = null;
+        OpenSLPreAmp preamp = null;
+
+        try {
+            factory = createFactoryWithoutModules();
+
+            final OpenSLMediaPlayerContext context = factory.getOpenSLMediaPlayerContext();
+
+            assertCannotCreateHQEqualizer(context);
+            assertCannotCreatePreAmp(context);
+
+            context.installModule(OpenSLMediaPlayerContext.OPTION_USE_HQ_EQUALIZER);
+            context.installModule(OpenSLMediaPlayerContext.OPTION_USE_PREAMP);
+
+            // installing twice does nothing
+            context.installModule(OpenSLMediaPlayerContext.OPTION_USE_HQ_EQUALIZER);
+            context.installModule(OpenSLMediaPlayerContext.OPTION_USE_PREAMP);
+
+            equalizer = new OpenSLHQEqualizer(context);
+            preamp = new OpenSLPreAmp(context);
+
+            assertEquals(IAudioEffect.SUCCESS, equalizer.setEnabled(true));
+            assertEquals(IAudioEffect.SUCCESS, preamp.setEnabled(true));
+            assertTrue(equalizer.getEnabled());
+            assertTrue(preamp.getEnabled());
+
+            equalizer.release();
+            equalizer = null;
+            preamp.release();
+            preamp = null;
+
+            context.uninstallModule(OpenSLMediaPlayerContext.OPTION_USE_HQ_EQUALIZER);
+            context.uninstallModule(OpenSLMediaPlayerContext.OPTION_USE_PREAMP);
+
+            assertCannotCreateHQEqualizer(context);
+            assertCannotCreatePreAmp(context);
+
+            // can be installed again
+            context.installModule(OpenSLMediaPlayerContext.OPTION_USE_HQ_EQUALIZER);
+
+            equalizer = new OpenSLHQEqualizer(context);
+        } finally {
+            releaseQuietly(equalizer);
+            releaseQuietly(preamp);
+            releaseQuietly(factory);
+        }
+    }
+
+    public void testInstallWhilePlaying() throws Exception {
+        OpenSLMediaPlayerFactory factory = null;
+        IBasicMediaPlayer player = null;
+        OpenSLHQEqualizer equalizer = null;
+
+        try {
+            factory = createFactoryWithoutModules();
+
+            final OpenSLMediaPlayerContext context = factory.getOpenSLMediaPlayerContext();
+
+            player = factory.createMediaPlayer();
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.setLooping(true);
+            player.prepare();
+            player.start();
+
+            Thread.sleep(200);
+
+            // the mixer thread picks up the new module without interrupting the playback
+            context.installModule(OpenSLMediaPlayerContext.OPTION_USE_HQ_EQUALIZER);
+
+            equalizer = new OpenSLHQEqualizer(context);
+            equalizer.setEnabled(true);
+
+            Thread.sleep(200);
+
+            assertTrue(player.isPlaying());
+
+            final int position = player.getCurrentPosition();
+
+            equalizer.release();
+            equalizer = null;
+
+            context.uninstallModule(OpenSLMediaPlayerContext.OPTION_USE_HQ_EQUALIZER);
+
+            Thread.sleep(200);
+
+            assertTrue(player.isPlaying());
+            assertTrue(player.getCurrentPosition() != position);
+        } finally {
+            releaseQuietly(equalizer);
+            releaseQuietly(player);
+            releaseQuietly(factory);
+        }
+    }
+
+    public void testUninstallModuleInUse() throws Exception {
+        OpenSLMediaPlayerFactory factory = null;
+        OpenSLPreAmp preamp = null;
+
+        try {
+            factory = createFactoryWithoutModules();
+
+            final OpenSLMediaPlayerContext context = factory.getOpenSLMediaPlayerContext();
+
+            context.installModule(OpenSLMediaPlayerContext.OPTION_USE_PREAMP);
+
+            preamp = new OpenSLPreAmp(context);
+
+            try {
+                context.uninstallModule(OpenSLMediaPlayerContext.OPTION_USE_PREAMP);
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            // still usable
+            assertEquals(IAudioEffect.SUCCESS, preamp.setEnabled(true));
+
+            preamp.release();
+            preamp = null;
+
+            context.uninstallModule(OpenSLMediaPlayerContext.OPTION_USE_PREAMP);
+        } finally {
+            releaseQuietly(preamp);
+            releaseQuietly(factory);
+        }
+    }
+
+    public void testInstallUnsupportedModule() throws Exception {
+        OpenSLMediaPlayerFactory factory = null;
+
+        try {
+            factory = createFactoryWithoutModules();
+
+            final OpenSLMediaPlayerContext context = factory.getOpenSLMediaPlayerContext();
+
+            try {
+                context.installModule(OpenSLMediaPlayerContext.OPTION_USE_BASSBOOST);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            try {
+                context.uninstallModule(OpenSLMediaPlayerContext.OPTION_USE_VIRTUALIZER);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            releaseQuietly(factory);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeLibraryLoader.StartupTimings;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class NativeLibraryLoaderTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                NativeLibraryLoaderTestCase.class, factoryClazz);
+    }
+
+    public NativeLibraryLoaderTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testLoadLibrariesIsIdempotent() throws Exception {
+        assertTrue(OpenSLMediaPlayerNativeLibraryLoader.loadLibraries());
+
+        final StartupTimings timings1 = OpenSLMediaPlayerNativeLibraryLoader.getStartupTimings();
+
+        assertTrue(OpenSLMediaPlayerNativeLibraryLoader.loadLibraries());
+
+        final StartupTimings timings2 = OpenSLMediaPlayerNativeLibraryLoader.getStartupTimings();
+
+        // the libraries are loaded only by the first call
+        assertEquals(timings1.helperLibraryLoadTime, timings2.helperLibraryLoadTime);
+        assertEquals(timings1.engineLibraryLoadTime, timings2.engineLibraryLoadTime);
+        assertEquals(timings1.jniLibraryLoadTime, timings2.jniLibraryLoadTime);
+    }
+
+    public void testStartupTimings() throws Exception {
+        // NOTE: the factory has already created a context in setUp()
+        final StartupTimings timings = OpenSLMediaPlayerNativeLibraryLoader.getStartupTimings();
+
+        assertTrue(timings.helperLibraryLoadTime > 0);
+        assertTrue(timings.engineLibraryLoadTime > 0);
+        assertTrue(timings.jniLibraryLoadTime > 0);
+        assertTrue(timings.contextInitializationTime > 0);
+
+        assertNotNull(timings.toString());
+    }
+}
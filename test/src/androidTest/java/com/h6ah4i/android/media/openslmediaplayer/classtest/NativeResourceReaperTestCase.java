@@ -0,0 +1,169 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import java.io.IOException;
+
+import junit.framework.TestSuite;
+
+import android.os.PowerManager;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerNativeResourceReaper;
+import com.h6ah4i.android.media.opensl.audiofx.OpenSLPreAmp;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class NativeResourceReaperTestCase extends BasicMediaPlayerTestCaseBase {
+    private static final int REAP_TIMEOUT = 10000;
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                NativeResourceReaperTestCase.class, factoryClazz);
+    }
+
+    public NativeResourceReaperTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private static class SubclassedMediaPlayer extends OpenSLMediaPlayer {
+        public SubclassedMediaPlayer(OpenSLMediaPlayerContext context) {
+            super(context, 0);
+        }
+    }
+
+    private OpenSLMediaPlayerContext getMediaPlayerContext() {
+        return ((OpenSLMediaPlayerFactory) getFactory()).getOpenSLMediaPlayerContext();
+    }
+
+    private void leakPlayers(int count, boolean playing) throws IOException {
+        for (int i = 0; i < count; i++) {
+            final OpenSLMediaPlayer player = new OpenSLMediaPlayer(getMediaPlayerContext(), 0);
+
+            if (playing) {
+                player.setWakeMode(getContext(), PowerManager.PARTIAL_WAKE_LOCK);
+                player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+                player.setLooping(true);
+                player.prepare();
+                player.start();
+            }
+
+            // NOTE: release() is not called
+        }
+    }
+
+    private static boolean waitForLeakedHandles(int expectedLeakedCount) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + REAP_TIMEOUT;
+
+        while (OpenSLMediaPlayerNativeResourceReaper.getLeakedHandleCount() < expectedLeakedCount) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+            Thread.sleep(50);
+        }
+
+        return true;
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testReleaseUntracksHandle() throws Exception {
+        final int liveCount = OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount();
+        final int leakedCount = OpenSLMediaPlayerNativeResourceReaper.getLeakedHandleCount();
+
+        OpenSLMediaPlayer player = null;
+        OpenSLPreAmp preamp = null;
+
+        try {
+            player = new OpenSLMediaPlayer(getMediaPlayerContext(), 0);
+            preamp = new OpenSLPreAmp(getMediaPlayerContext());
+
+            assertEquals(liveCount + 2, OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount());
+
+            player.release();
+            player = null;
+            preamp.release();
+            preamp = null;
+
+            assertEquals(liveCount, OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount());
+            assertEquals(leakedCount, OpenSLMediaPlayerNativeResourceReaper.getLeakedHandleCount());
+        } finally {
+            releaseQuietly(player);
+            releaseQuietly(preamp);
+        }
+    }
+
+    public void testSubclassedPlayer() throws Exception {
+        final int liveCount = OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount();
+        SubclassedMediaPlayer player = null;
+
+        try {
+            // the deleter of the super class is used
+            player = new SubclassedMediaPlayer(getMediaPlayerContext());
+
+            assertEquals(liveCount + 1, OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount());
+
+            player.release();
+            player = null;
+
+            assertEquals(liveCount, OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount());
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testReapLeakedPlayers() throws Exception {
+        final int leakedCount = OpenSLMediaPlayerNativeResourceReaper.getLeakedHandleCount();
+        final int numLeaks = 4;
+
+        leakPlayers(numLeaks, false);
+
+        assertTrue(waitForLeakedHandles(leakedCount + numLeaks));
+
+        // the mixer slots of the leaked players are available again
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = new OpenSLMediaPlayer(getMediaPlayerContext(), 0);
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.prepare();
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testReapLeakedPlayingPlayers() throws Exception {
+        final int liveCount = OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount();
+        final int leakedCount = OpenSLMediaPlayerNativeResourceReaper.getLeakedHandleCount();
+        final int numLeaks = 2;
+
+        // the wake locks and the data sources of the players are released too
+        leakPlayers(numLeaks, true);
+
+        assertTrue(waitForLeakedHandles(leakedCount + numLeaks));
+        assertEquals(liveCount, OpenSLMediaPlayerNativeResourceReaper.getLiveHandleCount());
+    }
+}
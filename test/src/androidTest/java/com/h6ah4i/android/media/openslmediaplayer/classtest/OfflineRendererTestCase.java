@@ -0,0 +1,264 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.opensl.OpenSLOfflineRenderer;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class OfflineRendererTestCase extends BasicMediaPlayerTestCaseBase {
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int FRAME_SIZE = 2 * 2; // stereo, 16 bit
+    private static final int TONE_FREQUENCY = 440; // [Hz]
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                OfflineRendererTestCase.class, factoryClazz);
+    }
+
+    public OfflineRendererTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private OpenSLOfflineRenderer createRenderer() {
+        // NOTE: release the default factory to free the players of its context
+        releaseQuietly(getFactory());
+
+        return new OpenSLOfflineRenderer(getContext(), null);
+    }
+
+    private int getDurationOnContext(OpenSLOfflineRenderer renderer, String path) throws IOException {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = new OpenSLMediaPlayer(renderer.getContext(), 0);
+            player.setDataSource(path);
+            player.prepare();
+            return player.getDuration();
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final byte[] data = new byte[(int) file.length()];
+        final FileInputStream is = new FileInputStream(file);
+
+        try {
+            int pos = 0;
+            while (pos < data.length) {
+                final int n = is.read(data, pos, data.length - pos);
+                if (n < 0) {
+                    throw new IOException("Unexpected EOF");
+                }
+                pos += n;
+            }
+        } finally {
+            closeQuietly(is);
+        }
+
+        return data;
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer, int length) {
+        final byte[] data = new byte[length];
+        final ByteBuffer src = buffer.duplicate();
+
+        src.position(0);
+        src.get(data);
+
+        return data;
+    }
+
+    private static String fourcc(ByteBuffer bb, int offset) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            sb.append((char) bb.get(offset + i));
+        }
+        return sb.toString();
+    }
+
+    // returns the estimated frequency of the left channel [Hz]
+    private static double estimateFrequency(ByteBuffer samples, long numFrames, int sampleRate) {
+        // skip the head and the tail (decoder delay and padding)
+        final int start = (int) (numFrames / 4);
+        final int end = (int) (numFrames * 3 / 4);
+        int numCrossings = 0;
+        short prev = samples.getShort(start * FRAME_SIZE);
+
+        for (int i = start + 1; i < end; i++) {
+            final short cur = samples.getShort(i * FRAME_SIZE);
+            if (prev < 0 && cur >= 0) {
+                numCrossings += 1;
+            }
+            prev = cur;
+        }
+
+        return (double) numCrossings * sampleRate / (end - start);
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testRenderToWavFile() throws Exception {
+        final File file = new File(getTempDir(), "offline_render_test.wav");
+        OpenSLOfflineRenderer renderer = null;
+
+        try {
+            renderer = createRenderer();
+
+            final String path = getStorageFilePath(LOCAL_440HZ_STEREO_MP3);
+            final int sampleRate = renderer.getSampleRate();
+            final int duration = getDurationOnContext(renderer, path);
+
+            renderer.setDataSource(path);
+
+            final long numFrames = renderer.renderToWavFile(file);
+            final byte[] data = readFile(file);
+            final ByteBuffer bb = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+            // header
+            assertEquals(WAV_HEADER_SIZE + numFrames * FRAME_SIZE, data.length);
+            assertEquals("RIFF", fourcc(bb, 0));
+            assertEquals(data.length - 8, bb.getInt(4));
+            assertEquals("WAVE", fourcc(bb, 8));
+            assertEquals("fmt ", fourcc(bb, 12));
+            assertEquals(16, bb.getInt(16));
+            assertEquals(1 /* WAVE_FORMAT_PCM */, bb.getShort(20));
+            assertEquals(2, bb.getShort(22));
+            assertEquals(sampleRate, bb.getInt(24));
+            assertEquals(sampleRate * FRAME_SIZE, bb.getInt(28));
+            assertEquals(FRAME_SIZE, bb.getShort(32));
+            assertEquals(16, bb.getShort(34));
+            assertEquals("data", fourcc(bb, 36));
+            assertEquals(numFrames * FRAME_SIZE, bb.getInt(40));
+
+            // length (+ decoder padding and the trailing blocks)
+            final int renderedDuration = (int) (numFrames * 1000 / sampleRate);
+            assertRange(duration - 100, duration + 500, renderedDuration);
+
+            // content
+            bb.position(WAV_HEADER_SIZE);
+            final ByteBuffer samples = bb.slice().order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(TONE_FREQUENCY, estimateFrequency(samples, numFrames, sampleRate), 5.0);
+        } finally {
+            releaseQuietly(renderer);
+            file.delete();
+        }
+    }
+
+    public void testWavFileMatchesByteBuffer() throws Exception {
+        final File file = new File(getTempDir(), "offline_render_test.wav");
+        OpenSLOfflineRenderer renderer = null;
+
+        try {
+            renderer = createRenderer();
+
+            final String path = getStorageFilePath(LOCAL_440HZ_STEREO_MP3);
+            final int duration = getDurationOnContext(renderer, path);
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    (duration / 1000 + 2) * renderer.getSampleRate() * FRAME_SIZE)
+                    .order(ByteOrder.nativeOrder());
+
+            renderer.setDataSource(path);
+
+            final long numFramesWav = renderer.renderToWavFile(file);
+            final long numFramesBuffer = renderer.renderToByteBuffer(buffer);
+
+            // the rendering is deterministic
+            assertEquals(numFramesWav, numFramesBuffer);
+
+            final byte[] wav = readFile(file);
+            final byte[] expected = Arrays.copyOfRange(wav, WAV_HEADER_SIZE, wav.length);
+            final byte[] actual = toByteArray(buffer, (int) (numFramesBuffer * FRAME_SIZE));
+
+            assertTrue(Arrays.equals(expected, actual));
+
+            // the buffer position and the limit are not modified
+            assertEquals(0, buffer.position());
+            assertEquals(buffer.capacity(), buffer.limit());
+        } finally {
+            releaseQuietly(renderer);
+            file.delete();
+        }
+    }
+
+    public void testBufferFull() throws Exception {
+        OpenSLOfflineRenderer renderer = null;
+
+        try {
+            renderer = createRenderer();
+
+            final String path = getStorageFilePath(LOCAL_440HZ_STEREO_MP3);
+            final int duration = getDurationOnContext(renderer, path);
+
+            renderer.setDataSource(path);
+
+            try {
+                renderer.renderToByteBuffer(
+                        ByteBuffer.allocateDirect(renderer.getSampleRate() * FRAME_SIZE / 10));
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+
+            // the player was stopped, so the same data source can be rendered again
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(
+                    (duration / 1000 + 2) * renderer.getSampleRate() * FRAME_SIZE)
+                    .order(ByteOrder.nativeOrder());
+            final long numFrames = renderer.renderToByteBuffer(buffer);
+
+            assertTrue(numFrames > 0);
+        } finally {
+            releaseQuietly(renderer);
+        }
+    }
+
+    public void testWriteError() throws Exception {
+        final File file = new File(new File(getTempDir(), "not_exists"), "offline_render_test.wav");
+        OpenSLOfflineRenderer renderer = null;
+
+        try {
+            renderer = createRenderer();
+            renderer.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+
+            try {
+                renderer.renderToWavFile(file);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+
+            assertFalse(file.exists());
+        } finally {
+            releaseQuietly(renderer);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IBasicMediaPlayer;
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerContext;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerPool;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class PlayerPoolTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                PlayerPoolTestCase.class, factoryClazz);
+    }
+
+    public PlayerPoolTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private OpenSLMediaPlayerPool createPool(int numIdlePlayers, int maxPreloadedPlayers) {
+        final OpenSLMediaPlayerFactory factory = (OpenSLMediaPlayerFactory) getFactory();
+        final OpenSLMediaPlayerPool.Parameters params = new OpenSLMediaPlayerPool.Parameters();
+
+        params.numIdlePlayers = numIdlePlayers;
+        params.maxPreloadedPlayers = maxPreloadedPlayers;
+
+        return new OpenSLMediaPlayerPool(factory.getOpenSLMediaPlayerContext(), 0, params);
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testPoolSizeLimit() throws Exception {
+        OpenSLMediaPlayerPool pool = null;
+
+        try {
+            pool = createPool(OpenSLMediaPlayerPool.MAX_POOLED_PLAYERS, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            releaseQuietly(pool);
+            pool = null;
+        }
+
+        try {
+            pool = createPool(OpenSLMediaPlayerPool.MAX_POOLED_PLAYERS - 1, 1);
+
+            // one player is left for the players in use
+            assertEquals(OpenSLMediaPlayerPool.MAX_POOLED_PLAYERS - 1, pool.fill());
+        } finally {
+            releaseQuietly(pool);
+        }
+    }
+
+    public void testRecycleRestoresDefaults() throws Exception {
+        OpenSLMediaPlayerPool pool = null;
+        OpenSLMediaPlayer player = null;
+
+        try {
+            pool = createPool(1, 0);
+
+            player = pool.obtain();
+
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.prepare();
+            player.setVolume(0.25f, 0.5f);
+            player.setLooping(true);
+            player.setLoopPoints(100, 500);
+            player.setFadeCurve(OpenSLMediaPlayer.FADE_CURVE_LINEAR, 100, 100);
+            player.setInsertEqualizerEnabled(true);
+            player.start();
+
+            final OpenSLMediaPlayer recycled = player;
+
+            pool.recycle(player);
+            player = null;
+
+            // the recycled player is handed out again, in Idle state
+            player = pool.obtain();
+
+            assertSame(recycled, player);
+            assertFalse(player.isLooping());
+            assertFalse(player.isPlaying());
+
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.prepare();
+
+            assertEquals(0, player.getCurrentPosition());
+            assertFalse(player.isLooping());
+        } finally {
+            releaseQuietly(player);
+            releaseQuietly(pool);
+        }
+    }
+
+    public void testRecycleToFullPool() throws Exception {
+        OpenSLMediaPlayerPool pool = null;
+        OpenSLMediaPlayer player1 = null;
+        OpenSLMediaPlayer player2 = null;
+
+        try {
+            pool = createPool(1, 0);
+
+            player1 = pool.obtain();
+            player2 = pool.obtain();
+
+            assertNotSame(player1, player2);
+
+            pool.recycle(player1);
+            player1 = null;
+
+            // the pool is full, the player is released
+            pool.recycle(player2);
+
+            try {
+                player2.getDuration();
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            player2 = null;
+        } finally {
+            releaseQuietly(player1);
+            releaseQuietly(player2);
+            releaseQuietly(pool);
+        }
+    }
+
+    public void testFactoryRecyclesPooledPlayers() throws Exception {
+        OpenSLMediaPlayerFactory factory = null;
+        IBasicMediaPlayer player = null;
+
+        try {
+            final OpenSLMediaPlayerPool.Parameters poolParams = new OpenSLMediaPlayerPool.Parameters();
+
+            poolParams.numIdlePlayers = 1;
+            poolParams.maxPreloadedPlayers = 0;
+
+            // NOTE: release the default factory to free the players of its context
+            releaseQuietly(getFactory());
+
+            factory = new OpenSLMediaPlayerFactory(
+                    getContext(), new OpenSLMediaPlayerContext.Parameters(), poolParams);
+
+            player = factory.createMediaPlayer();
+
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.prepare();
+
+            final IBasicMediaPlayer recycled = player;
+
+            factory.recycleMediaPlayer(player);
+            player = null;
+
+            player = factory.createMediaPlayer();
+
+            assertSame(recycled, player);
+        } finally {
+            releaseQuietly(player);
+            releaseQuietly(factory);
+        }
+    }
+}
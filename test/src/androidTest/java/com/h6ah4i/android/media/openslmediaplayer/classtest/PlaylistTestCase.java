@@ -0,0 +1,188 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IBasicMediaPlayer;
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+import com.h6ah4i.android.media.openslmediaplayer.utils.CompletionListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.ErrorListenerObject;
+
+public class PlaylistTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                PlaylistTestCase.class, factoryClazz);
+    }
+
+    public PlaylistTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private static class TrackChangedListener implements IBasicMediaPlayer.OnInfoListener {
+        private final List<Integer> mRemainings = new ArrayList<Integer>();
+
+        @Override
+        public boolean onInfo(IBasicMediaPlayer mp, int what, int extra) {
+            if (what == OpenSLMediaPlayer.MEDIA_INFO_PLAYLIST_TRACK_CHANGED) {
+                synchronized (mRemainings) {
+                    mRemainings.add(extra);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        public List<Integer> getRemainings() {
+            synchronized (mRemainings) {
+                return new ArrayList<Integer>(mRemainings);
+            }
+        }
+    }
+
+    private OpenSLMediaPlayer createPlayer() {
+        return (OpenSLMediaPlayer) getFactory().createMediaPlayer();
+    }
+
+    private static List<Integer> playAndCollectTrackChangedEvents(
+            OpenSLMediaPlayer player, int numTracks) throws IOException {
+        final Object sharedSyncObj = new Object();
+        final ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, false);
+        final CompletionListenerObject comp = new CompletionListenerObject(sharedSyncObj);
+        final TrackChangedListener info = new TrackChangedListener();
+
+        player.setOnErrorListener(err);
+        player.setOnCompletionListener(comp);
+        player.setOnInfoListener(info);
+
+        player.prepare();
+
+        final int waitTime = determineWaitCompletionTime(player) * numTracks;
+
+        player.start();
+
+        if (!comp.await(waitTime)) {
+            fail(comp + ", " + err);
+        }
+
+        assertTrue(comp.occurred());
+        assertFalse(err.occurred());
+
+        return info.getRemainings();
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testPlaylistTrackChangedEvents() throws IOException {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPlayer();
+
+            final String path = getStorageFilePath(LOCAL_SHORT_SILENT_STEREO_MP3);
+
+            player.setDataSource(path);
+            player.addPlaylistItem(path);
+            player.addPlaylistItem(path);
+
+            final List<Integer> remainings = playAndCollectTrackChangedEvents(player, 3);
+
+            assertEquals(2, remainings.size());
+            assertEquals(1, (int) remainings.get(0));
+            assertEquals(0, (int) remainings.get(1));
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testClearPlaylist() throws IOException {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPlayer();
+
+            final String path = getStorageFilePath(LOCAL_SHORT_SILENT_STEREO_MP3);
+
+            player.setDataSource(path);
+            player.addPlaylistItem(path);
+            player.addPlaylistItem(path);
+            player.clearPlaylist();
+
+            final List<Integer> remainings = playAndCollectTrackChangedEvents(player, 1);
+
+            assertEquals(0, remainings.size());
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testAddPlaylistItemFd() throws IOException {
+        OpenSLMediaPlayer player = null;
+        FileInputStream stream = null;
+
+        try {
+            player = createPlayer();
+
+            final String path = getStorageFilePath(LOCAL_SHORT_SILENT_STEREO_MP3);
+
+            stream = new FileInputStream(path);
+
+            player.setDataSource(path);
+            player.addPlaylistItem(stream.getFD());
+
+            final List<Integer> remainings = playAndCollectTrackChangedEvents(player, 2);
+
+            assertEquals(1, remainings.size());
+            assertEquals(0, (int) remainings.get(0));
+        } finally {
+            releaseQuietly(player);
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    public void testAddPlaylistItemInvalidFd() throws IOException {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPlayer();
+
+            try {
+                player.addPlaylistItem(new FileDescriptor());
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+}
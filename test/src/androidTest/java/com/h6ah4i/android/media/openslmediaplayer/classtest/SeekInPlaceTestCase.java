@@ -0,0 +1,143 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+import com.h6ah4i.android.media.openslmediaplayer.utils.BasicMediaPlayerEventListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.CompletionListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.ErrorListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.SeekCompleteListenerObject;
+
+public class SeekInPlaceTestCase extends BasicMediaPlayerTestCaseBase {
+    private static final int POSITION_TOLERANCE = 500; // [ms]
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                SeekInPlaceTestCase.class, factoryClazz);
+    }
+
+    public SeekInPlaceTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private OpenSLMediaPlayer createPreparedPlayer() throws Exception {
+        final OpenSLMediaPlayer player = (OpenSLMediaPlayer) getFactory().createMediaPlayer();
+
+        player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+        player.prepare();
+
+        return player;
+    }
+
+    private static void seekAndWaitCompletion(OpenSLMediaPlayer player, int msec) {
+        final Object sharedSyncObj = new Object();
+        final ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, false);
+        final CompletionListenerObject comp = new CompletionListenerObject(sharedSyncObj);
+        final SeekCompleteListenerObject seek = new SeekCompleteListenerObject(sharedSyncObj);
+
+        player.setOnErrorListener(err);
+        player.setOnCompletionListener(comp);
+        player.setOnSeekCompleteListener(seek);
+
+        player.seekTo(msec);
+
+        if (!BasicMediaPlayerEventListenerObject.awaitAny(
+                DEFAULT_EVENT_WAIT_DURATION, err, comp, seek)) {
+            fail();
+        }
+
+        player.setOnErrorListener(null);
+        player.setOnCompletionListener(null);
+        player.setOnSeekCompleteListener(null);
+
+        assertFalse(err.occurred());
+        assertFalse(comp.occurred());
+        assertTrue(seek.occurred());
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testSeekWhilePlaying() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPreparedPlayer();
+
+            final int duration = player.getDuration();
+
+            player.start();
+            Thread.sleep(500);
+
+            // forward
+            final int forward = duration / 2;
+            seekAndWaitCompletion(player, forward);
+
+            assertTrue(player.isPlaying());
+            assertRange(forward, forward + POSITION_TOLERANCE, player.getCurrentPosition());
+
+            // backward, the data decoded before the seek request must not be played
+            seekAndWaitCompletion(player, 0);
+
+            assertTrue(player.isPlaying());
+            assertRange(0, POSITION_TOLERANCE, player.getCurrentPosition());
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+
+    public void testSeekWhilePaused() throws Exception {
+        OpenSLMediaPlayer player = null;
+
+        try {
+            player = createPreparedPlayer();
+
+            final int duration = player.getDuration();
+
+            player.start();
+            Thread.sleep(500);
+            player.pause();
+
+            // each request is completed
+            for (int i = 1; i <= 3; i++) {
+                final int position = duration * i / 4;
+
+                seekAndWaitCompletion(player, position);
+
+                assertFalse(player.isPlaying());
+                assertRange(position - POSITION_TOLERANCE, position + POSITION_TOLERANCE,
+                        player.getCurrentPosition());
+            }
+
+            // playback resumes from the new position
+            player.start();
+            Thread.sleep(500);
+
+            assertTrue(player.isPlaying());
+            assertLargerThanOrEqual(duration * 3 / 4, player.getCurrentPosition());
+        } finally {
+            releaseQuietly(player);
+        }
+    }
+}
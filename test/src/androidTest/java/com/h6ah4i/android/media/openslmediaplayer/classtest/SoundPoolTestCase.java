@@ -0,0 +1,178 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLSoundPool;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class SoundPoolTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                SoundPoolTestCase.class, factoryClazz);
+    }
+
+    public SoundPoolTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private OpenSLSoundPool createSoundPool(int maxStreams) {
+        final OpenSLMediaPlayerFactory factory = (OpenSLMediaPlayerFactory) getFactory();
+        return new OpenSLSoundPool(factory.getOpenSLMediaPlayerContext(), maxStreams);
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testLoadAndUnload() throws IOException {
+        OpenSLSoundPool pool = null;
+
+        try {
+            pool = createSoundPool(1);
+
+            final int sampleId = pool.load(getStorageFilePath(LOCAL_SHORT_SILENT_STEREO_MP3));
+
+            assertTrue(sampleId > 0);
+            assertTrue(pool.unload(sampleId));
+            assertFalse(pool.unload(sampleId));
+        } finally {
+            releaseQuietly(pool);
+        }
+    }
+
+    public void testPlayAndStop() throws IOException {
+        OpenSLSoundPool pool = null;
+
+        try {
+            pool = createSoundPool(2);
+
+            final int sampleId = pool.load(getStorageFilePath(LOCAL_440HZ_STEREO_OGG));
+            final int streamId = pool.play(sampleId, 1.0f, 1.0f, 0, 0, 1.0f);
+
+            assertTrue(streamId != 0);
+
+            pool.setVolume(streamId, 0.5f, 0.5f);
+            pool.setRate(streamId, 2.0f);
+            pool.pause(streamId);
+            pool.resume(streamId);
+            pool.stop(streamId);
+
+            // invalid stream IDs are ignored
+            pool.stop(streamId);
+
+            // unknown sample ID
+            assertEquals(0, pool.play(sampleId + 1, 1.0f, 1.0f, 0, 0, 1.0f));
+
+            assertTrue(pool.unload(sampleId));
+
+            // unloaded sample ID
+            assertEquals(0, pool.play(sampleId, 1.0f, 1.0f, 0, 0, 1.0f));
+        } finally {
+            releaseQuietly(pool);
+        }
+    }
+
+    public void testConcurrentLoad() throws Exception {
+        final int numThreads = 4;
+        final int numLoadsPerThread = 4;
+
+        OpenSLSoundPool pool = null;
+        ExecutorService executor = null;
+
+        try {
+            pool = createSoundPool(1);
+            executor = Executors.newFixedThreadPool(numThreads);
+
+            final OpenSLSoundPool finalPool = pool;
+            final String path = getStorageFilePath(LOCAL_SHORT_SILENT_STEREO_MP3);
+            final Callable<int[]> task = new Callable<int[]>() {
+                @Override
+                public int[] call() throws Exception {
+                    final int[] ids = new int[numLoadsPerThread];
+                    for (int i = 0; i < numLoadsPerThread; i++) {
+                        ids[i] = finalPool.load(path);
+                    }
+                    return ids;
+                }
+            };
+
+            @SuppressWarnings("unchecked")
+            final Future<int[]>[] futures = new Future[numThreads];
+
+            for (int i = 0; i < numThreads; i++) {
+                futures[i] = executor.submit(task);
+            }
+
+            // each load() call has to return its own sample ID
+            final Set<Integer> ids = new HashSet<Integer>();
+
+            for (Future<int[]> future : futures) {
+                for (int id : future.get()) {
+                    assertTrue(id > 0);
+                    assertTrue(ids.add(id));
+                }
+            }
+
+            for (int id : ids) {
+                assertTrue(pool.unload(id));
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            releaseQuietly(pool);
+        }
+    }
+
+    public void testAfterRelease() throws IOException {
+        final OpenSLSoundPool pool = createSoundPool(1);
+
+        pool.release();
+
+        try {
+            pool.load(getStorageFilePath(LOCAL_SHORT_SILENT_STEREO_MP3));
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            pool.play(1, 1.0f, 1.0f, 0, 0, 1.0f);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // no effects
+        pool.release();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.classtest;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+
+public class StatusBlockTestCase extends BasicMediaPlayerTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        return BasicMediaPlayerTestCaseBase.buildBasicTestSuite(
+                StatusBlockTestCase.class, factoryClazz);
+    }
+
+    public StatusBlockTestCase(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private static class StatusReader extends Thread {
+        private final OpenSLMediaPlayer mPlayer;
+        private final int mExpectedDuration;
+        private final AtomicReference<Throwable> mError = new AtomicReference<Throwable>();
+        private volatile boolean mStop;
+
+        public StatusReader(OpenSLMediaPlayer player, int expectedDuration) {
+            mPlayer = player;
+            mExpectedDuration = expectedDuration;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!mStop) {
+                    final int duration = mPlayer.getDuration();
+                    final int position = mPlayer.getCurrentPosition();
+                    final boolean playing = mPlayer.isPlaying();
+
+                    assertEquals(mExpectedDuration, duration);
+                    assertRange(0, duration, position);
+                    assertTrue(playing);
+                }
+            } catch (Throwable th) {
+                mError.set(th);
+            }
+        }
+
+        public Throwable stopAndJoin() throws InterruptedException {
+            mStop = true;
+            join();
+            return mError.get();
+        }
+    }
+
+    //
+    // Exposed test cases
+    //
+    public void testConcurrentStatusReads() throws Exception {
+        OpenSLMediaPlayer player = null;
+        final StatusReader[] readers = new StatusReader[4];
+
+        try {
+            player = (OpenSLMediaPlayer) getFactory().createMediaPlayer();
+
+            player.setDataSource(getStorageFilePath(LOCAL_440HZ_STEREO_MP3));
+            player.setLooping(true);
+            player.prepare();
+
+            final int duration = player.getDuration();
+
+            player.start();
+
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new StatusReader(player, duration);
+                readers[i].start();
+            }
+
+            Thread.sleep(DEFAULT_EVENT_WAIT_DURATION);
+
+            for (int i = 0; i < readers.length; i++) {
+                final Throwable th = readers[i].stopAndJoin();
+                readers[i] = null;
+
+                if (th != null) {
+                    throw new AssertionError(th);
+                }
+            }
+        } finally {
+            for (StatusReader reader : readers) {
+                if (reader != null) {
+                    reader.stopAndJoin();
+                }
+            }
+            releaseQuietly(player);
+        }
+    }
+}
@@ -115,6 +115,11 @@ public class VisualizerTestCase extends BasicMediaPlayerTestCaseBase {
         // not parameterized tests
         suite.addTest(makeSingleBasicTest(
                 VisualizerTestCase.class, "testPlayerStateTransition", factoryClazz));
+        suite.addTest(makeSingleBasicTest(
+                VisualizerTestCase.class, "testCapturedDataIsOwnedByListener", factoryClazz));
+        suite.addTest(makeSingleBasicTest(
+                VisualizerTestCase.class, "testPendingCapturedDataIsClearedOnListenerChange",
+                factoryClazz));
 
         return suite;
     }
@@ -2237,6 +2242,139 @@ public class VisualizerTestCase extends BasicMediaPlayerTestCaseBase {
         }
     }
 
+    public void testCapturedDataIsOwnedByListener() throws Exception {
+        IBasicMediaPlayer player = null;
+        IVisualizer visualizer = null;
+
+        try {
+            player = createWrappedPlayerInstance();
+            setDataSourceForCommonTests(player, null);
+            player.setLooping(true);
+            player.prepare();
+            player.start();
+
+            visualizer = createVisualizer(unwrap(player));
+
+            final int numCaptures = 20;
+            final List<byte[]> delivered = new ArrayList<byte[]>();
+            final List<byte[]> snapshots = new ArrayList<byte[]>();
+            final CountDownLatch latch = new CountDownLatch(2 * numCaptures);
+
+            assertEquals(IVisualizer.SUCCESS, visualizer.setDataCaptureListener(
+                    new IVisualizer.OnDataCaptureListener() {
+                        @Override
+                        public void onWaveFormDataCapture(
+                                IVisualizer visualizer, byte[] waveform, int samplingRate) {
+                            keep(waveform);
+                        }
+
+                        @Override
+                        public void onFftDataCapture(
+                                IVisualizer visualizer, byte[] fft, int samplingRate) {
+                            keep(fft);
+                        }
+
+                        private void keep(byte[] data) {
+                            synchronized (delivered) {
+                                if (delivered.size() < 2 * numCaptures) {
+                                    delivered.add(data);
+                                    snapshots.add(data.clone());
+                                    latch.countDown();
+                                }
+                            }
+                        }
+                    }, visualizer.getMaxCaptureRate(), true, true));
+
+            assertEquals(IVisualizer.SUCCESS, visualizer.setEnabled(true));
+            assertTrue(latch.await(DEFAULT_EVENT_WAIT_DURATION * 4, TimeUnit.MILLISECONDS));
+
+            // let a few more captures run before checking the retained arrays
+            Thread.sleep(200);
+            assertEquals(IVisualizer.SUCCESS, visualizer.setEnabled(false));
+
+            synchronized (delivered) {
+                for (int i = 0; i < delivered.size(); i++) {
+                    // the arrays must not be modified after the callback returned
+                    assertTrue(Arrays.equals(snapshots.get(i), delivered.get(i)));
+
+                    // and must not be handed out twice
+                    for (int j = i + 1; j < delivered.size(); j++) {
+                        assertNotSame(delivered.get(i), delivered.get(j));
+                    }
+                }
+            }
+        } finally {
+            releaseQuietly(visualizer);
+            releaseQuietly(player);
+        }
+    }
+
+    public void testPendingCapturedDataIsClearedOnListenerChange() throws Exception {
+        IBasicMediaPlayer player = null;
+        IVisualizer visualizer = null;
+
+        try {
+            player = createWrappedPlayerInstance();
+            setDataSourceForCommonTests(player, null);
+            player.setLooping(true);
+            player.prepare();
+            player.start();
+
+            visualizer = createVisualizer(unwrap(player));
+
+            final int[] range = visualizer.getCaptureSizeRange();
+            final int[] sizes = new int[] {
+                    range[0], range[1]
+            };
+
+            for (int i = 0; i < 6; i++) {
+                final int size = sizes[i % sizes.length];
+                final int[] numWrongSize = new int[1];
+                final CountDownLatch latch = new CountDownLatch(4);
+
+                assertEquals(IVisualizer.SUCCESS, visualizer.setEnabled(false));
+                assertEquals(IVisualizer.SUCCESS, visualizer.setCaptureSize(size));
+
+                // data captured with the previous size must not reach the new listener
+                assertEquals(IVisualizer.SUCCESS, visualizer.setDataCaptureListener(
+                        new IVisualizer.OnDataCaptureListener() {
+                            @Override
+                            public void onWaveFormDataCapture(
+                                    IVisualizer visualizer, byte[] waveform, int samplingRate) {
+                                check(waveform);
+                            }
+
+                            @Override
+                            public void onFftDataCapture(
+                                    IVisualizer visualizer, byte[] fft, int samplingRate) {
+                                check(fft);
+                            }
+
+                            private void check(byte[] data) {
+                                synchronized (numWrongSize) {
+                                    if (data.length != size) {
+                                        numWrongSize[0]++;
+                                    }
+                                }
+                                latch.countDown();
+                            }
+                        }, visualizer.getMaxCaptureRate(), true, true));
+
+                assertEquals(IVisualizer.SUCCESS, visualizer.setEnabled(true));
+                assertTrue(latch.await(DEFAULT_EVENT_WAIT_DURATION, TimeUnit.MILLISECONDS));
+
+                synchronized (numWrongSize) {
+                    assertEquals(0, numWrongSize[0]);
+                }
+            }
+
+            assertEquals(IVisualizer.SUCCESS, visualizer.setEnabled(false));
+        } finally {
+            releaseQuietly(visualizer);
+            releaseQuietly(player);
+        }
+    }
+
     //
     // Utilities
     //
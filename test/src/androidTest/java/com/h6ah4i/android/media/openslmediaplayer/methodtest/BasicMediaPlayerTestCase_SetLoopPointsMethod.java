@@ -0,0 +1,190 @@
+/*
+ *    Copyright (C) 2014 Haruki Hasegawa
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.h6ah4i.android.media.openslmediaplayer.methodtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestSuite;
+
+import com.h6ah4i.android.media.IBasicMediaPlayer;
+import com.h6ah4i.android.media.IMediaPlayerFactory;
+import com.h6ah4i.android.media.opensl.OpenSLMediaPlayer;
+import com.h6ah4i.android.media.openslmediaplayer.base.BasicMediaPlayerStateTestCaseBase;
+import com.h6ah4i.android.media.openslmediaplayer.utils.CompletionListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.utils.ErrorListenerObject;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestArgs;
+import com.h6ah4i.android.media.openslmediaplayer.testing.ParameterizedTestSuiteBuilder;
+
+public class BasicMediaPlayerTestCase_SetLoopPointsMethod
+        extends BasicMediaPlayerStateTestCaseBase {
+
+    public static TestSuite buildTestSuite(
+            Class<? extends IMediaPlayerFactory> factoryClazz) {
+        List<TestParams> params = new ArrayList<TestParams>();
+
+        // valid
+        params.add(new TestParams(factoryClazz, 0, -1, true));
+        params.add(new TestParams(factoryClazz, 0, 500, true));
+        params.add(new TestParams(factoryClazz, 100, 200, true));
+
+        // invalid
+        params.add(new TestParams(factoryClazz, -1, -1, false));
+        params.add(new TestParams(factoryClazz, 200, 100, false));
+        params.add(new TestParams(factoryClazz, 100, 100, false));
+        params.add(new TestParams(factoryClazz, 0, -2, false));
+
+        return ParameterizedTestSuiteBuilder.build(
+                BasicMediaPlayerTestCase_SetLoopPointsMethod.class, params);
+    }
+
+    private static final class TestParams extends BasicTestParams {
+        public final int startMs;
+        public final int endMs;
+        public final boolean valid;
+
+        public TestParams(
+                Class<? extends IMediaPlayerFactory> factoryClass,
+                int startMs, int endMs, boolean valid) {
+            super(factoryClass);
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.valid = valid;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + ", " + startMs + ", " + endMs + ", " + valid;
+        }
+    }
+
+    public BasicMediaPlayerTestCase_SetLoopPointsMethod(ParameterizedTestArgs args) {
+        super(args);
+    }
+
+    private static void setLoopPoints(IBasicMediaPlayer player, TestParams params) {
+        ((OpenSLMediaPlayer) unwrap(player)).setLoopPoints(params.startMs, params.endMs);
+    }
+
+    private void expectsNoErrors(IBasicMediaPlayer player, TestParams params) throws IOException {
+        Object sharedSyncObj = new Object();
+        ErrorListenerObject err = new ErrorListenerObject(sharedSyncObj, false);
+        CompletionListenerObject comp = new CompletionListenerObject(sharedSyncObj);
+
+        // check no errors
+        player.setOnErrorListener(err);
+        player.setOnCompletionListener(comp);
+
+        setLoopPoints(player, params);
+
+        if (comp.await(SHORT_EVENT_WAIT_DURATION)) {
+            fail(comp + ", " + err);
+        }
+
+        assertFalse(comp.occurred());
+        assertFalse(err.occurred());
+    }
+
+    private void expectsIllegalArgumentException(IBasicMediaPlayer player, TestParams params) {
+        try {
+            setLoopPoints(player, params);
+        } catch (IllegalArgumentException e) {
+            // expected
+            return;
+        }
+        fail();
+    }
+
+    private void expectsIllegalStateException(IBasicMediaPlayer player, TestParams params) {
+        try {
+            setLoopPoints(player, params);
+        } catch (IllegalStateException e) {
+            // expected
+            return;
+        }
+        fail();
+    }
+
+    private void expectsNoErrorsOrIllegalArgumentException(
+            IBasicMediaPlayer player, TestParams params) throws IOException {
+        if (params.valid) {
+            expectsNoErrors(player, params);
+        } else {
+            expectsIllegalArgumentException(player, params);
+        }
+    }
+
+    @Override
+    protected void onTestStateIdle(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStateInitialized(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStatePreparing(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStatePrepared(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStateStarted(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStatePaused(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStateStopped(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStatePlaybackCompleted(IBasicMediaPlayer player, Object args)
+            throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStateErrorBeforePrepared(IBasicMediaPlayer player, Object args)
+            throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStateErrorAfterPrepared(IBasicMediaPlayer player, Object args)
+            throws Throwable {
+        expectsNoErrorsOrIllegalArgumentException(player, (TestParams) args);
+    }
+
+    @Override
+    protected void onTestStateEnd(IBasicMediaPlayer player, Object args) throws Throwable {
+        expectsIllegalStateException(player, (TestParams) args);
+    }
+}